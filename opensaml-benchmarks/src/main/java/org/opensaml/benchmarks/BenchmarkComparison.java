@@ -0,0 +1,159 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+/**
+ * Compares two JMH result files written with <code>-rf json</code>, typically from runs against two commits.
+ *
+ * <p>
+ * For each benchmark and parameter combination present in both files the baseline and candidate scores are
+ * printed along with the relative change, oriented so that a positive change is always an improvement.
+ * Changes that are worse than the threshold, and larger than the combined error of the two scores, are
+ * flagged as regressions, and the process exits with status 1 if there are any.
+ * </p>
+ *
+ * <p>
+ * Usage: <code>java -cp target/benchmarks.jar org.opensaml.benchmarks.BenchmarkComparison
+ * baseline.json candidate.json [thresholdPercent]</code>. The threshold defaults to 10.
+ * </p>
+ */
+public final class BenchmarkComparison {
+
+    /** Default regression threshold, in percent. */
+    private static final double DEFAULT_THRESHOLD = 10.0;
+
+    /** Constructor. */
+    private BenchmarkComparison() {
+    }
+
+    /**
+     * Compare two result files.
+     *
+     * @param args baseline file, candidate file, and optional threshold in percent
+     *
+     * @throws IOException if a result file cannot be read
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: " + BenchmarkComparison.class.getName()
+                    + " <baseline.json> <candidate.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        final double threshold = args.length == 3 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+        final Map<String, JsonObject> baseline = load(args[0]);
+        final Map<String, JsonObject> candidate = load(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format(Locale.ROOT, "%-90s %14s %14s %9s", "Benchmark", "Baseline",
+                "Candidate", "Change"));
+        for (final Map.Entry<String, JsonObject> entry : baseline.entrySet()) {
+            final JsonObject after = candidate.get(entry.getKey());
+            if (after == null) {
+                System.out.println(String.format(Locale.ROOT, "%-90s %14s", entry.getKey(), "(missing)"));
+                continue;
+            }
+
+            final JsonObject before = entry.getValue();
+            final JsonObject beforeMetric = before.getJsonObject("primaryMetric");
+            final JsonObject afterMetric = after.getJsonObject("primaryMetric");
+            final double beforeScore = beforeMetric.getJsonNumber("score").doubleValue();
+            final double afterScore = afterMetric.getJsonNumber("score").doubleValue();
+            final double error = errorOf(beforeMetric) + errorOf(afterMetric);
+
+            // Throughput is better when higher, every other mode is a time and better when lower.
+            final boolean higherIsBetter = "thrpt".equals(before.getString("mode"));
+            final double change = (higherIsBetter ? afterScore - beforeScore : beforeScore - afterScore)
+                    / beforeScore * 100.0;
+            final boolean regression = change < -threshold && Math.abs(afterScore - beforeScore) > error;
+            if (regression) {
+                regressions++;
+            }
+
+            System.out.println(String.format(Locale.ROOT, "%-90s %14.3f %14.3f %+8.1f%%%s", entry.getKey(),
+                    beforeScore, afterScore, change, regression ? "  REGRESSION" : ""));
+        }
+
+        System.out.println();
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+        if (regressions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Load a JMH JSON result file, keyed by benchmark name, mode and parameters.
+     *
+     * @param file the file name
+     *
+     * @return the results
+     *
+     * @throws IOException if the file cannot be read
+     */
+    @Nonnull private static Map<String, JsonObject> load(@Nonnull final String file) throws IOException {
+        final Map<String, JsonObject> results = new TreeMap<>();
+        try (final InputStream is = new FileInputStream(file); final JsonReader reader = Json.createReader(is)) {
+            final JsonArray array = reader.readArray();
+            for (final JsonValue value : array) {
+                final JsonObject result = (JsonObject) value;
+                final StringBuilder key =
+                        new StringBuilder(result.getString("benchmark").replace("org.opensaml.benchmarks.", ""));
+                key.append(" [").append(result.getString("mode")).append(']');
+                final JsonObject params = result.getJsonObject("params");
+                if (params != null) {
+                    for (final String name : new TreeMap<>(params).keySet()) {
+                        key.append(' ').append(name).append('=').append(params.getString(name));
+                    }
+                }
+                results.put(key.toString(), result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Get the score error of a metric, treating an undefined error as zero.
+     *
+     * @param metric the metric
+     *
+     * @return the error
+     */
+    private static double errorOf(@Nonnull final JsonObject metric) {
+        final JsonValue error = metric.get("scoreError");
+        if (error == null || error.getValueType() != JsonValue.ValueType.NUMBER) {
+            return 0;
+        }
+        final double value = metric.getJsonNumber("scoreError").doubleValue();
+        return Double.isNaN(value) ? 0 : value;
+    }
+
+}
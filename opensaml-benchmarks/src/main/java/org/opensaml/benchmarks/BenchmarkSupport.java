@@ -0,0 +1,238 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.Base64;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.config.InitializationException;
+import org.opensaml.core.config.InitializationService;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.security.crypto.KeySupport;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Shared set-up for the benchmarks: library initialization, parsing, canned fixtures and synthetic fixtures.
+ *
+ * <p>
+ * Canned fixtures are classpath resources alongside this class. Synthetic fixtures are generated
+ * deterministically, so that results from different runs and commits are comparable.
+ * </p>
+ */
+public final class BenchmarkSupport {
+
+    /** Canned SAML 2.0 AuthnRequest fixture. */
+    @Nonnull public static final String AUTHN_REQUEST = "authn-request.xml";
+
+    /** Canned SAML 2.0 Response fixture, containing one unsigned Assertion. */
+    @Nonnull public static final String RESPONSE = "response.xml";
+
+    /** Whether the library has been initialized. */
+    private static boolean initialized;
+
+    /** Shared parser pool. */
+    private static BasicParserPool parserPool;
+
+    /** Constructor. */
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Initialize the library, once per JVM.
+     *
+     * @throws InitializationException if initialization fails
+     * @throws ComponentInitializationException if the parser pool cannot be initialized
+     */
+    public static synchronized void initialize() throws InitializationException, ComponentInitializationException {
+        if (initialized) {
+            return;
+        }
+        InitializationService.initialize();
+        parserPool = new BasicParserPool();
+        parserPool.setMaxPoolSize(64);
+        parserPool.initialize();
+        initialized = true;
+    }
+
+    /**
+     * Get the shared parser pool.
+     *
+     * @return the parser pool
+     */
+    @Nonnull public static ParserPool getParserPool() {
+        return parserPool;
+    }
+
+    /**
+     * Load a canned fixture.
+     *
+     * @param name the fixture name
+     *
+     * @return the fixture content
+     *
+     * @throws IOException if the fixture cannot be read
+     */
+    @Nonnull public static byte[] loadFixture(@Nonnull final String name) throws IOException {
+        try (final InputStream is = BenchmarkSupport.class.getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IOException("Fixture not found: " + name);
+            }
+            return ByteStreams.toByteArray(is);
+        }
+    }
+
+    /**
+     * Parse and unmarshall a document.
+     *
+     * @param <T> the expected type of the document element
+     * @param document the serialized document
+     *
+     * @return the unmarshalled object
+     *
+     * @throws XMLParserException if the document cannot be parsed
+     * @throws UnmarshallingException if the document cannot be unmarshalled
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull public static <T extends XMLObject> T unmarshall(@Nonnull final byte[] document)
+            throws XMLParserException, UnmarshallingException {
+        return (T) XMLObjectSupport.unmarshallFromInputStream(parserPool, new ByteArrayInputStream(document));
+    }
+
+    /**
+     * Get the entityID of the synthetic entity with the given index.
+     *
+     * @param index the entity index
+     *
+     * @return the entityID
+     */
+    @Nonnull public static String getEntityID(final int index) {
+        return "https://sp" + index + ".example.org/shibboleth";
+    }
+
+    /**
+     * Get the AssertionConsumerService location of the synthetic entity with the given index.
+     *
+     * @param index the entity index
+     *
+     * @return the location
+     */
+    @Nonnull public static String getACSLocation(final int index) {
+        return "https://sp" + index + ".example.org/Shibboleth.sso/SAML2/POST";
+    }
+
+    /**
+     * Generate a synthetic EntitiesDescriptor of SP entities.
+     *
+     * <p>
+     * Each entity carries a signing and encryption KeyDescriptor with pseudo-random certificate content,
+     * several AssertionConsumerService and SingleLogoutService endpoints, NameID formats, and an
+     * Organization, approximating the per-entity size of a federation aggregate.
+     * </p>
+     *
+     * @param entityCount the number of entities
+     *
+     * @return the serialized document
+     */
+    @Nonnull public static byte[] generateEntitiesDescriptor(final int entityCount) {
+        final Random random = new Random(entityCount);
+        final byte[] certificate = new byte[900];
+        final StringBuilder xml = new StringBuilder(entityCount * 4096);
+
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\"")
+            .append(" xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\" Name=\"urn:example:federation\">\n");
+        for (int i = 0; i < entityCount; i++) {
+            random.nextBytes(certificate);
+            final String cert = Base64.getMimeEncoder().encodeToString(certificate);
+            final String host = "https://sp" + i + ".example.org";
+
+            xml.append("  <md:EntityDescriptor entityID=\"").append(getEntityID(i)).append("\">\n");
+            xml.append("    <md:SPSSODescriptor protocolSupportEnumeration=\"")
+                .append("urn:oasis:names:tc:SAML:2.0:protocol\">\n");
+            for (final String use : new String[] {"signing", "encryption"}) {
+                xml.append("      <md:KeyDescriptor use=\"").append(use).append("\">\n");
+                xml.append("        <ds:KeyInfo><ds:X509Data><ds:X509Certificate>").append(cert)
+                    .append("</ds:X509Certificate></ds:X509Data></ds:KeyInfo>\n");
+                xml.append("      </md:KeyDescriptor>\n");
+            }
+            for (final String binding : new String[] {"HTTP-Redirect", "HTTP-POST", "SOAP"}) {
+                xml.append("      <md:SingleLogoutService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:")
+                    .append(binding).append("\" Location=\"").append(host).append("/Shibboleth.sso/SLO/")
+                    .append(binding).append("\"/>\n");
+            }
+            xml.append("      <md:NameIDFormat>urn:oasis:names:tc:SAML:2.0:nameid-format:transient</md:NameIDFormat>\n");
+            xml.append("      <md:NameIDFormat>urn:oasis:names:tc:SAML:2.0:nameid-format:persistent</md:NameIDFormat>\n");
+            xml.append("      <md:AssertionConsumerService index=\"1\" isDefault=\"true\"")
+                .append(" Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\" Location=\"")
+                .append(getACSLocation(i)).append("\"/>\n");
+            xml.append("      <md:AssertionConsumerService index=\"2\"")
+                .append(" Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Artifact\" Location=\"")
+                .append(host).append("/Shibboleth.sso/SAML2/Artifact\"/>\n");
+            xml.append("      <md:AssertionConsumerService index=\"3\"")
+                .append(" Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:PAOS\" Location=\"")
+                .append(host).append("/Shibboleth.sso/SAML2/ECP\"/>\n");
+            xml.append("    </md:SPSSODescriptor>\n");
+            xml.append("    <md:Organization>\n");
+            xml.append("      <md:OrganizationName xml:lang=\"en\">Example ").append(i).append("</md:OrganizationName>\n");
+            xml.append("      <md:OrganizationDisplayName xml:lang=\"en\">Example Service ").append(i)
+                .append("</md:OrganizationDisplayName>\n");
+            xml.append("      <md:OrganizationURL xml:lang=\"en\">").append(host).append("/</md:OrganizationURL>\n");
+            xml.append("    </md:Organization>\n");
+            xml.append("  </md:EntityDescriptor>\n");
+        }
+        xml.append("</md:EntitiesDescriptor>\n");
+
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generate a key pair for a benchmark parameter value.
+     *
+     * @param keyType "RSA" for a 2048-bit RSA key pair, or "EC" for a P-256 key pair
+     *
+     * @return the key pair
+     *
+     * @throws NoSuchAlgorithmException if the algorithm is not supported
+     * @throws NoSuchProviderException if the provider is not available
+     */
+    @Nonnull public static KeyPair generateKeyPair(@Nonnull final String keyType)
+            throws NoSuchAlgorithmException, NoSuchProviderException {
+        if ("EC".equals(keyType)) {
+            return KeySupport.generateKeyPair("EC", 256, null);
+        }
+        return KeySupport.generateKeyPair("RSA", 2048, null);
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.decoder.servlet.BaseHttpServletRequestXMLMessageDecoder;
+import org.opensaml.messaging.encoder.MessageEncodingException;
+import org.opensaml.saml.common.SAMLObject;
+import org.opensaml.saml.common.binding.SAMLBindingSupport;
+import org.opensaml.saml.common.messaging.context.SAMLEndpointContext;
+import org.opensaml.saml.common.messaging.context.SAMLPeerEntityContext;
+import org.opensaml.saml.saml2.binding.decoding.impl.HTTPPostDecoder;
+import org.opensaml.saml.saml2.binding.decoding.impl.HTTPRedirectDeflateDecoder;
+import org.opensaml.saml.saml2.binding.encoding.impl.BaseSAML2MessageEncoder;
+import org.opensaml.saml.saml2.binding.encoding.impl.HTTPPostEncoder;
+import org.opensaml.saml.saml2.binding.encoding.impl.HTTPRedirectDeflateEncoder;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.metadata.SingleSignOnService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Encoding and decoding of an AuthnRequest with the HTTP-POST and HTTP-Redirect bindings.
+ *
+ * <p>
+ * A new encoder or decoder is used for each operation, as in a server handling separate requests. Encoding
+ * marshalls the message afresh each time.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+
+    /** RelayState value. */
+    private static final String RELAY_STATE = "ss:mem:8d6f2ea1c59b0a7d4e3f21c0b9a8e7d6";
+
+    /** Velocity engine for the HTTP-POST encoder. */
+    private VelocityEngine velocityEngine;
+
+    /** The message to encode. */
+    private AuthnRequest message;
+
+    /** The endpoint to which the message is encoded. */
+    private SingleSignOnService endpoint;
+
+    /** The HTTP-POST form parameter value. */
+    private String postParameter;
+
+    /** The HTTP-Redirect query parameter value. */
+    private String redirectParameter;
+
+    /**
+     * Set up.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+
+        velocityEngine = new VelocityEngine();
+        velocityEngine.setProperty(RuntimeConstants.INPUT_ENCODING, "UTF-8");
+        velocityEngine.setProperty(RuntimeConstants.OUTPUT_ENCODING, "UTF-8");
+        velocityEngine.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath");
+        velocityEngine.setProperty("classpath.resource.loader.class",
+                "org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader");
+        velocityEngine.init();
+
+        final byte[] document = BenchmarkSupport.loadFixture(BenchmarkSupport.AUTHN_REQUEST);
+        message = BenchmarkSupport.unmarshall(document);
+
+        endpoint = (SingleSignOnService) XMLObjectSupport.buildXMLObject(SingleSignOnService.DEFAULT_ELEMENT_NAME);
+        endpoint.setLocation(message.getDestination());
+
+        postParameter = Base64.getEncoder().encodeToString(document);
+        redirectParameter = new DeflatingEncoder().deflate(message);
+    }
+
+    /**
+     * Encode the message with the HTTP-POST binding.
+     *
+     * @return the response
+     *
+     * @throws Exception if encoding fails
+     */
+    @Benchmark
+    public MockHttpServletResponse postEncode() throws Exception {
+        final HTTPPostEncoder encoder = new HTTPPostEncoder();
+        encoder.setVelocityEngine(velocityEngine);
+        return encode(encoder);
+    }
+
+    /**
+     * Encode the message with the HTTP-Redirect binding.
+     *
+     * @return the response
+     *
+     * @throws Exception if encoding fails
+     */
+    @Benchmark
+    public MockHttpServletResponse redirectEncode() throws Exception {
+        return encode(new HTTPRedirectDeflateEncoder());
+    }
+
+    /**
+     * Decode the message with the HTTP-POST binding.
+     *
+     * @return the decoded message context
+     *
+     * @throws Exception if decoding fails
+     */
+    @Benchmark
+    public MessageContext<SAMLObject> postDecode() throws Exception {
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/idp/profile/SAML2/POST/SSO");
+        request.setParameter("SAMLRequest", postParameter);
+        request.setParameter("RelayState", RELAY_STATE);
+        return decode(new HTTPPostDecoder(), request);
+    }
+
+    /**
+     * Decode the message with the HTTP-Redirect binding.
+     *
+     * @return the decoded message context
+     *
+     * @throws Exception if decoding fails
+     */
+    @Benchmark
+    public MessageContext<SAMLObject> redirectDecode() throws Exception {
+        final MockHttpServletRequest request =
+                new MockHttpServletRequest("GET", "/idp/profile/SAML2/Redirect/SSO");
+        request.setParameter("SAMLRequest", redirectParameter);
+        request.setParameter("RelayState", RELAY_STATE);
+        return decode(new HTTPRedirectDeflateDecoder(), request);
+    }
+
+    /**
+     * Run an encoder over a new message context.
+     *
+     * @param encoder the encoder
+     *
+     * @return the response
+     *
+     * @throws Exception if encoding fails
+     */
+    private MockHttpServletResponse encode(final BaseSAML2MessageEncoder encoder) throws Exception {
+        message.releaseChildrenDOM(true);
+        message.releaseDOM();
+
+        final MessageContext<SAMLObject> messageContext = new MessageContext<>();
+        messageContext.setMessage(message);
+        SAMLBindingSupport.setRelayState(messageContext, RELAY_STATE);
+        messageContext.getSubcontext(SAMLPeerEntityContext.class, true)
+            .getSubcontext(SAMLEndpointContext.class, true).setEndpoint(endpoint);
+
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        encoder.setMessageContext(messageContext);
+        encoder.setHttpServletResponse(response);
+        encoder.initialize();
+        encoder.prepareContext();
+        encoder.encode();
+        encoder.destroy();
+        return response;
+    }
+
+    /**
+     * Run a decoder over a request.
+     *
+     * @param decoder the decoder
+     * @param request the request
+     *
+     * @return the decoded message context
+     *
+     * @throws Exception if decoding fails
+     */
+    private MessageContext<SAMLObject> decode(final BaseHttpServletRequestXMLMessageDecoder<SAMLObject> decoder,
+            final MockHttpServletRequest request) throws Exception {
+        decoder.setParserPool(BenchmarkSupport.getParserPool());
+        decoder.setHttpServletRequest(request);
+        decoder.initialize();
+        decoder.decode();
+        final MessageContext<SAMLObject> messageContext = decoder.getMessageContext();
+        decoder.destroy();
+        return messageContext;
+    }
+
+    /** Exposes the HTTP-Redirect encoder's DEFLATE and base64 encoding. */
+    private static class DeflatingEncoder extends HTTPRedirectDeflateEncoder {
+
+        /**
+         * Deflate and base64 encode a message.
+         *
+         * @param samlMessage the message
+         *
+         * @return the encoded message
+         *
+         * @throws MessageEncodingException if encoding fails
+         */
+        String deflate(final SAMLObject samlMessage) throws MessageEncodingException {
+            return deflateAndBase64Encode(samlMessage);
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Deep copying of protocol messages and metadata, by marshal/unmarshal round trip and by structural copy.
+ *
+ * <p>
+ * The <code>fixture</code> parameter selects the canned AuthnRequest or Response, or a synthetic
+ * EntitiesDescriptor of the given number of entities. The <code>cachedDOM</code> parameter selects whether
+ * the original retains the DOM from which it was unmarshalled, as when copying a received message, or has
+ * none, as when copying an object built or modified in code.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+
+    /** The document to copy. */
+    @Param({"authn-request", "response", "entities-descriptor-1000"})
+    private String fixture;
+
+    /** Whether the original retains a cached DOM. */
+    @Param({"true", "false"})
+    private boolean cachedDOM;
+
+    /** The object to copy. */
+    private XMLObject xmlObject;
+
+    /**
+     * Set up.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        final byte[] document;
+        if (fixture.startsWith("entities-descriptor-")) {
+            document = BenchmarkSupport.generateEntitiesDescriptor(
+                    Integer.parseInt(fixture.substring("entities-descriptor-".length())));
+        } else {
+            document = BenchmarkSupport.loadFixture(fixture + ".xml");
+        }
+        xmlObject = BenchmarkSupport.unmarshall(document);
+        releaseDOM();
+    }
+
+    /**
+     * Copy the object by marshalling it if necessary, cloning the DOM and unmarshalling the clone.
+     *
+     * @return the copy
+     *
+     * @throws Exception if copying fails
+     */
+    @Benchmark
+    public XMLObject cloneXMLObject() throws Exception {
+        releaseDOM();
+        return XMLObjectSupport.cloneXMLObject(xmlObject,
+                cachedDOM ? CloneOutputOption.RootDOMInNewDocument : CloneOutputOption.DropDOM);
+    }
+
+    /**
+     * Copy the object structurally.
+     *
+     * @return the copy
+     *
+     * @throws Exception if copying fails
+     */
+    @Benchmark
+    public XMLObject copyXMLObject() throws Exception {
+        releaseDOM();
+        return XMLObjectSupport.copyXMLObject(xmlObject);
+    }
+
+    /** Discard any DOM cached on the object, unless it is to be retained. */
+    private void releaseDOM() {
+        if (!cachedDOM) {
+            xmlObject.releaseChildrenDOM(true);
+            xmlObject.releaseDOM();
+        }
+    }
+
+}
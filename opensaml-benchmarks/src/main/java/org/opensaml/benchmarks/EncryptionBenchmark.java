@@ -0,0 +1,132 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml.saml2.encryption.Decrypter;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.InlineEncryptedKeyResolver;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.opensaml.xmlsec.keyinfo.impl.StaticKeyInfoCredentialResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encryption and decryption of an Assertion, using RSA-OAEP key transport of a generated content key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptionBenchmark {
+
+    /** The data encryption algorithm. */
+    @Param({EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM, EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128})
+    private String dataAlgorithm;
+
+    /** The encrypter. */
+    private Encrypter encrypter;
+
+    /** The decrypter. */
+    private Decrypter decrypter;
+
+    /** A previously encrypted Assertion. */
+    private EncryptedAssertion encrypted;
+
+    /**
+     * Set up.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+
+        final KeyPair keyPair = BenchmarkSupport.generateKeyPair("RSA");
+        final Credential recipient = CredentialSupport.getSimpleCredential(keyPair.getPublic(), null);
+        final Credential recipientPrivate =
+                CredentialSupport.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+
+        final DataEncryptionParameters dataParams = new DataEncryptionParameters();
+        dataParams.setAlgorithm(dataAlgorithm);
+        final KeyEncryptionParameters keyParams = new KeyEncryptionParameters();
+        keyParams.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+        keyParams.setEncryptionCredential(recipient);
+
+        encrypter = new Encrypter(dataParams, keyParams);
+        encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+
+        decrypter = new Decrypter(null, new StaticKeyInfoCredentialResolver(recipientPrivate),
+                new InlineEncryptedKeyResolver());
+        decrypter.setRootInNewDocument(true);
+
+        final FreshAssertionState state = new FreshAssertionState();
+        state.setUp();
+        state.prepare();
+        encrypted = encrypter.encrypt(state.getAssertion());
+
+        // Fail fast on a broken configuration rather than measuring exceptions.
+        decrypter.decrypt(encrypted);
+    }
+
+    /**
+     * Encrypt the Assertion.
+     *
+     * @param state supplies a fresh Assertion
+     *
+     * @return the encrypted Assertion
+     *
+     * @throws Exception if encryption fails
+     */
+    @Benchmark
+    public EncryptedAssertion encrypt(final FreshAssertionState state) throws Exception {
+        return encrypter.encrypt(state.getAssertion());
+    }
+
+    /**
+     * Decrypt the Assertion.
+     *
+     * @return the decrypted Assertion
+     *
+     * @throws Exception if decryption fails
+     */
+    @Benchmark
+    public Assertion decrypt() throws Exception {
+        return decrypter.decrypt(encrypted);
+    }
+
+}
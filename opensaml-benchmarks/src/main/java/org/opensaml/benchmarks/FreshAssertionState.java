@@ -0,0 +1,72 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Response;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Supplies a freshly unmarshalled, unsigned and unencrypted Assertion from the canned Response to each
+ * benchmark invocation, so that operations which modify the Assertion can be measured without also
+ * measuring unmarshalling.
+ */
+@State(Scope.Thread)
+public class FreshAssertionState {
+
+    /** The canned Response. */
+    private byte[] document;
+
+    /** The Assertion for the next invocation. */
+    private Assertion assertion;
+
+    /**
+     * Load the fixture.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        document = BenchmarkSupport.loadFixture(BenchmarkSupport.RESPONSE);
+    }
+
+    /**
+     * Prepare the Assertion for the next invocation.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup(Level.Invocation)
+    public void prepare() throws Exception {
+        final Response response = BenchmarkSupport.unmarshall(document);
+        assertion = response.getAssertions().get(0);
+    }
+
+    /**
+     * Get the Assertion for the current invocation.
+     *
+     * @return the Assertion
+     */
+    public Assertion getAssertion() {
+        return assertion;
+    }
+
+}
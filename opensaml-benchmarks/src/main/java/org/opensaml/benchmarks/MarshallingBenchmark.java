@@ -0,0 +1,106 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+/**
+ * Unmarshalling and marshalling of protocol messages and metadata.
+ *
+ * <p>
+ * The <code>fixture</code> parameter selects the canned AuthnRequest or Response, or a synthetic
+ * EntitiesDescriptor of the given number of entities.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarshallingBenchmark {
+
+    /** The document to process. */
+    @Param({"authn-request", "response", "entities-descriptor-1000"})
+    private String fixture;
+
+    /** The serialized document. */
+    private byte[] document;
+
+    /** A previously unmarshalled copy of the document. */
+    private XMLObject xmlObject;
+
+    /**
+     * Set up.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        if (fixture.startsWith("entities-descriptor-")) {
+            document = BenchmarkSupport.generateEntitiesDescriptor(
+                    Integer.parseInt(fixture.substring("entities-descriptor-".length())));
+        } else {
+            document = BenchmarkSupport.loadFixture(fixture + ".xml");
+        }
+        xmlObject = BenchmarkSupport.unmarshall(document);
+    }
+
+    /**
+     * Parse and unmarshall the document.
+     *
+     * @return the unmarshalled object
+     *
+     * @throws Exception if unmarshalling fails
+     */
+    @Benchmark
+    public XMLObject unmarshall() throws Exception {
+        return BenchmarkSupport.unmarshall(document);
+    }
+
+    /**
+     * Marshall the object to a new DOM, discarding any DOM cached from a previous marshall.
+     *
+     * @return the marshalled DOM
+     *
+     * @throws Exception if marshalling fails
+     */
+    @Benchmark
+    public Element marshall() throws Exception {
+        xmlObject.releaseChildrenDOM(true);
+        xmlObject.releaseDOM();
+        return XMLObjectSupport.marshall(xmlObject);
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.criterion.EndpointCriterion;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.impl.EndpointMetadataIndex;
+import org.opensaml.saml.metadata.resolver.impl.DOMMetadataResolver;
+import org.opensaml.saml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Metadata resolution from a synthetic aggregate, by entityID and by the endpoint secondary index.
+ *
+ * <p>
+ * Each invocation looks up the next entity in turn, so that successive lookups do not hit the same entry.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataResolutionBenchmark {
+
+    /** The number of entities in the aggregate. */
+    @Param({"1000", "10000"})
+    private int entityCount;
+
+    /** The resolver. */
+    private DOMMetadataResolver resolver;
+
+    /** Criteria for resolution by entityID, per entity. */
+    private CriteriaSet[] entityIdCriteria;
+
+    /** Criteria for resolution by AssertionConsumerService location, per entity. */
+    private CriteriaSet[] endpointCriteria;
+
+    /** Index of the next entity to look up. */
+    private int next;
+
+    /**
+     * Set up.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+
+        final Document document = BenchmarkSupport.getParserPool().parse(
+                new ByteArrayInputStream(BenchmarkSupport.generateEntitiesDescriptor(entityCount)));
+        resolver = new DOMMetadataResolver(document.getDocumentElement());
+        resolver.setId("benchmark");
+        resolver.setIndexes(Collections.<MetadataIndex>singleton(new EndpointMetadataIndex()));
+        resolver.initialize();
+
+        entityIdCriteria = new CriteriaSet[entityCount];
+        endpointCriteria = new CriteriaSet[entityCount];
+        for (int i = 0; i < entityCount; i++) {
+            entityIdCriteria[i] = new CriteriaSet(new EntityIdCriterion(BenchmarkSupport.getEntityID(i)));
+
+            final AssertionConsumerService acs = (AssertionConsumerService) XMLObjectSupport.buildXMLObject(
+                    AssertionConsumerService.DEFAULT_ELEMENT_NAME);
+            acs.setLocation(BenchmarkSupport.getACSLocation(i));
+            endpointCriteria[i] = new CriteriaSet(new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME),
+                    new EndpointCriterion<>(acs));
+        }
+
+        // Fail fast on a broken index rather than measuring empty results.
+        if (resolver.resolveSingle(endpointCriteria[0]) == null) {
+            throw new IllegalStateException("Secondary index lookup did not resolve an entity");
+        }
+    }
+
+    /** Tear down. */
+    @TearDown
+    public void tearDown() {
+        resolver.destroy();
+    }
+
+    /**
+     * Resolve an entity by entityID.
+     *
+     * @return the resolved entity
+     *
+     * @throws Exception if resolution fails
+     */
+    @Benchmark
+    public EntityDescriptor resolveByEntityID() throws Exception {
+        return resolver.resolveSingle(entityIdCriteria[nextIndex()]);
+    }
+
+    /**
+     * Resolve an entity by AssertionConsumerService location.
+     *
+     * @return the resolved entity
+     *
+     * @throws Exception if resolution fails
+     */
+    @Benchmark
+    public EntityDescriptor resolveByEndpoint() throws Exception {
+        return resolver.resolveSingle(endpointCriteria[nextIndex()]);
+    }
+
+    /**
+     * Get the index of the next entity to look up.
+     *
+     * @return the entity index
+     */
+    private int nextIndex() {
+        final int index = next;
+        next = index + 1 == entityCount ? 0 : index + 1;
+        return index;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.opensaml.xmlsec.signature.support.SignatureValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signing and signature validation of an Assertion within a Response, with RSA and EC keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBenchmark {
+
+    /** The key type. */
+    @Param({"RSA", "EC"})
+    private String keyType;
+
+    /** The canned Response. */
+    private byte[] document;
+
+    /** The signing credential. */
+    private Credential credential;
+
+    /** The signing parameters. */
+    private SignatureSigningParameters signingParameters;
+
+    /** A signed Assertion, as unmarshalled from its serialized form. */
+    private Assertion signed;
+
+    /**
+     * Set up.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initialize();
+        document = BenchmarkSupport.loadFixture(BenchmarkSupport.RESPONSE);
+
+        final KeyPair keyPair = BenchmarkSupport.generateKeyPair(keyType);
+        credential = CredentialSupport.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+
+        signingParameters = new SignatureSigningParameters();
+        signingParameters.setSigningCredential(credential);
+        signingParameters.setSignatureAlgorithm("EC".equals(keyType)
+                ? SignatureConstants.ALGO_ID_SIGNATURE_ECDSA_SHA256 : SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signingParameters.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+        signingParameters.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+
+        final Response response = BenchmarkSupport.unmarshall(document);
+        SignatureSupport.signObject(response.getAssertions().get(0), signingParameters);
+        final ByteArrayOutputStream signedDocument = new ByteArrayOutputStream();
+        XMLObjectSupport.marshallToOutputStream(response, signedDocument);
+        final Response signedResponse = BenchmarkSupport.unmarshall(signedDocument.toByteArray());
+        signed = signedResponse.getAssertions().get(0);
+
+        // Fail fast on a broken fixture rather than measuring exceptions.
+        SignatureValidator.validate(signed.getSignature(), credential);
+    }
+
+    /**
+     * Sign the Assertion.
+     *
+     * @param state supplies a fresh unsigned Assertion
+     *
+     * @return the signed Assertion
+     *
+     * @throws Exception if signing fails
+     */
+    @Benchmark
+    public Assertion sign(final FreshAssertionState state) throws Exception {
+        final Assertion assertion = state.getAssertion();
+        SignatureSupport.signObject(assertion, signingParameters);
+        return assertion;
+    }
+
+    /**
+     * Validate the Assertion's signature.
+     *
+     * @return the validated Assertion
+     *
+     * @throws Exception if validation fails
+     */
+    @Benchmark
+    public Assertion validate() throws Exception {
+        SignatureValidator.validate(signed.getSignature(), credential);
+        return signed;
+    }
+
+}
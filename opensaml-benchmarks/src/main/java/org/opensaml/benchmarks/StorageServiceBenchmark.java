@@ -0,0 +1,163 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link MemoryStorageService} operations from several threads sharing one instance.
+ *
+ * <p>
+ * The <code>keySpace</code> parameter controls contention: with few keys the threads mostly operate on the
+ * same records, with many keys they rarely do. Use <code>-t</code> to vary the thread count.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class StorageServiceBenchmark {
+
+    /** Storage context. */
+    private static final String CONTEXT = "benchmark";
+
+    /** Number of distinct keys. */
+    @Param({"16", "100000"})
+    private int keySpace;
+
+    /** The storage service. */
+    private MemoryStorageService storageService;
+
+    /** The keys. */
+    private String[] keys;
+
+    /** Record expiration. */
+    private long expiration;
+
+    /**
+     * Set up.
+     *
+     * @throws Exception if set-up fails
+     */
+    @Setup
+    public void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("benchmark");
+        // Disable the background cleanup task so that it does not perturb the measurements.
+        storageService.setCleanupInterval(0);
+        storageService.initialize();
+
+        expiration = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+        keys = new String[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = "_" + Integer.toHexString(i * 0x9E3779B1);
+            storageService.create(CONTEXT, keys[i], "value-" + i, expiration);
+        }
+    }
+
+    /** Tear down. */
+    @TearDown
+    public void tearDown() {
+        storageService.destroy();
+    }
+
+    /**
+     * Read a record.
+     *
+     * @return the record
+     *
+     * @throws Exception if the operation fails
+     */
+    @Benchmark
+    public StorageRecord<?> read() throws Exception {
+        return storageService.read(CONTEXT, randomKey());
+    }
+
+    /**
+     * Update a record.
+     *
+     * @return whether the record was updated
+     *
+     * @throws Exception if the operation fails
+     */
+    @Benchmark
+    public boolean update() throws Exception {
+        return storageService.update(CONTEXT, randomKey(), "updated", expiration);
+    }
+
+    /**
+     * Delete and re-create a record, as in replay cache or session churn.
+     *
+     * @return whether the record was created
+     *
+     * @throws Exception if the operation fails
+     */
+    @Benchmark
+    public boolean churn() throws Exception {
+        final String key = randomKey();
+        storageService.delete(CONTEXT, key);
+        return storageService.create(CONTEXT, key, "created", expiration);
+    }
+
+    /**
+     * Read a record nine times in ten, and update it otherwise.
+     *
+     * @return the record read, or null for an update
+     *
+     * @throws Exception if the operation fails
+     */
+    @Benchmark
+    public StorageRecord<?> mixed() throws Exception {
+        final String key = randomKey();
+        if (ThreadLocalRandom.current().nextInt(10) == 0) {
+            storageService.update(CONTEXT, key, "updated", expiration);
+            return null;
+        }
+        return storageService.read(CONTEXT, key);
+    }
+
+    /**
+     * Pick a key at random.
+     *
+     * @return the key
+     */
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keySpace)];
+    }
+
+}
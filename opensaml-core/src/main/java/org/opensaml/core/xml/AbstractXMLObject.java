@@ -26,7 +26,9 @@ import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
 
 import org.opensaml.core.xml.schema.XSBooleanValue;
+import org.opensaml.core.xml.util.DerivedObjectMetadata;
 import org.opensaml.core.xml.util.IDIndex;
+import org.opensaml.core.xml.util.InterningPool;
 import org.opensaml.core.xml.util.XMLObjectSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -91,7 +93,8 @@ public abstract class AbstractXMLObject implements XMLObject {
             @Nullable final String namespacePrefix) {
         nsManager = new NamespaceManager(this);
         idIndex = new IDIndex(this);
-        elementQname = QNameSupport.constructQName(namespaceURI, elementLocalName, namespacePrefix);
+        elementQname = InterningPool.internQNameIfActive(
+                QNameSupport.constructQName(namespaceURI, elementLocalName, namespacePrefix));
         if(namespaceURI != null){
             setElementNamespacePrefix(namespacePrefix);
         }
@@ -101,7 +104,7 @@ public abstract class AbstractXMLObject implements XMLObject {
     /** {@inheritDoc} */
     public void detach(){
         releaseParentDOM(true);
-        parent = null;
+        setParent(null);
     }
 
     /** {@inheritDoc} */
@@ -413,6 +416,10 @@ public abstract class AbstractXMLObject implements XMLObject {
             log.trace("Releasing cached XMLObjectSource for {}", getElementQName());
             getObjectMetadata().remove(XMLObjectSource.class);
         }
+        if (getObjectMetadata().containsKey(DerivedObjectMetadata.class)) {
+            log.trace("Releasing cached DerivedObjectMetadata for {}", getElementQName());
+            getObjectMetadata().remove(DerivedObjectMetadata.class);
+        }
     }
 
     /** {@inheritDoc} */
@@ -442,11 +449,27 @@ public abstract class AbstractXMLObject implements XMLObject {
     /**
      * A convenience method that is equal to calling {@link #releaseDOM()} then {@link #releaseParentDOM(boolean)} with
      * the release being propagated.
+     * 
+     * <p>
+     * If this object has no cached DOM, the cached DOM of its ancestors, if any, is left in place as before, but the
+     * parent chain is still walked up to the root and any {@link DerivedObjectMetadata} cached on this object or any
+     * of its ancestors is removed, since it reflects state which is being changed.
+     * </p>
      */
     public void releaseThisandParentDOM() {
         if (getDOM() != null) {
             releaseDOM();
             releaseParentDOM(true);
+        } else {
+            XMLObject current = this;
+            while (current != null) {
+                final LockableClassToInstanceMultiMap<Object> metadata = current.getObjectMetadata();
+                if (metadata.containsKey(DerivedObjectMetadata.class)) {
+                    log.trace("Releasing cached DerivedObjectMetadata for {}", current.getElementQName());
+                    metadata.remove(DerivedObjectMetadata.class);
+                }
+                current = current.getParent();
+            }
         }
     }
 
@@ -490,7 +513,8 @@ public abstract class AbstractXMLObject implements XMLObject {
      */
     protected void setElementQName(@Nonnull final QName name) {
         Constraint.isNotNull(name, "Element QName cannot be null");
-        elementQname = QNameSupport.constructQName(name.getNamespaceURI(), name.getLocalPart(), name.getPrefix());
+        elementQname = InterningPool.internQNameIfActive(
+                QNameSupport.constructQName(name.getNamespaceURI(), name.getLocalPart(), name.getPrefix()));
         getNamespaceManager().registerElementName(elementQname);
     }
 
@@ -503,7 +527,13 @@ public abstract class AbstractXMLObject implements XMLObject {
 
     /** {@inheritDoc} */
     public void setParent(@Nullable final XMLObject newParent) {
+        if (parent != null) {
+            parent.getNamespaceManager().invalidateSubtreeNamespaces();
+        }
         parent = newParent;
+        if (newParent != null) {
+            newParent.getNamespaceManager().invalidateSubtreeNamespaces();
+        }
     }
 
     /** {@inheritDoc} */
@@ -520,7 +550,7 @@ public abstract class AbstractXMLObject implements XMLObject {
      * @param type the schema type
      */
     protected void setSchemaType(@Nullable final QName type) {
-        typeQname = type;
+        typeQname = InterningPool.internQNameIfActive(type);
         getNamespaceManager().registerElementType(typeQname);
         manageQualifiedAttributeNamespace(XMLConstants.XSI_TYPE_ATTRIB_NAME, typeQname != null);
     }
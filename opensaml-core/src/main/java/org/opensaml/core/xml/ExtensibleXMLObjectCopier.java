@@ -0,0 +1,53 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.io.AbstractXMLObjectCopier;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.w3c.dom.Document;
+
+/**
+ * A thread-safe {@link org.opensaml.core.xml.io.Copier} for objects with <code>xs:anyAttribute</code> attributes,
+ * <code>xs:any</code> children, or both. Other state of the object is not copied, so this copier can be used as is
+ * for objects with no other state and extended for those with more.
+ */
+@ThreadSafe
+public class ExtensibleXMLObjectCopier extends AbstractXMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        if (xmlObject instanceof AttributeExtensibleXMLObject) {
+            copyAttributeMap((AttributeExtensibleXMLObject) xmlObject, (AttributeExtensibleXMLObject) copy);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy,
+            @Nonnull final Document document) throws MarshallingException, UnmarshallingException {
+        if (xmlObject instanceof ElementExtensibleXMLObject) {
+            copyChildren(((ElementExtensibleXMLObject) xmlObject).getUnknownXMLObjects(),
+                    ((ElementExtensibleXMLObject) copy).getUnknownXMLObjects(), document);
+        }
+    }
+}
@@ -34,6 +34,8 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.XMLConstants;
 
+import org.opensaml.core.xml.util.InterningPool;
+
 import com.google.common.base.Strings;
 
 /**
@@ -43,6 +45,14 @@ import com.google.common.base.Strings;
  * Code which mutates the state of an XMLObject such that XML namespace-related data is also logically changed,
  * should call the appropriate method, based on the type of change being made.
  * </p>
+ * 
+ * <p>
+ * The namespace aggregates for the subtree rooted at the owning XMLObject, as returned by
+ * {@link #getNonVisibleNamespaces()}, {@link #getNonVisibleNamespacePrefixes()} and
+ * {@link #getAllNamespacesInSubtreeScope()}, are cached and reused until a change to the owner or to one
+ * of its descendants calls {@link #invalidateSubtreeNamespaces()}. Only the invalidated path is recomputed,
+ * the cached aggregates of unchanged children being merged as-is.
+ * </p>
  */
 public class NamespaceManager {
     
@@ -78,6 +88,9 @@ public class NamespaceManager {
     /** Registered namespaces of content values. */
     private Namespace contentValue;
     
+    /** Cached namespace aggregates for the subtree rooted at the owner, or null if not current. */
+    @Nullable private volatile SubtreeNamespaces subtreeNamespaces;
+    
     /**
      * Constructor.
      *
@@ -132,6 +145,7 @@ public class NamespaceManager {
      */
     public void registerNamespaceDeclaration(@Nonnull final Namespace namespace) {
         addNamespace(decls, namespace);
+        invalidateSubtreeNamespaces();
     }
     
     /**
@@ -141,6 +155,7 @@ public class NamespaceManager {
      */
     public void deregisterNamespaceDeclaration(@Nonnull final Namespace namespace) {
         removeNamespace(decls, namespace);
+        invalidateSubtreeNamespaces();
     }
     
     /**
@@ -160,6 +175,7 @@ public class NamespaceManager {
     public void registerAttributeName(@Nonnull final QName attributeName) {
         if (checkQName(attributeName)) {
             addNamespace(attrNames, buildNamespace(attributeName));
+            invalidateSubtreeNamespaces();
         }
     }
     
@@ -171,6 +187,7 @@ public class NamespaceManager {
     public void deregisterAttributeName(@Nonnull final QName attributeName) {
         if (checkQName(attributeName)) {
             removeNamespace(attrNames, buildNamespace(attributeName));
+            invalidateSubtreeNamespaces();
         }
     }
     
@@ -183,6 +200,7 @@ public class NamespaceManager {
     public void registerAttributeValue(@Nonnull final String attributeID, @Nonnull final QName attributeValue) {
         if (checkQName(attributeValue)) {
             attrValues.put(attributeID, buildNamespace(attributeValue));
+            invalidateSubtreeNamespaces();
         }
     }
     
@@ -192,7 +210,9 @@ public class NamespaceManager {
      * @param attributeID unique identifier for the attribute within the XMLObject's content model
      */
     public void deregisterAttributeValue(@Nonnull final String attributeID) {
-        attrValues.remove(attributeID);
+        if (attrValues.remove(attributeID) != null) {
+            invalidateSubtreeNamespaces();
+        }
     }
     
     /**
@@ -203,6 +223,7 @@ public class NamespaceManager {
     public void registerContentValue(@Nonnull final QName content) {
         if (checkQName(content)) {
             contentValue = buildNamespace(content);
+            invalidateSubtreeNamespaces();
         }
     }
     
@@ -211,7 +232,10 @@ public class NamespaceManager {
      * 
      */
     public void deregisterContentValue() {
-        contentValue = null;
+        if (contentValue != null) {
+            contentValue = null;
+            invalidateSubtreeNamespaces();
+        }
     }
     
     /**
@@ -223,12 +247,10 @@ public class NamespaceManager {
      * information that may optionally be supplied as a part of XML exclusive canonicalization.
      * </p>
      * 
-     * @return the set of non-visibly used namespace prefixes
+     * @return the unmodifiable set of non-visibly used namespace prefixes
      */
     @Nonnull public Set<String> getNonVisibleNamespacePrefixes() {
-        final LazySet<String> prefixes = new LazySet<>();
-        addPrefixes(prefixes, getNonVisibleNamespaces());
-        return prefixes;
+        return getSubtreeNamespaces().nonVisiblePrefixes;
     }
     
     /**
@@ -240,68 +262,39 @@ public class NamespaceManager {
      * information that may optionally be supplied as a part of XML exclusive canonicalization.
      * </p>
      * 
-     * @return the set of non-visibly used namespaces 
+     * @return the unmodifiable set of non-visibly used namespaces 
      */
     @Nonnull public Set<Namespace> getNonVisibleNamespaces() {
-        final LazySet<Namespace> nonVisibleCandidates = new LazySet<>();
-
-        // Collect each child's non-visible namespaces
-        final List<XMLObject> children = getOwner().getOrderedChildren();
-        if (children != null) {
-            for(final XMLObject child : children) {
-                if (child != null) {
-                    final Set<Namespace> childNonVisibleNamespaces =
-                            child.getNamespaceManager().getNonVisibleNamespaces();
-                    if (!childNonVisibleNamespaces.isEmpty()) {
-                        nonVisibleCandidates.addAll(childNonVisibleNamespaces);
-                    }
-                }
-            }
-        }
-
-        // Collect this node's non-visible candidate namespaces
-        nonVisibleCandidates.addAll(getNonVisibleNamespaceCandidates());
-
-        // Now subtract this object's visible namespaces
-        nonVisibleCandidates.removeAll(getVisibleNamespaces());
-        
-        // As a special case, never return the 'xml' prefix.
-        nonVisibleCandidates.remove(XML_NAMESPACE);
-
-        // What remains is the effective set of non-visible namespaces
-        // for the subtree rooted at this node.
-        return nonVisibleCandidates;
-
+        return getSubtreeNamespaces().nonVisible;
     }
     
     /**
      * Get the set of all namespaces which are in scope within the subtree rooted
      * at the owning XMLObject.
      * 
-     * @return set of all namespaces in scope for the owning object
+     * @return unmodifiable set of all namespaces in scope for the owning object
      */
     @Nonnull public Set<Namespace> getAllNamespacesInSubtreeScope() {
-        final LazySet<Namespace> namespaces = new LazySet<>();
-
-        // Collect namespaces for the subtree rooted at each child
-        final List<XMLObject> children = getOwner().getOrderedChildren();
-        if (children != null) {
-            for(final XMLObject child : children) {
-                if (child != null) {
-                    final Set<Namespace> childNamespaces = child.getNamespaceManager().getAllNamespacesInSubtreeScope();
-                    if (!childNamespaces.isEmpty()) {
-                        namespaces.addAll(childNamespaces);
-                    }
-                }
-            }
-        }
-
-        // Collect this node's namespaces.
-        for (final Namespace myNS : getNamespaces()) {
-            namespaces.add(myNS);
+        return getSubtreeNamespaces().all;
+    }
+    
+    /**
+     * Discard the cached namespace aggregates for the subtree rooted at the owning XMLObject, and those of
+     * its ancestors.
+     * 
+     * <p>
+     * This is called by the registration methods of this class, and must be called by code which adds a child
+     * to, or removes a child from, the owning XMLObject. The walk up the tree stops at the first manager
+     * whose aggregates are already invalid, since those of its own ancestors are then invalid too.
+     * </p>
+     */
+    public void invalidateSubtreeNamespaces() {
+        NamespaceManager manager = this;
+        while (manager != null && manager.subtreeNamespaces != null) {
+            manager.subtreeNamespaces = null;
+            final XMLObject parent = manager.getOwner().getParent();
+            manager = parent != null ? parent.getNamespaceManager() : null;
         }
-
-        return namespaces;
     }
     
     /**
@@ -312,6 +305,7 @@ public class NamespaceManager {
     public void registerElementName(@Nonnull final QName name) {
         if (checkQName(name)) {
             elementName = buildNamespace(name);
+            invalidateSubtreeNamespaces();
         }
     }
 
@@ -328,6 +322,61 @@ public class NamespaceManager {
         } else {
             elementType = null;
         }
+        invalidateSubtreeNamespaces();
+    }
+    
+    /**
+     * Get the namespace aggregates for the subtree rooted at the owning XMLObject, computing them if the
+     * cached aggregates are not current.
+     * 
+     * <p>
+     * The result is only cached if every child reports this object as its parent and has itself been cached,
+     * since otherwise a later change beneath that child would not be propagated here.
+     * </p>
+     * 
+     * @return the subtree namespace aggregates
+     */
+    @Nonnull private SubtreeNamespaces getSubtreeNamespaces() {
+        final SubtreeNamespaces cached = subtreeNamespaces;
+        if (cached != null) {
+            return cached;
+        }
+        
+        final LazySet<Namespace> nonVisible = new LazySet<>();
+        final LazySet<Namespace> all = new LazySet<>();
+        boolean cacheable = true;
+
+        // Merge each child's aggregates
+        final List<XMLObject> children = getOwner().getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child != null) {
+                    final SubtreeNamespaces childNamespaces = child.getNamespaceManager().getSubtreeNamespaces();
+                    nonVisible.addAll(childNamespaces.nonVisible);
+                    all.addAll(childNamespaces.all);
+                    cacheable = cacheable && childNamespaces.cacheable && child.getParent() == owner;
+                }
+            }
+        }
+
+        // Collect this node's non-visible candidate namespaces, then subtract this object's visible namespaces
+        nonVisible.addAll(getNonVisibleNamespaceCandidates());
+        nonVisible.removeAll(getVisibleNamespaces());
+        
+        // As a special case, never return the 'xml' prefix.
+        nonVisible.remove(XML_NAMESPACE);
+        
+        // Collect this node's namespaces.
+        all.addAll(getNamespaces());
+        
+        final LazySet<String> prefixes = new LazySet<>();
+        addPrefixes(prefixes, nonVisible);
+        
+        final SubtreeNamespaces result = new SubtreeNamespaces(nonVisible, all, prefixes, cacheable);
+        if (cacheable) {
+            subtreeNamespaces = result;
+        }
+        return result;
     }
     
     /**
@@ -368,7 +417,7 @@ public class NamespaceManager {
         final String uri = Constraint.isNotNull(StringSupport.trimOrNull(name.getNamespaceURI()),
                 "Namespace URI of QName cannot be null");
         final String prefix = StringSupport.trimOrNull(name.getPrefix());
-        return new Namespace(uri, prefix);
+        return InterningPool.internIfActive(new Namespace(uri, prefix));
     }
     
     /**
@@ -508,4 +557,37 @@ public class NamespaceManager {
         }
     }
     
+    /** The namespace aggregates for a subtree. */
+    private static final class SubtreeNamespaces {
+        
+        /** Namespaces used in a non-visible manner within the subtree. */
+        @Nonnull private final Set<Namespace> nonVisible;
+        
+        /** All namespaces in scope within the subtree. */
+        @Nonnull private final Set<Namespace> all;
+        
+        /** Prefixes of the non-visibly used namespaces. */
+        @Nonnull private final Set<String> nonVisiblePrefixes;
+        
+        /** Whether the aggregates may be cached. */
+        private final boolean cacheable;
+        
+        /**
+         * Constructor.
+         *
+         * @param nonVisibleNamespaces namespaces used in a non-visible manner within the subtree
+         * @param allNamespaces all namespaces in scope within the subtree
+         * @param prefixes prefixes of the non-visibly used namespaces
+         * @param canCache whether the aggregates may be cached
+         */
+        SubtreeNamespaces(@Nonnull final Set<Namespace> nonVisibleNamespaces,
+                @Nonnull final Set<Namespace> allNamespaces, @Nonnull final Set<String> prefixes,
+                final boolean canCache) {
+            nonVisible = Collections.unmodifiableSet(nonVisibleNamespaces);
+            all = Collections.unmodifiableSet(allNamespaces);
+            nonVisiblePrefixes = Collections.unmodifiableSet(prefixes);
+            cacheable = canCache;
+        }
+    }
+    
 }
@@ -18,7 +18,17 @@
 package org.opensaml.core.xml.config;
 
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+
+import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.config.InitializationException;
 import org.opensaml.core.config.Initializer;
 import org.slf4j.Logger;
@@ -26,16 +36,29 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Reads in an XML configuration and configures the XMLTooling library accordingly.
+ * 
+ * <p>
+ * Where an {@link XMLObjectProviderRegistrar} generated from a configuration resource is available
+ * via the {@link ServiceLoader} mechanism, it is used in place of reading, validating and reflectively
+ * processing that resource. Resources without a registrar are loaded with an {@link XMLConfigurator}.
+ * The use of registrars may be disabled by setting the configuration property
+ * <code>opensaml.config.xmlobject.providerRegistrarsDisabled</code> to <code>true</code>.
+ * </p>
  */
 public abstract class AbstractXMLObjectProviderInitializer implements Initializer {
 
+    /** Configuration property which disables the use of generated provider registrars. */
+    @Nonnull public static final String CONFIG_PROPERTY_REGISTRARS_DISABLED =
+            "opensaml.config.xmlobject.providerRegistrarsDisabled";
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractXMLObjectProviderInitializer.class);
     
     /** {@inheritDoc} */
     public void init() throws InitializationException {
         try {
-            final XMLConfigurator configurator = new XMLConfigurator();
+            final Map<String, XMLObjectProviderRegistrar> registrars = getRegistrars();
+            XMLConfigurator configurator = null;
             // Checkstyle: FinalLocalVariable OFF
             for (String resource : getConfigResources()) {
             // Checkstyle: FinalLocalVariable ON
@@ -48,9 +71,19 @@ public abstract class AbstractXMLObjectProviderInitializer implements Initialize
                     resource = resource.substring(1);
                 }
                 // Checkstyle: ModifiedControlVariable ON
+                final XMLObjectProviderRegistrar registrar = registrars.get(resource);
+                if (registrar != null) {
+                    log.debug("Registering XMLObject providers for resource '{}' using {}", resource,
+                            registrar.getClass().getName());
+                    registrar.register(XMLConfigurator.getOrCreateRegistry());
+                    continue;
+                }
                 log.debug("Loading XMLObject provider configuration from resource '{}'", resource);
                 final InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
                 if (is != null) {
+                    if (configurator == null) {
+                        configurator = new XMLConfigurator();
+                    }
                     configurator.load(is);
                 } else {
                     throw new XMLConfigurationException("Resource not found");
@@ -69,4 +102,38 @@ public abstract class AbstractXMLObjectProviderInitializer implements Initialize
      */
     protected abstract String[] getConfigResources();
 
-}
\ No newline at end of file
+    /**
+     * Obtain the available provider registrars, keyed by the configuration resource they replace.
+     * 
+     * <p>
+     * The default implementation loads them using the {@link ServiceLoader} mechanism and the thread
+     * context class loader, and returns an empty map if their use has been disabled.
+     * </p>
+     * 
+     * @return the registrars, keyed by resource name without a leading "/"
+     */
+    @Nonnull @NonnullElements protected Map<String, XMLObjectProviderRegistrar> getRegistrars() {
+        final Map<String, XMLObjectProviderRegistrar> registrars = new HashMap<>();
+
+        final Properties props = ConfigurationService.getConfigurationProperties();
+        final String disabled = props != null ? props.getProperty(CONFIG_PROPERTY_REGISTRARS_DISABLED, "false")
+                : "false";
+        if ("true".equalsIgnoreCase(disabled) || "1".equals(disabled)) {
+            log.debug("Configuration indicates XMLObject provider registrars should not be used");
+            return registrars;
+        }
+
+        try {
+            for (final XMLObjectProviderRegistrar registrar : ServiceLoader.load(XMLObjectProviderRegistrar.class,
+                    Thread.currentThread().getContextClassLoader())) {
+                registrars.put(registrar.getConfigResource(), registrar);
+            }
+        } catch (final ServiceConfigurationError e) {
+            log.warn("Unable to load XMLObject provider registrars, configuration resources will be used", e);
+            registrars.clear();
+        }
+
+        return registrars;
+    }
+
+}
@@ -107,14 +107,25 @@ public class XMLConfigurator {
             throw new XMLConfigurationException("Unable to initialize parser pool", e);
         }
 
+        registry = getOrCreateRegistry();
+    }
+
+    /**
+     * Get the XMLObject provider registry from the {@link ConfigurationService}, creating and registering
+     * it if it does not yet exist.
+     * 
+     * @return the registry instance
+     */
+    @Nonnull static XMLObjectProviderRegistry getOrCreateRegistry() {
         synchronized (ConfigurationService.class) {
             XMLObjectProviderRegistry reg = ConfigurationService.get(XMLObjectProviderRegistry.class);
             if (reg == null) {
-                log.debug("XMLObjectProviderRegistry did not exist in ConfigurationService, will be created");
+                LoggerFactory.getLogger(XMLConfigurator.class).debug(
+                        "XMLObjectProviderRegistry did not exist in ConfigurationService, will be created");
                 reg = new XMLObjectProviderRegistry();
                 ConfigurationService.register(XMLObjectProviderRegistry.class, reg);
             }
-            registry = reg;
+            return reg;
         }
     }
 
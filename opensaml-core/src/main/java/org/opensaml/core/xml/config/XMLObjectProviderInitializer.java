@@ -21,9 +21,31 @@ import javax.xml.namespace.QName;
 
 import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.config.InitializationException;
+import org.opensaml.core.xml.io.CopierFactory;
+import org.opensaml.core.xml.schema.XSAny;
+import org.opensaml.core.xml.schema.XSBase64Binary;
+import org.opensaml.core.xml.schema.XSBoolean;
+import org.opensaml.core.xml.schema.XSDateTime;
+import org.opensaml.core.xml.schema.XSInteger;
+import org.opensaml.core.xml.schema.XSQName;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.schema.XSURI;
+import org.opensaml.core.xml.schema.impl.XSAnyCopier;
+import org.opensaml.core.xml.schema.impl.XSBase64BinaryCopier;
+import org.opensaml.core.xml.schema.impl.XSBooleanCopier;
+import org.opensaml.core.xml.schema.impl.XSDateTimeCopier;
+import org.opensaml.core.xml.schema.impl.XSIntegerCopier;
+import org.opensaml.core.xml.schema.impl.XSQNameCopier;
+import org.opensaml.core.xml.schema.impl.XSStringCopier;
+import org.opensaml.core.xml.schema.impl.XSURICopier;
 
 /**
  * XMLObject provider initializer for module "core".
+ * 
+ * <p>
+ * In addition to the object providers, this registers the copiers of the XML Schema types, with the
+ * {@link XSAnyCopier} also serving the default object provider.
+ * </p>
  */
 public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderInitializer {
     
@@ -47,6 +69,18 @@ public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderIniti
         final XMLObjectProviderRegistry registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
         
         registry.registerIDAttribute(new QName(javax.xml.XMLConstants.XML_NS_URI, "id"));
+
+        final CopierFactory copierFactory = registry.getCopierFactory();
+        final XSAnyCopier anyCopier = new XSAnyCopier();
+        copierFactory.registerCopier(registry.getDefaultProviderQName(), anyCopier);
+        copierFactory.registerCopier(XSAny.TYPE_NAME, anyCopier);
+        copierFactory.registerCopier(XSBase64Binary.TYPE_NAME, new XSBase64BinaryCopier());
+        copierFactory.registerCopier(XSBoolean.TYPE_NAME, new XSBooleanCopier());
+        copierFactory.registerCopier(XSDateTime.TYPE_NAME, new XSDateTimeCopier());
+        copierFactory.registerCopier(XSInteger.TYPE_NAME, new XSIntegerCopier());
+        copierFactory.registerCopier(XSQName.TYPE_NAME, new XSQNameCopier());
+        copierFactory.registerCopier(XSString.TYPE_NAME, new XSStringCopier());
+        copierFactory.registerCopier(XSURI.TYPE_NAME, new XSURICopier());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.config;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * Registers the object providers and ID attributes described by a single XMLObject provider
+ * configuration resource, without reading that resource at runtime.
+ *
+ * <p>
+ * Implementations are normally generated at build time from the configuration resource by
+ * {@link XMLObjectProviderRegistrarGenerator}, and are discovered through the
+ * {@link java.util.ServiceLoader} mechanism by {@link AbstractXMLObjectProviderInitializer}, which uses
+ * them in place of {@link XMLConfigurator} for the resources they cover.
+ * </p>
+ */
+public interface XMLObjectProviderRegistrar {
+
+    /**
+     * Get the name of the classpath resource from which this registrar was produced, without
+     * a leading "/".
+     * 
+     * @return the configuration resource name
+     */
+    @Nonnull @NotEmpty public String getConfigResource();
+
+    /**
+     * Register the object providers and ID attributes of the configuration resource.
+     * 
+     * @param registry the registry to populate
+     */
+    public void register(@Nonnull final XMLObjectProviderRegistry registry);
+
+}
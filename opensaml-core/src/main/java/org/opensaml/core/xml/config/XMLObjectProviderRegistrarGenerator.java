@@ -0,0 +1,385 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.AttributeSupport;
+import net.shibboleth.utilities.java.support.xml.ElementSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Build-time generator of {@link XMLObjectProviderRegistrar} implementations.
+ *
+ * <p>
+ * Each XMLObject provider configuration file (named <code>*-config.xml</code>) in a directory is parsed and
+ * schema-validated exactly as {@link XMLConfigurator} would at runtime, and a Java source file is written for it
+ * which registers the same object providers and ID attributes by direct construction. A
+ * {@link java.util.ServiceLoader} index of the generated classes is also written, so that
+ * {@link AbstractXMLObjectProviderInitializer} can use them in place of the configuration files.
+ * </p>
+ *
+ * <p>
+ * The generator is intended to be run from a module's build, after its resources are available and before its
+ * sources are compiled, via {@link #main(String[])}.
+ * </p>
+ */
+public class XMLObjectProviderRegistrarGenerator extends XMLConfigurator {
+
+    /** Suffix appended to the names of generated classes. */
+    @Nonnull @NotEmpty public static final String CLASS_NAME_SUFFIX = "ProviderRegistrar";
+
+    /** Suffix of the configuration file names which are processed. */
+    @Nonnull @NotEmpty public static final String CONFIG_FILE_SUFFIX = "-config.xml";
+
+    /** Maximum number of object providers registered by a single generated method. */
+    private static final int PROVIDERS_PER_METHOD = 100;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(XMLObjectProviderRegistrarGenerator.class);
+
+    /** Object providers read from the configuration currently being processed. */
+    @Nonnull @NonnullElements private final List<ProviderDefinition> providers;
+
+    /** ID attributes read from the configuration currently being processed. */
+    @Nonnull @NonnullElements private final List<QName> idAttributes;
+
+    /**
+     * Constructor.
+     * 
+     * @throws XMLConfigurationException thrown if the validation schema for configuration files cannot be created
+     */
+    public XMLObjectProviderRegistrarGenerator() throws XMLConfigurationException {
+        providers = new ArrayList<>();
+        idAttributes = new ArrayList<>();
+    }
+
+    /**
+     * Generate a registrar for each configuration file in a directory.
+     * 
+     * @param configDirectory directory containing the configuration files, which are classpath resources
+     *          at the root of the module
+     * @param sourceDirectory root directory to which Java sources are written
+     * @param resourceDirectory root directory to which the service index is written
+     * @param packageName package of the generated classes
+     * 
+     * @return the fully qualified names of the generated classes
+     * 
+     * @throws XMLConfigurationException if a configuration file is invalid
+     * @throws IOException if a file cannot be read or written
+     */
+    @Nonnull @NonnullElements public List<String> generate(@Nonnull final File configDirectory,
+            @Nonnull final File sourceDirectory, @Nonnull final File resourceDirectory,
+            @Nonnull @NotEmpty final String packageName) throws XMLConfigurationException, IOException {
+
+        final File[] configFiles = configDirectory.listFiles();
+        if (configFiles == null) {
+            throw new IOException("Unable to list configuration directory " + configDirectory);
+        }
+        Arrays.sort(configFiles);
+
+        final File packageDirectory = new File(sourceDirectory, packageName.replace('.', File.separatorChar));
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new IOException("Unable to create source directory " + packageDirectory);
+        }
+
+        final List<String> generated = new ArrayList<>();
+        for (final File configFile : configFiles) {
+            if (!configFile.isFile() || !configFile.getName().endsWith(CONFIG_FILE_SUFFIX)) {
+                continue;
+            }
+
+            log.debug("Generating XMLObject provider registrar for {}", configFile.getAbsolutePath());
+            providers.clear();
+            idAttributes.clear();
+            try (final InputStream is = new FileInputStream(configFile)) {
+                load(is);
+            }
+
+            final String className = getClassName(configFile.getName());
+            final String source = generateSource(configFile.getName(), packageName, className);
+            Files.write(new File(packageDirectory, className + ".java").toPath(),
+                    source.getBytes(StandardCharsets.UTF_8));
+            generated.add(packageName + '.' + className);
+        }
+
+        final File servicesDirectory = new File(resourceDirectory, "META-INF/services");
+        if (!servicesDirectory.isDirectory() && !servicesDirectory.mkdirs()) {
+            throw new IOException("Unable to create resource directory " + servicesDirectory);
+        }
+        final StringBuilder index = new StringBuilder();
+        for (final String className : generated) {
+            index.append(className).append('\n');
+        }
+        Files.write(new File(servicesDirectory, XMLObjectProviderRegistrar.class.getName()).toPath(),
+                index.toString().getBytes(StandardCharsets.UTF_8));
+
+        log.info("Generated {} XMLObject provider registrars in package {}", generated.size(), packageName);
+        return generated;
+    }
+
+    /**
+     * Records, rather than registers, the object providers defined in the configuration file.
+     * 
+     * @param objectProviders the configuration for the various object providers
+     */
+    @Override
+    protected void initializeObjectProviders(final Element objectProviders) {
+        final NodeList providerList = objectProviders.getElementsByTagNameNS(XMLTOOLING_CONFIG_NS, "ObjectProvider");
+        for (int i = 0; i < providerList.getLength(); i++) {
+            final Element objectProvider = (Element) providerList.item(i);
+            final QName name =
+                    AttributeSupport.getAttributeValueAsQName(objectProvider.getAttributeNodeNS(null, "qualifiedName"));
+            providers.add(new ProviderDefinition(name,
+                    getConfiguredClassName(objectProvider, "BuilderClass"),
+                    getConfiguredClassName(objectProvider, "MarshallingClass"),
+                    getConfiguredClassName(objectProvider, "UnmarshallingClass")));
+        }
+    }
+
+    /**
+     * Records, rather than registers, the global ID attributes specified in the configuration file.
+     * 
+     * @param idAttributesElement the IDAttributes element from the configuration file
+     */
+    @Override
+    protected void initializeIDAttributes(final Element idAttributesElement) {
+        final NodeList idAttributeList =
+                idAttributesElement.getElementsByTagNameNS(XMLTOOLING_CONFIG_NS, "IDAttribute");
+        for (int i = 0; i < idAttributeList.getLength(); i++) {
+            final QName attributeQName = ElementSupport.getElementContentAsQName((Element) idAttributeList.item(i));
+            if (attributeQName != null) {
+                idAttributes.add(attributeQName);
+            }
+        }
+    }
+
+    /**
+     * Generate the source of a registrar for the configuration most recently loaded.
+     * 
+     * @param resource the name of the configuration resource
+     * @param packageName package of the generated class
+     * @param className simple name of the generated class
+     * 
+     * @return the Java source
+     */
+    @Nonnull protected String generateSource(@Nonnull final String resource, @Nonnull final String packageName,
+            @Nonnull final String className) {
+        final StringBuilder src = new StringBuilder(256 + providers.size() * 384);
+
+        src.append("// Generated from ").append(resource).append(" by ")
+            .append(XMLObjectProviderRegistrarGenerator.class.getName()).append(". Do not edit.\n\n");
+        src.append("package ").append(packageName).append(";\n\n");
+        src.append("import javax.xml.namespace.QName;\n\n");
+        src.append("import org.opensaml.core.xml.config.XMLObjectProviderRegistrar;\n");
+        src.append("import org.opensaml.core.xml.config.XMLObjectProviderRegistry;\n\n");
+        src.append("/** Registers the XMLObject providers configured by ").append(resource).append(". */\n");
+        src.append("public class ").append(className).append(" implements XMLObjectProviderRegistrar {\n\n");
+
+        src.append("    /** {@inheritDoc} */\n");
+        src.append("    public String getConfigResource() {\n");
+        src.append("        return ").append(literal(resource)).append(";\n");
+        src.append("    }\n\n");
+
+        final int methodCount = (providers.size() + PROVIDERS_PER_METHOD - 1) / PROVIDERS_PER_METHOD;
+        src.append("    /** {@inheritDoc} */\n");
+        src.append("    public void register(final XMLObjectProviderRegistry registry) {\n");
+        for (int i = 0; i < methodCount; i++) {
+            src.append("        registerObjectProviders").append(i).append("(registry);\n");
+        }
+        for (final QName idAttribute : idAttributes) {
+            src.append("        registry.registerIDAttribute(").append(literal(idAttribute)).append(");\n");
+        }
+        src.append("    }\n");
+
+        // Providers are split across methods to keep each one well below the JVM method size limits.
+        for (int i = 0; i < methodCount; i++) {
+            src.append("\n    /**\n");
+            src.append("     * Register object providers ").append(i * PROVIDERS_PER_METHOD + 1).append(" to ")
+                .append(Math.min(providers.size(), (i + 1) * PROVIDERS_PER_METHOD)).append(".\n");
+            src.append("     *\n");
+            src.append("     * @param registry the registry to populate\n");
+            src.append("     */\n");
+            src.append("    private void registerObjectProviders").append(i)
+                .append("(final XMLObjectProviderRegistry registry) {\n");
+            for (final ProviderDefinition provider
+                    : providers.subList(i * PROVIDERS_PER_METHOD,
+                            Math.min(providers.size(), (i + 1) * PROVIDERS_PER_METHOD))) {
+                src.append("        registry.registerObjectProvider(").append(literal(provider.name)).append(",\n");
+                src.append("                ").append(construct(provider.builder)).append(",\n");
+                src.append("                ").append(construct(provider.marshaller)).append(",\n");
+                src.append("                ").append(construct(provider.unmarshaller)).append(");\n");
+            }
+            src.append("    }\n");
+        }
+
+        src.append("\n}\n");
+        return src.toString();
+    }
+
+    /**
+     * Derive the simple name of the registrar class generated for a configuration file.
+     * 
+     * <p>For example, <code>saml2-metadata-config.xml</code> becomes
+     * <code>Saml2MetadataConfigProviderRegistrar</code>.</p>
+     * 
+     * @param fileName the configuration file name
+     * 
+     * @return the class name
+     */
+    @Nonnull @NotEmpty public static String getClassName(@Nonnull @NotEmpty final String fileName) {
+        final String baseName = fileName.endsWith(".xml") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        final StringBuilder name = new StringBuilder();
+        boolean upper = true;
+        for (final char c : baseName.toCharArray()) {
+            if (Character.isLetterOrDigit(c)) {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            } else {
+                upper = true;
+            }
+        }
+        if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            name.insert(0, "Config");
+        }
+        return name.append(CLASS_NAME_SUFFIX).toString();
+    }
+
+    /**
+     * Get the class name configured by a child of an ObjectProvider element.
+     * 
+     * @param objectProvider the ObjectProvider element
+     * @param elementName the local name of the child element
+     * 
+     * @return the class name, or null if none is configured
+     */
+    @Nullable private String getConfiguredClassName(@Nonnull final Element objectProvider,
+            @Nonnull final String elementName) {
+        final Element configuration =
+                (Element) objectProvider.getElementsByTagNameNS(XMLTOOLING_CONFIG_NS, elementName).item(0);
+        if (configuration == null) {
+            return null;
+        }
+        return StringSupport.trimOrNull(configuration.getAttributeNS(null, "className"));
+    }
+
+    /**
+     * Produce a Java expression which constructs an instance of a class.
+     * 
+     * @param className the class name, or null
+     * 
+     * @return the expression
+     */
+    @Nonnull private String construct(@Nullable final String className) {
+        return className != null ? "new " + className + "()" : "null";
+    }
+
+    /**
+     * Produce a Java expression for a {@link QName}.
+     * 
+     * @param name the QName
+     * 
+     * @return the expression
+     */
+    @Nonnull private String literal(@Nonnull final QName name) {
+        return "new QName(" + literal(name.getNamespaceURI()) + ", " + literal(name.getLocalPart()) + ", "
+                + literal(name.getPrefix()) + ")";
+    }
+
+    /**
+     * Produce a Java string literal.
+     * 
+     * @param value the string value
+     * 
+     * @return the literal
+     */
+    @Nonnull private String literal(@Nonnull final String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * Generate registrars for the configuration files in a directory.
+     * 
+     * <p>Arguments are, in order: the configuration directory, the output source directory,
+     * the output resource directory, and the package of the generated classes.</p>
+     * 
+     * @param args command line arguments
+     * 
+     * @throws Exception if generation fails
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length != 4) {
+            throw new IllegalArgumentException("Usage: " + XMLObjectProviderRegistrarGenerator.class.getName()
+                    + " <configDirectory> <sourceDirectory> <resourceDirectory> <packageName>");
+        }
+        new XMLObjectProviderRegistrarGenerator().generate(new File(args[0]), new File(args[1]), new File(args[2]),
+                args[3]);
+    }
+
+    /** An object provider read from a configuration file. */
+    private static final class ProviderDefinition {
+
+        /** Provider name. */
+        @Nonnull private final QName name;
+
+        /** Builder class name. */
+        @Nullable private final String builder;
+
+        /** Marshaller class name. */
+        @Nullable private final String marshaller;
+
+        /** Unmarshaller class name. */
+        @Nullable private final String unmarshaller;
+
+        /**
+         * Constructor.
+         *
+         * @param providerName provider name
+         * @param builderClass builder class name
+         * @param marshallerClass marshaller class name
+         * @param unmarshallerClass unmarshaller class name
+         */
+        ProviderDefinition(@Nonnull final QName providerName, @Nullable final String builderClass,
+                @Nullable final String marshallerClass, @Nullable final String unmarshallerClass) {
+            name = providerName;
+            builder = builderClass;
+            marshaller = marshallerClass;
+            unmarshaller = unmarshallerClass;
+        }
+    }
+
+}
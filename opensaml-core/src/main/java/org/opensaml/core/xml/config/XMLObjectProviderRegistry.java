@@ -30,6 +30,7 @@ import net.shibboleth.utilities.java.support.xml.ParserPool;
 
 import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.io.CopierFactory;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallerFactory;
 import org.opensaml.core.xml.io.Unmarshaller;
@@ -69,6 +70,9 @@ public class XMLObjectProviderRegistry {
     /** Configured XMLObject unmarshaller factory. */
     private UnmarshallerFactory unmarshallerFactory;
 
+    /** Configured XMLObject copier factory. */
+    private CopierFactory copierFactory;
+
     /** Configured set of attribute QNames which have been globally registered as having an ID type. */
     @Nonnull private final Set<QName> idAttributeNames;
 
@@ -81,6 +85,7 @@ public class XMLObjectProviderRegistry {
         builderFactory = new XMLObjectBuilderFactory();
         marshallerFactory = new MarshallerFactory();
         unmarshallerFactory = new UnmarshallerFactory();
+        copierFactory = new CopierFactory();
         idAttributeNames = new CopyOnWriteArraySet<>();
         
         registerIDAttribute(new QName(javax.xml.XMLConstants.XML_NS_URI, "id"));
@@ -172,6 +177,15 @@ public class XMLObjectProviderRegistry {
         return unmarshallerFactory;
     }
 
+    /**
+     * Gets the XMLObject copier factory.
+     * 
+     * @return the XMLObject copier factory
+     */
+    public CopierFactory getCopierFactory() {
+        return copierFactory;
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
@@ -26,6 +26,7 @@ import net.shibboleth.utilities.java.support.xml.ParserPool;
 import org.opensaml.core.config.ConfigurationService;
 import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.io.CopierFactory;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallerFactory;
 import org.opensaml.core.xml.io.Unmarshaller;
@@ -126,6 +127,15 @@ public class XMLObjectProviderRegistrySupport {
         return ConfigurationService.get(XMLObjectProviderRegistry.class).getUnmarshallerFactory();
     }
 
+    /**
+     * Gets the XMLObject copier factory.
+     * 
+     * @return the XMLObject copier factory
+     */
+    public static CopierFactory getCopierFactory() {
+        return ConfigurationService.get(XMLObjectProviderRegistry.class).getCopierFactory();
+    }
+
     /**
      * Register an attribute as having a type of ID.
      * 
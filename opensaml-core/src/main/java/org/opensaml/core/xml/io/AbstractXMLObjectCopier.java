@@ -0,0 +1,298 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+
+import org.opensaml.core.xml.AttributeExtensibleXMLObject;
+import org.opensaml.core.xml.Namespace;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.schema.XSBooleanValue;
+import org.opensaml.core.xml.util.AttributeMap;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * A thread safe, abstract implementation of the {@link Copier} interface which copies an {@link XMLObject} field by
+ * field, without marshalling or unmarshalling it.
+ *
+ * <p>
+ * The copy is built by the builder registered for the original's schema type or element name, as unmarshalling
+ * would build it, and receives the original's namespace declarations and <code>xsi</code> attributes. The
+ * attributes, content and children of the original are then copied by
+ * {@link #copyAttributes(XMLObject, XMLObject)}, {@link #copyElementContent(XMLObject, XMLObject)} and
+ * {@link #copyChildElements(XMLObject, XMLObject, Document)}, the children via the copiers registered for them. IDs
+ * are registered by the setters of the copy, as they are by unmarshalling.
+ * </p>
+ *
+ * <p>
+ * An original with a cached DOM which {@link #isDOMPreserved(XMLObject)} says must be kept, such as signed content,
+ * is instead copied from that DOM by a {@link DefaultCopier}.
+ * </p>
+ */
+@ThreadSafe
+public abstract class AbstractXMLObjectCopier implements Copier {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(AbstractXMLObjectCopier.class);
+
+    /** Copier for objects whose cached DOM is preserved. */
+    @Nonnull private final Copier domCopier;
+
+    /** Constructor. */
+    protected AbstractXMLObjectCopier() {
+        domCopier = new DefaultCopier();
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public XMLObject copy(@Nonnull final XMLObject xmlObject, @Nonnull final Document document)
+            throws MarshallingException, UnmarshallingException {
+
+        if (xmlObject.getDOM() != null && isDOMPreserved(xmlObject)) {
+            log.trace("Preserving cached DOM of {}", xmlObject.getElementQName());
+            return domCopier.copy(xmlObject, document);
+        }
+
+        log.trace("Copying {}", xmlObject.getElementQName());
+        final XMLObject copy = buildCopy(xmlObject);
+        for (final Namespace namespace : xmlObject.getNamespaceManager().getNamespaceDeclarations()) {
+            copy.getNamespaceManager().registerNamespaceDeclaration(namespace);
+        }
+        copy.setSchemaLocation(xmlObject.getSchemaLocation());
+        copy.setNoNamespaceSchemaLocation(xmlObject.getNoNamespaceSchemaLocation());
+        copy.setNil(copyBooleanValue(xmlObject.isNilXSBoolean()));
+
+        copyAttributes(xmlObject, copy);
+        copyElementContent(xmlObject, copy);
+        copyChildElements(xmlObject, copy, document);
+
+        return copy;
+    }
+
+    /**
+     * Get whether an object with a cached DOM is to be copied from that DOM, so that the copy serializes exactly as
+     * the original does. The default implementation returns false.
+     *
+     * @param xmlObject the object being copied, which has a cached DOM
+     *
+     * @return true if the cached DOM is to be copied, false if the object is to be copied field by field
+     */
+    protected boolean isDOMPreserved(@Nonnull final XMLObject xmlObject) {
+        return false;
+    }
+
+    /**
+     * Build the empty copy of an object, using the builder registered for its schema type or element name, falling
+     * back to the default provider's builder.
+     *
+     * @param xmlObject the object being copied
+     *
+     * @return the empty copy
+     *
+     * @throws UnmarshallingException thrown if no builder is available
+     */
+    @Nonnull protected XMLObject buildCopy(@Nonnull final XMLObject xmlObject) throws UnmarshallingException {
+        final XMLObjectBuilderFactory builderFactory = XMLObjectProviderRegistrySupport.getBuilderFactory();
+        XMLObjectBuilder<?> builder = builderFactory.getBuilder(xmlObject.getSchemaType());
+        if (builder == null) {
+            builder = builderFactory.getBuilder(xmlObject.getElementQName());
+        }
+        if (builder == null) {
+            builder = builderFactory.getBuilder(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (builder == null) {
+                final String errorMsg = "No builder available for " + xmlObject.getElementQName();
+                log.error(errorMsg);
+                throw new UnmarshallingException(errorMsg);
+            }
+        }
+        return builder.buildObject(xmlObject.getElementQName(), xmlObject.getSchemaType());
+    }
+
+    /**
+     * Copy the attributes of an object. The default implementation does nothing.
+     *
+     * @param xmlObject the object being copied
+     * @param copy the copy
+     */
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+
+    }
+
+    /**
+     * Copy the text content of an object. The default implementation does nothing.
+     *
+     * @param xmlObject the object being copied
+     * @param copy the copy
+     */
+    protected void copyElementContent(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+
+    }
+
+    /**
+     * Copy the children of an object, typically by {@link #copyChild(XMLObject, Document)} and
+     * {@link #copyChildren(List, List, Document)}. The default implementation does nothing.
+     *
+     * @param xmlObject the object being copied
+     * @param copy the copy
+     * @param document the DOM document in which any DOM nodes for the copies of the children are to be created
+     *
+     * @throws MarshallingException thrown if the state of a child can not be read
+     * @throws UnmarshallingException thrown if the copy of a child can not be built
+     */
+    protected void copyChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy,
+            @Nonnull final Document document) throws MarshallingException, UnmarshallingException {
+
+    }
+
+    /**
+     * Copy a child object using the copier registered for it.
+     *
+     * @param <T> the type of the child
+     * @param child the child to copy, may be null
+     * @param document the DOM document in which any DOM nodes for the copy are to be created
+     *
+     * @return the copy of the child, or null if the child is null
+     *
+     * @throws MarshallingException thrown if the state of the child can not be read
+     * @throws UnmarshallingException thrown if the copy can not be built
+     */
+    @Nullable protected <T extends XMLObject> T copyChild(@Nullable final T child, @Nonnull final Document document)
+            throws MarshallingException, UnmarshallingException {
+        if (child == null) {
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        final T copy = (T) XMLObjectProviderRegistrySupport.getCopierFactory().getCopier(child).copy(child, document);
+        return copy;
+    }
+
+    /**
+     * Copy a list of child objects, using the copiers registered for them, to another list.
+     *
+     * @param <T> the type of the children
+     * @param children the children to copy
+     * @param copies the list to which the copies are added
+     * @param document the DOM document in which any DOM nodes for the copies are to be created
+     *
+     * @throws MarshallingException thrown if the state of a child can not be read
+     * @throws UnmarshallingException thrown if the copy of a child can not be built
+     */
+    protected <T extends XMLObject> void copyChildren(@Nonnull final List<? extends T> children,
+            @Nonnull final List<T> copies, @Nonnull final Document document)
+                    throws MarshallingException, UnmarshallingException {
+        for (final T child : children) {
+            if (child != null) {
+                copies.add(copyChild(child, document));
+            }
+        }
+    }
+
+    /**
+     * Copy a boolean attribute value, which unlike most attribute values is mutable.
+     *
+     * @param value the value to copy, may be null
+     *
+     * @return the copy of the value, or null if the value is null
+     */
+    @Nullable protected XSBooleanValue copyBooleanValue(@Nullable final XSBooleanValue value) {
+        if (value == null) {
+            return null;
+        }
+        return new XSBooleanValue(value.getValue(), value.isNumericRepresentation());
+    }
+
+    /**
+     * Copy the <code>xs:anyAttribute</code> attributes of an object, keeping their ID and QName typing.
+     *
+     * <p>
+     * QName values are resolved against the namespaces in scope for the original, so that the copy carries the
+     * namespaces they need even when it has no parent.
+     * </p>
+     *
+     * @param xmlObject the object being copied
+     * @param copy the copy
+     */
+    protected void copyAttributeMap(@Nonnull final AttributeExtensibleXMLObject xmlObject,
+            @Nonnull final AttributeExtensibleXMLObject copy) {
+        final AttributeMap originalAttributes = xmlObject.getUnknownAttributes();
+        final AttributeMap copyAttributes = copy.getUnknownAttributes();
+        copyAttributes.setInferQNameValues(originalAttributes.isInferQNameValues());
+
+        for (final Entry<QName, String> entry : originalAttributes.entrySet()) {
+            final QName attributeName = entry.getKey();
+            final QName qnameValue = resolveQNameValue(xmlObject, originalAttributes, attributeName, entry.getValue());
+            if (originalAttributes.isQNameAttribute(attributeName)) {
+                copyAttributes.registerQNameAttribute(attributeName);
+            }
+            if (qnameValue != null) {
+                copyAttributes.put(attributeName, qnameValue);
+            } else {
+                copyAttributes.put(attributeName, entry.getValue());
+            }
+            if (originalAttributes.isIDAttribute(attributeName)) {
+                copyAttributes.registerID(attributeName);
+            }
+        }
+    }
+
+    /**
+     * Resolve the value of an attribute which is, or is inferred to be, QName-valued, as the original's
+     * {@link AttributeMap} does.
+     *
+     * @param xmlObject the object being copied
+     * @param attributes the attributes of the object being copied
+     * @param attributeName the attribute name
+     * @param attributeValue the attribute value
+     *
+     * @return the QName value, or null if the attribute is not QName-valued or its prefix is not in scope
+     */
+    @Nullable private QName resolveQNameValue(@Nonnull final XMLObject xmlObject,
+            @Nonnull final AttributeMap attributes, @Nonnull final QName attributeName,
+            @Nullable final String attributeValue) {
+        if (attributeValue == null) {
+            return null;
+        }
+
+        final boolean isQNameAttribute = attributes.isQNameAttribute(attributeName);
+        final int colon = attributeValue.indexOf(':');
+        if (!isQNameAttribute && (!attributes.isInferQNameValues() || colon < 0)) {
+            return null;
+        }
+
+        final String prefix = colon < 0 ? null : attributeValue.substring(0, colon);
+        final String namespaceURI = XMLObjectSupport.lookupNamespaceURI(xmlObject, prefix);
+        if (namespaceURI == null) {
+            return null;
+        }
+        return QNameSupport.constructQName(namespaceURI, attributeValue.substring(colon + 1), prefix);
+    }
+}
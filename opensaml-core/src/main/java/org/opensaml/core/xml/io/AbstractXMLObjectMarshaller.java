@@ -216,6 +216,39 @@ public abstract class AbstractXMLObjectMarshaller implements Marshaller {
         return targetElement;
     }
 
+    /**
+     * Marshalls the given XMLObject into a new, unattached DOM Element carrying the object's attributes and content,
+     * but none of its child elements or namespace declarations.
+     *
+     * <p>
+     * This is used by {@link DefaultStreamingMarshaller}, which writes the children and namespace declarations
+     * itself. The resulting Element is not cached on the XMLObject.
+     * </p>
+     *
+     * @param xmlObject the XMLObject to marshall
+     * @param document the Document used to create the Element
+     *
+     * @return the Element
+     *
+     * @throws MarshallingException thrown if there is a problem marshalling the object
+     */
+    @Nonnull protected Element marshallShell(@Nonnull final XMLObject xmlObject, @Nonnull final Document document)
+            throws MarshallingException {
+        log.trace("Marshalling element shell for {}", xmlObject.getElementQName());
+
+        final Element shell = ElementSupport.constructElement(document, xmlObject.getElementQName());
+
+        marshallNamespacePrefix(xmlObject, shell);
+
+        marshallSchemaInstanceAttributes(xmlObject, shell);
+
+        marshallAttributes(xmlObject, shell);
+
+        marshallElementContent(xmlObject, shell);
+
+        return shell;
+    }
+
     /**
      * Marshalls the namespace prefix of the XMLObject into the DOM element.
      * 
@@ -33,6 +33,7 @@ import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLObjectBuilderFactory;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.schema.XSBooleanValue;
+import org.opensaml.core.xml.util.InterningPool;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +60,12 @@ import org.w3c.dom.Text;
  * for your implementation.
  * 
  * Failure to adhere to this warning will very likely lead to security bugs.
+ * 
+ * <p>
+ * If an {@link InterningPool} is in effect on the current thread, namespace declarations and the content of elements
+ * whose names the pool interns are replaced with shared instances. Subclasses may use
+ * {@link #getAttributeValue(Attr)} to do the same for attribute values.
+ * </p>
  */
 public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
 
@@ -80,13 +87,30 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
     }
 
     /** {@inheritDoc} */
-    // Checkstyle: CyclomaticComplexity OFF
     @Override
     @Nonnull public XMLObject unmarshall(@Nonnull final Element domElement) throws UnmarshallingException {
         log.trace("Starting to unmarshall DOM element {}", QNameSupport.getNodeQName(domElement));
 
         final XMLObject xmlObject = buildXMLObject(domElement);
 
+        unmarshallAttributes(xmlObject, domElement);
+        unmarshallChildNodes(xmlObject, domElement);
+
+        xmlObject.setDOM(domElement);
+        return xmlObject;
+    }
+
+    /**
+     * Unmarshalls the attributes of the given DOM Element by passing each to
+     * {@link #unmarshallAttribute(XMLObject, Attr)}.
+     * 
+     * @param xmlObject the XMLObject that will receive information from the DOM attributes
+     * @param domElement the DOM Element whose attributes are to be unmarshalled
+     * 
+     * @throws UnmarshallingException thrown if there is a problem unmarshalling an attribute
+     */
+    protected void unmarshallAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final Element domElement)
+            throws UnmarshallingException {
         if (log.isTraceEnabled()) {
             log.trace("Unmarshalling attributes of DOM Element {}", QNameSupport.getNodeQName(domElement));
         }
@@ -100,7 +124,20 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
                 unmarshallAttribute(xmlObject, (Attr) attribute);
             }
         }
+    }
 
+    /**
+     * Unmarshalls the child nodes of the given DOM Element, passing child elements to
+     * {@link #unmarshallChildElement(XMLObject, Element)} and text to {@link #unmarshallTextContent(XMLObject, Text)}.
+     * 
+     * @param xmlObject the XMLObject that will receive information from the DOM child nodes
+     * @param domElement the DOM Element whose child nodes are to be unmarshalled
+     * 
+     * @throws UnmarshallingException thrown if there is a problem unmarshalling a child node
+     */
+    // Checkstyle: CyclomaticComplexity OFF
+    protected void unmarshallChildNodes(@Nonnull final XMLObject xmlObject, @Nonnull final Element domElement)
+            throws UnmarshallingException {
         if (log.isTraceEnabled()) {
             log.trace("Unmarshalling other child nodes of DOM Element {}", QNameSupport.getNodeQName(domElement));
         }
@@ -122,9 +159,6 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
             
             childNode = childNode.getNextSibling();
         }
-
-        xmlObject.setDOM(domElement);
-        return xmlObject;
     }
     // Checkstyle: CyclomaticComplexity ON
 
@@ -227,7 +261,7 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
         } else {
             namespace = new Namespace(attribute.getValue(), attribute.getLocalName());
         }
-        xmlObject.getNamespaceManager().registerNamespaceDeclaration(namespace);
+        xmlObject.getNamespaceManager().registerNamespaceDeclaration(InterningPool.internIfActive(namespace));
     }
 
     /**
@@ -337,8 +371,24 @@ public abstract class AbstractXMLObjectUnmarshaller implements Unmarshaller {
             throws UnmarshallingException {
         final String textContent = StringSupport.trimOrNull(content.getWholeText());
         if (textContent != null) {
-            processElementContent(xmlObject, textContent);
+            processElementContent(xmlObject,
+                    InterningPool.internValueIfActive(xmlObject.getElementQName(), textContent));
+        }
+    }
+
+    /**
+     * Get the value of an attribute, replaced with a shared instance if an {@link InterningPool} in effect on the
+     * current thread interns the values of the attribute.
+     * 
+     * @param attribute the attribute
+     * 
+     * @return the attribute value
+     */
+    @Nonnull protected String getAttributeValue(@Nonnull final Attr attribute) {
+        if (InterningPool.getCurrent() == null) {
+            return attribute.getValue();
         }
+        return InterningPool.internValueIfActive(QNameSupport.getNodeQName(attribute), attribute.getValue());
     }
 
     /**
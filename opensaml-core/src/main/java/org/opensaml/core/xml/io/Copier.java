@@ -0,0 +1,52 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+import org.w3c.dom.Document;
+
+/**
+ * Copiers are used to produce a deep copy of a {@link org.opensaml.core.xml.XMLObject} tree.
+ * 
+ * <p>
+ * The copy is a new, independent object graph whose parent is unset. Its namespace declarations, ID mappings and
+ * wildcard content are those which unmarshalling the marshalled form of the original would produce.
+ * </p>
+ */
+public interface Copier {
+
+    /**
+     * Copy the given XMLObject and its children.
+     * 
+     * <p>
+     * Any DOM created for, or cached on, the copy belongs to the given Document but is not appended to it.
+     * </p>
+     * 
+     * @param xmlObject the object to copy
+     * @param document the DOM document in which any DOM nodes for the copy are to be created
+     * 
+     * @return the copy of the given object
+     * 
+     * @throws MarshallingException thrown if the state of the given object can not be read
+     * @throws UnmarshallingException thrown if the copy can not be built
+     */
+    @Nonnull public XMLObject copy(@Nonnull final XMLObject xmlObject, @Nonnull final Document document)
+            throws MarshallingException, UnmarshallingException;
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBuilderFactory;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This thread-safe factory provides the {@link Copier}s used to deep copy {@link org.opensaml.core.xml.XMLObject}s.
+ * Copiers are stored and retrieved by a {@link javax.xml.namespace.QName} key. This key is either the XML Schema Type
+ * or element QName of the XMLObject to be copied, or the name of the default object provider for objects which it
+ * provides. Objects for which no copier is registered are copied by a {@link DefaultCopier}, which round trips
+ * them through their marshaller and unmarshaller, so copiers copying field by field, typically derived from
+ * {@link AbstractXMLObjectCopier}, are registered for the common object types.
+ */
+public class CopierFactory {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(CopierFactory.class);
+
+    /** Map of copiers to the objects they are for. */
+    @Nonnull private final Map<QName, Copier> copiers;
+
+    /** Copier used when none is registered for an object. */
+    @Nonnull private final Copier defaultCopier;
+
+    /**
+     * Constructor.
+     */
+    public CopierFactory() {
+        copiers = new ConcurrentHashMap<>();
+        defaultCopier = new DefaultCopier(this);
+    }
+
+    /**
+     * Gets the copier registered under a particular key, or null if none is registered.
+     * 
+     * @param key the key the copier was registered under
+     * 
+     * @return the copier or null
+     */
+    @Nullable public Copier getCopier(@Nullable final QName key) {
+        if (key == null) {
+            return null;
+        }
+
+        return copiers.get(key);
+    }
+
+    /**
+     * Retrieves the copier for the given XMLObject. The schema type, if present, is tried first as the key with the
+     * element QName used if no schema type is present or does not have a copier registered under it. If neither
+     * has a copier registered, and the object is one built by the default object provider because no builder is
+     * registered for either, the copier registered under the default provider's name is tried. Otherwise the
+     * default copier is returned.
+     * 
+     * @param xmlObject the XMLObject to retrieve the copier for
+     * 
+     * @return the copier that can be used for the given XMLObject
+     */
+    @Nonnull public Copier getCopier(@Nonnull final XMLObject xmlObject) {
+        Copier copier = getCopier(xmlObject.getSchemaType());
+
+        if (copier == null) {
+            copier = getCopier(xmlObject.getElementQName());
+        }
+
+        if (copier == null) {
+            final XMLObjectBuilderFactory builderFactory = XMLObjectProviderRegistrySupport.getBuilderFactory();
+            if (builderFactory.getBuilder(xmlObject.getSchemaType()) == null
+                    && builderFactory.getBuilder(xmlObject.getElementQName()) == null) {
+                copier = getCopier(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            }
+        }
+
+        return copier != null ? copier : defaultCopier;
+    }
+
+    /**
+     * Gets an immutable listing of all the copiers explicitly registered.
+     * 
+     * @return a listing of all the copiers explicitly registered
+     */
+    @Nonnull public Map<QName, Copier> getCopiers() {
+        return Collections.unmodifiableMap(copiers);
+    }
+
+    /**
+     * Registers a copier with this factory. If one exists for the key given it is replaced with the given copier.
+     * 
+     * @param key the key the copier is registered under
+     * @param copier the copier
+     */
+    public void registerCopier(@Nonnull final QName key, @Nonnull final Copier copier) {
+        Constraint.isNotNull(key, "Copier key cannot be null");
+        Constraint.isNotNull(copier, "Copier cannot be null");
+        log.debug("Registering copier, {}, for object type {}", copier.getClass().getName(), key);
+
+        copiers.put(key, copier);
+    }
+
+    /**
+     * Deregisters the copier for the given key.
+     * 
+     * @param key the key the copier was registered under
+     * 
+     * @return the copier previously registered or null
+     */
+    @Nullable public Copier deregisterCopier(@Nonnull final QName key) {
+        log.debug("Deregistering copier for object type {}", key);
+        if (key != null) {
+            return copiers.remove(key);
+        }
+
+        return null;
+    }
+}
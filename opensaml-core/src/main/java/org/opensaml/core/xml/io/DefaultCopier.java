@@ -0,0 +1,273 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.NamespaceSupport;
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+
+import org.opensaml.core.xml.Namespace;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A {@link Copier} which copies any {@link XMLObject} by reusing the object's {@link Marshaller} and
+ * {@link Unmarshaller}.
+ * 
+ * <p>
+ * This is the last-resort copier used by the {@link CopierFactory} for objects with no copier of their own, and by
+ * {@link AbstractXMLObjectCopier} for objects whose cached DOM must be preserved. The common object types have
+ * copiers, derived from {@link AbstractXMLObjectCopier}, which copy them field by field instead.
+ * </p>
+ * 
+ * <p>
+ * If the object has a cached DOM, for example because it has been signed, that DOM is imported into the target
+ * document along with the namespace declarations it inherits from its DOM ancestors, and a new object is unmarshalled
+ * from it. The original object and its DOM are not modified.
+ * </p>
+ * 
+ * <p>
+ * Otherwise, if the object's marshaller is an {@link AbstractXMLObjectMarshaller} and its unmarshaller is an
+ * {@link AbstractXMLObjectUnmarshaller}, the marshaller is used to produce only a transient, childless shell of the
+ * element carrying its attributes and content, and the unmarshaller builds the copy from that shell. The object's
+ * namespace declarations are carried over, and its children are copied recursively via their own copiers and added
+ * to the copy just as unmarshalled children would be. No DOM is cached on either object.
+ * </p>
+ * 
+ * <p>
+ * Objects whose marshaller or unmarshaller is of any other kind are fully marshalled to a DOM, which is cached on the
+ * original object as with any marshalling, and that DOM is then copied as above.
+ * </p>
+ */
+@ThreadSafe
+public class DefaultCopier implements Copier {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(DefaultCopier.class);
+
+    /** Factory from which to obtain the copiers for child objects, or null to use the configured factory. */
+    @Nullable private final CopierFactory copierFactory;
+
+    /** Constructor. */
+    public DefaultCopier() {
+        this(null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param factory the factory from which to obtain the copiers for child objects, or null to use the configured
+     *            factory
+     */
+    public DefaultCopier(@Nullable final CopierFactory factory) {
+        copierFactory = factory;
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public XMLObject copy(@Nonnull final XMLObject xmlObject, @Nonnull final Document document)
+            throws MarshallingException, UnmarshallingException {
+
+        if (xmlObject.getDOM() != null) {
+            log.trace("Copying cached DOM of {}", xmlObject.getElementQName());
+            return copyDOM(xmlObject.getDOM(), document);
+        }
+
+        final Marshaller marshaller = getMarshaller(xmlObject);
+        final Unmarshaller unmarshaller = getUnmarshaller(xmlObject);
+        if (!(marshaller instanceof AbstractXMLObjectMarshaller)
+                || !(unmarshaller instanceof AbstractXMLObjectUnmarshaller)) {
+            log.trace("Marshaller or unmarshaller for {} does not support partial processing, copying full DOM",
+                    xmlObject.getElementQName());
+            return copyDOM(marshaller.marshall(xmlObject), document);
+        }
+
+        final AbstractXMLObjectUnmarshaller shellUnmarshaller = (AbstractXMLObjectUnmarshaller) unmarshaller;
+        final Element shell = ((AbstractXMLObjectMarshaller) marshaller).marshallShell(xmlObject, document);
+        declareNamespaces(xmlObject, shell);
+
+        final XMLObject copy = shellUnmarshaller.buildXMLObject(shell);
+        for (final Namespace namespace : xmlObject.getNamespaceManager().getNamespaceDeclarations()) {
+            copy.getNamespaceManager().registerNamespaceDeclaration(namespace);
+        }
+
+        final NamedNodeMap attributes = shell.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            if (!XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())) {
+                shellUnmarshaller.unmarshallAttribute(copy, attribute);
+            }
+        }
+        shellUnmarshaller.unmarshallChildNodes(copy, shell);
+
+        final List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children != null) {
+            final CopierFactory factory = getCopierFactory();
+            for (final XMLObject child : children) {
+                if (child != null) {
+                    shellUnmarshaller.processChildElement(copy, factory.getCopier(child).copy(child, document));
+                }
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * Unmarshall a new XMLObject from a copy of a DOM element.
+     * 
+     * @param element the element to copy, which is not modified
+     * @param document the document into which the element is to be imported
+     * 
+     * @return the new XMLObject, with the imported element as its cached DOM
+     * 
+     * @throws UnmarshallingException thrown if the copied element can not be unmarshalled
+     */
+    @Nonnull protected XMLObject copyDOM(@Nonnull final Element element, @Nonnull final Document document)
+            throws UnmarshallingException {
+        final Element copyElement = (Element) document.importNode(element, true);
+        declareInheritedNamespaces(element, copyElement);
+
+        final UnmarshallerFactory unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
+        Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(copyElement);
+        if (unmarshaller == null) {
+            unmarshaller =
+                    unmarshallerFactory.getUnmarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (unmarshaller == null) {
+                final String errorMsg = "No unmarshaller available for " + QNameSupport.getNodeQName(copyElement);
+                log.error(errorMsg);
+                throw new UnmarshallingException(errorMsg);
+            }
+        }
+        return unmarshaller.unmarshall(copyElement);
+    }
+
+    /**
+     * Declare on a shell element the namespaces used by an XMLObject, so that prefixed values written to the shell
+     * can be resolved when it is unmarshalled.
+     * 
+     * @param xmlObject the XMLObject being copied
+     * @param shell the shell element
+     */
+    private void declareNamespaces(@Nonnull final XMLObject xmlObject, @Nonnull final Element shell) {
+        for (final Namespace namespace : xmlObject.getNamespaces()) {
+            if (Objects.equals(namespace.getNamespacePrefix(), XMLConstants.XML_PREFIX)
+                    || Objects.equals(namespace.getNamespaceURI(), XMLConstants.XML_NS)) {
+                continue;
+            }
+            NamespaceSupport.appendNamespaceDeclaration(shell, StringSupport.trimOrNull(namespace.getNamespaceURI()),
+                    StringSupport.trimOrNull(namespace.getNamespacePrefix()));
+        }
+    }
+
+    /**
+     * Declare on a copied element the namespaces visible to the original element from its DOM ancestors, where not
+     * already declared on the copy.
+     * 
+     * @param original the original element
+     * @param copy the copied element
+     */
+    private void declareInheritedNamespaces(@Nonnull final Element original, @Nonnull final Element copy) {
+        Node ancestor = original.getParentNode();
+        while (ancestor != null && ancestor.getNodeType() == Node.ELEMENT_NODE) {
+            final NamedNodeMap attributes = ancestor.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Attr attribute = (Attr) attributes.item(i);
+                if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                        && !copy.hasAttributeNS(XMLConstants.XMLNS_NS, attribute.getLocalName())) {
+                    copy.setAttributeNS(XMLConstants.XMLNS_NS, attribute.getName(), attribute.getValue());
+                }
+            }
+            ancestor = ancestor.getParentNode();
+        }
+    }
+
+    /**
+     * Get the DOM marshaller for an XMLObject, falling back to the default provider's marshaller.
+     * 
+     * @param xmlObject the XMLObject
+     * 
+     * @return the marshaller
+     * 
+     * @throws MarshallingException thrown if no marshaller is available
+     */
+    @Nonnull private Marshaller getMarshaller(@Nonnull final XMLObject xmlObject) throws MarshallingException {
+        final MarshallerFactory marshallerFactory = XMLObjectProviderRegistrySupport.getMarshallerFactory();
+        Marshaller marshaller = marshallerFactory.getMarshaller(xmlObject);
+        if (marshaller == null) {
+            marshaller = marshallerFactory.getMarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (marshaller == null) {
+                final String errorMsg = "No marshaller available for " + xmlObject.getElementQName();
+                log.error(errorMsg);
+                throw new MarshallingException(errorMsg);
+            }
+        }
+        return marshaller;
+    }
+
+    /**
+     * Get the DOM unmarshaller for an XMLObject, by schema type then element name, falling back to the default
+     * provider's unmarshaller.
+     * 
+     * @param xmlObject the XMLObject
+     * 
+     * @return the unmarshaller
+     * 
+     * @throws UnmarshallingException thrown if no unmarshaller is available
+     */
+    @Nonnull private Unmarshaller getUnmarshaller(@Nonnull final XMLObject xmlObject) throws UnmarshallingException {
+        final UnmarshallerFactory unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
+        Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(xmlObject.getSchemaType());
+        if (unmarshaller == null) {
+            unmarshaller = unmarshallerFactory.getUnmarshaller(xmlObject.getElementQName());
+        }
+        if (unmarshaller == null) {
+            unmarshaller =
+                    unmarshallerFactory.getUnmarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (unmarshaller == null) {
+                final String errorMsg = "No unmarshaller available for " + xmlObject.getElementQName();
+                log.error(errorMsg);
+                throw new UnmarshallingException(errorMsg);
+            }
+        }
+        return unmarshaller;
+    }
+
+    /**
+     * Get the factory from which to obtain the copiers for child objects.
+     * 
+     * @return the copier factory
+     */
+    @Nonnull private CopierFactory getCopierFactory() {
+        return copierFactory != null ? copierFactory : XMLObjectProviderRegistrySupport.getCopierFactory();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+
+import org.opensaml.core.xml.Namespace;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+/**
+ * A {@link StreamingMarshaller} which writes any {@link XMLObject} by reusing the object's DOM {@link Marshaller}.
+ * 
+ * <p>
+ * If the object has a cached DOM, for example because it has been signed, that DOM is written as-is along with the
+ * namespace declarations it inherits from its DOM ancestors, so that the signature remains valid.
+ * </p>
+ * 
+ * <p>
+ * Otherwise, if the object's marshaller is an {@link AbstractXMLObjectMarshaller}, it is used to produce only a
+ * transient, childless shell of the element carrying its attributes and content. The shell is written, with
+ * namespace declarations computed as by {@link AbstractXMLObjectMarshaller#marshallNamespaces(XMLObject, Element)},
+ * and the object's children are written recursively via their own streaming marshallers. No DOM is cached on the
+ * object.
+ * </p>
+ * 
+ * <p>
+ * Objects whose marshaller is of any other kind are fully marshalled to a DOM, which is then written.
+ * </p>
+ */
+public class DefaultStreamingMarshaller implements StreamingMarshaller {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(DefaultStreamingMarshaller.class);
+
+    /** {@inheritDoc} */
+    public void marshall(@Nonnull final XMLObject xmlObject, @Nonnull final StreamingMarshallingContext context)
+            throws MarshallingException {
+
+        if (xmlObject.getDOM() != null) {
+            log.trace("Writing cached DOM of {}", xmlObject.getElementQName());
+            context.writeElement(xmlObject.getDOM(), true);
+            return;
+        }
+
+        final Marshaller marshaller = getMarshaller(xmlObject, context.getMarshallerFactory());
+        if (marshaller instanceof AbstractXMLObjectMarshaller) {
+            final Element shell = ((AbstractXMLObjectMarshaller) marshaller).marshallShell(xmlObject,
+                    context.getScratchDocument());
+
+            context.writeStartElement(shell.getPrefix(), shell.getNamespaceURI(), shell.getLocalName());
+            marshallNamespaces(xmlObject, context);
+            context.writeStartElementContent(shell);
+
+            final List<XMLObject> children = xmlObject.getOrderedChildren();
+            if (children != null) {
+                for (final XMLObject child : children) {
+                    if (child != null) {
+                        context.marshall(child);
+                    }
+                }
+            }
+
+            context.writeChildNodes(shell);
+            context.writeEndElement();
+        } else {
+            log.trace("Marshaller for {} does not support partial marshalling, writing full DOM",
+                    xmlObject.getElementQName());
+            context.writeElement(marshaller.marshall(xmlObject), true);
+        }
+    }
+
+    /**
+     * Write the namespace declarations for an XMLObject, following the rules of
+     * {@link AbstractXMLObjectMarshaller#marshallNamespaces(XMLObject, Element)}.
+     * 
+     * @param xmlObject the XMLObject being written
+     * @param context the current streaming context
+     * 
+     * @throws MarshallingException thrown if a declaration can not be written
+     */
+    protected void marshallNamespaces(@Nonnull final XMLObject xmlObject,
+            @Nonnull final StreamingMarshallingContext context) throws MarshallingException {
+        final Set<Namespace> declarations = xmlObject.getNamespaceManager().getNamespaceDeclarations();
+        for (final Namespace namespace : xmlObject.getNamespaces()) {
+            final String nsURI = StringSupport.trimOrNull(namespace.getNamespaceURI());
+            final String nsPrefix = StringSupport.trimOrNull(namespace.getNamespacePrefix());
+            if (!declarations.contains(namespace)) {
+                if (Objects.equals(nsPrefix, XMLConstants.XML_PREFIX)
+                        || Objects.equals(nsURI, XMLConstants.XML_NS)) {
+                    continue;
+                }
+
+                final String declared = context.lookupNamespaceURI(nsPrefix);
+                if (declared != null && declared.equals(namespace.getNamespaceURI())) {
+                    continue;
+                }
+            }
+            context.declareNamespace(nsPrefix, nsURI);
+        }
+    }
+
+    /**
+     * Get the DOM marshaller for an XMLObject, falling back to the default provider's marshaller.
+     * 
+     * @param xmlObject the XMLObject
+     * @param marshallerFactory the factory from which to obtain the marshaller
+     * 
+     * @return the marshaller
+     * 
+     * @throws MarshallingException thrown if no marshaller is available
+     */
+    @Nonnull private Marshaller getMarshaller(@Nonnull final XMLObject xmlObject,
+            @Nonnull final MarshallerFactory marshallerFactory) throws MarshallingException {
+        Marshaller marshaller = marshallerFactory.getMarshaller(xmlObject);
+        if (marshaller == null) {
+            marshaller = marshallerFactory.getMarshaller(XMLObjectProviderRegistrySupport.getDefaultProviderQName());
+            if (marshaller == null) {
+                final String errorMsg = "No marshaller available for " + xmlObject.getElementQName();
+                log.error(errorMsg);
+                throw new MarshallingException(errorMsg);
+            }
+            log.trace("No marshaller was registered for {}, using default marshaller", xmlObject.getElementQName());
+        }
+        return marshaller;
+    }
+}
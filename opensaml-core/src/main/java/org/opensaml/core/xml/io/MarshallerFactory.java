@@ -45,11 +45,19 @@ public class MarshallerFactory {
     /** Map of marshallers to the elements they are for. */
     private final Map<QName, Marshaller> marshallers;
 
+    /** Map of streaming marshallers to the elements they are for. */
+    private final Map<QName, StreamingMarshaller> streamingMarshallers;
+
+    /** Streaming marshaller used when none is registered for an object. */
+    private final StreamingMarshaller defaultStreamingMarshaller;
+
     /**
      * Constructor.
      */
     public MarshallerFactory() {
         marshallers = new ConcurrentHashMap<>();
+        streamingMarshallers = new ConcurrentHashMap<>();
+        defaultStreamingMarshaller = new DefaultStreamingMarshaller();
     }
 
     /**
@@ -123,7 +131,80 @@ public class MarshallerFactory {
         if(key != null){
             return marshallers.remove(key);
         }
-        
+
+        return null;
+    }
+
+    /**
+     * Retrieves the streaming marshaller for the given XMLObject. A streaming marshaller registered under the schema
+     * type, if present, is tried first, then one registered under the element QName. If neither is registered, the
+     * object's DOM marshaller is returned if it implements {@link StreamingMarshaller}, else the default
+     * streaming marshaller, which reuses the DOM marshaller.
+     *
+     * @param xmlObject the XMLObject to retrieve the streaming marshaller for
+     *
+     * @return the streaming marshaller that can be used for the given XMLObject
+     */
+    @Nonnull public StreamingMarshaller getStreamingMarshaller(@Nonnull final XMLObject xmlObject) {
+        StreamingMarshaller marshaller = null;
+
+        if (xmlObject.getSchemaType() != null) {
+            marshaller = streamingMarshallers.get(xmlObject.getSchemaType());
+        }
+
+        if (marshaller == null) {
+            marshaller = streamingMarshallers.get(xmlObject.getElementQName());
+        }
+
+        if (marshaller == null) {
+            final Marshaller domMarshaller = getMarshaller(xmlObject);
+            if (domMarshaller instanceof StreamingMarshaller) {
+                marshaller = (StreamingMarshaller) domMarshaller;
+            } else {
+                marshaller = defaultStreamingMarshaller;
+            }
+        }
+
+        return marshaller;
+    }
+
+    /**
+     * Gets an immutable listing of all the streaming marshallers explicitly registered.
+     *
+     * @return a listing of all the streaming marshallers explicitly registered
+     */
+    @Nonnull public Map<QName, StreamingMarshaller> getStreamingMarshallers() {
+        return Collections.unmodifiableMap(streamingMarshallers);
+    }
+
+    /**
+     * Registers a streaming marshaller with this factory. If one exists for the key given it is replaced with
+     * the given marshaller.
+     *
+     * @param key the key the marshaller is registered under
+     * @param marshaller the streaming marshaller
+     */
+    public void registerStreamingMarshaller(@Nonnull final QName key, @Nonnull final StreamingMarshaller marshaller) {
+        Constraint.isNotNull(key, "Streaming marshaller key cannot be null");
+        Constraint.isNotNull(marshaller, "Streaming marshaller cannot be null");
+        log.debug("Registering streaming marshaller, {}, for object type {}", marshaller.getClass().getName(), key);
+
+        streamingMarshallers.put(key, marshaller);
+    }
+
+    /**
+     * Deregisters the streaming marshaller for the given key.
+     *
+     * @param key the key the marshaller was registered under
+     *
+     * @return the streaming marshaller previously registered or null
+     */
+    @Nullable public StreamingMarshaller deregisterStreamingMarshaller(@Nonnull final QName key) {
+        log.debug("Deregistering streaming marshaller for object type {}", key);
+        if (key != null) {
+            return streamingMarshallers.remove(key);
+        }
+
         return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.core.xml.XMLObject;
+
+/**
+ * Marshallers are used to write {@link XMLObject}s directly to a StAX {@link javax.xml.stream.XMLStreamWriter},
+ * without building a W3C DOM representation of them.
+ * 
+ * <p>
+ * Unlike {@link Marshaller}, a streaming marshaller does not cache any DOM on the objects it writes. Namespace
+ * declarations are emitted according to the same rules applied by {@link AbstractXMLObjectMarshaller}, using the
+ * namespace scope tracked by the supplied {@link StreamingMarshallingContext}.
+ * </p>
+ */
+public interface StreamingMarshaller {
+
+    /**
+     * Write the given XMLObject, and its children, to the writer held by the context.
+     * 
+     * @param xmlObject the object to write
+     * @param context the current streaming context
+     * 
+     * @throws MarshallingException thrown if the object can not be written
+     */
+    void marshall(@Nonnull final XMLObject xmlObject, @Nonnull final StreamingMarshallingContext context)
+            throws MarshallingException;
+}
@@ -0,0 +1,452 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The state of a single streaming marshalling operation.
+ * 
+ * <p>
+ * The context wraps the target {@link XMLStreamWriter} and tracks the namespace declarations in scope for the
+ * element currently being written, so that {@link StreamingMarshaller}s can avoid redeclaring namespaces already
+ * declared by an ancestor. The writer must not be namespace repairing; all declarations are written explicitly
+ * through this context.
+ * </p>
+ * 
+ * <p>
+ * Instances are not thread-safe and are intended to be used for the marshalling of a single object tree.
+ * </p>
+ */
+public class StreamingMarshallingContext {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(StreamingMarshallingContext.class);
+
+    /** The writer to which objects are written. */
+    @Nonnull private final XMLStreamWriter writer;
+
+    /** The factory used to look up marshallers for child objects. */
+    @Nonnull private final MarshallerFactory marshallerFactory;
+
+    /** Namespace declarations made on each currently open element, innermost first. */
+    @Nonnull private final Deque<Map<String, String>> scopes;
+
+    /** Document used to hold transient DOM fragments, created on demand. */
+    @Nullable private Document scratchDocument;
+
+    /**
+     * Constructor.
+     * 
+     * @param streamWriter the writer to which objects are written
+     */
+    public StreamingMarshallingContext(@Nonnull final XMLStreamWriter streamWriter) {
+        this(streamWriter, XMLObjectProviderRegistrySupport.getMarshallerFactory());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param streamWriter the writer to which objects are written
+     * @param factory the factory used to look up marshallers for child objects
+     */
+    public StreamingMarshallingContext(@Nonnull final XMLStreamWriter streamWriter,
+            @Nonnull final MarshallerFactory factory) {
+        writer = Constraint.isNotNull(streamWriter, "XMLStreamWriter cannot be null");
+        marshallerFactory = Constraint.isNotNull(factory, "MarshallerFactory cannot be null");
+        scopes = new ArrayDeque<>();
+    }
+
+    /**
+     * Get the writer to which objects are written.
+     * 
+     * @return the writer
+     */
+    @Nonnull public XMLStreamWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Get the factory used to look up marshallers for child objects.
+     * 
+     * @return the marshaller factory
+     */
+    @Nonnull public MarshallerFactory getMarshallerFactory() {
+        return marshallerFactory;
+    }
+
+    /**
+     * Get a Document which may be used to build transient DOM fragments, such as the shell of an element whose
+     * attributes and content are produced by a DOM marshaller.
+     * 
+     * @return the scratch document
+     * 
+     * @throws MarshallingException thrown if the document can not be created
+     */
+    @Nonnull public Document getScratchDocument() throws MarshallingException {
+        if (scratchDocument == null) {
+            try {
+                scratchDocument = XMLObjectProviderRegistrySupport.getParserPool().newDocument();
+            } catch (final XMLParserException e) {
+                throw new MarshallingException("Unable to create Document to hold marshalled element fragments", e);
+            }
+        }
+        return scratchDocument;
+    }
+
+    /**
+     * Look up the namespace URI bound to a prefix in the scope of the element currently being written.
+     * 
+     * @param prefix the prefix, or null for the default namespace
+     * 
+     * @return the bound namespace URI, or null if the prefix is not bound
+     */
+    @Nullable public String lookupNamespaceURI(@Nullable final String prefix) {
+        final String key = normalize(prefix);
+        if (XMLConstants.XML_PREFIX.equals(key)) {
+            return XMLConstants.XML_NS;
+        }
+        for (final Map<String, String> scope : scopes) {
+            if (scope.containsKey(key)) {
+                return scope.get(key);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start a new element, opening a new namespace scope. Namespace declarations and attributes for the element
+     * may then be written until content or a child element is written.
+     * 
+     * @param prefix the element prefix, or null
+     * @param namespaceURI the element namespace URI, or null
+     * @param localName the element local name
+     * 
+     * @throws MarshallingException thrown if the element can not be written
+     */
+    public void writeStartElement(@Nullable final String prefix, @Nullable final String namespaceURI,
+            @Nonnull final String localName) throws MarshallingException {
+        try {
+            writer.writeStartElement(normalize(prefix), localName, normalize(namespaceURI));
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write start of element " + localName, e);
+        }
+        scopes.push(new HashMap<String, String>(4));
+    }
+
+    /**
+     * Write a namespace declaration on the element currently being started, unless the prefix has already been
+     * declared on that element.
+     * 
+     * @param prefix the prefix, or null for the default namespace
+     * @param namespaceURI the namespace URI, or null to undeclare the default namespace
+     * 
+     * @throws MarshallingException thrown if the declaration can not be written
+     */
+    public void declareNamespace(@Nullable final String prefix, @Nullable final String namespaceURI)
+            throws MarshallingException {
+        final Map<String, String> scope = Constraint.isNotNull(scopes.peek(), "No element has been started");
+        final String key = normalize(prefix);
+        final String value = normalize(namespaceURI);
+        if (scope.containsKey(key)) {
+            if (!Objects.equals(scope.get(key), value)) {
+                log.warn("Prefix '{}' already declared as '{}', ignoring conflicting declaration of '{}'",
+                        key, scope.get(key), value);
+            }
+            return;
+        }
+        if (key.isEmpty() && value.isEmpty() && lookupNamespaceURI(null) == null) {
+            // Undeclaring a default namespace which was never declared
+            return;
+        }
+
+        try {
+            if (key.isEmpty()) {
+                writer.writeDefaultNamespace(value);
+            } else {
+                writer.writeNamespace(key, value);
+            }
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write declaration of namespace " + value, e);
+        }
+        scope.put(key, value);
+    }
+
+    /**
+     * Ensure that a prefix is bound to a namespace URI in the scope of the element currently being started,
+     * declaring it on that element if it is not.
+     * 
+     * @param prefix the prefix, or null for the default namespace
+     * @param namespaceURI the namespace URI, or null for no namespace
+     * 
+     * @throws MarshallingException thrown if the declaration can not be written
+     */
+    public void ensureNamespace(@Nullable final String prefix, @Nullable final String namespaceURI)
+            throws MarshallingException {
+        final String key = normalize(prefix);
+        final String value = normalize(namespaceURI);
+        if (XMLConstants.XML_PREFIX.equals(key) || XMLConstants.XMLNS_PREFIX.equals(key)) {
+            return;
+        }
+        if (!Objects.equals(value, normalize(lookupNamespaceURI(key)))) {
+            declareNamespace(key, value);
+        }
+    }
+
+    /**
+     * Write an attribute on the element currently being started. The attribute's namespace must already be
+     * in scope, see {@link #ensureNamespace(String, String)}.
+     * 
+     * @param prefix the attribute prefix, or null
+     * @param namespaceURI the attribute namespace URI, or null
+     * @param localName the attribute local name
+     * @param value the attribute value
+     * 
+     * @throws MarshallingException thrown if the attribute can not be written
+     */
+    public void writeAttribute(@Nullable final String prefix, @Nullable final String namespaceURI,
+            @Nonnull final String localName, @Nonnull final String value) throws MarshallingException {
+        try {
+            if (StringSupport.trimOrNull(namespaceURI) == null) {
+                writer.writeAttribute(localName, value);
+            } else {
+                writer.writeAttribute(normalize(prefix), namespaceURI, localName, value);
+            }
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write attribute " + localName, e);
+        }
+    }
+
+    /**
+     * End the element currently being written, closing its namespace scope.
+     * 
+     * @throws MarshallingException thrown if the element can not be ended
+     */
+    public void writeEndElement() throws MarshallingException {
+        try {
+            writer.writeEndElement();
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write end of element", e);
+        }
+        scopes.pop();
+    }
+
+    /**
+     * Write an XMLObject using the streaming marshaller obtained for it from the marshaller factory.
+     * 
+     * @param xmlObject the object to write
+     * 
+     * @throws MarshallingException thrown if the object can not be written
+     */
+    public void marshall(@Nonnull final XMLObject xmlObject) throws MarshallingException {
+        marshallerFactory.getStreamingMarshaller(xmlObject).marshall(xmlObject, this);
+    }
+
+    /**
+     * Write a DOM element and its descendants.
+     * 
+     * <p>
+     * Namespace declarations present on the element are written, and any namespace used by the element or its
+     * attributes which is not in scope is declared. If <code>rootNamespaces</code> is true, all the namespace
+     * declarations visible to the element from its DOM ancestors are also written if not already in scope, so
+     * that the element's inclusive namespace context is preserved, as is required for signed content.
+     * </p>
+     * 
+     * @param element the element to write
+     * @param rootNamespaces whether to declare the namespaces inherited from the element's DOM ancestors
+     * 
+     * @throws MarshallingException thrown if the element can not be written
+     */
+    public void writeElement(@Nonnull final Element element, final boolean rootNamespaces)
+            throws MarshallingException {
+        writeStartElement(element.getPrefix(), element.getNamespaceURI(), getLocalName(element));
+
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())) {
+                declareNamespace(XMLConstants.XMLNS_PREFIX.equals(attribute.getPrefix()) ? attribute.getLocalName()
+                        : null, attribute.getValue());
+            }
+        }
+
+        if (rootNamespaces) {
+            declareInheritedNamespaces(element);
+        }
+
+        writeStartElementContent(element);
+
+        writeChildNodes(element);
+
+        writeEndElement();
+    }
+
+    /**
+     * Write the attributes of a DOM element, other than namespace declarations, ensuring that the namespaces of the
+     * element and its attributes are in scope.
+     * 
+     * <p>
+     * This must be called after {@link #writeStartElement(String, String, String)} and after any explicit namespace
+     * declarations have been written.
+     * </p>
+     * 
+     * @param element the DOM element whose attributes are to be written
+     * 
+     * @throws MarshallingException thrown if the attributes can not be written
+     */
+    public void writeStartElementContent(@Nonnull final Element element) throws MarshallingException {
+        ensureNamespace(element.getPrefix(), element.getNamespaceURI());
+
+        final NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            if (!XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())
+                    && StringSupport.trimOrNull(attribute.getNamespaceURI()) != null) {
+                ensureNamespace(attribute.getPrefix(), attribute.getNamespaceURI());
+            }
+        }
+
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Attr attribute = (Attr) attributes.item(i);
+            if (!XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())) {
+                writeAttribute(attribute.getPrefix(), attribute.getNamespaceURI(), getLocalName(attribute),
+                        attribute.getValue());
+            }
+        }
+    }
+
+    /**
+     * Write the child nodes of a DOM node.
+     * 
+     * @param node the node whose children are to be written
+     * 
+     * @throws MarshallingException thrown if the nodes can not be written
+     */
+    public void writeChildNodes(@Nonnull final Node node) throws MarshallingException {
+        final NodeList children = node.getChildNodes();
+        try {
+            for (int i = 0; i < children.getLength(); i++) {
+                final Node child = children.item(i);
+                switch (child.getNodeType()) {
+                    case Node.ELEMENT_NODE:
+                        writeElement((Element) child, false);
+                        break;
+                    case Node.TEXT_NODE:
+                        writer.writeCharacters(child.getNodeValue());
+                        break;
+                    case Node.CDATA_SECTION_NODE:
+                        writer.writeCData(child.getNodeValue());
+                        break;
+                    case Node.COMMENT_NODE:
+                        writer.writeComment(child.getNodeValue());
+                        break;
+                    case Node.PROCESSING_INSTRUCTION_NODE:
+                        writer.writeProcessingInstruction(child.getNodeName(), child.getNodeValue());
+                        break;
+                    case Node.ENTITY_REFERENCE_NODE:
+                        writeChildNodes(child);
+                        break;
+                    default:
+                        log.trace("Ignoring DOM node of type {}", child.getNodeType());
+                }
+            }
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write content of " + node.getNodeName(), e);
+        }
+    }
+
+    /**
+     * Declare the namespaces visible to an element from its DOM ancestors, where not already in scope.
+     * 
+     * @param element the element
+     * 
+     * @throws MarshallingException thrown if a declaration can not be written
+     */
+    private void declareInheritedNamespaces(@Nonnull final Element element) throws MarshallingException {
+        final Map<String, String> inherited = new HashMap<>();
+        Node ancestor = element.getParentNode();
+        while (ancestor != null && ancestor.getNodeType() == Node.ELEMENT_NODE) {
+            final NamedNodeMap attributes = ancestor.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Attr attribute = (Attr) attributes.item(i);
+                if (XMLConstants.XMLNS_NS.equals(attribute.getNamespaceURI())) {
+                    final String prefix = XMLConstants.XMLNS_PREFIX.equals(attribute.getPrefix())
+                            ? attribute.getLocalName() : "";
+                    if (!inherited.containsKey(prefix)) {
+                        inherited.put(prefix, attribute.getValue());
+                    }
+                }
+            }
+            ancestor = ancestor.getParentNode();
+        }
+
+        final Map<String, String> declared = scopes.peek();
+        for (final Map.Entry<String, String> entry : inherited.entrySet()) {
+            if (!declared.containsKey(entry.getKey())) {
+                ensureNamespace(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Get the local name of a DOM node, allowing for nodes created with DOM Level 1 methods.
+     * 
+     * @param node the node
+     * 
+     * @return the local name
+     */
+    @Nonnull private String getLocalName(@Nonnull final Node node) {
+        return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+    }
+
+    /**
+     * Normalize a prefix or namespace URI, mapping null to the empty string used by StAX.
+     * 
+     * @param value the value to normalize
+     * 
+     * @return the normalized value
+     */
+    @Nonnull private static String normalize(@Nullable final String value) {
+        return value != null ? value : "";
+    }
+}
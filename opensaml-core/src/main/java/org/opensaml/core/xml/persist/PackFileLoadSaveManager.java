@@ -0,0 +1,1157 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.ParameterName;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+/**
+ * Implementation of {@link XMLObjectLoadSaveManager} which stores serialized XML as records appended to a small
+ * number of segment files, rather than as one file per key.
+ * 
+ * <p>
+ * Each save or removal appends a checksummed record to the current segment, and an in-memory index maps each key
+ * to the location of its latest record. The index is rebuilt when the manager is first used, by reading the
+ * segments sequentially through memory mappings. A torn record at the end of the last segment, as left by an
+ * interrupted write, is discarded. Segments are rolled once they reach {@link #getMaxSegmentSize()}, and when the
+ * proportion of space occupied by superseded records exceeds {@link #getCompactionRatio()}, the live records are
+ * rewritten to new segments and the old ones deleted.
+ * </p>
+ * 
+ * <p>
+ * {@link #listAll()} reads records in storage order and unmarshalls them in parallel batches, using up to
+ * {@link #getUnmarshallThreads()} threads. Objects are returned with an {@link XMLObjectSource} holding the
+ * stored bytes, and objects which carry one are saved from it without being marshalled.
+ * </p>
+ * 
+ * <p>
+ * Writes are not forced to the storage device individually; the checksums ensure that a record lost or damaged
+ * by a crash is detected and ignored. A segment is forced when it is closed, so segments superseded by compaction
+ * are only deleted once the records copied from them are durable. The base directory must not be shared with
+ * another manager instance.
+ * </p>
+ *
+ * @param <T> the specific base XML object type being managed
+ */
+@ThreadSafe
+public class PackFileLoadSaveManager<T extends XMLObject> extends AbstractConditionalLoadXMLObjectLoadSaveManager<T>
+        implements Closeable {
+
+    /** Default maximum segment size in bytes: {@value}. */
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /** Default proportion of superseded data at which segments are compacted: {@value}. */
+    public static final float DEFAULT_COMPACTION_RATIO = 0.5f;
+
+    /** Default total size in bytes below which segments are never compacted: {@value}. */
+    public static final long DEFAULT_MIN_COMPACTION_SIZE = 1024L * 1024;
+
+    /** Number of records unmarshalled per thread in each {@link #listAll()} batch. */
+    private static final int BATCH_SIZE_PER_THREAD = 32;
+
+    /** Seconds for which an idle unmarshalling thread is kept. */
+    private static final long UNMARSHALL_THREAD_KEEP_ALIVE = 60;
+
+    /** Segment file name prefix. */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /** Segment file name suffix. */
+    private static final String SEGMENT_SUFFIX = ".pack";
+
+    /** Marker at the start of every record. */
+    private static final int RECORD_MAGIC = 0x584F5250;
+
+    /** Record type of a save. */
+    private static final byte TYPE_SAVE = 1;
+
+    /** Record type of a removal. */
+    private static final byte TYPE_REMOVE = 2;
+
+    /** Length of the fixed record header: magic, type, timestamp, key length and value length. */
+    private static final int HEADER_LENGTH = 4 + 1 + 8 + 4 + 4;
+
+    /** Length of the trailing record checksum. */
+    private static final int CHECKSUM_LENGTH = 4;
+
+    /** Logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(PackFileLoadSaveManager.class);
+
+    /** The directory holding the segment files. */
+    @Nonnull private final File baseDirectory;
+
+    /** Parser pool instance for deserializing XML. */
+    @Nonnull private final ParserPool parserPool;
+
+    /** Maximum segment size in bytes. */
+    @Positive private long maxSegmentSize;
+
+    /** Proportion of superseded data at which segments are compacted. */
+    private float compactionRatio;
+
+    /** Total size in bytes below which segments are never compacted. */
+    private long minCompactionSize;
+
+    /** Number of threads used to unmarshall records in {@link #listAll()}. */
+    @Positive private int unmarshallThreads;
+
+    /** Executor used to unmarshall records in parallel, created on first use. */
+    @Nullable private ThreadPoolExecutor unmarshallExecutor;
+
+    /** Segments by sequence number, null until opened. */
+    @Nullable private TreeMap<Integer, Segment> segments;
+
+    /** Location of the latest save record for each key. */
+    @Nonnull private final Map<String, Location> index;
+
+    /** Channel appending to the current segment. */
+    @Nullable private FileChannel writer;
+
+    /** Total size of all segments. */
+    private long totalBytes;
+
+    /** Total size of the records referenced by the index. */
+    private long liveBytes;
+
+    /** Most recent record timestamp, used to keep timestamps strictly increasing. */
+    private long lastTimestamp;
+
+    /**
+     * Constructor.
+     *
+     * @param baseDir the base directory, must be an absolute path
+     */
+    public PackFileLoadSaveManager(@ParameterName(name="baseDir") @Nonnull final String baseDir) {
+        this(new File(Constraint.isNotNull(StringSupport.trimOrNull(baseDir),
+                "Base directory string instance was null or empty")), null, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param baseDir the base directory, must be an absolute path
+     */
+    public PackFileLoadSaveManager(@ParameterName(name="baseDirFile") @Nonnull final File baseDir) {
+        this(baseDir, null, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param baseDir the base directory, must be an absolute path
+     * @param pp the parser pool instance to use
+     */
+    public PackFileLoadSaveManager(@ParameterName(name="baseDirFile") @Nonnull final File baseDir,
+            @ParameterName(name="parserPool") @Nullable final ParserPool pp) {
+        this(baseDir, pp, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param baseDir the base directory, must be an absolute path
+     * @param pp the parser pool instance to use
+     * @param conditionalLoad whether {@link #load(String)} should behave
+     *      as defined in {@link ConditionalLoadXMLObjectLoadSaveManager}
+     */
+    public PackFileLoadSaveManager(@ParameterName(name="baseDirFile") @Nonnull final File baseDir,
+            @ParameterName(name="parserPool") @Nullable final ParserPool pp,
+            @ParameterName(name="conditionalLoad") final boolean conditionalLoad) {
+        super(conditionalLoad);
+
+        baseDirectory = Constraint.isNotNull(baseDir, "Base directory File instance was null");
+        Constraint.isTrue(baseDirectory.isAbsolute(), "Base directory specified was not an absolute path");
+        if (baseDirectory.exists()) {
+            Constraint.isTrue(baseDirectory.isDirectory(), "Existing base directory path was not a directory");
+        } else {
+            Constraint.isTrue(baseDirectory.mkdirs(), "Base directory did not exist and could not be created");
+        }
+
+        if (pp != null) {
+            parserPool = pp;
+        } else {
+            parserPool = Constraint.isNotNull(XMLObjectProviderRegistrySupport.getParserPool(),
+                    "Specified ParserPool was null and global ParserPool was not available");
+        }
+
+        maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+        compactionRatio = DEFAULT_COMPACTION_RATIO;
+        minCompactionSize = DEFAULT_MIN_COMPACTION_SIZE;
+        unmarshallThreads = Runtime.getRuntime().availableProcessors();
+        index = new HashMap<>();
+    }
+
+    /**
+     * Get the size in bytes beyond which a new segment is started.
+     *
+     * <p>Defaults to: {@value #DEFAULT_MAX_SEGMENT_SIZE}.</p>
+     *
+     * @return the maximum segment size
+     */
+    @Positive public synchronized long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    /**
+     * Set the size in bytes beyond which a new segment is started.
+     *
+     * <p>Defaults to: {@value #DEFAULT_MAX_SEGMENT_SIZE}.</p>
+     *
+     * @param size the maximum segment size, no greater than {@link Integer#MAX_VALUE}
+     */
+    public synchronized void setMaxSegmentSize(@Positive final long size) {
+        Constraint.isTrue(size <= Integer.MAX_VALUE, "Maximum segment size must not exceed Integer.MAX_VALUE");
+        maxSegmentSize = Constraint.isGreaterThan(0, size, "Maximum segment size must be greater than 0");
+    }
+
+    /**
+     * Get the proportion of the total segment size occupied by superseded records at which the segments are
+     * compacted.
+     *
+     * <p>Defaults to: {@value #DEFAULT_COMPACTION_RATIO}.</p>
+     *
+     * @return the compaction ratio
+     */
+    public synchronized float getCompactionRatio() {
+        return compactionRatio;
+    }
+
+    /**
+     * Set the proportion of the total segment size occupied by superseded records at which the segments are
+     * compacted.
+     *
+     * <p>Defaults to: {@value #DEFAULT_COMPACTION_RATIO}.</p>
+     *
+     * @param ratio the compaction ratio, greater than 0.0 and less than 1.0
+     */
+    public synchronized void setCompactionRatio(final float ratio) {
+        Constraint.isTrue(ratio > 0 && ratio < 1, "Compaction ratio must be between 0.0 and 1.0, exclusive");
+        compactionRatio = ratio;
+    }
+
+    /**
+     * Get the total segment size in bytes below which the segments are never compacted.
+     *
+     * <p>Defaults to: {@value #DEFAULT_MIN_COMPACTION_SIZE}.</p>
+     *
+     * @return the minimum compaction size
+     */
+    public synchronized long getMinCompactionSize() {
+        return minCompactionSize;
+    }
+
+    /**
+     * Set the total segment size in bytes below which the segments are never compacted.
+     *
+     * <p>Defaults to: {@value #DEFAULT_MIN_COMPACTION_SIZE}.</p>
+     *
+     * @param size the minimum compaction size
+     */
+    public synchronized void setMinCompactionSize(final long size) {
+        minCompactionSize = Constraint.isGreaterThanOrEqual(0, size, "Minimum compaction size must be >= 0");
+    }
+
+    /**
+     * Get the number of threads used to unmarshall records in {@link #listAll()}.
+     *
+     * <p>Defaults to the number of available processors.</p>
+     *
+     * @return the number of threads
+     */
+    @Positive public synchronized int getUnmarshallThreads() {
+        return unmarshallThreads;
+    }
+
+    /**
+     * Set the number of threads used to unmarshall records in {@link #listAll()}.
+     *
+     * <p>Defaults to the number of available processors.</p>
+     *
+     * @param threads the number of threads
+     */
+    public synchronized void setUnmarshallThreads(@Positive final int threads) {
+        unmarshallThreads = (int) Constraint.isGreaterThan(0, threads, "Thread count must be greater than 0");
+        if (unmarshallExecutor != null) {
+            // The core size may never exceed the maximum, so adjust them in the appropriate order.
+            if (unmarshallThreads > unmarshallExecutor.getMaximumPoolSize()) {
+                unmarshallExecutor.setMaximumPoolSize(unmarshallThreads);
+                unmarshallExecutor.setCorePoolSize(unmarshallThreads);
+            } else {
+                unmarshallExecutor.setCorePoolSize(unmarshallThreads);
+                unmarshallExecutor.setMaximumPoolSize(unmarshallThreads);
+            }
+        }
+    }
+
+    /**
+     * Get the executor used to unmarshall records in parallel, shared by all iterations of {@link #listAll()}.
+     *
+     * <p>Its threads are daemon threads which exit when idle, so the executor is never shut down.</p>
+     *
+     * @return the executor
+     */
+    @Nonnull private synchronized ExecutorService getUnmarshallExecutor() {
+        if (unmarshallExecutor == null) {
+            unmarshallExecutor = new ThreadPoolExecutor(unmarshallThreads, unmarshallThreads,
+                    UNMARSHALL_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        /** {@inheritDoc} */
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r, "PackFileLoadSaveManager-unmarshall");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            unmarshallExecutor.allowCoreThreadTimeOut(true);
+        }
+        return unmarshallExecutor;
+    }
+
+    /**
+     * Get the total size in bytes of all segments.
+     *
+     * @return the total size
+     *
+     * @throws IOException if the segments can not be opened
+     */
+    public synchronized long getTotalSize() throws IOException {
+        open();
+        return totalBytes;
+    }
+
+    /**
+     * Get the total size in bytes of the records which are current.
+     *
+     * @return the live size
+     *
+     * @throws IOException if the segments can not be opened
+     */
+    public synchronized long getLiveSize() throws IOException {
+        open();
+        return liveBytes;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized Set<String> listKeys() throws IOException {
+        open();
+        return Collections.unmodifiableSet(new HashSet<>(index.keySet()));
+    }
+
+    /** {@inheritDoc} */
+    public Iterable<Pair<String, T>> listAll() throws IOException {
+        final List<String> keys;
+        synchronized (this) {
+            open();
+            final List<Map.Entry<String, Location>> entries = new ArrayList<>(index.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, Location>>() {
+                /** {@inheritDoc} */
+                public int compare(final Map.Entry<String, Location> o1, final Map.Entry<String, Location> o2) {
+                    return o1.getValue().compareTo(o2.getValue());
+                }
+            });
+            keys = new ArrayList<>(entries.size());
+            for (final Map.Entry<String, Location> entry : entries) {
+                keys.add(entry.getKey());
+            }
+        }
+
+        return new Iterable<Pair<String, T>>() {
+            /** {@inheritDoc} */
+            public Iterator<Pair<String, T>> iterator() {
+                return new PackIterator(keys);
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean exists(final String key) throws IOException {
+        open();
+        return index.containsKey(checkKey(key));
+    }
+
+    /** {@inheritDoc} */
+    public T load(final String key) throws IOException {
+        final Pair<byte[], Long> record = readIfModified(checkKey(key));
+        if (record == null) {
+            return null;
+        }
+
+        final T xmlObject = unmarshall(key, record.getFirst());
+        updateLoadLastModified(key, record.getSecond());
+        return xmlObject;
+    }
+
+    /** {@inheritDoc} */
+    public void save(final String key, final T xmlObject) throws IOException {
+        save(key, xmlObject, false);
+    }
+
+    /** {@inheritDoc} */
+    public void save(final String key, final T xmlObject, final boolean overwrite) throws IOException {
+        checkKey(key);
+        final byte[] source = serialize(key, xmlObject);
+
+        synchronized (this) {
+            open();
+            if (!overwrite && index.containsKey(key)) {
+                throw new IOException(
+                        String.format("Object already exists for key '%s' and overwrite not indicated", key));
+            }
+            append(TYPE_SAVE, key, source, nextTimestamp());
+            compactIfNeeded();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean remove(final String key) throws IOException {
+        open();
+        if (!index.containsKey(checkKey(key))) {
+            return false;
+        }
+
+        append(TYPE_REMOVE, key, new byte[0], nextTimestamp());
+        clearLoadLastModified(key);
+        compactIfNeeded();
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized boolean updateKey(final String currentKey, final String newKey) throws IOException {
+        open();
+        final Location current = index.get(checkKey(currentKey));
+        if (current == null) {
+            return false;
+        }
+        if (index.containsKey(checkKey(newKey))) {
+            throw new IOException(String.format("Specified new key already exists: %s", newKey));
+        }
+
+        append(TYPE_SAVE, newKey, readValue(current), current.timestamp);
+        append(TYPE_REMOVE, currentKey, new byte[0], nextTimestamp());
+        updateLoadLastModified(newKey, getLoadLastModified(currentKey));
+        clearLoadLastModified(currentKey);
+        compactIfNeeded();
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    protected synchronized boolean isUnmodifiedSinceLastLoad(@Nonnull final String key) throws IOException {
+        open();
+        final Location location = index.get(key);
+        final Long lastLoaded = getLoadLastModified(key);
+        return location != null && lastLoaded != null && location.timestamp <= lastLoaded;
+    }
+
+    /**
+     * Rewrite the current records to new segments and delete the existing segments.
+     *
+     * @throws IOException if there is a fatal error rewriting the segments
+     */
+    public synchronized void compact() throws IOException {
+        open();
+
+        final List<Map.Entry<String, Location>> entries = new ArrayList<>(index.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Location>>() {
+            /** {@inheritDoc} */
+            public int compare(final Map.Entry<String, Location> o1, final Map.Entry<String, Location> o2) {
+                return o1.getValue().compareTo(o2.getValue());
+            }
+        });
+
+        final List<Integer> obsolete = new ArrayList<>(segments.keySet());
+        final long before = totalBytes;
+        log.debug("Compacting {} records from {} bytes in {} segments", entries.size(), before, obsolete.size());
+
+        // Append copies of the live records to fresh segments; until the old segments are deleted, replaying
+        // all segments in order still produces the same index.
+        rollSegment();
+        for (final Map.Entry<String, Location> entry : entries) {
+            append(TYPE_SAVE, entry.getKey(), readValue(entry.getValue()), entry.getValue().timestamp);
+        }
+        writer.force(false);
+
+        for (final Integer sequence : obsolete) {
+            final Segment segment = segments.remove(sequence);
+            segment.map = null;
+            totalBytes -= segment.size;
+            if (!segment.file.delete()) {
+                log.warn("Unable to delete compacted segment {}", segment.file.getAbsolutePath());
+            }
+        }
+
+        log.debug("Compaction reduced segments from {} to {} bytes", before, totalBytes);
+    }
+
+    /**
+     * Release the open segment files. The manager reopens them if used again.
+     *
+     * @throws IOException if there is an error closing the current segment
+     */
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            try {
+                writer.force(false);
+            } finally {
+                writer.close();
+                writer = null;
+            }
+        }
+        segments = null;
+        index.clear();
+        totalBytes = 0;
+        liveBytes = 0;
+    }
+
+    /**
+     * Check a key is usable.
+     *
+     * @param key the key
+     *
+     * @return the key
+     */
+    @Nonnull private String checkKey(@Nullable final String key) {
+        return Constraint.isNotNull(StringSupport.trimOrNull(key), "Input key was null or empty");
+    }
+
+    /**
+     * Obtain the bytes to store for an object.
+     *
+     * @param key the key under which the object is being saved
+     * @param xmlObject the object
+     *
+     * @return the object's source bytes, if it carries them, or its serialized form
+     *
+     * @throws IOException if the object can not be marshalled
+     */
+    @Nonnull private byte[] serialize(@Nonnull final String key, @Nonnull final T xmlObject) throws IOException {
+        final List<XMLObjectSource> sources = xmlObject.getObjectMetadata().get(XMLObjectSource.class);
+        if (sources.size() == 1) {
+            log.debug("XMLObject contained 1 XMLObjectSource instance, persisting existing byte[]");
+            return sources.get(0).getObjectSource();
+        }
+
+        log.debug("XMLObject contained {} XMLObjectSource instances, persisting marshalled object", sources.size());
+        try (final ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            XMLObjectSupport.marshallToOutputStream(xmlObject, baos);
+            return baos.toByteArray();
+        } catch (final MarshallingException e) {
+            throw new IOException(String.format("Error marshalling object with key '%s'", key), e);
+        }
+    }
+
+    /**
+     * Unmarshall stored bytes.
+     *
+     * @param key the key under which the bytes are stored
+     * @param source the bytes
+     *
+     * @return the object, carrying the bytes as its {@link XMLObjectSource}
+     *
+     * @throws IOException if the bytes can not be unmarshalled
+     */
+    @Nonnull private T unmarshall(@Nonnull final String key, @Nonnull final byte[] source) throws IOException {
+        try (final ByteArrayInputStream bais = new ByteArrayInputStream(source)) {
+            final XMLObject xmlObject = XMLObjectSupport.unmarshallFromInputStream(parserPool, bais);
+            xmlObject.getObjectMetadata().put(new XMLObjectSource(source));
+            return (T) xmlObject;
+        } catch (final XMLParserException | UnmarshallingException e) {
+            throw new IOException(String.format("Error unmarshalling object with key '%s'", key), e);
+        }
+    }
+
+    /**
+     * Read the stored bytes and timestamp for a key, subject to conditional loading.
+     *
+     * @param key the key
+     *
+     * @return the bytes and timestamp, or null if there is no object or it is unmodified since last loaded
+     *
+     * @throws IOException if there is an error reading the segment
+     */
+    @Nullable private synchronized Pair<byte[], Long> readIfModified(@Nonnull final String key) throws IOException {
+        open();
+        final Location location = index.get(key);
+        if (location == null) {
+            log.debug("No object stored with key '{}'", key);
+            clearLoadLastModified(key);
+            return null;
+        }
+        if (isLoadConditionally() && isUnmodifiedSinceLastLoad(key)) {
+            log.debug("Object with key '{}' has not been modified since the last request, returning null", key);
+            return null;
+        }
+        return new Pair<>(readValue(location), location.timestamp);
+    }
+
+    /**
+     * Read the stored bytes at a location.
+     *
+     * @param location the location
+     *
+     * @return the bytes
+     *
+     * @throws IOException if there is an error reading the segment
+     */
+    @Nonnull private byte[] readValue(@Nonnull final Location location) throws IOException {
+        final Segment segment = segments.get(location.segment);
+        final long valueOffset = location.offset + HEADER_LENGTH + location.keyLength;
+        final byte[] value = new byte[location.valueLength];
+
+        if (location.segment == segments.lastKey()) {
+            // The current segment grows with every append, so read it through the writer rather than remapping it.
+            final ByteBuffer buffer = ByteBuffer.wrap(value);
+            while (buffer.hasRemaining()) {
+                if (writer.read(buffer, valueOffset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of segment " + segment.file.getAbsolutePath());
+                }
+            }
+            return value;
+        }
+
+        // Earlier segments no longer change, so are mapped once.
+        if (segment.map == null) {
+            try (final FileChannel channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ)) {
+                segment.map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+
+        final ByteBuffer buffer = segment.map.duplicate();
+        buffer.position((int) valueOffset);
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Append a record to the current segment and update the index.
+     *
+     * @param type the record type
+     * @param key the key
+     * @param value the stored bytes, empty for a removal
+     * @param timestamp the record timestamp
+     *
+     * @throws IOException if there is an error writing the segment
+     */
+    private void append(final byte type, @Nonnull final String key, @Nonnull final byte[] value,
+            final long timestamp) throws IOException {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int length = HEADER_LENGTH + keyBytes.length + value.length + CHECKSUM_LENGTH;
+
+        Segment segment = segments.lastEntry().getValue();
+        if (segment.size > 0 && segment.size + length > maxSegmentSize) {
+            rollSegment();
+            segment = segments.lastEntry().getValue();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(RECORD_MAGIC).put(type).putLong(timestamp).putInt(keyBytes.length).putInt(value.length)
+                .put(keyBytes).put(value);
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, length - 4 - CHECKSUM_LENGTH);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                writer.write(buffer);
+            }
+        } catch (final IOException e) {
+            discardPartialRecord(segment);
+            throw e;
+        }
+
+        final Location location =
+                new Location(segments.lastKey(), segment.size, keyBytes.length, value.length, timestamp);
+        segment.size += length;
+        totalBytes += length;
+        apply(type, key, location);
+    }
+
+    /**
+     * Discard any part of a record which failed to be written, so that the next record starts at the recorded end
+     * of the segment. If the segment can not be truncated, appends are directed to a new segment instead.
+     *
+     * @param segment the segment being written
+     */
+    private void discardPartialRecord(@Nonnull final Segment segment) {
+        try {
+            writer.truncate(segment.size);
+            writer.position(segment.size);
+        } catch (final IOException e) {
+            log.warn("Unable to truncate partially written segment {}, starting a new segment",
+                    segment.file.getAbsolutePath(), e);
+            try {
+                rollSegment();
+            } catch (final IOException e2) {
+                log.error("Unable to start a new segment", e2);
+            }
+        }
+    }
+
+    /**
+     * Get the timestamp for a new record, which is later than that of any existing record so that a save within
+     * the same millisecond as a previous load is still seen as a modification.
+     *
+     * @return the timestamp
+     */
+    private long nextTimestamp() {
+        lastTimestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+        return lastTimestamp;
+    }
+
+    /**
+     * Apply a record to the index.
+     *
+     * @param type the record type
+     * @param key the key
+     * @param location the record location
+     */
+    private void apply(final byte type, @Nonnull final String key, @Nonnull final Location location) {
+        lastTimestamp = Math.max(lastTimestamp, location.timestamp);
+        final Location previous;
+        if (type == TYPE_SAVE) {
+            previous = index.put(key, location);
+            liveBytes += location.getLength();
+        } else {
+            previous = index.remove(key);
+        }
+        if (previous != null) {
+            liveBytes -= previous.getLength();
+        }
+    }
+
+    /**
+     * Compact the segments if enough of their content has been superseded.
+     *
+     * @throws IOException if there is an error compacting the segments
+     */
+    private void compactIfNeeded() throws IOException {
+        if (totalBytes >= minCompactionSize && totalBytes - liveBytes > totalBytes * compactionRatio) {
+            compact();
+        }
+    }
+
+    /**
+     * Force the current segment to the storage device and close it, then start a new, empty segment and direct
+     * appends to it.
+     *
+     * @throws IOException if the current segment can not be forced or the new segment can not be created
+     */
+    private void rollSegment() throws IOException {
+        if (writer != null) {
+            try {
+                writer.force(false);
+            } finally {
+                writer.close();
+                writer = null;
+            }
+        }
+
+        final int sequence = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        final Segment segment = new Segment(new File(baseDirectory,
+                String.format("%s%010d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX)));
+        writer = FileChannel.open(segment.file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segments.put(sequence, segment);
+    }
+
+    /**
+     * Open the segments and rebuild the index, if not already done.
+     *
+     * @throws IOException if the segments can not be read
+     */
+    private void open() throws IOException {
+        if (segments != null) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final File[] files = baseDirectory.listFiles(new SegmentFileFilter());
+        if (files == null) {
+            throw new IOException("Unable to list base directory " + baseDirectory.getAbsolutePath());
+        }
+
+        segments = new TreeMap<>();
+        for (final File file : files) {
+            final String name = file.getName();
+            segments.put(Integer.valueOf(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length())), new Segment(file));
+        }
+
+        try {
+            for (final Map.Entry<Integer, Segment> entry : segments.entrySet()) {
+                scan(entry.getKey(), entry.getValue(), entry.getKey().equals(segments.lastKey()));
+                totalBytes += entry.getValue().size;
+            }
+
+            if (segments.isEmpty()) {
+                rollSegment();
+            } else {
+                writer = FileChannel.open(segments.lastEntry().getValue().file.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                writer.position(writer.size());
+            }
+        } catch (final IOException | RuntimeException e) {
+            segments = null;
+            index.clear();
+            totalBytes = 0;
+            liveBytes = 0;
+            throw e;
+        }
+
+        log.debug("Loaded index of {} records from {} segments in {} ms", index.size(), segments.size(),
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Read the records of a segment into the index.
+     *
+     * @param sequence the segment sequence number
+     * @param segment the segment
+     * @param last whether this is the last segment, in which case a damaged tail is truncated
+     *
+     * @throws IOException if the segment can not be read
+     */
+    private void scan(final int sequence, @Nonnull final Segment segment, final boolean last) throws IOException {
+        try (final FileChannel channel = FileChannel.open(segment.file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            final CRC32 crc = new CRC32();
+
+            int position = 0;
+            while (position < size) {
+                final int length = checkRecord(map, position, size, crc);
+                if (length < 0) {
+                    break;
+                }
+
+                map.position(position + 4);
+                final byte type = map.get();
+                final long timestamp = map.getLong();
+                final int keyLength = map.getInt();
+                final int valueLength = map.getInt();
+                final byte[] keyBytes = new byte[keyLength];
+                map.get(keyBytes);
+                apply(type, new String(keyBytes, StandardCharsets.UTF_8),
+                        new Location(sequence, position, keyLength, valueLength, timestamp));
+                position += length;
+            }
+
+            if (position < size) {
+                if (last) {
+                    log.warn("Discarding {} damaged or incomplete bytes at the end of segment {}", size - position,
+                            segment.file.getAbsolutePath());
+                    channel.truncate(position);
+                } else {
+                    log.warn("Ignoring {} damaged bytes at offset {} of segment {}", size - position, position,
+                            segment.file.getAbsolutePath());
+                }
+            }
+
+            segment.size = last ? position : size;
+            segment.map = last ? null : map;
+        }
+    }
+
+    /**
+     * Validate the record at a position in a segment.
+     *
+     * @param map the segment content
+     * @param position the record position
+     * @param size the segment size
+     * @param crc the checksum instance to use
+     *
+     * @return the record length, or -1 if the record is incomplete or damaged
+     */
+    private int checkRecord(@Nonnull final MappedByteBuffer map, final int position, final long size,
+            @Nonnull final CRC32 crc) {
+        if (size - position < HEADER_LENGTH + CHECKSUM_LENGTH || map.getInt(position) != RECORD_MAGIC) {
+            return -1;
+        }
+
+        final byte type = map.get(position + 4);
+        final int keyLength = map.getInt(position + 13);
+        final int valueLength = map.getInt(position + 17);
+        if ((type != TYPE_SAVE && type != TYPE_REMOVE) || keyLength <= 0 || valueLength < 0
+                || (long) HEADER_LENGTH + keyLength + valueLength + CHECKSUM_LENGTH > size - position) {
+            return -1;
+        }
+
+        final int length = HEADER_LENGTH + keyLength + valueLength + CHECKSUM_LENGTH;
+        final ByteBuffer checked = map.duplicate();
+        checked.position(position + 4).limit(position + length - CHECKSUM_LENGTH);
+        crc.reset();
+        crc.update(checked);
+        if ((int) crc.getValue() != map.getInt(position + length - CHECKSUM_LENGTH)) {
+            return -1;
+        }
+
+        return length;
+    }
+
+    /** A segment file. */
+    private static final class Segment {
+
+        /** The file. */
+        @Nonnull private final File file;
+
+        /** Size of the valid content. */
+        private long size;
+
+        /** Read-only mapping of the content, if established. */
+        @Nullable private MappedByteBuffer map;
+
+        /**
+         * Constructor.
+         *
+         * @param segmentFile the file
+         */
+        Segment(@Nonnull final File segmentFile) {
+            file = segmentFile;
+        }
+    }
+
+    /** The location of a save record. */
+    private static final class Location implements Comparable<Location> {
+
+        /** Segment sequence number. */
+        private final int segment;
+
+        /** Offset of the record within the segment. */
+        private final long offset;
+
+        /** Length of the encoded key. */
+        private final int keyLength;
+
+        /** Length of the stored bytes. */
+        private final int valueLength;
+
+        /** Record timestamp. */
+        private final long timestamp;
+
+        /**
+         * Constructor.
+         *
+         * @param seq segment sequence number
+         * @param off offset of the record within the segment
+         * @param keyLen length of the encoded key
+         * @param valueLen length of the stored bytes
+         * @param time record timestamp
+         */
+        Location(final int seq, final long off, final int keyLen, final int valueLen, final long time) {
+            segment = seq;
+            offset = off;
+            keyLength = keyLen;
+            valueLength = valueLen;
+            timestamp = time;
+        }
+
+        /**
+         * Get the length of the whole record.
+         *
+         * @return the record length
+         */
+        long getLength() {
+            return HEADER_LENGTH + keyLength + valueLength + CHECKSUM_LENGTH;
+        }
+
+        /** {@inheritDoc} */
+        public int compareTo(final Location other) {
+            if (segment != other.segment) {
+                return segment < other.segment ? -1 : 1;
+            }
+            return Long.compare(offset, other.offset);
+        }
+    }
+
+    /** Filter accepting segment files. */
+    private static final class SegmentFileFilter implements FileFilter {
+
+        /** {@inheritDoc} */
+        public boolean accept(final File pathname) {
+            final String name = pathname.getName();
+            return pathname.isFile() && name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                    && name.length() > SEGMENT_PREFIX.length() + SEGMENT_SUFFIX.length()
+                    && name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())
+                        .matches("[0-9]+");
+        }
+    }
+
+    /**
+     * Iterator which reads records in batches, in storage order, and unmarshalls each batch in parallel.
+     */
+    private class PackIterator implements Iterator<Pair<String, T>> {
+
+        /** Keys remaining to be read. */
+        @Nonnull private final Iterator<String> keys;
+
+        /** Unmarshalled objects ready to be returned. */
+        @Nonnull private final Deque<Pair<String, T>> ready;
+
+        /**
+         * Constructor.
+         *
+         * @param snapshot the keys to iterate over, in storage order
+         */
+        PackIterator(@Nonnull final List<String> snapshot) {
+            keys = snapshot.iterator();
+            ready = new ArrayDeque<>();
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext() {
+            while (ready.isEmpty() && keys.hasNext()) {
+                loadBatch();
+            }
+            return !ready.isEmpty();
+        }
+
+        /** {@inheritDoc} */
+        public Pair<String, T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return ready.removeFirst();
+        }
+
+        /** {@inheritDoc} */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /** Read and unmarshall the next batch of records. */
+        private void loadBatch() {
+            final int threads = getUnmarshallThreads();
+            final List<String> batchKeys = new ArrayList<>();
+            final List<Pair<byte[], Long>> batchRecords = new ArrayList<>();
+            while (keys.hasNext() && batchKeys.size() < threads * BATCH_SIZE_PER_THREAD) {
+                final String key = keys.next();
+                try {
+                    final Pair<byte[], Long> record = readIfModified(key);
+                    if (record != null) {
+                        batchKeys.add(key);
+                        batchRecords.add(record);
+                    }
+                } catch (final IOException e) {
+                    log.warn("Error reading object with key '{}'", key, e);
+                }
+            }
+
+            if (batchKeys.size() == 1 || threads == 1) {
+                for (int i = 0; i < batchKeys.size(); i++) {
+                    try {
+                        complete(batchKeys.get(i), unmarshall(batchKeys.get(i), batchRecords.get(i).getFirst()),
+                                batchRecords.get(i).getSecond());
+                    } catch (final IOException e) {
+                        log.warn("Error loading object with key '{}'", batchKeys.get(i), e);
+                    }
+                }
+                return;
+            }
+
+            final List<Callable<T>> tasks = new ArrayList<>(batchKeys.size());
+            for (int i = 0; i < batchKeys.size(); i++) {
+                final String key = batchKeys.get(i);
+                final byte[] source = batchRecords.get(i).getFirst();
+                tasks.add(new Callable<T>() {
+                    /** {@inheritDoc} */
+                    public T call() throws IOException {
+                        return unmarshall(key, source);
+                    }
+                });
+            }
+
+            try {
+                final List<Future<T>> results = getUnmarshallExecutor().invokeAll(tasks);
+                for (int i = 0; i < results.size(); i++) {
+                    try {
+                        complete(batchKeys.get(i), results.get(i).get(), batchRecords.get(i).getSecond());
+                    } catch (final ExecutionException e) {
+                        log.warn("Error loading object with key '{}'", batchKeys.get(i), e.getCause());
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading objects", e);
+            }
+        }
+
+        /**
+         * Make a loaded object available to the caller.
+         *
+         * @param key the key
+         * @param xmlObject the object
+         * @param timestamp the record timestamp
+         */
+        private void complete(@Nonnull final String key, @Nonnull final T xmlObject, @Nonnull final Long timestamp) {
+            updateLoadLastModified(key, timestamp);
+            ready.addLast(new Pair<>(key, xmlObject));
+        }
+    }
+
+}
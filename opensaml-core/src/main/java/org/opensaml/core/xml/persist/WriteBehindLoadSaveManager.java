@@ -0,0 +1,460 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Timer;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Implementation of {@link XMLObjectLoadSaveManager} which defers overwriting saves to a background thread,
+ * writing them to a delegate manager.
+ * 
+ * <p>
+ * Pending saves are held in a queue with at most one entry per key, so that repeated saves under the same key
+ * before the first has been written result in only the latest object being written. When the queue holds
+ * {@link #getMaxBacklog()} keys, callers saving under a new key block until the background thread has made room.
+ * </p>
+ * 
+ * <p>
+ * All other operations are performed synchronously against the delegate, and observe pending saves: loads and
+ * existence checks consult the queue, removals discard any pending save for the key, and operations which
+ * enumerate or rename keys first write all pending saves. Saves without overwrite are also synchronous, since they
+ * must report an existing object. Destroying the manager writes all pending saves.
+ * </p>
+ * 
+ * <p>
+ * Only objects which carry exactly one {@link XMLObjectSource} are queued, since those can be persisted from
+ * their source bytes without marshalling, and so without touching a DOM which the caller may still be using or
+ * releasing. Other objects are saved synchronously.
+ * </p>
+ *
+ * @param <T> the specific base XML object type being managed
+ */
+@ThreadSafe
+public class WriteBehindLoadSaveManager<T extends XMLObject> extends AbstractInitializableComponent
+        implements XMLObjectLoadSaveManager<T> {
+
+    /** Default maximum number of keys with pending saves: {@value}. */
+    public static final int DEFAULT_MAX_BACKLOG = 1000;
+
+    /** Logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(WriteBehindLoadSaveManager.class);
+
+    /** The manager to which operations are written. */
+    @Nonnull private final XMLObjectLoadSaveManager<T> delegate;
+
+    /** Pending saves, in the order their keys were first queued. Also the monitor for queue state. */
+    @Nonnull private final Map<String, T> pending;
+
+    /** Lock held for every operation on the delegate, so that a dequeued save is never observed in flight. */
+    @Nonnull private final Object delegateLock;
+
+    /** Maximum number of keys with pending saves. */
+    @Positive private int maxBacklog;
+
+    /** Name of the background thread. */
+    @Nonnull @NotEmpty private String threadName;
+
+    /** Optional timer for each background write. */
+    @Nullable private Timer flushTimer;
+
+    /** Background thread which writes pending saves. */
+    @Nullable private Thread flusher;
+
+    /** Whether the background thread is accepting saves. Guarded by {@link #pending}. */
+    private boolean running;
+
+    /** Number of pending saves written. */
+    @Nonnull private final AtomicLong flushCount;
+
+    /** Number of pending saves which failed to be written. */
+    @Nonnull private final AtomicLong flushFailureCount;
+
+    /** Number of saves which replaced a pending save for the same key. */
+    @Nonnull private final AtomicLong coalescedCount;
+
+    /**
+     * Constructor.
+     *
+     * @param manager the manager to which operations are written
+     */
+    public WriteBehindLoadSaveManager(@Nonnull final XMLObjectLoadSaveManager<T> manager) {
+        delegate = Constraint.isNotNull(manager, "Delegate manager cannot be null");
+        pending = new LinkedHashMap<>();
+        delegateLock = new Object();
+        maxBacklog = DEFAULT_MAX_BACKLOG;
+        threadName = "WriteBehindLoadSaveManager for " + manager.getClass().getSimpleName();
+        flushCount = new AtomicLong();
+        flushFailureCount = new AtomicLong();
+        coalescedCount = new AtomicLong();
+    }
+
+    /**
+     * Get the manager to which operations are written.
+     *
+     * @return the delegate manager
+     */
+    @Nonnull public XMLObjectLoadSaveManager<T> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the maximum number of keys with pending saves.
+     *
+     * <p>Defaults to: {@value #DEFAULT_MAX_BACKLOG}.</p>
+     *
+     * @return the maximum backlog
+     */
+    @Positive public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    /**
+     * Set the maximum number of keys with pending saves.
+     *
+     * <p>Defaults to: {@value #DEFAULT_MAX_BACKLOG}.</p>
+     *
+     * @param max the maximum backlog
+     */
+    public void setMaxBacklog(@Positive final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        maxBacklog = (int) Constraint.isGreaterThan(0, max, "Maximum backlog must be greater than 0");
+    }
+
+    /**
+     * Set the name of the background thread.
+     *
+     * @param name the thread name
+     */
+    public void setThreadName(@Nonnull @NotEmpty final String name) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        threadName = Constraint.isNotEmpty(name, "Thread name cannot be null or empty");
+    }
+
+    /**
+     * Set a timer with which to measure each background write.
+     *
+     * @param timer the timer, or null
+     */
+    public void setFlushTimer(@Nullable final Timer timer) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        flushTimer = timer;
+    }
+
+    /**
+     * Get the number of keys with pending saves.
+     *
+     * @return the backlog size
+     */
+    public int getBacklogSize() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Get the number of pending saves written.
+     *
+     * @return the number of saves written
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Get the number of pending saves which failed to be written.
+     *
+     * @return the number of failed saves
+     */
+    public long getFlushFailureCount() {
+        return flushFailureCount.get();
+    }
+
+    /**
+     * Get the number of saves which replaced a pending save for the same key, and so were never written.
+     *
+     * @return the number of coalesced saves
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+
+        synchronized (pending) {
+            running = true;
+        }
+        flusher = new Thread(new Flusher(), threadName);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        synchronized (pending) {
+            running = false;
+            pending.notifyAll();
+        }
+
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+
+        // In case the wait above was interrupted.
+        flush();
+
+        super.doDestroy();
+    }
+
+    /** Write all pending saves to the delegate. */
+    public void flush() {
+        synchronized (delegateLock) {
+            while (writeNext()) {
+                // keep going
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements @NotLive @Unmodifiable public Set<String> listKeys() throws IOException {
+        synchronized (delegateLock) {
+            flush();
+            return delegate.listKeys();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull @NonnullElements public Iterable<Pair<String, T>> listAll() throws IOException {
+        synchronized (delegateLock) {
+            flush();
+            return delegate.listAll();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean exists(@Nonnull @NotEmpty final String key) throws IOException {
+        synchronized (delegateLock) {
+            synchronized (pending) {
+                if (pending.containsKey(key)) {
+                    return true;
+                }
+            }
+            return delegate.exists(key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Nullable public T load(@Nonnull @NotEmpty final String key) throws IOException {
+        synchronized (delegateLock) {
+            synchronized (pending) {
+                final T xmlObject = pending.get(key);
+                if (xmlObject != null) {
+                    return xmlObject;
+                }
+            }
+            return delegate.load(key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void save(@Nonnull @NotEmpty final String key, @Nonnull final T xmlObject) throws IOException {
+        save(key, xmlObject, false);
+    }
+
+    /** {@inheritDoc} */
+    public void save(@Nonnull @NotEmpty final String key, @Nonnull final T xmlObject, final boolean overwrite)
+            throws IOException {
+        if (overwrite && isWriteBehindEligible(xmlObject) && enqueue(key, xmlObject)) {
+            return;
+        }
+
+        synchronized (delegateLock) {
+            synchronized (pending) {
+                if (pending.containsKey(key)) {
+                    if (!overwrite) {
+                        throw new IOException(String.format(
+                                "Object already pending save for key '%s' and overwrite not indicated", key));
+                    }
+                    pending.remove(key);
+                    pending.notifyAll();
+                }
+            }
+            delegate.save(key, xmlObject, overwrite);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean remove(@Nonnull @NotEmpty final String key) throws IOException {
+        synchronized (delegateLock) {
+            final boolean wasPending;
+            synchronized (pending) {
+                wasPending = pending.remove(key) != null;
+                pending.notifyAll();
+            }
+            return delegate.remove(key) || wasPending;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean updateKey(@Nonnull @NotEmpty final String currentKey, @Nonnull @NotEmpty final String newKey)
+            throws IOException {
+        synchronized (delegateLock) {
+            flush();
+            return delegate.updateKey(currentKey, newKey);
+        }
+    }
+
+    /**
+     * Determine whether an object may be saved in the background.
+     *
+     * @param xmlObject the object being saved
+     *
+     * @return true if the object may be queued, false if it must be saved synchronously
+     */
+    protected boolean isWriteBehindEligible(@Nonnull final T xmlObject) {
+        return xmlObject.getObjectMetadata().get(XMLObjectSource.class).size() == 1;
+    }
+
+    /**
+     * Queue a save, waiting for room if the backlog is full.
+     *
+     * @param key the key under which to save the object
+     * @param xmlObject the object to save
+     *
+     * @return true if the save was queued, false if it must be performed synchronously
+     */
+    private boolean enqueue(@Nonnull final String key, @Nonnull final T xmlObject) {
+        synchronized (pending) {
+            try {
+                while (running && pending.size() >= maxBacklog && !pending.containsKey(key)) {
+                    pending.wait();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            if (!running) {
+                return false;
+            }
+
+            if (pending.put(key, xmlObject) != null) {
+                coalescedCount.incrementAndGet();
+            }
+            pending.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Write the oldest pending save to the delegate. The caller must hold {@link #delegateLock}.
+     *
+     * @return true if a save was written or attempted, false if none was pending
+     */
+    private boolean writeNext() {
+        final String key;
+        final T xmlObject;
+        synchronized (pending) {
+            final Iterator<Map.Entry<String, T>> iterator = pending.entrySet().iterator();
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            final Map.Entry<String, T> entry = iterator.next();
+            key = entry.getKey();
+            xmlObject = entry.getValue();
+            iterator.remove();
+            pending.notifyAll();
+        }
+
+        final Timer.Context context = MetricsSupport.startTimer(flushTimer);
+        try {
+            delegate.save(key, xmlObject, true);
+            flushCount.incrementAndGet();
+        } catch (final IOException | RuntimeException e) {
+            flushFailureCount.incrementAndGet();
+            log.warn("Error writing object with key '{}' to delegate manager", key, e);
+        } finally {
+            MetricsSupport.stopTimer(context);
+        }
+        return true;
+    }
+
+    /** Background task which writes pending saves until the manager is destroyed and the queue is empty. */
+    private class Flusher implements Runnable {
+
+        /** {@inheritDoc} */
+        public void run() {
+            while (true) {
+                synchronized (pending) {
+                    while (running && pending.isEmpty()) {
+                        try {
+                            pending.wait();
+                        } catch (final InterruptedException e) {
+                            // destroy() will flush whatever remains
+                            return;
+                        }
+                    }
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                }
+
+                synchronized (delegateLock) {
+                    writeNext();
+                }
+            }
+        }
+    }
+
+}
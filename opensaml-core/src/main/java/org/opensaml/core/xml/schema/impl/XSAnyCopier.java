@@ -0,0 +1,52 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.schema.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.ExtensibleXMLObjectCopier;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.schema.XSAny;
+
+/**
+ * Thread-safe copier of {@link org.opensaml.core.xml.schema.XSAny} objects.
+ * 
+ * <p>
+ * An {@link XSAnyImpl} whose content is deferred and still held as its cached DOM is copied from that DOM, so that
+ * the original is not expanded and the copy is deferred in turn. Deferred content which is held in serialized form
+ * is expanded, as any read of it would.
+ * </p>
+ */
+@ThreadSafe
+public class XSAnyCopier extends ExtensibleXMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean isDOMPreserved(@Nonnull final XMLObject xmlObject) {
+        return xmlObject instanceof XSAnyImpl && ((XSAnyImpl) xmlObject).isDeferred();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyElementContent(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        final XSAny original = (XSAny) xmlObject;
+
+        ((XSAny) copy).setTextContent(original.getTextContent());
+    }
+}
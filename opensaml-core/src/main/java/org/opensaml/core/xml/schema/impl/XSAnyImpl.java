@@ -17,6 +17,8 @@
 
 package org.opensaml.core.xml.schema.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Collections;
 import java.util.List;
 
@@ -24,14 +26,36 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
 
+import net.shibboleth.utilities.java.support.xml.NamespaceSupport;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
 import org.opensaml.core.xml.AbstractXMLObject;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLRuntimeException;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.schema.XSAny;
 import org.opensaml.core.xml.util.AttributeMap;
 import org.opensaml.core.xml.util.IndexedXMLObjectChildrenList;
+import org.w3c.dom.Element;
 
 /**
  * Concrete implementation of {@link XSAny}.
+ * 
+ * <p>
+ * The content of an instance unmarshalled by an {@link XSAnyUnmarshaller} which defers expansion is held as its DOM
+ * Element, or as serialized bytes once the DOM has been released, and is expanded the first time it is accessed.
+ * </p>
+ * 
+ * <p>
+ * Expansion changes the state of this object's ancestors, such as the {@link org.opensaml.core.xml.util.IDIndex}
+ * held by the root of the tree and their cached namespaces, so a read which triggers it is no safer to perform
+ * concurrently than any other modification of the tree. A tree which is shared between threads must be fully
+ * expanded with {@link org.opensaml.core.xml.util.XMLObjectSupport#expandDeferredContent(XMLObject)} before it is
+ * shared, as the metadata resolvers do before making metadata available.
+ * </p>
  */
 public class XSAnyImpl extends AbstractXMLObject implements XSAny {
 
@@ -44,6 +68,12 @@ public class XSAnyImpl extends AbstractXMLObject implements XSAny {
     /** Text content of the element. */
     @Nullable private String textContent;
 
+    /** The deferred content, either a DOM {@link Element} or its serialized bytes, or null once expanded. */
+    @Nullable private Object deferredContent;
+
+    /** Whether the deferred content is being expanded. */
+    private boolean expanding;
+
     /**
      * Constructor.
      * 
@@ -61,31 +91,152 @@ public class XSAnyImpl extends AbstractXMLObject implements XSAny {
 
     /** {@inheritDoc} */
     public String getTextContent() {
+        expand();
         return textContent;
     }
 
     /** {@inheritDoc} */
     public void setTextContent(@Nullable final String newContent) {
+        expand();
         textContent = prepareForAssignment(textContent, newContent);
     }
 
     /** {@inheritDoc} */
     @Nonnull public List<XMLObject> getUnknownXMLObjects() {
+        expand();
         return unknownXMLObjects;
     }
     
     /** {@inheritDoc} */
     @Nonnull public List<XMLObject> getUnknownXMLObjects(@Nonnull final QName typeOrName) {
+        expand();
         return (List<XMLObject>) unknownXMLObjects.subList(typeOrName);
     }
 
     /** {@inheritDoc} */
     @Nullable public List<XMLObject> getOrderedChildren() {
+        expand();
         return Collections.unmodifiableList(unknownXMLObjects);
     }
 
     /** {@inheritDoc} */
     @Nonnull public AttributeMap getUnknownAttributes() {
+        expand();
         return unknownAttributes;
     }
+
+    /**
+     * Get whether the content of this object has yet to be expanded.
+     * 
+     * @return true if the content is deferred, false if it has been expanded
+     */
+    public boolean isDeferred() {
+        return deferredContent != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * If the content of this object is deferred, it is serialized before the DOM is released, or, if no parser pool
+     * is available with which to parse it again, expanded.
+     * </p>
+     */
+    @Override
+    public void releaseDOM() {
+        if (expanding) {
+            return;
+        }
+
+        if (deferredContent instanceof Element) {
+            final Element content = (Element) deferredContent;
+            if (XMLObjectProviderRegistrySupport.getParserPool() != null) {
+                // The DOM is about to be released, so it's fine to declare inherited namespaces on it directly.
+                NamespaceSupport.rootNamespaces(content);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                SerializeSupport.writeNode(content, out);
+                deferredContent = out.toByteArray();
+            } else {
+                expand();
+            }
+        }
+
+        super.releaseDOM();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void releaseParentDOM(final boolean propagateRelease) {
+        if (!expanding) {
+            super.releaseParentDOM(propagateRelease);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void releaseChildrenDOM(final boolean propagateRelease) {
+        if (expanding || deferredContent == null) {
+            super.releaseChildrenDOM(propagateRelease);
+        }
+    }
+
+    /**
+     * Defer expansion of this object's content.
+     * 
+     * @param domElement the DOM Element holding the content
+     */
+    void defer(@Nonnull final Element domElement) {
+        deferredContent = domElement;
+    }
+
+    /**
+     * Expand the deferred content of this object, if any.
+     * 
+     * <p>
+     * The release of this object's DOM, and that of its ancestors, which adding the content would otherwise cause
+     * is suppressed, since the DOM already reflects the content.
+     * </p>
+     */
+    protected void expand() {
+        final Object content = deferredContent;
+        if (content == null || expanding) {
+            return;
+        }
+
+        expanding = true;
+        try {
+            if (content instanceof Element) {
+                new XSAnyUnmarshaller().expand(this, (Element) content);
+            } else {
+                new XSAnyUnmarshaller().expand(this, parse((byte[]) content));
+                // The content's DOM belongs to a document of its own which nothing else references.
+                releaseChildrenDOM(true);
+            }
+            deferredContent = null;
+        } catch (final UnmarshallingException | XMLParserException e) {
+            unknownXMLObjects.clear();
+            unknownAttributes.clear();
+            textContent = null;
+            throw new XMLRuntimeException("Unable to expand deferred content of " + getElementQName(), e);
+        } finally {
+            expanding = false;
+        }
+    }
+
+    /**
+     * Parse serialized deferred content.
+     * 
+     * @param content the serialized content
+     * 
+     * @return the DOM Element holding the content
+     * 
+     * @throws XMLParserException if the content can not be parsed
+     */
+    @Nonnull private Element parse(@Nonnull final byte[] content) throws XMLParserException {
+        final ParserPool parserPool = XMLObjectProviderRegistrySupport.getParserPool();
+        if (parserPool == null) {
+            throw new XMLParserException("No parser pool is available");
+        }
+        return parserPool.parse(new ByteArrayInputStream(content)).getDocumentElement();
+    }
 }
\ No newline at end of file
@@ -17,22 +17,157 @@
 
 package org.opensaml.core.xml.schema.impl;
 
+import java.util.Objects;
+
 import javax.annotation.Nonnull;
 import javax.xml.namespace.QName;
 
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import net.shibboleth.utilities.java.support.xml.QNameSupport;
+import net.shibboleth.utilities.java.support.xml.XMLConstants;
 
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.AbstractXMLObjectUnmarshaller;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.schema.XSAny;
 import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
 /**
  * A thread-safe unmarshaller for {@link XSAny}s.
+ * 
+ * <p>
+ * If constructed to defer expansion, this unmarshaller records only the namespace declarations and schema instance
+ * attributes of the element, and leaves the remaining attributes, the content and the child elements in the cached
+ * DOM. The {@link XSAnyImpl} expands them the first time they are accessed, or when its DOM is released holds them as
+ * serialized bytes until then. Deferred content does not contribute to the {@link org.opensaml.core.xml.util.IDIndex}
+ * of the object tree until it is expanded, but the ID attributes of the deferred DOM are still declared as such.
+ * Since expansion modifies the object tree, a tree which is read by several threads at once must first be fully
+ * expanded with {@link org.opensaml.core.xml.util.XMLObjectSupport#expandDeferredContent(XMLObject)}.
+ * </p>
+ * 
+ * <p>
+ * Deferral applies to the elements this unmarshaller is registered for; to apply it to all unknown elements, register
+ * an instance under {@link org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport#getDefaultProviderQName()}.
+ * </p>
  */
 public class XSAnyUnmarshaller extends AbstractXMLObjectUnmarshaller {
 
+    /** Whether expansion of the element's content is deferred until first access. */
+    private final boolean deferExpansion;
+
+    /** Constructor. */
+    public XSAnyUnmarshaller() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param defer whether expansion of the element's content is deferred until first access
+     */
+    public XSAnyUnmarshaller(final boolean defer) {
+        deferExpansion = defer;
+    }
+
+    /**
+     * Get whether expansion of the element's content is deferred until first access.
+     * 
+     * @return true if expansion is deferred, false if not
+     */
+    public boolean isDeferExpansion() {
+        return deferExpansion;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public XMLObject unmarshall(@Nonnull final Element domElement) throws UnmarshallingException {
+        if (!deferExpansion) {
+            return super.unmarshall(domElement);
+        }
+
+        final XMLObject xmlObject = buildXMLObject(domElement);
+        if (xmlObject instanceof XSAnyImpl) {
+            final NamedNodeMap attributes = domElement.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Node attribute = attributes.item(i);
+                if (attribute.getNodeType() == Node.ATTRIBUTE_NODE && isDeclaration((Attr) attribute)) {
+                    unmarshallAttribute(xmlObject, (Attr) attribute);
+                }
+            }
+            checkIDAttributes(domElement);
+            ((XSAnyImpl) xmlObject).defer(domElement);
+        } else {
+            unmarshallAttributes(xmlObject, domElement);
+            unmarshallChildNodes(xmlObject, domElement);
+        }
+
+        xmlObject.setDOM(domElement);
+        return xmlObject;
+    }
+
+    /**
+     * Expand the deferred content of an {@link XSAnyImpl}.
+     * 
+     * <p>
+     * The namespace declarations and schema instance attributes are assumed to have been recorded when expansion
+     * was deferred.
+     * </p>
+     * 
+     * @param xsAny the object whose content is expanded
+     * @param domElement the DOM Element holding the content
+     * 
+     * @throws UnmarshallingException thrown if there is a problem unmarshalling the content
+     */
+    void expand(@Nonnull final XSAnyImpl xsAny, @Nonnull final Element domElement) throws UnmarshallingException {
+        final NamedNodeMap attributes = domElement.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Node attribute = attributes.item(i);
+            if (attribute.getNodeType() == Node.ATTRIBUTE_NODE && !isDeclaration((Attr) attribute)) {
+                unmarshallAttribute(xsAny, (Attr) attribute);
+            }
+        }
+        unmarshallChildNodes(xsAny, domElement);
+    }
+
+    /**
+     * Declare as such the ID attributes of a DOM Element and its descendants, as unmarshalling them would.
+     * 
+     * @param domElement the DOM Element
+     */
+    private void checkIDAttributes(@Nonnull final Element domElement) {
+        final NamedNodeMap attributes = domElement.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final Node attribute = attributes.item(i);
+            if (attribute.getNodeType() == Node.ATTRIBUTE_NODE && !isDeclaration((Attr) attribute)) {
+                checkIDAttribute((Attr) attribute);
+            }
+        }
+
+        Node childNode = domElement.getFirstChild();
+        while (childNode != null) {
+            if (childNode.getNodeType() == Node.ELEMENT_NODE) {
+                checkIDAttributes((Element) childNode);
+            }
+            childNode = childNode.getNextSibling();
+        }
+    }
+
+    /**
+     * Check whether an attribute is a namespace declaration or schema instance attribute.
+     * 
+     * @param attribute the attribute
+     * 
+     * @return true if the attribute is a namespace declaration or schema instance attribute
+     */
+    private boolean isDeclaration(@Nonnull final Attr attribute) {
+        final String attributeNamespace = StringSupport.trimOrNull(attribute.getNamespaceURI());
+        return Objects.equals(attributeNamespace, XMLConstants.XMLNS_NS)
+                || Objects.equals(attributeNamespace, XMLConstants.XSI_NS);
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void processChildElement(@Nonnull final XMLObject parentXMLObject,
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.schema.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCopier;
+import org.opensaml.core.xml.schema.XSBoolean;
+
+/**
+ * Thread-safe copier of {@link org.opensaml.core.xml.schema.XSBoolean} objects.
+ */
+@ThreadSafe
+public class XSBooleanCopier extends AbstractXMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyElementContent(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        final XSBoolean original = (XSBoolean) xmlObject;
+
+        ((XSBoolean) copy).setValue(copyBooleanValue(original.getValue()));
+    }
+}
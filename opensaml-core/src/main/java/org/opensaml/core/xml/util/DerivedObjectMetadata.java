@@ -0,0 +1,43 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import org.opensaml.core.xml.AbstractXMLObject;
+import org.opensaml.core.xml.XMLObject;
+
+/**
+ * Marker interface for object metadata which is computed from the state of the {@link XMLObject}
+ * (and its children) to which it is attached, typically in order to cache the result of some
+ * expensive derivation.
+ * 
+ * <p>
+ * Such data will typically be attached to an XML object via its
+ * {@link org.opensaml.core.xml.XMLObject#getObjectMetadata()}.
+ * </p>
+ * 
+ * <p>
+ * As with {@link XMLObjectSource}, all instances will be removed from the object when the object
+ * is mutated, whether or not it has a cached DOM.  See {@link AbstractXMLObject#releaseDOM()}, which is
+ * invoked on the parent of any child object which is added to or removed from an {@link XMLObjectChildrenList},
+ * and {@link AbstractXMLObject#releaseThisandParentDOM()}, which is invoked by the various overloaded
+ * <code>prepareForAssignment</code> methods there and releases instances from the object and its ancestors.
+ * </p>
+ */
+public interface DerivedObjectMetadata {
+
+}
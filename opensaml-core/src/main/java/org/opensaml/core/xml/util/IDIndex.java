@@ -17,7 +17,10 @@
 
 package org.opensaml.core.xml.util;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -27,6 +30,7 @@ import javax.annotation.concurrent.NotThreadSafe;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.collection.LazyMap;
+import net.shibboleth.utilities.java.support.collection.LazySet;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 import org.opensaml.core.xml.XMLObject;
@@ -34,6 +38,15 @@ import org.opensaml.core.xml.XMLObject;
 /**
  * Class which provides storage for the ID-to-XMLObject index mapping on an owning
  * {@link org.opensaml.core.xml.XMLObject}.
+ * 
+ * <p>
+ * The mappings of an entire object tree are held once, by the index of the tree's root. The index of any other
+ * object holds only the IDs registered for its owner itself and a count of those registered within its owner's
+ * subtree, and answers lookups from the root's mappings by checking that the referent descends from its owner.
+ * When a subtree is attached to a tree its mappings are moved to the new root, and when it is detached, the mappings
+ * within it are moved back to it by visiting only those objects whose subtrees contain IDs. Memory use and update
+ * cost are thus proportional to the number of IDs, rather than to the number of IDs times the depth of the tree.
+ * </p>
  */
 @NotThreadSafe
 public class IDIndex {
@@ -41,9 +54,16 @@ public class IDIndex {
     /** The XMLObject which owns this ID index. */
     @Nonnull private final XMLObject owner;
     
-    /** Mapping of ID attributes to XMLObjects in the subtree rooted at this object's owner.
-     * This allows constant-time dereferencing of ID-typed attributes within the subtree.  */
-    @Nonnull private Map<String, XMLObject> idMappings;
+    /** Mapping of ID attributes to the XMLObject, or list of XMLObjects, in the subtree rooted at this object's
+     * owner, which is held only while the owner is the root of its tree. This allows constant-time dereferencing of
+     * ID-typed attributes within the tree.  */
+    @Nullable private Map<String, Object> idMappings;
+
+    /** The IDs registered for this object's owner itself. */
+    @Nullable private Set<String> ownIDs;
+
+    /** The number of mappings registered for XMLObjects in the subtree rooted at this object's owner. */
+    private int subtreeCount;
 
     /**
      * Constructor.
@@ -54,7 +74,6 @@ public class IDIndex {
         Constraint.isNotNull(newOwner, "ID-owning XMLObject may not be null");
         
         owner = newOwner;
-        idMappings = new LazyMap<>();
     }
     
 
@@ -69,10 +88,19 @@ public class IDIndex {
             return;
         }
         
-        idMappings.put(id, referent);
-        if (owner.hasParent()) {
-            owner.getParent().getIDIndex().registerIDMapping(id, referent);
+        final IDIndex referentIndex = referent.getIDIndex();
+        if (referentIndex.ownIDs == null) {
+            referentIndex.ownIDs = new LazySet<>();
+        }
+        if (!referentIndex.ownIDs.add(id)) {
+            return;
+        }
+
+        final IDIndex root = adjustCount(referent, 1, null);
+        if (root.idMappings == null) {
+            root.idMappings = new LazyMap<>();
         }
+        addMapping(root.idMappings, id, referent);
     }
     
     /**
@@ -81,13 +109,28 @@ public class IDIndex {
      * @param idIndex the ID-to-XMLObject mapping to register
      */
     public void registerIDMappings(@Nonnull final IDIndex idIndex) {
-        if (idIndex == null || idIndex.isEmpty()) {
+        if (idIndex == null || idIndex.isEmpty() || idIndex.idMappings == null) {
             return;
         }
         
-        idMappings.putAll(idIndex.getIDMappings());
-        if (owner.hasParent()) {
-            owner.getParent().getIDIndex().registerIDMappings(idIndex);
+        final Map<String, Object> mappings = idIndex.idMappings;
+        idIndex.idMappings = null;
+
+        int count = 0;
+        for (final Object referents : mappings.values()) {
+            count += referents instanceof List ? ((List<?>) referents).size() : 1;
+        }
+
+        final IDIndex root = adjustCount(owner, count, null);
+        if (root.idMappings == null) {
+            root.idMappings = mappings;
+        } else if (root.idMappings.size() < mappings.size()) {
+            // Merge the smaller set of mappings into the larger, so that trees built bottom-up don't copy
+            // the same mappings at every level.
+            addMappings(mappings, root.idMappings);
+            root.idMappings = mappings;
+        } else {
+            addMappings(root.idMappings, mappings);
         }
     }
     
@@ -101,9 +144,21 @@ public class IDIndex {
             return;
         }
         
-        idMappings.remove(id);
-        if (owner.hasParent()) {
-            owner.getParent().getIDIndex().deregisterIDMapping(id);
+        XMLObject current = owner;
+        while (current != null) {
+            final IDIndex index = current.getIDIndex();
+            if (index.idMappings != null) {
+                final XMLObject referent = index.findMapping(id, owner);
+                if (referent != null) {
+                    removeMapping(index.idMappings, id, referent);
+                    if (referent.getIDIndex().ownIDs != null) {
+                        referent.getIDIndex().ownIDs.remove(id);
+                    }
+                    adjustCount(referent, -1, index);
+                    return;
+                }
+            }
+            current = current.getParent();
         }
     }
     
@@ -117,12 +172,18 @@ public class IDIndex {
             return;
         }
         
-        for (final String id : idIndex.getIDs()) {
-            idMappings.remove(id);
+        final IDIndex root = getRoot(owner);
+        if (root.idMappings == null) {
+            return;
         }
-        if (owner.hasParent()) {
-            owner.getParent().getIDIndex().deregisterIDMappings(idIndex);
+
+        final Map<String, Object> mappings = idIndex.idMappings != null ? idIndex.idMappings
+                : new LazyMap<String, Object>();
+        final int count = moveMappings(idIndex.owner, root.idMappings, mappings);
+        if (!mappings.isEmpty()) {
+            idIndex.idMappings = mappings;
         }
+        adjustCount(owner, -count, root);
     }
  
     /**
@@ -132,7 +193,22 @@ public class IDIndex {
      * @return the XMLObject identified by the ID attribute value
      */
     @Nullable public XMLObject lookup(@Nonnull @NotEmpty final String id) {
-        return idMappings.get(id);
+        if (subtreeCount == 0) {
+            return null;
+        }
+
+        XMLObject current = owner;
+        while (current != null) {
+            final IDIndex index = current.getIDIndex();
+            if (index.idMappings != null) {
+                final XMLObject referent = index.findMapping(id, owner);
+                if (referent != null) {
+                    return referent;
+                }
+            }
+            current = current.getParent();
+        }
+        return null;
     }
     
     /**
@@ -141,7 +217,7 @@ public class IDIndex {
      * @return true if the index is currently empty
      */
     public boolean isEmpty() {
-        return idMappings.isEmpty();
+        return subtreeCount == 0;
     }
     
     /**
@@ -150,7 +226,7 @@ public class IDIndex {
      * @return the set of ID strings which are keys to the index
      */
     @Nonnull public Set<String> getIDs() {
-        return Collections.unmodifiableSet(idMappings.keySet());
+        return Collections.unmodifiableSet(getIDMappings().keySet());
     }
     
     /**
@@ -159,7 +235,230 @@ public class IDIndex {
      * @return the ID-to-XMLObject mapping
      */
     @Nonnull protected Map<String, XMLObject> getIDMappings() {
-        return Collections.unmodifiableMap(idMappings);
+        if (subtreeCount == 0) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, XMLObject> mappings = new HashMap<>();
+        if (!owner.hasParent() && idMappings != null) {
+            for (final String id : idMappings.keySet()) {
+                mappings.put(id, findMapping(id, owner));
+            }
+        } else {
+            collectMappings(owner, mappings);
+        }
+        return Collections.unmodifiableMap(mappings);
+    }
+
+    /**
+     * Find the most recently registered referent of an ID in this index's mappings which is in the subtree rooted at
+     * the given XMLObject.
+     * 
+     * @param id the ID
+     * @param scope the root of the subtree
+     * 
+     * @return the referent, or null
+     */
+    @Nullable private XMLObject findMapping(@Nonnull final String id, @Nonnull final XMLObject scope) {
+        final Object referents = idMappings.get(id);
+        if (referents instanceof List) {
+            final List<?> list = (List<?>) referents;
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (isInSubtree((XMLObject) list.get(i), scope)) {
+                    return (XMLObject) list.get(i);
+                }
+            }
+        } else if (referents != null && isInSubtree((XMLObject) referents, scope)) {
+            return (XMLObject) referents;
+        }
+        return null;
+    }
+
+    /**
+     * Move the mappings registered for the XMLObjects in a subtree, visiting only those XMLObjects whose subtrees
+     * contain IDs.
+     * 
+     * @param xmlObject the root of the subtree
+     * @param from the mappings to move from
+     * @param to the mappings to move to
+     * 
+     * @return the number of mappings moved
+     */
+    private static int moveMappings(@Nonnull final XMLObject xmlObject, @Nonnull final Map<String, Object> from,
+            @Nonnull final Map<String, Object> to) {
+        final IDIndex index = xmlObject.getIDIndex();
+        int count = 0;
+        if (index.ownIDs != null) {
+            for (final String id : index.ownIDs) {
+                if (removeMapping(from, id, xmlObject)) {
+                    addMapping(to, id, xmlObject);
+                    count++;
+                }
+            }
+        }
+
+        if (count < index.subtreeCount) {
+            final List<XMLObject> children = xmlObject.getOrderedChildren();
+            if (children != null) {
+                for (final XMLObject child : children) {
+                    if (child != null && !child.getIDIndex().isEmpty()) {
+                        count += moveMappings(child, from, to);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Collect the mappings registered for the XMLObjects in a subtree, visiting only those XMLObjects whose subtrees
+     * contain IDs.
+     * 
+     * @param xmlObject the root of the subtree
+     * @param mappings the mappings to add to
+     */
+    private static void collectMappings(@Nonnull final XMLObject xmlObject,
+            @Nonnull final Map<String, XMLObject> mappings) {
+        final IDIndex index = xmlObject.getIDIndex();
+        final List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                if (child != null && !child.getIDIndex().isEmpty()) {
+                    collectMappings(child, mappings);
+                }
+            }
+        }
+        if (index.ownIDs != null) {
+            for (final String id : index.ownIDs) {
+                mappings.put(id, xmlObject);
+            }
+        }
+    }
+
+    /**
+     * Adjust the count of mappings in the subtrees of an XMLObject and each of its ancestors.
+     * 
+     * @param xmlObject the XMLObject
+     * @param delta the adjustment
+     * @param limit the index of the last ancestor to adjust, or null to adjust all of them
+     * 
+     * @return the index of the last ancestor adjusted, the root of the XMLObject's tree unless a limit is given
+     */
+    @Nonnull private static IDIndex adjustCount(@Nonnull final XMLObject xmlObject, final int delta,
+            @Nullable final IDIndex limit) {
+        XMLObject current = xmlObject;
+        while (true) {
+            final IDIndex index = current.getIDIndex();
+            index.subtreeCount += delta;
+            if (index == limit || !current.hasParent()) {
+                return index;
+            }
+            current = current.getParent();
+        }
+    }
+
+    /**
+     * Get the index of the root of an XMLObject's tree.
+     * 
+     * @param xmlObject the XMLObject
+     * 
+     * @return the index of the root
+     */
+    @Nonnull private static IDIndex getRoot(@Nonnull final XMLObject xmlObject) {
+        XMLObject current = xmlObject;
+        while (current.hasParent()) {
+            current = current.getParent();
+        }
+        return current.getIDIndex();
+    }
+
+    /**
+     * Check whether an XMLObject is in the subtree rooted at another.
+     * 
+     * @param xmlObject the XMLObject to check
+     * @param scope the root of the subtree
+     * 
+     * @return true if the XMLObject is the root of the subtree or one of its descendants
+     */
+    private static boolean isInSubtree(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject scope) {
+        XMLObject current = xmlObject;
+        while (current != null) {
+            if (current == scope) {
+                return true;
+            }
+            current = current.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Add a referent of an ID to a set of mappings.
+     * 
+     * @param mappings the mappings
+     * @param id the ID
+     * @param referent the referent
+     */
+    private static void addMapping(@Nonnull final Map<String, Object> mappings, @Nonnull final String id,
+            @Nonnull final XMLObject referent) {
+        final Object existing = mappings.get(id);
+        if (existing == null || existing == referent) {
+            mappings.put(id, referent);
+        } else if (existing instanceof List) {
+            @SuppressWarnings("unchecked") final List<Object> list = (List<Object>) existing;
+            list.remove(referent);
+            list.add(referent);
+        } else {
+            final List<Object> list = new ArrayList<>(2);
+            list.add(existing);
+            list.add(referent);
+            mappings.put(id, list);
+        }
+    }
+
+    /**
+     * Add all the referents in one set of mappings to another.
+     * 
+     * @param mappings the mappings to add to
+     * @param additions the mappings to add
+     */
+    private static void addMappings(@Nonnull final Map<String, Object> mappings,
+            @Nonnull final Map<String, Object> additions) {
+        for (final Map.Entry<String, Object> entry : additions.entrySet()) {
+            if (entry.getValue() instanceof List) {
+                for (final Object referent : (List<?>) entry.getValue()) {
+                    addMapping(mappings, entry.getKey(), (XMLObject) referent);
+                }
+            } else {
+                addMapping(mappings, entry.getKey(), (XMLObject) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Remove a referent of an ID from a set of mappings.
+     * 
+     * @param mappings the mappings
+     * @param id the ID
+     * @param referent the referent
+     * 
+     * @return true if the referent was removed
+     */
+    private static boolean removeMapping(@Nonnull final Map<String, Object> mappings, @Nonnull final String id,
+            @Nonnull final XMLObject referent) {
+        final Object existing = mappings.get(id);
+        if (existing == referent) {
+            mappings.remove(id);
+            return true;
+        } else if (existing instanceof List) {
+            final List<?> list = (List<?>) existing;
+            if (list.remove(referent)) {
+                if (list.size() == 1) {
+                    mappings.put(id, list.get(0));
+                }
+                return true;
+            }
+        }
+        return false;
     }
     
 }
@@ -0,0 +1,292 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+
+/**
+ * A scoped pool of shared instances of the values which recur throughout large XMLObject trees.
+ * 
+ * <p>
+ * A pool is opened on the current thread by {@link #open(Collection)} and remains in effect on that thread until
+ * it is closed. While it is in effect, element and schema type {@link QName}s and
+ * {@link org.opensaml.core.xml.Namespace} instances created by XMLObjects and their unmarshallers, and the values
+ * of those attributes and elements whose names the pool was opened with, are replaced by a single shared instance
+ * of each distinct value.
+ * </p>
+ * 
+ * <p>
+ * Interning is opt-in: when no pool is in effect the static methods of this class return their input unchanged.
+ * The pool holds only the values seen within its scope and is discarded when closed, so the shared instances
+ * are retained only by the objects which use them. Pools may be nested, in which case the innermost is used.
+ * </p>
+ * 
+ * <pre>
+ * try (final InterningPool pool = InterningPool.open(names)) {
+ *     xmlObject = unmarshaller.unmarshall(element);
+ * }
+ * </pre>
+ */
+@NotThreadSafe
+public final class InterningPool implements AutoCloseable {
+
+    /** The pool in effect on each thread. */
+    @Nonnull private static final ThreadLocal<InterningPool> CURRENT = new ThreadLocal<>();
+
+    /** Names of the attributes and elements whose values are interned. */
+    @Nonnull @NonnullElements private final Set<QName> valueNames;
+
+    /** Shared instances, keyed by themselves or, for QNames, by {@link QNameKey}. */
+    @Nonnull private final Map<Object, Object> values;
+
+    /** The pool which was in effect when this one was opened. */
+    @Nullable private final InterningPool previous;
+
+    /** Number of values replaced by an existing shared instance. */
+    private long reuseCount;
+
+    /**
+     * Constructor.
+     *
+     * @param names names of the attributes and elements whose values are interned
+     * @param enclosing the pool which was in effect when this one was opened
+     */
+    private InterningPool(@Nonnull @NonnullElements final Set<QName> names, @Nullable final InterningPool enclosing) {
+        valueNames = names;
+        values = new HashMap<>();
+        previous = enclosing;
+    }
+
+    /**
+     * Open a pool and put it into effect on the current thread.
+     * 
+     * <p>
+     * Attribute names are matched by namespace and local name, so unqualified attributes should be given
+     * with no namespace. Element content is matched by the name of the element.
+     * </p>
+     * 
+     * @param names names of the attributes and elements whose values are to be interned
+     * 
+     * @return the pool, which must be closed by the same thread
+     */
+    @Nonnull public static InterningPool open(@Nullable @NonnullElements final Collection<QName> names) {
+        final Set<QName> nameSet = names != null ? new HashSet<>(names) : Collections.<QName>emptySet();
+        final InterningPool pool = new InterningPool(nameSet, CURRENT.get());
+        CURRENT.set(pool);
+        return pool;
+    }
+
+    /**
+     * Get the pool in effect on the current thread.
+     * 
+     * @return the current pool, or null if none is in effect
+     */
+    @Nullable public static InterningPool getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Intern a value using the pool in effect on the current thread, if any.
+     * 
+     * @param <T> the type of value
+     * @param value the value
+     * 
+     * @return the shared instance equal to the value, or the value itself if no pool is in effect
+     */
+    @Nullable public static <T> T internIfActive(@Nullable final T value) {
+        final InterningPool pool = CURRENT.get();
+        if (pool == null || value == null) {
+            return value;
+        }
+        return pool.intern(value);
+    }
+
+    /**
+     * Intern a QName, including its prefix, using the pool in effect on the current thread, if any.
+     * 
+     * @param name the QName
+     * 
+     * @return the shared instance equal to the QName and having the same prefix, or the QName itself if no pool
+     *          is in effect
+     */
+    @Nullable public static QName internQNameIfActive(@Nullable final QName name) {
+        final InterningPool pool = CURRENT.get();
+        if (pool == null || name == null) {
+            return name;
+        }
+        return pool.internQName(name);
+    }
+
+    /**
+     * Intern the value of an attribute or element using the pool in effect on the current thread, if that pool
+     * interns the values of the attribute or element.
+     * 
+     * @param name the name of the attribute or element
+     * @param value the value
+     * 
+     * @return the shared instance equal to the value, or the value itself if it is not interned
+     */
+    @Nullable public static String internValueIfActive(@Nonnull final QName name, @Nullable final String value) {
+        final InterningPool pool = CURRENT.get();
+        if (pool == null || value == null || !pool.valueNames.contains(name)) {
+            return value;
+        }
+        return pool.intern(value);
+    }
+
+    /**
+     * Get the names of the attributes and elements whose values are interned.
+     * 
+     * @return the names
+     */
+    @Nonnull @NonnullElements @Unmodifiable @NotLive public Set<QName> getValueNames() {
+        return Collections.unmodifiableSet(valueNames);
+    }
+
+    /**
+     * Get the number of distinct values held.
+     * 
+     * @return the number of values
+     */
+    public int getSize() {
+        return values.size();
+    }
+
+    /**
+     * Get the number of values which were replaced by an existing shared instance.
+     * 
+     * @return the number of values replaced
+     */
+    public long getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * Intern a value.
+     * 
+     * <p>
+     * The value's class must implement {@link Object#equals(Object)} such that equal values are interchangeable.
+     * QNames should be interned with {@link #internQName(QName)}, since their equality disregards the prefix.
+     * </p>
+     * 
+     * @param <T> the type of value
+     * @param value the value
+     * 
+     * @return the shared instance equal to the value
+     */
+    @Nonnull public <T> T intern(@Nonnull final T value) {
+        return intern(value, value);
+    }
+
+    /**
+     * Intern a QName, including its prefix.
+     * 
+     * @param name the QName
+     * 
+     * @return the shared instance equal to the QName and having the same prefix
+     */
+    @Nonnull public QName internQName(@Nonnull final QName name) {
+        return intern(new QNameKey(name), name);
+    }
+
+    /** Discard the pool, putting back into effect the pool which was in effect when it was opened. */
+    @Override
+    public void close() {
+        values.clear();
+        if (CURRENT.get() == this) {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Intern a value under a key.
+     * 
+     * @param <T> the type of value
+     * @param key the key
+     * @param value the value
+     * 
+     * @return the shared instance held under the key
+     */
+    @Nonnull private <T> T intern(@Nonnull final Object key, @Nonnull final T value) {
+        final Object existing = values.get(key);
+        if (existing != null && existing.getClass() == value.getClass()) {
+            reuseCount++;
+            @SuppressWarnings("unchecked") final T shared = (T) existing;
+            return shared;
+        }
+        values.put(key, value);
+        return value;
+    }
+
+    /** Key for a QName which, unlike the QName itself, distinguishes prefixes. */
+    private static final class QNameKey {
+
+        /** The QName. */
+        @Nonnull private final QName name;
+
+        /**
+         * Constructor.
+         *
+         * @param qname the QName
+         */
+        QNameKey(@Nonnull final QName qname) {
+            name = qname;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + name.getPrefix().hashCode();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+
+            if (obj instanceof QNameKey) {
+                final QName other = ((QNameKey) obj).name;
+                return name.equals(other) && Objects.equals(name.getPrefix(), other.getPrefix());
+            }
+
+            return false;
+        }
+    }
+
+}
@@ -27,6 +27,9 @@ import java.util.Objects;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport;
 import net.shibboleth.utilities.java.support.primitive.DeprecationSupport.ObjectType;
@@ -44,8 +47,10 @@ import org.opensaml.core.xml.XMLObjectBuilder;
 import org.opensaml.core.xml.XMLRuntimeException;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistry;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Copier;
 import org.opensaml.core.xml.io.Marshaller;
 import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.StreamingMarshallingContext;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.slf4j.Logger;
@@ -59,6 +64,9 @@ import org.w3c.dom.Element;
  * A helper class for working with XMLObjects.
  */
 public final class XMLObjectSupport {
+
+    /** Factory for the writers used to stream XMLObjects. */
+    @Nonnull private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
     
     /** Options for handling output of XMLObject cloning. */
     public enum CloneOutputOption {
@@ -217,6 +225,88 @@ public final class XMLObjectSupport {
         return clonedXMLObject;
     }
     
+    /**
+     * Copy an XMLObject structurally, using the {@link Copier} registered for it.
+     * 
+     * <p>
+     * Unlike {@link #cloneXMLObject(XMLObject, CloneOutputOption)}, this does not generally marshall the original
+     * object, whose state, including any cached DOM, is left untouched. The common object types have copiers derived
+     * from {@link org.opensaml.core.xml.io.AbstractXMLObjectCopier}, which copy them field by field, so the copy has
+     * no cached DOM, except for parts which are signed or hold deferred wildcard content. Those parts are copied by
+     * importing their cached DOM, so the corresponding parts of the copy have a cached DOM in a new {@link Document};
+     * if the copy as a whole has one, it is the document element.
+     * </p>
+     * 
+     * <p>
+     * Parts with no registered {@link Copier} are copied by the {@link org.opensaml.core.xml.io.DefaultCopier}, which
+     * also imports any cached DOM and otherwise round trips the part through a transient, childless DOM element. The
+     * exception is a part without a cached DOM whose marshaller or unmarshaller does not extend
+     * {@link org.opensaml.core.xml.io.AbstractXMLObjectMarshaller} or
+     * {@link org.opensaml.core.xml.io.AbstractXMLObjectUnmarshaller}. Such a part is fully marshalled, caching the
+     * resulting DOM on the original as any marshalling would, and that DOM is copied.
+     * </p>
+     * 
+     * @param originalXMLObject the object to be copied
+     * @return a copy of the original object
+     * 
+     * @throws MarshallingException if the state of the original object can not be read
+     * @throws UnmarshallingException if the copied object tree can not be built
+     * 
+     * @param <T> the type of object being copied
+     */
+    @Nullable public static <T extends XMLObject> T copyXMLObject(@Nullable final T originalXMLObject)
+            throws MarshallingException, UnmarshallingException {
+        
+        if (originalXMLObject == null) {
+            return null;
+        }
+        
+        final Document newDocument;
+        try {
+            newDocument = XMLObjectProviderRegistrySupport.getParserPool().newDocument();
+        } catch (final XMLParserException e) {
+            throw new XMLRuntimeException("Error obtaining new Document from parser pool", e);
+        }
+        
+        final Copier copier = XMLObjectProviderRegistrySupport.getCopierFactory().getCopier(originalXMLObject);
+        final T copiedXMLObject = (T) copier.copy(originalXMLObject, newDocument);
+        
+        final Element copiedElement = copiedXMLObject.getDOM();
+        if (copiedElement != null && copiedElement.getOwnerDocument() == newDocument
+                && newDocument.getDocumentElement() == null) {
+            newDocument.appendChild(copiedElement);
+        }
+        return copiedXMLObject;
+    }
+
+    /**
+     * Expand any content of an object tree whose expansion was deferred when it was unmarshalled, such as that of
+     * an {@link org.opensaml.core.xml.schema.impl.XSAnyImpl} unmarshalled by an
+     * {@link org.opensaml.core.xml.schema.impl.XSAnyUnmarshaller} which defers expansion.
+     *
+     * <p>
+     * Expansion modifies the object tree, so a tree which may contain deferred content must be expanded by this
+     * method before it is shared between threads which read it concurrently.
+     * </p>
+     *
+     * @param xmlObject the root of the object tree
+     *
+     * @throws XMLRuntimeException if deferred content can not be expanded
+     */
+    public static void expandDeferredContent(@Nullable final XMLObject xmlObject) {
+        if (xmlObject == null) {
+            return;
+        }
+
+        // Getting the children of an object with deferred content expands it.
+        final List<XMLObject> children = xmlObject.getOrderedChildren();
+        if (children != null) {
+            for (final XMLObject child : children) {
+                expandDeferredContent(child);
+            }
+        }
+    }
+
     /**
      * Unmarshall a Document from an InputSteam.
      * 
@@ -349,6 +439,52 @@ public final class XMLObjectSupport {
         final Element element = marshall(xmlObject);
         SerializeSupport.writeNode(element, outputStream);
     }
+
+    /**
+     * Marshall an XMLObject directly to a StAX writer, without building a DOM for it.
+     * 
+     * <p>
+     * Only the element is written; the caller is responsible for starting and ending the document, if required.
+     * The writer must not be namespace repairing. Any portion of the object tree which already has a cached DOM
+     * is written from that DOM.
+     * </p>
+     * 
+     * @param xmlObject the XMLObject to marshall
+     * @param writer the writer to which to marshall
+     * @throws MarshallingException if there is a problem marshalling the object
+     */
+    public static void marshallToXMLStreamWriter(@Nonnull final XMLObject xmlObject,
+            @Nonnull final XMLStreamWriter writer) throws MarshallingException {
+        new StreamingMarshallingContext(writer).marshall(xmlObject);
+        try {
+            writer.flush();
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to flush XMLStreamWriter", e);
+        }
+    }
+
+    /**
+     * Marshall an XMLObject to an OutputStream as a UTF-8 encoded document, streaming it rather than
+     * building a DOM for it.
+     * 
+     * @param xmlObject the XMLObject to marshall
+     * @param outputStream the OutputStream to which to marshall
+     * @throws MarshallingException if there is a problem marshalling the object
+     * 
+     * @see #marshallToXMLStreamWriter(XMLObject, XMLStreamWriter)
+     */
+    public static void streamToOutputStream(@Nonnull final XMLObject xmlObject,
+            @Nonnull final OutputStream outputStream) throws MarshallingException {
+        try {
+            final XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            marshallToXMLStreamWriter(xmlObject, writer);
+            writer.writeEndDocument();
+            writer.close();
+        } catch (final XMLStreamException e) {
+            throw new MarshallingException("Unable to write XMLObject to OutputStream", e);
+        }
+    }
     
     /**
      * Get the namespace URI bound to the specified prefix within the scope of the specified
@@ -469,9 +605,9 @@ public final class XMLObjectSupport {
      * @param attribute the target DOM Attr
      */
     public static void unmarshallToAttributeMap(final AttributeMap attributeMap, final Attr attribute) {
-        final QName attribQName = QNameSupport.constructQName(attribute.getNamespaceURI(), attribute.getLocalName(),
-                attribute.getPrefix());
-        attributeMap.put(attribQName, attribute.getValue());
+        final QName attribQName = InterningPool.internQNameIfActive(QNameSupport.constructQName(
+                attribute.getNamespaceURI(), attribute.getLocalName(), attribute.getPrefix()));
+        attributeMap.put(attribQName, InterningPool.internValueIfActive(attribQName, attribute.getValue()));
         if (attribute.isId() || XMLObjectProviderRegistrySupport.isIDAttribute(attribQName)) {
             attributeMap.registerID(attribQName);
         }
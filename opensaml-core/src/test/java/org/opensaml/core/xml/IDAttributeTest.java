@@ -333,4 +333,48 @@ public class IDAttributeTest extends XMLObjectBaseTestCase {
         Assert.assertNull(xmlObject.resolveID("GlobalID2"), "Lookup of non-existent ID mapping didn't return null");
     }
         
+    /**
+     *  Test that lookups are scoped to the subtree of the object they are made from, including
+     *  after subtrees are detached and when the same ID appears in more than one subtree.
+     */
+    @Test
+    public void testSubtreeScope() {
+        SimpleXMLObject sxObject =  
+            (SimpleXMLObject) unmarshallElement("/org/opensaml/core/xml/IDAttributeWithChildrenList.xml");
+        SimpleXMLObject level2B = sxObject.getSimpleXMLObjects().get(1);
+        SimpleXMLObject level2C = sxObject.getSimpleXMLObjects().get(3);
+        
+        SimpleXMLObject duplicate1 = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        duplicate1.setId("Duplicate");
+        level2B.getSimpleXMLObjects().add(duplicate1);
+        SimpleXMLObject duplicate2 = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        duplicate2.setId("Duplicate");
+        level2C.getSimpleXMLObjects().add(duplicate2);
+        
+        Assert.assertEquals(level2B.resolveID("Duplicate"), duplicate1, "ID lookup failed");
+        Assert.assertEquals(level2C.resolveID("Duplicate"), duplicate2, "ID lookup failed");
+        Assert.assertNotNull(sxObject.resolveID("Duplicate"), "ID lookup failed");
+        
+        level2C.getSimpleXMLObjects().remove(duplicate2);
+        Assert.assertEquals(sxObject.resolveID("Duplicate"), duplicate1, "ID lookup failed");
+        Assert.assertNull(level2C.resolveID("Duplicate"), "Lookup of non-existent ID didn't return null");
+        Assert.assertEquals(duplicate2.resolveID("Duplicate"), duplicate2, "ID lookup failed");
+        
+        // Detach a subtree, which then resolves its own IDs only
+        SimpleXMLObject level2A = sxObject.getSimpleXMLObjects().remove(0);
+        Assert.assertNull(sxObject.resolveID("IDLevel4A"), "Lookup of non-existent ID didn't return null");
+        Assert.assertNull(sxObject.resolveID("IDLevel2A"), "Lookup of non-existent ID didn't return null");
+        Assert.assertEquals(level2A.resolveID("IDLevel2A"), level2A, "ID lookup failed");
+        Assert.assertEquals(level2A.resolveID("IDLevel4A"), level2A.getSimpleXMLObjects().get(0)
+                .getSimpleXMLObjects().get(0), "ID lookup failed");
+        Assert.assertEquals(level2A.getIDIndex().getIDs().size(), 5, "Unexpected number of IDs");
+        Assert.assertNull(level2A.resolveID("IDLevel1"), "Lookup of non-existent ID didn't return null");
+        
+        // And reattach it elsewhere
+        level2C.getSimpleXMLObjects().add(level2A);
+        Assert.assertEquals(sxObject.resolveID("IDLevel3B"), level2A.getSimpleXMLObjects().get(2), "ID lookup failed");
+        Assert.assertEquals(level2C.resolveID("IDLevel3B"), level2A.getSimpleXMLObjects().get(2), "ID lookup failed");
+        Assert.assertNull(level2B.resolveID("IDLevel3B"), "Lookup of non-existent ID didn't return null");
+    }
+        
 }
\ No newline at end of file
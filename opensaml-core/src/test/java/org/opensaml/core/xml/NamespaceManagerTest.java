@@ -223,6 +223,42 @@ public class NamespaceManagerTest extends XMLObjectBaseTestCase {
         checkPrefixes(nsManager, ns3Prefix);
     }
     
+    @Test
+    public void testSubtreeAggregatesInvalidation() {
+        QName name3 = new QName(ns3uri, "Test3", ns3Prefix);
+        QName name4 = new QName(ns4uri, "Test4", ns4Prefix);
+        
+        XSAny child = xsAnyBuilder.buildObject(elementName);
+        XSAny grandchild = xsAnyBuilder.buildObject(elementName, typeName);
+        child.getUnknownXMLObjects().add(grandchild);
+        xsAny.getUnknownXMLObjects().add(child);
+        
+        checkPrefixes(nsManager, ns2Prefix);
+        Assert.assertSame(nsManager.getNonVisibleNamespaces(), nsManager.getNonVisibleNamespaces());
+        Assert.assertSame(nsManager.getAllNamespacesInSubtreeScope(), nsManager.getAllNamespacesInSubtreeScope());
+        
+        // A change deep in the tree reaches the root
+        grandchild.getUnknownAttributes().put(name4, name3);
+        checkPrefixes(nsManager, ns2Prefix, ns3Prefix);
+        Assert.assertTrue(nsManager.getAllNamespacesInSubtreeScope().contains(new Namespace(ns4uri, ns4Prefix)));
+        
+        // Repeated changes below an already invalidated ancestor still reach the root once recomputed
+        grandchild.getUnknownAttributes().remove(name4);
+        child.getNamespaceManager().registerContentValue(name4);
+        checkPrefixes(nsManager, ns2Prefix, ns4Prefix);
+        
+        // Removing a child removes its contribution
+        child.getUnknownXMLObjects().remove(grandchild);
+        checkPrefixes(nsManager, ns4Prefix);
+        
+        grandchild.getUnknownAttributes().put(name4, name3);
+        checkPrefixes(nsManager, ns4Prefix);
+        checkPrefixes(grandchild.getNamespaceManager(), ns2Prefix, ns3Prefix);
+        
+        xsAny.getUnknownXMLObjects().clear();
+        checkPrefixes(nsManager);
+    }
+    
     
     /**********************/
     
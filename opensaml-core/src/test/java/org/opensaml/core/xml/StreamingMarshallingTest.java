@@ -0,0 +1,197 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import net.shibboleth.utilities.java.support.xml.XMLAssertTestNG;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.custommonkey.xmlunit.Diff;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.StreamingMarshaller;
+import org.opensaml.core.xml.io.StreamingMarshallingContext;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Unit test for streaming marshalling.
+ */
+public class StreamingMarshallingTest extends XMLObjectBaseTestCase {
+
+    /**
+     * Tests streaming an object that has DOM Attrs.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testStreamingWithAttributes() throws Exception {
+        final SimpleXMLObject sxObject = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sxObject.setId("Firefly");
+
+        assertStreamedXMLEquals("/org/opensaml/core/xml/SimpleXMLObjectWithAttribute.xml", sxObject);
+        Assert.assertNull(sxObject.getDOM(), "DOM was cached after streaming");
+    }
+
+    /**
+     * Tests streaming an object tree with element content.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testStreamingWithElementContent() throws Exception {
+        final SimpleXMLObject sxObject = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+
+        final SimpleXMLObject child1 = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        child1.setValue("Content1");
+        sxObject.getSimpleXMLObjects().add(child1);
+
+        final SimpleXMLObject child2 = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        child2.setValue("Content2");
+        sxObject.getSimpleXMLObjects().add(child2);
+
+        final SimpleXMLObject child3 = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sxObject.getSimpleXMLObjects().add(child3);
+
+        final SimpleXMLObject grandchild1 = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        grandchild1.setValue("Content3");
+        child3.getSimpleXMLObjects().add(grandchild1);
+
+        assertStreamedXMLEquals("/org/opensaml/core/xml/SimpleXMLObjectWithContent.xml", sxObject);
+        Assert.assertNull(sxObject.getDOM(), "DOM was cached after streaming");
+        Assert.assertNull(grandchild1.getDOM(), "DOM was cached after streaming");
+    }
+
+    /**
+     * Tests that namespaces declared on an ancestor are not redeclared on descendants.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testNamespacesNotRedeclared() throws Exception {
+        final SimpleXMLObject sxObject = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sxObject.getSimpleXMLObjects().add((SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+        sxObject.getSimpleXMLObjects().add((SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME));
+
+        final String xml = streamToString(sxObject);
+        Assert.assertEquals(xml.split("xmlns:test=", -1).length - 1, 1, "Namespace was redeclared: " + xml);
+
+        assertStreamedXMLEquals("/org/opensaml/core/xml/SimpleXMLObjectWithChildren.xml", sxObject);
+    }
+
+    /**
+     * Tests streaming a tree in which a child has a cached DOM but its new parent does not.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testStreamingCachedDOMChild() throws Exception {
+        final SimpleXMLObject cached =
+                unmarshallElement("/org/opensaml/core/xml/SimpleXMLObjectWithAttribute.xml");
+        Assert.assertNotNull(cached.getDOM());
+
+        final SimpleXMLObject sxObject = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sxObject.getSimpleXMLObjects().add(cached);
+        Assert.assertNotNull(cached.getDOM());
+
+        final String xml = streamToString(sxObject);
+        final Document streamed = parserPool.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+        final Document expected = parserPool.newDocument();
+        XMLObjectSupport.getMarshaller(sxObject).marshall(sxObject, expected);
+        XMLAssertTestNG.assertXMLIdentical(new Diff(expected, streamed), true);
+        Assert.assertNotNull(cached.getDOM(), "Cached DOM of child was released");
+    }
+
+    /**
+     * Tests that a registered streaming marshaller is used in preference to the default.
+     * 
+     * @throws Exception if something goes wrong
+     */
+    @Test
+    public void testRegisteredStreamingMarshaller() throws Exception {
+        final SimpleXMLObject sxObject = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sxObject.setId("Firefly");
+
+        marshallerFactory.registerStreamingMarshaller(SimpleXMLObject.ELEMENT_NAME, new StreamingMarshaller() {
+            public void marshall(final XMLObject xmlObject, final StreamingMarshallingContext context)
+                    throws MarshallingException {
+                context.writeStartElement(SimpleXMLObject.NAMESPACE_PREFIX, SimpleXMLObject.NAMESPACE,
+                        SimpleXMLObject.LOCAL_NAME);
+                context.ensureNamespace(SimpleXMLObject.NAMESPACE_PREFIX, SimpleXMLObject.NAMESPACE);
+                context.writeAttribute(null, null, SimpleXMLObject.ID_ATTRIB_NAME,
+                        ((SimpleXMLObject) xmlObject).getId());
+                context.writeEndElement();
+            }
+        });
+        try {
+            Assert.assertFalse(marshallerFactory.getStreamingMarshallers().isEmpty());
+            assertStreamedXMLEquals("/org/opensaml/core/xml/SimpleXMLObjectWithAttribute.xml", sxObject);
+        } finally {
+            marshallerFactory.deregisterStreamingMarshaller(SimpleXMLObject.ELEMENT_NAME);
+        }
+        Assert.assertTrue(marshallerFactory.getStreamingMarshallers().isEmpty());
+    }
+
+    /**
+     * Stream an object to an OutputStream and compare the result against an expected document.
+     * 
+     * @param expectedDocumentLocation location of the expected document
+     * @param xmlObject the object to stream
+     * 
+     * @throws MarshallingException if the object can not be streamed
+     * @throws XMLParserException if a document can not be parsed
+     */
+    private void assertStreamedXMLEquals(final String expectedDocumentLocation, final XMLObject xmlObject)
+            throws MarshallingException, XMLParserException {
+        final Document expectedDocument =
+                parserPool.parse(StreamingMarshallingTest.class.getResourceAsStream(expectedDocumentLocation));
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLObjectSupport.streamToOutputStream(xmlObject, output);
+        final Document streamed = parserPool.parse(new ByteArrayInputStream(output.toByteArray()));
+
+        XMLAssertTestNG.assertXMLIdentical(new Diff(expectedDocument, streamed), true);
+    }
+
+    /**
+     * Stream an object to a string.
+     * 
+     * @param xmlObject the object to stream
+     * 
+     * @return the serialized object
+     * 
+     * @throws MarshallingException if the object can not be streamed
+     * @throws XMLStreamException if the writer can not be created
+     */
+    private String streamToString(final XMLObject xmlObject) throws MarshallingException, XMLStreamException {
+        final StringWriter output = new StringWriter();
+        final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output);
+        XMLObjectSupport.marshallToXMLStreamWriter(xmlObject, writer);
+        writer.close();
+        return output.toString();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.config.ConfigurationService;
+import org.opensaml.core.config.InitializationException;
+import org.opensaml.core.config.InitializerBaseTestCase;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.mock.SimpleXMLObjectBuilder;
+import org.opensaml.core.xml.mock.SimpleXMLObjectMarshaller;
+import org.opensaml.core.xml.mock.SimpleXMLObjectUnmarshaller;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link XMLObjectProviderRegistrarGenerator} and the use of {@link XMLObjectProviderRegistrar}
+ * by {@link AbstractXMLObjectProviderInitializer}.
+ */
+public class XMLObjectProviderRegistrarGeneratorTest extends InitializerBaseTestCase {
+
+    private File workDir;
+
+    @BeforeMethod
+    protected void setUpWorkDir() throws IOException {
+        workDir = Files.createTempDirectory("registrar-generator").toFile();
+    }
+
+    @AfterMethod
+    protected void tearDownWorkDir() {
+        delete(workDir);
+    }
+
+    @Test
+    public void testClassName() {
+        Assert.assertEquals(XMLObjectProviderRegistrarGenerator.getClassName("saml2-metadata-config.xml"),
+                "Saml2MetadataConfigProviderRegistrar");
+        Assert.assertEquals(XMLObjectProviderRegistrarGenerator.getClassName("2-config.xml"),
+                "Config2ConfigProviderRegistrar");
+    }
+
+    @Test
+    public void testGenerate() throws Exception {
+        final File configDir = new File(workDir, "config");
+        final File sourceDir = new File(workDir, "src");
+        final File resourceDir = new File(workDir, "res");
+        Assert.assertTrue(configDir.mkdirs());
+        try (final InputStream is = XMLObjectProviderRegistrarGeneratorTest.class.getResourceAsStream(
+                "/xmltooling-config.xml")) {
+            Files.copy(is, new File(configDir, "xmltooling-config.xml").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.write(new File(configDir, "ignored.xml").toPath(), "<ignored/>".getBytes(StandardCharsets.UTF_8));
+
+        final List<String> generated = new XMLObjectProviderRegistrarGenerator().generate(configDir, sourceDir,
+                resourceDir, "org.example.registrars");
+        Assert.assertEquals(generated,
+                Collections.singletonList("org.example.registrars.XmltoolingConfigProviderRegistrar"));
+
+        final String source = new String(Files.readAllBytes(
+                new File(sourceDir, "org/example/registrars/XmltoolingConfigProviderRegistrar.java").toPath()),
+                StandardCharsets.UTF_8);
+        Assert.assertTrue(source.contains("package org.example.registrars;"));
+        Assert.assertTrue(source.contains("return \"xmltooling-config.xml\";"));
+        Assert.assertTrue(source.contains(
+                "registry.registerObjectProvider(new QName(\"http://www.example.org/testObjects\", \"SimpleElement\", \"test\"),"));
+        Assert.assertTrue(source.contains("new org.opensaml.core.xml.mock.SimpleXMLObjectBuilder(),"));
+        Assert.assertTrue(source.contains("new org.opensaml.core.xml.mock.SimpleXMLObjectUnmarshaller());"));
+
+        final String index = new String(Files.readAllBytes(
+                new File(resourceDir, "META-INF/services/" + XMLObjectProviderRegistrar.class.getName()).toPath()),
+                StandardCharsets.UTF_8);
+        Assert.assertEquals(index, "org.example.registrars.XmltoolingConfigProviderRegistrar\n");
+    }
+
+    @Test(expectedExceptions = XMLConfigurationException.class)
+    public void testGenerateInvalid() throws Exception {
+        final File configDir = new File(workDir, "config");
+        Assert.assertTrue(configDir.mkdirs());
+        Files.write(new File(configDir, "invalid-config.xml").toPath(),
+                "<invalid/>".getBytes(StandardCharsets.UTF_8));
+
+        new XMLObjectProviderRegistrarGenerator().generate(configDir, new File(workDir, "src"),
+                new File(workDir, "res"), "org.example.registrars");
+    }
+
+    @Test
+    public void testInitializerUsesRegistrar() throws InitializationException {
+        ConfigurationService.getConfigurationProperties().setProperty(ConfigurationService.PROPERTY_PARTITION_NAME,
+                getClass().getName() + ".registrar");
+
+        final MockRegistrar registrar = new MockRegistrar();
+        final TestXMLObjectProviderInitializer initializer = new TestXMLObjectProviderInitializer() {
+            protected Map<String, XMLObjectProviderRegistrar> getRegistrars() {
+                return Collections.<String, XMLObjectProviderRegistrar>singletonMap("xmltooling-config.xml",
+                        registrar);
+            }
+        };
+        initializer.init();
+
+        Assert.assertEquals(registrar.invocations, 1);
+        final XMLObjectProviderRegistry registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
+        Assert.assertNotNull(registry.getBuilderFactory().getBuilder(SimpleXMLObject.ELEMENT_NAME));
+        // Only the registrar was used, so providers solely defined by the resource are absent.
+        Assert.assertNull(registry.getBuilderFactory().getBuilder(
+                new QName("http://www.example.org/testObjects", "Response")));
+    }
+
+    @Test
+    public void testInitializerRegistrarsDisabled() throws InitializationException {
+        ConfigurationService.getConfigurationProperties().setProperty(ConfigurationService.PROPERTY_PARTITION_NAME,
+                getClass().getName() + ".disabled");
+        ConfigurationService.getConfigurationProperties().setProperty(
+                AbstractXMLObjectProviderInitializer.CONFIG_PROPERTY_REGISTRARS_DISABLED, "true");
+
+        final TestXMLObjectProviderInitializer initializer = new TestXMLObjectProviderInitializer() {
+            protected Map<String, XMLObjectProviderRegistrar> getRegistrars() {
+                final Map<String, XMLObjectProviderRegistrar> registrars = super.getRegistrars();
+                Assert.assertTrue(registrars.isEmpty());
+                return registrars;
+            }
+        };
+        initializer.init();
+
+        final XMLObjectProviderRegistry registry = ConfigurationService.get(XMLObjectProviderRegistry.class);
+        Assert.assertNotNull(registry.getBuilderFactory().getBuilder(
+                new QName("http://www.example.org/testObjects", "Response")));
+    }
+
+    private void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Registrar which registers only the simple test object. */
+    private static class MockRegistrar implements XMLObjectProviderRegistrar {
+
+        private int invocations;
+
+        public String getConfigResource() {
+            return "xmltooling-config.xml";
+        }
+
+        public void register(final XMLObjectProviderRegistry registry) {
+            invocations++;
+            registry.registerObjectProvider(SimpleXMLObject.ELEMENT_NAME, new SimpleXMLObjectBuilder(),
+                    new SimpleXMLObjectMarshaller(), new SimpleXMLObjectUnmarshaller());
+        }
+    }
+
+}
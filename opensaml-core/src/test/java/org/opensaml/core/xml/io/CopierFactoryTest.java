@@ -0,0 +1,151 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.io;
+
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.schema.XSAny;
+import org.opensaml.core.xml.schema.impl.XSAnyBuilder;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Unit test for {@link CopierFactory}.
+ */
+public class CopierFactoryTest extends XMLObjectBaseTestCase {
+
+    /** Element name of the test objects. */
+    private static final QName ELEMENT_NAME = new QName("urn:test:copier", "Element", "copier");
+
+    /** Schema type of the typed test object. */
+    private static final QName TYPE_NAME = new QName("urn:test:copier", "Type", "copier");
+
+    /** Test object with only an element name. */
+    private XSAny untypedObject;
+
+    /** Test object with an element name and a schema type. */
+    private XSAny typedObject;
+
+    @BeforeMethod
+    protected void setUp() {
+        final XSAnyBuilder builder = new XSAnyBuilder();
+        untypedObject = builder.buildObject(ELEMENT_NAME);
+        typedObject = builder.buildObject(ELEMENT_NAME, TYPE_NAME);
+    }
+
+    /** Tests that the default copier is used when none is registered. */
+    @Test
+    public void testDefaultCopier() {
+        final CopierFactory factory = new CopierFactory();
+
+        Assert.assertTrue(factory.getCopier(untypedObject) instanceof DefaultCopier);
+        Assert.assertTrue(factory.getCopier(typedObject) instanceof DefaultCopier);
+        Assert.assertNull(factory.getCopier(ELEMENT_NAME));
+        Assert.assertTrue(factory.getCopiers().isEmpty());
+    }
+
+    /** Tests that copiers are looked up by schema type, then by element name. */
+    @Test
+    public void testLookupOrder() {
+        final CopierFactory factory = new CopierFactory();
+        final Copier elementCopier = new StaticCopier(untypedObject);
+        final Copier typeCopier = new StaticCopier(typedObject);
+
+        factory.registerCopier(ELEMENT_NAME, elementCopier);
+        Assert.assertSame(factory.getCopier(untypedObject), elementCopier);
+        Assert.assertSame(factory.getCopier(typedObject), elementCopier, "Element name was not used as fallback");
+
+        factory.registerCopier(TYPE_NAME, typeCopier);
+        Assert.assertSame(factory.getCopier(typedObject), typeCopier, "Schema type did not take precedence");
+        Assert.assertSame(factory.getCopier(untypedObject), elementCopier);
+        Assert.assertEquals(factory.getCopiers().size(), 2);
+
+        Assert.assertSame(factory.deregisterCopier(ELEMENT_NAME), elementCopier);
+        Assert.assertTrue(factory.getCopier(untypedObject) instanceof DefaultCopier);
+        Assert.assertSame(factory.getCopier(typedObject), typeCopier);
+    }
+
+    /** Tests that the copier registered for the default object provider is used only for objects it provides. */
+    @Test
+    public void testDefaultProviderCopier() {
+        final CopierFactory factory = new CopierFactory();
+        final Copier providerCopier = new StaticCopier(untypedObject);
+
+        factory.registerCopier(XMLObjectProviderRegistrySupport.getDefaultProviderQName(), providerCopier);
+        Assert.assertSame(factory.getCopier(untypedObject), providerCopier);
+        Assert.assertSame(factory.getCopier(typedObject), providerCopier);
+
+        final XMLObject simpleXMLObject = buildXMLObject(simpleXMLObjectQName);
+        Assert.assertTrue(factory.getCopier(simpleXMLObject) instanceof DefaultCopier,
+                "Default provider's copier was used for an object with its own builder");
+    }
+
+    /**
+     * Tests that copying an object uses the copier registered for it.
+     * 
+     * @throws MarshallingException if the object can not be copied
+     * @throws UnmarshallingException if the object can not be copied
+     */
+    @Test
+    public void testRegisteredCopierUsed() throws MarshallingException, UnmarshallingException {
+        final CopierFactory factory = XMLObjectProviderRegistrySupport.getCopierFactory();
+        final XSAny result = new XSAnyBuilder().buildObject(ELEMENT_NAME);
+
+        factory.registerCopier(TYPE_NAME, new StaticCopier(result));
+        try {
+            Assert.assertSame(XMLObjectSupport.copyXMLObject(typedObject), result);
+
+            final XSAny copy = XMLObjectSupport.copyXMLObject(untypedObject);
+            Assert.assertNotSame(copy, result);
+            Assert.assertNotSame(copy, untypedObject);
+            Assert.assertEquals(copy.getElementQName(), ELEMENT_NAME);
+        } finally {
+            factory.deregisterCopier(TYPE_NAME);
+        }
+    }
+
+    /**
+     * A copier which returns a fixed object.
+     */
+    private static class StaticCopier implements Copier {
+
+        /** The object returned as the copy. */
+        private final XMLObject result;
+
+        /**
+         * Constructor.
+         * 
+         * @param copy the object returned as the copy
+         */
+        public StaticCopier(final XMLObject copy) {
+            result = copy;
+        }
+
+        /** {@inheritDoc} */
+        public XMLObject copy(final XMLObject xmlObject, final Document document) {
+            return result;
+        }
+    }
+
+}
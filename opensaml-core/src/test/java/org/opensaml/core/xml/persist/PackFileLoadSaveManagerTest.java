@@ -0,0 +1,378 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Set;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.XMLRuntimeException;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+
+import net.shibboleth.utilities.java.support.collection.Pair;
+import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
+
+public class PackFileLoadSaveManagerTest extends XMLObjectBaseTestCase {
+    
+    private File baseDir;
+    
+    private PackFileLoadSaveManager<SimpleXMLObject> manager;
+    
+    @BeforeMethod
+    public void setUp() throws IOException {
+        baseDir = new File(System.getProperty("java.io.tmpdir"), "pack-file-load-save-manager-test");
+        baseDir.deleteOnExit();
+        resetBaseDir();
+        Assert.assertTrue(baseDir.mkdirs());
+        
+        manager = new PackFileLoadSaveManager<>(baseDir);
+    }
+    
+    @AfterMethod
+    public void tearDown() throws IOException {
+        manager.close();
+        resetBaseDir();
+    }
+    
+    @Test
+    public void emptyDir() throws IOException {
+        testState(Sets.<String>newHashSet());
+        Assert.assertEquals(baseDir.listFiles().length, 1);
+    }
+    
+    @DataProvider
+    public Object[][] saveLoadUpdateRemoveParams() {
+        return new Object[][] {
+                new Object[] { Boolean.FALSE},
+                new Object[] { Boolean.TRUE },
+        };
+    }
+    
+    @Test(dataProvider="saveLoadUpdateRemoveParams")
+    public void saveLoadUpdateRemove(Boolean buildWithObjectSourceByteArray) throws IOException {
+        testState(Sets.<String>newHashSet());
+        
+        Assert.assertNull(manager.load("bogus"));
+        
+        manager.save("foo", buildSimpleXMLObject("foo", buildWithObjectSourceByteArray));
+        testState(Sets.newHashSet("foo"));
+        
+        manager.save("bar", buildSimpleXMLObject("bar", buildWithObjectSourceByteArray));
+        manager.save("baz", buildSimpleXMLObject("baz", buildWithObjectSourceByteArray));
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+        
+        // Duplicate with overwrite
+        manager.save("bar", buildSimpleXMLObject("bar2", buildWithObjectSourceByteArray), true);
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+        Assert.assertEquals(manager.load("bar").getId(), "bar2");
+        
+        // Duplicate without overwrite
+        try {
+            manager.save("bar", buildSimpleXMLObject("bar3", buildWithObjectSourceByteArray), false);
+            Assert.fail("Should have failed on duplicate save without overwrite");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+        testState(Sets.newHashSet("foo", "bar", "baz"));
+        Assert.assertEquals(manager.load("bar").getId(), "bar2");
+        
+        Assert.assertTrue(manager.updateKey("foo", "foo2"));
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+        Assert.assertEquals(manager.load("foo2").getId(), "foo");
+        
+        // Doesn't exist anymore
+        Assert.assertFalse(manager.updateKey("foo", "foo2"));
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+        
+        // Can't update to an existing name
+        try {
+            manager.updateKey("bar", "baz");
+            Assert.fail("updateKey should have failed to due existing new key name");
+        } catch (IOException e) {
+            // expected, do nothing
+        }
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+        
+        // Doesn't exist anymore
+        Assert.assertFalse(manager.remove("foo"));
+        testState(Sets.newHashSet("foo2", "bar", "baz"));
+        
+        Assert.assertTrue(manager.remove("foo2"));
+        testState(Sets.newHashSet("bar", "baz"));
+        
+        Assert.assertTrue(manager.remove("bar"));
+        Assert.assertTrue(manager.remove("baz"));
+        testState(Sets.<String>newHashSet());
+    }
+    
+    @Test
+    public void checkCheckModifyTimeTracking() throws IOException {
+        manager = new PackFileLoadSaveManager<>(baseDir, null, true);
+        
+        Assert.assertNull(manager.load("foo"));
+        Assert.assertNull(manager.getLoadLastModified("foo"));
+        
+        manager.save("foo", buildSimpleXMLObject("foo", true));
+        
+        Assert.assertNotNull(manager.load("foo"));
+        Long initialCachedModified = manager.getLoadLastModified("foo");
+        Assert.assertNotNull(initialCachedModified);
+        
+        // Hasn't changed
+        Assert.assertNull(manager.load("foo"));
+        Assert.assertEquals(manager.getLoadLastModified("foo"), initialCachedModified);
+        
+        // Change it, record timestamps always advance so no need to sleep
+        manager.save("foo", buildSimpleXMLObject("foo", true), true);
+        
+        Assert.assertNotNull(manager.load("foo"));
+        Long updatedCachedModified = manager.getLoadLastModified("foo");
+        Assert.assertNotNull(updatedCachedModified);
+        Assert.assertNotEquals(updatedCachedModified, initialCachedModified);
+        
+        // Hasn't changed (again)
+        Assert.assertNull(manager.load("foo"));
+        Assert.assertEquals(manager.getLoadLastModified("foo"), updatedCachedModified);
+        
+        // Test update of key
+        manager.updateKey("foo", "bar");
+        Assert.assertNull(manager.load("foo"));
+        Assert.assertNull(manager.load("bar"));
+        Assert.assertNull(manager.getLoadLastModified("foo"));
+        Assert.assertEquals(manager.getLoadLastModified("bar"), updatedCachedModified);
+        
+        // Test removal of key
+        manager.remove("bar");
+        Assert.assertNull(manager.getLoadLastModified("bar"));
+    }
+    
+    @Test
+    public void reopen() throws IOException {
+        manager.save("foo", buildSimpleXMLObject("foo", false));
+        manager.save("bar", buildSimpleXMLObject("bar", true));
+        manager.save("baz", buildSimpleXMLObject("baz", false));
+        manager.remove("baz");
+        manager.updateKey("bar", "bar2");
+        manager.close();
+        
+        manager = new PackFileLoadSaveManager<>(baseDir);
+        testState(Sets.newHashSet("foo", "bar2"));
+        Assert.assertEquals(manager.load("foo").getId(), "foo");
+        Assert.assertEquals(manager.load("bar2").getId(), "bar");
+    }
+    
+    @Test
+    public void segmentRolling() throws IOException {
+        manager.setMaxSegmentSize(512);
+        for (int i = 0; i < 20; i++) {
+            manager.save("key" + i, buildSimpleXMLObject("value" + i, false));
+        }
+        Assert.assertTrue(baseDir.listFiles().length > 1);
+        manager.close();
+        
+        manager = new PackFileLoadSaveManager<>(baseDir);
+        Assert.assertEquals(manager.listKeys().size(), 20);
+        Assert.assertEquals(manager.load("key7").getId(), "value7");
+        Assert.assertEquals(manager.load("key19").getId(), "value19");
+    }
+    
+    @Test
+    public void parallelListAll() throws IOException {
+        manager.setUnmarshallThreads(4);
+        final Set<String> keys = Sets.newHashSet();
+        for (int i = 0; i < 300; i++) {
+            manager.save("key" + i, buildSimpleXMLObject("value" + i, i % 2 == 0));
+            keys.add("key" + i);
+        }
+        testState(keys);
+        
+        // Iterations share the manager's unmarshalling threads.
+        for (int pass = 0; pass < 3; pass++) {
+            for (Pair<String,SimpleXMLObject> entry : manager.listAll()) {
+                Assert.assertEquals(entry.getSecond().getId(), entry.getFirst().replace("key", "value"));
+            }
+        }
+    }
+    
+    @Test
+    public void interleavedSaveLoad() throws IOException {
+        manager.setMaxSegmentSize(512);
+        for (int i = 0; i < 20; i++) {
+            manager.save("key" + i, buildSimpleXMLObject("value" + i, i % 2 == 0));
+            Assert.assertEquals(manager.load("key" + i).getId(), "value" + i);
+            Assert.assertEquals(manager.load("key0").getId(), "value0");
+        }
+        manager.close();
+        
+        // Appends after reopening follow the existing content of the current segment.
+        manager = new PackFileLoadSaveManager<>(baseDir);
+        manager.save("key20", buildSimpleXMLObject("value20", false));
+        Assert.assertEquals(manager.load("key20").getId(), "value20");
+        Assert.assertEquals(manager.load("key19").getId(), "value19");
+        manager.close();
+        
+        manager = new PackFileLoadSaveManager<>(baseDir);
+        Assert.assertEquals(manager.listKeys().size(), 21);
+        Assert.assertEquals(manager.load("key20").getId(), "value20");
+    }
+    
+    @Test
+    public void compaction() throws IOException {
+        manager.setMinCompactionSize(0);
+        manager.setCompactionRatio(0.9f);
+        manager.save("foo", buildSimpleXMLObject("foo", false));
+        manager.save("bar", buildSimpleXMLObject("bar", false));
+        for (int i = 0; i < 5; i++) {
+            manager.save("foo", buildSimpleXMLObject("foo" + i, false), true);
+        }
+        Assert.assertTrue(manager.getTotalSize() > manager.getLiveSize());
+        
+        manager.compact();
+        Assert.assertEquals(manager.getTotalSize(), manager.getLiveSize());
+        testState(Sets.newHashSet("foo", "bar"));
+        Assert.assertEquals(manager.load("foo").getId(), "foo4");
+        
+        // Triggered automatically once superseded records exceed the ratio
+        for (int i = 0; i < 20; i++) {
+            manager.save("foo", buildSimpleXMLObject("foo" + i, false), true);
+        }
+        Assert.assertTrue(manager.getTotalSize() - manager.getLiveSize() <= manager.getTotalSize() * 0.9f);
+        manager.close();
+        
+        manager = new PackFileLoadSaveManager<>(baseDir);
+        testState(Sets.newHashSet("foo", "bar"));
+        Assert.assertEquals(manager.load("foo").getId(), "foo19");
+    }
+    
+    @Test
+    public void tornRecord() throws IOException {
+        manager.save("foo", buildSimpleXMLObject("foo", false));
+        manager.save("bar", buildSimpleXMLObject("bar", false));
+        final long size = manager.getTotalSize();
+        manager.close();
+        
+        final File segment = baseDir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.setLength(size - 3);
+        }
+        
+        manager = new PackFileLoadSaveManager<>(baseDir);
+        testState(Sets.newHashSet("foo"));
+        Assert.assertTrue(segment.length() < size - 3);
+        
+        // Appending after the truncated tail works
+        manager.save("bar", buildSimpleXMLObject("bar", false));
+        manager.close();
+        manager = new PackFileLoadSaveManager<>(baseDir);
+        testState(Sets.newHashSet("foo", "bar"));
+    }
+    
+    @Test
+    public void corruptRecord() throws IOException {
+        manager.save("foo", buildSimpleXMLObject("foo", false));
+        final long offset = manager.getTotalSize();
+        manager.save("bar", buildSimpleXMLObject("bar", false));
+        manager.close();
+        
+        final File segment = baseDir.listFiles()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(offset + 30);
+            raf.write('X');
+        }
+        
+        manager = new PackFileLoadSaveManager<>(baseDir);
+        testState(Sets.newHashSet("foo"));
+    }
+    
+    @Test(expectedExceptions=ConstraintViolationException.class)
+    public void relativeBaseDir() {
+        new PackFileLoadSaveManager<>(new File("my/relative/dir"));
+    }
+    
+    @Test(expectedExceptions=ConstraintViolationException.class)
+    public void nullKey() throws IOException {
+        manager.load(null);
+    }
+    
+    @Test(expectedExceptions=ConstraintViolationException.class)
+    public void emptyKey() throws IOException {
+        manager.exists("  ");
+    }
+    
+    // Helpers
+    
+    private void testState(Set<String> expectedKeys) throws IOException {
+        Assert.assertEquals(manager.listKeys(), expectedKeys);
+        for (String expectedKey : expectedKeys) {
+            Assert.assertTrue(manager.exists(expectedKey));
+            SimpleXMLObject sxo = manager.load(expectedKey);
+            Assert.assertNotNull(sxo);
+            Assert.assertEquals(sxo.getObjectMetadata().get(XMLObjectSource.class).size(), 1);
+        }
+        
+        Assert.assertEquals(manager.listAll().iterator().hasNext(), expectedKeys.isEmpty() ? false: true);
+        
+        int sawCount = 0;
+        for (Pair<String,SimpleXMLObject> entry : manager.listAll()) {
+            sawCount++;
+            Assert.assertTrue(expectedKeys.contains(entry.getFirst()));
+            Assert.assertNotNull(entry.getSecond());
+        }
+        Assert.assertEquals(sawCount, expectedKeys.size());
+    }
+    
+    private void resetBaseDir() throws IOException {
+        if (baseDir.exists()) {
+            if (baseDir.isDirectory()) {
+                for (File child : baseDir.listFiles()) {
+                    Files.delete(child.toPath());
+                }
+            }
+            Files.delete(baseDir.toPath());
+        }
+    }
+    
+    private SimpleXMLObject buildSimpleXMLObject(String id, boolean withObjectSource) {
+        SimpleXMLObject sxo = buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sxo.setId(id);
+        if (withObjectSource) {
+            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+                XMLObjectSupport.marshallToOutputStream(sxo, baos);
+                sxo.getObjectMetadata().put(new XMLObjectSource(baos.toByteArray()));
+            } catch (MarshallingException | IOException e) {
+                throw new XMLRuntimeException("Error marshalling XMLObject", e);
+            }
+        }
+        return sxo;
+    }
+    
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.persist;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.util.XMLObjectSource;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Tests for {@link WriteBehindLoadSaveManager}.
+ */
+public class WriteBehindLoadSaveManagerTest extends XMLObjectBaseTestCase {
+    
+    private GatedMapLoadSaveManager delegate;
+    
+    private WriteBehindLoadSaveManager<SimpleXMLObject> manager;
+    
+    @BeforeMethod
+    public void setUp() throws Exception {
+        delegate = new GatedMapLoadSaveManager();
+        manager = new WriteBehindLoadSaveManager<>(delegate);
+        manager.setThreadName("test");
+    }
+    
+    @AfterMethod
+    public void tearDown() {
+        delegate.gate.countDown();
+        manager.destroy();
+    }
+    
+    @Test
+    public void coalescing() throws Exception {
+        manager.initialize();
+        
+        // Occupy the background writer so that subsequent saves remain pending.
+        manager.save("gate", buildSourced("gate"), true);
+        delegate.entered.await();
+        
+        final SimpleXMLObject first = buildSourced("first");
+        final SimpleXMLObject second = buildSourced("second");
+        manager.save("foo", first, true);
+        manager.save("bar", buildSourced("bar"), true);
+        manager.save("foo", second, true);
+        
+        Assert.assertEquals(manager.getBacklogSize(), 2);
+        Assert.assertEquals(manager.getCoalescedCount(), 1);
+        Assert.assertFalse(delegate.exists("foo"));
+        
+        delegate.gate.countDown();
+        manager.destroy();
+        
+        Assert.assertEquals(manager.getBacklogSize(), 0);
+        Assert.assertEquals(manager.getFlushCount(), 3);
+        Assert.assertEquals(manager.getFlushFailureCount(), 0);
+        Assert.assertEquals(delegate.listKeys(), Sets.newHashSet("gate", "foo", "bar"));
+        Assert.assertSame(delegate.load("foo"), second);
+    }
+    
+    @Test
+    public void pendingVisibility() throws Exception {
+        manager.initialize();
+        delegate.gate.countDown();
+        
+        final SimpleXMLObject foo = buildSourced("foo");
+        manager.save("foo", foo, true);
+        Assert.assertTrue(manager.exists("foo"));
+        Assert.assertSame(manager.load("foo"), foo);
+        
+        try {
+            manager.save("foo", buildSourced("foo"), false);
+            Assert.fail("Save without overwrite should have failed for existing key");
+        } catch (final IOException e) {
+            // expected
+        }
+        
+        Assert.assertTrue(manager.remove("foo"));
+        Assert.assertFalse(manager.exists("foo"));
+        Assert.assertNull(manager.load("foo"));
+        
+        manager.save("bar", buildSourced("bar"), true);
+        Assert.assertTrue(manager.updateKey("bar", "baz"));
+        Assert.assertEquals(manager.getBacklogSize(), 0);
+        Assert.assertEquals(manager.listKeys(), Sets.newHashSet("baz"));
+        Assert.assertEquals(delegate.listKeys(), Sets.newHashSet("baz"));
+    }
+    
+    @Test
+    public void synchronousWithoutSource() throws Exception {
+        manager.initialize();
+        
+        manager.save("gate", buildSourced("gate"), true);
+        delegate.entered.await();
+        
+        // Not queued, so must wait for the in-flight write and then be written directly.
+        final Thread saver = new Thread() {
+            public void run() {
+                try {
+                    manager.save("foo", (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME), true);
+                } catch (final IOException e) {
+                    Assert.fail("Save failed", e);
+                }
+            }
+        };
+        saver.start();
+        saver.join(200);
+        Assert.assertTrue(saver.isAlive());
+        
+        delegate.gate.countDown();
+        saver.join();
+        Assert.assertTrue(delegate.exists("foo"));
+        Assert.assertEquals(manager.getFlushCount(), 1);
+    }
+    
+    @Test
+    public void boundedBacklog() throws Exception {
+        manager.setMaxBacklog(1);
+        manager.initialize();
+        
+        manager.save("gate", buildSourced("gate"), true);
+        delegate.entered.await();
+        manager.save("foo", buildSourced("foo"), true);
+        
+        // Coalescing into an existing entry does not wait.
+        manager.save("foo", buildSourced("foo"), true);
+        
+        final Thread saver = new Thread() {
+            public void run() {
+                try {
+                    manager.save("bar", buildSourced("bar"), true);
+                } catch (final IOException e) {
+                    Assert.fail("Save failed", e);
+                }
+            }
+        };
+        saver.start();
+        saver.join(200);
+        Assert.assertTrue(saver.isAlive());
+        
+        delegate.gate.countDown();
+        saver.join();
+        manager.flush();
+        Assert.assertEquals(delegate.listKeys(), Sets.newHashSet("gate", "foo", "bar"));
+    }
+    
+    @Test
+    public void synchronousAfterDestroy() throws Exception {
+        manager.initialize();
+        delegate.gate.countDown();
+        manager.destroy();
+        
+        manager.save("foo", buildSourced("foo"), true);
+        Assert.assertTrue(delegate.exists("foo"));
+        Assert.assertEquals(manager.getFlushCount(), 0);
+    }
+    
+    // Helpers
+    
+    private SimpleXMLObject buildSourced(final String value) {
+        final SimpleXMLObject sxo = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        sxo.setValue(value);
+        sxo.getObjectMetadata().put(new XMLObjectSource(value.getBytes(StandardCharsets.UTF_8)));
+        return sxo;
+    }
+    
+    /** Map-backed manager whose first overwriting save blocks until released. */
+    private static class GatedMapLoadSaveManager extends MapLoadSaveManager<SimpleXMLObject> {
+        
+        private final CountDownLatch entered = new CountDownLatch(1);
+        
+        private final CountDownLatch gate = new CountDownLatch(1);
+        
+        /** {@inheritDoc} */
+        public void save(final String key, final SimpleXMLObject xmlObject, final boolean overwrite)
+                throws IOException {
+            if (overwrite && entered.getCount() > 0) {
+                entered.countDown();
+                try {
+                    gate.await();
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            super.save(key, xmlObject, overwrite);
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.schema;
+
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.opensaml.core.xml.schema.impl.XSAnyImpl;
+import org.opensaml.core.xml.schema.impl.XSAnyUnmarshaller;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test for {@link XSAny}, unmarshalled with deferred expansion.
+ */
+public class XSAnyTest extends XMLObjectBaseTestCase {
+
+    /** Document with unknown content. */
+    private static final String DOCUMENT = "/org/opensaml/core/xml/UnknownContent.xml";
+
+    /** Document with unknown content nested under a known element. */
+    private static final String NESTED_DOCUMENT = "/org/opensaml/core/xml/SimpleXMLObjectWithUnknownContent.xml";
+
+    /** Namespace of the nested unknown content, declared on the known element. */
+    private static final String NESTED_NAMESPACE = "http://www.example.org/unknown";
+
+    /**
+     * Tests that deferred content is expanded on first access, keeping the cached DOM.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testDeferredExpansion() throws XMLParserException, UnmarshallingException {
+        final Document document = parserPool.parse(XSAnyTest.class.getResourceAsStream(DOCUMENT));
+        final XSAnyImpl xsAny =
+                (XSAnyImpl) new XSAnyUnmarshaller(true).unmarshall(document.getDocumentElement());
+
+        Assert.assertTrue(xsAny.isDeferred());
+        Assert.assertEquals(xsAny.getElementQName().getLocalPart(), "products");
+        Assert.assertSame(xsAny.getDOM(), document.getDocumentElement());
+
+        assertContent(xsAny);
+        Assert.assertFalse(xsAny.isDeferred());
+        Assert.assertSame(xsAny.getDOM(), document.getDocumentElement(), "Expansion released the cached DOM");
+    }
+
+    /**
+     * Tests that deferred content survives the release of the DOM.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testDeferredExpansionAfterRelease() throws XMLParserException, UnmarshallingException {
+        final Document document = parserPool.parse(XSAnyTest.class.getResourceAsStream(DOCUMENT));
+        final XSAnyImpl xsAny =
+                (XSAnyImpl) new XSAnyUnmarshaller(true).unmarshall(document.getDocumentElement());
+
+        xsAny.releaseDOM();
+        xsAny.releaseChildrenDOM(true);
+        Assert.assertNull(xsAny.getDOM());
+        Assert.assertTrue(xsAny.isDeferred());
+
+        assertContent(xsAny);
+        Assert.assertFalse(xsAny.isDeferred());
+        Assert.assertNull(xsAny.getUnknownXMLObjects().get(0).getDOM());
+    }
+
+    /**
+     * Tests that modifying deferred content expands it first.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testDeferredModification() throws XMLParserException, UnmarshallingException {
+        final Document document = parserPool.parse(XSAnyTest.class.getResourceAsStream(DOCUMENT));
+        final XSAnyImpl xsAny =
+                (XSAnyImpl) new XSAnyUnmarshaller(true).unmarshall(document.getDocumentElement());
+
+        xsAny.setTextContent("text");
+        Assert.assertFalse(xsAny.isDeferred());
+        Assert.assertNull(xsAny.getDOM());
+        Assert.assertEquals(xsAny.getTextContent(), "text");
+        assertContent(xsAny);
+    }
+
+    /**
+     * Tests copying deferred content, both from its cached DOM and once the DOM has been released.
+     * 
+     * @throws XMLParserException
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testDeferredCopy() throws XMLParserException, MarshallingException, UnmarshallingException {
+        final Document document = parserPool.parse(XSAnyTest.class.getResourceAsStream(DOCUMENT));
+        final XSAnyImpl xsAny =
+                (XSAnyImpl) new XSAnyUnmarshaller(true).unmarshall(document.getDocumentElement());
+
+        final XSAny domCopy = XMLObjectSupport.copyXMLObject(xsAny);
+        Assert.assertNotSame(domCopy, xsAny);
+        Assert.assertTrue(xsAny.isDeferred(), "Copying the cached DOM expanded the original");
+        Assert.assertSame(xsAny.getDOM(), document.getDocumentElement());
+        Assert.assertNotSame(domCopy.getDOM(), xsAny.getDOM());
+        assertContent(domCopy);
+
+        xsAny.releaseDOM();
+        xsAny.releaseChildrenDOM(true);
+        final XSAny copy = XMLObjectSupport.copyXMLObject(xsAny);
+        Assert.assertNotSame(copy, xsAny);
+        Assert.assertNull(xsAny.getDOM(), "Copying the original marshalled it");
+        Assert.assertNull(copy.getDOM());
+        assertContent(copy);
+        assertContent(xsAny);
+    }
+
+    /**
+     * Tests copying expanded content field by field, keeping ID and QName-valued attributes.
+     * 
+     * @throws XMLParserException
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testStructuralCopy() throws XMLParserException, MarshallingException, UnmarshallingException {
+        final Document document = parserPool.parse(XSAnyTest.class.getResourceAsStream(DOCUMENT));
+        final XSAny xsAny = (XSAny) new XSAnyUnmarshaller().unmarshall(document.getDocumentElement());
+        final XSAny product = (XSAny) xsAny.getUnknownXMLObjects().get(1);
+        final QName idName = new QName("id");
+        final QName categoryName = new QName("category");
+        product.getUnknownAttributes().registerID(idName);
+        product.getUnknownAttributes().put(categoryName, new QName("http://example.com/product-info", "ide", "p"));
+        xsAny.releaseDOM();
+        xsAny.releaseChildrenDOM(true);
+
+        final XSAny copy = XMLObjectSupport.copyXMLObject(xsAny);
+        Assert.assertNotSame(copy, xsAny);
+        Assert.assertNull(xsAny.getDOM(), "Copying the original marshalled it");
+        Assert.assertNull(copy.getDOM(), "Copy was unmarshalled from a DOM");
+        assertContent(copy);
+
+        final XSAny productCopy = (XSAny) copy.getUnknownXMLObjects().get(1);
+        Assert.assertNotSame(productCopy, product);
+        Assert.assertSame(productCopy.getParent(), copy);
+        Assert.assertSame(copy.resolveID("1166"), productCopy);
+        Assert.assertTrue(productCopy.getUnknownAttributes().isIDAttribute(idName));
+        Assert.assertTrue(productCopy.getUnknownAttributes().isQNameAttribute(categoryName));
+        Assert.assertEquals(productCopy.getUnknownAttributes().get(categoryName), "p:ide");
+
+        assertXMLEquals(XMLObjectSupport.marshall(xsAny).getOwnerDocument(), copy);
+    }
+
+    /**
+     * Tests that an unmarshaller registered as the default provider defers unknown content below a known element.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testDefaultProviderDeferral() throws XMLParserException, UnmarshallingException {
+        final SimpleXMLObject simpleXMLObject = unmarshallNested();
+
+        Assert.assertEquals(simpleXMLObject.getUnknownXMLObjects().size(), 1);
+        final XSAnyImpl xsAny = (XSAnyImpl) simpleXMLObject.getUnknownXMLObjects().get(0);
+        Assert.assertTrue(xsAny.isDeferred());
+        Assert.assertSame(xsAny.getParent(), simpleXMLObject);
+
+        assertNestedContent(xsAny);
+        Assert.assertFalse(xsAny.isDeferred());
+        Assert.assertNotNull(simpleXMLObject.getDOM(), "Expansion released the parent's cached DOM");
+    }
+
+    /**
+     * Tests that nested deferred content using a namespace declared on an ancestor survives the release of the DOM.
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testNestedDeferredExpansionAfterRelease() throws XMLParserException, UnmarshallingException {
+        final SimpleXMLObject simpleXMLObject = unmarshallNested();
+        final XSAnyImpl xsAny = (XSAnyImpl) simpleXMLObject.getUnknownXMLObjects().get(0);
+
+        simpleXMLObject.releaseDOM();
+        simpleXMLObject.releaseChildrenDOM(true);
+        Assert.assertNull(xsAny.getDOM());
+        Assert.assertTrue(xsAny.isDeferred());
+
+        assertNestedContent(xsAny);
+        Assert.assertFalse(xsAny.isDeferred());
+        Assert.assertSame(xsAny.getParent(), simpleXMLObject);
+    }
+
+    /**
+     * Unmarshall the nested test document with a deferring unmarshaller registered as the default provider.
+     * 
+     * @return the unmarshalled document element
+     * 
+     * @throws XMLParserException
+     * @throws UnmarshallingException
+     */
+    private SimpleXMLObject unmarshallNested() throws XMLParserException, UnmarshallingException {
+        final Document document = parserPool.parse(XSAnyTest.class.getResourceAsStream(NESTED_DOCUMENT));
+        final QName defaultProvider = XMLObjectProviderRegistrySupport.getDefaultProviderQName();
+        final Unmarshaller defaultUnmarshaller = unmarshallerFactory.getUnmarshaller(defaultProvider);
+        unmarshallerFactory.registerUnmarshaller(defaultProvider, new XSAnyUnmarshaller(true));
+        try {
+            final Element element = document.getDocumentElement();
+            return (SimpleXMLObject) unmarshallerFactory.getUnmarshaller(element).unmarshall(element);
+        } finally {
+            unmarshallerFactory.registerUnmarshaller(defaultProvider, defaultUnmarshaller);
+        }
+    }
+
+    /**
+     * Check the content of the unknown element of the nested test document.
+     * 
+     * @param xsAny the unmarshalled unknown element
+     */
+    private void assertNestedContent(final XSAny xsAny) {
+        Assert.assertEquals(xsAny.getUnknownAttributes().get(new QName(NESTED_NAMESPACE, "id")), "1");
+        Assert.assertEquals(xsAny.getUnknownXMLObjects().size(), 1, "Unexpected number of children");
+
+        final XSAny child = (XSAny) xsAny.getUnknownXMLObjects().get(0);
+        Assert.assertEquals(child.getElementQName(), new QName(NESTED_NAMESPACE, "Child"));
+        Assert.assertEquals(child.getElementQName().getPrefix(), "ex");
+        Assert.assertEquals(child.getTextContent(), "content");
+    }
+
+    /**
+     * Check the content of the test document.
+     * 
+     * @param xsAny the unmarshalled document element
+     */
+    private void assertContent(final XSAny xsAny) {
+        final List<XMLObject> products = xsAny.getUnknownXMLObjects();
+        Assert.assertEquals(products.size(), 2, "Unexpected number of children");
+
+        final XSAny product = (XSAny) products.get(1);
+        Assert.assertEquals(product.getElementQName(), new QName("http://example.com/product-info", "product"));
+        Assert.assertEquals(product.getElementQName().getPrefix(), "p");
+        Assert.assertEquals(product.getUnknownAttributes().get(new QName("id")), "1166");
+        Assert.assertEquals(((XSAny) product.getUnknownXMLObjects().get(0)).getTextContent(),
+                "<strong>XSLT Perfect IDE</strong>", "Unexpected CDATA content");
+    }
+
+}
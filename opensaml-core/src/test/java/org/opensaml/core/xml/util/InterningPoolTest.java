@@ -0,0 +1,129 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.core.xml.util;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.mock.SimpleXMLObject;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Tests for {@link InterningPool}.
+ */
+public class InterningPoolTest extends XMLObjectBaseTestCase {
+
+    /** Document with repeated child elements. */
+    private static final String DOCUMENT = "/org/opensaml/core/xml/SimpleXMLObjectWithChildren.xml";
+
+    /** Make sure no pool leaks between tests. */
+    @AfterMethod
+    public void tearDown() {
+        Assert.assertNull(InterningPool.getCurrent());
+    }
+
+    @Test
+    public void testInactive() throws XMLParserException, UnmarshallingException {
+        Assert.assertNull(InterningPool.getCurrent());
+
+        final String value = new String("value");
+        Assert.assertSame(InterningPool.internIfActive(value), value);
+        Assert.assertSame(InterningPool.internValueIfActive(new QName("Name"), value), value);
+
+        final List<SimpleXMLObject> children = unmarshallChildren();
+        Assert.assertEquals(children.get(0).getElementQName(), children.get(1).getElementQName());
+        Assert.assertNotSame(children.get(0).getElementQName(), children.get(1).getElementQName());
+    }
+
+    @Test
+    public void testUnmarshalling() throws XMLParserException, UnmarshallingException {
+        final List<SimpleXMLObject> children;
+        try (final InterningPool pool = InterningPool.open(null)) {
+            Assert.assertSame(InterningPool.getCurrent(), pool);
+            children = unmarshallChildren();
+            Assert.assertTrue(pool.getReuseCount() > 0);
+        }
+
+        Assert.assertSame(children.get(0).getElementQName(), children.get(1).getElementQName());
+        Assert.assertEquals(children.get(0).getElementQName().getPrefix(), "test");
+    }
+
+    @Test
+    public void testValues() {
+        final QName name = new QName("Name");
+        try (final InterningPool pool = InterningPool.open(Collections.singleton(name))) {
+            final String value = new String("value");
+            Assert.assertSame(InterningPool.internValueIfActive(name, value), value);
+            Assert.assertSame(InterningPool.internValueIfActive(name, new String("value")), value);
+            Assert.assertEquals(pool.getReuseCount(), 1);
+
+            final String other = new String("value");
+            Assert.assertSame(InterningPool.internValueIfActive(new QName("Other"), other), other);
+            Assert.assertEquals(pool.getValueNames(), Collections.singleton(name));
+        }
+    }
+
+    @Test
+    public void testQNamePrefixes() {
+        try (final InterningPool pool = InterningPool.open(null)) {
+            final QName first = InterningPool.internQNameIfActive(new QName("urn:test", "local", "a"));
+            final QName second = InterningPool.internQNameIfActive(new QName("urn:test", "local", "b"));
+            Assert.assertEquals(first, second);
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(second.getPrefix(), "b");
+            Assert.assertSame(InterningPool.internQNameIfActive(new QName("urn:test", "local", "a")), first);
+            Assert.assertEquals(pool.getSize(), 2);
+        }
+    }
+
+    @Test
+    public void testNesting() {
+        try (final InterningPool outer = InterningPool.open(null)) {
+            try (final InterningPool inner = InterningPool.open(null)) {
+                Assert.assertSame(InterningPool.getCurrent(), inner);
+            }
+            Assert.assertSame(InterningPool.getCurrent(), outer);
+        }
+        Assert.assertNull(InterningPool.getCurrent());
+    }
+
+    /**
+     * Unmarshall the test document and return its children.
+     * 
+     * @return the children of the document element
+     * 
+     * @throws XMLParserException if the document can not be parsed
+     * @throws UnmarshallingException if the document can not be unmarshalled
+     */
+    private List<SimpleXMLObject> unmarshallChildren() throws XMLParserException, UnmarshallingException {
+        final Document document = parserPool.parse(InterningPoolTest.class.getResourceAsStream(DOCUMENT));
+        final SimpleXMLObject sxObject = (SimpleXMLObject) unmarshallerFactory.getUnmarshaller(
+                document.getDocumentElement()).unmarshall(document.getDocumentElement());
+        return sxObject.getSimpleXMLObjects();
+    }
+
+}
@@ -19,6 +19,7 @@ package org.opensaml.core.xml.util;
 
 import javax.xml.namespace.QName;
 
+import org.opensaml.core.xml.Namespace;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.XMLRuntimeException;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
@@ -26,10 +27,13 @@ import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.mock.SimpleXMLObject;
 import org.opensaml.core.xml.mock.SimpleXMLObjectBuilder;
+import org.opensaml.core.xml.schema.XSAny;
 import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.schema.impl.XSAnyBuilder;
 import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
 import org.testng.Assert;
 import org.testng.annotations.Test;
+import org.w3c.dom.Element;
 
 /**
  * Tests of XMLObjectHelper utility methods.
@@ -149,6 +153,84 @@ public class XMLObjectSupportTest extends XMLObjectBaseTestCase {
                 "Cloned object was not the new Document root");
     }
     
+    /** Tests copying an XMLObject tree without a cached DOM. */
+    @Test
+    public void testXMLObjectCopyWithoutDOM() throws MarshallingException, UnmarshallingException {
+        SimpleXMLObject origParentObj = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        origParentObj.setId("Parent");
+        origParentObj.getNamespaceManager().registerNamespaceDeclaration(new Namespace("urn:test:extra", "extra"));
+        
+        SimpleXMLObject origChildObj = (SimpleXMLObject) buildXMLObject(SimpleXMLObject.ELEMENT_NAME);
+        origChildObj.setId("Child");
+        origChildObj.setValue("FooBarBaz");
+        origParentObj.getSimpleXMLObjects().add(origChildObj);
+        
+        QName anyName = new QName("urn:test:any", "Any", "any");
+        XSAny origAnyObj = new XSAnyBuilder().buildObject(anyName);
+        origAnyObj.getUnknownAttributes().put(new QName("urn:test:any", "attr", "any"), "AttrValue");
+        origAnyObj.setTextContent("AnyContent");
+        origParentObj.getUnknownXMLObjects().add(origAnyObj);
+        
+        SimpleXMLObject copiedParentObj = XMLObjectSupport.copyXMLObject(origParentObj);
+        
+        Assert.assertFalse(origParentObj == copiedParentObj, "Parent XMLObjects were the same reference");
+        Assert.assertNull(origParentObj.getDOM(), "Original parent was marshalled");
+        Assert.assertNull(copiedParentObj.getDOM(), "Copied parent DOM node was not null");
+        Assert.assertNull(copiedParentObj.getParent(), "Copied parent had a parent");
+        Assert.assertEquals(copiedParentObj.getId(), "Parent");
+        Assert.assertTrue(copiedParentObj.getNamespaceManager().getNamespaceDeclarations().contains(
+                new Namespace("urn:test:extra", "extra")), "Namespace declaration was not copied");
+        
+        SimpleXMLObject copiedChildObj = copiedParentObj.getSimpleXMLObjects().get(0);
+        Assert.assertFalse(origChildObj == copiedChildObj, "Child XMLObjects were the same reference");
+        Assert.assertEquals(copiedChildObj.getValue(), "FooBarBaz", "Text content of child was not the expected value");
+        Assert.assertEquals(copiedChildObj.getElementQName().getPrefix(), SimpleXMLObject.NAMESPACE_PREFIX);
+        Assert.assertEquals(copiedParentObj.resolveID("Child"), copiedChildObj, "ID lookup failed");
+        Assert.assertEquals(origParentObj.resolveID("Child"), origChildObj, "ID lookup failed");
+        
+        Assert.assertEquals(copiedParentObj.getUnknownXMLObjects().size(), 1);
+        XSAny copiedAnyObj = (XSAny) copiedParentObj.getUnknownXMLObjects().get(0);
+        Assert.assertFalse(origAnyObj == copiedAnyObj, "XSAny XMLObjects were the same reference");
+        Assert.assertEquals(copiedAnyObj.getElementQName(), anyName);
+        Assert.assertEquals(copiedAnyObj.getElementQName().getPrefix(), "any");
+        Assert.assertEquals(copiedAnyObj.getTextContent(), "AnyContent");
+        Assert.assertEquals(copiedAnyObj.getUnknownAttributes().get(new QName("urn:test:any", "attr")), "AttrValue");
+        
+        copiedChildObj.setId("Changed");
+        Assert.assertNull(origParentObj.resolveID("Changed"), "Copy was not independent of the original");
+        Assert.assertEquals(origChildObj.getId(), "Child");
+    }
+    
+    /** Tests copying part of an XMLObject tree with a cached DOM. */
+    @Test
+    public void testXMLObjectCopyWithDOM() throws MarshallingException, UnmarshallingException {
+        SimpleXMLObject origRootObj =
+                (SimpleXMLObject) unmarshallElement("/org/opensaml/core/xml/IDAttributeWithChildrenList.xml");
+        SimpleXMLObject origObj = origRootObj.getSimpleXMLObjects().get(0);
+        Element origElement = origObj.getDOM();
+        
+        SimpleXMLObject copiedObj = XMLObjectSupport.copyXMLObject(origObj);
+        
+        Assert.assertFalse(origObj == copiedObj, "XMLObjects were the same reference");
+        Assert.assertSame(origObj.getDOM(), origElement, "Original DOM was replaced");
+        Assert.assertSame(origElement.getParentNode(), origRootObj.getDOM(), "Original DOM was detached");
+        Assert.assertNotNull(origRootObj.getDOM(), "Original parent DOM was released");
+        
+        Assert.assertNotNull(copiedObj.getDOM(), "Copied DOM node was null");
+        Assert.assertFalse(origElement.isSameNode(copiedObj.getDOM()), "DOM node was not copied");
+        Assert.assertTrue(copiedObj.getDOM().getOwnerDocument().getDocumentElement().isSameNode(copiedObj.getDOM()),
+                "Copied object was not the new Document root");
+        Assert.assertEquals(copiedObj.getDOM().lookupNamespaceURI(SimpleXMLObject.NAMESPACE_PREFIX),
+                SimpleXMLObject.NAMESPACE, "Inherited namespace was not declared");
+        
+        Assert.assertEquals(copiedObj.getId(), "IDLevel2A");
+        Assert.assertEquals(copiedObj.resolveID("IDLevel4A"),
+                copiedObj.getSimpleXMLObjects().get(0).getSimpleXMLObjects().get(0), "ID lookup failed");
+        Assert.assertNull(copiedObj.resolveID("IDLevel1"), "Lookup of non-existent ID didn't return null");
+        Assert.assertEquals(origRootObj.resolveID("IDLevel4A"),
+                origObj.getSimpleXMLObjects().get(0).getSimpleXMLObjects().get(0), "ID lookup failed");
+    }
+    
     @Test
     public void testBuildXMLObject() {
         try {
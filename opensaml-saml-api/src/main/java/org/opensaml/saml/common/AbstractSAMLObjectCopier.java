@@ -0,0 +1,85 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.common;
+
+import java.util.ListIterator;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.AbstractXMLObjectCopier;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.SignableXMLObject;
+import org.opensaml.xmlsec.signature.support.ContentReference;
+import org.w3c.dom.Document;
+
+/**
+ * A thread safe, abstract implementation of the {@link org.opensaml.core.xml.io.Copier} interface for SAML objects.
+ * 
+ * <p>
+ * A signed object is copied from its cached DOM, since the signature is only valid over that exact serialization.
+ * The signature template of an object which has not been signed is copied along with it by
+ * {@link #copySignature(SignableSAMLObject, SignableSAMLObject, Document)}.
+ * </p>
+ */
+@ThreadSafe
+public abstract class AbstractSAMLObjectCopier extends AbstractXMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean isDOMPreserved(@Nonnull final XMLObject xmlObject) {
+        return xmlObject instanceof SignableXMLObject && ((SignableXMLObject) xmlObject).isSigned();
+    }
+
+    /**
+     * Copy the signature of an object to its copy.
+     * 
+     * <p>
+     * Any {@link SAMLObjectContentReference} of the copied signature which refers to the original object is replaced
+     * by one which refers to the copy, with the same digest algorithm and transforms, so that signing the copy signs
+     * the copy rather than the original.
+     * </p>
+     * 
+     * @param xmlObject the object being copied
+     * @param copy the copy
+     * @param document the DOM document in which any DOM nodes for the copy of the signature are to be created
+     * 
+     * @throws MarshallingException thrown if the state of the signature can not be read
+     * @throws UnmarshallingException thrown if the copy of the signature can not be built
+     */
+    protected void copySignature(@Nonnull final SignableSAMLObject xmlObject, @Nonnull final SignableSAMLObject copy,
+            @Nonnull final Document document) throws MarshallingException, UnmarshallingException {
+        final Signature signature = copyChild(xmlObject.getSignature(), document);
+        if (signature == null) {
+            return;
+        }
+
+        final ListIterator<ContentReference> iterator = signature.getContentReferences().listIterator();
+        while (iterator.hasNext()) {
+            final ContentReference contentReference = iterator.next();
+            if (contentReference instanceof SAMLObjectContentReference
+                    && ((SAMLObjectContentReference) contentReference).getSignableObject() == xmlObject) {
+                iterator.set(((SAMLObjectContentReference) contentReference).retarget(copy));
+            }
+        }
+        copy.setSignature(signature);
+    }
+}
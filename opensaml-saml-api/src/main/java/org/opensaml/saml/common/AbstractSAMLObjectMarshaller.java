@@ -17,17 +17,31 @@
 
 package org.opensaml.saml.common;
 
+import javax.annotation.Nonnull;
+
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.AbstractXMLObjectMarshaller;
+import org.opensaml.core.xml.io.DefaultStreamingMarshaller;
 import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.StreamingMarshaller;
+import org.opensaml.core.xml.io.StreamingMarshallingContext;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /**
  * A thread safe, abstract implementation of the {@link org.opensaml.core.xml.io.Marshaller} interface
  * that handles most of the boilerplate code for Marshallers.
+ * 
+ * <p>
+ * It is also a {@link StreamingMarshaller}, which performs the same namespace declarations on signable objects
+ * as DOM marshalling before delegating to a {@link DefaultStreamingMarshaller}.
+ * </p>
  */
-public abstract class AbstractSAMLObjectMarshaller extends AbstractXMLObjectMarshaller {
+public abstract class AbstractSAMLObjectMarshaller extends AbstractXMLObjectMarshaller
+        implements StreamingMarshaller {
+
+    /** Streaming marshaller to which streaming is delegated. */
+    @Nonnull private final StreamingMarshaller streamingMarshaller = new DefaultStreamingMarshaller();
 
     /**
      * No-op method. Extending implementations should override this method if they have attributes to marshall into the
@@ -65,5 +79,14 @@ public abstract class AbstractSAMLObjectMarshaller extends AbstractXMLObjectMars
         }
         return super.marshall(xmlObject, parentElement);
     }
+
+    /** {@inheritDoc} */
+    public void marshall(@Nonnull final XMLObject xmlObject, @Nonnull final StreamingMarshallingContext context)
+            throws MarshallingException {
+        if (xmlObject instanceof SignableSAMLObject) {
+            SAMLObjectSupport.declareNonVisibleNamespaces((SignableSAMLObject) xmlObject);
+        }
+        streamingMarshaller.marshall(xmlObject, context);
+    }
        
 }
\ No newline at end of file
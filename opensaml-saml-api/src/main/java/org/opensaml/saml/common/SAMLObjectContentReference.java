@@ -39,6 +39,7 @@ import org.apache.xml.security.transforms.params.InclusiveNamespaces;
 import org.opensaml.core.xml.NamespaceManager;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.xmlsec.signature.support.ConfigurableContentReference;
+import org.opensaml.xmlsec.signature.support.CopyableContentReference;
 import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.opensaml.xmlsec.signature.support.TransformsConfigurableContentReference;
 import org.slf4j.Logger;
@@ -73,7 +74,8 @@ import com.google.common.base.Strings;
  * </p>
  * 
  */
-public class SAMLObjectContentReference implements ConfigurableContentReference, TransformsConfigurableContentReference {
+public class SAMLObjectContentReference implements ConfigurableContentReference, TransformsConfigurableContentReference,
+        CopyableContentReference {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(SAMLObjectContentReference.class);
@@ -103,6 +105,15 @@ public class SAMLObjectContentReference implements ConfigurableContentReference,
         transforms.add(SignatureConstants.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
     }
     
+    /**
+     * Gets the SAMLObject this reference refers to.
+     * 
+     * @return the SAMLObject this reference refers to
+     */
+    @Nonnull public SignableSAMLObject getSignableObject() {
+        return signableObject;
+    }
+
     /**
      * Gets the transforms applied to the content prior to digest generation.
      * 
@@ -123,6 +134,40 @@ public class SAMLObjectContentReference implements ConfigurableContentReference,
                 "Digest algorithm cannot be empty or null");
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>
+     * The copy refers to the same SAMLObject as this reference. When that object is copied, its copier retargets
+     * the copy to the copy of the object, see
+     * {@link AbstractSAMLObjectCopier#copySignature(SignableSAMLObject, SignableSAMLObject,
+     * org.w3c.dom.Document)}.
+     * </p>
+     */
+    @Nonnull public SAMLObjectContentReference copy() {
+        return retarget(signableObject);
+    }
+
+    /**
+     * Create a new reference to another SAMLObject, with the same digest algorithm and transforms as this one.
+     * 
+     * <p>
+     * The inclusive namespace prefixes of an exclusive canonicalization transform are derived from the new object.
+     * </p>
+     * 
+     * @param newSignableObject the SAMLObject the new reference refers to
+     * 
+     * @return the new reference
+     */
+    @Nonnull public SAMLObjectContentReference retarget(@Nonnull final SignableSAMLObject newSignableObject) {
+        final SAMLObjectContentReference reference = new SAMLObjectContentReference(
+                Constraint.isNotNull(newSignableObject, "SAMLObject cannot be null"));
+        reference.setDigestAlgorithm(digestAlgorithm);
+        reference.getTransforms().clear();
+        reference.getTransforms().addAll(transforms);
+        return reference;
+    }
+
     /** {@inheritDoc} */
     public void createReference(@Nonnull final XMLSignature signature) {
         try {
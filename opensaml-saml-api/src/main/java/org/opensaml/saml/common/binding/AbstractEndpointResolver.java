@@ -20,7 +20,6 @@ package org.opensaml.saml.common.binding;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -28,6 +27,7 @@ import javax.annotation.Nullable;
 import javax.xml.namespace.QName;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiedInitializableComponent;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
@@ -35,7 +35,6 @@ import net.shibboleth.utilities.java.support.resolver.ResolverException;
 import org.opensaml.saml.criterion.EndpointCriterion;
 import org.opensaml.saml.criterion.RoleDescriptorCriterion;
 import org.opensaml.saml.saml2.metadata.Endpoint;
-import org.opensaml.saml.saml2.metadata.IndexedEndpoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -94,7 +93,7 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
             }
         }
         
-        final List<EndpointType> candidates = getCandidatesFromMetadata(criteria);
+        final List<EndpointType> candidates = new ArrayList<>(getCandidatesFromMetadata(criteria));
         final Iterator<EndpointType> i = candidates.iterator();
         while (i.hasNext()) {
             if (!doCheckEndpoint(criteria, i.next())) {
@@ -184,25 +183,28 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
     }
     
     /**
-     * Get a mutable list of endpoints of a given type found in the metadata role contained in a
+     * Get the endpoints of a given type found in the metadata role contained in a
      * {@link RoleDescriptorCriterion} (or an empty list if no metadata exists).
      * 
      * <p>The endpoint type to extract is based on the candidate endpoint in an
      * {@link EndpointCriterion}. If the endpoints are indexed, the first list entry will
      * contain the default endpoint to use in the absence of other limiting criteria.</p>
      * 
+     * <p>The candidates are obtained from the role's {@link EndpointTable}, which is built once
+     * and cached with the role.</p>
+     * 
      * @param criteria input criteria set
      * 
-     * @return mutable list of endpoints from the metadata
+     * @return unmodifiable list of endpoints from the metadata
      */
-    @Nonnull @NonnullElements private List<EndpointType> getCandidatesFromMetadata(
+    @Nonnull @NonnullElements @Unmodifiable private List<EndpointType> getCandidatesFromMetadata(
             @Nonnull final CriteriaSet criteria) {
         
         // Check for metadata.
         final RoleDescriptorCriterion role = criteria.get(RoleDescriptorCriterion.class);
         if (role == null) {
             log.debug("{} No metadata supplied, no candidate endpoints to return", getLogPrefix());
-            return new ArrayList<>();
+            return Collections.emptyList();
         }
         
         // Determine the QName type of endpoints to extract based on candidate type.
@@ -213,7 +215,8 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
         }
         
         // Return the endpoints in the metadata of the candidate type.
-        final List<Endpoint> endpoints = role.getRole().getEndpoints(endpointType);
+        final List<? extends Endpoint> endpoints =
+                selectCandidates(criteria, EndpointTable.get(role.getRole()), endpointType);
         if (endpoints.isEmpty()) {
             log.debug("{} No endpoints in metadata of type {}", getLogPrefix(), endpointType);
         } else {
@@ -221,59 +224,28 @@ public abstract class AbstractEndpointResolver<EndpointType extends Endpoint>
                     endpointType);
         }
         
-        return sortCandidates(endpoints);
+        return (List<EndpointType>) endpoints;
     }
     
     /**
-     * Copy and sort the endpoints such that the default endpoint by SAML rules comes first.
+     * Select the candidate endpoints of a given type from a role's precomputed {@link EndpointTable}.
+     * 
+     * <p>The default implementation returns every endpoint of the type, with the default endpoint first.
+     * Subclasses whose {@link #doCheckEndpoint(CriteriaSet, Endpoint)} implementation requires an exact
+     * match on the binding or index of the {@link EndpointCriterion} may override this to narrow the
+     * candidates using the table's keyed lookups, preserving the same ordering.</p>
      * 
-     * @param candidates input list of endpoints
+     * @param criteria input criteria set
+     * @param table the endpoint table of the role supplied via {@link RoleDescriptorCriterion}
+     * @param endpointType the QName of the endpoint type to select
      * 
-     * @return a new list containing the endpoints such that the default is first
+     * @return unmodifiable, ordered list of candidate endpoints
      */
-    // Checkstyle: CyclomaticComplexity OFF
-    @Nonnull @NonnullElements private List<EndpointType> sortCandidates(
-            @Nonnull @NonnullElements final List<Endpoint> candidates) {
-        
-        // Use a linked list, and move the default endpoint to the head of the list.
-        // SAML defaulting rules apply to IndexedEnpdoint types, and require checking
-        // for the isDefault attribute. The default is the one marked true, or if none are,
-        // the first not marked false.
-        EndpointType hardDefault = null;
-        EndpointType softDefault = null;
-        final LinkedList<EndpointType> toReturn = new LinkedList();
-        for (final Endpoint endpoint : candidates) {
-            if (hardDefault == null && endpoint instanceof IndexedEndpoint) {
-                final Boolean flag = ((IndexedEndpoint) endpoint).isDefault();
-                if (flag != null) {
-                    if (flag.booleanValue()) {
-                        hardDefault = (EndpointType) endpoint;
-                        if (softDefault != null) {
-                            toReturn.addFirst(softDefault);
-                            softDefault = null;
-                        }
-                    } else {
-                        toReturn.addLast((EndpointType) endpoint);
-                    }
-                } else if (hardDefault == null && softDefault == null) {
-                    softDefault = (EndpointType) endpoint;
-                } else {
-                    toReturn.addLast((EndpointType) endpoint);
-                }
-            } else {
-                toReturn.addLast((EndpointType) endpoint);
-            }
-        }
-        
-        if (hardDefault != null) {
-            toReturn.addFirst(hardDefault);
-        } else if (softDefault != null) {
-            toReturn.addFirst(softDefault);
-        }
-       
-        return toReturn;
+    @Nonnull @NonnullElements @Unmodifiable protected List<? extends Endpoint> selectCandidates(
+            @Nonnull final CriteriaSet criteria, @Nonnull final EndpointTable table,
+            @Nonnull final QName endpointType) {
+        return table.getEndpoints(endpointType);
     }
-    // Checkstyle: CyclomaticComplexity ON
 
     /**
      * Return a prefix for logging messages for this component.
@@ -0,0 +1,293 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.common.binding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.LockableClassToInstanceMultiMap;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.core.xml.util.DerivedObjectMetadata;
+import org.opensaml.saml.saml2.metadata.Endpoint;
+import org.opensaml.saml.saml2.metadata.IndexedEndpoint;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+
+/**
+ * Precomputed lookup table of the endpoints of a {@link RoleDescriptor}, organized by endpoint type.
+ *
+ * <p>For each endpoint type, the table holds the candidate endpoints ordered such that the default
+ * endpoint by SAML rules comes first, along with the same ordered candidates keyed by Binding and by index.
+ * The entry for a given type is built the first time that type is requested and is reused thereafter.</p>
+ *
+ * <p>The table is cached in the role's object metadata, see {@link #get(RoleDescriptor)}. Because it
+ * implements {@link DerivedObjectMetadata}, it is discarded when the role or any of its endpoints
+ * is mutated, and will be rebuilt on next use.</p>
+ */
+@ThreadSafe
+public final class EndpointTable implements DerivedObjectMetadata {
+
+    /** The role whose endpoints are indexed. */
+    @Nonnull private final RoleDescriptor role;
+
+    /** Per-type entries, built on demand. */
+    @Nonnull private final ConcurrentMap<QName, Entry> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param roleDescriptor the role whose endpoints are to be indexed
+     */
+    public EndpointTable(@Nonnull final RoleDescriptor roleDescriptor) {
+        role = Constraint.isNotNull(roleDescriptor, "RoleDescriptor cannot be null");
+        entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the endpoints of a given type, with the default endpoint first.
+     *
+     * @param endpointType the endpoint type, by schema type or element name
+     *
+     * @return the ordered endpoints of the given type
+     */
+    @Nonnull @NonnullElements @Unmodifiable public List<Endpoint> getEndpoints(@Nonnull final QName endpointType) {
+        return getEntry(endpointType).ordered;
+    }
+
+    /**
+     * Get the endpoints of a given type which carry a particular Binding, with the default endpoint
+     * (for that binding) first.
+     *
+     * @param endpointType the endpoint type, by schema type or element name
+     * @param binding the Binding to match
+     *
+     * @return the ordered endpoints of the given type and binding
+     */
+    @Nonnull @NonnullElements @Unmodifiable public List<Endpoint> getEndpoints(@Nonnull final QName endpointType,
+            @Nonnull final String binding) {
+        final List<Endpoint> endpoints = getEntry(endpointType).byBinding.get(binding);
+        return endpoints != null ? endpoints : Collections.<Endpoint>emptyList();
+    }
+
+    /**
+     * Get the indexed endpoints of a given type which carry a particular index.
+     *
+     * <p>Valid metadata will produce at most one result.</p>
+     *
+     * @param endpointType the endpoint type, by schema type or element name
+     * @param index the index to match
+     *
+     * @return the ordered endpoints of the given type and index
+     */
+    @Nonnull @NonnullElements @Unmodifiable public List<Endpoint> getEndpoints(@Nonnull final QName endpointType,
+            @Nonnull final Integer index) {
+        final List<Endpoint> endpoints = getEntry(endpointType).byIndex.get(index);
+        return endpoints != null ? endpoints : Collections.<Endpoint>emptyList();
+    }
+
+    /**
+     * Get the entry for a given endpoint type, building it if necessary.
+     *
+     * @param endpointType the endpoint type
+     *
+     * @return the entry
+     */
+    @Nonnull private Entry getEntry(@Nonnull final QName endpointType) {
+        Entry entry = entries.get(endpointType);
+        if (entry == null) {
+            entry = new Entry(role.getEndpoints(endpointType));
+            final Entry existing = entries.putIfAbsent(endpointType, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Get the table for a role, building and caching it in the role's object metadata if necessary.
+     *
+     * @param roleDescriptor the role
+     *
+     * @return the role's endpoint table
+     */
+    @Nonnull public static EndpointTable get(@Nonnull final RoleDescriptor roleDescriptor) {
+        final LockableClassToInstanceMultiMap<Object> objectMetadata = roleDescriptor.getObjectMetadata();
+        final ReadWriteLock rwlock = objectMetadata.getReadWriteLock();
+
+        try {
+            rwlock.readLock().lock();
+            final List<EndpointTable> cached = objectMetadata.get(EndpointTable.class);
+            if (!cached.isEmpty()) {
+                return cached.get(0);
+            }
+        } finally {
+            rwlock.readLock().unlock();
+        }
+
+        try {
+            rwlock.writeLock().lock();
+
+            // Need to check again in case another waiting writer beat us in acquiring the write lock
+            final List<EndpointTable> cached = objectMetadata.get(EndpointTable.class);
+            if (!cached.isEmpty()) {
+                return cached.get(0);
+            }
+
+            final EndpointTable table = new EndpointTable(roleDescriptor);
+            objectMetadata.put(table);
+            return table;
+        } finally {
+            rwlock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copy and sort the endpoints such that the default endpoint by SAML rules comes first.
+     *
+     * @param candidates input list of endpoints
+     *
+     * @return a new list containing the endpoints such that the default is first
+     */
+    // Checkstyle: CyclomaticComplexity OFF
+    @Nonnull @NonnullElements static List<Endpoint> sortCandidates(
+            @Nonnull @NonnullElements final List<? extends Endpoint> candidates) {
+
+        // Use a linked list, and move the default endpoint to the head of the list.
+        // SAML defaulting rules apply to IndexedEnpdoint types, and require checking
+        // for the isDefault attribute. The default is the one marked true, or if none are,
+        // the first not marked false.
+        Endpoint hardDefault = null;
+        Endpoint softDefault = null;
+        final LinkedList<Endpoint> toReturn = new LinkedList<>();
+        for (final Endpoint endpoint : candidates) {
+            if (hardDefault == null && endpoint instanceof IndexedEndpoint) {
+                final Boolean flag = ((IndexedEndpoint) endpoint).isDefault();
+                if (flag != null) {
+                    if (flag.booleanValue()) {
+                        hardDefault = endpoint;
+                        if (softDefault != null) {
+                            toReturn.addFirst(softDefault);
+                            softDefault = null;
+                        }
+                    } else {
+                        toReturn.addLast(endpoint);
+                    }
+                } else if (hardDefault == null && softDefault == null) {
+                    softDefault = endpoint;
+                } else {
+                    toReturn.addLast(endpoint);
+                }
+            } else {
+                toReturn.addLast(endpoint);
+            }
+        }
+
+        if (hardDefault != null) {
+            toReturn.addFirst(hardDefault);
+        } else if (softDefault != null) {
+            toReturn.addFirst(softDefault);
+        }
+
+        return toReturn;
+    }
+    // Checkstyle: CyclomaticComplexity ON
+
+    /** The precomputed lookups for a single endpoint type. */
+    private static final class Entry {
+
+        /** All endpoints of the type, default first. */
+        @Nonnull @NonnullElements @Unmodifiable private final List<Endpoint> ordered;
+
+        /** Endpoints keyed by Binding, each list ordered as above. */
+        @Nonnull @NonnullElements private final Map<String, List<Endpoint>> byBinding;
+
+        /** Indexed endpoints keyed by index, each list ordered as above. */
+        @Nonnull @NonnullElements private final Map<Integer, List<Endpoint>> byIndex;
+
+        /**
+         * Constructor.
+         *
+         * @param endpoints the endpoints of the type, in document order
+         */
+        Entry(@Nonnull @NonnullElements final List<? extends Endpoint> endpoints) {
+            ordered = Collections.unmodifiableList(new ArrayList<>(sortCandidates(endpoints)));
+
+            final Map<String, List<Endpoint>> bindings = new HashMap<>();
+            final Map<Integer, List<Endpoint>> indices = new HashMap<>();
+            for (final Endpoint endpoint : ordered) {
+                if (endpoint.getBinding() != null) {
+                    add(bindings, endpoint.getBinding(), endpoint);
+                }
+                if (endpoint instanceof IndexedEndpoint && ((IndexedEndpoint) endpoint).getIndex() != null) {
+                    add(indices, ((IndexedEndpoint) endpoint).getIndex(), endpoint);
+                }
+            }
+
+            byBinding = freeze(bindings);
+            byIndex = freeze(indices);
+        }
+
+        /**
+         * Append an endpoint to the list for a key.
+         *
+         * @param <K> key type
+         * @param map the map to update
+         * @param key the key
+         * @param endpoint the endpoint
+         */
+        private static <K> void add(@Nonnull final Map<K, List<Endpoint>> map, @Nonnull final K key,
+                @Nonnull final Endpoint endpoint) {
+            List<Endpoint> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                map.put(key, list);
+            }
+            list.add(endpoint);
+        }
+
+        /**
+         * Make the lists in a map unmodifiable.
+         *
+         * @param <K> key type
+         * @param map the map to process
+         *
+         * @return the input map
+         */
+        @Nonnull private static <K> Map<K, List<Endpoint>> freeze(@Nonnull final Map<K, List<Endpoint>> map) {
+            for (final Map.Entry<K, List<Endpoint>> e : map.entrySet()) {
+                e.setValue(Collections.unmodifiableList(e.getValue()));
+            }
+            return map;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.filter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+
+/**
+ * A {@link MetadataFilter} whose work can be expressed as a callback applied to each {@link EntityDescriptor}
+ * in a metadata document, bracketed by optional processing of the document root.
+ * 
+ * <p>
+ * A {@link MetadataFilterChain} operating in fused mode combines adjacent filters of this type into a single pass
+ * over the document: each filter's {@link #preFilter(XMLObject)} is run, then every entity is visited once and
+ * handed to each filter's {@link #filterEntity(EntityDescriptor, EntitiesDescriptor)} in turn, then each filter's
+ * {@link #postFilter(XMLObject)} is run. Entities may be visited concurrently if every filter in the pass is
+ * {@link #isThreadSafe()}. Since every pre-pass of a run is executed before any callback, a filter's
+ * {@link #preFilter(XMLObject)} sees the document before the callbacks of the filters preceding it in the run.
+ * </p>
+ * 
+ * <p>
+ * Applying {@link #preFilter(XMLObject)}, the callback and {@link #postFilter(XMLObject)} in that order to a
+ * document must be equivalent to {@link #filter(XMLObject)}.
+ * </p>
+ */
+public interface EntityCallbackMetadataFilter extends MetadataFilter {
+
+    /**
+     * Get whether {@link #filterEntity(EntityDescriptor, EntitiesDescriptor)} may be called concurrently for
+     * different entities of the same document.
+     * 
+     * <p>
+     * A callback which adds or removes objects within an entity is not thread-safe, even though each entity is
+     * only visited by one thread: such changes also update state held by the entity's ancestors, such as their
+     * cached DOM and the ID index of the document root.
+     * </p>
+     * 
+     * @return true if the entity callback is thread-safe
+     */
+    boolean isThreadSafe();
+
+    /**
+     * Get whether the entity callback must be applied again to an entity re-created from a serialized copy, such
+     * as one materialized on demand by a resolver which holds its entities serialized.
+     * 
+     * <p>
+     * This is the case for a callback whose results are held only in the object metadata of the entity or its
+     * children, since object metadata is not serialized. A callback whose results are part of the entity's XML
+     * is not applied again.
+     * </p>
+     * 
+     * @return true if the entity callback must be applied again to a re-created entity
+     */
+    boolean isReappliedOnMaterialization();
+
+    /**
+     * Process the document root before any entity is visited.
+     * 
+     * <p>
+     * Entities removed from the document here are not visited.
+     * </p>
+     * 
+     * @param metadata the document root, an {@link EntityDescriptor} or {@link EntitiesDescriptor}
+     * 
+     * @throws FilterException if the document must be rejected
+     */
+    void preFilter(@Nonnull final XMLObject metadata) throws FilterException;
+
+    /**
+     * Process an entity.
+     * 
+     * <p>
+     * The entity may be modified but its parent must not be: an entity is removed from its group by returning
+     * false, and the removal is performed by the caller once all entities have been visited.
+     * </p>
+     * 
+     * @param entity the entity to process
+     * @param group the group directly containing the entity, or null if the entity is the document root
+     * 
+     * @return true if the entity should be retained, false if it should be removed
+     * 
+     * @throws FilterException if the document must be rejected
+     */
+    boolean filterEntity(@Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group)
+            throws FilterException;
+
+    /**
+     * Process the document root after every entity has been visited and entities to be removed have been removed.
+     * 
+     * @param metadata the document root, an {@link EntityDescriptor} or {@link EntitiesDescriptor}
+     * 
+     * @throws FilterException if the document must be rejected
+     */
+    void postFilter(@Nonnull final XMLObject metadata) throws FilterException;
+
+}
@@ -19,16 +19,29 @@ package org.opensaml.saml.metadata.resolver.filter;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.Live;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +51,21 @@ import com.google.common.collect.Collections2;
 /**
  * A filter that allows the composition of {@link MetadataFilter}s. Filters will be executed on the given metadata
  * document in the order they were added to the chain.
+ * 
+ * <p>
+ * In fused mode, each run of adjacent {@link EntityCallbackMetadataFilter}s is executed as a single pass over the
+ * document, visiting each {@link EntityDescriptor} once and applying the callbacks of the filters in order, rather
+ * than as one traversal per filter. If the parallelism is greater than 1 and every filter in a run is thread-safe,
+ * the entities are divided among that many threads.
+ * </p>
+ * 
+ * <p>
+ * The pre-passes of all the filters in a run are executed before any entity is visited, so a filter's pre-pass
+ * sees the document before the callbacks of the filters preceding it in the run have been applied, rather than
+ * after them as in sequential mode. A filter whose pre-pass depends on those changes, such as a check of the
+ * document root's signature following a filter which modifies entities, must not be fused with them, for example
+ * by separating them with a filter which is not an {@link EntityCallbackMetadataFilter}.
+ * </p>
  */
 public class MetadataFilterChain implements MetadataFilter {
 
@@ -47,11 +75,18 @@ public class MetadataFilterChain implements MetadataFilter {
     /** Registered filters. */
     @Nonnull @NonnullElements private List<MetadataFilter> filters;
 
+    /** Whether adjacent {@link EntityCallbackMetadataFilter}s are executed in a single pass. */
+    private boolean fusedExecution;
+
+    /** Number of threads used to visit entities in a fused pass. */
+    @Positive private int parallelism;
+
     /**
      * Constructor.
      */
     public MetadataFilterChain() {
         filters = Collections.emptyList();
+        parallelism = 1;
     }
 
     /** {@inheritDoc} */
@@ -68,6 +103,24 @@ public class MetadataFilterChain implements MetadataFilter {
             }
             
             XMLObject current = xmlObject;
+            if (fusedExecution) {
+                final List<EntityCallbackMetadataFilter> run = new ArrayList<>();
+                for (final MetadataFilter filter : filters) {
+                    if (filter instanceof EntityCallbackMetadataFilter) {
+                        run.add((EntityCallbackMetadataFilter) filter);
+                        continue;
+                    }
+                    current = filterFused(run, current);
+                    run.clear();
+                    if (current == null) {
+                        return null;
+                    }
+                    log.debug("Applying filter {}", filter.getClass().getName());
+                    current = filter.filter(current);
+                }
+                return filterFused(run, current);
+            }
+
             for (final MetadataFilter filter : filters) {
                 if (current == null) {
                     return null;
@@ -80,6 +133,248 @@ public class MetadataFilterChain implements MetadataFilter {
         }
     }
 
+    /**
+     * Get whether adjacent {@link EntityCallbackMetadataFilter}s are executed as a single pass over the document.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return whether fused execution is enabled
+     */
+    public boolean isFusedExecution() {
+        return fusedExecution;
+    }
+
+    /**
+     * Set whether adjacent {@link EntityCallbackMetadataFilter}s are executed as a single pass over the document.
+     * 
+     * <p>In a single pass, the pre-passes of all the filters are executed before any entity callback.</p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag whether fused execution is enabled
+     */
+    public void setFusedExecution(final boolean flag) {
+        fusedExecution = flag;
+    }
+
+    /**
+     * Get the number of threads used to visit entities in a fused pass whose filters are all thread-safe.
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @return the number of threads
+     */
+    @Positive public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads used to visit entities in a fused pass whose filters are all thread-safe.
+     * 
+     * <p>Defaults to: 1.</p>
+     * 
+     * @param threads the number of threads
+     */
+    public void setParallelism(@Positive final int threads) {
+        parallelism = (int) Constraint.isGreaterThan(0, threads, "Parallelism must be greater than 0");
+    }
+
+    /**
+     * Execute a run of {@link EntityCallbackMetadataFilter}s as a single pass over the document.
+     * 
+     * @param run the filters, in order
+     * @param metadata the document root
+     * 
+     * @return the filtered document root, or null if the root entity was removed
+     * 
+     * @throws FilterException if a filter rejects the document
+     */
+    @Nullable private XMLObject filterFused(@Nonnull @NonnullElements final List<EntityCallbackMetadataFilter> run,
+            @Nullable final XMLObject metadata) throws FilterException {
+        if (run.isEmpty() || metadata == null) {
+            return metadata;
+        }
+        
+        if (!(metadata instanceof EntityDescriptor) && !(metadata instanceof EntitiesDescriptor)) {
+            log.error("Unrecognised metadata type {}", metadata.getClass().getSimpleName());
+            throw new FilterException("Metadata root element was not an EntitiesDescriptor or EntityDescriptor");
+        }
+        
+        log.debug("Applying filters {} in a single pass", run);
+        for (final EntityCallbackMetadataFilter filter : run) {
+            filter.preFilter(metadata);
+        }
+        
+        if (metadata instanceof EntityDescriptor) {
+            if (!visitEntity(run, (EntityDescriptor) metadata, null)) {
+                return null;
+            }
+        } else {
+            final List<EntityDescriptor> entities = new ArrayList<>();
+            collectEntities((EntitiesDescriptor) metadata, entities);
+            
+            final Set<EntityDescriptor> removed;
+            if (parallelism > 1 && entities.size() > 1 && isThreadSafe(run)) {
+                removed = visitEntitiesInParallel(run, entities);
+            } else {
+                removed = new HashSet<>();
+                for (final EntityDescriptor entity : entities) {
+                    if (!visitEntity(run, entity, (EntitiesDescriptor) entity.getParent())) {
+                        removed.add(entity);
+                    }
+                }
+            }
+            removeEntities(removed);
+        }
+        
+        for (final EntityCallbackMetadataFilter filter : run) {
+            filter.postFilter(metadata);
+        }
+        
+        return metadata;
+    }
+
+    /**
+     * Apply the callbacks of a run of filters to an entity, stopping at the first which removes it.
+     * 
+     * @param run the filters, in order
+     * @param entity the entity
+     * @param group the group directly containing the entity, or null
+     * 
+     * @return true if the entity should be retained
+     * 
+     * @throws FilterException if a filter rejects the document
+     */
+    private boolean visitEntity(@Nonnull @NonnullElements final List<EntityCallbackMetadataFilter> run,
+            @Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group) throws FilterException {
+        for (final EntityCallbackMetadataFilter filter : run) {
+            if (!filter.filterEntity(entity, group)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply the callbacks of a run of filters to a list of entities, dividing the entities among threads.
+     * 
+     * @param run the filters, in order
+     * @param entities the entities, each directly contained in a group
+     * 
+     * @return the entities to be removed
+     * 
+     * @throws FilterException if a filter rejects the document
+     */
+    @Nonnull @NonnullElements private Set<EntityDescriptor> visitEntitiesInParallel(
+            @Nonnull @NonnullElements final List<EntityCallbackMetadataFilter> run,
+            @Nonnull @NonnullElements final List<EntityDescriptor> entities) throws FilterException {
+        
+        final int threads = Math.min(parallelism, entities.size());
+        final int chunk = (entities.size() + threads - 1) / threads;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            /** {@inheritDoc} */
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "MetadataFilterChain worker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        try {
+            final List<Future<Set<EntityDescriptor>>> futures = new ArrayList<>(threads);
+            for (int start = 0; start < entities.size(); start += chunk) {
+                final List<EntityDescriptor> slice = entities.subList(start, Math.min(start + chunk, entities.size()));
+                futures.add(executor.submit(new Callable<Set<EntityDescriptor>>() {
+                    /** {@inheritDoc} */
+                    public Set<EntityDescriptor> call() throws FilterException {
+                        final Set<EntityDescriptor> removed = new HashSet<>();
+                        for (final EntityDescriptor entity : slice) {
+                            if (!visitEntity(run, entity, (EntitiesDescriptor) entity.getParent())) {
+                                removed.add(entity);
+                            }
+                        }
+                        return removed;
+                    }
+                }));
+            }
+            
+            final Set<EntityDescriptor> removed = new HashSet<>();
+            for (final Future<Set<EntityDescriptor>> future : futures) {
+                removed.addAll(future.get());
+            }
+            return removed;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof FilterException) {
+                throw (FilterException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new FilterException("Error applying metadata filters", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FilterException("Interrupted while applying metadata filters", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Add the entities of a group and its descendant groups to a list, in document order.
+     * 
+     * @param group the group
+     * @param entities the list to add to
+     */
+    private void collectEntities(@Nonnull final EntitiesDescriptor group,
+            @Nonnull @NonnullElements final List<EntityDescriptor> entities) {
+        entities.addAll(group.getEntityDescriptors());
+        for (final EntitiesDescriptor child : group.getEntitiesDescriptors()) {
+            collectEntities(child, entities);
+        }
+    }
+
+    /**
+     * Remove entities from their groups.
+     * 
+     * @param removed the entities to remove
+     */
+    private void removeEntities(@Nonnull @NonnullElements final Set<EntityDescriptor> removed) {
+        if (removed.isEmpty()) {
+            return;
+        }
+        
+        final Map<EntitiesDescriptor, Set<EntityDescriptor>> byGroup = new IdentityHashMap<>();
+        for (final EntityDescriptor entity : removed) {
+            final EntitiesDescriptor group = (EntitiesDescriptor) entity.getParent();
+            Set<EntityDescriptor> members = byGroup.get(group);
+            if (members == null) {
+                members = new HashSet<>();
+                byGroup.put(group, members);
+            }
+            members.add(entity);
+        }
+        for (final Map.Entry<EntitiesDescriptor, Set<EntityDescriptor>> entry : byGroup.entrySet()) {
+            entry.getKey().getEntityDescriptors().removeAll(entry.getValue());
+        }
+    }
+
+    /**
+     * Get whether every filter in a run is thread-safe.
+     * 
+     * @param run the filters
+     * 
+     * @return true if every filter is thread-safe
+     */
+    private boolean isThreadSafe(@Nonnull @NonnullElements final List<EntityCallbackMetadataFilter> run) {
+        for (final EntityCallbackMetadataFilter filter : run) {
+            if (!filter.isThreadSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Get the list of {@link MetadataFilter}s that make up this chain.
      * 
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.collection.LockableClassToInstanceMultiMap;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.core.xml.util.DerivedObjectMetadata;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+
+/**
+ * Lookup table of the roles of an {@link EntityDescriptor}, keyed by role type and supported protocol.
+ *
+ * <p>The entry for a given role type and protocol is built the first time it is requested, using
+ * {@link EntityDescriptor#getRoleDescriptors(QName, String)}, and is reused thereafter.</p>
+ *
+ * <p>The table is cached in the entity's object metadata, see {@link #get(EntityDescriptor)}. Because it
+ * implements {@link DerivedObjectMetadata}, it is discarded when the entity or any of its roles is mutated,
+ * and will be rebuilt on next use.</p>
+ */
+@ThreadSafe
+public final class RoleDescriptorTable implements DerivedObjectMetadata {
+
+    /** The entity whose roles are indexed. */
+    @Nonnull private final EntityDescriptor entity;
+
+    /** Roles by type and protocol, built on demand. */
+    @Nonnull private final ConcurrentMap<Key, List<RoleDescriptor>> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param entityDescriptor the entity whose roles are to be indexed
+     */
+    public RoleDescriptorTable(@Nonnull final EntityDescriptor entityDescriptor) {
+        entity = Constraint.isNotNull(entityDescriptor, "EntityDescriptor cannot be null");
+        entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the roles of a given type, optionally restricted to those supporting a protocol, in document order.
+     *
+     * @param roleType the role type, by schema type or element name
+     * @param protocol the protocol the roles must support, or null for any
+     *
+     * @return the matching roles
+     */
+    @Nonnull @NonnullElements @Unmodifiable public List<RoleDescriptor> getRoleDescriptors(
+            @Nonnull final QName roleType, @Nullable final String protocol) {
+        final Key key = new Key(roleType, protocol);
+        List<RoleDescriptor> roles = entries.get(key);
+        if (roles == null) {
+            final List<RoleDescriptor> source = protocol != null ? entity.getRoleDescriptors(roleType, protocol)
+                    : entity.getRoleDescriptors(roleType);
+            roles = source.isEmpty() ? Collections.<RoleDescriptor>emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(source));
+            final List<RoleDescriptor> existing = entries.putIfAbsent(key, roles);
+            if (existing != null) {
+                roles = existing;
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * Get the table for an entity, building and caching it in the entity's object metadata if necessary.
+     *
+     * @param entityDescriptor the entity
+     *
+     * @return the entity's role table
+     */
+    @Nonnull public static RoleDescriptorTable get(@Nonnull final EntityDescriptor entityDescriptor) {
+        final LockableClassToInstanceMultiMap<Object> objectMetadata = entityDescriptor.getObjectMetadata();
+        final ReadWriteLock rwlock = objectMetadata.getReadWriteLock();
+
+        try {
+            rwlock.readLock().lock();
+            final List<RoleDescriptorTable> cached = objectMetadata.get(RoleDescriptorTable.class);
+            if (!cached.isEmpty()) {
+                return cached.get(0);
+            }
+        } finally {
+            rwlock.readLock().unlock();
+        }
+
+        try {
+            rwlock.writeLock().lock();
+
+            // Need to check again in case another waiting writer beat us in acquiring the write lock
+            final List<RoleDescriptorTable> cached = objectMetadata.get(RoleDescriptorTable.class);
+            if (!cached.isEmpty()) {
+                return cached.get(0);
+            }
+
+            final RoleDescriptorTable table = new RoleDescriptorTable(entityDescriptor);
+            objectMetadata.put(table);
+            return table;
+        } finally {
+            rwlock.writeLock().unlock();
+        }
+    }
+
+    /** Key of a table entry. */
+    private static final class Key {
+
+        /** The role type. */
+        @Nonnull private final QName roleType;
+
+        /** The protocol, or null. */
+        @Nullable private final String protocol;
+
+        /**
+         * Constructor.
+         *
+         * @param type the role type
+         * @param supportedProtocol the protocol, or null
+         */
+        Key(@Nonnull final QName type, @Nullable final String supportedProtocol) {
+            roleType = Constraint.isNotNull(type, "Role type cannot be null");
+            protocol = supportedProtocol;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return 31 * roleType.hashCode() + Objects.hashCode(protocol);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+
+            if (obj instanceof Key) {
+                final Key other = (Key) obj;
+                return roleType.equals(other.roleType) && Objects.equals(protocol, other.protocol);
+            }
+
+            return false;
+        }
+    }
+
+}
@@ -229,6 +229,37 @@ public class SAML20AssertionValidator {
         return validateStatements(assertion, context);
     }
 
+    /**
+     * Validate only those aspects of the supplied SAML 2 {@link Assertion} which depend on the request
+     * in which it was presented, using the parameters from the supplied {@link ValidationContext}.
+     * 
+     * <p>
+     * This evaluates subject confirmation and statements, and is intended for callers which have
+     * previously performed a full {@link #validate(Assertion, ValidationContext)} of the identical Assertion
+     * with an equivalent set of signature and condition parameters, and which have retained that result.
+     * The version, signature and conditions of the Assertion are not evaluated.
+     * </p>
+     * 
+     * @param assertion the assertion being evaluated
+     * @param context the current validation context
+     * 
+     * @return the validation result
+     * 
+     * @throws AssertionValidationException if there is a fatal error evaluating the validity of the assertion
+     */
+    @Nonnull public ValidationResult validateSubjectAndStatements(@Nonnull final Assertion assertion, 
+            @Nonnull final ValidationContext context) throws AssertionValidationException {
+        
+        log(assertion, context);
+        
+        final ValidationResult result = validateSubjectConfirmation(assertion, context);
+        if (result != ValidationResult.VALID) {
+            return result;
+        }
+
+        return validateStatements(assertion, context);
+    }
+
     /**
      * Log the Assertion which is being validated, along with the supplied validation context parameters.
      * 
@@ -17,13 +17,18 @@
 
 package org.opensaml.saml.common.binding.impl;
 
+import java.util.List;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
+import javax.xml.namespace.QName;
 
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 
 import org.opensaml.saml.common.binding.AbstractEndpointResolver;
+import org.opensaml.saml.common.binding.EndpointTable;
 import org.opensaml.saml.criterion.BindingCriterion;
 import org.opensaml.saml.criterion.EndpointCriterion;
 import org.opensaml.saml.saml2.metadata.Endpoint;
@@ -70,6 +75,32 @@ public class DefaultEndpointResolver<EndpointType extends Endpoint> extends Abst
         return true;
     }
     
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Since {@link #doCheckEndpoint(CriteriaSet, Endpoint)} requires candidates to match the index
+     * or binding of the {@link EndpointCriterion}, if either is set only the endpoints carrying that value
+     * are selected from the table.</p>
+     */
+    @Override
+    @Nonnull @NonnullElements @Unmodifiable protected List<? extends Endpoint> selectCandidates(
+            @Nonnull final CriteriaSet criteria, @Nonnull final EndpointTable table,
+            @Nonnull final QName endpointType) {
+        
+        final EndpointCriterion<EndpointType> epCriterion = criteria.get(EndpointCriterion.class);
+        if (epCriterion != null) {
+            final EndpointType comparisonEndpoint = epCriterion.getEndpoint();
+            if (comparisonEndpoint instanceof IndexedEndpoint
+                    && ((IndexedEndpoint) comparisonEndpoint).getIndex() != null) {
+                return table.getEndpoints(endpointType, ((IndexedEndpoint) comparisonEndpoint).getIndex());
+            } else if (comparisonEndpoint.getBinding() != null) {
+                return table.getEndpoints(endpointType, comparisonEndpoint.getBinding());
+            }
+        }
+        
+        return super.selectCandidates(criteria, table, endpointType);
+    }
+    
     /**
      * Verify the candidate's Binding attribute, if set, is among the set in the supplied criterion.
      * 
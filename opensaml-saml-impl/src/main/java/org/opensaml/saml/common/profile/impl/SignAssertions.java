@@ -17,6 +17,8 @@
 
 package org.opensaml.saml.common.profile.impl;
 
+import java.util.concurrent.Executor;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -54,6 +56,8 @@ import com.google.common.base.Functions;
  * <p>The {@link SecurityParametersContext} governing the signing process is located by a lookup
  * strategy, by default a child of the profile request context.</p>
  * 
+ * <p>If an {@link Executor} is set, the assertions' signatures are computed concurrently using it.</p>
+ * 
  * @event {@link EventIds#PROCEED_EVENT_ID}
  * @event {@link EventIds#INVALID_MSG_CTX}
  */
@@ -71,6 +75,9 @@ public class SignAssertions extends AbstractProfileAction {
     /** The signature signing parameters. */
     @Nullable private SignatureSigningParameters signatureSigningParameters;
 
+    /** Optional executor used to compute the signatures concurrently. */
+    @Nullable private Executor signingExecutor;
+
     /** The response containing the assertions to be signed. */
     @Nullable private SAMLObject response;
 
@@ -105,6 +112,19 @@ public class SignAssertions extends AbstractProfileAction {
                 "SecurityParameterContext lookup strategy cannot be null");
     }
     
+    /**
+     * Set the executor used to compute the assertions' signatures concurrently.
+     * 
+     * <p>If not set, the signatures are computed one after another on the calling thread.</p>
+     * 
+     * @param executor the signing executor
+     */
+    public void setSigningExecutor(@Nullable final Executor executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        signingExecutor = executor;
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
@@ -167,15 +187,11 @@ public class SignAssertions extends AbstractProfileAction {
             }
 
             if (response instanceof org.opensaml.saml.saml1.core.Response) {
-                for (final org.opensaml.saml.saml1.core.Assertion assertion :
-                        ((org.opensaml.saml.saml1.core.Response) response).getAssertions()) {
-                    SignatureSupport.signObject(assertion, signatureSigningParameters);
-                }
+                SignatureSupport.signObjects(((org.opensaml.saml.saml1.core.Response) response).getAssertions(),
+                        signatureSigningParameters, signingExecutor);
             } else if (response instanceof org.opensaml.saml.saml2.core.Response) {
-                for (final org.opensaml.saml.saml2.core.Assertion assertion :
-                        ((org.opensaml.saml.saml2.core.Response) response).getAssertions()) {
-                    SignatureSupport.signObject(assertion, signatureSigningParameters);
-                }
+                SignatureSupport.signObjects(((org.opensaml.saml.saml2.core.Response) response).getAssertions(),
+                        signatureSigningParameters, signingExecutor);
             }
 
             // TODO Maybe the response should not be logged ?
@@ -17,10 +17,131 @@
 
 package org.opensaml.saml.config.impl;
 
+import org.opensaml.core.config.InitializationException;
+import org.opensaml.core.xml.ExtensibleXMLObjectCopier;
 import org.opensaml.core.xml.config.AbstractXMLObjectProviderInitializer;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.CopierFactory;
+import org.opensaml.core.xml.schema.impl.XSAnyCopier;
+import org.opensaml.core.xml.schema.impl.XSStringCopier;
+import org.opensaml.core.xml.schema.impl.XSURICopier;
+import org.opensaml.saml.ext.idpdisco.DiscoveryResponse;
+import org.opensaml.saml.saml2.core.Advice;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import org.opensaml.saml.saml2.core.AttributeValue;
+import org.opensaml.saml.saml2.core.Audience;
+import org.opensaml.saml.saml2.core.AudienceRestriction;
+import org.opensaml.saml.saml2.core.AuthenticatingAuthority;
+import org.opensaml.saml.saml2.core.AuthnContext;
+import org.opensaml.saml.saml2.core.AuthnContextClassRef;
+import org.opensaml.saml.saml2.core.AuthnContextDecl;
+import org.opensaml.saml.saml2.core.AuthnContextDeclRef;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.opensaml.saml.saml2.core.AuthnStatement;
+import org.opensaml.saml.saml2.core.Conditions;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.KeyInfoConfirmationDataType;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.core.NameIDPolicy;
+import org.opensaml.saml.saml2.core.OneTimeUse;
+import org.opensaml.saml.saml2.core.ProxyRestriction;
+import org.opensaml.saml.saml2.core.RequestedAuthnContext;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.Status;
+import org.opensaml.saml.saml2.core.StatusCode;
+import org.opensaml.saml.saml2.core.StatusDetail;
+import org.opensaml.saml.saml2.core.StatusMessage;
+import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+import org.opensaml.saml.saml2.core.SubjectLocality;
+import org.opensaml.saml.saml2.core.impl.AdviceCopier;
+import org.opensaml.saml.saml2.core.impl.AssertionCopier;
+import org.opensaml.saml.saml2.core.impl.AttributeCopier;
+import org.opensaml.saml.saml2.core.impl.AttributeStatementCopier;
+import org.opensaml.saml.saml2.core.impl.AudienceCopier;
+import org.opensaml.saml.saml2.core.impl.AudienceRestrictionCopier;
+import org.opensaml.saml.saml2.core.impl.AuthenticatingAuthorityCopier;
+import org.opensaml.saml.saml2.core.impl.AuthnContextClassRefCopier;
+import org.opensaml.saml.saml2.core.impl.AuthnContextCopier;
+import org.opensaml.saml.saml2.core.impl.AuthnContextDeclRefCopier;
+import org.opensaml.saml.saml2.core.impl.AuthnRequestCopier;
+import org.opensaml.saml.saml2.core.impl.AuthnStatementCopier;
+import org.opensaml.saml.saml2.core.impl.ConditionsCopier;
+import org.opensaml.saml.saml2.core.impl.NameIDPolicyCopier;
+import org.opensaml.saml.saml2.core.impl.NameIDTypeCopier;
+import org.opensaml.saml.saml2.core.impl.ProxyRestrictionCopier;
+import org.opensaml.saml.saml2.core.impl.RequestedAuthnContextCopier;
+import org.opensaml.saml.saml2.core.impl.ResponseCopier;
+import org.opensaml.saml.saml2.core.impl.StatusCodeCopier;
+import org.opensaml.saml.saml2.core.impl.StatusCopier;
+import org.opensaml.saml.saml2.core.impl.StatusMessageCopier;
+import org.opensaml.saml.saml2.core.impl.SubjectConfirmationCopier;
+import org.opensaml.saml.saml2.core.impl.SubjectConfirmationDataCopier;
+import org.opensaml.saml.saml2.core.impl.SubjectCopier;
+import org.opensaml.saml.saml2.core.impl.SubjectLocalityCopier;
+import org.opensaml.saml.saml2.metadata.ArtifactResolutionService;
+import org.opensaml.saml.saml2.metadata.AssertionConsumerService;
+import org.opensaml.saml.saml2.metadata.AssertionIDRequestService;
+import org.opensaml.saml.saml2.metadata.AttributeAuthorityDescriptor;
+import org.opensaml.saml.saml2.metadata.AttributeConsumingService;
+import org.opensaml.saml.saml2.metadata.AttributeProfile;
+import org.opensaml.saml.saml2.metadata.AttributeService;
+import org.opensaml.saml.saml2.metadata.AuthnQueryService;
+import org.opensaml.saml.saml2.metadata.AuthzService;
+import org.opensaml.saml.saml2.metadata.Company;
+import org.opensaml.saml.saml2.metadata.ContactPerson;
+import org.opensaml.saml.saml2.metadata.EmailAddress;
+import org.opensaml.saml.saml2.metadata.EncryptionMethod;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.GivenName;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.saml2.metadata.ManageNameIDService;
+import org.opensaml.saml.saml2.metadata.NameIDFormat;
+import org.opensaml.saml.saml2.metadata.NameIDMappingService;
+import org.opensaml.saml.saml2.metadata.Organization;
+import org.opensaml.saml.saml2.metadata.OrganizationDisplayName;
+import org.opensaml.saml.saml2.metadata.OrganizationName;
+import org.opensaml.saml.saml2.metadata.OrganizationURL;
+import org.opensaml.saml.saml2.metadata.RequestedAttribute;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.ServiceDescription;
+import org.opensaml.saml.saml2.metadata.ServiceName;
+import org.opensaml.saml.saml2.metadata.SingleLogoutService;
+import org.opensaml.saml.saml2.metadata.SingleSignOnService;
+import org.opensaml.saml.saml2.metadata.SurName;
+import org.opensaml.saml.saml2.metadata.TelephoneNumber;
+import org.opensaml.saml.saml2.metadata.impl.AttributeAuthorityDescriptorCopier;
+import org.opensaml.saml.saml2.metadata.impl.AttributeConsumingServiceCopier;
+import org.opensaml.saml.saml2.metadata.impl.AttributeProfileCopier;
+import org.opensaml.saml.saml2.metadata.impl.CompanyCopier;
+import org.opensaml.saml.saml2.metadata.impl.ContactPersonCopier;
+import org.opensaml.saml.saml2.metadata.impl.EmailAddressCopier;
+import org.opensaml.saml.saml2.metadata.impl.EndpointCopier;
+import org.opensaml.saml.saml2.metadata.impl.EntitiesDescriptorCopier;
+import org.opensaml.saml.saml2.metadata.impl.EntityDescriptorCopier;
+import org.opensaml.saml.saml2.metadata.impl.GivenNameCopier;
+import org.opensaml.saml.saml2.metadata.impl.IDPSSODescriptorCopier;
+import org.opensaml.saml.saml2.metadata.impl.KeyDescriptorCopier;
+import org.opensaml.saml.saml2.metadata.impl.NameIDFormatCopier;
+import org.opensaml.saml.saml2.metadata.impl.OrganizationCopier;
+import org.opensaml.saml.saml2.metadata.impl.RequestedAttributeCopier;
+import org.opensaml.saml.saml2.metadata.impl.SPSSODescriptorCopier;
+import org.opensaml.saml.saml2.metadata.impl.SurNameCopier;
+import org.opensaml.saml.saml2.metadata.impl.TelephoneNumberCopier;
+import org.opensaml.xmlsec.encryption.impl.EncryptionMethodCopier;
 
 /**
  * XMLObject provider initializer for module "saml-impl".
+ * 
+ * <p>
+ * In addition to the object providers, this registers copiers for the common SAML 2 assertion, protocol and
+ * metadata objects.
+ * </p>
  */
 public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderInitializer {
     
@@ -54,4 +175,127 @@ public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderIniti
         return configs;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void init() throws InitializationException {
+        super.init();
+
+        final CopierFactory copierFactory = XMLObjectProviderRegistrySupport.getCopierFactory();
+        registerAssertionCopiers(copierFactory);
+        registerProtocolCopiers(copierFactory);
+        registerMetadataCopiers(copierFactory);
+    }
+
+    /**
+     * Register the copiers for SAML 2 assertion objects.
+     * 
+     * @param copierFactory the factory with which to register the copiers
+     */
+    private void registerAssertionCopiers(final CopierFactory copierFactory) {
+        final NameIDTypeCopier nameIDCopier = new NameIDTypeCopier();
+        copierFactory.registerCopier(NameID.DEFAULT_ELEMENT_NAME, nameIDCopier);
+        copierFactory.registerCopier(Issuer.DEFAULT_ELEMENT_NAME, nameIDCopier);
+
+        copierFactory.registerCopier(Assertion.DEFAULT_ELEMENT_NAME, new AssertionCopier());
+        copierFactory.registerCopier(Subject.DEFAULT_ELEMENT_NAME, new SubjectCopier());
+        copierFactory.registerCopier(SubjectConfirmation.DEFAULT_ELEMENT_NAME, new SubjectConfirmationCopier());
+        final SubjectConfirmationDataCopier confirmationDataCopier = new SubjectConfirmationDataCopier();
+        copierFactory.registerCopier(SubjectConfirmationData.DEFAULT_ELEMENT_NAME, confirmationDataCopier);
+        copierFactory.registerCopier(SubjectConfirmationData.TYPE_NAME, confirmationDataCopier);
+        copierFactory.registerCopier(KeyInfoConfirmationDataType.TYPE_NAME, confirmationDataCopier);
+
+        copierFactory.registerCopier(Conditions.DEFAULT_ELEMENT_NAME, new ConditionsCopier());
+        copierFactory.registerCopier(AudienceRestriction.DEFAULT_ELEMENT_NAME, new AudienceRestrictionCopier());
+        copierFactory.registerCopier(ProxyRestriction.DEFAULT_ELEMENT_NAME, new ProxyRestrictionCopier());
+        copierFactory.registerCopier(Audience.DEFAULT_ELEMENT_NAME, new AudienceCopier());
+        copierFactory.registerCopier(OneTimeUse.DEFAULT_ELEMENT_NAME, new ExtensibleXMLObjectCopier());
+        copierFactory.registerCopier(Advice.DEFAULT_ELEMENT_NAME, new AdviceCopier());
+
+        copierFactory.registerCopier(AuthnStatement.DEFAULT_ELEMENT_NAME, new AuthnStatementCopier());
+        copierFactory.registerCopier(SubjectLocality.DEFAULT_ELEMENT_NAME, new SubjectLocalityCopier());
+        copierFactory.registerCopier(AuthnContext.DEFAULT_ELEMENT_NAME, new AuthnContextCopier());
+        copierFactory.registerCopier(AuthnContextClassRef.DEFAULT_ELEMENT_NAME, new AuthnContextClassRefCopier());
+        copierFactory.registerCopier(AuthnContextDeclRef.DEFAULT_ELEMENT_NAME, new AuthnContextDeclRefCopier());
+        copierFactory.registerCopier(AuthenticatingAuthority.DEFAULT_ELEMENT_NAME,
+                new AuthenticatingAuthorityCopier());
+
+        copierFactory.registerCopier(AttributeStatement.DEFAULT_ELEMENT_NAME, new AttributeStatementCopier());
+        copierFactory.registerCopier(Attribute.DEFAULT_ELEMENT_NAME, new AttributeCopier());
+
+        final XSAnyCopier anyCopier = new XSAnyCopier();
+        copierFactory.registerCopier(AttributeValue.DEFAULT_ELEMENT_NAME, anyCopier);
+        copierFactory.registerCopier(AuthnContextDecl.DEFAULT_ELEMENT_NAME, anyCopier);
+    }
+
+    /**
+     * Register the copiers for SAML 2 protocol objects.
+     * 
+     * @param copierFactory the factory with which to register the copiers
+     */
+    private void registerProtocolCopiers(final CopierFactory copierFactory) {
+        final ExtensibleXMLObjectCopier extensibleCopier = new ExtensibleXMLObjectCopier();
+        copierFactory.registerCopier(org.opensaml.saml.saml2.core.Extensions.DEFAULT_ELEMENT_NAME, extensibleCopier);
+        copierFactory.registerCopier(StatusDetail.DEFAULT_ELEMENT_NAME, extensibleCopier);
+
+        copierFactory.registerCopier(AuthnRequest.DEFAULT_ELEMENT_NAME, new AuthnRequestCopier());
+        copierFactory.registerCopier(NameIDPolicy.DEFAULT_ELEMENT_NAME, new NameIDPolicyCopier());
+        copierFactory.registerCopier(RequestedAuthnContext.DEFAULT_ELEMENT_NAME, new RequestedAuthnContextCopier());
+
+        copierFactory.registerCopier(Response.DEFAULT_ELEMENT_NAME, new ResponseCopier());
+        copierFactory.registerCopier(Status.DEFAULT_ELEMENT_NAME, new StatusCopier());
+        copierFactory.registerCopier(StatusCode.DEFAULT_ELEMENT_NAME, new StatusCodeCopier());
+        copierFactory.registerCopier(StatusMessage.DEFAULT_ELEMENT_NAME, new StatusMessageCopier());
+    }
+
+    /**
+     * Register the copiers for SAML 2 metadata objects.
+     * 
+     * @param copierFactory the factory with which to register the copiers
+     */
+    private void registerMetadataCopiers(final CopierFactory copierFactory) {
+        copierFactory.registerCopier(EntitiesDescriptor.DEFAULT_ELEMENT_NAME, new EntitiesDescriptorCopier());
+        copierFactory.registerCopier(EntityDescriptor.DEFAULT_ELEMENT_NAME, new EntityDescriptorCopier());
+        copierFactory.registerCopier(org.opensaml.saml.saml2.metadata.Extensions.DEFAULT_ELEMENT_NAME,
+                new ExtensibleXMLObjectCopier());
+        copierFactory.registerCopier(SPSSODescriptor.DEFAULT_ELEMENT_NAME, new SPSSODescriptorCopier());
+        copierFactory.registerCopier(IDPSSODescriptor.DEFAULT_ELEMENT_NAME, new IDPSSODescriptorCopier());
+        copierFactory.registerCopier(AttributeAuthorityDescriptor.DEFAULT_ELEMENT_NAME,
+                new AttributeAuthorityDescriptorCopier());
+        copierFactory.registerCopier(KeyDescriptor.DEFAULT_ELEMENT_NAME, new KeyDescriptorCopier());
+        copierFactory.registerCopier(EncryptionMethod.DEFAULT_ELEMENT_NAME, new EncryptionMethodCopier());
+        copierFactory.registerCopier(NameIDFormat.DEFAULT_ELEMENT_NAME, new NameIDFormatCopier());
+        copierFactory.registerCopier(AttributeProfile.DEFAULT_ELEMENT_NAME, new AttributeProfileCopier());
+        copierFactory.registerCopier(AttributeConsumingService.DEFAULT_ELEMENT_NAME,
+                new AttributeConsumingServiceCopier());
+        copierFactory.registerCopier(RequestedAttribute.DEFAULT_ELEMENT_NAME, new RequestedAttributeCopier());
+
+        final EndpointCopier endpointCopier = new EndpointCopier();
+        copierFactory.registerCopier(ArtifactResolutionService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(AssertionConsumerService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(AssertionIDRequestService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(AttributeService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(AuthnQueryService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(AuthzService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(DiscoveryResponse.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(ManageNameIDService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(NameIDMappingService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(SingleLogoutService.DEFAULT_ELEMENT_NAME, endpointCopier);
+        copierFactory.registerCopier(SingleSignOnService.DEFAULT_ELEMENT_NAME, endpointCopier);
+
+        copierFactory.registerCopier(Organization.DEFAULT_ELEMENT_NAME, new OrganizationCopier());
+        final XSStringCopier stringCopier = new XSStringCopier();
+        copierFactory.registerCopier(OrganizationName.DEFAULT_ELEMENT_NAME, stringCopier);
+        copierFactory.registerCopier(OrganizationDisplayName.DEFAULT_ELEMENT_NAME, stringCopier);
+        copierFactory.registerCopier(ServiceName.DEFAULT_ELEMENT_NAME, stringCopier);
+        copierFactory.registerCopier(ServiceDescription.DEFAULT_ELEMENT_NAME, stringCopier);
+        copierFactory.registerCopier(OrganizationURL.DEFAULT_ELEMENT_NAME, new XSURICopier());
+
+        copierFactory.registerCopier(ContactPerson.DEFAULT_ELEMENT_NAME, new ContactPersonCopier());
+        copierFactory.registerCopier(Company.DEFAULT_ELEMENT_NAME, new CompanyCopier());
+        copierFactory.registerCopier(GivenName.DEFAULT_ELEMENT_NAME, new GivenNameCopier());
+        copierFactory.registerCopier(SurName.DEFAULT_ELEMENT_NAME, new SurNameCopier());
+        copierFactory.registerCopier(EmailAddress.DEFAULT_ELEMENT_NAME, new EmailAddressCopier());
+        copierFactory.registerCopier(TelephoneNumber.DEFAULT_ELEMENT_NAME, new TelephoneNumberCopier());
+    }
+
 }
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.filter.impl;
+
+import java.util.Collections;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.ParameterName;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml.security.impl.MetadataCredentialResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A filter that resolves the credentials of every KeyDescriptor in the metadata and caches them in the
+ * KeyDescriptors' object metadata, using {@link MetadataCredentialResolver#preResolveCredentials(RoleDescriptor)}.
+ * 
+ * <p>
+ * Because filters are run on newly loaded metadata before it is made available by the resolver, this moves the
+ * cost of processing KeyInfo elements out of the first request involving each entity after a refresh. It should
+ * be placed after any filter which removes or modifies KeyDescriptors, and the supplied credential resolver should
+ * be configured in the same way as the one used at runtime, since the cached credentials are reused by any
+ * {@link MetadataCredentialResolver}.
+ * </p>
+ * 
+ * <p>
+ * When filtering a whole document, the entities are divided among the configured number of threads by a
+ * {@link MetadataFilterChain} in fused mode. A role whose credentials cannot be resolved is logged and skipped,
+ * and will be resolved on first use as usual.
+ * </p>
+ */
+public class CredentialPreResolutionFilter implements EntityCallbackMetadataFilter {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(CredentialPreResolutionFilter.class);
+
+    /** Resolver used to resolve and cache the credentials. */
+    @Nonnull private final MetadataCredentialResolver credentialResolver;
+
+    /** Number of threads used to process the entities. */
+    @Positive private int parallelism;
+
+    /**
+     * Constructor.
+     * 
+     * @param resolver the resolver used to resolve and cache the credentials
+     */
+    public CredentialPreResolutionFilter(
+            @Nonnull @ParameterName(name="resolver") final MetadataCredentialResolver resolver) {
+        credentialResolver = Constraint.isNotNull(resolver, "MetadataCredentialResolver cannot be null");
+        parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Get the number of threads used to process the entities when filtering a whole document.
+     * 
+     * <p>Defaults to: the number of available processors.</p>
+     * 
+     * @return the number of threads
+     */
+    @Positive public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads used to process the entities when filtering a whole document.
+     * 
+     * <p>Defaults to: the number of available processors.</p>
+     * 
+     * @param threads the number of threads
+     */
+    public void setParallelism(@Positive final int threads) {
+        parallelism = (int) Constraint.isGreaterThan(0, threads, "Parallelism must be greater than 0");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public XMLObject filter(@Nullable final XMLObject metadata) throws FilterException {
+        if (metadata == null) {
+            return null;
+        }
+        
+        if (!(metadata instanceof EntityDescriptor) && !(metadata instanceof EntitiesDescriptor)) {
+            return metadata;
+        }
+        
+        // Let a fused chain divide the entities among threads.
+        final MetadataFilterChain chain = new MetadataFilterChain();
+        chain.setFusedExecution(true);
+        chain.setParallelism(parallelism);
+        chain.setFilters(Collections.<MetadataFilter>singletonList(this));
+        return chain.filter(metadata);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isReappliedOnMaterialization() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void preFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do before the entities are visited.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean filterEntity(@Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group)
+            throws FilterException {
+        for (final RoleDescriptor role : entity.getRoleDescriptors()) {
+            if (!role.getKeyDescriptors().isEmpty()) {
+                preResolve(role);
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void postFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do after the entities are visited.
+    }
+
+    /**
+     * Resolve and cache the credentials of a role, logging any failure.
+     * 
+     * @param role the role
+     */
+    private void preResolve(@Nonnull final RoleDescriptor role) {
+        try {
+            credentialResolver.preResolveCredentials(role);
+        } catch (final ResolverException e) {
+            final XMLObject parent = role.getParent();
+            log.warn("Unable to resolve credentials for {} role of entity '{}', they will be resolved on first use",
+                    role.getElementQName(),
+                    parent instanceof EntityDescriptor ? ((EntityDescriptor) parent).getEntityID() : null, e);
+        }
+    }
+
+}
@@ -40,8 +40,8 @@ import org.opensaml.saml.common.SAMLObject;
 import org.opensaml.saml.common.SAMLObjectBuilder;
 import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
 import org.opensaml.saml.ext.saml2mdattr.impl.EntityAttributesImpl;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
-import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.core.Attribute;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
@@ -65,7 +65,7 @@ import com.google.common.collect.Multimap;
  * <p>As of 3.4.0, another predicate can be set to validate pre-existing extension content to better
  * protect use cases of this component.</p>
  */
-public class EntityAttributesFilter extends AbstractInitializableComponent implements MetadataFilter {
+public class EntityAttributesFilter extends AbstractInitializableComponent implements EntityCallbackMetadataFilter {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(EntityAttributesFilter.class);
@@ -141,6 +141,43 @@ public class EntityAttributesFilter extends AbstractInitializableComponent imple
         
         return metadata;
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>The configured attributes are marshalled in order to be cloned into each entity, which is not safe
+     * to do concurrently.</p>
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isReappliedOnMaterialization() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void preFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do before the entities are visited.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean filterEntity(@Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group)
+            throws FilterException {
+        filterEntityDescriptor(entity);
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void postFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do after the entities are visited.
+    }
     
     /**
      * Filters entity descriptor.
@@ -28,8 +28,8 @@ import javax.xml.namespace.QName;
 
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
-import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.RoleDescriptor;
@@ -54,7 +54,7 @@ import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
  * well. If the root element of the metadata document is an entities descriptor it will never be removed, regardless of
  * of whether it still contains entity descriptors.
  */
-public class EntityRoleFilter implements MetadataFilter {
+public class EntityRoleFilter implements EntityCallbackMetadataFilter {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(EntityRoleFilter.class);
@@ -155,6 +155,70 @@ public class EntityRoleFilter implements MetadataFilter {
         return metadata;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Removing roles changes the structure of the document, which updates state shared with the other entities,
+     * such as the ID index held by the document root, so is not safe to do concurrently.</p>
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isReappliedOnMaterialization() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void preFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do before the entities are visited.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean filterEntity(@Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group)
+            throws FilterException {
+        filterEntityDescriptor(entity);
+        if (group != null && getRemoveRolelessEntityDescriptors() && entity.getAffiliationDescriptor() == null
+                && entity.getRoleDescriptors().isEmpty()) {
+            log.trace("Filtering out empty entity descriptor {} from entity group {}", entity.getEntityID(),
+                    group.getName());
+            return false;
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void postFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        if (getRemoveEmptyEntitiesDescriptors() && metadata instanceof EntitiesDescriptor) {
+            removeEmptyEntitiesDescriptors((EntitiesDescriptor) metadata);
+        }
+    }
+
+    /**
+     * Remove, recursively, the descendant groups of a group which contain no entities.
+     * 
+     * @param descriptor entities descriptor to process
+     */
+    private void removeEmptyEntitiesDescriptors(@Nonnull final EntitiesDescriptor descriptor) {
+        final List<EntitiesDescriptor> emptyEntitiesDescriptors = new ArrayList<>();
+        for (final EntitiesDescriptor entitiesDescriptor : descriptor.getEntitiesDescriptors()) {
+            removeEmptyEntitiesDescriptors(entitiesDescriptor);
+            if (entitiesDescriptor.getEntityDescriptors().isEmpty()
+                    && entitiesDescriptor.getEntitiesDescriptors().isEmpty()) {
+                log.trace("Filtering out entity descriptor {} from entity group {}", entitiesDescriptor.getName(),
+                        descriptor.getName());
+                emptyEntitiesDescriptors.add(entitiesDescriptor);
+            }
+        }
+        descriptor.getEntitiesDescriptors().removeAll(emptyEntitiesDescriptors);
+    }
+
 // Checkstyle: CyclomaticComplexity OFF    
     /**
      * Filters {@link EntitiesDescriptor}.
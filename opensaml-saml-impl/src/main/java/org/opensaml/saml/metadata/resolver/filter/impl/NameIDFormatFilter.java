@@ -33,8 +33,8 @@ import net.shibboleth.utilities.java.support.primitive.StringSupport;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.saml.common.SAMLObjectBuilder;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
-import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.metadata.AttributeAuthorityDescriptor;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
@@ -56,7 +56,7 @@ import com.google.common.collect.Multimap;
  * The entities to annotate are identified with a {@link Predicate}, and multiple formats can be
  * associated with each.
  */
-public class NameIDFormatFilter extends AbstractInitializableComponent implements MetadataFilter {
+public class NameIDFormatFilter extends AbstractInitializableComponent implements EntityCallbackMetadataFilter {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(NameIDFormatFilter.class);
@@ -125,6 +125,43 @@ public class NameIDFormatFilter extends AbstractInitializableComponent implement
         
         return metadata;
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Adding formats changes the structure of the document, which updates state shared with the other entities,
+     * such as the cached DOM and derived metadata of the enclosing groups, so is not safe to do concurrently.</p>
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isReappliedOnMaterialization() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void preFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean filterEntity(@Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group)
+            throws FilterException {
+        filterEntityDescriptor(entity);
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void postFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do after the entities are visited.
+    }
     
     /**
      * Filters entity descriptor.
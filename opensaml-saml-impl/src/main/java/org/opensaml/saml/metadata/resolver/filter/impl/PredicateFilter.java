@@ -27,8 +27,8 @@ import javax.annotation.Nullable;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
-import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.slf4j.Logger;
@@ -44,7 +44,7 @@ import com.google.common.base.Predicate;
  * well. If the root element of the metadata document is an @link EntitiesDescriptor}, it will never be removed,
  * regardless of of whether it still has children.</p>
  */
-public class PredicateFilter implements MetadataFilter {
+public class PredicateFilter implements EntityCallbackMetadataFilter {
 
     /** Whether matching means to include or exclude an entity. */
     public enum Direction { INCLUDE, EXCLUDE, };
@@ -139,6 +139,62 @@ public class PredicateFilter implements MetadataFilter {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isReappliedOnMaterialization() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void preFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do before the entities are visited.
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean filterEntity(@Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group)
+            throws FilterException {
+        if (Direction.EXCLUDE.equals(direction) == condition.apply(entity)) {
+            log.trace("Filtering out entity {}", entity.getEntityID());
+            return false;
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void postFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        if (getRemoveEmptyEntitiesDescriptors() && metadata instanceof EntitiesDescriptor) {
+            removeEmptyEntitiesDescriptors((EntitiesDescriptor) metadata);
+        }
+    }
+
+    /**
+     * Remove, recursively, the descendant groups of a group which contain no entities.
+     * 
+     * @param descriptor entities descriptor to process
+     */
+    private void removeEmptyEntitiesDescriptors(@Nonnull final EntitiesDescriptor descriptor) {
+        final List<EntitiesDescriptor> emptyEntitiesDescriptors = new ArrayList<>();
+        for (final EntitiesDescriptor entitiesDescriptor : descriptor.getEntitiesDescriptors()) {
+            removeEmptyEntitiesDescriptors(entitiesDescriptor);
+            if (entitiesDescriptor.getEntityDescriptors().isEmpty()
+                    && entitiesDescriptor.getEntitiesDescriptors().isEmpty()) {
+                log.trace("Filtering out empty group {} from group {}", entitiesDescriptor.getName(),
+                        descriptor.getName());
+                emptyEntitiesDescriptors.add(entitiesDescriptor);
+            }
+        }
+        descriptor.getEntitiesDescriptors().removeAll(emptyEntitiesDescriptors);
+    }
+
     /**
      * Filters entities descriptor.
      * 
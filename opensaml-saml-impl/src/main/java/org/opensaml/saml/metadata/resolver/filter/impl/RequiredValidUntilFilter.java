@@ -26,8 +26,8 @@ import net.shibboleth.utilities.java.support.xml.DOMTypeSupport;
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
-import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.slf4j.Logger;
@@ -41,7 +41,7 @@ import org.slf4j.LoggerFactory;
  * A maximum validity interval of less than 1 means that no restriction is placed on the metadata's
  * <code>validUntil</code> attribute.
  */
-public class RequiredValidUntilFilter implements MetadataFilter {
+public class RequiredValidUntilFilter implements EntityCallbackMetadataFilter {
 
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(RequiredValidUntilFilter.class);
@@ -109,6 +109,37 @@ public class RequiredValidUntilFilter implements MetadataFilter {
         return metadata;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isReappliedOnMaterialization() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void preFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        filter(metadata);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean filterEntity(@Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group)
+            throws FilterException {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void postFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do after the entities are visited.
+    }
+
     /**
      * Gets the validUntil time of the metadata, if present.
      * 
@@ -25,8 +25,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
-import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.metadata.AffiliationDescriptor;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
@@ -56,7 +56,7 @@ import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 /**
  * A metadata filter that validates XML signatures.
  */
-public class SignatureValidationFilter implements MetadataFilter {
+public class SignatureValidationFilter implements EntityCallbackMetadataFilter {
     
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(SignatureValidationFilter.class);
@@ -253,6 +253,106 @@ public class SignatureValidationFilter implements MetadataFilter {
         
         return metadata;
     }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Each entity signature covers a separate subtree, and the trust engine may be used concurrently.</p>
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isReappliedOnMaterialization() {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Checks the root element and verifies the signatures of all groups, so that they are established before
+     * any entity is visited and possibly modified. Groups which fail verification are removed.</p>
+     */
+    @Override
+    public void preFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        if (!((SignableXMLObject) metadata).isSigned() && getRequireSignedRoot()) {
+            throw new FilterException("Metadata root element was unsigned and signatures are required.");
+        }
+        
+        if (metadata instanceof EntitiesDescriptor) {
+            processEntityGroupSignatures((EntitiesDescriptor) metadata);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean filterEntity(@Nonnull final EntityDescriptor entity, @Nullable final EntitiesDescriptor group)
+            throws FilterException {
+        if (group == null) {
+            processEntityDescriptor(entity);
+            return true;
+        }
+        
+        if (!entity.isSigned()) {
+            log.trace("EntityDescriptor member '{}' was not signed, skipping signature processing...",
+                    entity.getEntityID());
+            return true;
+        }
+        
+        log.trace("Processing signed EntityDescriptor member: {}", entity.getEntityID());
+        try {
+            processEntityDescriptor(entity);
+            return true;
+        } catch (final FilterException e) {
+            log.error("EntityDescriptor '{}' failed signature verification, removing from metadata provider",
+                    entity.getEntityID());
+            return false;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void postFilter(@Nonnull final XMLObject metadata) throws FilterException {
+        // Nothing to do after the entities are visited.
+    }
+
+    /**
+     * Process the signatures on the specified EntitiesDescriptor and any descendant EntitiesDescriptors, but not
+     * those on the EntityDescriptors they contain.
+     * 
+     * If signature verification fails on a child, it will be removed from the entities descriptor group.
+     * 
+     * @param entitiesDescriptor the EntitiesDescriptor to be processed
+     * @throws FilterException thrown if an error occurs during the signature verification process
+     *                          on the EntitiesDescriptor specified
+     */
+    private void processEntityGroupSignatures(@Nonnull final EntitiesDescriptor entitiesDescriptor)
+            throws FilterException {
+        final String name = getGroupName(entitiesDescriptor);
+        log.trace("Processing EntitiesDescriptor group: {}", name);
+        
+        if (entitiesDescriptor.isSigned()) {
+            verifySignature(entitiesDescriptor, name, true);
+        }
+        
+        final HashSet<XMLObject> toRemove = new HashSet<>();
+        for (final EntitiesDescriptor entitiesChild : entitiesDescriptor.getEntitiesDescriptors()) {
+            try {
+                processEntityGroupSignatures(entitiesChild);
+            } catch (final FilterException e) {
+                log.error("EntitiesDescriptor '{}' failed signature verification, removing from metadata provider",
+                        getGroupName(entitiesChild));
+                toRemove.add(entitiesChild);
+            }
+        }
+        
+        if (!toRemove.isEmpty()) {
+            entitiesDescriptor.getEntitiesDescriptors().removeAll(toRemove);
+        }
+    }
     
     /**
      * Process the signatures on the specified EntityDescriptor and any signed children.
@@ -17,9 +17,11 @@
 
 package org.opensaml.saml.metadata.resolver.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
@@ -30,7 +32,10 @@ import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.saml.metadata.IterableMetadataSource;
 import org.opensaml.saml.metadata.resolver.ExtendedBatchMetadataResolver;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
 import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
 import org.opensaml.saml.metadata.resolver.index.impl.MetadataIndexManager;
 import org.opensaml.saml.saml2.common.TimeBoundSAMLObject;
@@ -44,12 +49,16 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
@@ -73,11 +82,18 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
      * entire metadata collection. Defaults to false. */
     private boolean resolveViaPredicatesOnly;
     
+    /** Flag indicating whether entities are held serialized outside of the heap. Defaults to false. */
+    private boolean serializedEntityStorage;
+    
+    /** Maximum number of materialized entities retained when entities are held serialized. */
+    @Positive private int maxMaterializedEntities;
+    
     /** Constructor. */
     public AbstractBatchMetadataResolver() {
         super();
         
         indexes = Collections.emptySet();
+        maxMaterializedEntities = SerializedEntityStore.DEFAULT_MAX_MATERIALIZED;
         
         setCacheSourceMetadata(true);
     }
@@ -85,7 +101,7 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
     /** {@inheritDoc} */
     @Override public Iterator<EntityDescriptor> iterator() {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
-        return Collections.unmodifiableList(getBackingStore().getOrderedDescriptors()).iterator();
+        return Iterators.unmodifiableIterator(getBackingStore().getEntityDescriptors().iterator());
     }
 
     /**
@@ -153,6 +169,63 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         resolveViaPredicatesOnly = flag;
     }
 
+    /**
+     * Get whether entities are held serialized outside of the heap, and materialized on demand.
+     * 
+     * @return true if entities are held serialized, false if not
+     */
+    public boolean isSerializedEntityStorage() {
+        return serializedEntityStorage;
+    }
+
+    /**
+     * Set whether entities are held serialized outside of the heap, and materialized on demand.
+     * 
+     * <p>
+     * If true, each entity which survives filtering is serialized into a {@link SerializedEntityStore} and
+     * removed from the metadata document, of which only the root and any EntitiesDescriptor groups are retained.
+     * Entities are unmarshalled again when looked up, and at most {@link #getMaxMaterializedEntities()} of them
+     * are retained on the heap. Since only the retained groups are examined, any validUntil or cacheDuration
+     * on individual entities no longer contributes to the computed expiration of the metadata. Materialized
+     * entities are read-only and detached from their groups, as described by {@link SerializedEntityStore}, and
+     * the filters returned by {@link #getMaterializationFilters()} are applied to each of them again.
+     * </p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag true if entities should be held serialized, false if not
+     */
+    public void setSerializedEntityStorage(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        serializedEntityStorage = flag;
+    }
+
+    /**
+     * Get the maximum number of materialized entities retained when entities are held serialized.
+     * 
+     * <p>Defaults to: {@value SerializedEntityStore#DEFAULT_MAX_MATERIALIZED}.</p>
+     * 
+     * @return the maximum number of materialized entities
+     */
+    @Positive public int getMaxMaterializedEntities() {
+        return maxMaterializedEntities;
+    }
+
+    /**
+     * Set the maximum number of materialized entities retained when entities are held serialized.
+     * 
+     * <p>Defaults to: {@value SerializedEntityStore#DEFAULT_MAX_MATERIALIZED}.</p>
+     * 
+     * @param max the maximum number of materialized entities
+     */
+    public void setMaxMaterializedEntities(@Positive final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        maxMaterializedEntities = (int) Constraint.isGreaterThan(0, max,
+                "Maximum materialized entities must be greater than 0");
+    }
+
     /** {@inheritDoc} */
     @Nullable public DateTime getRootValidUntil() {
         final XMLObject cached = getBackingStore().getCachedOriginalMetadata();
@@ -224,9 +297,35 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
      */
     @Nonnull @NonnullElements 
     protected Optional<Set<EntityDescriptor>> lookupByIndexes(@Nonnull final CriteriaSet criteria) {
+        final SerializedEntityStore serializedStore = getBackingStore().getSerializedEntityStore();
+        if (serializedStore != null) {
+            return serializedStore.lookupIndexedItems(criteria);
+        }
         return getBackingStore().getSecondaryIndexManager().lookupIndexedItems(criteria);
     }
     
+    /** {@inheritDoc} */
+    @Override @Nonnull @NonnullElements protected List<EntityDescriptor> lookupIndexedEntityID(
+            @Nonnull @NotEmpty final String entityID) {
+        final SerializedEntityStore serializedStore = getBackingStore().getSerializedEntityStore();
+        if (serializedStore != null) {
+            return new ArrayList<>(serializedStore.lookup(entityID));
+        }
+        return super.lookupIndexedEntityID(entityID);
+    }
+    
+    /** {@inheritDoc} */
+    @Override protected void preProcessEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor,
+            @Nonnull final EntityBackingStore backingStore) {
+        final SerializedEntityStore serializedStore =
+                ((BatchEntityBackingStore) backingStore).getSerializedEntityStore();
+        if (serializedStore != null) {
+            serializedStore.add(entityDescriptor);
+        } else {
+            super.preProcessEntityDescriptor(entityDescriptor, backingStore);
+        }
+    }
+    
     /** {@inheritDoc} */
     @Override protected void indexEntityDescriptor(@Nonnull final EntityDescriptor entityDescriptor, 
             @Nonnull final EntityBackingStore backingStore) {
@@ -237,9 +336,53 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
 
     /** {@inheritDoc} */
     @Override @Nonnull protected BatchEntityBackingStore createNewBackingStore() {
+        if (isSerializedEntityStorage()) {
+            return new BatchEntityBackingStore(getIndexes(), new SerializedEntityStore(getParserPool(),
+                    getIndexes(), getMaxMaterializedEntities(), getMaterializationFilters()));
+        }
         return new BatchEntityBackingStore(getIndexes());
     }
     
+    /**
+     * Get the filters to be applied again to each entity materialized from a {@link SerializedEntityStore}.
+     * 
+     * <p>
+     * Object metadata is not serialized, so this returns the configured {@link EntityCallbackMetadataFilter}s
+     * which report {@link EntityCallbackMetadataFilter#isReappliedOnMaterialization()}, whether configured
+     * directly or in a {@link MetadataFilterChain}, in the order they are configured.
+     * </p>
+     * 
+     * @return the filters to apply on materialization
+     */
+    @Nonnull @NonnullElements protected List<EntityCallbackMetadataFilter> getMaterializationFilters() {
+        final List<EntityCallbackMetadataFilter> filters = new ArrayList<>();
+        final MetadataFilter filter = getMetadataFilter();
+        if (filter != null) {
+            collectMaterializationFilters(filter, filters);
+        }
+        return filters;
+    }
+    
+    /**
+     * Add a filter, or the members of a {@link MetadataFilterChain}, to the filters to be applied again on
+     * materialization if they report that they should be.
+     * 
+     * @param filter the filter to examine
+     * @param filters the list to add to
+     */
+    private void collectMaterializationFilters(@Nonnull final MetadataFilter filter,
+            @Nonnull @NonnullElements final List<EntityCallbackMetadataFilter> filters) {
+        if (filter instanceof EntityCallbackMetadataFilter) {
+            if (((EntityCallbackMetadataFilter) filter).isReappliedOnMaterialization()) {
+                filters.add((EntityCallbackMetadataFilter) filter);
+            }
+        } else if (filter instanceof MetadataFilterChain) {
+            for (final MetadataFilter member : ((MetadataFilterChain) filter).getFilters()) {
+                collectMaterializationFilters(member, filters);
+            }
+        }
+    }
+    
     /** {@inheritDoc} */
     @Override @Nonnull protected BatchEntityBackingStore getBackingStore() {
         return (BatchEntityBackingStore) super.getBackingStore();
@@ -248,6 +391,10 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
     /** {@inheritDoc} */
     @Override protected void initMetadataResolver() throws ComponentInitializationException {
         super.initMetadataResolver();
+        if (isSerializedEntityStorage() && getParserPool() == null) {
+            throw new ComponentInitializationException(getLogPrefix() 
+                    + " ParserPool is required for serialized entity storage");
+        }
         // Init this to an empty instance to ensure we always have a non-null instance,
         // even if initialization in the subclass fails for whatever reason.
         // Most subclasses will replace this with a new populated instance.
@@ -310,6 +457,8 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
             return newBackingStore;
         }
         
+        expandDeferredContent(filteredMetadata);
+        
         if (filteredMetadata instanceof EntityDescriptor) {
             preProcessEntityDescriptor((EntityDescriptor)filteredMetadata, newBackingStore);
         } else if (filteredMetadata instanceof EntitiesDescriptor) {
@@ -319,8 +468,33 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
                     getLogPrefix(), root.getClass().getName());
         }
         
+        if (newBackingStore.getSerializedEntityStore() != null) {
+            log.debug("{} Serialized {} EntityDescriptors into {} bytes, detaching them from the metadata document",
+                    getLogPrefix(), newBackingStore.getSerializedEntityStore().getSize(),
+                    newBackingStore.getSerializedEntityStore().getStorageSize());
+            detachEntityDescriptors(filteredMetadata);
+            if (root != filteredMetadata) {
+                detachEntityDescriptors(root);
+            }
+        }
+        
         return newBackingStore;
     }
+    
+    /**
+     * Remove all EntityDescriptors from a metadata document, leaving only the EntitiesDescriptor groups.
+     * 
+     * @param metadata the root of the metadata document
+     */
+    private void detachEntityDescriptors(@Nonnull final XMLObject metadata) {
+        if (metadata instanceof EntitiesDescriptor) {
+            final EntitiesDescriptor group = (EntitiesDescriptor) metadata;
+            group.getEntityDescriptors().clear();
+            for (final EntitiesDescriptor child : group.getEntitiesDescriptors()) {
+                detachEntityDescriptors(child);
+            }
+        }
+    }
 
     /**
      * Specialized entity backing store implementation for batch metadata resolvers.
@@ -330,6 +504,8 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
      * <ol>
      * <li>capable of storing the original metadata document on which the backing store is based</li>
      * <li>stores data for any secondary indexes defined</li>
+     * <li>optionally holds its entities serialized in a {@link SerializedEntityStore}, in which case
+     * the entity descriptor index and list of the parent impl are not used</li>
      * </ol>
      * </p>
      */
@@ -344,6 +520,9 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
         /** Manager for secondary indexes. */
         private MetadataIndexManager<EntityDescriptor> secondaryIndexManager;
         
+        /** Store of serialized entities, if used. */
+        @Nullable private final SerializedEntityStore serializedEntityStore;
+        
         /**
          * Constructor.
          *
@@ -351,9 +530,22 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
          */
         protected BatchEntityBackingStore(
                 @Nullable @NonnullElements @Unmodifiable @NotLive final Set<MetadataIndex> initIndexes) {
+            this(initIndexes, null);
+        }
+        
+        /**
+         * Constructor.
+         *
+         * @param initIndexes secondary indexes for which to initialize storage
+         * @param serializedStore store of serialized entities, or null if entities are held as objects
+         */
+        protected BatchEntityBackingStore(
+                @Nullable @NonnullElements @Unmodifiable @NotLive final Set<MetadataIndex> initIndexes,
+                @Nullable final SerializedEntityStore serializedStore) {
             super();
             secondaryIndexManager = new MetadataIndexManager(initIndexes, 
                     new MetadataIndexManager.IdentityExtractionFunction());
+            serializedEntityStore = serializedStore;
         }
 
         /**
@@ -401,6 +593,27 @@ public abstract class AbstractBatchMetadataResolver extends AbstractMetadataReso
             return secondaryIndexManager;
         }
         
+        /**
+         * Get the store of serialized entities.
+         * 
+         * @return the store of serialized entities, or null if entities are held as objects
+         */
+        @Nullable public SerializedEntityStore getSerializedEntityStore() {
+            return serializedEntityStore;
+        }
+        
+        /**
+         * Get all entity descriptors held, in document order.
+         * 
+         * @return the entity descriptors, materialized on demand if held serialized
+         */
+        @Nonnull @NonnullElements public Iterable<EntityDescriptor> getEntityDescriptors() {
+            if (serializedEntityStore != null) {
+                return serializedEntityStore;
+            }
+            return getOrderedDescriptors();
+        }
+        
     }
 
 }
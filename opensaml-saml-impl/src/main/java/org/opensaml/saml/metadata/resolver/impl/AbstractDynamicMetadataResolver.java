@@ -29,6 +29,7 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -43,6 +44,7 @@ import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.persist.WriteBehindLoadSaveManager;
 import org.opensaml.core.xml.persist.XMLObjectLoadSaveManager;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.core.xml.util.XMLObjectSupport.CloneOutputOption;
@@ -71,6 +73,7 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableSet;
 
 import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
@@ -110,6 +113,18 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metric name for the gauge of the persistent cache initialization metrics. */
     public static final String METRIC_GAUGE_PERSISTENT_CACHE_INIT = "gauge.persistentCacheInitialization";
     
+    /** Metric name for the gauge of the number of entities awaiting write to the persistent cache. */
+    public static final String METRIC_GAUGE_PERSISTENT_CACHE_BACKLOG = "gauge.persistentCacheWriteBehindBacklog";
+    
+    /** Metric name for the timer for writes to the persistent cache made in the background. */
+    public static final String METRIC_TIMER_PERSISTENT_CACHE_FLUSH = "timer.persistentCacheWriteBehindFlush";
+    
+    /** Metric name for the ratio gauge of entityID requests answered from the backing store. */
+    public static final String METRIC_RATIOGAUGE_BACKING_STORE_HIT_RATIO = "ratioGauge.backingStoreHitRatio";
+    
+    /** Metric name for the gauge of the number of entities evicted from the backing store. */
+    public static final String METRIC_GAUGE_NUM_EVICTED_ENTITYIDS = "gauge.numEvictedEntityIDs";
+    
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractDynamicMetadataResolver.class);
     
@@ -131,6 +146,24 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Metrics Gauge for the persistent cache initialization.*/
     @Nullable private Gauge<PersistentCacheInitializationMetrics> gaugePersistentCacheInit;
     
+    /** Metrics Gauge for the persistent cache write-behind backlog.*/
+    @Nullable private Gauge<Integer> gaugePersistentCacheBacklog;
+    
+    /** Metrics Timer for persistent cache writes made in the background. */
+    @Nullable private com.codahale.metrics.Timer timerPersistentCacheFlush;
+    
+    /** Ratio gauge for entityID requests answered from the backing store. */
+    @Nullable private RatioGauge ratioGaugeBackingStoreHitRatio;
+    
+    /** Gauge for the number of entities evicted from the backing store. */
+    @Nullable private Gauge<Long> gaugeNumEvictedEntityIDs;
+    
+    /** Number of requests for a single entityID. */
+    @Nonnull private final AtomicLong entityIDRequestCount;
+    
+    /** Number of requests for a single entityID answered from the backing store. */
+    @Nonnull private final AtomicLong backingStoreHitCount;
+    
     /** Timer used to schedule background metadata update tasks. */
     private Timer taskTimer;
     
@@ -153,6 +186,21 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
      * before it is removed. */
     @Duration @Positive private Long maxIdleEntityData;
     
+    /** Maximum number of entities held in the backing store, or 0 if unlimited. */
+    @NonNegative private int maxEntities;
+    
+    /** Maximum total weight of the entities held in the backing store, or 0 if unlimited. */
+    @NonNegative private long maxEntityWeight;
+    
+    /** Policy for selecting entities to evict when a limit is exceeded. */
+    @Nonnull private EntityEvictionTracker.Policy evictionPolicy;
+    
+    /** Function computing the weight of an entity. */
+    @Nonnull private Function<EntityDescriptor, Long> entityWeigher;
+    
+    /** Tracker of the entities held, if a limit is set. */
+    @Nullable private EntityEvictionTracker evictionTracker;
+    
     /** Flag indicating whether idle entity data should be removed. */
     private boolean removeIdleEntityData;
     
@@ -175,6 +223,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** Flag indicating whether should initialize from the persistent cache in the background. */
     private boolean initializeFromPersistentCacheInBackground;
     
+    /** Flag indicating whether saves to the persistent cache are written in the background. */
+    private boolean persistentCacheWriteBehind;
+    
+    /** Maximum number of entities awaiting write to the persistent cache. */
+    @Positive private int persistentCacheWriteBehindMaxBacklog;
+    
+    /** The write-behind manager wrapping the configured persistent cache manager, if enabled. */
+    @Nullable private WriteBehindLoadSaveManager<EntityDescriptor> persistentCacheWriteBehindManager;
+    
     /** The delay in milliseconds after which to schedule the background initialization from the persistent cache. */
     @Duration @Positive private Long backgroundInitializationFromCacheDelay;
     
@@ -236,6 +293,15 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
         // Default to 2 seconds.
         backgroundInitializationFromCacheDelay = 2*1000L;
+        
+        persistentCacheWriteBehindMaxBacklog = WriteBehindLoadSaveManager.DEFAULT_MAX_BACKLOG;
+        
+        // Default to no limits on the backing store size
+        evictionPolicy = EntityEvictionTracker.Policy.TINY_LFU;
+        entityWeigher = new DefaultEntityWeigher();
+        
+        entityIDRequestCount = new AtomicLong();
+        backingStoreHitCount = new AtomicLong();
     }
     
     /**
@@ -290,9 +356,73 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         backgroundInitializationFromCacheDelay = delay;
     }
 
+    /**
+     * Get the flag indicating whether newly resolved metadata is written to the persistent cache in the background,
+     * rather than on the resolving thread.
+     * 
+     * <p>
+     * Saves are queued with at most one entry per entity, and are all written when the resolver is destroyed.
+     * Only metadata which retains its source bytes is written in the background, see
+     * {@link WriteBehindLoadSaveManager}.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if writes are made in the background, false otherwise
+     */
+    public boolean isPersistentCacheWriteBehind() {
+        return persistentCacheWriteBehind;
+    }
+
+    /**
+     * Set the flag indicating whether newly resolved metadata is written to the persistent cache in the background,
+     * rather than on the resolving thread.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if writes should be made in the background, false otherwise
+     */
+    public void setPersistentCacheWriteBehind(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        persistentCacheWriteBehind = flag;
+    }
+
+    /**
+     * Get the maximum number of entities awaiting write to the persistent cache, beyond which resolving threads
+     * wait for the background writer.
+     * 
+     * <p>Defaults to: {@value WriteBehindLoadSaveManager#DEFAULT_MAX_BACKLOG}.</p>
+     * 
+     * @return the maximum backlog
+     */
+    @Positive public int getPersistentCacheWriteBehindMaxBacklog() {
+        return persistentCacheWriteBehindMaxBacklog;
+    }
+
+    /**
+     * Set the maximum number of entities awaiting write to the persistent cache, beyond which resolving threads
+     * wait for the background writer.
+     * 
+     * <p>Defaults to: {@value WriteBehindLoadSaveManager#DEFAULT_MAX_BACKLOG}.</p>
+     * 
+     * @param max the maximum backlog
+     */
+    public void setPersistentCacheWriteBehindMaxBacklog(@Positive final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        persistentCacheWriteBehindMaxBacklog =
+                (int) Constraint.isGreaterThan(0, max, "Maximum backlog must be greater than 0");
+    }
+
     /**
      * Get the manager for the persistent cache store for resolved metadata.
      * 
+     * <p>
+     * If {@link #isPersistentCacheWriteBehind()} is true, after initialization this is a
+     * {@link WriteBehindLoadSaveManager} wrapping the configured manager.
+     * </p>
+     * 
      * @return the cache manager if configured, or null
      */
     @Nullable public XMLObjectLoadSaveManager<EntityDescriptor> getPersistentCacheManager() {
@@ -508,6 +638,125 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         maxIdleEntityData = Constraint.isNotNull(max, "Max idle entity data may not be null");
     }
     
+    /**
+     * Get the maximum number of entities for which the resolver will hold data, beyond which entities are
+     * evicted as determined by {@link #getEvictionPolicy()}.
+     * 
+     * <p>
+     * Entities recorded in the negative lookup cache are included in the count. Evicted entities are not
+     * removed from the persistent cache, if one is configured.
+     * </p>
+     * 
+     * <p>Defaults to: 0, meaning unlimited.</p>
+     * 
+     * @return the maximum number of entities, or 0 if unlimited
+     */
+    @NonNegative public int getMaxEntities() {
+        return maxEntities;
+    }
+
+    /**
+     * Set the maximum number of entities for which the resolver will hold data, beyond which entities are
+     * evicted as determined by {@link #getEvictionPolicy()}.
+     * 
+     * <p>Defaults to: 0, meaning unlimited.</p>
+     * 
+     * @param max the maximum number of entities, or 0 if unlimited
+     */
+    public void setMaxEntities(@NonNegative final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        maxEntities = (int) Constraint.isGreaterThanOrEqual(0, max, "Max entities must be >= 0");
+    }
+    
+    /**
+     * Get the maximum total weight, as computed by {@link #getEntityWeigher()}, of the entities for which the
+     * resolver will hold data, beyond which entities are evicted as determined by {@link #getEvictionPolicy()}.
+     * 
+     * <p>Defaults to: 0, meaning unlimited.</p>
+     * 
+     * @return the maximum total weight, or 0 if unlimited
+     */
+    @NonNegative public long getMaxEntityWeight() {
+        return maxEntityWeight;
+    }
+
+    /**
+     * Set the maximum total weight, as computed by {@link #getEntityWeigher()}, of the entities for which the
+     * resolver will hold data, beyond which entities are evicted as determined by {@link #getEvictionPolicy()}.
+     * 
+     * <p>Defaults to: 0, meaning unlimited.</p>
+     * 
+     * @param max the maximum total weight, or 0 if unlimited
+     */
+    public void setMaxEntityWeight(@NonNegative final long max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        maxEntityWeight = Constraint.isGreaterThanOrEqual(0, max, "Max entity weight must be >= 0");
+    }
+    
+    /**
+     * Get the policy for selecting entities to evict when {@link #getMaxEntities()} or
+     * {@link #getMaxEntityWeight()} is exceeded.
+     * 
+     * <p>Defaults to: {@link EntityEvictionTracker.Policy#TINY_LFU}.</p>
+     * 
+     * @return the eviction policy
+     */
+    @Nonnull public EntityEvictionTracker.Policy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Set the policy for selecting entities to evict when {@link #getMaxEntities()} or
+     * {@link #getMaxEntityWeight()} is exceeded.
+     * 
+     * <p>Defaults to: {@link EntityEvictionTracker.Policy#TINY_LFU}.</p>
+     * 
+     * @param policy the eviction policy
+     */
+    public void setEvictionPolicy(@Nonnull final EntityEvictionTracker.Policy policy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        evictionPolicy = Constraint.isNotNull(policy, "Eviction policy may not be null");
+    }
+    
+    /**
+     * Get the function which computes the weight of an entity, for comparison with
+     * {@link #getMaxEntityWeight()}.
+     * 
+     * <p>Defaults to: {@link DefaultEntityWeigher}.</p>
+     * 
+     * @return the entity weigher
+     */
+    @Nonnull public Function<EntityDescriptor, Long> getEntityWeigher() {
+        return entityWeigher;
+    }
+
+    /**
+     * Set the function which computes the weight of an entity, for comparison with
+     * {@link #getMaxEntityWeight()}.
+     * 
+     * <p>Defaults to: {@link DefaultEntityWeigher}.</p>
+     * 
+     * @param weigher the entity weigher
+     */
+    public void setEntityWeigher(@Nonnull final Function<EntityDescriptor, Long> weigher) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        entityWeigher = Constraint.isNotNull(weigher, "Entity weigher may not be null");
+    }
+    
+    /**
+     * Get the tracker of the entities held, which is present after initialization if
+     * {@link #getMaxEntities()} or {@link #getMaxEntityWeight()} is set.
+     * 
+     * @return the eviction tracker, or null
+     */
+    @Nullable protected EntityEvictionTracker getEvictionTracker() {
+        return evictionTracker;
+    }
+    
     /**
      * Gets the impending expiration warning threshold used at refresh time.
      * 
@@ -661,6 +910,11 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             final String entityID = resolveEntityID(criteria);
             if (entityID != null) {
                 log.debug("{} Resolved criteria to entityID: {}", getLogPrefix(), entityID);
+                
+                entityIDRequestCount.incrementAndGet();
+                if (evictionTracker != null) {
+                    evictionTracker.recordAccess(entityID);
+                }
 
                 final EntityManagementData mgmtData = getBackingStore().getManagementData(entityID);
                 final Lock readLock = mgmtData.getReadWriteLock().readLock();
@@ -673,6 +927,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                             log.debug("{} Did not find requested metadata in backing store, " 
                                     + "and negative lookup cache is active, returning empty result", 
                                     getLogPrefix());
+                            backingStoreHitCount.incrementAndGet();
                             return Collections.emptyList();
                         } else {
                             log.debug("{} Did not find requested metadata in backing store, " 
@@ -685,6 +940,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                                     getLogPrefix());
                         } else {
                             log.debug("{} Found requested metadata in backing store", getLogPrefix());
+                            backingStoreHitCount.incrementAndGet();
                             candidates = descriptors;
                         }
                     }
@@ -698,6 +954,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
 
             if (candidates == null) {
                 candidates = resolveFromOriginSource(criteria, entityID);
+                evictEntities();
             }
 
             return predicateFilterCandidates(candidates, criteria, false);
@@ -867,6 +1124,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             if (root == null) {
                 mgmtData.initNegativeLookupCache();
                 log.debug("{} No metadata was fetched from the origin source", getLogPrefix());
+                
+                if (descriptors.isEmpty() && evictionTracker != null) {
+                    evictionTracker.add(entityID, 0);
+                }
 
                 if (!descriptors.isEmpty()) {
                     mgmtData.setRefreshTriggerTime(computeRefreshTriggerTime(mgmtData.getExpirationTime(), 
@@ -1095,6 +1356,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 }
             }
             
+            expandDeferredContent(entityDescriptor);
             preProcessEntityDescriptor(entityDescriptor, getBackingStore());
             
             log.info("{} Successfully loaded new EntityDescriptor with entityID '{}' from {}",
@@ -1180,6 +1442,11 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         log.debug("{} Computed refresh trigger time: {}", getLogPrefix(), mgmtData.getRefreshTriggerTime());
         
         logMetadataExpiration(entityDescriptor, now, mgmtData.getRefreshTriggerTime());
+        
+        if (evictionTracker != null && entityID != null) {
+            final Long weight = getEntityWeigher().apply(entityDescriptor);
+            evictionTracker.add(entityID, weight != null ? weight : 0);
+        }
     }
     
     /**
@@ -1296,6 +1563,13 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             
             setBackingStore(createNewBackingStore());
             
+            if (getMaxEntities() > 0 || getMaxEntityWeight() > 0) {
+                log.debug("{} Backing store is limited to {} entities and total weight {}, with eviction policy {}",
+                        getLogPrefix(), getMaxEntities(), getMaxEntityWeight(), getEvictionPolicy());
+                evictionTracker = new EntityEvictionTracker(getMaxEntities(), getMaxEntityWeight(),
+                        getEvictionPolicy());
+            }
+            
             if (getPersistentCacheKeyGenerator() == null) {
                 setPersistentCacheKeyGenerator(new DefaultCacheKeyGenerator());
             }
@@ -1304,6 +1578,10 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 setInitializationFromCachePredicate(Predicates.<EntityDescriptor>alwaysTrue());
             }
             
+            if (isPersistentCachingEnabled() && isPersistentCacheWriteBehind()) {
+                initializePersistentCacheWriteBehind();
+            }
+            
             persistentCacheInitMetrics = new PersistentCacheInitializationMetrics();
             if (isPersistentCachingEnabled()) {
                 persistentCacheInitMetrics.enabled = true;
@@ -1331,6 +1609,21 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         }
     }
 
+    /**
+     * Wrap the configured persistent cache manager so that saves are written in the background.
+     * 
+     * @throws ComponentInitializationException if the write-behind manager can not be initialized
+     */
+    private void initializePersistentCacheWriteBehind() throws ComponentInitializationException {
+        log.debug("{} Saves to the persistent cache will be written in the background", getLogPrefix());
+        persistentCacheWriteBehindManager = new WriteBehindLoadSaveManager<>(persistentCacheManager);
+        persistentCacheWriteBehindManager.setMaxBacklog(getPersistentCacheWriteBehindMaxBacklog());
+        persistentCacheWriteBehindManager.setThreadName("Persistent cache writer for " + getLogPrefix());
+        persistentCacheWriteBehindManager.setFlushTimer(timerPersistentCacheFlush);
+        persistentCacheWriteBehindManager.initialize();
+        persistentCacheManager = persistentCacheWriteBehindManager;
+    }
+
     /**
      * Initialize the Metrics-based instrumentation.
      */
@@ -1372,6 +1665,38 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                             return persistentCacheInitMetrics;
                         }},
                     true);
+            
+            ratioGaugeBackingStoreHitRatio = MetricsSupport.register(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_RATIOGAUGE_BACKING_STORE_HIT_RATIO), 
+                    new RatioGauge() {
+                        protected Ratio getRatio() {
+                            return Ratio.of(backingStoreHitCount.get(), entityIDRequestCount.get());
+                        }},
+                    true);
+            
+            gaugeNumEvictedEntityIDs = MetricsSupport.register(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_NUM_EVICTED_ENTITYIDS),
+                    new Gauge<Long>() {
+                        public Long getValue() {
+                            final EntityEvictionTracker tracker = evictionTracker;
+                            return tracker != null ? tracker.getEvictionCount() : 0L;
+                        }},
+                    true);
+            
+            if (isPersistentCachingEnabled() && isPersistentCacheWriteBehind()) {
+                timerPersistentCacheFlush = metricRegistry.timer(
+                        MetricRegistry.name(getMetricsBaseName(), METRIC_TIMER_PERSISTENT_CACHE_FLUSH));
+                
+                gaugePersistentCacheBacklog = MetricsSupport.register(
+                        MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_PERSISTENT_CACHE_BACKLOG),
+                        new Gauge<Integer>() {
+                            public Integer getValue() {
+                                final WriteBehindLoadSaveManager<EntityDescriptor> manager =
+                                        persistentCacheWriteBehindManager;
+                                return manager != null ? manager.getBacklogSize() : 0;
+                            }},
+                        true);
+            }
         }
     }
     
@@ -1416,6 +1741,8 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                 } finally {
                     writeLock.unlock();
                 }
+                
+                evictEntities();
             }
         } catch (final IOException e) {
             log.warn("{} Error loading EntityDescriptors from cache", getLogPrefix(), e);
@@ -1484,6 +1811,19 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
     /** {@inheritDoc} */
     @Override
     protected void removeByEntityID(final String entityID, final EntityBackingStore backingStore) {
+        removeByEntityID(entityID, backingStore, false);
+    }
+    
+    /**
+     * Remove from the backing store all metadata for the entity with the given ID, and unless the entity is
+     * being evicted, from the persistent cache.
+     * 
+     * @param entityID the entity ID of the metadata to remove
+     * @param backingStore the backing store instance to update
+     * @param evicting true if the entity is being evicted to respect the backing store limits
+     */
+    private void removeByEntityID(final String entityID, final EntityBackingStore backingStore,
+            final boolean evicting) {
         final List<EntityDescriptor> descriptors = backingStore.getIndexedDescriptors().get(entityID);
         if (descriptors != null) {
             for (final EntityDescriptor descriptor : descriptors) {
@@ -1500,7 +1840,7 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
                     }
                 }
                 
-                if (isPersistentCachingEnabled()) {
+                if (isPersistentCachingEnabled() && !evicting) {
                     final String key = getPersistentCacheKeyGenerator().apply(descriptor);
                     try {
                         getPersistentCacheManager().remove(key);
@@ -1513,12 +1853,63 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             }
         }
         
+        if (evictionTracker != null && entityID != null) {
+            if (evicting) {
+                evictionTracker.evicted(entityID);
+            } else {
+                evictionTracker.remove(entityID);
+            }
+        }
+        
         super.removeByEntityID(entityID, backingStore);
     }
+    
+    /**
+     * Evict entities from the backing store until its limits are satisfied.
+     * 
+     * <p>
+     * This must be called without holding the lock on any entity's management data. An entity whose lock is
+     * held by another thread is not evicted, and the remaining evictions are deferred to the next call.
+     * </p>
+     */
+    protected void evictEntities() {
+        final EntityEvictionTracker tracker = evictionTracker;
+        if (tracker == null) {
+            return;
+        }
+        
+        final DynamicEntityBackingStore backingStore = getBackingStore();
+        String entityID = tracker.selectVictim();
+        while (entityID != null) {
+            final EntityManagementData mgmtData = backingStore.getManagementData(entityID);
+            final Lock writeLock = mgmtData.getReadWriteLock().writeLock();
+            if (!writeLock.tryLock()) {
+                log.debug("{} Entity data for '{}' is in use, deferring eviction", getLogPrefix(), entityID);
+                tracker.retain(entityID);
+                return;
+            }
+            try {
+                log.debug("{} Evicting entity data for '{}' to respect backing store limits", getLogPrefix(), 
+                        entityID);
+                removeByEntityID(entityID, backingStore, true);
+                backingStore.removeManagementData(entityID);
+            } finally {
+                writeLock.unlock();
+            }
+            entityID = tracker.selectVictim();
+        }
+    }
 
     /** {@inheritDoc} */
     @Override
     protected void doDestroy() {
+        if (persistentCacheWriteBehindManager != null) {
+            // Writes all pending saves.
+            persistentCacheWriteBehindManager.destroy();
+            persistentCacheManager = persistentCacheWriteBehindManager.getDelegate();
+            persistentCacheWriteBehindManager = null;
+        }
+        
         if (cleanupTask != null) {
             cleanupTask.cancel();
         }
@@ -1540,9 +1931,27 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
             MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_PERSISTENT_CACHE_INIT), 
                     gaugePersistentCacheInit);
         }
+        if (gaugePersistentCacheBacklog != null) {
+            MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_PERSISTENT_CACHE_BACKLOG), 
+                    gaugePersistentCacheBacklog);
+        }
+        if (ratioGaugeBackingStoreHitRatio != null) {
+            MetricsSupport.remove(
+                    MetricRegistry.name(getMetricsBaseName(), METRIC_RATIOGAUGE_BACKING_STORE_HIT_RATIO), 
+                    ratioGaugeBackingStoreHitRatio);
+        }
+        if (gaugeNumEvictedEntityIDs != null) {
+            MetricsSupport.remove(MetricRegistry.name(getMetricsBaseName(), METRIC_GAUGE_NUM_EVICTED_ENTITYIDS), 
+                    gaugeNumEvictedEntityIDs);
+        }
         ratioGaugeFetchToResolve = null;
         gaugeNumLiveEntityIDs = null;
         gaugePersistentCacheInit = null;
+        gaugePersistentCacheBacklog = null;
+        ratioGaugeBackingStoreHitRatio = null;
+        gaugeNumEvictedEntityIDs = null;
+        evictionTracker = null;
+        timerPersistentCacheFlush = null;
         timerFetchFromOriginSource = null;
         timerResolve = null;
         
@@ -1912,6 +2321,43 @@ public abstract class AbstractDynamicMetadataResolver extends AbstractMetadataRe
         
     }
     
+    /**
+     * Default function for computing the weight of an {@link EntityDescriptor}, as the number of
+     * {@link XMLObject} instances it comprises.
+     */
+    public static class DefaultEntityWeigher implements Function<EntityDescriptor, Long> {
+
+        /** {@inheritDoc} */
+        @Override
+        public Long apply(final EntityDescriptor input) {
+            if (input == null) {
+                return 0L;
+            }
+            return count(input);
+        }
+        
+        /**
+         * Count an object and its descendants.
+         * 
+         * @param xmlObject the object
+         * 
+         * @return the number of objects
+         */
+        private long count(@Nonnull final XMLObject xmlObject) {
+            long total = 1;
+            final List<XMLObject> children = xmlObject.getOrderedChildren();
+            if (children != null) {
+                for (final XMLObject child : children) {
+                    if (child != null) {
+                        total += count(child);
+                    }
+                }
+            }
+            return total;
+        }
+        
+    }
+    
     /**
      * Class used to track metrics related to the initialization from the persistent cache.
      */
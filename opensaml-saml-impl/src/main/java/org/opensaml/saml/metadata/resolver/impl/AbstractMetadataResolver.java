@@ -20,6 +20,7 @@ package org.opensaml.saml.metadata.resolver.impl;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -29,10 +30,13 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
 
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
@@ -47,30 +51,50 @@ import net.shibboleth.utilities.java.support.xml.QNameSupport;
 
 import org.opensaml.core.criterion.SatisfyAnyCriterion;
 import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLRuntimeException;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallerFactory;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.InterningPool;
+import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.metadata.criteria.entity.EvaluableEntityDescriptorCriterion;
 import org.opensaml.saml.metadata.criteria.entity.impl.EntityDescriptorCriterionPredicateRegistry;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
 import org.opensaml.saml.saml2.common.SAML2Support;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeValue;
+import org.opensaml.saml.saml2.metadata.Endpoint;
 import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.NameIDFormat;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
 /** An abstract, base, implementation of a metadata provider. */
 public abstract class AbstractMetadataResolver extends AbstractIdentifiableInitializableComponent implements
         MetadataResolver {
 
+    /** Names of the attributes and elements whose values are interned by default. */
+    @Nonnull public static final Set<QName> DEFAULT_INTERNED_VALUE_NAMES = ImmutableSet.of(
+            new QName(Endpoint.BINDING_ATTRIB_NAME),
+            new QName(RoleDescriptor.PROTOCOL_ENUMERATION_ATTRIB_NAME),
+            new QName(Attribute.NAME_ATTTRIB_NAME),
+            new QName(Attribute.NAME_FORMAT_ATTRIB_NAME),
+            new QName(Attribute.FRIENDLY_NAME_ATTRIB_NAME),
+            NameIDFormat.DEFAULT_ELEMENT_NAME,
+            AttributeValue.DEFAULT_ELEMENT_NAME);
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractMetadataResolver.class);
 
@@ -109,12 +133,19 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
      * Defaults to true. */
     private boolean useDefaultPredicateRegistry;
     
+    /** Flag indicating whether recurring values are interned when metadata is unmarshalled. Defaults to false. */
+    private boolean internValues;
+    
+    /** Names of the attributes and elements whose values are interned. */
+    @Nonnull private Set<QName> internedValueNames;
+    
     /** Constructor. */
     public AbstractMetadataResolver() {
         failFastInitialization = true;
         requireValidMetadata = true;
         unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
         useDefaultPredicateRegistry = true;
+        internedValueNames = DEFAULT_INTERNED_VALUE_NAMES;
     }
 
     /** {@inheritDoc} */
@@ -255,6 +286,64 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
         useDefaultPredicateRegistry = flag;
     }
 
+    /**
+     * Get whether recurring values are interned when metadata is unmarshalled.
+     * 
+     * @return true if values are interned, false if not
+     */
+    public boolean isInternValues() {
+        return internValues;
+    }
+
+    /**
+     * Set whether recurring values are interned when metadata is unmarshalled.
+     * 
+     * <p>
+     * If true, an {@link InterningPool} is in effect while each metadata document is unmarshalled, so that
+     * element and type names, namespaces, and the values of the attributes and elements named by
+     * {@link #getInternedValueNames()}, are shared between all the objects of the document.
+     * </p>
+     * 
+     * <p>Defaults to false.</p>
+     * 
+     * @param flag true if values should be interned, false if not
+     */
+    public void setInternValues(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        internValues = flag;
+    }
+
+    /**
+     * Get the names of the attributes and elements whose values are interned.
+     * 
+     * <p>Defaults to {@link #DEFAULT_INTERNED_VALUE_NAMES}.</p>
+     * 
+     * @return the names of the attributes and elements whose values are interned
+     */
+    @Nonnull @NonnullElements @Unmodifiable @NotLive public Set<QName> getInternedValueNames() {
+        return internedValueNames;
+    }
+
+    /**
+     * Set the names of the attributes and elements whose values are interned.
+     * 
+     * <p>Unqualified attributes should be named with no namespace.</p>
+     * 
+     * <p>Defaults to {@link #DEFAULT_INTERNED_VALUE_NAMES}.</p>
+     * 
+     * @param names the names of the attributes and elements whose values are interned
+     */
+    public void setInternedValueNames(@Nullable @NonnullElements final Collection<QName> names) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        if (names == null) {
+            internedValueNames = Collections.emptySet();
+        } else {
+            internedValueNames = ImmutableSet.copyOf(Iterables.filter(names, Predicates.notNull()));
+        }
+    }
+
     /** {@inheritDoc} */
     @Override @Nullable public EntityDescriptor resolveSingle(final CriteriaSet criteria) throws ResolverException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
@@ -333,6 +422,7 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
     @Nonnull protected XMLObject unmarshallMetadata(@Nonnull final InputStream metadataInput)
             throws UnmarshallingException {
 
+        final InterningPool pool = isInternValues() ? InterningPool.open(getInternedValueNames()) : null;
         try {
             if (parser == null) {
                 throw new UnmarshallingException("ParserPool is null, can't parse input stream");
@@ -354,6 +444,11 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
         } catch (final Exception e) {
             throw new UnmarshallingException(e);
         } finally {
+            if (pool != null) {
+                log.debug("{} Interned {} distinct values, replacing {} duplicates", getLogPrefix(), pool.getSize(),
+                        pool.getReuseCount());
+                pool.close();
+            }
             try {
                 metadataInput.close();
             } catch (final IOException e2) {
@@ -380,6 +475,22 @@ public abstract class AbstractMetadataResolver extends AbstractIdentifiableIniti
         }
     }
 
+    /**
+     * Expand any content of the metadata whose expansion was deferred when it was unmarshalled, so that reading
+     * the metadata concurrently once it has been made available does not modify it.
+     * 
+     * @param metadata the metadata
+     * 
+     * @throws FilterException thrown if deferred content of the metadata can not be expanded
+     */
+    protected void expandDeferredContent(@Nullable final XMLObject metadata) throws FilterException {
+        try {
+            XMLObjectSupport.expandDeferredContent(metadata);
+        } catch (final XMLRuntimeException e) {
+            throw new FilterException("Unable to expand deferred metadata content", e);
+        }
+    }
+
     /**
      * Releases the DOM representation from the metadata object.
      * 
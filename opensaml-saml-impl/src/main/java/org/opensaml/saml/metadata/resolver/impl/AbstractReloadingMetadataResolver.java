@@ -21,6 +21,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -36,6 +38,7 @@ import org.opensaml.saml.metadata.resolver.ExtendedRefreshableMetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.FilterException;
 import org.opensaml.saml.saml2.common.SAML2Support;
 import org.opensaml.saml.saml2.common.TimeBoundSAMLObject;
+import org.opensaml.security.crypto.JCAConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -60,6 +63,12 @@ import net.shibboleth.utilities.java.support.resolver.ResolverException;
  * cache actually expires, allowing a some room for error and recovery. Assuming the factor is not exceedingly close to
  * 1.0 and a min refresh delay that is not overly large, this refresh will likely occur a few times before the cache
  * expires.
+ * 
+ * <p>
+ * If {@link #isSkipUnchangedMetadata()} is true, a digest of each fetched document is compared with that of the
+ * currently effective metadata, and a document whose content has not changed is treated as though the source had
+ * reported no change, avoiding the cost of unmarshalling and filtering it again.
+ * </p>
  */
 public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMetadataResolver 
         implements ExtendedRefreshableMetadataResolver {
@@ -113,6 +122,15 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
     /** Internal flag for tracking success during the refresh operation. */
     private boolean trackRefreshSuccess;
     
+    /** Flag indicating whether fetched metadata whose content has not changed should be skipped. */
+    private boolean skipUnchangedMetadata;
+    
+    /** Digest of the raw bytes of the currently effective metadata. */
+    @Nullable private byte[] metadataDigest;
+    
+    /** Digest of the raw bytes of the metadata being processed in the current refresh cycle. */
+    @Nullable private byte[] pendingMetadataDigest;
+    
 
 
     /** Constructor. */
@@ -191,6 +209,33 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         return nextRefresh;
     }
 
+    /**
+     * Get the flag indicating whether fetched metadata whose content digest matches that of the currently effective
+     * metadata should be skipped, rather than unmarshalled, filtered and processed again.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if unchanged metadata should be skipped, false otherwise
+     */
+    public boolean isSkipUnchangedMetadata() {
+        return skipUnchangedMetadata;
+    }
+
+    /**
+     * Set the flag indicating whether fetched metadata whose content digest matches that of the currently effective
+     * metadata should be skipped, rather than unmarshalled, filtered and processed again.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if unchanged metadata should be skipped, false otherwise
+     */
+    public void setSkipUnchangedMetadata(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        skipUnchangedMetadata = flag;
+    }
+
     /**
      * Gets the impending expiration warning threshold used at refresh time.
      * 
@@ -300,6 +345,8 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         lastRefresh = null;
         lastUpdate = null;
         nextRefresh = null;
+        metadataDigest = null;
+        pendingMetadataDigest = null;
         
         super.doDestroy();
     }
@@ -353,6 +400,10 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
             if (mdBytes == null) {
                 log.info("{} Metadata from '{}' has not changed since last refresh", getLogPrefix(), mdId);
                 processCachedMetadata(mdId, now);
+            } else if (isUnchangedMetadata(mdBytes)) {
+                log.info("{} Metadata content from '{}' is unchanged since last update, skipping processing",
+                        getLogPrefix(), mdId);
+                processCachedMetadata(mdId, now);
             } else {
                 log.debug("{} Processing new metadata from '{}'", getLogPrefix(), mdId);
                 processNewMetadata(mdId, now, mdBytes);
@@ -388,6 +439,34 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         }
     }
 
+    /**
+     * Determine whether fetched metadata has the same content as the currently effective metadata.
+     * 
+     * <p>The digest computed here is retained, and becomes the digest of the effective metadata if the fetched
+     * metadata is successfully processed.</p>
+     *
+     * @param metadataBytes raw bytes of the fetched metadata
+     * 
+     * @return true if skipping of unchanged metadata is enabled and the content has not changed, false otherwise
+     */
+    private boolean isUnchangedMetadata(@Nonnull final byte[] metadataBytes) {
+        pendingMetadataDigest = null;
+        if (!skipUnchangedMetadata) {
+            return false;
+        }
+
+        try {
+            pendingMetadataDigest = MessageDigest.getInstance(JCAConstants.DIGEST_SHA256).digest(metadataBytes);
+        } catch (final NoSuchAlgorithmException e) {
+            log.warn("{} Digest algorithm '{}' was not available, metadata will be processed", getLogPrefix(),
+                    JCAConstants.DIGEST_SHA256, e);
+            return false;
+        }
+
+        return metadataDigest != null && MessageDigest.isEqual(metadataDigest, pendingMetadataDigest)
+                && getBackingStore().getCachedOriginalMetadata() != null;
+    }
+
     /**
      * Check cached metadata for expiration or pending expiration and log appropriately.
      *
@@ -557,6 +636,7 @@ public abstract class AbstractReloadingMetadataResolver extends AbstractBatchMet
         // This is where the new processed data becomes effective. Exceptions thrown prior to this point
         // therefore result in the old data being kept effective.
         setBackingStore(newBackingStore);
+        metadataDigest = pendingMetadataDigest;
         
         lastUpdate = refreshStart;
         trackRefreshSuccess = true;
@@ -19,22 +19,39 @@ package org.opensaml.saml.metadata.resolver.impl;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.shibboleth.utilities.java.support.annotation.Duration;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiedInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
 import org.joda.time.DateTime;
+import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.saml.metadata.resolver.ClearableMetadataResolver;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
@@ -51,19 +68,68 @@ import com.google.common.collect.Iterables;
 /**
  * A {@link MetadataResolver} implementation that answers requests by composing the answers of child
  * {@link MetadataResolver}s.
+ * 
+ * <p>
+ * Optionally, the child which answered a request for a given entityID may be remembered in a routing cache,
+ * and asked first on subsequent requests for that entityID, rather than after all the children preceding it.
+ * Routes expire after {@link #getRoutingCacheDuration()}, and all routes are discarded when the last refresh
+ * time of any {@link RefreshableMetadataResolver} child changes, or this resolver is refreshed or cleared.
+ * </p>
+ * 
+ * <p>
+ * Also optionally, the children may be asked in parallel, in which case the answer is that of the first child,
+ * in order, with a non-empty result among those which answer within {@link #getParallelResolutionTimeout()}.
+ * </p>
  */
 public class CompositeMetadataResolver extends AbstractIdentifiedInitializableComponent implements MetadataResolver,
         RefreshableMetadataResolver, ClearableMetadataResolver {
 
+    /** Default maximum number of routing cache entries: {@value}. */
+    public static final int DEFAULT_ROUTING_CACHE_MAX_ENTRIES = 10000;
+
+    /** Default routing cache entry lifetime in milliseconds: {@value}. */
+    public static final long DEFAULT_ROUTING_CACHE_DURATION = 10 * 60 * 1000L;
+
+    /** Default parallel resolution timeout in milliseconds: {@value}. */
+    public static final long DEFAULT_PARALLEL_RESOLUTION_TIMEOUT = 5 * 1000L;
+
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(CompositeMetadataResolver.class);
 
     /** Resolvers composed by this resolver. */
     @Nonnull @NonnullElements private List<MetadataResolver> resolvers;
 
+    /** Whether the child answering for each entityID is remembered. */
+    private boolean routingCacheEnabled;
+
+    /** Maximum number of routing cache entries. */
+    @Positive private int routingCacheMaxEntries;
+
+    /** Routing cache entry lifetime in milliseconds. */
+    @Duration @Positive private long routingCacheDuration;
+
+    /** Whether children are asked in parallel. */
+    private boolean parallelResolution;
+
+    /** Time in milliseconds to wait for children asked in parallel. */
+    @Duration @Positive private long parallelResolutionTimeout;
+
+    /** Routes by entityID, in access order. Also the monitor for {@link #childRefreshTimes}. */
+    @Nullable private Map<String, Route> routes;
+
+    /** Last refresh time of each refreshable child, as of the last check. */
+    @Nonnull private final Map<MetadataResolver, DateTime> childRefreshTimes;
+
+    /** Executor for parallel resolution. */
+    @Nullable private ExecutorService executor;
+
     /** Constructor. */
     public CompositeMetadataResolver() {
         resolvers = Collections.emptyList();
+        routingCacheMaxEntries = DEFAULT_ROUTING_CACHE_MAX_ENTRIES;
+        routingCacheDuration = DEFAULT_ROUTING_CACHE_DURATION;
+        parallelResolutionTimeout = DEFAULT_PARALLEL_RESOLUTION_TIMEOUT;
+        childRefreshTimes = new HashMap<>();
     }
 
     /**
@@ -95,6 +161,134 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
         resolvers = new ArrayList<>(Collections2.filter(newResolvers, Predicates.notNull()));
     }
 
+    /**
+     * Get whether the child which answers a request for an entityID is remembered and asked first on
+     * subsequent requests for that entityID.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if the routing cache is enabled
+     */
+    public boolean isRoutingCacheEnabled() {
+        return routingCacheEnabled;
+    }
+
+    /**
+     * Set whether the child which answers a request for an entityID is remembered and asked first on
+     * subsequent requests for that entityID.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if the routing cache should be enabled
+     */
+    public void setRoutingCacheEnabled(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        routingCacheEnabled = flag;
+    }
+
+    /**
+     * Get the maximum number of entityIDs held in the routing cache.
+     * 
+     * <p>Defaults to: {@value #DEFAULT_ROUTING_CACHE_MAX_ENTRIES}.</p>
+     * 
+     * @return the maximum number of entries
+     */
+    @Positive public int getRoutingCacheMaxEntries() {
+        return routingCacheMaxEntries;
+    }
+
+    /**
+     * Set the maximum number of entityIDs held in the routing cache.
+     * 
+     * <p>Defaults to: {@value #DEFAULT_ROUTING_CACHE_MAX_ENTRIES}.</p>
+     * 
+     * @param max the maximum number of entries
+     */
+    public void setRoutingCacheMaxEntries(@Positive final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        routingCacheMaxEntries = (int) Constraint.isGreaterThan(0, max, "Maximum entries must be greater than 0");
+    }
+
+    /**
+     * Get the time in milliseconds for which a routing cache entry is used.
+     * 
+     * <p>Defaults to: 10 minutes.</p>
+     * 
+     * @return the routing cache entry lifetime
+     */
+    @Duration @Positive public long getRoutingCacheDuration() {
+        return routingCacheDuration;
+    }
+
+    /**
+     * Set the time in milliseconds for which a routing cache entry is used.
+     * 
+     * <p>Defaults to: 10 minutes.</p>
+     * 
+     * @param duration the routing cache entry lifetime
+     */
+    @Duration public void setRoutingCacheDuration(@Duration @Positive final long duration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        routingCacheDuration = Constraint.isGreaterThan(0, duration, "Duration must be greater than 0");
+    }
+
+    /**
+     * Get whether the children are asked in parallel.
+     * 
+     * <p>
+     * If true, the answer to a request is the result of the first child, in order, with a non-empty result,
+     * among those which answer within {@link #getParallelResolutionTimeout()}. The results of the other
+     * children are not included.
+     * </p>
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if the children are asked in parallel
+     */
+    public boolean isParallelResolution() {
+        return parallelResolution;
+    }
+
+    /**
+     * Set whether the children are asked in parallel.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if the children should be asked in parallel
+     */
+    public void setParallelResolution(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        parallelResolution = flag;
+    }
+
+    /**
+     * Get the time in milliseconds to wait for the children when they are asked in parallel.
+     * 
+     * <p>Defaults to: 5 seconds.</p>
+     * 
+     * @return the parallel resolution timeout
+     */
+    @Duration @Positive public long getParallelResolutionTimeout() {
+        return parallelResolutionTimeout;
+    }
+
+    /**
+     * Set the time in milliseconds to wait for the children when they are asked in parallel.
+     * 
+     * <p>Defaults to: 5 seconds.</p>
+     * 
+     * @param timeout the parallel resolution timeout
+     */
+    @Duration public void setParallelResolutionTimeout(@Duration @Positive final long timeout) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        parallelResolutionTimeout = Constraint.isGreaterThan(0, timeout, "Timeout must be greater than 0");
+    }
+
     /** {@inheritDoc} */
     @Override public boolean isRequireValidMetadata() {
         log.warn("Attempt to access unsupported requireValidMetadata property on ChainingMetadataResolver");
@@ -120,16 +314,79 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
     /** {@inheritDoc} */
     @Override public Iterable<EntityDescriptor> resolve(@Nullable final CriteriaSet criteria) throws ResolverException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
-        return new CompositeMetadataResolverIterable(resolvers, criteria);
+
+        final String entityID = getEntityID(criteria);
+        final MetadataResolver routed = getRoute(entityID);
+        if (parallelResolution) {
+            if (routed != null) {
+                try {
+                    final List<EntityDescriptor> result = resolveFromChild(routed, criteria);
+                    if (!result.isEmpty()) {
+                        return result;
+                    }
+                } catch (final ResolverException e) {
+                    log.debug("Error encountered attempting to fetch results from resolver", e);
+                }
+                removeRoute(entityID, routed);
+            }
+            final ChildResult result = resolveInParallel(criteria);
+            if (result == null) {
+                return Collections.emptyList();
+            }
+            putRoute(entityID, result.resolver);
+            return result.descriptors;
+        }
+
+        final List<MetadataResolver> ordered;
+        if (routed != null) {
+            ordered = new ArrayList<>(resolvers.size());
+            ordered.add(routed);
+            for (final MetadataResolver resolver : resolvers) {
+                if (resolver != routed) {
+                    ordered.add(resolver);
+                }
+            }
+        } else {
+            ordered = resolvers;
+        }
+        return new CompositeMetadataResolverIterable(ordered, criteria, entityID != null ? this : null, entityID);
     }
 
     /** {@inheritDoc} */
     @Override public EntityDescriptor resolveSingle(@Nullable final CriteriaSet criteria) throws ResolverException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        final String entityID = getEntityID(criteria);
+        final MetadataResolver routed = getRoute(entityID);
+        if (routed != null) {
+            try {
+                final EntityDescriptor metadata = routed.resolveSingle(criteria);
+                if (metadata != null) {
+                    return metadata;
+                }
+            } catch (final ResolverException e) {
+                log.debug("Error encountered attempting to fetch results from resolver", e);
+            }
+            removeRoute(entityID, routed);
+        }
+
+        if (parallelResolution) {
+            final ChildResult result = resolveInParallel(criteria);
+            if (result == null) {
+                return null;
+            }
+            putRoute(entityID, result.resolver);
+            return result.descriptors.get(0);
+        }
+
         EntityDescriptor metadata = null;
         for (final MetadataResolver resolver : resolvers) {
+            if (resolver == routed) {
+                continue;
+            }
             metadata = resolver.resolveSingle(criteria);
             if (metadata != null) {
+                putRoute(entityID, resolver);
                 return metadata;
             }
         }
@@ -144,17 +401,235 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
             log.warn("CompositeMetadataResolver was not configured with any member MetadataResolvers");
             resolvers = Collections.emptyList();
         }
+
+        if (routingCacheEnabled) {
+            routes = new LinkedHashMap<String, Route>(16, 0.75f, true) {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 5150209563487384251L;
+
+                /** {@inheritDoc} */
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Route> eldest) {
+                    return size() > routingCacheMaxEntries;
+                }
+            };
+        }
+
+        if (parallelResolution && !resolvers.isEmpty()) {
+            executor = Executors.newCachedThreadPool(new ResolverThreadFactory(getId()));
+        }
     }
 
     /** {@inheritDoc} */
     @Override protected void doDestroy() {
         super.doDestroy();
 
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        routes = null;
         resolvers = Collections.emptyList();
     }
+
+    /**
+     * Get the entityID requested by the criteria, if any.
+     * 
+     * @param criteria the criteria
+     * 
+     * @return the entityID, or null
+     */
+    @Nullable private String getEntityID(@Nullable final CriteriaSet criteria) {
+        if (routes == null || criteria == null) {
+            return null;
+        }
+        final EntityIdCriterion criterion = criteria.get(EntityIdCriterion.class);
+        return criterion != null ? criterion.getEntityId() : null;
+    }
+
+    /**
+     * Get the child which last answered for an entityID, if it is still current.
+     * 
+     * @param entityID the entityID, or null
+     * 
+     * @return the child, or null
+     */
+    @Nullable private MetadataResolver getRoute(@Nullable final String entityID) {
+        final Map<String, Route> currentRoutes = routes;
+        if (entityID == null || currentRoutes == null) {
+            return null;
+        }
+
+        synchronized (currentRoutes) {
+            checkChildRefreshTimes(currentRoutes);
+            final Route route = currentRoutes.get(entityID);
+            if (route == null) {
+                return null;
+            }
+            if (route.expiration <= System.currentTimeMillis()) {
+                currentRoutes.remove(entityID);
+                return null;
+            }
+            log.trace("{} Routing request for '{}' to resolver '{}'", getLogPrefix(), entityID,
+                    route.resolver.getId());
+            return route.resolver;
+        }
+    }
+
+    /**
+     * Remember the child which answered for an entityID.
+     * 
+     * @param entityID the entityID, or null
+     * @param resolver the child
+     */
+    private void putRoute(@Nullable final String entityID, @Nonnull final MetadataResolver resolver) {
+        final Map<String, Route> currentRoutes = routes;
+        if (entityID == null || currentRoutes == null) {
+            return;
+        }
+
+        synchronized (currentRoutes) {
+            currentRoutes.put(entityID, new Route(resolver, System.currentTimeMillis() + routingCacheDuration));
+        }
+    }
+
+    /**
+     * Forget the child which answered for an entityID, if it has not since changed.
+     * 
+     * @param entityID the entityID
+     * @param resolver the child
+     */
+    private void removeRoute(@Nonnull final String entityID, @Nonnull final MetadataResolver resolver) {
+        final Map<String, Route> currentRoutes = routes;
+        if (currentRoutes == null) {
+            return;
+        }
+
+        synchronized (currentRoutes) {
+            final Route route = currentRoutes.get(entityID);
+            if (route != null && route.resolver == resolver) {
+                currentRoutes.remove(entityID);
+            }
+        }
+    }
+
+    /** Forget all routes. */
+    private void clearRoutes() {
+        final Map<String, Route> currentRoutes = routes;
+        if (currentRoutes != null) {
+            synchronized (currentRoutes) {
+                currentRoutes.clear();
+            }
+        }
+    }
+
+    /**
+     * Discard all routes if the last refresh time of any refreshable child has changed.
+     * 
+     * @param currentRoutes the routes, whose monitor must be held
+     */
+    private void checkChildRefreshTimes(@Nonnull final Map<String, Route> currentRoutes) {
+        boolean changed = false;
+        for (final MetadataResolver resolver : resolvers) {
+            if (resolver instanceof RefreshableMetadataResolver) {
+                final DateTime lastRefresh = ((RefreshableMetadataResolver) resolver).getLastRefresh();
+                if (!Objects.equals(childRefreshTimes.put(resolver, lastRefresh), lastRefresh)) {
+                    changed = true;
+                }
+            }
+        }
+        if (changed && !currentRoutes.isEmpty()) {
+            log.debug("{} A resolver has been refreshed, discarding routing cache", getLogPrefix());
+            currentRoutes.clear();
+        }
+    }
+
+    /**
+     * Ask a child for the metadata matching the criteria.
+     * 
+     * @param resolver the child
+     * @param criteria the criteria
+     * 
+     * @return the child's results
+     * 
+     * @throws ResolverException if the child raises an error
+     */
+    @Nonnull @NonnullElements private List<EntityDescriptor> resolveFromChild(
+            @Nonnull final MetadataResolver resolver, @Nullable final CriteriaSet criteria) throws ResolverException {
+        final Iterable<EntityDescriptor> result = resolver.resolve(criteria);
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        return ImmutableList.copyOf(Iterables.filter(result, Predicates.notNull()));
+    }
+
+    /**
+     * Ask all children in parallel for the metadata matching the criteria, and return the results of the first
+     * child, in order, which has a non-empty result, ignoring children which have not answered before the
+     * timeout.
+     * 
+     * @param criteria the criteria
+     * 
+     * @return the results and the child which produced them, or null if no child produced any
+     */
+    @Nullable private ChildResult resolveInParallel(@Nullable final CriteriaSet criteria) {
+        final ExecutorService currentExecutor = executor;
+        if (currentExecutor == null) {
+            return null;
+        }
+
+        final List<Future<List<EntityDescriptor>>> futures = new ArrayList<>(resolvers.size());
+        for (final MetadataResolver resolver : resolvers) {
+            futures.add(currentExecutor.submit(new Callable<List<EntityDescriptor>>() {
+                /** {@inheritDoc} */
+                public List<EntityDescriptor> call() throws ResolverException {
+                    return resolveFromChild(resolver, criteria);
+                }
+            }));
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(parallelResolutionTimeout);
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                final MetadataResolver resolver = resolvers.get(i);
+                try {
+                    final List<EntityDescriptor> result =
+                            futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (!result.isEmpty()) {
+                        return new ChildResult(resolver, result);
+                    }
+                } catch (final ExecutionException e) {
+                    log.debug("{} Error encountered attempting to fetch results from resolver '{}'",
+                            getLogPrefix(), resolver.getId(), e.getCause());
+                } catch (final TimeoutException e) {
+                    log.warn("{} Resolver '{}' did not answer within {} ms, ignoring it", getLogPrefix(),
+                            resolver.getId(), parallelResolutionTimeout);
+                }
+            }
+        } catch (final InterruptedException e) {
+            log.warn("{} Interrupted while waiting for resolvers", getLogPrefix());
+            Thread.currentThread().interrupt();
+        } finally {
+            for (final Future<List<EntityDescriptor>> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get a prefix for log messages.
+     * 
+     * @return the log prefix
+     */
+    @Nonnull private String getLogPrefix() {
+        return String.format("Metadata Resolver %s %s:", getClass().getSimpleName(), getId());
+    }
     
     /** {@inheritDoc} */
     public void clear() throws ResolverException {
+        clearRoutes();
         for (final MetadataResolver resolver : resolvers) {
             if (resolver instanceof ClearableMetadataResolver) {
                 ((ClearableMetadataResolver) resolver).clear();
@@ -164,6 +639,12 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
 
     /** {@inheritDoc} */
     public void clear(String entityID) throws ResolverException {
+        final Map<String, Route> currentRoutes = routes;
+        if (currentRoutes != null) {
+            synchronized (currentRoutes) {
+                currentRoutes.remove(entityID);
+            }
+        }
         for (final MetadataResolver resolver : resolvers) {
             if (resolver instanceof ClearableMetadataResolver) {
                 ((ClearableMetadataResolver) resolver).clear(entityID);
@@ -173,6 +654,7 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
 
     /** {@inheritDoc} */
     @Override public void refresh() throws ResolverException {
+        clearRoutes();
         for (final MetadataResolver resolver : resolvers) {
             if (resolver instanceof RefreshableMetadataResolver) {
                 ((RefreshableMetadataResolver) resolver).refresh();
@@ -212,6 +694,76 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
         return ret;
     }
 
+    /** The child which last answered for an entityID. */
+    private static final class Route {
+
+        /** The child. */
+        @Nonnull private final MetadataResolver resolver;
+
+        /** Time in milliseconds since the epoch after which the route is not used. */
+        private final long expiration;
+
+        /**
+         * Constructor.
+         * 
+         * @param child the child
+         * @param expires time after which the route is not used
+         */
+        Route(@Nonnull final MetadataResolver child, final long expires) {
+            resolver = child;
+            expiration = expires;
+        }
+    }
+
+    /** The results of a child, and the child. */
+    private static final class ChildResult {
+
+        /** The child. */
+        @Nonnull private final MetadataResolver resolver;
+
+        /** The results. */
+        @Nonnull @NonnullElements private final List<EntityDescriptor> descriptors;
+
+        /**
+         * Constructor.
+         * 
+         * @param child the child
+         * @param results the results
+         */
+        ChildResult(@Nonnull final MetadataResolver child,
+                @Nonnull @NonnullElements final List<EntityDescriptor> results) {
+            resolver = child;
+            descriptors = results;
+        }
+    }
+
+    /** Factory for the daemon threads used for parallel resolution. */
+    private static final class ResolverThreadFactory implements ThreadFactory {
+
+        /** Thread name prefix. */
+        @Nonnull private final String namePrefix;
+
+        /** Thread counter. */
+        @Nonnull private final AtomicInteger count;
+
+        /**
+         * Constructor.
+         * 
+         * @param id the resolver ID
+         */
+        ResolverThreadFactory(@Nullable final String id) {
+            namePrefix = "CompositeMetadataResolver " + id + " worker ";
+            count = new AtomicInteger();
+        }
+
+        /** {@inheritDoc} */
+        public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /**
      * {@link Iterable} implementation that provides an {@link Iterator} that lazily iterates over each composed
      * resolver.
@@ -227,19 +779,30 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
         /** Criteria being search for. */
         private final CriteriaSet criteria;
 
+        /** Resolver to notify of the first resolver with results, if any. */
+        @Nullable private final CompositeMetadataResolver router;
+
+        /** The entityID requested, if any. */
+        @Nullable private final String entityID;
+
         /**
          * Constructor.
          * 
          * @param composedResolvers resolvers from which results will be pulled
          * @param metadataCritiera criteria for the resolver query
+         * @param routingResolver resolver to notify of the first resolver with results, or null
+         * @param requestedEntityID the entityID requested, or null
          */
         public CompositeMetadataResolverIterable(final List<MetadataResolver> composedResolvers,
-                final CriteriaSet metadataCritiera) {
+                final CriteriaSet metadataCritiera, @Nullable final CompositeMetadataResolver routingResolver,
+                @Nullable final String requestedEntityID) {
             resolvers =
                     ImmutableList.<MetadataResolver> builder()
                             .addAll(Iterables.filter(composedResolvers, Predicates.notNull())).build();
 
             criteria = metadataCritiera;
+            router = routingResolver;
+            entityID = requestedEntityID;
         }
 
         /** {@inheritDoc} */
@@ -259,9 +822,13 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
             /** Iterator over the results of the current resolver. */
             private Iterator<EntityDescriptor> currentResolverMetadataIterator;
 
+            /** Whether a resolver with results has been found. */
+            private boolean routed;
+
             /** Constructor. */
             public CompositeMetadataResolverIterator() {
                 resolverIterator = resolvers.iterator();
+                currentResolverMetadataIterator = Collections.emptyIterator();
             }
 
             /** {@inheritDoc} */
@@ -296,6 +863,10 @@ public class CompositeMetadataResolver extends AbstractIdentifiedInitializableCo
                         currentResolver = resolverIterator.next();
                         currentResolverMetadataIterator = currentResolver.resolve(criteria).iterator();
                         if (currentResolverMetadataIterator.hasNext()) {
+                            if (!routed && router != null) {
+                                router.putRoute(entityID, currentResolver);
+                            }
+                            routed = true;
                             return;
                         }
                     }
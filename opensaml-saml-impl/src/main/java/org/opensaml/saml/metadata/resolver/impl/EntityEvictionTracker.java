@@ -0,0 +1,373 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Tracks the entities held by a dynamic metadata resolver's backing store, and selects entities for eviction
+ * when a maximum entity count or total weight is exceeded.
+ *
+ * <p>
+ * Entities are kept in least-recently-used order. With the {@link Policy#LRU} policy the least recently used
+ * entity is always the one evicted. With the {@link Policy#TINY_LFU} policy, the access frequency of every
+ * entityID requested is also estimated, in a small fixed-size sketch which is periodically aged, and an entity
+ * added since the limits were last enforced is only admitted in preference to the least recently used entity
+ * if it has been requested more often. This keeps a burst of requests for many distinct, rarely repeated
+ * entityIDs from displacing the entities in regular use.
+ * </p>
+ */
+@ThreadSafe
+public final class EntityEvictionTracker {
+
+    /** Entity selection policies. */
+    public enum Policy {
+        /** Evict the least recently used entity. */
+        LRU,
+
+        /** Admit a new entity only if it has been requested more often than the least recently used entity. */
+        TINY_LFU,
+    }
+
+    /** Maximum number of entities, or 0 if unlimited. */
+    @NonNegative private final int maxEntities;
+
+    /** Maximum total weight, or 0 if unlimited. */
+    @NonNegative private final long maxWeight;
+
+    /** The selection policy. */
+    @Nonnull private final Policy policy;
+
+    /** Weight of each entity, in access order. */
+    @Nonnull private final Map<String, Long> entities;
+
+    /** Entities added since the limits were last satisfied, in order of addition. */
+    @Nonnull private final Set<String> candidates;
+
+    /** Frequency sketch, or null for the LRU policy. */
+    @Nullable private final FrequencySketch sketch;
+
+    /** Total weight of the tracked entities. */
+    private long totalWeight;
+
+    /** Number of entities evicted. */
+    private long evictionCount;
+
+    /**
+     * Constructor.
+     *
+     * @param maxCount maximum number of entities, or 0 if unlimited
+     * @param maxTotalWeight maximum total weight, or 0 if unlimited
+     * @param selectionPolicy the selection policy
+     */
+    public EntityEvictionTracker(@NonNegative final int maxCount, @NonNegative final long maxTotalWeight,
+            @Nonnull final Policy selectionPolicy) {
+        maxEntities = (int) Constraint.isGreaterThanOrEqual(0, maxCount, "Maximum entities must be >= 0");
+        maxWeight = Constraint.isGreaterThanOrEqual(0, maxTotalWeight, "Maximum weight must be >= 0");
+        policy = Constraint.isNotNull(selectionPolicy, "Policy cannot be null");
+        Constraint.isTrue(maxEntities > 0 || maxWeight > 0, "At least one limit must be set");
+
+        entities = new LinkedHashMap<>(16, 0.75f, true);
+        candidates = new LinkedHashSet<>();
+        if (policy == Policy.TINY_LFU) {
+            sketch = new FrequencySketch(maxEntities > 0 ? maxEntities : 1024);
+        } else {
+            sketch = null;
+        }
+    }
+
+    /**
+     * Get the maximum number of entities.
+     *
+     * @return the maximum number of entities, or 0 if unlimited
+     */
+    @NonNegative public int getMaxEntities() {
+        return maxEntities;
+    }
+
+    /**
+     * Get the maximum total weight.
+     *
+     * @return the maximum total weight, or 0 if unlimited
+     */
+    @NonNegative public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Get the selection policy.
+     *
+     * @return the policy
+     */
+    @Nonnull public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Get the number of entities tracked.
+     *
+     * @return the number of entities
+     */
+    public synchronized int getSize() {
+        return entities.size();
+    }
+
+    /**
+     * Get the total weight of the entities tracked.
+     *
+     * @return the total weight
+     */
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Get the number of entities evicted.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Record a request for an entityID, whether or not the entity is tracked.
+     *
+     * @param entityID the entityID
+     */
+    public synchronized void recordAccess(@Nonnull @NotEmpty final String entityID) {
+        if (sketch != null) {
+            sketch.increment(entityID);
+        }
+        // Access-ordered map, so this marks the entity as most recently used.
+        entities.get(entityID);
+    }
+
+    /**
+     * Start tracking an entity, or update the weight of one already tracked.
+     *
+     * @param entityID the entityID
+     * @param weight the entity weight
+     */
+    public synchronized void add(@Nonnull @NotEmpty final String entityID, @NonNegative final long weight) {
+        final Long previous = entities.put(entityID, weight);
+        if (previous != null) {
+            totalWeight -= previous;
+        } else {
+            candidates.add(entityID);
+        }
+        totalWeight += weight;
+    }
+
+    /**
+     * Stop tracking an entity which has been removed for reasons other than eviction.
+     *
+     * @param entityID the entityID
+     */
+    public synchronized void remove(@Nonnull @NotEmpty final String entityID) {
+        final Long weight = entities.remove(entityID);
+        if (weight != null) {
+            totalWeight -= weight;
+        }
+        candidates.remove(entityID);
+    }
+
+    /**
+     * Stop tracking an entity which has been evicted.
+     *
+     * @param entityID the entityID
+     */
+    public synchronized void evicted(@Nonnull @NotEmpty final String entityID) {
+        if (entities.containsKey(entityID)) {
+            remove(entityID);
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Keep an entity which was selected for eviction but could not be evicted, treating it as recently used.
+     *
+     * @param entityID the entityID
+     */
+    public synchronized void retain(@Nonnull @NotEmpty final String entityID) {
+        entities.get(entityID);
+        candidates.remove(entityID);
+    }
+
+    /**
+     * Select the next entity to evict.
+     *
+     * <p>
+     * The caller should evict the selected entity and call {@link #evicted(String)}, or call
+     * {@link #retain(String)} if it can not, until this method returns null.
+     * </p>
+     *
+     * @return the entityID to evict, or null if the limits are satisfied
+     */
+    @Nullable public synchronized String selectVictim() {
+        if (!isOverLimit()) {
+            candidates.clear();
+            return null;
+        }
+
+        final String eldest = entities.keySet().iterator().next();
+        if (sketch != null && !candidates.isEmpty()) {
+            String newest = null;
+            final Iterator<String> iterator = candidates.iterator();
+            while (iterator.hasNext()) {
+                newest = iterator.next();
+            }
+            if (!newest.equals(eldest) && sketch.frequency(newest) <= sketch.frequency(eldest)) {
+                return newest;
+            }
+        }
+        return eldest;
+    }
+
+    /**
+     * Get whether either limit is exceeded.
+     *
+     * @return true if a limit is exceeded
+     */
+    private boolean isOverLimit() {
+        return !entities.isEmpty()
+                && ((maxEntities > 0 && entities.size() > maxEntities) || (maxWeight > 0 && totalWeight > maxWeight));
+    }
+
+    /**
+     * Count-min sketch of 4-bit access counters, halved periodically so that old accesses are forgotten.
+     */
+    private static final class FrequencySketch {
+
+        /** Hash seeds, one per row. */
+        private static final int[] SEEDS = {0x97cb3127, 0xc2b2ae35, 0x85ebca6b, 0x27d4eb2f};
+
+        /** Maximum counter value. */
+        private static final int MAX_COUNT = 15;
+
+        /** Counters, one row per seed. */
+        @Nonnull private final byte[][] counters;
+
+        /** Mask applied to hashes to select a counter. */
+        private final int mask;
+
+        /** Number of increments after which the counters are halved. */
+        private final int sampleSize;
+
+        /** Number of increments since the counters were last halved. */
+        private int additions;
+
+        /**
+         * Constructor.
+         *
+         * @param expectedEntries expected number of distinct frequently requested entries
+         */
+        FrequencySketch(final int expectedEntries) {
+            final int width = Integer.highestOneBit(Math.max(16, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+            counters = new byte[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        /**
+         * Increment the estimated frequency of a key.
+         *
+         * @param key the key
+         */
+        void increment(@Nonnull final String key) {
+            final int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int index = index(hash, i);
+                if (counters[i][index] < MAX_COUNT) {
+                    counters[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                halve();
+            }
+        }
+
+        /**
+         * Get the estimated frequency of a key.
+         *
+         * @param key the key
+         *
+         * @return the estimated frequency
+         */
+        int frequency(@Nonnull final String key) {
+            final int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counters[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        /** Halve all counters. */
+        private void halve() {
+            for (final byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >>> 1);
+                }
+            }
+            additions /= 2;
+        }
+
+        /**
+         * Get the counter index for a hash in a given row.
+         *
+         * @param hash the spread hash
+         * @param row the row
+         *
+         * @return the counter index
+         */
+        private int index(final int hash, final int row) {
+            int h = (hash + SEEDS[row]) * SEEDS[row];
+            h ^= h >>> 17;
+            return h & mask;
+        }
+
+        /**
+         * Improve the distribution of a hash code.
+         *
+         * @param hashCode the hash code
+         *
+         * @return the spread hash
+         */
+        private static int spread(final int hashCode) {
+            int h = hashCode * 0x9e3779b9;
+            h ^= h >>> 16;
+            return h;
+        }
+    }
+
+}
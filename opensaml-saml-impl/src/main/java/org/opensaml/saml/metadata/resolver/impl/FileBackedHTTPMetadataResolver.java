@@ -57,6 +57,12 @@ import com.google.common.io.Files;
  * background refresh thread.
  * </p>
  * 
+ * <p>
+ * If {@link #isSkipUnchangedMetadata()} is true, metadata read from the backup file is subject to the same content
+ * digest comparison as metadata fetched via HTTP. In particular, the first HTTP fetch after initializing from the
+ * backup file will not reprocess the metadata, nor rewrite the backup file, if the content is the same.
+ * </p>
+ * 
  */
 public class FileBackedHTTPMetadataResolver extends HTTPMetadataResolver {
 
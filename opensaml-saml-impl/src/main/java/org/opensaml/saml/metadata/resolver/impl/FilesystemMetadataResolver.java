@@ -20,11 +20,22 @@ package org.opensaml.saml.metadata.resolver.impl;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Timer;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
@@ -48,15 +59,40 @@ import org.slf4j.LoggerFactory;
  * 1.0 and a min refresh delay that is not overly large, this refresh will likely occur a few times before the cache
  * expires.
  * 
+ * <p>
+ * If {@link #isWatchForChanges()} is true, the directory containing the metadata file is additionally monitored
+ * with a {@link WatchService}, and the metadata is refreshed once changes to the file have ceased for
+ * {@link #getWatchDebounceDelay()}. Periodic refresh continues as a fallback. Combining this with
+ * {@link #setSkipUnchangedMetadata(boolean)} avoids reprocessing a file which was written without its content
+ * changing.
+ * </p>
  */
 public class FilesystemMetadataResolver extends AbstractReloadingMetadataResolver {
 
+    /** Default delay, in milliseconds, after the last change to a watched file before it is reloaded: {@value}. */
+    public static final long DEFAULT_WATCH_DEBOUNCE_DELAY = 500;
+
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(FilesystemMetadataResolver.class);
 
     /** The metadata file. */
     @Nonnull private File metadataFile;
 
+    /** Flag indicating whether the metadata file is watched for changes. */
+    private boolean watchForChanges;
+
+    /** Delay, in milliseconds, after the last change to a watched file before it is reloaded. */
+    @Duration @Positive private long watchDebounceDelay = DEFAULT_WATCH_DEBOUNCE_DELAY;
+
+    /** Service used to watch the metadata file's directory. */
+    @Nullable private WatchService watchService;
+
+    /** Thread processing watch events. */
+    @Nullable private Thread watchThread;
+
+    /** Flag set when a change to the metadata file has been observed and not yet read. */
+    private volatile boolean changeObserved;
+
     /**
      * Constructor.
      * 
@@ -97,9 +133,123 @@ public class FilesystemMetadataResolver extends AbstractReloadingMetadataResolve
         metadataFile = Constraint.isNotNull(file, "Metadata file cannot be null");
     }
 
+    /**
+     * Get the flag indicating whether the metadata file is watched for changes, in addition to being periodically
+     * refreshed.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @return true if the metadata file is watched, false otherwise
+     */
+    public boolean isWatchForChanges() {
+        return watchForChanges;
+    }
+
+    /**
+     * Set the flag indicating whether the metadata file is watched for changes, in addition to being periodically
+     * refreshed.
+     * 
+     * <p>Defaults to: false.</p>
+     * 
+     * @param flag true if the metadata file should be watched, false otherwise
+     */
+    public void setWatchForChanges(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        watchForChanges = flag;
+    }
+
+    /**
+     * Get the delay, in milliseconds, after the last observed change to a watched file before it is reloaded.
+     * 
+     * <p>Defaults to: {@value #DEFAULT_WATCH_DEBOUNCE_DELAY}ms.</p>
+     * 
+     * @return the debounce delay
+     */
+    @Duration public long getWatchDebounceDelay() {
+        return watchDebounceDelay;
+    }
+
+    /**
+     * Set the delay, in milliseconds, after the last observed change to a watched file before it is reloaded.
+     * 
+     * <p>Defaults to: {@value #DEFAULT_WATCH_DEBOUNCE_DELAY}ms.</p>
+     * 
+     * @param delay the debounce delay
+     */
+    @Duration public void setWatchDebounceDelay(@Duration @Positive final long delay) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Watch debounce delay must be greater than 0");
+        }
+        watchDebounceDelay = delay;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void initMetadataResolver() throws ComponentInitializationException {
+        super.initMetadataResolver();
+
+        if (watchForChanges) {
+            startWatching();
+        }
+    }
+
+    /**
+     * Start watching the directory containing the metadata file.
+     * 
+     * <p>Failure to do so is logged, and the resolver falls back to periodic refresh alone.</p>
+     */
+    private void startWatching() {
+        final File directory = metadataFile.getAbsoluteFile().getParentFile();
+        if (directory == null || !directory.isDirectory()) {
+            log.warn("{} Directory of metadata file '{}' does not exist, changes will not be watched",
+                    getLogPrefix(), metadataFile.getAbsolutePath());
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (final IOException e) {
+            log.warn("{} Unable to watch metadata file '{}', relying on periodic refresh", getLogPrefix(),
+                    metadataFile.getAbsolutePath(), e);
+            stopWatching();
+            return;
+        }
+
+        watchThread = new Thread(new WatchTask(watchService, metadataFile.getAbsoluteFile().toPath().getFileName()),
+                "FilesystemMetadataResolver watcher for " + metadataFile.getAbsolutePath());
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.debug("{} Watching metadata file '{}' for changes", getLogPrefix(), metadataFile.getAbsolutePath());
+    }
+
+    /** Stop watching the directory containing the metadata file. */
+    private void stopWatching() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (final IOException e) {
+                log.debug("{} Error closing watch service", getLogPrefix(), e);
+            }
+            watchService = null;
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doDestroy() {
+        stopWatching();
         metadataFile = null;
           
         super.doDestroy();
@@ -118,7 +268,10 @@ public class FilesystemMetadataResolver extends AbstractReloadingMetadataResolve
             validateMetadataFile(metadataFile);
             final DateTime metadataUpdateTime =
                      new DateTime(metadataFile.lastModified(), ISOChronology.getInstanceUTC());
-            if (getLastRefresh() == null || getLastUpdate() == null || metadataUpdateTime.isAfter(getLastUpdate())) {
+            // The file's timestamp may be too coarse to reflect a change which the watcher has observed.
+            if (changeObserved || getLastRefresh() == null || getLastUpdate() == null
+                    || metadataUpdateTime.isAfter(getLastUpdate())) {
+                changeObserved = false;
                 return inputstreamToByteArray(new FileInputStream(metadataFile));
             }
 
@@ -151,4 +304,92 @@ public class FilesystemMetadataResolver extends AbstractReloadingMetadataResolve
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Task which waits for changes to the metadata file and refreshes once they have ceased for the debounce
+     * delay.
+     */
+    private class WatchTask implements Runnable {
+
+        /** The watch service. */
+        @Nonnull private final WatchService service;
+
+        /** Name of the metadata file within the watched directory. */
+        @Nonnull private final Path fileName;
+
+        /**
+         * Constructor.
+         *
+         * @param watchService the watch service
+         * @param name name of the metadata file within the watched directory
+         */
+        WatchTask(@Nonnull final WatchService watchService, @Nonnull final Path name) {
+            service = watchService;
+            fileName = name;
+        }
+
+        /**
+         * {@inheritDoc}
+         * 
+         * <p>
+         * The debounce delay runs from the last event for the metadata file, so events for other files in the
+         * directory do not postpone a pending refresh.
+         * </p>
+         */
+        @Override public void run() {
+            boolean pending = false;
+            long deadline = 0;
+            try {
+                while (!isDestroyed()) {
+                    final long remaining = pending ? deadline - System.currentTimeMillis() : 0;
+                    final WatchKey key;
+                    if (!pending) {
+                        key = service.take();
+                    } else if (remaining > 0) {
+                        key = service.poll(remaining, TimeUnit.MILLISECONDS);
+                    } else {
+                        key = null;
+                    }
+                    if (key != null) {
+                        if (isMetadataFileEvent(key)) {
+                            pending = true;
+                            deadline = System.currentTimeMillis() + watchDebounceDelay;
+                        }
+                    } else {
+                        pending = false;
+                        changeObserved = true;
+                        log.debug("{} Observed change to metadata file, refreshing", getLogPrefix());
+                        try {
+                            refresh();
+                        } catch (final ResolverException e) {
+                            // nothing to do, error message already logged by refresh()
+                        }
+                    }
+                }
+            } catch (final InterruptedException | ClosedWatchServiceException e) {
+                // resolver has been destroyed
+            }
+        }
+
+        /**
+         * Consume the events for a key and determine whether any concern the metadata file.
+         *
+         * @param key the signalled key
+         *
+         * @return true if the metadata file may have changed, false otherwise
+         */
+        private boolean isMetadataFileEvent(@Nonnull final WatchKey key) {
+            boolean relevant = false;
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                    relevant = true;
+                }
+            }
+            if (!key.reset()) {
+                log.warn("{} Metadata file directory is no longer accessible, relying on periodic refresh",
+                        getLogPrefix());
+            }
+            return relevant;
+        }
+    }
+
+}
@@ -0,0 +1,885 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.apache.commons.codec.binary.Hex;
+import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.binding.artifact.SAMLArtifact;
+import org.opensaml.saml.criterion.ArtifactCriterion;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndexKey;
+import org.opensaml.saml.metadata.resolver.index.impl.SAMLArtifactMetadataIndex;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.security.SecurityException;
+import org.opensaml.security.crypto.JCAConstants;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.signature.support.SignatureException;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.codec.StringDigester;
+import net.shibboleth.utilities.java.support.codec.StringDigester.OutputFormat;
+import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+
+/**
+ * A cache of serialized, optionally signed, per-entity metadata documents built from the entities held by an
+ * {@link AbstractBatchMetadataResolver}, for use by a responder implementing the Metadata Query Protocol.
+ * 
+ * <p>
+ * Each document is a copy of an {@link EntityDescriptor} from the resolver's current backing store, with
+ * its validUntil limited to the configured validity duration and, if configured, its cacheDuration replaced.
+ * If signing parameters are supplied, the copy is then signed. The documents are built when {@link #refresh()}
+ * is called, the signatures being computed concurrently if an executor is supplied, and are also rebuilt
+ * automatically the first time a lookup observes that the resolver has loaded new metadata.
+ * </p>
+ * 
+ * <p>
+ * At most {@link #getMaxEntries()} documents are retained. Those for the first entities in document order are
+ * built on refresh, and any others are built on demand, the least recently used being evicted. If a storage
+ * directory is configured, the documents are written there and memory-mapped rather than held on the heap.
+ * If the resolver holds its entities in a {@link SerializedEntityStore}, only their entityIDs are held here, and
+ * entities are materialized through the store when their documents are built.
+ * </p>
+ * 
+ * <p>
+ * Documents may be looked up by entityID, by the MDQ <code>{sha1}</code> transformed identifier, or by
+ * the source ID or source location of a SAML artifact as indexed by {@link SAMLArtifactMetadataIndex}.
+ * The content of a document is returned as a read-only view of the cached bytes, without copying.
+ * </p>
+ */
+@ThreadSafe
+public class MetadataQueryResponseCache extends AbstractInitializableComponent {
+    
+    /** Default maximum number of documents: {@value}. */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    
+    /** Default validity duration of a document, in milliseconds: {@value}. */
+    public static final long DEFAULT_VALIDITY_DURATION = 7 * 24 * 60 * 60 * 1000L;
+    
+    /** Prefix of the MDQ transformed identifier based on the SHA-1 digest of the entityID. */
+    @Nonnull @NotEmpty public static final String SHA1_PREFIX = "{sha1}";
+    
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(MetadataQueryResponseCache.class);
+    
+    /** The resolver whose entities are served. */
+    @Nonnull private final AbstractBatchMetadataResolver resolver;
+    
+    /** Digester of entityIDs. */
+    @Nonnull private final StringDigester sha1Digester;
+    
+    /** Generation counter used to name stored documents. */
+    @Nonnull private final AtomicLong generation;
+    
+    /** Optional signing parameters. */
+    @Nullable private SignatureSigningParameters signingParameters;
+    
+    /** Optional executor used to sign documents concurrently. */
+    @Nullable private Executor signingExecutor;
+    
+    /** Index used for artifact lookups. */
+    @Nonnull private MetadataIndex artifactIndex;
+    
+    /** Maximum number of documents retained. */
+    @Positive private int maxEntries;
+    
+    /** Validity duration of a document. */
+    @Duration @Positive private long validityDuration;
+    
+    /** Optional cacheDuration set on each document. */
+    @Duration @Nullable private Long cacheDuration;
+    
+    /** Optional directory in which documents are stored. */
+    @Nullable private File storageDirectory;
+    
+    /** The current snapshot. */
+    @Nullable private volatile Snapshot snapshot;
+    
+    /**
+     * Constructor.
+     *
+     * @param metadataResolver the resolver whose entities are served
+     */
+    public MetadataQueryResponseCache(@Nonnull final AbstractBatchMetadataResolver metadataResolver) {
+        resolver = Constraint.isNotNull(metadataResolver, "Metadata resolver cannot be null");
+        try {
+            sha1Digester = new StringDigester(JCAConstants.DIGEST_SHA1, OutputFormat.HEX_LOWER);
+        } catch (final NoSuchAlgorithmException e) {
+            // SHA-1 is required to be supported on all JREs.
+            throw new IllegalStateException(e);
+        }
+        generation = new AtomicLong();
+        artifactIndex = new SAMLArtifactMetadataIndex();
+        maxEntries = DEFAULT_MAX_ENTRIES;
+        validityDuration = DEFAULT_VALIDITY_DURATION;
+    }
+    
+    /**
+     * Set the parameters used to sign each document.
+     * 
+     * <p>If not set, the documents are not signed.</p>
+     * 
+     * @param parameters the signing parameters
+     */
+    public void setSigningParameters(@Nullable final SignatureSigningParameters parameters) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        signingParameters = parameters;
+    }
+    
+    /**
+     * Set the executor used to sign the documents concurrently on refresh.
+     * 
+     * <p>If not set, the documents are signed one after another on the refreshing thread.</p>
+     * 
+     * @param executor the signing executor
+     */
+    public void setSigningExecutor(@Nullable final Executor executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        signingExecutor = executor;
+    }
+    
+    /**
+     * Set the index used to look up documents by SAML artifact.
+     * 
+     * <p>Defaults to a {@link SAMLArtifactMetadataIndex} with its default indexing functions.</p>
+     * 
+     * @param index the artifact index
+     */
+    public void setArtifactIndex(@Nonnull final MetadataIndex index) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        artifactIndex = Constraint.isNotNull(index, "Artifact index cannot be null");
+    }
+    
+    /**
+     * Get the maximum number of documents retained.
+     * 
+     * @return the maximum number of documents
+     */
+    @Positive public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    /**
+     * Set the maximum number of documents retained.
+     * 
+     * <p>Defaults to: {@value #DEFAULT_MAX_ENTRIES}.</p>
+     * 
+     * @param max the maximum number of documents
+     */
+    public void setMaxEntries(@Positive final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        maxEntries = (int) Constraint.isGreaterThan(0, max, "Maximum entries must be greater than 0");
+    }
+    
+    /**
+     * Set the duration, in milliseconds, after which a document expires. The validUntil of a document is set
+     * to the earlier of this and any validUntil of the entity or its metadata root.
+     * 
+     * <p>Defaults to: {@value #DEFAULT_VALIDITY_DURATION}.</p>
+     * 
+     * @param duration the validity duration
+     */
+    @Duration public void setValidityDuration(@Duration @Positive final long duration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        validityDuration = Constraint.isGreaterThan(0, duration, "Validity duration must be greater than 0");
+    }
+    
+    /**
+     * Set the cacheDuration, in milliseconds, to place on each document.
+     * 
+     * <p>If not set, any cacheDuration of the entity is retained.</p>
+     * 
+     * @param duration the cache duration
+     */
+    @Duration public void setCacheDuration(@Duration @Nullable final Long duration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        if (duration != null) {
+            Constraint.isGreaterThan(0, duration, "Cache duration must be greater than 0");
+        }
+        cacheDuration = duration;
+    }
+    
+    /**
+     * Set the directory in which documents are stored and from which they are memory-mapped.
+     * 
+     * <p>If not set, the documents are held on the heap.</p>
+     * 
+     * @param directory the storage directory
+     */
+    public void setStorageDirectory(@Nullable final File directory) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        
+        storageDirectory = directory;
+    }
+    
+    /**
+     * Get the number of documents currently retained.
+     * 
+     * @return the number of documents
+     */
+    public int getSize() {
+        final Snapshot current = snapshot;
+        if (current == null) {
+            return 0;
+        }
+        synchronized (current.entries) {
+            return current.entries.size();
+        }
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        
+        if (storageDirectory != null) {
+            if (!storageDirectory.isDirectory() && !storageDirectory.mkdirs()) {
+                throw new ComponentInitializationException("Storage directory " + storageDirectory.getAbsolutePath()
+                        + " does not exist and could not be created");
+            }
+            if (!storageDirectory.canWrite()) {
+                throw new ComponentInitializationException("Storage directory " + storageDirectory.getAbsolutePath()
+                        + " is not writable");
+            }
+        }
+    }
+    
+    /**
+     * Rebuild the documents from the resolver's current backing store if it has changed since the last refresh.
+     * 
+     * @throws ResolverException if the documents could not be built
+     */
+    public synchronized void refresh() throws ResolverException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        
+        final AbstractBatchMetadataResolver.BatchEntityBackingStore store = resolver.getBackingStore();
+        final Snapshot previous = snapshot;
+        if (previous != null && previous.store == store) {
+            log.debug("Metadata resolver '{}' has not loaded new metadata, nothing to do", resolver.getId());
+            return;
+        }
+        
+        final SerializedEntityStore serializedStore = store.getSerializedEntityStore();
+        final Snapshot current = new Snapshot(store, serializedStore, resolver.getRootValidUntil());
+        
+        // Entities held serialized are built in batches, so that no more are held here than the store retains.
+        final int batchSize = serializedStore != null ? serializedStore.getMaxMaterialized() : maxEntries;
+        final List<EntityDescriptor> toBuild = new ArrayList<>();
+        int built = 0;
+        for (final EntityDescriptor descriptor : store.getEntityDescriptors()) {
+            final String entityID = StringSupport.trimOrNull(descriptor.getEntityID());
+            if (entityID == null || current.entityIDs.contains(entityID)) {
+                continue;
+            }
+            current.entityIDs.add(entityID);
+            if (serializedStore == null) {
+                current.descriptors.put(entityID, descriptor);
+            }
+            current.digests.put(sha1Digester.apply(entityID), entityID);
+            final Set<MetadataIndexKey> keys = artifactIndex.generateKeys(descriptor);
+            if (keys != null) {
+                for (final MetadataIndexKey key : keys) {
+                    if (!current.artifactKeys.containsKey(key)) {
+                        current.artifactKeys.put(key, entityID);
+                    }
+                }
+            }
+            if (built + toBuild.size() < maxEntries) {
+                toBuild.add(descriptor);
+                if (toBuild.size() >= batchSize) {
+                    built += addEntries(current, toBuild);
+                }
+            }
+        }
+        built += addEntries(current, toBuild);
+        
+        log.debug("Built {} of {} metadata documents for resolver '{}'", built, current.entityIDs.size(),
+                resolver.getId());
+        
+        snapshot = current;
+        if (previous != null) {
+            synchronized (previous.entries) {
+                for (final Entry entry : previous.entries.values()) {
+                    entry.discard();
+                }
+                previous.entries.clear();
+            }
+        }
+    }
+    
+    /**
+     * Build the documents for a list of entities, retain them in a snapshot and clear the list.
+     * 
+     * @param current the snapshot
+     * @param toBuild the entities
+     * 
+     * @return the number of entities in the list
+     * 
+     * @throws ResolverException if the documents could not be signed
+     */
+    private int addEntries(@Nonnull final Snapshot current, @Nonnull final List<EntityDescriptor> toBuild)
+            throws ResolverException {
+        final int count = toBuild.size();
+        if (count > 0) {
+            for (final Entry entry : buildEntries(toBuild, current.rootValidUntil)) {
+                current.entries.put(entry.getEntityID(), entry);
+            }
+            toBuild.clear();
+        }
+        return count;
+    }
+    
+    /**
+     * Get the document for a Metadata Query Protocol identifier, which is either an entityID or a
+     * <code>{sha1}</code> transformed identifier.
+     * 
+     * @param identifier the requested identifier
+     * 
+     * @return the document, or null if the identifier is not known
+     * 
+     * @throws ResolverException if the document could not be built
+     */
+    @Nullable public Entry get(@Nonnull @NotEmpty final String identifier) throws ResolverException {
+        final String trimmed = Constraint.isNotNull(StringSupport.trimOrNull(identifier),
+                "Identifier cannot be null or empty");
+        final Snapshot current = getSnapshot();
+        if (trimmed.startsWith(SHA1_PREFIX)) {
+            final String entityID = current.digests.get(trimmed.substring(SHA1_PREFIX.length()).toLowerCase());
+            return entityID != null ? getEntry(current, entityID) : null;
+        }
+        return getEntry(current, trimmed);
+    }
+    
+    /**
+     * Get the document for the entity which issued a SAML artifact.
+     * 
+     * @param artifact the artifact
+     * 
+     * @return the document, or null if the issuer is not known
+     * 
+     * @throws ResolverException if the document could not be built
+     */
+    @Nullable public Entry get(@Nonnull final SAMLArtifact artifact) throws ResolverException {
+        Constraint.isNotNull(artifact, "Artifact cannot be null");
+        final Snapshot current = getSnapshot();
+        final Set<MetadataIndexKey> keys = artifactIndex.generateKeys(new CriteriaSet(new ArtifactCriterion(artifact)));
+        if (keys != null) {
+            for (final MetadataIndexKey key : keys) {
+                final String entityID = current.artifactKeys.get(key);
+                if (entityID != null) {
+                    return getEntry(current, entityID);
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Get the current snapshot, refreshing it if the resolver has loaded new metadata.
+     * 
+     * @return the current snapshot
+     * 
+     * @throws ResolverException if the documents could not be built
+     */
+    @Nonnull private Snapshot getSnapshot() throws ResolverException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        
+        final Snapshot current = snapshot;
+        if (current != null && current.store == resolver.getBackingStore()) {
+            return current;
+        }
+        refresh();
+        return snapshot;
+    }
+    
+    /**
+     * Get the document for an entity, building it if it is not retained.
+     * 
+     * @param current the current snapshot
+     * @param entityID the entityID
+     * 
+     * @return the document, or null if the entity is not known
+     * 
+     * @throws ResolverException if the document could not be built
+     */
+    @Nullable private Entry getEntry(@Nonnull final Snapshot current, @Nonnull final String entityID)
+            throws ResolverException {
+        synchronized (current.entries) {
+            final Entry entry = current.entries.get(entityID);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        
+        final EntityDescriptor descriptor = getDescriptor(current, entityID);
+        if (descriptor == null) {
+            return null;
+        }
+        
+        // Only one thread builds a given entity's document, any others wait for its result.
+        final FutureTask<Entry> build = new FutureTask<>(new Callable<Entry>() {
+            /** {@inheritDoc} */
+            public Entry call() throws ResolverException {
+                return buildEntry(current, entityID, descriptor);
+            }
+        });
+        final FutureTask<Entry> pending = current.pending.putIfAbsent(entityID, build);
+        if (pending == null) {
+            try {
+                build.run();
+            } finally {
+                current.pending.remove(entityID, build);
+            }
+        }
+        
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return (pending != null ? pending : build).get();
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof ResolverException) {
+                throw (ResolverException) e.getCause();
+            }
+            throw new ResolverException("Unable to build metadata document for " + entityID, e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Get an entity of a snapshot, materializing it through the store's bounded cache if entities are held
+     * serialized.
+     * 
+     * @param current the snapshot
+     * @param entityID the entityID
+     * 
+     * @return the entity, or null if the entity is not known
+     */
+    @Nullable private EntityDescriptor getDescriptor(@Nonnull final Snapshot current,
+            @Nonnull final String entityID) {
+        if (!current.entityIDs.contains(entityID)) {
+            return null;
+        } else if (current.serializedStore == null) {
+            return current.descriptors.get(entityID);
+        }
+        
+        // The first entity with this entityID is the one the snapshot was built from.
+        final List<EntityDescriptor> descriptors = current.serializedStore.lookup(entityID);
+        return descriptors.isEmpty() ? null : descriptors.get(0);
+    }
+    
+    /**
+     * Build and retain the document for an entity which is not retained.
+     * 
+     * @param current the current snapshot
+     * @param entityID the entityID
+     * @param descriptor the entity
+     * 
+     * @return the document
+     * 
+     * @throws ResolverException if the document could not be built
+     */
+    @Nonnull private Entry buildEntry(@Nonnull final Snapshot current, @Nonnull final String entityID,
+            @Nonnull final EntityDescriptor descriptor) throws ResolverException {
+        synchronized (current.entries) {
+            // Another thread may have finished building it since the caller looked.
+            final Entry entry = current.entries.get(entityID);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        
+        log.debug("Building metadata document for '{}' on demand", entityID);
+        final List<EntityDescriptor> toBuild = new ArrayList<>(1);
+        toBuild.add(descriptor);
+        final List<Entry> built = buildEntries(toBuild, current.rootValidUntil);
+        if (built.isEmpty()) {
+            throw new ResolverException("Unable to build metadata document for " + entityID);
+        }
+        
+        final Entry entry = built.get(0);
+        synchronized (current.entries) {
+            final Entry existing = current.entries.get(entityID);
+            if (existing != null) {
+                entry.discard();
+                return existing;
+            }
+            if (snapshot != current) {
+                // Built against a snapshot which has since been replaced, so do not retain it.
+                return entry;
+            }
+            current.entries.put(entityID, entry);
+        }
+        return entry;
+    }
+    
+    /**
+     * Build the documents for a list of entities.
+     * 
+     * <p>Entities which cannot be copied or serialized are logged and skipped.</p>
+     * 
+     * @param descriptors the entities
+     * @param rootValidUntil the validUntil of the metadata root, if any
+     * 
+     * @return the documents
+     * 
+     * @throws ResolverException if the documents could not be signed
+     */
+    @Nonnull private List<Entry> buildEntries(@Nonnull final List<EntityDescriptor> descriptors,
+            @Nullable final DateTime rootValidUntil) throws ResolverException {
+        
+        final DateTime now = new DateTime(ISOChronology.getInstanceUTC());
+        DateTime limit = now.plus(validityDuration);
+        if (rootValidUntil != null && rootValidUntil.isBefore(limit)) {
+            limit = rootValidUntil;
+        }
+        
+        final List<EntityDescriptor> copies = new ArrayList<>(descriptors.size());
+        for (final EntityDescriptor descriptor : descriptors) {
+            try {
+                final EntityDescriptor copy = copy(descriptor);
+                if (copy.getValidUntil() == null || limit.isBefore(copy.getValidUntil())) {
+                    copy.setValidUntil(limit);
+                }
+                if (cacheDuration != null) {
+                    copy.setCacheDuration(cacheDuration);
+                }
+                copy.setSignature(null);
+                copies.add(copy);
+            } catch (final MarshallingException | UnmarshallingException e) {
+                log.error("Unable to copy EntityDescriptor '{}'", descriptor.getEntityID(), e);
+            }
+        }
+        
+        try {
+            if (signingParameters != null) {
+                SignatureSupport.signObjects(copies, signingParameters, signingExecutor);
+            } else {
+                for (final EntityDescriptor copy : copies) {
+                    XMLObjectSupport.marshall(copy);
+                }
+            }
+        } catch (final SecurityException | MarshallingException | SignatureException e) {
+            throw new ResolverException("Unable to sign metadata documents", e);
+        }
+        
+        final List<Entry> entries = new ArrayList<>(copies.size());
+        final long gen = generation.incrementAndGet();
+        for (final EntityDescriptor copy : copies) {
+            try {
+                entries.add(store(copy, now, gen));
+            } catch (final IOException e) {
+                log.error("Unable to store metadata document for '{}'", copy.getEntityID(), e);
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * Copy an entity into a document of its own, without modifying the original.
+     * 
+     * @param descriptor the entity
+     * 
+     * @return the copy
+     * 
+     * @throws MarshallingException if the state of the entity could not be read
+     * @throws UnmarshallingException if the copy could not be built
+     */
+    @Nonnull private EntityDescriptor copy(@Nonnull final EntityDescriptor descriptor)
+            throws MarshallingException, UnmarshallingException {
+        // A structural copy leaves the resolver's shared object, and any DOM it holds, untouched, and declares
+        // on the copy the namespaces its DOM inherited from the enclosing metadata.
+        return XMLObjectSupport.copyXMLObject(descriptor);
+    }
+    
+    /**
+     * Serialize a marshalled entity and store the result.
+     * 
+     * @param copy the marshalled entity
+     * @param now the build time
+     * @param gen the build generation
+     * 
+     * @return the document
+     * 
+     * @throws IOException if the document could not be stored
+     */
+    @Nonnull private Entry store(@Nonnull final EntityDescriptor copy, @Nonnull final DateTime now, final long gen)
+            throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SerializeSupport.writeNode(copy.getDOM(), out);
+        final byte[] bytes = out.toByteArray();
+        
+        final String etag;
+        try {
+            etag = Hex.encodeHexString(MessageDigest.getInstance(JCAConstants.DIGEST_SHA256).digest(bytes));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException("Digest algorithm " + JCAConstants.DIGEST_SHA256 + " was not available", e);
+        }
+        
+        if (storageDirectory == null) {
+            return new Entry(copy.getEntityID(), ByteBuffer.wrap(bytes), copy.getValidUntil(),
+                    copy.getCacheDuration(), now, etag, null);
+        }
+        
+        final File file = new File(storageDirectory, sha1Digester.apply(copy.getEntityID()) + "-" + gen + ".xml");
+        try (final OutputStream fileOut = new FileOutputStream(file)) {
+            fileOut.write(bytes);
+        }
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = raf.getChannel();
+            return new Entry(copy.getEntityID(), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+                    copy.getValidUntil(), copy.getCacheDuration(), now, etag, file);
+        }
+    }
+    
+    /** The documents and lookup tables built from one backing store. */
+    private final class Snapshot {
+        
+        /** The backing store. */
+        @Nonnull private final Object store;
+        
+        /** The validUntil of the metadata root, if any. */
+        @Nullable private final DateTime rootValidUntil;
+        
+        /** The store of serialized entities, if entities are held serialized. */
+        @Nullable private final SerializedEntityStore serializedStore;
+        
+        /** The entityIDs of the entities. */
+        @Nonnull private final Set<String> entityIDs;
+        
+        /** Entities keyed by entityID, unless entities are held serialized. */
+        @Nonnull private final Map<String, EntityDescriptor> descriptors;
+        
+        /** EntityIDs keyed by lower-case hex SHA-1 digest. */
+        @Nonnull private final Map<String, String> digests;
+        
+        /** EntityIDs keyed by artifact index key. */
+        @Nonnull private final Map<MetadataIndexKey, String> artifactKeys;
+        
+        /** Retained documents keyed by entityID, in access order. */
+        @Nonnull private final Map<String, Entry> entries;
+        
+        /** Documents being built on demand, keyed by entityID. */
+        @Nonnull private final ConcurrentMap<String, FutureTask<Entry>> pending;
+        
+        /**
+         * Constructor.
+         *
+         * @param backingStore the backing store
+         * @param entityStore the store of serialized entities, if entities are held serialized
+         * @param validUntil the validUntil of the metadata root, if any
+         */
+        Snapshot(@Nonnull final Object backingStore, @Nullable final SerializedEntityStore entityStore,
+                @Nullable final DateTime validUntil) {
+            store = backingStore;
+            serializedStore = entityStore;
+            rootValidUntil = validUntil;
+            entityIDs = new HashSet<>();
+            descriptors = new HashMap<>();
+            digests = new HashMap<>();
+            artifactKeys = new HashMap<>();
+            pending = new ConcurrentHashMap<>();
+            entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                /** Serial version UID. */
+                private static final long serialVersionUID = 4210463870211356453L;
+                
+                /** {@inheritDoc} */
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                    if (size() > maxEntries) {
+                        eldest.getValue().discard();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+    
+    /** A serialized metadata document and its caching information. */
+    public static final class Entry {
+        
+        /** The entityID. */
+        @Nonnull private final String entityID;
+        
+        /** The document content. */
+        @Nonnull private final ByteBuffer content;
+        
+        /** The document's validUntil. */
+        @Nullable private final DateTime validUntil;
+        
+        /** The document's cacheDuration. */
+        @Nullable private final Long cacheDuration;
+        
+        /** The time the document was built. */
+        @Nonnull private final DateTime lastModified;
+        
+        /** The entity tag of the document. */
+        @Nonnull private final String etag;
+        
+        /** The file holding the document, if stored on disk. */
+        @Nullable private final File file;
+        
+        /**
+         * Constructor.
+         *
+         * @param id the entityID
+         * @param bytes the document content
+         * @param expiration the document's validUntil
+         * @param duration the document's cacheDuration
+         * @param built the time the document was built
+         * @param tag the entity tag of the document
+         * @param storage the file holding the document, if stored on disk
+         */
+        Entry(@Nonnull final String id, @Nonnull final ByteBuffer bytes, @Nullable final DateTime expiration,
+                @Nullable final Long duration, @Nonnull final DateTime built, @Nonnull final String tag,
+                @Nullable final File storage) {
+            entityID = id;
+            content = bytes.asReadOnlyBuffer();
+            validUntil = expiration;
+            cacheDuration = duration;
+            lastModified = built;
+            etag = tag;
+            file = storage;
+        }
+        
+        /**
+         * Get the entityID.
+         * 
+         * @return the entityID
+         */
+        @Nonnull public String getEntityID() {
+            return entityID;
+        }
+        
+        /**
+         * Get the document content.
+         * 
+         * <p>Each call returns a new read-only view of the same bytes, positioned at the start.</p>
+         * 
+         * @return the document content
+         */
+        @Nonnull public ByteBuffer getContent() {
+            return content.duplicate();
+        }
+        
+        /**
+         * Get the document's validUntil.
+         * 
+         * @return the validUntil
+         */
+        @Nullable public DateTime getValidUntil() {
+            return validUntil;
+        }
+        
+        /**
+         * Get the document's cacheDuration, in milliseconds.
+         * 
+         * @return the cacheDuration
+         */
+        @Nullable public Long getCacheDuration() {
+            return cacheDuration;
+        }
+        
+        /**
+         * Get the time the document was built.
+         * 
+         * @return the build time
+         */
+        @Nonnull public DateTime getLastModified() {
+            return lastModified;
+        }
+        
+        /**
+         * Get the entity tag of the document, the hex-encoded SHA-256 digest of its content.
+         * 
+         * @return the entity tag
+         */
+        @Nonnull public String getETag() {
+            return etag;
+        }
+        
+        /**
+         * Delete the file holding the document, if any. Existing views of a memory-mapped document remain valid.
+         */
+        void discard() {
+            if (file != null && !file.delete()) {
+                LoggerFactory.getLogger(MetadataQueryResponseCache.class).debug(
+                        "Unable to delete stored metadata document {}", file.getAbsolutePath());
+            }
+        }
+    }
+    
+}
@@ -34,6 +34,7 @@ import org.opensaml.saml.metadata.criteria.role.EvaluableRoleDescriptorCriterion
 import org.opensaml.saml.metadata.criteria.role.impl.RoleDescriptorCriterionPredicateRegistry;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.RoleDescriptorResolver;
+import org.opensaml.saml.metadata.support.RoleDescriptorTable;
 import org.opensaml.saml.saml2.common.IsTimeboundSAMLObjectValidPredicate;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.RoleDescriptor;
@@ -308,6 +309,10 @@ public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializ
      * the specified role and protocol criteria.
      * 
      * <p>
+     * The matching roles of each entity are obtained from its {@link RoleDescriptorTable}.
+     * </p>
+     * 
+     * <p>
      * This method should only be called if {@link #haveRoleCriteria(CriteriaSet)} evaluates to true.
      * </p>
      * 
@@ -323,15 +328,15 @@ public class PredicateRoleDescriptorResolver extends AbstractIdentifiedInitializ
                 "EntityRoleCriterion was not supplied");
         
         final ProtocolCriterion protocolCriterion = criteria.get(ProtocolCriterion.class);
+        final String protocol = protocolCriterion != null ? protocolCriterion.getProtocol() : null;
         
         final ArrayList<Iterable<RoleDescriptor>> aggregate = new ArrayList<>();
         for (final EntityDescriptor entityDescriptor : entityDescriptors) {
-            if (protocolCriterion != null) {
-                aggregate.add(entityDescriptor.getRoleDescriptors(roleCriterion.getRole(), 
-                        protocolCriterion.getProtocol()));
-            } else {
-                aggregate.add(entityDescriptor.getRoleDescriptors(roleCriterion.getRole()));
-            }
+            aggregate.add(RoleDescriptorTable.get(entityDescriptor).getRoleDescriptors(roleCriterion.getRole(),
+                    protocol));
+        }
+        if (aggregate.size() == 1) {
+            return aggregate.get(0);
         }
         return Iterables.concat(aggregate);
     }
@@ -0,0 +1,449 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLRuntimeException;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.impl.CredentialPreResolutionFilter;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.impl.MetadataIndexManager;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Collections2;
+import com.google.common.collect.Iterators;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.xml.NamespaceSupport;
+import net.shibboleth.utilities.java.support.xml.ParserPool;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import net.shibboleth.utilities.java.support.xml.XMLParserException;
+
+/**
+ * A store of {@link EntityDescriptor}s held as serialized documents outside of the Java heap, and materialized
+ * on demand.
+ * 
+ * <p>
+ * Each entity added is serialized and its bytes are appended to direct {@link ByteBuffer} chunks. Only the
+ * location of each entity's bytes, its entityID and its secondary index keys are retained on the heap, along
+ * with a reference to its parent, if any.
+ * </p>
+ * 
+ * <p>
+ * A materialized entity is detached: its parent is set to the group which originally contained it, so that group
+ * membership and validity are evaluated as before, but it is not one of that group's children, and the group's
+ * ID index does not cover it. Materialized entities, and the groups they share, must be treated as read-only,
+ * since a change to an entity would also invalidate cached state held by the shared groups.
+ * </p>
+ * 
+ * <p>
+ * Object metadata is not serialized. Filters which hold their results there, such as
+ * {@link CredentialPreResolutionFilter}, may be supplied to be applied again to each entity when it is
+ * materialized. Their entity callbacks must not modify the entity's structure or remove it.
+ * </p>
+ * 
+ * <p>
+ * Entities are unmarshalled when they are looked up, and at most {@link #getMaxMaterialized()} of them are
+ * retained, the least recently used being evicted. An evicted entity is unmarshalled again the next time it
+ * is needed, so callers should not rely on object identity, or on object metadata, across lookups. Any
+ * content whose expansion is deferred by the unmarshaller is expanded before a materialized entity is retained.
+ * </p>
+ * 
+ * <p>
+ * All entities must be added before the store is made available for lookups.
+ * </p>
+ */
+@ThreadSafe
+public class SerializedEntityStore implements Iterable<EntityDescriptor> {
+
+    /** Default maximum number of materialized entities retained: {@value}. */
+    public static final int DEFAULT_MAX_MATERIALIZED = 1000;
+
+    /** Minimum size of each storage chunk: {@value}. */
+    public static final int CHUNK_SIZE = 1024 * 1024;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(SerializedEntityStore.class);
+
+    /** Parser pool used to parse stored entities. */
+    @Nonnull private final ParserPool parserPool;
+
+    /** Maximum number of materialized entities retained. */
+    @Positive private final int maxMaterialized;
+
+    /** Records of the stored entities, in the order they were added. */
+    @Nonnull private final List<Record> records;
+
+    /** Records of the stored entities, keyed by entityID. */
+    @Nonnull private final Map<String, List<Record>> indexedRecords;
+
+    /** Manager for secondary indexes, which hold entityIDs. */
+    @Nonnull private final MetadataIndexManager<String> secondaryIndexManager;
+
+    /** Filters applied to each entity when it is materialized. */
+    @Nonnull @NonnullElements private final List<EntityCallbackMetadataFilter> materializationFilters;
+
+    /** Materialized entities, in access order. */
+    @Nonnull private final Map<Record, EntityDescriptor> materialized;
+
+    /** The chunk currently being filled. */
+    @Nullable private ByteBuffer currentChunk;
+
+    /** Total size of the stored entities in bytes. */
+    private long storageSize;
+
+    /**
+     * Constructor.
+     *
+     * @param pool parser pool used to parse stored entities
+     * @param indexes secondary indexes for which to initialize storage
+     * @param max maximum number of materialized entities to retain
+     */
+    public SerializedEntityStore(@Nonnull final ParserPool pool,
+            @Nullable @NonnullElements @Unmodifiable @NotLive final Set<MetadataIndex> indexes,
+            @Positive final int max) {
+        this(pool, indexes, max, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pool parser pool used to parse stored entities
+     * @param indexes secondary indexes for which to initialize storage
+     * @param max maximum number of materialized entities to retain
+     * @param filters filters whose entity callbacks are applied to each entity when it is materialized
+     */
+    public SerializedEntityStore(@Nonnull final ParserPool pool,
+            @Nullable @NonnullElements @Unmodifiable @NotLive final Set<MetadataIndex> indexes,
+            @Positive final int max,
+            @Nullable @NonnullElements final List<EntityCallbackMetadataFilter> filters) {
+        parserPool = Constraint.isNotNull(pool, "ParserPool cannot be null");
+        maxMaterialized = (int) Constraint.isGreaterThan(0, max, "Maximum materialized entities must be "
+                + "greater than 0");
+        if (filters != null) {
+            materializationFilters = new ArrayList<>(Collections2.filter(filters, Predicates.notNull()));
+        } else {
+            materializationFilters = Collections.emptyList();
+        }
+        records = new ArrayList<>();
+        indexedRecords = new HashMap<>();
+        secondaryIndexManager = new MetadataIndexManager<>(indexes,
+                new MetadataIndexManager.EntityIDExtractionFunction());
+        materialized = new LinkedHashMap<Record, EntityDescriptor>(16, 0.75f, true) {
+            /** Serial version UID. */
+            private static final long serialVersionUID = 6420987326571085349L;
+
+            /** {@inheritDoc} */
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Record, EntityDescriptor> eldest) {
+                return size() > maxMaterialized;
+            }
+        };
+    }
+
+    /**
+     * Get the maximum number of materialized entities retained.
+     * 
+     * @return the maximum number of materialized entities
+     */
+    @Positive public int getMaxMaterialized() {
+        return maxMaterialized;
+    }
+
+    /**
+     * Get the number of entities stored.
+     * 
+     * @return the number of entities
+     */
+    public int getSize() {
+        return records.size();
+    }
+
+    /**
+     * Get the total size of the stored entities in bytes.
+     * 
+     * @return the storage size
+     */
+    public long getStorageSize() {
+        return storageSize;
+    }
+
+    /**
+     * Get the number of materialized entities currently retained.
+     * 
+     * @return the number of materialized entities
+     */
+    public int getMaterializedCount() {
+        synchronized (materialized) {
+            return materialized.size();
+        }
+    }
+
+    /**
+     * Serialize and store an entity, and index it by entityID and by the secondary indexes.
+     * 
+     * <p>
+     * The entity's cached DOM, if any, is serialized, otherwise the entity is marshalled and the resulting DOM
+     * released. Either way the caller should not retain the entity after it has been added.
+     * </p>
+     * 
+     * @param entityDescriptor the entity to store
+     * 
+     * @return true if the entity was stored, false if it could not be serialized
+     */
+    public synchronized boolean add(@Nonnull final EntityDescriptor entityDescriptor) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final Element dom = entityDescriptor.getDOM();
+            if (dom != null) {
+                // The DOM is about to be discarded, so it's fine to declare inherited namespaces on it directly.
+                NamespaceSupport.rootNamespaces(dom);
+                SerializeSupport.writeNode(dom, out);
+            } else {
+                XMLObjectSupport.marshallToOutputStream(entityDescriptor, out);
+                entityDescriptor.releaseDOM();
+                entityDescriptor.releaseChildrenDOM(true);
+            }
+        } catch (final MarshallingException e) {
+            log.error("Unable to serialize EntityDescriptor '{}', it will not be stored",
+                    entityDescriptor.getEntityID(), e);
+            return false;
+        }
+
+        final byte[] bytes = out.toByteArray();
+        if (currentChunk == null || currentChunk.remaining() < bytes.length) {
+            currentChunk = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, bytes.length));
+        }
+        final Record record = new Record(currentChunk, currentChunk.position(), bytes.length,
+                entityDescriptor.getParent());
+        currentChunk.put(bytes);
+        storageSize += bytes.length;
+
+        records.add(record);
+        final String entityID = StringSupport.trimOrNull(entityDescriptor.getEntityID());
+        if (entityID != null) {
+            List<Record> entityRecords = indexedRecords.get(entityID);
+            if (entityRecords == null) {
+                entityRecords = new ArrayList<>(1);
+                indexedRecords.put(entityID, entityRecords);
+            }
+            entityRecords.add(record);
+            secondaryIndexManager.indexEntityDescriptor(entityDescriptor);
+        }
+        return true;
+    }
+
+    /**
+     * Get the entities stored for an entityID, materializing them if necessary.
+     * 
+     * @param entityID the entityID
+     * 
+     * @return the entities, which may be empty
+     */
+    @Nonnull @NonnullElements public List<EntityDescriptor> lookup(@Nonnull @NotEmpty final String entityID) {
+        final List<Record> entityRecords = indexedRecords.get(entityID);
+        if (entityRecords == null) {
+            return Collections.emptyList();
+        }
+
+        final List<EntityDescriptor> descriptors = new ArrayList<>(entityRecords.size());
+        for (final Record record : entityRecords) {
+            final EntityDescriptor descriptor = materialize(record);
+            if (descriptor != null) {
+                descriptors.add(descriptor);
+            }
+        }
+        return descriptors;
+    }
+
+    /**
+     * Resolve the set of entities based on the secondary indexes, materializing them if necessary.
+     * 
+     * @param criteria the criteria set to process
+     * 
+     * @return the entities resolved via indexes, as for {@link MetadataIndexManager#lookupIndexedItems(CriteriaSet)}
+     */
+    @Nonnull @NonnullElements
+    public Optional<Set<EntityDescriptor>> lookupIndexedItems(@Nonnull final CriteriaSet criteria) {
+        final Optional<Set<String>> entityIDs = secondaryIndexManager.lookupIndexedItems(criteria);
+        if (!entityIDs.isPresent()) {
+            return Optional.absent();
+        }
+
+        final Set<EntityDescriptor> descriptors = new HashSet<>();
+        for (final String entityID : entityIDs.get()) {
+            descriptors.addAll(lookup(entityID));
+        }
+        return Optional.of(descriptors);
+    }
+
+    /**
+     * Iterate over all stored entities in the order they were added, materializing each as it is reached.
+     * 
+     * @return an iterator over the stored entities
+     */
+    @Override
+    @Nonnull public Iterator<EntityDescriptor> iterator() {
+        final Iterator<EntityDescriptor> descriptors = Iterators.transform(records.iterator(),
+                new Function<Record, EntityDescriptor>() {
+                    /** {@inheritDoc} */
+                    public EntityDescriptor apply(final Record input) {
+                        return materialize(input);
+                    }
+                });
+        return Iterators.unmodifiableIterator(Iterators.filter(descriptors, Predicates.notNull()));
+    }
+
+    /**
+     * Get the materialized entity for a record, unmarshalling it if it is not retained.
+     * 
+     * @param record the record
+     * 
+     * @return the entity, or null if the stored bytes could not be unmarshalled
+     */
+    @Nullable private EntityDescriptor materialize(@Nonnull final Record record) {
+        synchronized (materialized) {
+            final EntityDescriptor descriptor = materialized.get(record);
+            if (descriptor != null) {
+                return descriptor;
+            }
+        }
+
+        final byte[] bytes = new byte[record.length];
+        final ByteBuffer view = record.chunk.duplicate();
+        view.position(record.offset);
+        view.get(bytes);
+
+        final EntityDescriptor descriptor;
+        try {
+            final XMLObject xmlObject =
+                    XMLObjectSupport.unmarshallFromInputStream(parserPool, new ByteArrayInputStream(bytes));
+            if (!(xmlObject instanceof EntityDescriptor)) {
+                log.error("Stored metadata was not an EntityDescriptor: {}", xmlObject.getElementQName());
+                return null;
+            }
+            descriptor = (EntityDescriptor) xmlObject;
+        } catch (final XMLParserException | UnmarshallingException e) {
+            log.error("Unable to materialize stored EntityDescriptor", e);
+            return null;
+        }
+
+        try {
+            XMLObjectSupport.expandDeferredContent(descriptor);
+        } catch (final XMLRuntimeException e) {
+            log.error("Unable to expand deferred content of stored EntityDescriptor '{}'",
+                    descriptor.getEntityID(), e);
+            return null;
+        }
+        descriptor.releaseDOM();
+        descriptor.releaseChildrenDOM(true);
+        if (record.parent != null) {
+            // Detached: the parent is visible from the entity, but does not list it among its children.
+            descriptor.setParent(record.parent);
+        }
+        
+        final EntitiesDescriptor group =
+                record.parent instanceof EntitiesDescriptor ? (EntitiesDescriptor) record.parent : null;
+        for (final EntityCallbackMetadataFilter filter : materializationFilters) {
+            try {
+                filter.filterEntity(descriptor, group);
+            } catch (final FilterException e) {
+                log.warn("Unable to apply filter {} to materialized EntityDescriptor '{}'",
+                        filter.getClass().getName(), descriptor.getEntityID(), e);
+            }
+        }
+
+        synchronized (materialized) {
+            final EntityDescriptor existing = materialized.get(record);
+            if (existing != null) {
+                return existing;
+            }
+            materialized.put(record, descriptor);
+        }
+        log.trace("Materialized stored EntityDescriptor '{}'", descriptor.getEntityID());
+        return descriptor;
+    }
+
+    /** The location of a stored entity. */
+    private static final class Record {
+
+        /** The chunk holding the entity. */
+        @Nonnull private final ByteBuffer chunk;
+
+        /** The offset of the entity within the chunk. */
+        private final int offset;
+
+        /** The length of the entity. */
+        private final int length;
+
+        /** The entity's original parent, if any. */
+        @Nullable private final XMLObject parent;
+
+        /**
+         * Constructor.
+         *
+         * @param buffer the chunk holding the entity
+         * @param position the offset of the entity within the chunk
+         * @param size the length of the entity
+         * @param parentObject the entity's original parent, if any
+         */
+        Record(@Nonnull final ByteBuffer buffer, final int position, final int size,
+                @Nullable final XMLObject parentObject) {
+            chunk = buffer;
+            offset = position;
+            length = size;
+            parent = parentObject;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.common.AbstractSAMLObjectCopier;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.w3c.dom.Document;
+
+/**
+ * A thread-safe copier for {@link org.opensaml.saml.saml2.core.Attribute} objects.
+ */
+@ThreadSafe
+public class AttributeCopier extends AbstractSAMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        final Attribute original = (Attribute) xmlObject;
+        final Attribute attribute = (Attribute) copy;
+
+        attribute.setName(original.getName());
+        attribute.setNameFormat(original.getNameFormat());
+        attribute.setFriendlyName(original.getFriendlyName());
+        copyAttributeMap(original, attribute);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy,
+            @Nonnull final Document document) throws MarshallingException, UnmarshallingException {
+        final Attribute original = (Attribute) xmlObject;
+
+        copyChildren(original.getAttributeValues(), ((Attribute) copy).getAttributeValues(), document);
+    }
+}
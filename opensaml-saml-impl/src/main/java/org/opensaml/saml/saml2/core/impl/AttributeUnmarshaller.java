@@ -53,11 +53,11 @@ public class AttributeUnmarshaller extends AbstractSAMLObjectUnmarshaller {
 
         if (attribute.getNamespaceURI() == null) {
             if (attribute.getLocalName().equals(Attribute.NAME_ATTTRIB_NAME)) {
-                attrib.setName(attribute.getValue());
+                attrib.setName(getAttributeValue(attribute));
             } else if (attribute.getLocalName().equals(Attribute.NAME_FORMAT_ATTRIB_NAME)) {
-                attrib.setNameFormat(attribute.getValue());
+                attrib.setNameFormat(getAttributeValue(attribute));
             } else if (attribute.getLocalName().equals(Attribute.FRIENDLY_NAME_ATTRIB_NAME)) {
-                attrib.setFriendlyName(attribute.getValue());
+                attrib.setFriendlyName(getAttributeValue(attribute));
             } else {
                 super.processAttribute(samlObject, attribute);
            }
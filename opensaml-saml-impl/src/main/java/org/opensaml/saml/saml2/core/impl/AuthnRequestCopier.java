@@ -0,0 +1,67 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.w3c.dom.Document;
+
+/**
+ * A thread-safe copier for {@link org.opensaml.saml.saml2.core.AuthnRequest} objects.
+ */
+@ThreadSafe
+public class AuthnRequestCopier extends RequestAbstractTypeCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        super.copyAttributes(xmlObject, copy);
+
+        final AuthnRequest original = (AuthnRequest) xmlObject;
+        final AuthnRequest request = (AuthnRequest) copy;
+
+        request.setForceAuthn(copyBooleanValue(original.isForceAuthnXSBoolean()));
+        request.setIsPassive(copyBooleanValue(original.isPassiveXSBoolean()));
+        request.setProtocolBinding(original.getProtocolBinding());
+        request.setAssertionConsumerServiceIndex(original.getAssertionConsumerServiceIndex());
+        request.setAssertionConsumerServiceURL(original.getAssertionConsumerServiceURL());
+        request.setAttributeConsumingServiceIndex(original.getAttributeConsumingServiceIndex());
+        request.setProviderName(original.getProviderName());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy,
+            @Nonnull final Document document) throws MarshallingException, UnmarshallingException {
+        super.copyChildElements(xmlObject, copy, document);
+
+        final AuthnRequest original = (AuthnRequest) xmlObject;
+        final AuthnRequest request = (AuthnRequest) copy;
+
+        request.setSubject(copyChild(original.getSubject(), document));
+        request.setNameIDPolicy(copyChild(original.getNameIDPolicy(), document));
+        request.setConditions(copyChild(original.getConditions(), document));
+        request.setRequestedAuthnContext(copyChild(original.getRequestedAuthnContext(), document));
+        request.setScoping(copyChild(original.getScoping(), document));
+    }
+}
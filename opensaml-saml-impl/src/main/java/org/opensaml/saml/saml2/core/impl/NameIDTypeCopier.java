@@ -0,0 +1,53 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.common.AbstractSAMLObjectCopier;
+import org.opensaml.saml.saml2.core.NameIDType;
+
+/**
+ * A thread-safe copier for objects of the {@link org.opensaml.saml.saml2.core.NameIDType} schema type, such as
+ * {@link org.opensaml.saml.saml2.core.NameID} and {@link org.opensaml.saml.saml2.core.Issuer}.
+ */
+@ThreadSafe
+public class NameIDTypeCopier extends AbstractSAMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        final NameIDType original = (NameIDType) xmlObject;
+        final NameIDType nameID = (NameIDType) copy;
+
+        nameID.setNameQualifier(original.getNameQualifier());
+        nameID.setSPNameQualifier(original.getSPNameQualifier());
+        nameID.setFormat(original.getFormat());
+        nameID.setSPProvidedID(original.getSPProvidedID());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyElementContent(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        final NameIDType original = (NameIDType) xmlObject;
+
+        ((NameIDType) copy).setValue(original.getValue());
+    }
+}
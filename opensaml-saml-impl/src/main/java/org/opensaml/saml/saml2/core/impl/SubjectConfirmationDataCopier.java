@@ -0,0 +1,61 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.common.AbstractSAMLObjectCopier;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+import org.w3c.dom.Document;
+
+/**
+ * A thread-safe copier for {@link org.opensaml.saml.saml2.core.SubjectConfirmationData} objects, including those
+ * of the {@link org.opensaml.saml.saml2.core.KeyInfoConfirmationDataType} schema type, whose key information is
+ * held among their <code>xs:any</code> children.
+ */
+@ThreadSafe
+public class SubjectConfirmationDataCopier extends AbstractSAMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        final SubjectConfirmationData original = (SubjectConfirmationData) xmlObject;
+        final SubjectConfirmationData data = (SubjectConfirmationData) copy;
+
+        data.setNotBefore(original.getNotBefore());
+        data.setNotOnOrAfter(original.getNotOnOrAfter());
+        data.setRecipient(original.getRecipient());
+        data.setInResponseTo(original.getInResponseTo());
+        data.setAddress(original.getAddress());
+        copyAttributeMap(original, data);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy,
+            @Nonnull final Document document) throws MarshallingException, UnmarshallingException {
+        final SubjectConfirmationData original = (SubjectConfirmationData) xmlObject;
+
+        copyChildren(original.getUnknownXMLObjects(), ((SubjectConfirmationData) copy).getUnknownXMLObjects(),
+                document);
+    }
+}
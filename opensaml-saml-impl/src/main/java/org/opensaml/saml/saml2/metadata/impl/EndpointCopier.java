@@ -0,0 +1,63 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.common.AbstractSAMLObjectCopier;
+import org.opensaml.saml.saml2.metadata.Endpoint;
+import org.opensaml.saml.saml2.metadata.IndexedEndpoint;
+import org.w3c.dom.Document;
+
+/**
+ * A thread-safe copier for {@link org.opensaml.saml.saml2.metadata.Endpoint} objects, including
+ * {@link org.opensaml.saml.saml2.metadata.IndexedEndpoint} objects.
+ */
+@ThreadSafe
+public class EndpointCopier extends AbstractSAMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        final Endpoint original = (Endpoint) xmlObject;
+        final Endpoint endpoint = (Endpoint) copy;
+
+        endpoint.setBinding(original.getBinding());
+        endpoint.setLocation(original.getLocation());
+        endpoint.setResponseLocation(original.getResponseLocation());
+        if (original instanceof IndexedEndpoint) {
+            ((IndexedEndpoint) endpoint).setIndex(((IndexedEndpoint) original).getIndex());
+            ((IndexedEndpoint) endpoint).setIsDefault(
+                    copyBooleanValue(((IndexedEndpoint) original).isDefaultXSBoolean()));
+        }
+        copyAttributeMap(original, endpoint);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy,
+            @Nonnull final Document document) throws MarshallingException, UnmarshallingException {
+        final Endpoint original = (Endpoint) xmlObject;
+
+        copyChildren(original.getUnknownXMLObjects(), ((Endpoint) copy).getUnknownXMLObjects(), document);
+    }
+}
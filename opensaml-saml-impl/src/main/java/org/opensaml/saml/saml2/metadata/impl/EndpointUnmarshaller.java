@@ -34,7 +34,7 @@ public class EndpointUnmarshaller extends AbstractSAMLObjectUnmarshaller {
 
         if (attribute.getNamespaceURI() == null) {
             if (attribute.getLocalName().equals(Endpoint.BINDING_ATTRIB_NAME)) {
-                endpoint.setBinding(attribute.getValue());
+                endpoint.setBinding(getAttributeValue(attribute));
             } else if (attribute.getLocalName().equals(Endpoint.LOCATION_ATTRIB_NAME)) {
                 endpoint.setLocation(attribute.getValue());
             } else if (attribute.getLocalName().equals(Endpoint.RESPONSE_LOCATION_ATTRIB_NAME)) {
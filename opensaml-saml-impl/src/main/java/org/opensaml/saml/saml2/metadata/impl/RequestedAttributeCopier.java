@@ -0,0 +1,42 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.saml.saml2.core.impl.AttributeCopier;
+import org.opensaml.saml.saml2.metadata.RequestedAttribute;
+
+/**
+ * A thread-safe copier for {@link org.opensaml.saml.saml2.metadata.RequestedAttribute} objects.
+ */
+@ThreadSafe
+public class RequestedAttributeCopier extends AttributeCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        super.copyAttributes(xmlObject, copy);
+
+        final RequestedAttribute original = (RequestedAttribute) xmlObject;
+
+        ((RequestedAttribute) copy).setIsRequired(copyBooleanValue(original.isRequiredXSBoolean()));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.common.AbstractSAMLObjectCopier;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.w3c.dom.Document;
+
+/**
+ * A thread-safe copier for {@link org.opensaml.saml.saml2.metadata.RoleDescriptor} objects.
+ */
+@ThreadSafe
+public abstract class RoleDescriptorCopier extends AbstractSAMLObjectCopier {
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyAttributes(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy) {
+        final RoleDescriptor original = (RoleDescriptor) xmlObject;
+        final RoleDescriptor descriptor = (RoleDescriptor) copy;
+
+        descriptor.setID(original.getID());
+        descriptor.setValidUntil(original.getValidUntil());
+        descriptor.setCacheDuration(original.getCacheDuration());
+        for (final String protocol : original.getSupportedProtocols()) {
+            descriptor.addSupportedProtocol(protocol);
+        }
+        descriptor.setErrorURL(original.getErrorURL());
+        copyAttributeMap(original, descriptor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void copyChildElements(@Nonnull final XMLObject xmlObject, @Nonnull final XMLObject copy,
+            @Nonnull final Document document) throws MarshallingException, UnmarshallingException {
+        final RoleDescriptor original = (RoleDescriptor) xmlObject;
+        final RoleDescriptor descriptor = (RoleDescriptor) copy;
+
+        copySignature(original, descriptor, document);
+        descriptor.setExtensions(copyChild(original.getExtensions(), document));
+        copyChildren(original.getKeyDescriptors(), descriptor.getKeyDescriptors(), document);
+        descriptor.setOrganization(copyChild(original.getOrganization(), document));
+        copyChildren(original.getContactPersons(), descriptor.getContactPersons(), document);
+    }
+}
@@ -177,7 +177,10 @@ public abstract class RoleDescriptorImpl extends AbstractSignableSAMLObject impl
     /** {@inheritDoc} */
     @Override
     public void removeAllSupportedProtocols() {
-        supportedProtocols.clear();
+        if (!supportedProtocols.isEmpty()) {
+            releaseThisandParentDOM();
+            supportedProtocols.clear();
+        }
     }
 
     /** {@inheritDoc} */
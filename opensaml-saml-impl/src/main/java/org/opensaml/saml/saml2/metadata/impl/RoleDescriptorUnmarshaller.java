@@ -19,12 +19,16 @@ package org.opensaml.saml.saml2.metadata.impl;
 
 import java.util.StringTokenizer;
 
+import javax.xml.namespace.QName;
+
 import net.shibboleth.utilities.java.support.xml.DOMTypeSupport;
+import net.shibboleth.utilities.java.support.xml.QNameSupport;
 
 import org.joda.time.DateTime;
 import org.joda.time.chrono.ISOChronology;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.InterningPool;
 import org.opensaml.saml.common.AbstractSAMLObjectUnmarshaller;
 import org.opensaml.saml.saml2.common.CacheableSAMLObject;
 import org.opensaml.saml.saml2.metadata.Extensions;
@@ -77,9 +81,11 @@ public abstract class RoleDescriptorUnmarshaller extends AbstractSAMLObjectUnmar
             } else if (attribute.getLocalName().equals(CacheableSAMLObject.CACHE_DURATION_ATTRIB_NAME)) {
                 roleDescriptor.setCacheDuration(DOMTypeSupport.durationToLong(attribute.getValue()));
             } else if (attribute.getLocalName().equals(RoleDescriptor.PROTOCOL_ENUMERATION_ATTRIB_NAME)) {
+                final QName attribName = QNameSupport.getNodeQName(attribute);
                 final StringTokenizer protocolTokenizer = new StringTokenizer(attribute.getValue(), " ");
                 while (protocolTokenizer.hasMoreTokens()) {
-                    roleDescriptor.addSupportedProtocol(protocolTokenizer.nextToken());
+                    roleDescriptor.addSupportedProtocol(
+                            InterningPool.internValueIfActive(attribName, protocolTokenizer.nextToken()));
                 }
             } else if (attribute.getLocalName().equals(RoleDescriptor.ERROR_URL_ATTRIB_NAME)) {
                 roleDescriptor.setErrorURL(attribute.getValue());
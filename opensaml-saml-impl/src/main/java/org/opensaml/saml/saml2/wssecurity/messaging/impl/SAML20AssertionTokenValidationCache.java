@@ -0,0 +1,315 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.wssecurity.messaging.impl;
+
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+
+import org.joda.time.DateTime;
+import org.opensaml.saml.common.assertion.AssertionValidationException;
+import org.opensaml.saml.common.assertion.ValidationContext;
+import org.opensaml.saml.common.assertion.ValidationResult;
+import org.opensaml.saml.saml2.assertion.SAML20AssertionValidator;
+import org.opensaml.saml.saml2.assertion.SAML2AssertionValidationParameters;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Conditions;
+import org.opensaml.security.crypto.JCAConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * A bounded, in-memory cache of successful SAML 2.0 Assertion token validation results.
+ *
+ * <p>
+ * An Assertion which has been fully validated by a {@link SAML20AssertionValidator} is remembered under
+ * a key made up of the validator instance, the Assertion ID, a digest of the Assertion's DOM, and the
+ * {@link ValidationContext} static parameters which are not subject confirmation parameters. When the same
+ * Assertion is presented again with an equivalent key, its version, signature and conditions are not
+ * re-evaluated, and only {@link SAML20AssertionValidator#validateSubjectAndStatements(Assertion,
+ * ValidationContext)} is performed, since subject confirmation depends on the request.
+ * </p>
+ *
+ * <p>
+ * Only Assertions whose Conditions carry a NotOnOrAfter and no OneTimeUse are cached, and an entry is
+ * discarded once that NotOnOrAfter has passed. When the cache holds the maximum number of entries,
+ * expired entries are purged and, if no room can be made, the new result is simply not cached.
+ * </p>
+ */
+@ThreadSafe
+public class SAML20AssertionTokenValidationCache {
+
+    /** Default maximum number of entries: {@value}. */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** Prefix of the static parameter names which are excluded from the cache key. */
+    @Nonnull private static final String SC_PARAMETER_PREFIX = SAML2AssertionValidationParameters.STD_PREFIX
+            + SAML2AssertionValidationParameters.SC_INFIX;
+
+    /** Logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(SAML20AssertionTokenValidationCache.class);
+
+    /** The cached entries, mapped to their expiration time in milliseconds. */
+    @Nonnull private final ConcurrentMap<CacheKey, Long> entries;
+
+    /** Maximum number of entries. */
+    @Positive private int maxEntries;
+
+    /** Constructor. */
+    public SAML20AssertionTokenValidationCache() {
+        entries = new ConcurrentHashMap<>();
+        maxEntries = DEFAULT_MAX_ENTRIES;
+    }
+
+    /**
+     * Get the maximum number of entries held by the cache.
+     *
+     * <p>
+     * Defaults to: {@value #DEFAULT_MAX_ENTRIES}.
+     * </p>
+     *
+     * @return the maximum number of entries
+     */
+    @Positive public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Set the maximum number of entries held by the cache.
+     *
+     * <p>
+     * Defaults to: {@value #DEFAULT_MAX_ENTRIES}.
+     * </p>
+     *
+     * @param max the maximum number of entries
+     */
+    public void setMaxEntries(@Positive final int max) {
+        maxEntries = (int) Constraint.isGreaterThan(0, max, "Maximum entries must be greater than 0");
+    }
+
+    /**
+     * Get the current number of entries held by the cache, including any which have expired
+     * but have not yet been purged.
+     *
+     * @return the number of entries
+     */
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Validate the supplied Assertion, using a previously cached result if one is available.
+     *
+     * @param validator the Assertion validator
+     * @param assertion the Assertion being evaluated
+     * @param context the current validation context
+     *
+     * @return the validation result
+     *
+     * @throws AssertionValidationException if there is a fatal error evaluating the validity of the assertion
+     */
+    @Nonnull public ValidationResult validate(@Nonnull final SAML20AssertionValidator validator,
+            @Nonnull final Assertion assertion, @Nonnull final ValidationContext context)
+                    throws AssertionValidationException {
+
+        final DateTime expiration = getCacheExpiration(assertion);
+        if (expiration == null) {
+            return validator.validate(assertion, context);
+        }
+
+        final CacheKey key = buildKey(validator, assertion, context);
+        if (key == null) {
+            return validator.validate(assertion, context);
+        }
+
+        final long now = System.currentTimeMillis();
+        final Long cachedExpiration = entries.get(key);
+        if (cachedExpiration != null) {
+            if (cachedExpiration > now) {
+                log.debug("Assertion '{}' was previously validated, evaluating subject confirmation and statements",
+                        assertion.getID());
+                return validator.validateSubjectAndStatements(assertion, context);
+            }
+            entries.remove(key, cachedExpiration);
+        }
+
+        final ValidationResult result = validator.validate(assertion, context);
+        if (result == ValidationResult.VALID) {
+            store(key, expiration.getMillis(), now);
+        }
+        return result;
+    }
+
+    /** Remove all entries from the cache. */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Get the time at which a cached result for the Assertion must expire.
+     *
+     * @param assertion the Assertion being evaluated
+     *
+     * @return the expiration, or null if the Assertion is not eligible for caching
+     */
+    @Nullable protected DateTime getCacheExpiration(@Nonnull final Assertion assertion) {
+        final Conditions conditions = assertion.getConditions();
+        if (conditions == null || conditions.getNotOnOrAfter() == null) {
+            log.trace("Assertion '{}' has no Conditions NotOnOrAfter, will not be cached", assertion.getID());
+            return null;
+        }
+        if (conditions.getOneTimeUse() != null) {
+            log.trace("Assertion '{}' has a OneTimeUse condition, will not be cached", assertion.getID());
+            return null;
+        }
+        return conditions.getNotOnOrAfter();
+    }
+
+    /**
+     * Build the cache key for the Assertion being evaluated.
+     *
+     * @param validator the Assertion validator
+     * @param assertion the Assertion being evaluated
+     * @param context the current validation context
+     *
+     * @return the cache key, or null if one could not be built
+     */
+    @Nullable protected CacheKey buildKey(@Nonnull final SAML20AssertionValidator validator,
+            @Nonnull final Assertion assertion, @Nonnull final ValidationContext context) {
+
+        final Element dom = assertion.getDOM();
+        if (assertion.getID() == null || dom == null) {
+            log.debug("Assertion had no ID or cached DOM, will not be cached");
+            return null;
+        }
+
+        final byte[] digest;
+        try {
+            final MessageDigest md = MessageDigest.getInstance(JCAConstants.DIGEST_SHA256);
+            SerializeSupport.writeNode(dom, new DigestOutputStream(ByteStreams.nullOutputStream(), md));
+            digest = md.digest();
+        } catch (final NoSuchAlgorithmException e) {
+            log.error("Digest algorithm '{}' was not available", JCAConstants.DIGEST_SHA256, e);
+            return null;
+        }
+
+        final Map<String, Object> parameters = new HashMap<>();
+        for (final Map.Entry<String, Object> entry : context.getStaticParameters().entrySet()) {
+            if (!entry.getKey().startsWith(SC_PARAMETER_PREFIX)) {
+                parameters.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return new CacheKey(validator, assertion.getID(), digest, parameters);
+    }
+
+    /**
+     * Store a successful result, making room if necessary.
+     *
+     * @param key the cache key
+     * @param expiration the entry expiration
+     * @param now the current time
+     */
+    private void store(@Nonnull final CacheKey key, final long expiration, final long now) {
+        if (entries.size() >= maxEntries) {
+            final Iterator<Long> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() <= now) {
+                    iterator.remove();
+                }
+            }
+            if (entries.size() >= maxEntries) {
+                log.debug("Validation cache is full, result will not be cached");
+                return;
+            }
+        }
+        entries.put(key, expiration);
+    }
+
+    /** Key for a cached validation result. */
+    protected static final class CacheKey {
+
+        /** The validator which produced the result. */
+        @Nonnull private final SAML20AssertionValidator validator;
+
+        /** The Assertion ID. */
+        @Nonnull private final String id;
+
+        /** The digest of the Assertion DOM. */
+        @Nonnull private final byte[] digest;
+
+        /** The static parameters which influence signature and condition evaluation. */
+        @Nonnull private final Map<String, Object> parameters;
+
+        /**
+         * Constructor.
+         *
+         * @param assertionValidator the validator which produced the result
+         * @param assertionID the Assertion ID
+         * @param assertionDigest the digest of the Assertion DOM
+         * @param staticParameters the static parameters which influence signature and condition evaluation
+         */
+        CacheKey(@Nonnull final SAML20AssertionValidator assertionValidator, @Nonnull final String assertionID,
+                @Nonnull final byte[] assertionDigest, @Nonnull final Map<String, Object> staticParameters) {
+            validator = assertionValidator;
+            id = assertionID;
+            digest = assertionDigest;
+            parameters = staticParameters;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            return 31 * (31 * id.hashCode() + Arrays.hashCode(digest)) + System.identityHashCode(validator);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+
+            if (obj instanceof CacheKey) {
+                final CacheKey other = (CacheKey) obj;
+                return validator == other.validator && id.equals(other.id) && Arrays.equals(digest, other.digest)
+                        && parameters.equals(other.parameters);
+            }
+
+            return false;
+        }
+    }
+
+}
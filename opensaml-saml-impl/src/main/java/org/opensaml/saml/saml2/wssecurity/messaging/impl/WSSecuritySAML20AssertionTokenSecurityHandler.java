@@ -81,6 +81,9 @@ public class WSSecuritySAML20AssertionTokenSecurityHandler extends AbstractMessa
      * {@link SAML20AssertionTokenValidationInput} instance. */
     @NonnullAfterInit private Function<SAML20AssertionTokenValidationInput, ValidationContext> validationContextBuilder;
     
+    /** Optional cache of successful Assertion validation results. */
+    @Nullable private SAML20AssertionTokenValidationCache validationCache;
+    
     
     /** Constructor. */
     public WSSecuritySAML20AssertionTokenSecurityHandler() {
@@ -210,6 +213,40 @@ public class WSSecuritySAML20AssertionTokenSecurityHandler extends AbstractMessa
         assertionValidatorLookup = function;
     }
 
+    /**
+     * Get the optional cache of successful Assertion validation results.
+     * 
+     * <p>
+     * Defaults to: {@code null}.
+     * </p>
+     * 
+     * @return the validation cache, or null
+     */
+    @Nullable public SAML20AssertionTokenValidationCache getValidationCache() {
+        return validationCache;
+    }
+
+    /**
+     * Set the optional cache of successful Assertion validation results.
+     * 
+     * <p>
+     * If present, an Assertion token which is presented again within its validity period, and which is
+     * evaluated with equivalent signature and condition parameters, undergoes only subject confirmation
+     * and statement validation.
+     * </p>
+     * 
+     * <p>
+     * Defaults to: {@code null}.
+     * </p>
+     * 
+     * @param cache the validation cache, may be null
+     */
+    public void setValidationCache(@Nullable final SAML20AssertionTokenValidationCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        validationCache = cache;
+    }
+
     /** {@inheritDoc} */
     protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
@@ -266,7 +303,12 @@ public class WSSecuritySAML20AssertionTokenSecurityHandler extends AbstractMessa
             final ValidationContext validationContext = buildValidationContext(messageContext, assertion);
             
             try { 
-                final ValidationResult validationResult = validator.validate(assertion, validationContext);
+                final ValidationResult validationResult;
+                if (getValidationCache() != null) {
+                    validationResult = getValidationCache().validate(validator, assertion, validationContext);
+                } else {
+                    validationResult = validator.validate(assertion, validationContext);
+                }
                 final SAML20AssertionToken token = new SAML20AssertionToken(assertion);
                 processResult(validationContext, validationResult, token, messageContext);
                 wsContext.getTokens().add(token);
@@ -296,6 +296,31 @@ public class MetadataCredentialResolver extends AbstractCriteriaFilteringCredent
         return credentials;
     }
 
+    /**
+     * Resolve the credentials of every KeyDescriptor of a role and cache them in the KeyDescriptors' object
+     * metadata, so that subsequent resolution involving the role does not incur the cost of processing
+     * the KeyInfo elements.
+     * 
+     * <p>
+     * KeyDescriptors whose credentials are already cached are left unchanged.
+     * </p>
+     * 
+     * @param roleDescriptor the role descriptor to process
+     * 
+     * @throws ResolverException if there is a problem resolving credentials from a KeyDescriptor's KeyInfo element
+     */
+    public void preResolveCredentials(@Nonnull final RoleDescriptor roleDescriptor) throws ResolverException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        Constraint.isNotNull(roleDescriptor, "RoleDescriptor cannot be null");
+        
+        String entityID = null;
+        if (roleDescriptor.getParent() instanceof EntityDescriptor) {
+            entityID = ((EntityDescriptor)roleDescriptor.getParent()).getEntityID();
+        }
+        
+        processRoleDescriptor(new HashSet<Credential>(), roleDescriptor, entityID, UsageType.UNSPECIFIED);
+    }
+
     /**
      * Process a RoleDescriptor by examing each of its KeyDescriptors.
      * 
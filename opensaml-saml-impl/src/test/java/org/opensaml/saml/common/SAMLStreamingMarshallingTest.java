@@ -0,0 +1,62 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.opensaml.core.xml.Namespace;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml1.core.Assertion;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests streaming marshalling of SAML objects.
+ */
+public class SAMLStreamingMarshallingTest extends XMLObjectBaseTestCase {
+
+    /** SAML object marshallers are used for streaming. */
+    @Test
+    public void testStreamingMarshallerSelection() {
+        final Assertion assertion = (Assertion) unmarshallElement("/org/opensaml/saml/saml1/core/SignedAssertion.xml");
+        Assert.assertTrue(marshallerFactory.getStreamingMarshaller(assertion) instanceof AbstractSAMLObjectMarshaller);
+    }
+
+    /** Non-visible namespaces of a signable object are declared as by DOM marshalling. */
+    @Test
+    public void testNonVisibleNamespaces() throws MarshallingException {
+        final Assertion assertion = (Assertion) unmarshallElement("/org/opensaml/saml/saml1/core/SignedAssertion.xml");
+        assertion.releaseDOM();
+        Assert.assertNotNull(assertion.getSignature().getDOM());
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLObjectSupport.streamToOutputStream(assertion, output);
+
+        Assert.assertTrue(assertion.getNamespaceManager().getNamespaceDeclarations().contains(
+                new Namespace(SignatureConstants.XMLSIG_NS, SignatureConstants.XMLSIG_PREFIX)));
+        final String xml = new String(output.toByteArray(), StandardCharsets.UTF_8);
+        final int start = xml.indexOf("<saml:Assertion");
+        final String startTag = xml.substring(start, xml.indexOf('>', start));
+        Assert.assertTrue(startTag.contains("xmlns:ds=\"" + SignatureConstants.XMLSIG_NS + "\""), startTag);
+    }
+
+}
@@ -37,6 +37,7 @@ import net.shibboleth.utilities.java.support.xml.XMLParserException;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.io.Unmarshaller;
 import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.saml.common.binding.EndpointTable;
 import org.opensaml.saml.common.binding.impl.DefaultEndpointResolver;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.opensaml.saml.criterion.BindingCriterion;
@@ -50,6 +51,8 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 import org.w3c.dom.Document;
 
+import com.google.common.collect.Iterables;
+
 /** Test for {@link DefaultEndpointResolver}. */
 public class DefaultEndpointResolverTest extends XMLObjectBaseTestCase {
 
@@ -235,6 +238,69 @@ public class DefaultEndpointResolverTest extends XMLObjectBaseTestCase {
         Assert.assertEquals(eps.size(), 2);
     }
     
+    /** Requested index is in metadata. */
+    @Test
+    public void testIndexInMetadata() throws UnmarshallingException, ResolverException {
+        endpointCrit.getEndpoint().setLocation(null);
+        endpointCrit.getEndpoint().setBinding(null);
+        endpointCrit.getEndpoint().setIndex(3);
+        final RoleDescriptorCriterion roleCrit =
+                new RoleDescriptorCriterion(loadMetadata("/org/opensaml/saml/common/binding/SPWithEndpoints.xml"));
+        final CriteriaSet crits = new CriteriaSet(endpointCrit, roleCrit);
+        final AssertionConsumerService ep = resolver.resolveSingle(crits);
+        Assert.assertNotNull(ep);
+        Assert.assertEquals(ep.getBinding(), SAMLConstants.SAML2_ARTIFACT_BINDING_URI);
+        Assert.assertEquals(ep.getLocation(), LOCATION_ART.replace("Art2", "Art"));
+    }
+
+    /** Endpoint table is cached with the role and discarded when the role changes. */
+    @Test
+    public void testEndpointTableCaching() throws UnmarshallingException, ResolverException {
+        endpointCrit.getEndpoint().setLocation(null);
+        final SPSSODescriptor role = loadMetadata("/org/opensaml/saml/common/binding/SPWithEndpoints.xml");
+        final CriteriaSet crits = new CriteriaSet(endpointCrit, new RoleDescriptorCriterion(role));
+        Assert.assertEquals(Iterables.size(resolver.resolve(crits)), 2);
+        
+        final EndpointTable table = EndpointTable.get(role);
+        Assert.assertEquals(role.getObjectMetadata().get(EndpointTable.class).size(), 1);
+        Assert.assertSame(EndpointTable.get(role), table);
+        
+        final AssertionConsumerService newEndpoint = (AssertionConsumerService) builderFactory.getBuilderOrThrow(
+                AssertionConsumerService.DEFAULT_ELEMENT_NAME).buildObject(
+                        AssertionConsumerService.DEFAULT_ELEMENT_NAME);
+        newEndpoint.setBinding(SAMLConstants.SAML2_POST_BINDING_URI);
+        newEndpoint.setLocation(LOCATION);
+        newEndpoint.setIndex(5);
+        role.getAssertionConsumerServices().add(newEndpoint);
+        Assert.assertTrue(role.getObjectMetadata().get(EndpointTable.class).isEmpty());
+        
+        Assert.assertEquals(Iterables.size(resolver.resolve(crits)), 3);
+        Assert.assertNotSame(EndpointTable.get(role), table);
+    }
+    
+    /** Endpoint table is discarded when an endpoint changes, even without a cached DOM. */
+    @Test
+    public void testEndpointTableCachingWithoutDOM() throws UnmarshallingException, ResolverException {
+        endpointCrit.getEndpoint().setLocation(null);
+        final SPSSODescriptor role = loadMetadata("/org/opensaml/saml/common/binding/SPWithEndpoints.xml");
+        role.releaseDOM();
+        role.releaseChildrenDOM(true);
+        final CriteriaSet crits = new CriteriaSet(endpointCrit, new RoleDescriptorCriterion(role));
+        Assert.assertEquals(Iterables.size(resolver.resolve(crits)), 2);
+        Assert.assertEquals(resolver.resolveSingle(crits).getLocation(), LOCATION_POST.replace("POST2", "POST"));
+        
+        role.getAssertionConsumerServices().get(2).setBinding(SAMLConstants.SAML2_POST_BINDING_URI);
+        Assert.assertTrue(role.getObjectMetadata().get(EndpointTable.class).isEmpty());
+        Assert.assertEquals(Iterables.size(resolver.resolve(crits)), 3);
+        
+        role.getAssertionConsumerServices().get(1).setIsDefault(true);
+        Assert.assertTrue(role.getObjectMetadata().get(EndpointTable.class).isEmpty());
+        Assert.assertEquals(resolver.resolveSingle(crits).getLocation(), LOCATION_POST);
+        
+        role.getAssertionConsumerServices().get(1).setLocation(LOCATION);
+        Assert.assertEquals(resolver.resolveSingle(crits).getLocation(), LOCATION);
+    }
+    
     @Nonnull private SPSSODescriptor loadMetadata(@Nonnull @NotEmpty final String path) throws UnmarshallingException {
         
         try {
@@ -18,6 +18,8 @@
 package org.opensaml.saml.common.profile.impl;
 
 import java.security.KeyPair;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 
@@ -28,11 +30,14 @@ import org.opensaml.profile.action.EventIds;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.opensaml.saml.saml1.profile.SAML1ActionTestingSupport;
 import org.opensaml.saml.saml2.profile.SAML2ActionTestingSupport;
+import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.CredentialSupport;
 import org.opensaml.security.crypto.KeySupport;
 import org.opensaml.xmlsec.SignatureSigningParameters;
 import org.opensaml.xmlsec.context.SecurityParametersContext;
 import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureValidator;
+import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -133,6 +138,45 @@ public class SignAssertionsTest extends OpenSAMLInitBaseTestCase {
         ActionTestingSupport.assertProceedEvent(prc);
     }
 
+    @Test public void testSignSAML2AssertionsConcurrently() throws Exception {
+        final org.opensaml.saml.saml2.core.Response response =
+                (org.opensaml.saml.saml2.core.Response) prc.getOutboundMessageContext().getMessage();
+        for (int i = 0; i < 4; i++) {
+            final org.opensaml.saml.saml2.core.Assertion assertion = SAML2ActionTestingSupport.buildAssertion();
+            assertion.setID("assertion" + i);
+            response.getAssertions().add(assertion);
+        }
+
+        final SignatureSigningParameters signingParameters = new SignatureSigningParameters();
+        final KeyPair kp = KeySupport.generateKeyPair("RSA", 1024, null);
+        final Credential credential = CredentialSupport.getSimpleCredential(kp.getPublic(), kp.getPrivate());
+        signingParameters.setSigningCredential(credential);
+        signingParameters.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signingParameters.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+        signingParameters.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+
+        final SecurityParametersContext secParamCtx = new SecurityParametersContext();
+        secParamCtx.setSignatureSigningParameters(signingParameters);
+        prc.addSubcontext(secParamCtx);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            action = new SignAssertions();
+            action.setSigningExecutor(executor);
+            action.initialize();
+            
+            action.execute(prc);
+            ActionTestingSupport.assertProceedEvent(prc);
+        } finally {
+            executor.shutdown();
+        }
+        
+        for (final org.opensaml.saml.saml2.core.Assertion assertion : response.getAssertions()) {
+            Assert.assertNotNull(assertion.getSignature());
+            SignatureValidator.validate(assertion.getSignature(), credential);
+        }
+    }
+
     // TODO Test that assertion was signed correctly ?
 
     // TODO Test event id when signing throws an exception.
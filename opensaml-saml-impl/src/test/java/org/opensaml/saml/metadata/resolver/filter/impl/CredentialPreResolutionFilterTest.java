@@ -0,0 +1,140 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.filter.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.saml.common.SAMLTestSupport;
+import org.opensaml.saml.criterion.RoleDescriptorCriterion;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml.security.impl.MetadataCredentialResolver;
+import org.opensaml.security.credential.Credential;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link CredentialPreResolutionFilter}.
+ */
+public class CredentialPreResolutionFilterTest extends XMLObjectBaseTestCase {
+    
+    private static final String METADATA = "/org/opensaml/saml/security/test1-metadata.xml";
+    
+    private MetadataCredentialResolver credentialResolver;
+    
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        credentialResolver = new MetadataCredentialResolver();
+        credentialResolver.setKeyInfoCredentialResolver(SAMLTestSupport.buildBasicInlineKeyInfoResolver());
+        credentialResolver.initialize();
+    }
+    
+    @DataProvider
+    public Object[][] parallelism() {
+        return new Object[][] { {1}, {4}, };
+    }
+    
+    @Test(dataProvider="parallelism")
+    public void testFilter(final int parallelism) throws Exception {
+        final EntitiesDescriptor metadata = unmarshallElement(METADATA);
+        
+        final CredentialPreResolutionFilter filter = new CredentialPreResolutionFilter(credentialResolver);
+        filter.setParallelism(parallelism);
+        Assert.assertSame(filter.filter(metadata), metadata);
+        
+        checkCached(metadata);
+    }
+    
+    @Test(dataProvider="parallelism")
+    public void testFusedChain(final int parallelism) throws Exception {
+        final EntitiesDescriptor metadata = unmarshallElement(METADATA);
+        
+        final MetadataFilterChain chain = new MetadataFilterChain();
+        chain.setFilters(Collections.<MetadataFilter>singletonList(
+                new CredentialPreResolutionFilter(credentialResolver)));
+        chain.setFusedExecution(true);
+        chain.setParallelism(parallelism);
+        Assert.assertSame(chain.filter(metadata), metadata);
+        
+        checkCached(metadata);
+    }
+    
+    @Test
+    public void testSingleEntity() throws Exception {
+        final EntitiesDescriptor metadata = unmarshallElement(METADATA);
+        final EntityDescriptor entity = metadata.getEntityDescriptors().get(1);
+        
+        final CredentialPreResolutionFilter filter = new CredentialPreResolutionFilter(credentialResolver);
+        Assert.assertSame(filter.filter(entity), entity);
+        
+        for (final RoleDescriptor role : entity.getRoleDescriptors()) {
+            for (final KeyDescriptor keyDescriptor : role.getKeyDescriptors()) {
+                Assert.assertFalse(keyDescriptor.getObjectMetadata().get(Credential.class).isEmpty());
+            }
+        }
+        for (final RoleDescriptor role : metadata.getEntityDescriptors().get(0).getRoleDescriptors()) {
+            for (final KeyDescriptor keyDescriptor : role.getKeyDescriptors()) {
+                Assert.assertTrue(keyDescriptor.getObjectMetadata().get(Credential.class).isEmpty());
+            }
+        }
+    }
+    
+    @Test
+    public void testNull() throws Exception {
+        Assert.assertNull(new CredentialPreResolutionFilter(credentialResolver).filter(null));
+    }
+    
+    private void checkCached(final EntitiesDescriptor metadata) throws Exception {
+        int count = 0;
+        for (final EntityDescriptor entity : metadata.getEntityDescriptors()) {
+            for (final RoleDescriptor role : entity.getRoleDescriptors()) {
+                final Set<Credential> cached = new HashSet<>();
+                for (final KeyDescriptor keyDescriptor : role.getKeyDescriptors()) {
+                    final List<Credential> credentials = keyDescriptor.getObjectMetadata().get(Credential.class);
+                    for (final Credential credential : credentials) {
+                        Assert.assertEquals(credential.getEntityId(), entity.getEntityID());
+                    }
+                    cached.addAll(credentials);
+                }
+                count += cached.size();
+                
+                // Resolution must return the cached instances.
+                final Set<Credential> resolved = new HashSet<>();
+                for (final Credential credential : credentialResolver.resolve(
+                        new CriteriaSet(new RoleDescriptorCriterion(role)))) {
+                    resolved.add(credential);
+                }
+                Assert.assertEquals(resolved, cached);
+            }
+        }
+        Assert.assertEquals(count, 4);
+    }
+
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.filter.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.profile.logic.EntityIdPredicate;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
+import org.opensaml.saml.metadata.resolver.filter.impl.PredicateFilter.Direction;
+import org.opensaml.saml.saml2.core.NameIDType;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+/**
+ * Unit tests for the fused execution mode of {@link MetadataFilterChain}.
+ */
+public class MetadataFilterChainTest extends XMLObjectBaseTestCase {
+    
+    private static final String METADATA = "/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml";
+    
+    @DataProvider
+    public Object[][] parallelism() {
+        return new Object[][] { {1}, {4}, };
+    }
+    
+    @Test(dataProvider="parallelism")
+    public void testEquivalence(final int parallelism) throws Exception {
+        final XMLObject sequential = buildChain(false, 1, null).filter(unmarshallElement(METADATA));
+        final XMLObject fused = buildChain(true, parallelism, null).filter(unmarshallElement(METADATA));
+        
+        Assert.assertNotNull(sequential);
+        Assert.assertNotNull(fused);
+        Assert.assertFalse(((EntitiesDescriptor) fused).getEntityDescriptors().isEmpty());
+        Assert.assertEquals(serialize(fused), serialize(sequential));
+    }
+    
+    @Test(dataProvider="parallelism")
+    public void testInterleavedFilter(final int parallelism) throws Exception {
+        final CountingFilter counter = new CountingFilter();
+        final XMLObject sequential = buildChain(false, 1, new CountingFilter()).filter(unmarshallElement(METADATA));
+        final XMLObject fused = buildChain(true, parallelism, counter).filter(unmarshallElement(METADATA));
+        
+        Assert.assertEquals(counter.count, 1);
+        Assert.assertEquals(serialize(fused), serialize(sequential));
+    }
+    
+    @Test(dataProvider="parallelism")
+    public void testNestedGroups(final int parallelism) throws Exception {
+        final XMLObject sequential = buildChain(false, 1, null).filter(buildNestedGroups());
+        final XMLObject fused = buildChain(true, parallelism, null).filter(buildNestedGroups());
+        
+        final EntitiesDescriptor root = (EntitiesDescriptor) fused;
+        Assert.assertEquals(root.getEntityDescriptors().size(), 1);
+        Assert.assertEquals(root.getEntityDescriptors().get(0).getEntityID(), "urn:test:sp1");
+        Assert.assertEquals(root.getEntitiesDescriptors().size(), 1);
+        Assert.assertEquals(root.getEntitiesDescriptors().get(0).getEntityDescriptors().size(), 1);
+        Assert.assertEquals(root.getEntitiesDescriptors().get(0).getEntityDescriptors().get(0).getEntityID(),
+                "urn:test:sp2");
+        Assert.assertEquals(serialize(fused), serialize(sequential));
+    }
+    
+    @Test
+    public void testRootEntityRemoved() throws Exception {
+        final EntityDescriptor entity = buildEntity("urn:test:excluded", SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        Assert.assertNull(buildChain(true, 1, null).filter(entity));
+    }
+    
+    @Test
+    public void testRootEntityRetained() throws Exception {
+        final EntityDescriptor entity = buildEntity("urn:test:idp", IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+        final EntityDescriptor result = (EntityDescriptor) buildChain(true, 1, null).filter(entity);
+        Assert.assertSame(result, entity);
+        Assert.assertTrue(result.getRoleDescriptors().isEmpty());
+    }
+    
+    @Test(expectedExceptions=FilterException.class)
+    public void testRequiredValidUntil() throws Exception {
+        final MetadataFilterChain chain = buildChain(true, 1, null);
+        final List<MetadataFilter> filters = new ArrayList<>(chain.getFilters());
+        filters.add(0, new RequiredValidUntilFilter());
+        chain.setFilters(filters);
+        chain.filter(buildNestedGroups());
+    }
+    
+    @Test
+    public void testParallelRoleRemovalWithIDs() throws Exception {
+        final EntitiesDescriptor root = buildEntitiesWithIDs(20);
+        
+        final MetadataFilterChain chain = new MetadataFilterChain();
+        chain.setFilters(Collections.<MetadataFilter>singletonList(
+                new EntityRoleFilter(Collections.singletonList(SPSSODescriptor.DEFAULT_ELEMENT_NAME))));
+        chain.setFusedExecution(true);
+        chain.setParallelism(4);
+        Assert.assertSame(chain.filter(root), root);
+        
+        for (int i = 0; i < 20; i++) {
+            final EntityDescriptor entity = (EntityDescriptor) root.resolveID("entity" + i);
+            Assert.assertNotNull(entity);
+            Assert.assertEquals(entity.getRoleDescriptors().size(), 1);
+            Assert.assertSame(root.resolveID("sp" + i), entity.getRoleDescriptors().get(0));
+            Assert.assertNull(root.resolveID("idp" + i));
+        }
+    }
+    
+    @Test
+    public void testParallelEntityRemovalWithIDs() throws Exception {
+        final EntitiesDescriptor root = buildEntitiesWithIDs(20);
+        
+        final MetadataFilterChain chain = new MetadataFilterChain();
+        chain.setFilters(Collections.<MetadataFilter>singletonList(new PredicateFilter(Direction.EXCLUDE,
+                new EntityIdPredicate(Arrays.asList("urn:test:entity3", "urn:test:entity17")))));
+        chain.setFusedExecution(true);
+        chain.setParallelism(4);
+        Assert.assertSame(chain.filter(root), root);
+        
+        Assert.assertEquals(root.getEntityDescriptors().size(), 18);
+        for (int i = 0; i < 20; i++) {
+            if (i == 3 || i == 17) {
+                Assert.assertNull(root.resolveID("entity" + i));
+                Assert.assertNull(root.resolveID("sp" + i));
+            } else {
+                Assert.assertNotNull(root.resolveID("entity" + i));
+                Assert.assertNotNull(root.resolveID("idp" + i));
+            }
+        }
+    }
+    
+    private MetadataFilterChain buildChain(final boolean fused, final int parallelism,
+            final MetadataFilter interleaved) throws Exception {
+        final EntityRoleFilter roleFilter =
+                new EntityRoleFilter(Collections.singletonList(SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        
+        final PredicateFilter predicateFilter = new PredicateFilter(Direction.EXCLUDE,
+                new EntityIdPredicate(Arrays.asList("https://carmenwiki.osu.edu/shibboleth", "urn:test:excluded",
+                        "urn:test:sp3")));
+        
+        final NameIDFormatFilter formatFilter = new NameIDFormatFilter();
+        formatFilter.setRules(Collections.<Predicate<EntityDescriptor>,Collection<String>>singletonMap(
+                Predicates.<EntityDescriptor>alwaysTrue(), Collections.singletonList(NameIDType.EMAIL)));
+        formatFilter.initialize();
+        
+        final List<MetadataFilter> filters = new ArrayList<>();
+        filters.add(roleFilter);
+        if (interleaved != null) {
+            filters.add(interleaved);
+        }
+        filters.add(predicateFilter);
+        filters.add(formatFilter);
+        
+        final MetadataFilterChain chain = new MetadataFilterChain();
+        chain.setFilters(filters);
+        chain.setFusedExecution(fused);
+        chain.setParallelism(parallelism);
+        return chain;
+    }
+    
+    private EntitiesDescriptor buildNestedGroups() {
+        final EntitiesDescriptor root = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        root.setName("root");
+        root.getEntityDescriptors().add(buildEntity("urn:test:sp1", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        root.getEntityDescriptors().add(buildEntity("urn:test:idp1", IDPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        
+        final EntitiesDescriptor group1 = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        group1.setName("group1");
+        group1.getEntityDescriptors().add(buildEntity("urn:test:sp2", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        group1.getEntityDescriptors().add(buildEntity("urn:test:idp2", IDPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        root.getEntitiesDescriptors().add(group1);
+        
+        final EntitiesDescriptor group2 = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        group2.setName("group2");
+        group2.getEntityDescriptors().add(buildEntity("urn:test:sp3", SPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        root.getEntitiesDescriptors().add(group2);
+        
+        final EntitiesDescriptor group3 = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        group3.setName("group3");
+        group3.getEntityDescriptors().add(buildEntity("urn:test:idp3", IDPSSODescriptor.DEFAULT_ELEMENT_NAME));
+        group2.getEntitiesDescriptors().add(group3);
+        
+        return root;
+    }
+    
+    private EntitiesDescriptor buildEntitiesWithIDs(final int count) {
+        final EntitiesDescriptor root = buildXMLObject(EntitiesDescriptor.DEFAULT_ELEMENT_NAME);
+        root.setName("root");
+        for (int i = 0; i < count; i++) {
+            final EntityDescriptor entity = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+            entity.setEntityID("urn:test:entity" + i);
+            entity.setID("entity" + i);
+            final SPSSODescriptor sp = buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            sp.addSupportedProtocol("urn:oasis:names:tc:SAML:2.0:protocol");
+            sp.setID("sp" + i);
+            entity.getRoleDescriptors().add(sp);
+            final IDPSSODescriptor idp = buildXMLObject(IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            idp.addSupportedProtocol("urn:oasis:names:tc:SAML:2.0:protocol");
+            idp.setID("idp" + i);
+            entity.getRoleDescriptors().add(idp);
+            root.getEntityDescriptors().add(entity);
+        }
+        
+        // Populate the root's ID index before filtering.
+        Assert.assertNotNull(root.resolveID("idp0"));
+        return root;
+    }
+    
+    private EntityDescriptor buildEntity(final String entityID, final QName role) {
+        final EntityDescriptor entity = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        entity.setEntityID(entityID);
+        if (SPSSODescriptor.DEFAULT_ELEMENT_NAME.equals(role)) {
+            final SPSSODescriptor sp = buildXMLObject(SPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            sp.addSupportedProtocol("urn:oasis:names:tc:SAML:2.0:protocol");
+            entity.getRoleDescriptors().add(sp);
+        } else {
+            final IDPSSODescriptor idp = buildXMLObject(IDPSSODescriptor.DEFAULT_ELEMENT_NAME);
+            idp.addSupportedProtocol("urn:oasis:names:tc:SAML:2.0:protocol");
+            entity.getRoleDescriptors().add(idp);
+        }
+        return entity;
+    }
+    
+    private String serialize(final XMLObject xmlObject) throws Exception {
+        return SerializeSupport.nodeToString(XMLObjectSupport.marshall(xmlObject));
+    }
+    
+    private static class CountingFilter implements MetadataFilter {
+        
+        private int count;
+
+        public XMLObject filter(final XMLObject metadata) throws FilterException {
+            count++;
+            return metadata;
+        }
+    }
+
+}
@@ -600,6 +600,110 @@ public class AbstractDynamicMetadataResolverTest extends XMLObjectBaseTestCase {
         Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
     }
     
+    @Test
+    public void testMaxEntitiesLRU() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        sourceMap.put(id3, ed3);
+        
+        resolver.setPersistentCacheManager(persistentCacheManager);
+        resolver.setMaxEntities(2);
+        resolver.setEvictionPolicy(EntityEvictionTracker.Policy.LRU);
+        resolver.initialize();
+        
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        // Makes id2 the least recently used
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))), ed3);
+        
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id1));
+        Assert.assertFalse(backingStore.getIndexedDescriptors().containsKey(id2));
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id3));
+        Assert.assertEquals(resolver.getEvictionTracker().getSize(), 2);
+        Assert.assertEquals(resolver.getEvictionTracker().getEvictionCount(), 1);
+        
+        // Evicted data is retained in the persistent cache
+        Assert.assertEquals(persistentCacheMap.size(), 3);
+        Assert.assertTrue(persistentCacheMap.containsKey(resolver.getPersistentCacheKeyGenerator().apply(ed2)));
+        
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id2));
+        Assert.assertFalse(backingStore.getIndexedDescriptors().containsKey(id1));
+    }
+    
+    @Test
+    public void testMaxEntitiesTinyLFU() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        sourceMap.put(id3, ed3);
+        
+        resolver.setMaxEntities(2);
+        resolver.setEvictionPolicy(EntityEvictionTracker.Policy.TINY_LFU);
+        resolver.initialize();
+        
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        
+        for (int i = 0; i < 3; i++) {
+            Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+            Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        }
+        
+        // Requested less often than the entity it would displace, so is returned but not admitted
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))), ed3);
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id1));
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id2));
+        Assert.assertFalse(backingStore.getIndexedDescriptors().containsKey(id3));
+        
+        // Once requested more often, it is admitted
+        for (int i = 0; i < 4; i++) {
+            Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id3))), ed3);
+        }
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id3));
+        Assert.assertEquals(backingStore.getIndexedDescriptors().size(), 2);
+    }
+    
+    @Test
+    public void testMaxEntitiesNegativeLookups() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        
+        resolver.setMaxEntities(2);
+        resolver.setEvictionPolicy(EntityEvictionTracker.Policy.LRU);
+        resolver.initialize();
+        
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNull(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion("urn:test:bogus:" + i))));
+        }
+        
+        Assert.assertEquals(resolver.getEvictionTracker().getSize(), 2);
+        Assert.assertEquals(resolver.getEvictionTracker().getEvictionCount(), 9);
+    }
+    
+    @Test
+    public void testMaxEntityWeight() throws ComponentInitializationException, ResolverException {
+        sourceMap.put(id1, ed1);
+        sourceMap.put(id2, ed2);
+        
+        final long weight = new AbstractDynamicMetadataResolver.DefaultEntityWeigher().apply(ed1);
+        Assert.assertTrue(weight > 2);
+        
+        resolver.setMaxEntityWeight(weight + 1);
+        resolver.setEvictionPolicy(EntityEvictionTracker.Policy.LRU);
+        resolver.initialize();
+        
+        DynamicEntityBackingStore backingStore = resolver.getBackingStore();
+        
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id1))), ed1);
+        Assert.assertSame(resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(id2))), ed2);
+        
+        Assert.assertFalse(backingStore.getIndexedDescriptors().containsKey(id1));
+        Assert.assertTrue(backingStore.getIndexedDescriptors().containsKey(id2));
+        Assert.assertTrue(resolver.getEvictionTracker().getTotalWeight() <= weight + 1);
+    }
+    
     // Helper classes
     
     private static class MockDynamicResolver extends AbstractDynamicMetadataResolver {
@@ -0,0 +1,415 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+
+import org.joda.time.DateTime;
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.saml.metadata.resolver.MetadataResolver;
+import org.opensaml.saml.metadata.resolver.RefreshableMetadataResolver;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+
+public class CompositeMetadataResolverTest extends XMLObjectBaseTestCase {
+    
+    private CompositeMetadataResolver resolver;
+    
+    private MockResolver child1;
+    
+    private MockResolver child2;
+    
+    @BeforeMethod
+    public void setUp() {
+        child1 = new MockResolver("child1");
+        child1.add(buildEntity("urn:test:a"));
+        child2 = new MockResolver("child2");
+        child2.add(buildEntity("urn:test:b"));
+        child2.add(buildEntity("urn:test:c"));
+        
+        resolver = new CompositeMetadataResolver();
+        resolver.setId("test");
+    }
+    
+    @AfterMethod
+    public void tearDown() {
+        resolver.destroy();
+    }
+    
+    @Test
+    public void testDefaults() throws Exception {
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2));
+        resolver.initialize();
+        
+        Assert.assertFalse(resolver.isRoutingCacheEnabled());
+        Assert.assertFalse(resolver.isParallelResolution());
+        Assert.assertEquals(resolver.getRoutingCacheMaxEntries(),
+                CompositeMetadataResolver.DEFAULT_ROUTING_CACHE_MAX_ENTRIES);
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 2);
+        Assert.assertEquals(child2.getCount(), 2);
+        
+        Assert.assertNull(resolver.resolveSingle(criteria("urn:test:d")));
+    }
+    
+    @Test
+    public void testEmptyResolve() throws Exception {
+        resolver.setResolvers(Collections.<MetadataResolver>emptyList());
+        resolver.initialize();
+        
+        Assert.assertFalse(resolver.resolve(criteria("urn:test:a")).iterator().hasNext());
+    }
+    
+    @Test
+    public void testRoutingCache() throws Exception {
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2));
+        resolver.setRoutingCacheEnabled(true);
+        resolver.initialize();
+        
+        Assert.assertEquals(resolver.resolveSingle(criteria("urn:test:c")).getEntityID(), "urn:test:c");
+        Assert.assertEquals(child1.getCount(), 1);
+        Assert.assertEquals(child2.getCount(), 1);
+        
+        Assert.assertEquals(resolver.resolveSingle(criteria("urn:test:c")).getEntityID(), "urn:test:c");
+        Assert.assertEquals(child1.getCount(), 1);
+        Assert.assertEquals(child2.getCount(), 2);
+        
+        final EntityDescriptor ed = Iterables.getOnlyElement(resolver.resolve(criteria("urn:test:c")));
+        Assert.assertEquals(ed.getEntityID(), "urn:test:c");
+        // The routed child is asked first, the others are still consulted for further results.
+        Assert.assertEquals(child1.getCount(), 2);
+        Assert.assertEquals(child2.getCount(), 3);
+        
+        // Negative results are not routed.
+        Assert.assertNull(resolver.resolveSingle(criteria("urn:test:d")));
+        Assert.assertNull(resolver.resolveSingle(criteria("urn:test:d")));
+        Assert.assertEquals(child1.getCount(), 4);
+        Assert.assertEquals(child2.getCount(), 5);
+    }
+    
+    @Test
+    public void testRoutingCacheRouteFromIterable() throws Exception {
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2));
+        resolver.setRoutingCacheEnabled(true);
+        resolver.initialize();
+        
+        Assert.assertEquals(Iterables.size(resolver.resolve(criteria("urn:test:b"))), 1);
+        Assert.assertEquals(child1.getCount(), 1);
+        Assert.assertEquals(child2.getCount(), 1);
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:b")));
+        Assert.assertEquals(child1.getCount(), 1);
+        Assert.assertEquals(child2.getCount(), 2);
+    }
+    
+    @Test
+    public void testRoutingCacheStaleRoute() throws Exception {
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2));
+        resolver.setRoutingCacheEnabled(true);
+        resolver.initialize();
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        
+        // Entity moves without the child reporting a refresh.
+        child2.remove("urn:test:c");
+        child1.add(buildEntity("urn:test:c"));
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 2);
+        Assert.assertEquals(child2.getCount(), 2);
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 3);
+        Assert.assertEquals(child2.getCount(), 2);
+    }
+    
+    @Test
+    public void testRoutingCacheChildRefresh() throws Exception {
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2));
+        resolver.setRoutingCacheEnabled(true);
+        resolver.initialize();
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 1);
+        
+        child1.refresh();
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 2);
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 2);
+        
+        resolver.clear();
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 3);
+    }
+    
+    @Test
+    public void testRoutingCacheExpiration() throws Exception {
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2));
+        resolver.setRoutingCacheEnabled(true);
+        resolver.setRoutingCacheDuration(50);
+        resolver.initialize();
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 1);
+        
+        Thread.sleep(100);
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:c")));
+        Assert.assertEquals(child1.getCount(), 2);
+    }
+    
+    @Test
+    public void testParallelResolution() throws Exception {
+        final MockResolver child3 = new MockResolver("child3");
+        child3.add(buildEntity("urn:test:c"));
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2, child3));
+        resolver.setParallelResolution(true);
+        resolver.initialize();
+        
+        final EntityDescriptor ed = resolver.resolveSingle(criteria("urn:test:c"));
+        Assert.assertSame(ed, child2.get("urn:test:c"));
+        Assert.assertSame(Iterables.getOnlyElement(resolver.resolve(criteria("urn:test:c"))), ed);
+        
+        Assert.assertNull(resolver.resolveSingle(criteria("urn:test:d")));
+        Assert.assertFalse(resolver.resolve(criteria("urn:test:d")).iterator().hasNext());
+    }
+    
+    @Test
+    public void testParallelResolutionTimeout() throws Exception {
+        final MockResolver child3 = new MockResolver("child3");
+        child3.add(buildEntity("urn:test:c"));
+        child2.setDelay(5000);
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2, child3));
+        resolver.setParallelResolution(true);
+        resolver.setParallelResolutionTimeout(200);
+        resolver.initialize();
+        
+        final long start = System.currentTimeMillis();
+        final EntityDescriptor ed = resolver.resolveSingle(criteria("urn:test:c"));
+        Assert.assertTrue(System.currentTimeMillis() - start < 4000);
+        Assert.assertSame(ed, child3.get("urn:test:c"));
+    }
+    
+    @Test
+    public void testParallelResolutionError() throws Exception {
+        child1.setFail(true);
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2));
+        resolver.setParallelResolution(true);
+        resolver.initialize();
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:b")));
+    }
+    
+    @Test
+    public void testParallelResolutionWithRoutingCache() throws Exception {
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2));
+        resolver.setParallelResolution(true);
+        resolver.setRoutingCacheEnabled(true);
+        resolver.initialize();
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:b")));
+        Assert.assertEquals(child1.getCount(), 1);
+        Assert.assertEquals(child2.getCount(), 1);
+        
+        Assert.assertNotNull(resolver.resolveSingle(criteria("urn:test:b")));
+        Assert.assertEquals(child1.getCount(), 1);
+        Assert.assertEquals(child2.getCount(), 2);
+    }
+    
+    @Test
+    public void testParallelResolutionRoutedError() throws Exception {
+        final MockResolver child3 = new MockResolver("child3");
+        child3.add(buildEntity("urn:test:b"));
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2, child3));
+        resolver.setParallelResolution(true);
+        resolver.setRoutingCacheEnabled(true);
+        resolver.initialize();
+        
+        Assert.assertSame(Iterables.getOnlyElement(resolver.resolve(criteria("urn:test:b"))),
+                child2.get("urn:test:b"));
+        
+        // The routed child's error is skipped, and the others are asked.
+        child2.setFail(true);
+        Assert.assertSame(Iterables.getOnlyElement(resolver.resolve(criteria("urn:test:b"))),
+                child3.get("urn:test:b"));
+    }
+
+    @Test
+    public void testResolveSingleRoutedError() throws Exception {
+        final MockResolver child3 = new MockResolver("child3");
+        child3.add(buildEntity("urn:test:b"));
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2, child3));
+        resolver.setRoutingCacheEnabled(true);
+        resolver.initialize();
+
+        Assert.assertSame(resolver.resolveSingle(criteria("urn:test:b")), child2.get("urn:test:b"));
+
+        // The routed child's error is skipped, and the others are asked.
+        child2.setFail(true);
+        Assert.assertSame(resolver.resolveSingle(criteria("urn:test:b")), child3.get("urn:test:b"));
+    }
+
+    @Test
+    public void testParallelResolveSingleRoutedError() throws Exception {
+        final MockResolver child3 = new MockResolver("child3");
+        child3.add(buildEntity("urn:test:b"));
+        resolver.setResolvers(Arrays.<MetadataResolver>asList(child1, child2, child3));
+        resolver.setParallelResolution(true);
+        resolver.setRoutingCacheEnabled(true);
+        resolver.initialize();
+
+        Assert.assertSame(resolver.resolveSingle(criteria("urn:test:b")), child2.get("urn:test:b"));
+
+        child2.setFail(true);
+        Assert.assertSame(resolver.resolveSingle(criteria("urn:test:b")), child3.get("urn:test:b"));
+    }
+
+    private CriteriaSet criteria(final String entityID) {
+        return new CriteriaSet(new EntityIdCriterion(entityID));
+    }
+    
+    private EntityDescriptor buildEntity(final String entityID) {
+        final EntityDescriptor ed = buildXMLObject(EntityDescriptor.DEFAULT_ELEMENT_NAME);
+        ed.setEntityID(entityID);
+        return ed;
+    }
+    
+    private static class MockResolver implements RefreshableMetadataResolver {
+        
+        private final String id;
+        
+        private final Map<String, EntityDescriptor> entities;
+        
+        private int count;
+        
+        private long delay;
+        
+        private boolean fail;
+        
+        private DateTime lastRefresh;
+        
+        public MockResolver(final String name) {
+            id = name;
+            entities = new HashMap<>();
+            lastRefresh = new DateTime(0);
+        }
+        
+        public synchronized void add(final EntityDescriptor ed) {
+            entities.put(ed.getEntityID(), ed);
+        }
+        
+        public synchronized void remove(final String entityID) {
+            entities.remove(entityID);
+        }
+        
+        public synchronized EntityDescriptor get(final String entityID) {
+            return entities.get(entityID);
+        }
+        
+        public synchronized int getCount() {
+            return count;
+        }
+        
+        public void setDelay(final long millis) {
+            delay = millis;
+        }
+        
+        public void setFail(final boolean flag) {
+            fail = flag;
+        }
+        
+        public String getId() {
+            return id;
+        }
+
+        public Iterable<EntityDescriptor> resolve(final CriteriaSet criteria) throws ResolverException {
+            final List<EntityDescriptor> result = new ArrayList<>();
+            final EntityDescriptor ed = resolveSingle(criteria);
+            if (ed != null) {
+                result.add(ed);
+            }
+            return result;
+        }
+
+        public EntityDescriptor resolveSingle(final CriteriaSet criteria) throws ResolverException {
+            synchronized (this) {
+                count++;
+            }
+            if (fail) {
+                throw new ResolverException("Failure");
+            }
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (final InterruptedException e) {
+                    throw new ResolverException(e);
+                }
+            }
+            return get(criteria.get(EntityIdCriterion.class).getEntityId());
+        }
+
+        public boolean isRequireValidMetadata() {
+            return false;
+        }
+
+        public void setRequireValidMetadata(final boolean requireValidMetadata) {
+        }
+
+        public MetadataFilter getMetadataFilter() {
+            return null;
+        }
+
+        public void setMetadataFilter(final MetadataFilter newFilter) {
+        }
+
+        public synchronized void refresh() throws ResolverException {
+            lastRefresh = new DateTime(lastRefresh.getMillis() + 1);
+        }
+
+        public synchronized DateTime getLastRefresh() {
+            return lastRefresh;
+        }
+
+        public synchronized DateTime getLastUpdate() {
+            return lastRefresh;
+        }
+    }
+
+}
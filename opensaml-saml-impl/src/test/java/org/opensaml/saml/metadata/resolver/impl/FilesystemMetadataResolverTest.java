@@ -21,14 +21,33 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.namespace.QName;
 
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
+import org.joda.time.DateTime;
 import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Unmarshaller;
+import org.opensaml.core.xml.io.UnmarshallerFactory;
+import org.opensaml.core.xml.schema.XSAny;
+import org.opensaml.core.xml.schema.impl.XSAnyImpl;
+import org.opensaml.core.xml.schema.impl.XSAnyUnmarshaller;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -234,4 +253,269 @@ public class FilesystemMetadataResolverTest extends XMLObjectBaseTestCase {
         EntityDescriptor entity = metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion("https://idp.example.org")));
         Assert.assertNull(entity);
     }
-}
\ No newline at end of file
+    
+    /**
+     * Tests that a file whose timestamp changes without its content changing is not reprocessed.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSkipUnchangedMetadata() throws Exception {
+        File targetFile = File.createTempFile("filesystem-md-provider-test", ".xml");
+        Files.copy(mdFile, targetFile);
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setSkipUnchangedMetadata(true);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.initialize();
+            
+            DateTime initRefresh = metadataProvider.getLastRefresh();
+            DateTime initUpdate = metadataProvider.getLastUpdate();
+            
+            // Filesystem timestamp may only have 1-second precision.
+            Thread.sleep(2000);
+            Assert.assertTrue(targetFile.setLastModified(System.currentTimeMillis()));
+            metadataProvider.refresh();
+            
+            Assert.assertTrue(initRefresh.isBefore(metadataProvider.getLastRefresh()));
+            Assert.assertEquals(metadataProvider.getLastUpdate(), initUpdate);
+            Assert.assertTrue(metadataProvider.wasLastRefreshSuccess());
+            Assert.assertNotNull(metadataProvider.resolveSingle(criteriaSet));
+            
+            Thread.sleep(2000);
+            Files.copy(new File(FilesystemMetadataResolverTest.class
+                    .getResource("/org/opensaml/saml/saml2/metadata/simple-metadata.xml").toURI()), targetFile);
+            metadataProvider.refresh();
+            
+            Assert.assertTrue(initUpdate.isBefore(metadataProvider.getLastUpdate()));
+            Assert.assertNull(metadataProvider.resolveSingle(criteriaSet));
+            Assert.assertNotNull(metadataProvider.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("https://idp.example.org"))));
+        } finally {
+            metadataProvider.destroy();
+            targetFile.delete();
+        }
+    }
+    
+    /**
+     * Tests that a change to a watched file is picked up without waiting for the next scheduled refresh.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testWatchForChanges() throws Exception {
+        File targetDir = Files.createTempDir();
+        File targetFile = new File(targetDir, "metadata.xml");
+        Files.copy(mdFile, targetFile);
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setWatchForChanges(true);
+            metadataProvider.setWatchDebounceDelay(100);
+            metadataProvider.setSkipUnchangedMetadata(true);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.initialize();
+            
+            Assert.assertNotNull(metadataProvider.resolveSingle(criteriaSet));
+            
+            Files.copy(new File(FilesystemMetadataResolverTest.class
+                    .getResource("/org/opensaml/saml/saml2/metadata/simple-metadata.xml").toURI()), targetFile);
+            
+            // Some WatchService implementations poll, so allow for a generous delay.
+            final CriteriaSet newCriteria = new CriteriaSet(new EntityIdCriterion("https://idp.example.org"));
+            final long deadline = System.currentTimeMillis() + 30000;
+            while (metadataProvider.resolveSingle(newCriteria) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            
+            Assert.assertNotNull(metadataProvider.resolveSingle(newCriteria));
+            Assert.assertNull(metadataProvider.resolveSingle(criteriaSet));
+        } finally {
+            metadataProvider.destroy();
+            targetFile.delete();
+            targetDir.delete();
+        }
+    }
+
+    /**
+     * Tests that changes to other files in the watched directory do not postpone the refresh indefinitely.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testWatchIgnoresOtherFiles() throws Exception {
+        final File targetDir = Files.createTempDir();
+        final File targetFile = new File(targetDir, "metadata.xml");
+        final File otherFile = new File(targetDir, "other.txt");
+        Files.copy(mdFile, targetFile);
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setWatchForChanges(true);
+            metadataProvider.setWatchDebounceDelay(500);
+            metadataProvider.setSkipUnchangedMetadata(true);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.initialize();
+            
+            Files.copy(new File(FilesystemMetadataResolverTest.class
+                    .getResource("/org/opensaml/saml/saml2/metadata/simple-metadata.xml").toURI()), targetFile);
+            
+            // Keep changing another file more often than the debounce delay.
+            final CriteriaSet newCriteria = new CriteriaSet(new EntityIdCriterion("https://idp.example.org"));
+            final long deadline = System.currentTimeMillis() + 30000;
+            int count = 0;
+            while (metadataProvider.resolveSingle(newCriteria) == null && System.currentTimeMillis() < deadline) {
+                Files.write(Integer.toString(count++).getBytes(), otherFile);
+                Thread.sleep(100);
+            }
+            
+            Assert.assertNotNull(metadataProvider.resolveSingle(newCriteria), "Refresh was postponed by other files");
+        } finally {
+            metadataProvider.destroy();
+            otherFile.delete();
+            targetFile.delete();
+            targetDir.delete();
+        }
+    }
+    
+    @Test
+    public void testInternValues() throws Exception {
+        final File targetDir = Files.createTempDir();
+        final File targetFile = new File(targetDir, "metadata.xml");
+        Files.write(buildInternedMetadata("https://idp1.example.org", "https://idp2.example.org")
+                .getBytes("UTF-8"), targetFile);
+        
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setInternValues(true);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.initialize();
+            assertValuesShared("https://idp1.example.org", "https://idp2.example.org");
+            
+            // Refreshed metadata is interned in the same way.
+            Files.write(buildInternedMetadata("https://idp3.example.org", "https://idp4.example.org")
+                    .getBytes("UTF-8"), targetFile);
+            targetFile.setLastModified(System.currentTimeMillis() + 10000);
+            metadataProvider.refresh();
+            assertValuesShared("https://idp3.example.org", "https://idp4.example.org");
+        } finally {
+            metadataProvider.destroy();
+            targetFile.delete();
+            targetDir.delete();
+        }
+    }
+    
+    private void assertValuesShared(final String firstID, final String secondID) throws ResolverException {
+        final EntityDescriptor first = metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(firstID)));
+        final EntityDescriptor second =
+                metadataProvider.resolveSingle(new CriteriaSet(new EntityIdCriterion(secondID)));
+        Assert.assertNotNull(first);
+        Assert.assertNotNull(second);
+        
+        final IDPSSODescriptor firstRole = first.getIDPSSODescriptor(SAMLConstants.SAML20P_NS);
+        final IDPSSODescriptor secondRole = second.getIDPSSODescriptor(SAMLConstants.SAML20P_NS);
+        Assert.assertSame(firstRole.getSingleSignOnServices().get(0).getBinding(),
+                secondRole.getSingleSignOnServices().get(0).getBinding());
+        Assert.assertSame(firstRole.getSupportedProtocols().get(0), secondRole.getSupportedProtocols().get(0));
+        
+        final EntityAttributes firstAttributes =
+                (EntityAttributes) first.getExtensions().getUnknownXMLObjects().get(0);
+        final EntityAttributes secondAttributes =
+                (EntityAttributes) second.getExtensions().getUnknownXMLObjects().get(0);
+        Assert.assertSame(firstAttributes.getAttributes().get(0).getName(),
+                secondAttributes.getAttributes().get(0).getName());
+    }
+    
+    private String buildInternedMetadata(final String... entityIDs) {
+        final StringBuilder metadata = new StringBuilder();
+        metadata.append("<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\"")
+                .append(" xmlns:mdattr=\"urn:oasis:names:tc:SAML:metadata:attribute\"")
+                .append(" xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\">");
+        for (final String id : entityIDs) {
+            metadata.append("<md:EntityDescriptor entityID=\"").append(id).append("\">")
+                    .append("<md:Extensions><mdattr:EntityAttributes>")
+                    .append("<saml:Attribute Name=\"http://macedir.org/entity-category\">")
+                    .append("<saml:AttributeValue>http://refeds.org/category/research-and-scholarship")
+                    .append("</saml:AttributeValue></saml:Attribute></mdattr:EntityAttributes></md:Extensions>")
+                    .append("<md:IDPSSODescriptor protocolSupportEnumeration=\"")
+                    .append(SAMLConstants.SAML20P_NS).append("\">")
+                    .append("<md:SingleSignOnService Binding=\"").append(SAMLConstants.SAML2_REDIRECT_BINDING_URI)
+                    .append("\" Location=\"").append(id).append("/sso\"/>")
+                    .append("</md:IDPSSODescriptor></md:EntityDescriptor>");
+        }
+        return metadata.append("</md:EntitiesDescriptor>").toString();
+    }
+    
+    @Test
+    public void testDeferredContentExpanded() throws Exception {
+        final File targetDir = Files.createTempDir();
+        final File targetFile = new File(targetDir, "metadata.xml");
+        final StringBuilder metadata = new StringBuilder();
+        metadata.append("<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\"")
+                .append(" xmlns:ex=\"urn:example:extension\">");
+        for (int i = 0; i < 50; i++) {
+            metadata.append("<md:EntityDescriptor entityID=\"https://sp").append(i).append(".example.org\">")
+                    .append("<md:Extensions><ex:Info level=\"").append(i).append("\"><ex:Name>sp").append(i)
+                    .append("</ex:Name></ex:Info></md:Extensions></md:EntityDescriptor>");
+        }
+        metadata.append("</md:EntitiesDescriptor>");
+        Files.write(metadata.toString().getBytes("UTF-8"), targetFile);
+        
+        final UnmarshallerFactory unmarshallerFactory = XMLObjectProviderRegistrySupport.getUnmarshallerFactory();
+        final QName defaultProvider = XMLObjectProviderRegistrySupport.getDefaultProviderQName();
+        final Unmarshaller defaultUnmarshaller = unmarshallerFactory.getUnmarshaller(defaultProvider);
+        unmarshallerFactory.registerUnmarshaller(defaultProvider, new XSAnyUnmarshaller(true));
+        try {
+            metadataProvider = new FilesystemMetadataResolver(targetFile);
+            metadataProvider.setParserPool(parserPool);
+            metadataProvider.setId("test");
+            metadataProvider.initialize();
+            
+            // Nothing is left to be expanded by the readers.
+            final List<EntityDescriptor> entities = new ArrayList<>();
+            for (final EntityDescriptor entity : metadataProvider) {
+                final XMLObject info = entity.getExtensions().getOrderedChildren().get(0);
+                Assert.assertTrue(info instanceof XSAnyImpl);
+                Assert.assertFalse(((XSAnyImpl) info).isDeferred());
+                entities.add(entity);
+            }
+            Assert.assertEquals(entities.size(), 50);
+            
+            final ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                final List<Future<Integer>> results = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    results.add(executor.submit(new Callable<Integer>() {
+                        public Integer call() {
+                            int count = 0;
+                            for (final EntityDescriptor entity : entities) {
+                                final XSAny info = (XSAny) entity.getExtensions().getUnknownXMLObjects().get(0);
+                                final String level = info.getUnknownAttributes().get(new QName("level"));
+                                final XSAny name = (XSAny) info.getUnknownXMLObjects().get(0);
+                                Assert.assertEquals(name.getTextContent(), "sp" + level);
+                                Assert.assertEquals(entity.getEntityID(), "https://sp" + level + ".example.org");
+                                count++;
+                            }
+                            return count;
+                        }
+                    }));
+                }
+                for (final Future<Integer> result : results) {
+                    Assert.assertEquals(result.get().intValue(), 50);
+                }
+            } finally {
+                executor.shutdown();
+            }
+        } finally {
+            unmarshallerFactory.registerUnmarshaller(defaultProvider, defaultUnmarshaller);
+            metadataProvider.destroy();
+            targetFile.delete();
+            targetDir.delete();
+        }
+    }
+}
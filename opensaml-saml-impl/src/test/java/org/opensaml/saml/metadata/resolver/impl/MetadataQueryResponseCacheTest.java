@@ -0,0 +1,264 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.binary.Hex;
+import org.joda.time.DateTime;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.ext.saml2mdattr.EntityAttributes;
+import org.opensaml.saml.saml2.binding.artifact.SAML2ArtifactType0004;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureValidator;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+import com.google.common.io.Files;
+
+/** {@link MetadataQueryResponseCache} unit test. */
+public class MetadataQueryResponseCacheTest extends XMLObjectBaseTestCase {
+
+    private String entityID = "urn:mace:incommon:washington.edu";
+
+    private FilesystemMetadataResolver metadataResolver;
+
+    private Credential credential;
+
+    private SignatureSigningParameters signingParameters;
+
+    private ExecutorService executor;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        URL mdURL = MetadataQueryResponseCacheTest.class
+                .getResource("/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml");
+
+        metadataResolver = new FilesystemMetadataResolver(new File(mdURL.toURI()));
+        metadataResolver.setParserPool(parserPool);
+        metadataResolver.setId("test");
+        metadataResolver.initialize();
+
+        KeyPair kp = KeySupport.generateKeyPair("RSA", 1024, null);
+        credential = CredentialSupport.getSimpleCredential(kp.getPublic(), kp.getPrivate());
+        signingParameters = new SignatureSigningParameters();
+        signingParameters.setSigningCredential(credential);
+        signingParameters.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signingParameters.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+        signingParameters.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        executor.shutdown();
+        metadataResolver.destroy();
+    }
+
+    @Test
+    public void testSignedLookups() throws Exception {
+        MetadataQueryResponseCache cache = new MetadataQueryResponseCache(metadataResolver);
+        cache.setSigningParameters(signingParameters);
+        cache.setSigningExecutor(executor);
+        cache.setCacheDuration(3600000L);
+        cache.initialize();
+
+        cache.refresh();
+        Assert.assertTrue(cache.getSize() > 1);
+
+        MetadataQueryResponseCache.Entry entry = cache.get(entityID);
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(entry.getEntityID(), entityID);
+        Assert.assertEquals(entry.getCacheDuration(), Long.valueOf(3600000L));
+        Assert.assertNotNull(entry.getValidUntil());
+        Assert.assertTrue(entry.getValidUntil().isAfterNow());
+        Assert.assertFalse(entry.getValidUntil().isAfter(
+                new DateTime().plus(MetadataQueryResponseCache.DEFAULT_VALIDITY_DURATION)));
+
+        EntityDescriptor descriptor = parse(entry);
+        Assert.assertEquals(descriptor.getEntityID(), entityID);
+        Assert.assertNotNull(descriptor.getSignature());
+        SignatureValidator.validate(descriptor.getSignature(), credential);
+
+        // The resolver's own object is left unsigned.
+        Assert.assertNull(metadataResolver.getBackingStore().getIndexedDescriptors().get(entityID).get(0)
+                .getSignature());
+
+        byte[] sha1 = MessageDigest.getInstance("SHA-1").digest(entityID.getBytes("UTF-8"));
+        Assert.assertSame(cache.get("{sha1}" + Hex.encodeHexString(sha1)), entry);
+        Assert.assertSame(cache.get(new SAML2ArtifactType0004(new byte[] {0, 0}, sha1, new byte[20])), entry);
+
+        Assert.assertNull(cache.get("urn:example:unknown"));
+        Assert.assertNull(cache.get("{sha1}0000000000000000000000000000000000000000"));
+    }
+
+    @Test
+    public void testBoundedOnDisk() throws Exception {
+        File directory = Files.createTempDir();
+        try {
+            MetadataQueryResponseCache cache = new MetadataQueryResponseCache(metadataResolver);
+            cache.setMaxEntries(2);
+            cache.setStorageDirectory(directory);
+            cache.initialize();
+
+            cache.refresh();
+            Assert.assertEquals(cache.getSize(), 2);
+            Assert.assertEquals(directory.listFiles().length, 2);
+
+            // Built on demand, evicting the least recently used.
+            MetadataQueryResponseCache.Entry entry = cache.get(entityID);
+            Assert.assertNotNull(entry);
+            Assert.assertEquals(cache.getSize(), 2);
+            Assert.assertEquals(directory.listFiles().length, 2);
+
+            EntityDescriptor descriptor = parse(entry);
+            Assert.assertEquals(descriptor.getEntityID(), entityID);
+            Assert.assertNull(descriptor.getSignature());
+
+            // Content views are independent.
+            ByteBuffer first = entry.getContent();
+            first.get(new byte[first.remaining()]);
+            Assert.assertTrue(entry.getContent().hasRemaining());
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testInheritedNamespaces() throws Exception {
+        String metadata = "<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\""
+                + " xmlns:mdattr=\"urn:oasis:names:tc:SAML:metadata:attribute\""
+                + " xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\""
+                + " xmlns:xs=\"http://www.w3.org/2001/XMLSchema\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+                + "<md:EntityDescriptor entityID=\"https://idp.example.org\"><md:Extensions><mdattr:EntityAttributes>"
+                + "<saml:Attribute Name=\"category\"><saml:AttributeValue xsi:type=\"xs:string\">test"
+                + "</saml:AttributeValue></saml:Attribute></mdattr:EntityAttributes></md:Extensions>"
+                + "</md:EntityDescriptor></md:EntitiesDescriptor>";
+        Element element = parserPool.parse(new ByteArrayInputStream(metadata.getBytes("UTF-8")))
+                .getDocumentElement();
+        
+        // Retain the DOM of the resolver's objects, so that copies are made from it.
+        DOMMetadataResolver domResolver = new DOMMetadataResolver(element) {
+            protected void releaseMetadataDOM(XMLObject md) {
+            }
+        };
+        domResolver.setParserPool(parserPool);
+        domResolver.setId("dom");
+        domResolver.initialize();
+        try {
+            EntityDescriptor original =
+                    domResolver.getBackingStore().getIndexedDescriptors().get("https://idp.example.org").get(0);
+            Assert.assertNotNull(original.getDOM());
+            
+            MetadataQueryResponseCache cache = new MetadataQueryResponseCache(domResolver);
+            cache.initialize();
+            EntityDescriptor descriptor = parse(cache.get("https://idp.example.org"));
+            
+            EntityAttributes attributes = (EntityAttributes) descriptor.getExtensions().getUnknownXMLObjects().get(0);
+            XMLObject value = attributes.getAttributes().get(0).getAttributeValues().get(0);
+            Assert.assertTrue(value instanceof XSString);
+            Assert.assertEquals(((XSString) value).getValue(), "test");
+            
+            // The resolver's object keeps its DOM in the original document.
+            Assert.assertSame(original.getDOM().getOwnerDocument(), element.getOwnerDocument());
+        } finally {
+            domResolver.destroy();
+        }
+    }
+
+    @Test
+    public void testOriginalUnchanged() throws Exception {
+        EntityDescriptor original = metadataResolver.getBackingStore().getIndexedDescriptors().get(entityID).get(0);
+        Assert.assertNull(original.getDOM());
+
+        MetadataQueryResponseCache cache = new MetadataQueryResponseCache(metadataResolver);
+        cache.setMaxEntries(1);
+        cache.initialize();
+
+        Assert.assertNotNull(cache.get(entityID));
+        Assert.assertNull(original.getDOM());
+        Assert.assertNull(original.getValidUntil());
+    }
+
+    @Test
+    public void testSerializedEntities() throws Exception {
+        URL mdURL = MetadataQueryResponseCacheTest.class
+                .getResource("/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml");
+        FilesystemMetadataResolver serializedResolver = new FilesystemMetadataResolver(new File(mdURL.toURI()));
+        serializedResolver.setParserPool(parserPool);
+        serializedResolver.setId("serialized");
+        serializedResolver.setSerializedEntityStorage(true);
+        serializedResolver.setMaxMaterializedEntities(2);
+        serializedResolver.initialize();
+        try {
+            SerializedEntityStore store = serializedResolver.getBackingStore().getSerializedEntityStore();
+            
+            MetadataQueryResponseCache cache = new MetadataQueryResponseCache(serializedResolver);
+            cache.setMaxEntries(5);
+            cache.initialize();
+            
+            cache.refresh();
+            Assert.assertEquals(cache.getSize(), 5);
+            Assert.assertTrue(store.getMaterializedCount() <= 2);
+            
+            // Materialized again through the store when built on demand.
+            MetadataQueryResponseCache.Entry entry = cache.get(entityID);
+            Assert.assertNotNull(entry);
+            Assert.assertEquals(parse(entry).getEntityID(), entityID);
+            Assert.assertTrue(store.getMaterializedCount() <= 2);
+            
+            byte[] sha1 = MessageDigest.getInstance("SHA-1").digest(entityID.getBytes("UTF-8"));
+            Assert.assertSame(cache.get("{sha1}" + Hex.encodeHexString(sha1)), entry);
+            Assert.assertNull(cache.get("urn:example:unknown"));
+        } finally {
+            serializedResolver.destroy();
+        }
+    }
+
+    private EntityDescriptor parse(MetadataQueryResponseCache.Entry entry) throws Exception {
+        ByteBuffer content = entry.getContent();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return (EntityDescriptor) XMLObjectSupport.unmarshallFromInputStream(parserPool,
+                new ByteArrayInputStream(bytes));
+    }
+
+}
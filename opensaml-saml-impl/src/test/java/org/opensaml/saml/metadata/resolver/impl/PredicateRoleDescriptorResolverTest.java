@@ -30,6 +30,7 @@ import org.opensaml.saml.ext.saml2mdquery.AttributeQueryDescriptorType;
 import org.opensaml.saml.metadata.criteria.role.EvaluableRoleDescriptorCriterion;
 import org.opensaml.saml.metadata.resolver.MetadataResolver;
 import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.support.RoleDescriptorTable;
 import org.opensaml.saml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml.saml2.metadata.RoleDescriptor;
 import org.opensaml.saml.saml2.metadata.SPSSODescriptor;
@@ -41,6 +42,8 @@ import net.shibboleth.utilities.java.support.component.ComponentInitializationEx
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
+import com.google.common.collect.Iterables;
+
 /**
  *
  */
@@ -370,6 +373,43 @@ public class PredicateRoleDescriptorResolverTest extends XMLObjectBaseTestCase {
         Assert.assertEquals(6, count, "Resolved unexpected number of RoleDescriptors");
     }
 
+    /** Role lookup table is cached with the entity and discarded when the entity changes. */
+    @Test
+    public void testRoleDescriptorTableCaching() throws ResolverException, ComponentInitializationException {
+        final EntityDescriptor entityDescriptor = buildTestDescriptor();
+        // Changes must invalidate the table even though there is no cached DOM to release.
+        Assert.assertNull(entityDescriptor.getDOM());
+        final PredicateRoleDescriptorResolver roleResolver = 
+                new PredicateRoleDescriptorResolver(new StaticMetadataResolver(Lists.newArrayList(entityDescriptor)));
+        roleResolver.initialize();
+        
+        final CriteriaSet criteria = new CriteriaSet(new EntityRoleCriterion(SPSSODescriptor.DEFAULT_ELEMENT_NAME),
+                new ProtocolCriterion(SAMLConstants.SAML20P_NS));
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 1);
+        
+        final RoleDescriptorTable table = RoleDescriptorTable.get(entityDescriptor);
+        Assert.assertEquals(entityDescriptor.getObjectMetadata().get(RoleDescriptorTable.class).size(), 1);
+        Assert.assertSame(RoleDescriptorTable.get(entityDescriptor), table);
+        Assert.assertSame(table.getRoleDescriptors(SPSSODescriptor.DEFAULT_ELEMENT_NAME, SAMLConstants.SAML20P_NS),
+                table.getRoleDescriptors(SPSSODescriptor.DEFAULT_ELEMENT_NAME, SAMLConstants.SAML20P_NS));
+        Assert.assertEquals(table.getRoleDescriptors(SPSSODescriptor.DEFAULT_ELEMENT_NAME, null).size(), 2);
+        
+        entityDescriptor.getSPSSODescriptor(SAMLConstants.SAML11P_NS).addSupportedProtocol(SAMLConstants.SAML20P_NS);
+        Assert.assertTrue(entityDescriptor.getObjectMetadata().get(RoleDescriptorTable.class).isEmpty());
+        
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 2);
+        Assert.assertNotSame(RoleDescriptorTable.get(entityDescriptor), table);
+        
+        entityDescriptor.getSPSSODescriptor(SAMLConstants.SAML11P_NS).removeAllSupportedProtocols();
+        Assert.assertTrue(entityDescriptor.getObjectMetadata().get(RoleDescriptorTable.class).isEmpty());
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 1);
+        
+        entityDescriptor.getRoleDescriptors().remove(entityDescriptor.getSPSSODescriptor(SAMLConstants.SAML20P_NS));
+        Assert.assertTrue(entityDescriptor.getObjectMetadata().get(RoleDescriptorTable.class).isEmpty());
+        Assert.assertEquals(Iterables.size(roleResolver.resolve(criteria)), 0);
+        Assert.assertNull(entityDescriptor.getDOM());
+    }
+
     
     // Helper methods
     
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.metadata.resolver.impl;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.saml.common.SAMLTestSupport;
+import org.opensaml.saml.criterion.EntityRoleCriterion;
+import org.opensaml.saml.metadata.resolver.filter.EntityCallbackMetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.FilterException;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilter;
+import org.opensaml.saml.metadata.resolver.filter.MetadataFilterChain;
+import org.opensaml.saml.metadata.resolver.filter.impl.CredentialPreResolutionFilter;
+import org.opensaml.saml.metadata.resolver.index.MetadataIndex;
+import org.opensaml.saml.metadata.resolver.index.impl.RoleMetadataIndex;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.IDPSSODescriptor;
+import org.opensaml.saml.saml2.metadata.KeyDescriptor;
+import org.opensaml.saml.saml2.metadata.RoleDescriptor;
+import org.opensaml.saml.security.impl.MetadataCredentialResolver;
+import org.opensaml.security.credential.Credential;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+
+/** Tests for batch resolvers holding entities in a {@link SerializedEntityStore}. */
+public class SerializedEntityStoreTest extends XMLObjectBaseTestCase {
+
+    private static final String ENTITY_ID = "urn:mace:incommon:washington.edu";
+
+    private FilesystemMetadataResolver metadataProvider;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        final URL mdURL = SerializedEntityStoreTest.class
+                .getResource("/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml");
+
+        metadataProvider = new FilesystemMetadataResolver(new File(mdURL.toURI()));
+        metadataProvider.setParserPool(parserPool);
+        metadataProvider.setId("test");
+        metadataProvider.setSerializedEntityStorage(true);
+        metadataProvider.setMaxMaterializedEntities(2);
+        metadataProvider.setIndexes(Sets.<MetadataIndex>newHashSet(new RoleMetadataIndex()));
+        metadataProvider.initialize();
+    }
+
+    @Test
+    public void testStorage() {
+        final SerializedEntityStore store = metadataProvider.getBackingStore().getSerializedEntityStore();
+        Assert.assertNotNull(store);
+        Assert.assertEquals(store.getSize(), 31);
+        Assert.assertTrue(store.getStorageSize() > 0);
+        Assert.assertTrue(metadataProvider.getBackingStore().getOrderedDescriptors().isEmpty());
+
+        final EntitiesDescriptor root = (EntitiesDescriptor) metadataProvider.getCachedFilteredMetadata();
+        Assert.assertNotNull(root);
+        Assert.assertTrue(root.getEntityDescriptors().isEmpty());
+        Assert.assertEquals(root.getName(), "urn:mace:incommon");
+    }
+
+    @Test
+    public void testResolveByEntityID() throws ResolverException {
+        final CriteriaSet criteria = new CriteriaSet(new EntityIdCriterion(ENTITY_ID));
+        final EntityDescriptor descriptor = metadataProvider.resolveSingle(criteria);
+        Assert.assertNotNull(descriptor);
+        Assert.assertEquals(descriptor.getEntityID(), ENTITY_ID);
+        Assert.assertNull(descriptor.getDOM());
+        Assert.assertTrue(descriptor.getParent() instanceof EntitiesDescriptor);
+        Assert.assertEquals(((EntitiesDescriptor) descriptor.getParent()).getName(), "urn:mace:incommon");
+
+        Assert.assertSame(metadataProvider.resolveSingle(criteria), descriptor);
+        
+        Assert.assertEquals(Iterables.size(metadataProvider.resolve(
+                new CriteriaSet(new EntityIdCriterion("urn:mace:incommon:cornell.edu")))), 2);
+        Assert.assertEquals(
+                metadataProvider.getBackingStore().getSerializedEntityStore().getMaterializedCount(), 2);
+        
+        final EntityDescriptor rematerialized = metadataProvider.resolveSingle(criteria);
+        Assert.assertNotSame(rematerialized, descriptor);
+        Assert.assertEquals(rematerialized.getEntityID(), ENTITY_ID);
+    }
+
+    @Test
+    public void testResolveByIndex() throws ResolverException {
+        final Iterable<EntityDescriptor> descriptors = metadataProvider.resolve(
+                new CriteriaSet(new EntityRoleCriterion(IDPSSODescriptor.DEFAULT_ELEMENT_NAME)));
+        Assert.assertEquals(Iterables.size(descriptors), 15);
+        for (final EntityDescriptor descriptor : descriptors) {
+            Assert.assertFalse(descriptor.getRoleDescriptors(IDPSSODescriptor.DEFAULT_ELEMENT_NAME).isEmpty());
+        }
+    }
+
+    @Test
+    public void testDetachedParent() throws ResolverException {
+        final EntitiesDescriptor root = (EntitiesDescriptor) metadataProvider.getCachedFilteredMetadata();
+        final EntityDescriptor descriptor = metadataProvider.resolveSingle(
+                new CriteriaSet(new EntityIdCriterion(ENTITY_ID)));
+        Assert.assertSame(descriptor.getParent(), root);
+        Assert.assertFalse(root.getEntityDescriptors().contains(descriptor));
+        Assert.assertTrue(root.getEntityDescriptors().isEmpty());
+    }
+
+    @Test
+    public void testCredentialPreResolution() throws Exception {
+        final MetadataCredentialResolver credentialResolver = new MetadataCredentialResolver();
+        credentialResolver.setKeyInfoCredentialResolver(SAMLTestSupport.buildBasicInlineKeyInfoResolver());
+        credentialResolver.initialize();
+
+        final URL mdURL = SerializedEntityStoreTest.class
+                .getResource("/org/opensaml/saml/security/test1-metadata.xml");
+        final FilesystemMetadataResolver resolver = new FilesystemMetadataResolver(new File(mdURL.toURI()));
+        resolver.setParserPool(parserPool);
+        resolver.setId("credentials");
+        resolver.setSerializedEntityStorage(true);
+        resolver.setMaxMaterializedEntities(1);
+        resolver.setMetadataFilter(new CredentialPreResolutionFilter(credentialResolver));
+        resolver.initialize();
+        try {
+            // Each lookup evicts the other entity, so both are materialized more than once.
+            for (int i = 0; i < 2; i++) {
+                for (final String entityID : new String[] {"http://idp.example.org/shibboleth",
+                        "http://sp.example.org/"}) {
+                    final EntityDescriptor descriptor =
+                            resolver.resolveSingle(new CriteriaSet(new EntityIdCriterion(entityID)));
+                    Assert.assertNotNull(descriptor);
+                    int count = 0;
+                    for (final RoleDescriptor role : descriptor.getRoleDescriptors()) {
+                        for (final KeyDescriptor keyDescriptor : role.getKeyDescriptors()) {
+                            final List<Credential> credentials =
+                                    keyDescriptor.getObjectMetadata().get(Credential.class);
+                            for (final Credential credential : credentials) {
+                                Assert.assertEquals(credential.getEntityId(), entityID);
+                            }
+                            count += credentials.size();
+                        }
+                    }
+                    Assert.assertTrue(count > 0);
+                }
+            }
+        } finally {
+            resolver.destroy();
+        }
+    }
+
+    @Test
+    public void testMaterializationFilters() throws Exception {
+        final MetadataCredentialResolver credentialResolver = new MetadataCredentialResolver();
+        credentialResolver.setKeyInfoCredentialResolver(SAMLTestSupport.buildBasicInlineKeyInfoResolver());
+        credentialResolver.initialize();
+        final CredentialPreResolutionFilter credentialFilter = new CredentialPreResolutionFilter(credentialResolver);
+        final MarkingFilter markingFilter = new MarkingFilter(true);
+        final MarkingFilter otherFilter = new MarkingFilter(false);
+
+        final MetadataFilterChain inner = new MetadataFilterChain();
+        inner.setFilters(Arrays.<MetadataFilter>asList(otherFilter, markingFilter));
+        final MetadataFilterChain chain = new MetadataFilterChain();
+        chain.setFilters(Arrays.<MetadataFilter>asList(credentialFilter, inner));
+
+        final URL mdURL = SerializedEntityStoreTest.class
+                .getResource("/org/opensaml/saml/security/test1-metadata.xml");
+        final FilesystemMetadataResolver resolver = new FilesystemMetadataResolver(new File(mdURL.toURI()));
+        resolver.setParserPool(parserPool);
+        resolver.setId("filters");
+        resolver.setSerializedEntityStorage(true);
+        resolver.setMetadataFilter(chain);
+        resolver.initialize();
+        try {
+            Assert.assertEquals(resolver.getMaterializationFilters(),
+                    Arrays.<EntityCallbackMetadataFilter>asList(credentialFilter, markingFilter));
+
+            markingFilter.getEntityIDs().clear();
+            otherFilter.getEntityIDs().clear();
+            final EntityDescriptor descriptor = resolver.resolveSingle(
+                    new CriteriaSet(new EntityIdCriterion("http://sp.example.org/")));
+            Assert.assertNotNull(descriptor);
+            Assert.assertEquals(markingFilter.getEntityIDs(), Collections.singleton("http://sp.example.org/"));
+            Assert.assertTrue(otherFilter.getEntityIDs().isEmpty());
+        } finally {
+            resolver.destroy();
+        }
+    }
+
+    @Test
+    public void testIterate() {
+        Assert.assertEquals(Iterables.size(metadataProvider), 31);
+        Assert.assertEquals(Iterables.getFirst(metadataProvider, null).getEntityID(),
+                "urn:mace:incommon:internet2.edu");
+    }
+
+    /** A filter which records the entities it visits. */
+    private static class MarkingFilter implements EntityCallbackMetadataFilter {
+
+        private final Set<String> entityIDs = Collections.synchronizedSet(new HashSet<String>());
+
+        private final boolean reapplied;
+
+        public MarkingFilter(final boolean reapply) {
+            reapplied = reapply;
+        }
+
+        public Set<String> getEntityIDs() {
+            return entityIDs;
+        }
+
+        public XMLObject filter(final XMLObject metadata) throws FilterException {
+            return metadata;
+        }
+
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        public boolean isReappliedOnMaterialization() {
+            return reapplied;
+        }
+
+        public void preFilter(final XMLObject metadata) throws FilterException {
+        }
+
+        public boolean filterEntity(final EntityDescriptor entity, final EntitiesDescriptor group)
+                throws FilterException {
+            entityIDs.add(entity.getEntityID());
+            return true;
+        }
+
+        public void postFilter(final XMLObject metadata) throws FilterException {
+        }
+    }
+
+}
@@ -21,11 +21,14 @@ import org.testng.annotations.Test;
 import org.testng.annotations.BeforeMethod;
 import org.testng.Assert;
 import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.List;
 
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.security.RandomIdentifierGenerationStrategy;
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 
+import org.apache.xml.security.transforms.params.InclusiveNamespaces;
 import org.joda.time.DateTime;
 import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.core.xml.io.Marshaller;
@@ -33,6 +36,9 @@ import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.core.xml.io.UnmarshallingException;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.SAMLObjectContentReference;
 import org.opensaml.saml.common.SAMLObjectBuilder;
 import org.opensaml.saml.common.SAMLTestSupport;
 import org.opensaml.saml.common.SAMLVersion;
@@ -46,12 +52,14 @@ import org.opensaml.security.credential.impl.StaticCredentialResolver;
 import org.opensaml.security.crypto.KeySupport;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.ContentReference;
 import org.opensaml.xmlsec.signature.support.SignatureConstants;
 import org.opensaml.xmlsec.signature.support.SignatureException;
 import org.opensaml.xmlsec.signature.support.Signer;
 import org.opensaml.xmlsec.signature.support.impl.ExplicitKeySignatureTrustEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
 
 public class SignedAssertionTest extends XMLObjectBaseTestCase {
     
@@ -146,4 +154,108 @@ public class SignedAssertionTest extends XMLObjectBaseTestCase {
         Assert.assertTrue(trustEngine.validate(signedAssertion.getSignature(), criteriaSet),
                 "Assertion signature was not valid");
     }
+
+    /**
+     * Copies an Assertion with a Signature template whose content reference has been customized, then signs the copy
+     * and verifies the signature.
+     * 
+     * @throws MarshallingException thrown if the Assertion can not be marshalled into a DOM
+     * @throws SignatureException thrown if the Assertion can not be signed
+     * @throws UnmarshallingException thrown if the copy can not be built
+     * @throws SecurityException thrown if the signature can not be validated
+     */
+    @Test
+    public void testCopiedAssertionSignature()
+            throws MarshallingException, SignatureException, UnmarshallingException, SecurityException {
+        DateTime now = new DateTime();
+        
+        Assertion assertion = assertionBuilder.buildObject();
+        assertion.setVersion(SAMLVersion.VERSION_20);
+        assertion.setID(idGenerator.generateIdentifier());
+        assertion.setIssueInstant(now);
+        
+        Issuer issuer = issuerBuilder.buildObject();
+        issuer.setValue("urn:example.org:issuer");
+        assertion.setIssuer(issuer);
+        
+        // The xsi:type of the value uses a namespace prefix which is not visibly used.
+        XSString attributeValue = builderFactory.<XSString>getBuilderOrThrow(XSString.TYPE_NAME).buildObject(
+                AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+        attributeValue.setValue("value");
+        Attribute attribute = (Attribute) builderFactory.getBuilderOrThrow(Attribute.DEFAULT_ELEMENT_NAME)
+                .buildObject(Attribute.DEFAULT_ELEMENT_NAME);
+        attribute.setName("urn:example.org:attribute");
+        attribute.getAttributeValues().add(attributeValue);
+        AttributeStatement attributeStatement = (AttributeStatement) builderFactory.getBuilderOrThrow(
+                AttributeStatement.DEFAULT_ELEMENT_NAME).buildObject(AttributeStatement.DEFAULT_ELEMENT_NAME);
+        attributeStatement.getAttributes().add(attribute);
+        assertion.getAttributeStatements().add(attributeStatement);
+        
+        Signature signature = signatureBuilder.buildObject(Signature.DEFAULT_ELEMENT_NAME);
+        signature.setSigningCredential(goodCredential);
+        signature.setCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        signature.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA);
+        assertion.setSignature(signature);
+        
+        SAMLObjectContentReference contentReference =
+                (SAMLObjectContentReference) signature.getContentReferences().get(0);
+        contentReference.setDigestAlgorithm(SignatureConstants.ALGO_ID_DIGEST_SHA512);
+        contentReference.getTransforms().set(1, SignatureConstants.TRANSFORM_C14N_EXCL_WITH_COMMENTS);
+        List<String> transforms = Arrays.asList(SignatureConstants.TRANSFORM_ENVELOPED_SIGNATURE,
+                SignatureConstants.TRANSFORM_C14N_EXCL_WITH_COMMENTS);
+        
+        Assertion copiedAssertion = XMLObjectSupport.copyXMLObject(assertion);
+        Assert.assertNull(assertion.getDOM(), "Original Assertion was marshalled");
+        
+        Signature copiedSignature = copiedAssertion.getSignature();
+        Assert.assertNotNull(copiedSignature, "Signature was not copied");
+        Assert.assertNotSame(copiedSignature, signature);
+        Assert.assertEquals(copiedSignature.getContentReferences().size(), 1);
+        ContentReference copiedReference = copiedSignature.getContentReferences().get(0);
+        Assert.assertTrue(copiedReference instanceof SAMLObjectContentReference, "Unexpected content reference type");
+        Assert.assertNotSame(copiedReference, contentReference);
+        Assert.assertSame(((SAMLObjectContentReference) copiedReference).getSignableObject(), copiedAssertion,
+                "Content reference was not retargeted to the copied Assertion");
+        Assert.assertEquals(((SAMLObjectContentReference) copiedReference).getDigestAlgorithm(),
+                SignatureConstants.ALGO_ID_DIGEST_SHA512);
+        Assert.assertEquals(((SAMLObjectContentReference) copiedReference).getTransforms(), transforms);
+        Assert.assertSame(contentReference.getSignableObject(), assertion, "Original content reference was changed");
+        Assert.assertEquals(contentReference.getTransforms(), transforms);
+        
+        Marshaller marshaller = marshallerFactory.getMarshaller(copiedAssertion);
+        marshaller.marshall(copiedAssertion);
+        Signer.signObject(copiedSignature);
+        
+        if (log.isDebugEnabled()) {
+            log.debug("Marshalled signed copy of assertion: \n"
+                    + SerializeSupport.nodeToString(copiedAssertion.getDOM()));
+        }
+        
+        Element reference = (Element) copiedAssertion.getDOM().getElementsByTagNameNS(SignatureConstants.XMLSIG_NS,
+                "Reference").item(0);
+        Assert.assertEquals(reference.getAttributeNS(null, "URI"), "#" + assertion.getID());
+        Element digestMethod = (Element) reference.getElementsByTagNameNS(SignatureConstants.XMLSIG_NS,
+                "DigestMethod").item(0);
+        Assert.assertEquals(digestMethod.getAttributeNS(null, "Algorithm"), SignatureConstants.ALGO_ID_DIGEST_SHA512);
+        Element inclusiveNamespaces = (Element) reference.getElementsByTagNameNS(
+                InclusiveNamespaces.ExclusiveCanonicalizationNamespace, InclusiveNamespaces._TAG_EC_INCLUSIVENAMESPACES)
+                .item(0);
+        Assert.assertNotNull(inclusiveNamespaces, "Inclusive namespace prefixes were not generated");
+        List<String> prefixes = Arrays.asList(
+                inclusiveNamespaces.getAttributeNS(null, InclusiveNamespaces._ATT_EC_PREFIXLIST).split(" "));
+        Assert.assertTrue(prefixes.contains(XSString.TYPE_NAME.getPrefix()),
+                "Inclusive namespace prefixes did not include the xsi:type prefix");
+        
+        // Unmarshall new tree around DOM to avoid side effects and Apache xmlsec bug.
+        Assertion signedAssertion = (Assertion) unmarshallerFactory.getUnmarshaller(copiedAssertion.getDOM())
+                .unmarshall(copiedAssertion.getDOM());
+        
+        StaticCredentialResolver credResolver = new StaticCredentialResolver(goodCredential);
+        KeyInfoCredentialResolver kiResolver = SAMLTestSupport.buildBasicInlineKeyInfoResolver();
+        ExplicitKeySignatureTrustEngine trustEngine = new ExplicitKeySignatureTrustEngine(credResolver, kiResolver);
+        
+        CriteriaSet criteriaSet = new CriteriaSet( new EntityIdCriterion("urn:example.org:issuer") );
+        Assert.assertTrue(trustEngine.validate(signedAssertion.getSignature(), criteriaSet),
+                "Copied assertion signature was not valid");
+    }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.core.impl;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.CopierFactory;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.core.Response;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link AssertionCopier} and the copiers of the content of assertions and responses.
+ */
+public class AssertionCopierTest extends XMLObjectBaseTestCase {
+
+    /** Response containing an assertion with authentication and attribute statements. */
+    private static final String RESPONSE_FILE = "/org/opensaml/saml/saml2/core/ResponseSuccessAuthnAttrib.xml";
+
+    /** Tests that the copiers are registered. */
+    @Test
+    public void testRegistration() {
+        final CopierFactory factory = XMLObjectProviderRegistrySupport.getCopierFactory();
+
+        Assert.assertTrue(factory.getCopier(Assertion.DEFAULT_ELEMENT_NAME) instanceof AssertionCopier);
+        Assert.assertTrue(factory.getCopier(Response.DEFAULT_ELEMENT_NAME) instanceof ResponseCopier);
+        Assert.assertTrue(factory.getCopier(NameID.DEFAULT_ELEMENT_NAME) instanceof NameIDTypeCopier);
+        Assert.assertTrue(factory.getCopier(Issuer.DEFAULT_ELEMENT_NAME) instanceof NameIDTypeCopier);
+    }
+
+    /**
+     * Tests copying an unmarshalled response field by field.
+     * 
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testResponseCopy() throws MarshallingException, UnmarshallingException {
+        final Response response = unmarshallElement(RESPONSE_FILE);
+        final Assertion assertion = response.getAssertions().get(0);
+
+        final Response copy = XMLObjectSupport.copyXMLObject(response);
+        Assert.assertNotSame(copy, response);
+        Assert.assertNotNull(response.getDOM(), "Copying released the original's cached DOM");
+        Assert.assertNull(copy.getDOM(), "Copy was unmarshalled from a DOM");
+
+        final Assertion assertionCopy = copy.getAssertions().get(0);
+        Assert.assertNotSame(assertionCopy, assertion);
+        Assert.assertNull(assertionCopy.getDOM());
+        Assert.assertSame(assertionCopy.getParent(), copy);
+        Assert.assertSame(copy.resolveID(assertion.getID()), assertionCopy);
+        Assert.assertEquals(assertionCopy.getSubject().getNameID().getValue(),
+                assertion.getSubject().getNameID().getValue());
+
+        final Attribute attributeCopy = assertionCopy.getAttributeStatements().get(0).getAttributes().get(0);
+        Assert.assertEquals(attributeCopy.getAttributeValues().size(), 2);
+        Assert.assertTrue(attributeCopy.getAttributeValues().get(0) instanceof XSString);
+
+        response.releaseDOM();
+        response.releaseChildrenDOM(true);
+        assertXMLEquals(XMLObjectSupport.marshall(response).getOwnerDocument(), copy);
+    }
+
+    /**
+     * Tests copying an assertion detached from its parent.
+     * 
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testAssertionCopy() throws MarshallingException, UnmarshallingException {
+        final Response response = unmarshallElement(RESPONSE_FILE);
+        final Assertion assertion = response.getAssertions().get(0);
+
+        final Assertion copy = XMLObjectSupport.copyXMLObject(assertion);
+        Assert.assertNull(copy.getParent());
+        Assert.assertNull(copy.getDOM());
+        Assert.assertSame(copy.resolveID(assertion.getID()), copy);
+        Assert.assertEquals(copy.getIssueInstant(), assertion.getIssueInstant());
+        Assert.assertEquals(copy.getConditions().getAudienceRestrictions().get(0).getAudiences().get(0)
+                .getAudienceURI(), "https://sp.example.org");
+
+        assertion.releaseDOM();
+        assertion.releaseChildrenDOM(true);
+        assertXMLEquals(XMLObjectSupport.marshall(assertion).getOwnerDocument(), copy);
+    }
+
+}
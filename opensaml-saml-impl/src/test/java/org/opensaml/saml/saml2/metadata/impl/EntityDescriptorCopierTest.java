@@ -0,0 +1,107 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.saml.saml2.metadata.impl;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.CopierFactory;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.metadata.EntitiesDescriptor;
+import org.opensaml.saml.saml2.metadata.EntityDescriptor;
+import org.opensaml.saml.saml2.metadata.SingleSignOnService;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.opensaml.xmlsec.signature.impl.KeyInfoCopier;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link EntityDescriptorCopier} and the copiers of the content of metadata.
+ */
+public class EntityDescriptorCopierTest extends XMLObjectBaseTestCase {
+
+    /** Metadata with a variety of entities. */
+    private static final String METADATA_FILE = "/org/opensaml/saml/saml2/metadata/InCommon-metadata.xml";
+
+    /** Entity in the metadata. */
+    private static final String ENTITY_ID = "urn:mace:incommon:washington.edu";
+
+    /** Tests that the copiers are registered. */
+    @Test
+    public void testRegistration() {
+        final CopierFactory factory = XMLObjectProviderRegistrySupport.getCopierFactory();
+
+        Assert.assertTrue(factory.getCopier(EntityDescriptor.DEFAULT_ELEMENT_NAME) instanceof EntityDescriptorCopier);
+        Assert.assertTrue(factory.getCopier(SingleSignOnService.DEFAULT_ELEMENT_NAME) instanceof EndpointCopier);
+        Assert.assertTrue(factory.getCopier(KeyInfo.DEFAULT_ELEMENT_NAME) instanceof KeyInfoCopier);
+    }
+
+    /**
+     * Tests copying unmarshalled metadata field by field.
+     * 
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testMetadataCopy() throws MarshallingException, UnmarshallingException {
+        final EntitiesDescriptor metadata = unmarshallElement(METADATA_FILE);
+        metadata.setSignature(null);
+
+        final EntitiesDescriptor copy = XMLObjectSupport.copyXMLObject(metadata);
+        Assert.assertNotSame(copy, metadata);
+        Assert.assertNull(copy.getDOM(), "Copy was unmarshalled from a DOM");
+        Assert.assertEquals(copy.getEntityDescriptors().size(), metadata.getEntityDescriptors().size());
+
+        metadata.releaseDOM();
+        metadata.releaseChildrenDOM(true);
+        assertXMLEquals(XMLObjectSupport.marshall(metadata).getOwnerDocument(), copy);
+    }
+
+    /**
+     * Tests copying an entity detached from its parent.
+     * 
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testEntityCopy() throws MarshallingException, UnmarshallingException {
+        final EntitiesDescriptor metadata = unmarshallElement(METADATA_FILE);
+        EntityDescriptor entity = null;
+        for (final EntityDescriptor candidate : metadata.getEntityDescriptors()) {
+            if (ENTITY_ID.equals(candidate.getEntityID())) {
+                entity = candidate;
+            }
+        }
+        Assert.assertNotNull(entity);
+
+        final EntityDescriptor copy = XMLObjectSupport.copyXMLObject(entity);
+        Assert.assertNull(copy.getParent());
+        Assert.assertNull(copy.getDOM());
+        Assert.assertNotNull(entity.getDOM(), "Copying released the original's cached DOM");
+        Assert.assertEquals(copy.getEntityID(), ENTITY_ID);
+        Assert.assertEquals(copy.getRoleDescriptors().size(), entity.getRoleDescriptors().size());
+        Assert.assertNotSame(copy.getRoleDescriptors().get(0), entity.getRoleDescriptors().get(0));
+        Assert.assertSame(copy.getRoleDescriptors().get(0).getParent(), copy);
+
+        entity.releaseDOM();
+        entity.releaseChildrenDOM(true);
+        assertXMLEquals(XMLObjectSupport.marshall(entity).getOwnerDocument(), copy);
+    }
+
+}
@@ -27,6 +27,7 @@ import javax.annotation.Nullable;
 import net.shibboleth.utilities.java.support.collection.Pair;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 
+import org.joda.time.DateTime;
 import org.opensaml.core.xml.XMLObject;
 import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.io.MarshallingException;
@@ -39,6 +40,7 @@ import org.opensaml.saml.common.messaging.context.SAMLSelfEntityContext;
 import org.opensaml.saml.saml2.assertion.SAML20AssertionValidator;
 import org.opensaml.saml.saml2.assertion.SAML2AssertionValidationParameters;
 import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Conditions;
 import org.opensaml.saml.saml2.core.SubjectConfirmation;
 import org.opensaml.saml.saml2.profile.SAML2ActionTestingSupport;
 import org.opensaml.saml.saml2.wssecurity.SAML20AssertionToken;
@@ -286,7 +288,55 @@ public class WSSecuritySAML20AssertionTokenSecurityHandlerTest extends XMLObject
         handler.invoke(messageContext);
     }
     
-
+    @Test
+    public void testValidationCache() throws ComponentInitializationException, MessageHandlerException,
+            MarshallingException {
+        final Conditions conditions = buildXMLObject(Conditions.DEFAULT_ELEMENT_NAME);
+        conditions.setNotOnOrAfter(new DateTime().plusMinutes(5));
+        assertion.setConditions(conditions);
+        marshallerFactory.getMarshaller(assertion).marshall(assertion);
+        
+        final MockAssertionValidator validator =
+                new MockAssertionValidator(ValidationResult.VALID, subjectConfirmation, false);
+        final SAML20AssertionTokenValidationCache cache = new SAML20AssertionTokenValidationCache();
+        handler.setAssertionValidator(validator);
+        handler.setValidationCache(cache);
+        handler.initialize();
+        
+        handler.invoke(messageContext);
+        handler.invoke(messageContext);
+        
+        Assert.assertEquals(validator.fullValidations, 1);
+        Assert.assertEquals(validator.subjectValidations, 1);
+        Assert.assertEquals(cache.getSize(), 1);
+        
+        WSSecurityContext securityContext = messageContext.getSubcontext(WSSecurityContext.class);
+        Assert.assertNotNull(securityContext);
+        Assert.assertEquals(securityContext.getTokens().size(), 2);
+        SAML20AssertionToken token = (SAML20AssertionToken) securityContext.getTokens().get(1);
+        Assert.assertEquals(token.getValidationStatus(), ValidationStatus.VALID);
+        Assert.assertSame(token.getSubjectConfirmation(), subjectConfirmation);
+    }
+    
+    @Test
+    public void testValidationCacheNoNotOnOrAfter() throws ComponentInitializationException,
+            MessageHandlerException, MarshallingException {
+        marshallerFactory.getMarshaller(assertion).marshall(assertion);
+        
+        final MockAssertionValidator validator =
+                new MockAssertionValidator(ValidationResult.VALID, subjectConfirmation, false);
+        final SAML20AssertionTokenValidationCache cache = new SAML20AssertionTokenValidationCache();
+        handler.setAssertionValidator(validator);
+        handler.setValidationCache(cache);
+        handler.initialize();
+        
+        handler.invoke(messageContext);
+        handler.invoke(messageContext);
+        
+        Assert.assertEquals(validator.fullValidations, 2);
+        Assert.assertEquals(validator.subjectValidations, 0);
+        Assert.assertEquals(cache.getSize(), 0);
+    }
     
     
     //
@@ -342,6 +392,8 @@ public class WSSecuritySAML20AssertionTokenSecurityHandlerTest extends XMLObject
         private ValidationResult  validationResult;
         private boolean isThrowException;
         private SubjectConfirmation confirmedSubjectConfirmation;
+        private int fullValidations;
+        private int subjectValidations;
         
         public MockAssertionValidator(ValidationResult result, SubjectConfirmation confirmed, boolean throwException) {
             super(null, null, null, null, null);
@@ -352,7 +404,18 @@ public class WSSecuritySAML20AssertionTokenSecurityHandlerTest extends XMLObject
         
         @Nonnull public ValidationResult validate(@Nonnull Assertion assertion, @Nonnull ValidationContext context)
                 throws AssertionValidationException {
-            
+            fullValidations++;
+            return validateSubject(context);
+        }
+        
+        @Nonnull public ValidationResult validateSubjectAndStatements(@Nonnull Assertion assertion,
+                @Nonnull ValidationContext context) throws AssertionValidationException {
+            subjectValidations++;
+            return validateSubject(context);
+        }
+        
+        @Nonnull private ValidationResult validateSubject(@Nonnull ValidationContext context)
+                throws AssertionValidationException {
             if (isThrowException) {
                 throw new AssertionValidationException();
             } else {
@@ -17,7 +17,6 @@
 
 package org.opensaml.security.credential.impl;
 
-import java.util.ArrayList;
 import java.util.Collection;
 
 import javax.annotation.Nonnull;
@@ -38,6 +37,11 @@ import org.opensaml.security.credential.Credential;
  * have been present in the specified criteria set, or that are resolved by lookup in the
  * {@link org.opensaml.security.credential.criteria.impl.EvaluableCredentialCriteriaRegistry}.
  * </p>
+ * 
+ * <p>
+ * If the underlying collection is an {@link IndexedCredentialCollection}, and all predicates must be satisfied,
+ * the candidates to be filtered are first narrowed using the collection's indexes.
+ * </p>
  */
 public class CollectionCredentialResolver extends AbstractCriteriaFilteringCredentialResolver {
     
@@ -47,12 +51,12 @@ public class CollectionCredentialResolver extends AbstractCriteriaFilteringCrede
     /**
      * Constructor.
      * 
-     * An {@link ArrayList} is used as the underlying collection implementation.
+     * An {@link IndexedCredentialCollection} is used as the underlying collection implementation.
      *
      */
     public CollectionCredentialResolver() {
         super();
-        collection = new ArrayList<>();
+        collection = new IndexedCredentialCollection();
     }
     
     /**
@@ -77,6 +81,9 @@ public class CollectionCredentialResolver extends AbstractCriteriaFilteringCrede
     /** {@inheritDoc} */
     @Nonnull protected Iterable<Credential> resolveFromSource(@Nullable final CriteriaSet criteriaSet)
             throws ResolverException {
+        if (collection instanceof IndexedCredentialCollection && isSatisfyAllPredicates()) {
+            return ((IndexedCredentialCollection) collection).getCandidates(criteriaSet);
+        }
         return collection;
     }
 
@@ -0,0 +1,650 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.security.credential.impl;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.security.auth.x500.X500Principal;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.criteria.KeyNameCriterion;
+import org.opensaml.security.criteria.UsageCriterion;
+import org.opensaml.security.x509.X509Credential;
+import org.opensaml.security.x509.X509DigestCriterion;
+import org.opensaml.security.x509.X509IssuerSerialCriterion;
+import org.opensaml.security.x509.X509SubjectKeyIdentifierCriterion;
+import org.opensaml.security.x509.X509SubjectNameCriterion;
+import org.opensaml.security.x509.X509Support;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+
+/**
+ * A {@link Collection} of {@link Credential}s which maintains lookup indexes over the credentials it holds.
+ * 
+ * <p>
+ * The credentials are indexed by entityID, usage, key name, X.509 subject key identifier, issuer name and serial
+ * number, and subject name, as each credential is added. Certificate digests are indexed on first lookup for a
+ * given digest algorithm, and maintained thereafter, so that each certificate is hashed at most once per algorithm.
+ * </p>
+ * 
+ * <p>
+ * {@link #getCandidates(CriteriaSet)} uses the indexes to return a subset of the credentials which is guaranteed to
+ * include every credential which satisfies the corresponding evaluable credential criteria, including those which
+ * would be accepted because the criterion can not be evaluated against them. The candidates must still be evaluated
+ * against the criteria, as is done by {@link CollectionCredentialResolver}.
+ * </p>
+ * 
+ * <p>
+ * Credentials are indexed when added, and must not be modified while they are held by the collection. Iteration
+ * is over an immutable snapshot of the collection, in insertion order, which is built on the first read following
+ * a change and then shared by all readers until the next change.
+ * </p>
+ */
+@ThreadSafe
+public class IndexedCredentialCollection extends AbstractCollection<Credential> {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(IndexedCredentialCollection.class);
+
+    /** Lock guarding the collection and its indexes. */
+    @Nonnull private final ReadWriteLock lock;
+
+    /** The held credentials, in insertion order. */
+    @Nonnull private final List<Entry> entries;
+
+    /** Index by entityID. */
+    @Nonnull private final Index<String> entityIDIndex;
+
+    /** Index by usage. */
+    @Nonnull private final Index<UsageType> usageIndex;
+
+    /** Index by key name. */
+    @Nonnull private final Index<String> keyNameIndex;
+
+    /** Index by subject key identifier. */
+    @Nonnull private final Index<ByteBuffer> skiIndex;
+
+    /** Index by issuer name and serial number. */
+    @Nonnull private final Index<List<Object>> issuerSerialIndex;
+
+    /** Index by subject name. */
+    @Nonnull private final Index<X500Principal> subjectNameIndex;
+
+    /** Indexes by certificate digest, per digest algorithm, built on demand. */
+    @Nonnull private final Map<String, Index<ByteBuffer>> digestIndexes;
+
+    /** Immutable snapshot of the held credentials, in insertion order, or null if it must be rebuilt. */
+    @Nullable private volatile List<Credential> snapshot;
+
+    /** Sequence number to assign to the next credential added. */
+    private long nextSequence;
+
+    /** Constructor. */
+    public IndexedCredentialCollection() {
+        lock = new ReentrantReadWriteLock();
+        entries = new ArrayList<>();
+        entityIDIndex = new Index<>();
+        usageIndex = new Index<>();
+        keyNameIndex = new Index<>();
+        skiIndex = new Index<>();
+        issuerSerialIndex = new Index<>();
+        subjectNameIndex = new Index<>();
+        digestIndexes = new HashMap<>();
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param credentials the credentials to add to the collection
+     */
+    public IndexedCredentialCollection(@Nonnull @NonnullElements final Collection<Credential> credentials) {
+        this();
+        Constraint.isNotNull(credentials, "Credential collection cannot be null");
+        addAll(credentials);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public Iterator<Credential> iterator() {
+        final List<Credential> credentials = getSnapshot();
+
+        return new Iterator<Credential>() {
+
+            /** Position of the next credential. */
+            private int next;
+
+            /** The credential last returned. */
+            @Nullable private Credential last;
+
+            /** {@inheritDoc} */
+            public boolean hasNext() {
+                return next < credentials.size();
+            }
+
+            /** {@inheritDoc} */
+            public Credential next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = credentials.get(next++);
+                return last;
+            }
+
+            /** {@inheritDoc} */
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                IndexedCredentialCollection.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean add(@Nonnull final Credential credential) {
+        Constraint.isNotNull(credential, "Credential cannot be null");
+        lock.writeLock().lock();
+        try {
+            final Entry entry = new Entry(nextSequence++, credential);
+            entries.add(entry);
+            snapshot = null;
+            index(entry);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean remove(@Nullable final Object o) {
+        lock.writeLock().lock();
+        try {
+            final Iterator<Entry> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                final Entry entry = iterator.next();
+                if (entry.credential.equals(o)) {
+                    iterator.remove();
+                    snapshot = null;
+                    unindex(entry);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            snapshot = null;
+            entityIDIndex.clear();
+            usageIndex.clear();
+            keyNameIndex.clear();
+            skiIndex.clear();
+            issuerSerialIndex.clear();
+            subjectNameIndex.clear();
+            digestIndexes.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the credentials which may satisfy the indexed criteria in the supplied criteria set, in insertion order.
+     * 
+     * <p>
+     * The most selective of the indexed criteria present is used. If no indexed criterion is present,
+     * the immutable snapshot of all the credentials is returned, without copying.
+     * </p>
+     * 
+     * @param criteriaSet the criteria to evaluate
+     * 
+     * @return the candidate credentials
+     */
+    @Nonnull @NonnullElements public List<Credential> getCandidates(@Nullable final CriteriaSet criteriaSet) {
+        if (criteriaSet != null) {
+            final X509DigestCriterion digestCriterion = criteriaSet.get(X509DigestCriterion.class);
+            if (digestCriterion != null) {
+                ensureDigestIndex(digestCriterion.getAlgorithm());
+            }
+        }
+
+        if (criteriaSet != null) {
+            lock.readLock().lock();
+            try {
+                final List<Entry> best = lookup(criteriaSet);
+                if (best != null) {
+                    final List<Credential> candidates = new ArrayList<>(best.size());
+                    for (final Entry entry : best) {
+                        candidates.add(entry.credential);
+                    }
+                    return candidates;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        return getSnapshot();
+    }
+
+    /**
+     * Get the immutable snapshot of the held credentials, building it if the collection has changed.
+     * 
+     * @return the snapshot
+     */
+    @Nonnull @NonnullElements private List<Credential> getSnapshot() {
+        List<Credential> current = snapshot;
+        if (current == null) {
+            lock.readLock().lock();
+            try {
+                final List<Credential> credentials = new ArrayList<>(entries.size());
+                for (final Entry entry : entries) {
+                    credentials.add(entry.credential);
+                }
+                current = Collections.unmodifiableList(credentials);
+                snapshot = current;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Look up the candidates for each indexed criterion present, returning the smallest set.
+     * 
+     * @param criteriaSet the criteria to evaluate
+     * 
+     * @return the smallest candidate set, or null if no indexed criterion is present
+     */
+    // Checkstyle: CyclomaticComplexity OFF
+    @Nullable private List<Entry> lookup(@Nonnull final CriteriaSet criteriaSet) {
+        List<Entry> best = null;
+
+        final EntityIdCriterion entityIDCriterion = criteriaSet.get(EntityIdCriterion.class);
+        if (entityIDCriterion != null) {
+            best = narrow(best, entityIDIndex.get(entityIDCriterion.getEntityId()));
+        }
+
+        final UsageCriterion usageCriterion = criteriaSet.get(UsageCriterion.class);
+        if (usageCriterion != null && usageCriterion.getUsage() != UsageType.UNSPECIFIED) {
+            best = narrow(best, usageIndex.get(usageCriterion.getUsage()));
+        }
+
+        final KeyNameCriterion keyNameCriterion = criteriaSet.get(KeyNameCriterion.class);
+        if (keyNameCriterion != null) {
+            best = narrow(best, keyNameIndex.get(keyNameCriterion.getKeyName()));
+        }
+
+        final X509SubjectKeyIdentifierCriterion skiCriterion =
+                criteriaSet.get(X509SubjectKeyIdentifierCriterion.class);
+        if (skiCriterion != null) {
+            best = narrow(best, skiIndex.get(ByteBuffer.wrap(skiCriterion.getSubjectKeyIdentifier())));
+        }
+
+        final X509IssuerSerialCriterion issuerSerialCriterion = criteriaSet.get(X509IssuerSerialCriterion.class);
+        if (issuerSerialCriterion != null) {
+            best = narrow(best, issuerSerialIndex.get(
+                    issuerSerialKey(issuerSerialCriterion.getIssuerName(), issuerSerialCriterion.getSerialNumber())));
+        }
+
+        final X509SubjectNameCriterion subjectNameCriterion = criteriaSet.get(X509SubjectNameCriterion.class);
+        if (subjectNameCriterion != null) {
+            best = narrow(best, subjectNameIndex.get(subjectNameCriterion.getSubjectName()));
+        }
+
+        final X509DigestCriterion digestCriterion = criteriaSet.get(X509DigestCriterion.class);
+        if (digestCriterion != null) {
+            final Index<ByteBuffer> digestIndex = digestIndexes.get(digestCriterion.getAlgorithm());
+            if (digestIndex != null) {
+                best = narrow(best, digestIndex.get(ByteBuffer.wrap(digestCriterion.getDigest())));
+            }
+        }
+
+        return best;
+    }
+    // Checkstyle: CyclomaticComplexity ON
+
+    /**
+     * Return the smaller of two candidate sets.
+     * 
+     * @param current the current candidate set, or null
+     * @param candidates the new candidate set, or null
+     * 
+     * @return the smaller set
+     */
+    @Nullable private List<Entry> narrow(@Nullable final List<Entry> current, @Nullable final List<Entry> candidates) {
+        if (current == null) {
+            return candidates;
+        } else if (candidates == null) {
+            return current;
+        }
+        return candidates.size() < current.size() ? candidates : current;
+    }
+
+    /**
+     * Build the digest index for an algorithm if it does not yet exist.
+     * 
+     * @param algorithm the JCA digest algorithm
+     */
+    private void ensureDigestIndex(@Nonnull final String algorithm) {
+        lock.readLock().lock();
+        try {
+            if (digestIndexes.containsKey(algorithm)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!digestIndexes.containsKey(algorithm)) {
+                log.debug("Building certificate digest index for algorithm {}", algorithm);
+                final Index<ByteBuffer> digestIndex = new Index<>();
+                for (final Entry entry : entries) {
+                    indexDigest(digestIndex, algorithm, entry, true);
+                }
+                digestIndexes.put(algorithm, digestIndex);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a credential to, or remove it from, a digest index.
+     * 
+     * @param digestIndex the index
+     * @param algorithm the JCA digest algorithm
+     * @param entry the credential entry
+     * @param add true to add, false to remove
+     */
+    private void indexDigest(@Nonnull final Index<ByteBuffer> digestIndex, @Nonnull final String algorithm,
+            @Nonnull final Entry entry, final boolean add) {
+        final X509Certificate cert = getEntityCertificate(entry.credential);
+        if (cert == null) {
+            return;
+        }
+
+        ByteBuffer key = entry.digests.get(algorithm);
+        if (key == null && add) {
+            try {
+                key = ByteBuffer.wrap(MessageDigest.getInstance(algorithm).digest(cert.getEncoded()));
+                entry.digests.put(algorithm, key);
+            } catch (final CertificateEncodingException e) {
+                log.error("Unable to encode certificate for digest operation", e);
+            } catch (final NoSuchAlgorithmException e) {
+                log.error("Unable to obtain a digest implementation for algorithm {}", algorithm, e);
+            }
+        }
+
+        digestIndex.update(key, entry, add);
+    }
+
+    /**
+     * Add a credential to all indexes.
+     * 
+     * @param entry the credential entry
+     */
+    private void index(@Nonnull final Entry entry) {
+        update(entry, true);
+    }
+
+    /**
+     * Remove a credential from all indexes.
+     * 
+     * @param entry the credential entry
+     */
+    private void unindex(@Nonnull final Entry entry) {
+        update(entry, false);
+    }
+
+    /**
+     * Add a credential to, or remove it from, all indexes.
+     * 
+     * <p>
+     * Credentials which the corresponding criterion could not evaluate are held in the index's unkeyed set, since
+     * such credentials may satisfy the criterion. X.509 criteria reject credentials which carry no entity
+     * certificate, so these are not indexed by X.509 properties at all.
+     * </p>
+     * 
+     * @param entry the credential entry
+     * @param add true to add, false to remove
+     */
+    private void update(@Nonnull final Entry entry, final boolean add) {
+        final Credential credential = entry.credential;
+
+        entityIDIndex.update(Strings.emptyToNull(credential.getEntityId()), entry, add);
+
+        final UsageType usage = credential.getUsageType();
+        usageIndex.update(usage != UsageType.UNSPECIFIED ? usage : null, entry, add);
+
+        if (credential.getKeyNames().isEmpty()) {
+            keyNameIndex.update(null, entry, add);
+        } else {
+            for (final String keyName : credential.getKeyNames()) {
+                keyNameIndex.update(keyName, entry, add);
+            }
+        }
+
+        final X509Certificate cert = getEntityCertificate(credential);
+        if (cert != null) {
+            final byte[] ski = X509Support.getSubjectKeyIdentifier(cert);
+            skiIndex.update(ski != null && ski.length > 0 ? ByteBuffer.wrap(ski) : null, entry, add);
+            issuerSerialIndex.update(issuerSerialKey(cert.getIssuerX500Principal(), cert.getSerialNumber()),
+                    entry, add);
+            subjectNameIndex.update(cert.getSubjectX500Principal(), entry, add);
+        }
+
+        for (final Map.Entry<String, Index<ByteBuffer>> digestIndex : digestIndexes.entrySet()) {
+            indexDigest(digestIndex.getValue(), digestIndex.getKey(), entry, add);
+        }
+    }
+
+    /**
+     * Get the entity certificate of a credential, if it is an X.509 credential.
+     * 
+     * @param credential the credential
+     * 
+     * @return the entity certificate, or null
+     */
+    @Nullable private static X509Certificate getEntityCertificate(@Nonnull final Credential credential) {
+        if (credential instanceof X509Credential) {
+            return ((X509Credential) credential).getEntityCertificate();
+        }
+        return null;
+    }
+
+    /**
+     * Build the index key for an issuer name and serial number.
+     * 
+     * @param issuer the issuer name
+     * @param serial the serial number
+     * 
+     * @return the index key
+     */
+    @Nonnull private static List<Object> issuerSerialKey(@Nonnull final X500Principal issuer,
+            @Nonnull final BigInteger serial) {
+        final List<Object> key = new ArrayList<>(2);
+        key.add(issuer);
+        key.add(serial);
+        return key;
+    }
+
+    /** A held credential, with its insertion sequence and computed digests. */
+    private static final class Entry {
+
+        /** Insertion sequence. */
+        private final long sequence;
+
+        /** The credential. */
+        @Nonnull private final Credential credential;
+
+        /** Certificate digests, by algorithm. */
+        @Nonnull private final Map<String, ByteBuffer> digests;
+
+        /**
+         * Constructor.
+         * 
+         * @param seq insertion sequence
+         * @param cred the credential
+         */
+        Entry(final long seq, @Nonnull final Credential cred) {
+            sequence = seq;
+            credential = cred;
+            digests = new HashMap<>(1);
+        }
+    }
+
+    /**
+     * An index of credential entries by a single key, along with the entries which carry no key.
+     * 
+     * @param <K> the key type
+     */
+    private static final class Index<K> {
+
+        /** Entries by key, each list in insertion order. */
+        @Nonnull private final Map<K, List<Entry>> keyed;
+
+        /** Entries without a key, in insertion order. */
+        @Nonnull private final List<Entry> unkeyed;
+
+        /** Constructor. */
+        Index() {
+            keyed = new HashMap<>();
+            unkeyed = new ArrayList<>();
+        }
+
+        /**
+         * Get the entries carrying a key, merged in insertion order with the entries carrying no key.
+         * 
+         * @param key the key
+         * 
+         * @return the entries
+         */
+        @Nonnull List<Entry> get(@Nonnull final K key) {
+            final List<Entry> matches = keyed.get(key);
+            if (matches == null) {
+                return unkeyed;
+            } else if (unkeyed.isEmpty()) {
+                return matches;
+            }
+
+            final List<Entry> merged = new ArrayList<>(matches.size() + unkeyed.size());
+            int i = 0;
+            int j = 0;
+            while (i < matches.size() || j < unkeyed.size()) {
+                if (j == unkeyed.size()
+                        || (i < matches.size() && matches.get(i).sequence < unkeyed.get(j).sequence)) {
+                    merged.add(matches.get(i++));
+                } else {
+                    merged.add(unkeyed.get(j++));
+                }
+            }
+            return merged;
+        }
+
+        /**
+         * Add an entry to, or remove it from, the index.
+         * 
+         * @param key the key, or null if the entry carries no key
+         * @param entry the entry
+         * @param add true to add, false to remove
+         */
+        void update(@Nullable final K key, @Nonnull final Entry entry, final boolean add) {
+            List<Entry> list;
+            if (key == null) {
+                list = unkeyed;
+            } else {
+                list = keyed.get(key);
+                if (list == null) {
+                    if (!add) {
+                        return;
+                    }
+                    list = new ArrayList<>(1);
+                    keyed.put(key, list);
+                }
+            }
+
+            if (add) {
+                if (list.isEmpty() || list.get(list.size() - 1) != entry) {
+                    list.add(entry);
+                }
+            } else {
+                list.remove(entry);
+                if (key != null && list.isEmpty()) {
+                    keyed.remove(key);
+                }
+            }
+        }
+
+        /** Remove all entries. */
+        void clear() {
+            keyed.clear();
+            unkeyed.clear();
+        }
+    }
+}
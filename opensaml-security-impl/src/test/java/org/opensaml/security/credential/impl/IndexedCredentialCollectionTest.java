@@ -0,0 +1,239 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.security.credential.impl;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+import org.opensaml.core.criterion.EntityIdCriterion;
+import org.opensaml.security.credential.BasicCredential;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.UsageType;
+import org.opensaml.security.criteria.KeyNameCriterion;
+import org.opensaml.security.criteria.UsageCriterion;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.security.x509.BasicX509Credential;
+import org.opensaml.security.x509.X509DigestCriterion;
+import org.opensaml.security.x509.X509IssuerSerialCriterion;
+import org.opensaml.security.x509.X509SubjectKeyIdentifierCriterion;
+import org.opensaml.security.x509.X509SubjectNameCriterion;
+import org.opensaml.security.x509.X509Support;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for {@link IndexedCredentialCollection}, and its use by {@link CollectionCredentialResolver}.
+ */
+public class IndexedCredentialCollectionTest {
+
+    private String entityCertBase64 = 
+        "MIIDzjCCAragAwIBAgIBMTANBgkqhkiG9w0BAQUFADAtMRIwEAYDVQQKEwlJbnRl" +
+        "cm5ldDIxFzAVBgNVBAMTDmNhLmV4YW1wbGUub3JnMB4XDTA3MDUyMTE4MjM0MFoX" +
+        "DTE3MDUxODE4MjM0MFowMTESMBAGA1UEChMJSW50ZXJuZXQyMRswGQYDVQQDExJm" +
+        "b29iYXIuZXhhbXBsZS5vcmcwggEiMA0GCSqGSIb3DQEBAQUAA4IBDwAwggEKAoIB" +
+        "AQDNWnkFmhy1vYa6gN/xBRKkZxFy3sUq2V0LsYb6Q3pe9Qlb6+BzaM5DrN8uIqqr" +
+        "oBE3Wp0LtrgKuQTpDpNFBdS2p5afiUtOYLWBDtizTOzs3Z36MGMjIPUYQ4s03IP3" +
+        "yPh2ud6EKpDPiYqzNbkRaiIwmYSit5r+RMYvd6fuKvTOn6h7PZI5AD7Rda7VWh5O" +
+        "VSoZXlRx3qxFho+mZhW0q4fUfTi5lWwf4EhkfBlzgw/k5gf4cOi6rrGpRS1zxmbt" +
+        "X1RAg+I20z6d04g0N2WsK5stszgYKoIROJCiXwjraa8/SoFcILolWQpttVHBIUYl" +
+        "yDlm8mIFleZf4ReFpfm+nUYxAgMBAAGjgfQwgfEwCQYDVR0TBAIwADAsBglghkgB" +
+        "hvhCAQ0EHxYdT3BlblNTTCBHZW5lcmF0ZWQgQ2VydGlmaWNhdGUwHQYDVR0OBBYE" +
+        "FDgRgTkjaKoK6DoZfUZ4g9LDJUWuMFUGA1UdIwROMEyAFNXuZVPeUdqHrULqQW7y" +
+        "r9buRpQLoTGkLzAtMRIwEAYDVQQKEwlJbnRlcm5ldDIxFzAVBgNVBAMTDmNhLmV4" +
+        "YW1wbGUub3JnggEBMEAGA1UdEQQ5MDeCEmFzaW1vdi5leGFtcGxlLm9yZ4YbaHR0" +
+        "cDovL2hlaW5sZWluLmV4YW1wbGUub3JnhwQKAQIDMA0GCSqGSIb3DQEBBQUAA4IB" +
+        "AQBLiDMyQ60ldIytVO1GCpp1S1sKJyTF56GVxHh/82hiRFbyPu+2eSl7UcJfH4ZN" +
+        "bAfHL1vDKTRJ9zoD8WRzpOCUtT0IPIA/Ex+8lFzZmujO10j3TMpp8Ii6+auYwi/T" +
+        "osrfw1YCxF+GI5KO49CfDRr6yxUbMhbTN+ssK4UzFf36UbkeJ3EfDwB0WU70jnlk" +
+        "yO8f97X6mLd5QvRcwlkDMftP4+MB+inTlxDZ/w8NLXQoDW6p/8r91bupXe0xwuyE" +
+        "vow2xjxlzVcux2BZsUZYjBa07ZmNNBtF7WaQqH7l2OBCAdnBhvme5i/e0LK3Ivys" +
+        "+hcVyvCXs5XtFTFWDAVYvzQ6";
+
+    private String entityCertDigestBase64 = "z+OxxIy+EZxLN6PbDEXPmOutQhaYbcJYKDrIyFSuE0I=";
+
+    private X509Certificate entityCert;
+
+    private BasicCredential credFoo;
+
+    private BasicCredential credBarSigning;
+
+    private BasicCredential credNoEntity;
+
+    private BasicX509Credential credX509;
+
+    private IndexedCredentialCollection collection;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        entityCert = X509Support.decodeCertificate(entityCertBase64);
+
+        credFoo = new BasicCredential(KeySupport.generateKey("AES", 128, null));
+        credFoo.setEntityId("urn:test:foo");
+        credFoo.getKeyNames().add("fooKey");
+
+        credBarSigning = new BasicCredential(KeySupport.generateKey("AES", 128, null));
+        credBarSigning.setEntityId("urn:test:bar");
+        credBarSigning.setUsageType(UsageType.SIGNING);
+
+        credNoEntity = new BasicCredential(KeySupport.generateKey("AES", 128, null));
+        credNoEntity.setUsageType(UsageType.ENCRYPTION);
+
+        credX509 = new BasicX509Credential(entityCert);
+        credX509.setEntityId("urn:test:x509");
+
+        collection = new IndexedCredentialCollection(
+                Arrays.<Credential>asList(credFoo, credBarSigning, credNoEntity, credX509));
+    }
+
+    @Test
+    public void testCollection() {
+        Assert.assertEquals(collection.size(), 4);
+        Assert.assertEquals(Lists.newArrayList(collection),
+                Arrays.<Credential>asList(credFoo, credBarSigning, credNoEntity, credX509));
+
+        Assert.assertTrue(collection.remove(credBarSigning));
+        Assert.assertFalse(collection.remove(credBarSigning));
+        Assert.assertEquals(collection.size(), 3);
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(new EntityIdCriterion("urn:test:bar"))),
+                Collections.singletonList(credNoEntity));
+
+        final Iterator<Credential> iterator = collection.iterator();
+        iterator.next();
+        iterator.remove();
+        Assert.assertFalse(collection.contains(credFoo));
+
+        collection.clear();
+        Assert.assertTrue(collection.isEmpty());
+        Assert.assertTrue(collection.getCandidates(new CriteriaSet(new EntityIdCriterion("urn:test:foo"))).isEmpty());
+    }
+
+    @Test
+    public void testNoIndexedCriteria() {
+        Assert.assertEquals(collection.getCandidates(null), Lists.newArrayList(collection));
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet()), Lists.newArrayList(collection));
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(new UsageCriterion(UsageType.UNSPECIFIED))),
+                Lists.newArrayList(collection));
+    }
+
+    @Test
+    public void testSnapshot() {
+        final List<Credential> snapshot = collection.getCandidates(null);
+        Assert.assertSame(collection.getCandidates(new CriteriaSet()), snapshot);
+        try {
+            snapshot.clear();
+            Assert.fail("Snapshot was modifiable");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+
+        final Iterator<Credential> iterator = collection.iterator();
+        Assert.assertTrue(collection.remove(credFoo));
+        Assert.assertEquals(snapshot.size(), 4);
+        Assert.assertSame(iterator.next(), credFoo);
+
+        final List<Credential> current = collection.getCandidates(null);
+        Assert.assertNotSame(current, snapshot);
+        Assert.assertEquals(current, Arrays.<Credential>asList(credBarSigning, credNoEntity, credX509));
+    }
+
+    @Test
+    public void testEntityID() {
+        // Credentials without an entityID are retained, since the criterion can not be evaluated against them
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(new EntityIdCriterion("urn:test:foo"))),
+                Arrays.<Credential>asList(credFoo, credNoEntity));
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(new EntityIdCriterion("urn:test:none"))),
+                Collections.singletonList(credNoEntity));
+    }
+
+    @Test
+    public void testUsage() {
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(new UsageCriterion(UsageType.SIGNING))),
+                Arrays.<Credential>asList(credFoo, credBarSigning, credX509));
+    }
+
+    @Test
+    public void testMostSelective() {
+        final CriteriaSet criteria = new CriteriaSet(new EntityIdCriterion("urn:test:bar"),
+                new UsageCriterion(UsageType.SIGNING));
+        Assert.assertEquals(collection.getCandidates(criteria),
+                Arrays.<Credential>asList(credBarSigning, credNoEntity));
+    }
+
+    @Test
+    public void testKeyName() {
+        final List<Credential> candidates =
+                collection.getCandidates(new CriteriaSet(new KeyNameCriterion("fooKey")));
+        Assert.assertEquals(candidates, Lists.newArrayList(collection));
+
+        credBarSigning.getKeyNames().add("barKey");
+        credNoEntity.getKeyNames().add("noEntityKey");
+        credX509.getKeyNames().add("x509Key");
+        collection.clear();
+        collection.addAll(Arrays.<Credential>asList(credFoo, credBarSigning, credNoEntity, credX509));
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(new KeyNameCriterion("fooKey"))),
+                Collections.singletonList(credFoo));
+    }
+
+    @Test
+    public void testX509() throws Exception {
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(
+                new X509SubjectNameCriterion(entityCert.getSubjectX500Principal()))),
+                Collections.singletonList(credX509));
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(new X509IssuerSerialCriterion(
+                entityCert.getIssuerX500Principal(), entityCert.getSerialNumber()))),
+                Collections.singletonList(credX509));
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(
+                new X509SubjectKeyIdentifierCriterion(X509Support.getSubjectKeyIdentifier(entityCert)))),
+                Collections.singletonList(credX509));
+        Assert.assertEquals(collection.getCandidates(new CriteriaSet(
+                new X509DigestCriterion("SHA-256", Base64Support.decode(entityCertDigestBase64)))),
+                Collections.singletonList(credX509));
+        Assert.assertTrue(collection.getCandidates(new CriteriaSet(
+                new X509DigestCriterion("SHA-256", new byte[32]))).isEmpty());
+    }
+
+    @Test
+    public void testResolver() throws Exception {
+        final CollectionCredentialResolver resolver = new CollectionCredentialResolver();
+        resolver.getCollection().addAll(collection);
+
+        final List<Credential> resolved = Lists.newArrayList(resolver.resolve(new CriteriaSet(
+                new EntityIdCriterion("urn:test:foo"))));
+        Assert.assertTrue(resolved.contains(credFoo));
+        Assert.assertFalse(resolved.contains(credBarSigning));
+        Assert.assertFalse(resolved.contains(credX509));
+        Assert.assertEquals(Lists.newArrayList(resolver.resolve(new CriteriaSet(
+                new EntityIdCriterion("urn:test:x509"),
+                new X509DigestCriterion("SHA-256", Base64Support.decode(entityCertDigestBase64))))),
+                Collections.singletonList(credX509));
+
+        resolver.setSatisfyAllPredicates(false);
+        Assert.assertEquals(Lists.newArrayList(resolver.resolve(new CriteriaSet(
+                new X509SubjectNameCriterion(entityCert.getSubjectX500Principal())))),
+                Collections.singletonList(credX509));
+    }
+}
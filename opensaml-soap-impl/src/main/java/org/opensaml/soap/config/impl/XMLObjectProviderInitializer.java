@@ -17,10 +17,31 @@
 
 package org.opensaml.soap.config.impl;
 
+import org.opensaml.core.config.InitializationException;
+import org.opensaml.core.xml.ExtensibleXMLObjectCopier;
 import org.opensaml.core.xml.config.AbstractXMLObjectProviderInitializer;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.CopierFactory;
+import org.opensaml.core.xml.schema.impl.XSQNameCopier;
+import org.opensaml.core.xml.schema.impl.XSStringCopier;
+import org.opensaml.core.xml.schema.impl.XSURICopier;
+import org.opensaml.soap.soap11.Body;
+import org.opensaml.soap.soap11.Detail;
+import org.opensaml.soap.soap11.Envelope;
+import org.opensaml.soap.soap11.Fault;
+import org.opensaml.soap.soap11.FaultActor;
+import org.opensaml.soap.soap11.FaultCode;
+import org.opensaml.soap.soap11.FaultString;
+import org.opensaml.soap.soap11.Header;
+import org.opensaml.soap.soap11.impl.EnvelopeCopier;
+import org.opensaml.soap.soap11.impl.FaultCopier;
 
 /**
  * XMLObject provider initializer for module "soap-impl".
+ * 
+ * <p>
+ * In addition to the object providers, this registers copiers for the SOAP 1.1 objects.
+ * </p>
  */
 public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderInitializer {
     
@@ -39,4 +60,22 @@ public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderIniti
         return configs;
     }
 
+    /** {@inheritDoc} */
+    public void init() throws InitializationException {
+        super.init();
+
+        final CopierFactory copierFactory = XMLObjectProviderRegistrySupport.getCopierFactory();
+        copierFactory.registerCopier(Envelope.DEFAULT_ELEMENT_NAME, new EnvelopeCopier());
+        copierFactory.registerCopier(Fault.DEFAULT_ELEMENT_NAME, new FaultCopier());
+
+        final ExtensibleXMLObjectCopier extensibleCopier = new ExtensibleXMLObjectCopier();
+        copierFactory.registerCopier(Header.DEFAULT_ELEMENT_NAME, extensibleCopier);
+        copierFactory.registerCopier(Body.DEFAULT_ELEMENT_NAME, extensibleCopier);
+        copierFactory.registerCopier(Detail.DEFAULT_ELEMENT_NAME, extensibleCopier);
+
+        copierFactory.registerCopier(FaultCode.DEFAULT_ELEMENT_NAME, new XSQNameCopier());
+        copierFactory.registerCopier(FaultString.DEFAULT_ELEMENT_NAME, new XSStringCopier());
+        copierFactory.registerCopier(FaultActor.DEFAULT_ELEMENT_NAME, new XSURICopier());
+    }
+
 }
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.soap.soap11.impl;
+
+import javax.xml.namespace.QName;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.soap.soap11.Envelope;
+import org.opensaml.soap.soap11.Fault;
+import org.opensaml.soap.util.SOAPConstants;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link EnvelopeCopier} and the copiers of the content of SOAP 1.1 messages.
+ */
+public class EnvelopeCopierTest extends XMLObjectBaseTestCase {
+
+    /**
+     * Tests copying an unmarshalled message field by field.
+     * 
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testMessageCopy() throws MarshallingException, UnmarshallingException {
+        final Envelope envelope = unmarshallElement("/org/opensaml/soap/soap11/SOAP.xml");
+
+        final Envelope copy = XMLObjectSupport.copyXMLObject(envelope);
+        Assert.assertNotSame(copy, envelope);
+        Assert.assertNotNull(envelope.getDOM(), "Copying released the original's cached DOM");
+        Assert.assertNull(copy.getDOM(), "Copy was unmarshalled from a DOM");
+        Assert.assertEquals(copy.getUnknownAttributes().get(
+                new QName(SOAPConstants.SOAP11_NS, "encodingStyle")), "http://schemas.xmlsoap.org/soap/encoding/");
+        Assert.assertNotSame(copy.getHeader(), envelope.getHeader());
+        Assert.assertEquals(copy.getHeader().getUnknownXMLObjects().size(), 1);
+        Assert.assertNotSame(copy.getBody(), envelope.getBody());
+        Assert.assertEquals(copy.getBody().getUnknownXMLObjects().size(), 1);
+
+        envelope.releaseDOM();
+        envelope.releaseChildrenDOM(true);
+        assertXMLEquals(XMLObjectSupport.marshall(envelope).getOwnerDocument(), copy);
+    }
+
+    /**
+     * Tests copying an unmarshalled fault field by field.
+     * 
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testFaultCopy() throws MarshallingException, UnmarshallingException {
+        final Envelope envelope = unmarshallElement("/org/opensaml/soap/soap11/SOAPFault.xml");
+
+        final Envelope copy = XMLObjectSupport.copyXMLObject(envelope);
+        Assert.assertNull(copy.getDOM());
+
+        final Fault fault = (Fault) copy.getBody().getUnknownXMLObjects().get(0);
+        Assert.assertNull(fault.getDOM());
+        Assert.assertEquals(fault.getCode().getValue(),
+                new QName(SOAPConstants.SOAP11_NS, "Server", SOAPConstants.SOAP11_PREFIX));
+        Assert.assertEquals(fault.getMessage().getValue(), "Server Error");
+        Assert.assertEquals(fault.getActor().getValue(), "http://ws.example.org/someActor");
+        Assert.assertEquals(fault.getDetail().getUnknownXMLObjects().size(), 1);
+
+        envelope.releaseDOM();
+        envelope.releaseChildrenDOM(true);
+        assertXMLEquals(XMLObjectSupport.marshall(envelope).getOwnerDocument(), copy);
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * Identifies the attributes of a request context which a designator selects: the category of the
+ * context element which carries them, their AttributeId and their DataType.
+ */
+final class AttributeKey {
+
+    /** Subject category assumed when none is given. */
+    @Nonnull @NotEmpty static final String DEFAULT_SUBJECT_CATEGORY =
+            "urn:oasis:names:tc:xacml:1.0:subject-category:access-subject";
+
+    /** Category of the attributes of Resource elements. */
+    @Nonnull @NotEmpty static final String RESOURCE_CATEGORY =
+            "urn:oasis:names:tc:xacml:3.0:attribute-category:resource";
+
+    /** Category of the attributes of the Action element. */
+    @Nonnull @NotEmpty static final String ACTION_CATEGORY = "urn:oasis:names:tc:xacml:3.0:attribute-category:action";
+
+    /** Category of the attributes of the Environment element. */
+    @Nonnull @NotEmpty static final String ENVIRONMENT_CATEGORY =
+            "urn:oasis:names:tc:xacml:3.0:attribute-category:environment";
+
+    /** The category, which for subjects is the subject category. */
+    @Nonnull private final String category;
+
+    /** The AttributeId. */
+    @Nonnull private final String attributeId;
+
+    /** The DataType. */
+    @Nonnull private final String dataType;
+
+    /** Precomputed hash code. */
+    private final int hash;
+
+    /**
+     * Constructor.
+     * 
+     * @param theCategory the category
+     * @param id the AttributeId
+     * @param type the DataType
+     */
+    AttributeKey(@Nonnull final String theCategory, @Nonnull final String id, @Nonnull final String type) {
+        category = theCategory;
+        attributeId = id;
+        dataType = type;
+        hash = Objects.hash(category, attributeId, dataType);
+    }
+
+    /**
+     * Get the category.
+     * 
+     * @return the category
+     */
+    @Nonnull String getCategory() {
+        return category;
+    }
+
+    /**
+     * Get the AttributeId.
+     * 
+     * @return the AttributeId
+     */
+    @Nonnull String getAttributeId() {
+        return attributeId;
+    }
+
+    /**
+     * Get the DataType.
+     * 
+     * @return the DataType
+     */
+    @Nonnull String getDataType() {
+        return dataType;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+
+        if (obj instanceof AttributeKey) {
+            final AttributeKey other = (AttributeKey) obj;
+            return hash == other.hash && attributeId.equals(other.attributeId) && category.equals(other.category)
+                    && dataType.equals(other.dataType);
+        }
+
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return category + "/" + attributeId + "/" + dataType;
+    }
+}
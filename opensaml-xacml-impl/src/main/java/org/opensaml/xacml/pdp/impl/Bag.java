@@ -0,0 +1,60 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+
+/** An unordered collection of typed attribute values, as produced by an attribute designator. */
+final class Bag {
+
+    /** The typed values. */
+    @Nonnull @NonnullElements @Unmodifiable private final List<Object> values;
+
+    /**
+     * Constructor.
+     * 
+     * @param bagValues the typed values
+     */
+    Bag(@Nonnull @NonnullElements final List<Object> bagValues) {
+        values = Collections.unmodifiableList(bagValues);
+    }
+
+    /**
+     * Get the typed values.
+     * 
+     * @return the values
+     */
+    @Nonnull @NonnullElements @Unmodifiable List<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * Get the number of values.
+     * 
+     * @return the number of values
+     */
+    int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+
+/**
+ * An index of the targets of the rules of a policy, or of the children of a policy set, which selects those
+ * which may apply to a request.
+ *
+ * <p>
+ * Each child whose target yields a {@link CompiledTarget.IndexTerm} is recorded under each of the term's
+ * values, and is a candidate only for requests carrying one of those values. Every other child is always a
+ * candidate. A child which is not a candidate is guaranteed to be NotApplicable, so combining algorithms
+ * need evaluate only the candidates, in their original order.
+ * </p>
+ */
+final class CandidateIndex {
+
+    /** The children which are always candidates. */
+    @Nonnull private final BitSet unindexed;
+
+    /** The indexed children, by attributes and lexical value. */
+    @Nonnull private final Map<AttributeKey, Map<String, BitSet>> postings;
+
+    /** The number of indexed children. */
+    private final int indexedCount;
+
+    /**
+     * Constructor.
+     * 
+     * @param children the children, in order
+     */
+    CandidateIndex(@Nonnull @NonnullElements final List<? extends Evaluable> children) {
+        unindexed = new BitSet(children.size());
+        postings = new HashMap<>();
+
+        int indexed = 0;
+        for (int i = 0; i < children.size(); i++) {
+            final CompiledTarget target = children.get(i).getTarget();
+            final CompiledTarget.IndexTerm term = target != null ? target.getIndexTerm() : null;
+            if (term == null) {
+                unindexed.set(i);
+                continue;
+            }
+
+            Map<String, BitSet> byValue = postings.get(term.getKey());
+            if (byValue == null) {
+                byValue = new HashMap<>();
+                postings.put(term.getKey(), byValue);
+            }
+            for (final String value : term.getValues()) {
+                BitSet bits = byValue.get(value);
+                if (bits == null) {
+                    bits = new BitSet(children.size());
+                    byValue.put(value, bits);
+                }
+                bits.set(i);
+            }
+            indexed++;
+        }
+        indexedCount = indexed;
+    }
+
+    /**
+     * Get the number of children which are candidates only for some requests.
+     * 
+     * @return the number of indexed children
+     */
+    int getIndexedCount() {
+        return indexedCount;
+    }
+
+    /**
+     * Get the children which may apply to a request.
+     * 
+     * @param context the evaluation context
+     * 
+     * @return a new set of the positions of the candidate children
+     */
+    @Nonnull BitSet getCandidates(@Nonnull final EvaluationContext context) {
+        final BitSet candidates = (BitSet) unindexed.clone();
+        for (final Map.Entry<AttributeKey, Map<String, BitSet>> entry : postings.entrySet()) {
+            final Map<String, BitSet> byValue = entry.getValue();
+            for (final String value : context.getValues(entry.getKey())) {
+                final BitSet bits = byValue.get(value);
+                if (bits != null) {
+                    candidates.or(bits);
+                }
+            }
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.policy.EffectType;
+import org.opensaml.xacml.policy.ObligationType;
+
+/**
+ * The XACML 2.0 rule and policy combining algorithms.
+ *
+ * <p>
+ * The ordered variants share the implementation of their unordered counterparts, which always evaluate
+ * children in document order.
+ * </p>
+ */
+enum CombiningAlgorithm {
+
+    /** Rule deny-overrides. */
+    RULE_DENY_OVERRIDES,
+
+    /** Rule permit-overrides. */
+    RULE_PERMIT_OVERRIDES,
+
+    /** Rule first-applicable. */
+    RULE_FIRST_APPLICABLE,
+
+    /** Policy deny-overrides. */
+    POLICY_DENY_OVERRIDES,
+
+    /** Policy permit-overrides. */
+    POLICY_PERMIT_OVERRIDES,
+
+    /** Policy first-applicable. */
+    POLICY_FIRST_APPLICABLE,
+
+    /** Policy only-one-applicable. */
+    POLICY_ONLY_ONE_APPLICABLE;
+
+    /** Prefix of the XACML 1.0 rule combining algorithm identifiers. */
+    @Nonnull @NotEmpty private static final String RULE_PREFIX =
+            "urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:";
+
+    /** Prefix of the XACML 1.1 rule combining algorithm identifiers. */
+    @Nonnull @NotEmpty private static final String RULE_PREFIX_11 =
+            "urn:oasis:names:tc:xacml:1.1:rule-combining-algorithm:";
+
+    /** Prefix of the XACML 1.0 policy combining algorithm identifiers. */
+    @Nonnull @NotEmpty private static final String POLICY_PREFIX =
+            "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:";
+
+    /** Prefix of the XACML 1.1 policy combining algorithm identifiers. */
+    @Nonnull @NotEmpty private static final String POLICY_PREFIX_11 =
+            "urn:oasis:names:tc:xacml:1.1:policy-combining-algorithm:";
+
+    /**
+     * Get the rule combining algorithm with the given identifier.
+     * 
+     * @param id the RuleCombiningAlgId
+     * 
+     * @return the algorithm, or null if it is not supported
+     */
+    @Nullable static CombiningAlgorithm forRuleCombiningAlgorithm(@Nullable final String id) {
+        if (id == null) {
+            return null;
+        } else if (id.equals(RULE_PREFIX + "deny-overrides")
+                || id.equals(RULE_PREFIX_11 + "ordered-deny-overrides")) {
+            return RULE_DENY_OVERRIDES;
+        } else if (id.equals(RULE_PREFIX + "permit-overrides")
+                || id.equals(RULE_PREFIX_11 + "ordered-permit-overrides")) {
+            return RULE_PERMIT_OVERRIDES;
+        } else if (id.equals(RULE_PREFIX + "first-applicable")) {
+            return RULE_FIRST_APPLICABLE;
+        }
+        return null;
+    }
+
+    /**
+     * Get the policy combining algorithm with the given identifier.
+     * 
+     * @param id the PolicyCombiningAlgId
+     * 
+     * @return the algorithm, or null if it is not supported
+     */
+    @Nullable static CombiningAlgorithm forPolicyCombiningAlgorithm(@Nullable final String id) {
+        if (id == null) {
+            return null;
+        } else if (id.equals(POLICY_PREFIX + "deny-overrides")
+                || id.equals(POLICY_PREFIX_11 + "ordered-deny-overrides")) {
+            return POLICY_DENY_OVERRIDES;
+        } else if (id.equals(POLICY_PREFIX + "permit-overrides")
+                || id.equals(POLICY_PREFIX_11 + "ordered-permit-overrides")) {
+            return POLICY_PERMIT_OVERRIDES;
+        } else if (id.equals(POLICY_PREFIX + "first-applicable")) {
+            return POLICY_FIRST_APPLICABLE;
+        } else if (id.equals(POLICY_PREFIX + "only-one-applicable")) {
+            return POLICY_ONLY_ONE_APPLICABLE;
+        }
+        return null;
+    }
+
+    /**
+     * Combine the results of the candidate children for a request.
+     * 
+     * @param children all of the children, in order
+     * @param candidates the positions of the children which may apply; all others are NotApplicable
+     * @param context the evaluation context
+     * 
+     * @return the combined result, including the obligations of the children which produced its decision
+     */
+    @Nonnull EvaluationResult combine(@Nonnull @NonnullElements final List<? extends Evaluable> children,
+            @Nonnull final BitSet candidates, @Nonnull final EvaluationContext context) {
+        switch (this) {
+            case RULE_DENY_OVERRIDES:
+                return overrides(children, candidates, context, DECISION.Deny, false);
+            case RULE_PERMIT_OVERRIDES:
+                return overrides(children, candidates, context, DECISION.Permit, false);
+            case POLICY_DENY_OVERRIDES:
+                return overrides(children, candidates, context, DECISION.Deny, true);
+            case POLICY_PERMIT_OVERRIDES:
+                return overrides(children, candidates, context, DECISION.Permit, true);
+            case POLICY_ONLY_ONE_APPLICABLE:
+                return onlyOneApplicable(children, candidates, context);
+            default:
+                return firstApplicable(children, candidates, context);
+        }
+    }
+
+    /**
+     * Implement the deny-overrides and permit-overrides algorithms.
+     *
+     * <p>
+     * For rules, an Indeterminate result from a rule whose effect is the overriding decision makes the
+     * overall result Indeterminate unless the overriding decision is reached. For policies, deny-overrides
+     * treats an Indeterminate child as Deny, while permit-overrides treats it as an error which only a
+     * Permit or Deny overcomes.
+     * </p>
+     * 
+     * @param children all of the children, in order
+     * @param candidates the positions of the children which may apply
+     * @param context the evaluation context
+     * @param overriding the overriding decision
+     * @param policies whether the children are policies rather than rules
+     * 
+     * @return the combined result
+     */
+    // Checkstyle: CyclomaticComplexity OFF
+    @Nonnull private static EvaluationResult overrides(
+            @Nonnull @NonnullElements final List<? extends Evaluable> children, @Nonnull final BitSet candidates,
+            @Nonnull final EvaluationContext context, @Nonnull final DECISION overriding, final boolean policies) {
+        final DECISION other = overriding == DECISION.Deny ? DECISION.Permit : DECISION.Deny;
+        final EffectType overridingEffect = overriding == DECISION.Deny ? EffectType.Deny : EffectType.Permit;
+
+        final List<EvaluationResult> others = new ArrayList<>();
+        EvaluationResult firstError = null;
+        boolean potentialOverride = false;
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final Evaluable child = children.get(i);
+            final EvaluationResult result = child.evaluate(context);
+            if (result.getDecision() == overriding) {
+                return result;
+            } else if (result.getDecision() == other) {
+                others.add(result);
+            } else if (result.getDecision() == DECISION.Indeterminate) {
+                if (policies && overriding == DECISION.Deny) {
+                    return EvaluationResult.DENY;
+                }
+                if (firstError == null) {
+                    firstError = result;
+                }
+                if (!policies && child.getEffect() == overridingEffect) {
+                    potentialOverride = true;
+                }
+            }
+        }
+
+        if (potentialOverride) {
+            return firstError;
+        } else if (!others.isEmpty()) {
+            return merge(EvaluationResult.of(other), others);
+        } else if (firstError != null) {
+            return firstError;
+        }
+        return EvaluationResult.NOT_APPLICABLE;
+    }
+    // Checkstyle: CyclomaticComplexity ON
+
+    /**
+     * Implement the first-applicable algorithm.
+     * 
+     * @param children all of the children, in order
+     * @param candidates the positions of the children which may apply
+     * @param context the evaluation context
+     * 
+     * @return the combined result
+     */
+    @Nonnull private static EvaluationResult firstApplicable(
+            @Nonnull @NonnullElements final List<? extends Evaluable> children, @Nonnull final BitSet candidates,
+            @Nonnull final EvaluationContext context) {
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final EvaluationResult result = children.get(i).evaluate(context);
+            if (result.getDecision() != DECISION.NotApplicable) {
+                return result;
+            }
+        }
+        return EvaluationResult.NOT_APPLICABLE;
+    }
+
+    /**
+     * Implement the only-one-applicable algorithm.
+     * 
+     * @param children all of the children, in order
+     * @param candidates the positions of the children which may apply
+     * @param context the evaluation context
+     * 
+     * @return the combined result
+     */
+    @Nonnull private static EvaluationResult onlyOneApplicable(
+            @Nonnull @NonnullElements final List<? extends Evaluable> children, @Nonnull final BitSet candidates,
+            @Nonnull final EvaluationContext context) {
+        Evaluable selected = null;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            final Evaluable child = children.get(i);
+            final CompiledTarget target = child.getTarget();
+            final CompiledTarget.MatchResult match =
+                    target != null ? target.match(context) : CompiledTarget.MatchResult.MATCH;
+            if (match == CompiledTarget.MatchResult.INDETERMINATE) {
+                return EvaluationResult.indeterminate(StatusCodeType.SC_PROCESSING_ERROR,
+                        "Applicability of a policy could not be determined");
+            } else if (match == CompiledTarget.MatchResult.MATCH) {
+                if (selected != null) {
+                    return EvaluationResult.indeterminate(StatusCodeType.SC_PROCESSING_ERROR,
+                            "More than one policy was applicable");
+                }
+                selected = child;
+            }
+        }
+        return selected != null ? selected.evaluate(context) : EvaluationResult.NOT_APPLICABLE;
+    }
+
+    /**
+     * Add the obligations of the results which share a decision to a result carrying that decision.
+     * 
+     * @param base the result carrying the decision
+     * @param results the results which produced the decision
+     * 
+     * @return the merged result
+     */
+    @Nonnull private static EvaluationResult merge(@Nonnull final EvaluationResult base,
+            @Nonnull @NonnullElements final List<EvaluationResult> results) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        final List<ObligationType> obligations = new ArrayList<>();
+        for (final EvaluationResult result : results) {
+            obligations.addAll(result.getObligations());
+        }
+        return base.withObligations(obligations);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.policy.EffectType;
+import org.opensaml.xacml.policy.ObligationType;
+
+/** A compiled Policy, whose children are rules, or PolicySet, whose children are policies and policy sets. */
+final class CompiledPolicy implements Evaluable {
+
+    /** The PolicyId or PolicySetId. */
+    @Nullable private final String id;
+
+    /** The target, or null if every request is in scope. */
+    @Nullable private final CompiledTarget target;
+
+    /** The combining algorithm. */
+    @Nonnull private final CombiningAlgorithm algorithm;
+
+    /** The children, in order. */
+    @Nonnull @NonnullElements @Unmodifiable private final List<Evaluable> children;
+
+    /** The index selecting the children which may apply to a request. */
+    @Nonnull private final CandidateIndex index;
+
+    /** The obligations which accompany a Permit. */
+    @Nonnull @NonnullElements private final List<ObligationType> permitObligations;
+
+    /** The obligations which accompany a Deny. */
+    @Nonnull @NonnullElements private final List<ObligationType> denyObligations;
+
+    /**
+     * Constructor.
+     * 
+     * @param policyId the PolicyId or PolicySetId
+     * @param policyTarget the target
+     * @param combiningAlgorithm the combining algorithm
+     * @param policyChildren the children, in order
+     * @param obligations the policy's own obligations
+     */
+    CompiledPolicy(@Nullable final String policyId, @Nullable final CompiledTarget policyTarget,
+            @Nonnull final CombiningAlgorithm combiningAlgorithm,
+            @Nonnull @NonnullElements final List<? extends Evaluable> policyChildren,
+            @Nonnull @NonnullElements final List<ObligationType> obligations) {
+        id = policyId;
+        target = policyTarget;
+        algorithm = combiningAlgorithm;
+        children = Collections.unmodifiableList(new ArrayList<Evaluable>(policyChildren));
+        index = new CandidateIndex(children);
+
+        final List<ObligationType> permit = new ArrayList<>();
+        final List<ObligationType> deny = new ArrayList<>();
+        for (final ObligationType obligation : obligations) {
+            if (obligation.getFulfillOn() == EffectType.Permit) {
+                permit.add(obligation);
+            } else if (obligation.getFulfillOn() == EffectType.Deny) {
+                deny.add(obligation);
+            }
+        }
+        permitObligations = Collections.unmodifiableList(permit);
+        denyObligations = Collections.unmodifiableList(deny);
+    }
+
+    /**
+     * Get the PolicyId or PolicySetId.
+     * 
+     * @return the identifier
+     */
+    @Nullable String getId() {
+        return id;
+    }
+
+    /**
+     * Get the index selecting the children which may apply to a request.
+     * 
+     * @return the index
+     */
+    @Nonnull CandidateIndex getIndex() {
+        return index;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public CompiledTarget getTarget() {
+        return target;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public EffectType getEffect() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public EvaluationResult evaluate(@Nonnull final EvaluationContext context) {
+        if (target != null) {
+            switch (target.match(context)) {
+                case NO_MATCH:
+                    return EvaluationResult.NOT_APPLICABLE;
+                case INDETERMINATE:
+                    return EvaluationResult.indeterminate(StatusCodeType.SC_PROCESSING_ERROR,
+                            "Target of policy " + id + " was indeterminate");
+                default:
+                    break;
+            }
+        }
+
+        final EvaluationResult result = algorithm.combine(children, index.getCandidates(context), context);
+        if (result.getDecision() == DECISION.Permit) {
+            return result.withObligations(permitObligations);
+        } else if (result.getDecision() == DECISION.Deny) {
+            return result.withObligations(denyObligations);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.policy.EffectType;
+
+/** A compiled Rule. */
+final class CompiledRule implements Evaluable {
+
+    /** The RuleId. */
+    @Nullable private final String id;
+
+    /** The effect. */
+    @Nonnull private final EffectType effect;
+
+    /** The target, or null if every request is in scope. */
+    @Nullable private final CompiledTarget target;
+
+    /** The condition, or null if there is none. */
+    @Nullable private final Expression condition;
+
+    /**
+     * Constructor.
+     * 
+     * @param ruleId the RuleId
+     * @param ruleEffect the effect
+     * @param ruleTarget the target
+     * @param ruleCondition the condition
+     */
+    CompiledRule(@Nullable final String ruleId, @Nonnull final EffectType ruleEffect,
+            @Nullable final CompiledTarget ruleTarget, @Nullable final Expression ruleCondition) {
+        id = ruleId;
+        effect = ruleEffect;
+        target = ruleTarget;
+        condition = ruleCondition;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable public CompiledTarget getTarget() {
+        return target;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public EffectType getEffect() {
+        return effect;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public EvaluationResult evaluate(@Nonnull final EvaluationContext context) {
+        if (target != null) {
+            switch (target.match(context)) {
+                case NO_MATCH:
+                    return EvaluationResult.NOT_APPLICABLE;
+                case INDETERMINATE:
+                    return EvaluationResult.indeterminate(StatusCodeType.SC_PROCESSING_ERROR,
+                            "Target of rule " + id + " was indeterminate");
+                default:
+                    break;
+            }
+        }
+
+        if (condition != null) {
+            try {
+                final Object value = condition.evaluate(context);
+                if (!(value instanceof Boolean)) {
+                    return EvaluationResult.indeterminate(StatusCodeType.SC_PROCESSING_ERROR,
+                            "Condition of rule " + id + " did not evaluate to a boolean");
+                } else if (!((Boolean) value).booleanValue()) {
+                    return EvaluationResult.NOT_APPLICABLE;
+                }
+            } catch (final IndeterminateException e) {
+                return EvaluationResult.indeterminate(e);
+            }
+        }
+
+        return EvaluationResult.of(effect == EffectType.Permit ? DECISION.Permit : DECISION.Deny);
+    }
+}
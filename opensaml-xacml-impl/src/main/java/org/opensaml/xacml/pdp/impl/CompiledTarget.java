@@ -0,0 +1,313 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+
+/**
+ * A compiled policy, policy set or rule Target.
+ *
+ * <p>
+ * A target is the conjunction of its Subjects, Resources, Actions and Environments sections; each section is
+ * the disjunction of its alternatives, and each alternative the conjunction of its matches. Absent sections
+ * are omitted, so a target with no sections matches every request.
+ * </p>
+ */
+final class CompiledTarget {
+
+    /** The outcome of evaluating a target or a part of one. */
+    enum MatchResult {
+        /** The request matches. */
+        MATCH,
+
+        /** The request does not match. */
+        NO_MATCH,
+
+        /** Whether the request matches could not be determined. */
+        INDETERMINATE
+    }
+
+    /** The sections, each a list of alternatives, each a list of matches. */
+    @Nonnull @NonnullElements private final List<List<List<Match>>> sections;
+
+    /**
+     * Constructor.
+     * 
+     * @param targetSections the non-empty sections, each a list of alternatives, each a list of matches
+     */
+    CompiledTarget(@Nonnull @NonnullElements final List<List<List<Match>>> targetSections) {
+        sections = targetSections;
+    }
+
+    /**
+     * Evaluate the target against a request.
+     * 
+     * @param context the evaluation context
+     * 
+     * @return the outcome
+     */
+    @Nonnull MatchResult match(@Nonnull final EvaluationContext context) {
+        boolean indeterminate = false;
+        for (final List<List<Match>> section : sections) {
+            final MatchResult result = matchSection(section, context);
+            if (result == MatchResult.NO_MATCH) {
+                return MatchResult.NO_MATCH;
+            } else if (result == MatchResult.INDETERMINATE) {
+                indeterminate = true;
+            }
+        }
+        return indeterminate ? MatchResult.INDETERMINATE : MatchResult.MATCH;
+    }
+
+    /**
+     * Derive a term under which the target may be indexed.
+     *
+     * <p>
+     * A term is available for a section in which every alternative contains an equality match, on the same
+     * attributes, which can only be true if the request carries the match's literal value. A request whose
+     * attributes include none of the term's values therefore cannot match the target.
+     * </p>
+     * 
+     * @return the index term, or null if the target can not be indexed
+     */
+    @Nullable IndexTerm getIndexTerm() {
+        for (final List<List<Match>> section : sections) {
+            for (final Match candidate : section.get(0)) {
+                if (!candidate.isIndexable()) {
+                    continue;
+                }
+                final AttributeKey key = candidate.getDesignator().getKey();
+                final Set<String> values = new LinkedHashSet<>();
+                for (final List<Match> alternative : section) {
+                    final String value = findIndexableValue(alternative, key);
+                    if (value == null) {
+                        values.clear();
+                        break;
+                    }
+                    values.add(value);
+                }
+                if (!values.isEmpty()) {
+                    return new IndexTerm(key, values);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evaluate a section against a request.
+     * 
+     * @param section the section's alternatives
+     * @param context the evaluation context
+     * 
+     * @return the outcome
+     */
+    @Nonnull private static MatchResult matchSection(@Nonnull @NonnullElements final List<List<Match>> section,
+            @Nonnull final EvaluationContext context) {
+        boolean indeterminate = false;
+        for (final List<Match> alternative : section) {
+            final MatchResult result = matchAlternative(alternative, context);
+            if (result == MatchResult.MATCH) {
+                return MatchResult.MATCH;
+            } else if (result == MatchResult.INDETERMINATE) {
+                indeterminate = true;
+            }
+        }
+        return indeterminate ? MatchResult.INDETERMINATE : MatchResult.NO_MATCH;
+    }
+
+    /**
+     * Evaluate an alternative against a request.
+     * 
+     * @param alternative the alternative's matches
+     * @param context the evaluation context
+     * 
+     * @return the outcome
+     */
+    @Nonnull private static MatchResult matchAlternative(@Nonnull @NonnullElements final List<Match> alternative,
+            @Nonnull final EvaluationContext context) {
+        boolean indeterminate = false;
+        for (final Match match : alternative) {
+            final MatchResult result = match.evaluate(context);
+            if (result == MatchResult.NO_MATCH) {
+                return MatchResult.NO_MATCH;
+            } else if (result == MatchResult.INDETERMINATE) {
+                indeterminate = true;
+            }
+        }
+        return indeterminate ? MatchResult.INDETERMINATE : MatchResult.MATCH;
+    }
+
+    /**
+     * Find the literal value of an indexable match on the given attributes.
+     * 
+     * @param alternative the alternative's matches
+     * @param key the attributes
+     * 
+     * @return the lexical value, or null if there is no such match
+     */
+    @Nullable private static String findIndexableValue(@Nonnull @NonnullElements final List<Match> alternative,
+            @Nonnull final AttributeKey key) {
+        for (final Match match : alternative) {
+            if (match.isIndexable() && key.equals(match.getDesignator().getKey())) {
+                return match.getLiteral().getLexicalValue();
+            }
+        }
+        return null;
+    }
+
+    /** A single SubjectMatch, ResourceMatch, ActionMatch or EnvironmentMatch. */
+    static final class Match {
+
+        /** The match function, applied to the literal and each designated value. */
+        @Nonnull private final Functions.StrictFunction function;
+
+        /** The literal value. */
+        @Nonnull private final Expression.Literal literal;
+
+        /** The attribute designator. */
+        @Nonnull private final Expression.Designator designator;
+
+        /**
+         * Constructor.
+         * 
+         * @param matchFunction the match function
+         * @param matchLiteral the literal value
+         * @param matchDesignator the attribute designator
+         */
+        Match(@Nonnull final Functions.StrictFunction matchFunction, @Nonnull final Expression.Literal matchLiteral,
+                @Nonnull final Expression.Designator matchDesignator) {
+            function = matchFunction;
+            literal = matchLiteral;
+            designator = matchDesignator;
+        }
+
+        /**
+         * Get the literal value.
+         * 
+         * @return the literal value
+         */
+        @Nonnull Expression.Literal getLiteral() {
+            return literal;
+        }
+
+        /**
+         * Get the attribute designator.
+         * 
+         * @return the designator
+         */
+        @Nonnull Expression.Designator getDesignator() {
+            return designator;
+        }
+
+        /**
+         * Get whether the match is a string or anyURI equality test which is false whenever the request lacks
+         * the literal value, and so may be used to index its target.
+         * 
+         * @return whether the match may be used for indexing
+         */
+        boolean isIndexable() {
+            final String dataType = literal.getDataType();
+            return designator.getIssuer() == null && !designator.isMustBePresent()
+                    && dataType.equals(designator.getKey().getDataType())
+                    && (Functions.STRING_EQUAL.equals(function.getId()) && Functions.STRING.equals(dataType)
+                            || Functions.ANY_URI_EQUAL.equals(function.getId())
+                                    && Functions.ANY_URI.equals(dataType));
+        }
+
+        /**
+         * Evaluate the match against a request.
+         * 
+         * @param context the evaluation context
+         * 
+         * @return the outcome
+         */
+        @Nonnull MatchResult evaluate(@Nonnull final EvaluationContext context) {
+            final Bag bag;
+            try {
+                bag = designator.evaluate(context);
+            } catch (final IndeterminateException e) {
+                return MatchResult.INDETERMINATE;
+            }
+
+            final Object[] args = new Object[2];
+            args[0] = literal.evaluate(context);
+            boolean indeterminate = false;
+            for (final Object value : bag.getValues()) {
+                args[1] = value;
+                try {
+                    if (Boolean.TRUE.equals(function.apply(args))) {
+                        return MatchResult.MATCH;
+                    }
+                } catch (final IndeterminateException e) {
+                    indeterminate = true;
+                }
+            }
+            return indeterminate ? MatchResult.INDETERMINATE : MatchResult.NO_MATCH;
+        }
+    }
+
+    /** The attributes and values under which a target may be indexed. */
+    static final class IndexTerm {
+
+        /** The attributes. */
+        @Nonnull private final AttributeKey key;
+
+        /** The lexical values, at least one of which the request must carry. */
+        @Nonnull @NonnullElements @Unmodifiable private final Set<String> values;
+
+        /**
+         * Constructor.
+         * 
+         * @param attributeKey the attributes
+         * @param termValues the lexical values
+         */
+        IndexTerm(@Nonnull final AttributeKey attributeKey, @Nonnull @NonnullElements final Set<String> termValues) {
+            key = attributeKey;
+            values = Collections.unmodifiableSet(termValues);
+        }
+
+        /**
+         * Get the attributes.
+         * 
+         * @return the attribute key
+         */
+        @Nonnull AttributeKey getKey() {
+            return key;
+        }
+
+        /**
+         * Get the lexical values, at least one of which the request must carry.
+         * 
+         * @return the values
+         */
+        @Nonnull @NonnullElements @Unmodifiable Set<String> getValues() {
+            return values;
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.opensaml.xacml.policy.EffectType;
+
+/** A compiled rule, policy or policy set. */
+interface Evaluable {
+
+    /**
+     * Get the target.
+     * 
+     * @return the target, or null if every request is in scope
+     */
+    @Nullable CompiledTarget getTarget();
+
+    /**
+     * Get the effect of a rule.
+     * 
+     * @return the effect, or null for a policy or policy set
+     */
+    @Nullable EffectType getEffect();
+
+    /**
+     * Evaluate against a request.
+     * 
+     * @param context the evaluation context
+     * 
+     * @return the result
+     */
+    @Nonnull EvaluationResult evaluate(@Nonnull EvaluationContext context);
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+
+import org.opensaml.xacml.ctx.AttributeType;
+import org.opensaml.xacml.ctx.AttributeValueType;
+import org.opensaml.xacml.ctx.RequestType;
+import org.opensaml.xacml.ctx.ResourceType;
+import org.opensaml.xacml.ctx.SubjectType;
+
+/**
+ * The attributes of a single request, indexed by {@link AttributeKey} for the duration of its evaluation.
+ *
+ * <p>
+ * Bags of typed values are built on first use by a designator and reused by every other designator
+ * selecting the same attributes.
+ * </p>
+ */
+@NotThreadSafe
+final class EvaluationContext {
+
+    /** The request attributes, by key. */
+    @Nonnull private final Map<AttributeKey, List<AttributeType>> attributes;
+
+    /** The lexical values of the request attributes, by key, regardless of issuer. */
+    @Nonnull private final Map<AttributeKey, List<String>> values;
+
+    /** The typed bags built so far, for designators which do not name an issuer. */
+    @Nonnull private final Map<AttributeKey, Bag> bags;
+
+    /**
+     * Constructor.
+     * 
+     * @param request the request context
+     */
+    EvaluationContext(@Nonnull final RequestType request) {
+        attributes = new HashMap<>();
+        values = new HashMap<>();
+        bags = new HashMap<>();
+
+        for (final SubjectType subject : request.getSubjects()) {
+            final String category = subject.getSubjectCategory() != null ? subject.getSubjectCategory()
+                    : AttributeKey.DEFAULT_SUBJECT_CATEGORY;
+            add(category, subject.getAttributes());
+        }
+        for (final ResourceType resource : request.getResources()) {
+            add(AttributeKey.RESOURCE_CATEGORY, resource.getAttributes());
+        }
+        if (request.getAction() != null) {
+            add(AttributeKey.ACTION_CATEGORY, request.getAction().getAttributes());
+        }
+        if (request.getEnvironment() != null) {
+            add(AttributeKey.ENVIRONMENT_CATEGORY, request.getEnvironment().getAttributes());
+        }
+    }
+
+    /**
+     * Get the lexical values of the attributes with a given key, regardless of issuer.
+     * 
+     * @param key the attribute key
+     * 
+     * @return the values
+     */
+    @Nonnull @NonnullElements @Unmodifiable List<String> getValues(@Nonnull final AttributeKey key) {
+        final List<String> result = values.get(key);
+        return result != null ? result : Collections.<String>emptyList();
+    }
+
+    /**
+     * Get the bag of typed values of the attributes with a given key.
+     * 
+     * @param key the attribute key
+     * @param issuer the issuer the attributes must carry, or null for any
+     * 
+     * @return the bag
+     * 
+     * @throws IndeterminateException if a value can not be converted to the key's data type
+     */
+    @Nonnull Bag getBag(@Nonnull final AttributeKey key, @Nullable final String issuer)
+            throws IndeterminateException {
+        if (issuer == null) {
+            Bag bag = bags.get(key);
+            if (bag == null) {
+                bag = toBag(key.getDataType(), getValues(key));
+                bags.put(key, bag);
+            }
+            return bag;
+        }
+
+        final List<AttributeType> candidates = attributes.get(key);
+        if (candidates == null) {
+            return toBag(key.getDataType(), Collections.<String>emptyList());
+        }
+        final List<String> issued = new ArrayList<>();
+        for (final AttributeType attribute : candidates) {
+            if (issuer.equals(attribute.getIssuer())) {
+                addValues(attribute, issued);
+            }
+        }
+        return toBag(key.getDataType(), issued);
+    }
+
+    /**
+     * Index a set of attributes.
+     * 
+     * @param category the category of the element carrying the attributes
+     * @param attrs the attributes
+     */
+    private void add(@Nonnull @NotEmpty final String category,
+            @Nonnull @NonnullElements final List<AttributeType> attrs) {
+        for (final AttributeType attribute : attrs) {
+            if (attribute.getAttributeId() == null || attribute.getDataType() == null) {
+                continue;
+            }
+            final AttributeKey key = new AttributeKey(category, attribute.getAttributeId(), attribute.getDataType());
+
+            List<AttributeType> keyed = attributes.get(key);
+            if (keyed == null) {
+                keyed = new ArrayList<>(1);
+                attributes.put(key, keyed);
+                values.put(key, new ArrayList<String>(1));
+            }
+            keyed.add(attribute);
+            addValues(attribute, values.get(key));
+        }
+    }
+
+    /**
+     * Append the lexical values of an attribute to a list.
+     * 
+     * @param attribute the attribute
+     * @param target the list to add to
+     */
+    private static void addValues(@Nonnull final AttributeType attribute, @Nonnull final List<String> target) {
+        for (final AttributeValueType value : attribute.getAttributeValues()) {
+            target.add(value.getValue() != null ? value.getValue() : "");
+        }
+    }
+
+    /**
+     * Convert lexical values into a bag of typed values.
+     * 
+     * @param dataType the data type
+     * @param lexicalValues the lexical values
+     * 
+     * @return the bag
+     * 
+     * @throws IndeterminateException if a value can not be converted
+     */
+    @Nonnull private static Bag toBag(@Nonnull final String dataType,
+            @Nonnull @NonnullElements final List<String> lexicalValues) throws IndeterminateException {
+        final List<Object> typed = new ArrayList<>(lexicalValues.size());
+        for (final String value : lexicalValues) {
+            typed.add(Functions.parseValue(dataType, value));
+        }
+        return new Bag(typed);
+    }
+}
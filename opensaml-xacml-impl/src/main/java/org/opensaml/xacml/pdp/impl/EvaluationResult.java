@@ -0,0 +1,178 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.policy.ObligationType;
+
+/** The immutable outcome of evaluating a rule, policy or policy set. */
+final class EvaluationResult {
+
+    /** Shared NotApplicable result. */
+    @Nonnull static final EvaluationResult NOT_APPLICABLE = new EvaluationResult(DECISION.NotApplicable);
+
+    /** Shared Permit result without obligations. */
+    @Nonnull static final EvaluationResult PERMIT = new EvaluationResult(DECISION.Permit);
+
+    /** Shared Deny result without obligations. */
+    @Nonnull static final EvaluationResult DENY = new EvaluationResult(DECISION.Deny);
+
+    /** The decision. */
+    @Nonnull private final DECISION decision;
+
+    /** The XACML status code. */
+    @Nonnull private final String statusCode;
+
+    /** The status message, if any. */
+    @Nullable private final String statusMessage;
+
+    /** The obligations which accompany the decision. */
+    @Nonnull @NonnullElements @Unmodifiable private final List<ObligationType> obligations;
+
+    /**
+     * Constructor.
+     * 
+     * @param theDecision the decision
+     */
+    private EvaluationResult(@Nonnull final DECISION theDecision) {
+        this(theDecision, StatusCodeType.SC_OK, null, Collections.<ObligationType>emptyList());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param theDecision the decision
+     * @param code the XACML status code
+     * @param message the status message
+     * @param theObligations the obligations which accompany the decision
+     */
+    private EvaluationResult(@Nonnull final DECISION theDecision, @Nonnull final String code,
+            @Nullable final String message, @Nonnull @NonnullElements final List<ObligationType> theObligations) {
+        decision = theDecision;
+        statusCode = code;
+        statusMessage = message;
+        obligations = theObligations;
+    }
+
+    /**
+     * Get the decision.
+     * 
+     * @return the decision
+     */
+    @Nonnull DECISION getDecision() {
+        return decision;
+    }
+
+    /**
+     * Get the XACML status code.
+     * 
+     * @return the status code
+     */
+    @Nonnull String getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Get the status message.
+     * 
+     * @return the status message, or null
+     */
+    @Nullable String getStatusMessage() {
+        return statusMessage;
+    }
+
+    /**
+     * Get the obligations which accompany the decision.
+     * 
+     * @return the obligations
+     */
+    @Nonnull @NonnullElements @Unmodifiable List<ObligationType> getObligations() {
+        return obligations;
+    }
+
+    /**
+     * Get a result which carries this decision and status, along with additional obligations.
+     * 
+     * @param additional the obligations to add
+     * 
+     * @return a result carrying both this result's obligations and the additional ones
+     */
+    @Nonnull EvaluationResult withObligations(@Nonnull @NonnullElements final List<ObligationType> additional) {
+        if (additional.isEmpty()) {
+            return this;
+        }
+        final List<ObligationType> merged = new ArrayList<>(obligations.size() + additional.size());
+        merged.addAll(obligations);
+        merged.addAll(additional);
+        return new EvaluationResult(decision, statusCode, statusMessage, Collections.unmodifiableList(merged));
+    }
+
+    /**
+     * Get the shared result for a decision, which must not be Indeterminate.
+     * 
+     * @param decision the decision
+     * 
+     * @return the shared result
+     */
+    @Nonnull static EvaluationResult of(@Nonnull final DECISION decision) {
+        switch (decision) {
+            case Permit:
+                return PERMIT;
+            case Deny:
+                return DENY;
+            case NotApplicable:
+                return NOT_APPLICABLE;
+            default:
+                return indeterminate(StatusCodeType.SC_PROCESSING_ERROR, null);
+        }
+    }
+
+    /**
+     * Build an Indeterminate result.
+     * 
+     * @param code the XACML status code
+     * @param message the status message
+     * 
+     * @return the result
+     */
+    @Nonnull static EvaluationResult indeterminate(@Nonnull final String code, @Nullable final String message) {
+        return new EvaluationResult(DECISION.Indeterminate, code, message, Collections.<ObligationType>emptyList());
+    }
+
+    /**
+     * Build an Indeterminate result from the exception which caused it.
+     * 
+     * @param e the exception
+     * 
+     * @return the result
+     */
+    @Nonnull static EvaluationResult indeterminate(@Nonnull final IndeterminateException e) {
+        return indeterminate(e.getStatusCode(), e.getMessage());
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+
+import org.opensaml.xacml.ctx.StatusCodeType;
+
+/**
+ * A compiled XACML expression.
+ *
+ * <p>
+ * Evaluation yields a typed single value (a {@link String}, {@link Boolean}, {@link Long} or {@link Double})
+ * or a {@link Bag} of them, and signals an Indeterminate outcome by throwing {@link IndeterminateException}.
+ * </p>
+ */
+abstract class Expression {
+
+    /**
+     * Evaluate the expression.
+     * 
+     * @param context the evaluation context
+     * 
+     * @return the value
+     * 
+     * @throws IndeterminateException if the expression evaluates to Indeterminate
+     */
+    @Nonnull abstract Object evaluate(@Nonnull final EvaluationContext context) throws IndeterminateException;
+
+    /** A literal attribute value, converted to its data type at compile time. */
+    static final class Literal extends Expression {
+
+        /** The data type. */
+        @Nonnull private final String dataType;
+
+        /** The lexical value. */
+        @Nonnull private final String lexical;
+
+        /** The typed value. */
+        @Nonnull private final Object value;
+
+        /**
+         * Constructor.
+         * 
+         * @param type the data type
+         * @param lexicalValue the lexical value
+         * @param typedValue the typed value
+         */
+        Literal(@Nonnull final String type, @Nonnull final String lexicalValue, @Nonnull final Object typedValue) {
+            dataType = type;
+            lexical = lexicalValue;
+            value = typedValue;
+        }
+
+        /**
+         * Get the data type.
+         * 
+         * @return the data type
+         */
+        @Nonnull String getDataType() {
+            return dataType;
+        }
+
+        /**
+         * Get the lexical value.
+         * 
+         * @return the lexical value
+         */
+        @Nonnull String getLexicalValue() {
+            return lexical;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nonnull Object evaluate(@Nonnull final EvaluationContext context) {
+            return value;
+        }
+    }
+
+    /** An attribute designator, selecting a bag of request attribute values. */
+    static final class Designator extends Expression {
+
+        /** The attributes selected. */
+        @Nonnull private final AttributeKey key;
+
+        /** The issuer the attributes must carry, or null for any. */
+        @Nullable private final String issuer;
+
+        /** Whether an empty bag is an error. */
+        private final boolean mustBePresent;
+
+        /**
+         * Constructor.
+         * 
+         * @param attributeKey the attributes selected
+         * @param attributeIssuer the issuer the attributes must carry, or null for any
+         * @param required whether an empty bag is an error
+         */
+        Designator(@Nonnull final AttributeKey attributeKey, @Nullable final String attributeIssuer,
+                final boolean required) {
+            key = attributeKey;
+            issuer = attributeIssuer;
+            mustBePresent = required;
+        }
+
+        /**
+         * Get the attributes selected.
+         * 
+         * @return the attribute key
+         */
+        @Nonnull AttributeKey getKey() {
+            return key;
+        }
+
+        /**
+         * Get the issuer the attributes must carry.
+         * 
+         * @return the issuer, or null for any
+         */
+        @Nullable String getIssuer() {
+            return issuer;
+        }
+
+        /**
+         * Get whether an empty bag is an error.
+         * 
+         * @return whether an empty bag is an error
+         */
+        boolean isMustBePresent() {
+            return mustBePresent;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nonnull Bag evaluate(@Nonnull final EvaluationContext context) throws IndeterminateException {
+            final Bag bag = context.getBag(key, issuer);
+            if (mustBePresent && bag.size() == 0) {
+                throw new IndeterminateException(StatusCodeType.SC_MISSING_ATTRIBUTE,
+                        "Required attribute " + key + " was not present");
+            }
+            return bag;
+        }
+    }
+
+    /** The application of a function to argument expressions. */
+    static final class Apply extends Expression {
+
+        /** The function. */
+        @Nonnull private final Functions.Function function;
+
+        /** The arguments. */
+        @Nonnull @NonnullElements private final Expression[] arguments;
+
+        /**
+         * Constructor.
+         * 
+         * @param fn the function
+         * @param args the arguments
+         */
+        Apply(@Nonnull final Functions.Function fn, @Nonnull @NonnullElements final List<Expression> args) {
+            function = fn;
+            arguments = args.toArray(new Expression[args.size()]);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nonnull Object evaluate(@Nonnull final EvaluationContext context) throws IndeterminateException {
+            return function.invoke(arguments, context);
+        }
+    }
+}
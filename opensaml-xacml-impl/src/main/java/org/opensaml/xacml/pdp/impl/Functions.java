@@ -0,0 +1,490 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+import org.opensaml.xacml.ctx.StatusCodeType;
+
+/**
+ * The XACML data types and functions supported by compiled policies.
+ *
+ * <p>
+ * The string, boolean, integer, double and anyURI data types are supported, represented respectively by
+ * {@link String}, {@link Boolean}, {@link Long}, {@link Double} and {@link String}. Values of any other
+ * data type are carried as their lexical form, so may be designated and compared for equality only
+ * through functions accepting strings.
+ * </p>
+ */
+final class Functions {
+
+    /** URI of the string data type. */
+    @Nonnull @NotEmpty static final String STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+    /** URI of the boolean data type. */
+    @Nonnull @NotEmpty static final String BOOLEAN = "http://www.w3.org/2001/XMLSchema#boolean";
+
+    /** URI of the integer data type. */
+    @Nonnull @NotEmpty static final String INTEGER = "http://www.w3.org/2001/XMLSchema#integer";
+
+    /** URI of the double data type. */
+    @Nonnull @NotEmpty static final String DOUBLE = "http://www.w3.org/2001/XMLSchema#double";
+
+    /** URI of the anyURI data type. */
+    @Nonnull @NotEmpty static final String ANY_URI = "http://www.w3.org/2001/XMLSchema#anyURI";
+
+    /** Prefix of the XACML 1.0 function identifiers. */
+    @Nonnull @NotEmpty static final String FUNCTION_PREFIX = "urn:oasis:names:tc:xacml:1.0:function:";
+
+    /** Prefix of the XACML 2.0 function identifiers. */
+    @Nonnull @NotEmpty static final String FUNCTION_PREFIX_20 = "urn:oasis:names:tc:xacml:2.0:function:";
+
+    /** Identifier of the string-equal function. */
+    @Nonnull @NotEmpty static final String STRING_EQUAL = FUNCTION_PREFIX + "string-equal";
+
+    /** Identifier of the anyURI-equal function. */
+    @Nonnull @NotEmpty static final String ANY_URI_EQUAL = FUNCTION_PREFIX + "anyURI-equal";
+
+    /** Arity of functions accepting any number of arguments. */
+    static final int VARIADIC = -1;
+
+    /** Maximum number of compiled regular expressions retained. */
+    private static final int MAX_PATTERNS = 256;
+
+    /** The supported functions, by identifier. */
+    @Nonnull @NonnullElements private static final Map<String, Function> FUNCTIONS;
+
+    /** Compiled regular expressions, by source. */
+    @Nonnull private static final ConcurrentMap<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+    static {
+        final Map<String, Function> functions = new HashMap<>();
+
+        register(functions, new Function(FUNCTION_PREFIX + "and", VARIADIC) {
+            /** {@inheritDoc} */
+            @Override
+            @Nonnull Object invoke(@Nonnull final Expression[] args, @Nonnull final EvaluationContext context)
+                    throws IndeterminateException {
+                for (final Expression arg : args) {
+                    if (!cast(arg.evaluate(context), Boolean.class, this)) {
+                        return Boolean.FALSE;
+                    }
+                }
+                return Boolean.TRUE;
+            }
+        });
+
+        register(functions, new Function(FUNCTION_PREFIX + "or", VARIADIC) {
+            /** {@inheritDoc} */
+            @Override
+            @Nonnull Object invoke(@Nonnull final Expression[] args, @Nonnull final EvaluationContext context)
+                    throws IndeterminateException {
+                for (final Expression arg : args) {
+                    if (cast(arg.evaluate(context), Boolean.class, this)) {
+                        return Boolean.TRUE;
+                    }
+                }
+                return Boolean.FALSE;
+            }
+        });
+
+        register(functions, new StrictFunction(FUNCTION_PREFIX + "not", 1) {
+            /** {@inheritDoc} */
+            @Override
+            @Nonnull Object apply(@Nonnull final Object[] values) throws IndeterminateException {
+                return !cast(values[0], Boolean.class, this);
+            }
+        });
+
+        registerTyped(functions, "string", String.class, true);
+        registerTyped(functions, "boolean", Boolean.class, false);
+        registerTyped(functions, "integer", Long.class, true);
+        registerTyped(functions, "double", Double.class, true);
+        registerTyped(functions, "anyURI", String.class, false);
+
+        register(functions, new RegexpMatch(FUNCTION_PREFIX + "string-regexp-match"));
+        register(functions, new RegexpMatch(FUNCTION_PREFIX_20 + "anyURI-regexp-match"));
+
+        FUNCTIONS = Collections.unmodifiableMap(functions);
+    }
+
+    /** Constructor. */
+    private Functions() {
+    }
+
+    /**
+     * Get a supported function.
+     * 
+     * @param id the function identifier
+     * 
+     * @return the function, or null if it is not supported
+     */
+    @Nullable static Function getFunction(@Nullable final String id) {
+        return id != null ? FUNCTIONS.get(id) : null;
+    }
+
+    /**
+     * Convert a lexical value to the representation of its data type.
+     * 
+     * @param dataType the data type
+     * @param lexical the lexical value
+     * 
+     * @return the typed value
+     * 
+     * @throws IndeterminateException if the value is not valid for the data type
+     */
+    // Checkstyle: CyclomaticComplexity OFF
+    @Nonnull static Object parseValue(@Nonnull final String dataType, @Nonnull final String lexical)
+            throws IndeterminateException {
+        try {
+            switch (dataType) {
+                case BOOLEAN:
+                    final String b = lexical.trim();
+                    if ("true".equals(b) || "1".equals(b)) {
+                        return Boolean.TRUE;
+                    } else if ("false".equals(b) || "0".equals(b)) {
+                        return Boolean.FALSE;
+                    }
+                    throw new IndeterminateException(StatusCodeType.SC_SYNTAX_ERROR,
+                            "Invalid boolean value '" + lexical + "'");
+                case INTEGER:
+                    final String i = lexical.trim();
+                    return Long.valueOf(i.startsWith("+") ? i.substring(1) : i);
+                case DOUBLE:
+                    final String d = lexical.trim();
+                    if ("INF".equals(d)) {
+                        return Double.POSITIVE_INFINITY;
+                    } else if ("-INF".equals(d)) {
+                        return Double.NEGATIVE_INFINITY;
+                    }
+                    return Double.valueOf(d);
+                default:
+                    return lexical;
+            }
+        } catch (final NumberFormatException e) {
+            throw new IndeterminateException(StatusCodeType.SC_SYNTAX_ERROR,
+                    "Invalid " + dataType + " value '" + lexical + "'");
+        }
+    }
+    // Checkstyle: CyclomaticComplexity ON
+
+    /**
+     * Cast a value to the type a function requires.
+     * 
+     * @param <T> the required type
+     * @param value the value
+     * @param type the required type
+     * @param function the function requiring it
+     * 
+     * @return the value
+     * 
+     * @throws IndeterminateException if the value is not of the required type
+     */
+    @Nonnull static <T> T cast(@Nonnull final Object value, @Nonnull final Class<T> type,
+            @Nonnull final Function function) throws IndeterminateException {
+        if (!type.isInstance(value)) {
+            throw new IndeterminateException("Function " + function.getId() + " expected a "
+                    + type.getSimpleName() + " argument but was given a " + value.getClass().getSimpleName());
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * Test two typed values for equality.
+     * 
+     * @param a first value
+     * @param b second value
+     * 
+     * @return whether they are equal
+     */
+    static boolean isEqual(@Nonnull final Object a, @Nonnull final Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            return ((Double) a).doubleValue() == ((Double) b).doubleValue();
+        }
+        return a.equals(b);
+    }
+
+    /**
+     * Register a function.
+     * 
+     * @param functions the functions being registered
+     * @param function the function to register
+     */
+    private static void register(@Nonnull final Map<String, Function> functions, @Nonnull final Function function) {
+        functions.put(function.getId(), function);
+    }
+
+    /**
+     * Register the equality, bag and, optionally, comparison functions of a data type.
+     * 
+     * @param functions the functions being registered
+     * @param typeName the data type's name within function identifiers
+     * @param type the data type's representation
+     * @param ordered whether to register comparison functions
+     */
+    private static void registerTyped(@Nonnull final Map<String, Function> functions,
+            @Nonnull final String typeName, @Nonnull final Class<?> type, final boolean ordered) {
+        final String prefix = FUNCTION_PREFIX + typeName;
+
+        register(functions, new StrictFunction(prefix + "-equal", 2) {
+            /** {@inheritDoc} */
+            @Override
+            @Nonnull Object apply(@Nonnull final Object[] values) throws IndeterminateException {
+                return isEqual(cast(values[0], type, this), cast(values[1], type, this));
+            }
+        });
+
+        register(functions, new StrictFunction(prefix + "-one-and-only", 1) {
+            /** {@inheritDoc} */
+            @Override
+            @Nonnull Object apply(@Nonnull final Object[] values) throws IndeterminateException {
+                final Bag bag = cast(values[0], Bag.class, this);
+                if (bag.size() != 1) {
+                    throw new IndeterminateException("Function " + getId() + " was given a bag of " + bag.size()
+                            + " values");
+                }
+                return cast(bag.getValues().get(0), type, this);
+            }
+        });
+
+        register(functions, new StrictFunction(prefix + "-bag-size", 1) {
+            /** {@inheritDoc} */
+            @Override
+            @Nonnull Object apply(@Nonnull final Object[] values) throws IndeterminateException {
+                return Long.valueOf(cast(values[0], Bag.class, this).size());
+            }
+        });
+
+        register(functions, new StrictFunction(prefix + "-is-in", 2) {
+            /** {@inheritDoc} */
+            @Override
+            @Nonnull Object apply(@Nonnull final Object[] values) throws IndeterminateException {
+                return contains(cast(values[1], Bag.class, this), cast(values[0], type, this));
+            }
+        });
+
+        register(functions, new StrictFunction(prefix + "-at-least-one-member-of", 2) {
+            /** {@inheritDoc} */
+            @Override
+            @Nonnull Object apply(@Nonnull final Object[] values) throws IndeterminateException {
+                final Bag candidates = cast(values[1], Bag.class, this);
+                for (final Object value : cast(values[0], Bag.class, this).getValues()) {
+                    if (contains(candidates, value)) {
+                        return Boolean.TRUE;
+                    }
+                }
+                return Boolean.FALSE;
+            }
+        });
+
+        if (ordered) {
+            register(functions, new Comparison(prefix + "-greater-than", type, 1, 1));
+            register(functions, new Comparison(prefix + "-greater-than-or-equal", type, 0, 1));
+            register(functions, new Comparison(prefix + "-less-than", type, -1, -1));
+            register(functions, new Comparison(prefix + "-less-than-or-equal", type, -1, 0));
+        }
+    }
+
+    /**
+     * Test whether a bag contains a value.
+     * 
+     * @param bag the bag
+     * @param value the value
+     * 
+     * @return whether the bag contains the value
+     */
+    private static boolean contains(@Nonnull final Bag bag, @Nonnull final Object value) {
+        for (final Object member : bag.getValues()) {
+            if (isEqual(member, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A function, applied to unevaluated argument expressions. */
+    abstract static class Function {
+
+        /** The function identifier. */
+        @Nonnull @NotEmpty private final String id;
+
+        /** The number of arguments required, or {@link Functions#VARIADIC}. */
+        private final int arity;
+
+        /**
+         * Constructor.
+         * 
+         * @param functionId the function identifier
+         * @param argCount the number of arguments required, or {@link Functions#VARIADIC}
+         */
+        Function(@Nonnull @NotEmpty final String functionId, final int argCount) {
+            id = functionId;
+            arity = argCount;
+        }
+
+        /**
+         * Get the function identifier.
+         * 
+         * @return the identifier
+         */
+        @Nonnull @NotEmpty String getId() {
+            return id;
+        }
+
+        /**
+         * Get the number of arguments required.
+         * 
+         * @return the number of arguments, or {@link Functions#VARIADIC}
+         */
+        int getArity() {
+            return arity;
+        }
+
+        /**
+         * Apply the function.
+         * 
+         * @param args the argument expressions
+         * @param context the evaluation context
+         * 
+         * @return the result
+         * 
+         * @throws IndeterminateException if the result is Indeterminate
+         */
+        @Nonnull abstract Object invoke(@Nonnull final Expression[] args, @Nonnull final EvaluationContext context)
+                throws IndeterminateException;
+    }
+
+    /** A function which evaluates all of its arguments before it is applied. */
+    abstract static class StrictFunction extends Function {
+
+        /**
+         * Constructor.
+         * 
+         * @param functionId the function identifier
+         * @param argCount the number of arguments required
+         */
+        StrictFunction(@Nonnull @NotEmpty final String functionId, final int argCount) {
+            super(functionId, argCount);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nonnull Object invoke(@Nonnull final Expression[] args, @Nonnull final EvaluationContext context)
+                throws IndeterminateException {
+            final Object[] values = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                values[i] = args[i].evaluate(context);
+            }
+            return apply(values);
+        }
+
+        /**
+         * Apply the function to evaluated arguments.
+         * 
+         * @param values the argument values
+         * 
+         * @return the result
+         * 
+         * @throws IndeterminateException if the result is Indeterminate
+         */
+        @Nonnull abstract Object apply(@Nonnull final Object[] values) throws IndeterminateException;
+    }
+
+    /** An ordering comparison between two values of the same type. */
+    private static final class Comparison extends StrictFunction {
+
+        /** The value representation. */
+        @Nonnull private final Class<?> type;
+
+        /** The lowest signum of the comparison for which the function is true. */
+        private final int low;
+
+        /** The highest signum of the comparison for which the function is true. */
+        private final int high;
+
+        /**
+         * Constructor.
+         * 
+         * @param functionId the function identifier
+         * @param valueType the value representation, which must be {@link Comparable}
+         * @param lowSignum the lowest signum of the comparison for which the function is true
+         * @param highSignum the highest signum of the comparison for which the function is true
+         */
+        Comparison(@Nonnull @NotEmpty final String functionId, @Nonnull final Class<?> valueType,
+                final int lowSignum, final int highSignum) {
+            super(functionId, 2);
+            type = valueType;
+            low = lowSignum;
+            high = highSignum;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @SuppressWarnings("unchecked")
+        @Nonnull Object apply(@Nonnull final Object[] values) throws IndeterminateException {
+            final Comparable<Object> a = (Comparable<Object>) cast(values[0], type, this);
+            final int signum = Integer.signum(a.compareTo(cast(values[1], type, this)));
+            return signum >= low && signum <= high;
+        }
+    }
+
+    /** A regular expression match of a string or anyURI value. */
+    private static final class RegexpMatch extends StrictFunction {
+
+        /**
+         * Constructor.
+         * 
+         * @param functionId the function identifier
+         */
+        RegexpMatch(@Nonnull @NotEmpty final String functionId) {
+            super(functionId, 2);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        @Nonnull Object apply(@Nonnull final Object[] values) throws IndeterminateException {
+            final String regexp = cast(values[0], String.class, this);
+            Pattern pattern = PATTERNS.get(regexp);
+            if (pattern == null) {
+                try {
+                    pattern = Pattern.compile(regexp);
+                } catch (final PatternSyntaxException e) {
+                    throw new IndeterminateException(StatusCodeType.SC_SYNTAX_ERROR,
+                            "Invalid regular expression '" + regexp + "'");
+                }
+                if (PATTERNS.size() >= MAX_PATTERNS) {
+                    PATTERNS.clear();
+                }
+                PATTERNS.put(regexp, pattern);
+            }
+            return pattern.matcher(cast(values[1], String.class, this)).find();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.xacml.ctx.StatusCodeType;
+
+/** Exception signalling that an expression, match or target evaluated to Indeterminate. */
+class IndeterminateException extends Exception {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = -2305431780913553174L;
+
+    /** The XACML status code describing the error. */
+    @Nonnull private final String statusCode;
+
+    /**
+     * Constructor.
+     * 
+     * @param code the XACML status code describing the error
+     * @param message exception message
+     */
+    IndeterminateException(@Nonnull final String code, @Nonnull final String message) {
+        super(message);
+        statusCode = code;
+    }
+
+    /**
+     * Constructor, for a processing error.
+     * 
+     * @param message exception message
+     */
+    IndeterminateException(@Nonnull final String message) {
+        this(StatusCodeType.SC_PROCESSING_ERROR, message);
+    }
+
+    /**
+     * Get the XACML status code describing the error.
+     * 
+     * @return the status code
+     */
+    @Nonnull String getStatusCode() {
+        return statusCode;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // Indeterminate results are ordinary outcomes of evaluation, so the stack trace is not worth its cost.
+        return this;
+    }
+}
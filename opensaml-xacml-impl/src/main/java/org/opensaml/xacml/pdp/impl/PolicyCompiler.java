@@ -0,0 +1,602 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.xacml.XACMLObject;
+import org.opensaml.xacml.policy.ActionMatchType;
+import org.opensaml.xacml.policy.ActionType;
+import org.opensaml.xacml.policy.ApplyType;
+import org.opensaml.xacml.policy.AttributeDesignatorType;
+import org.opensaml.xacml.policy.AttributeSelectorType;
+import org.opensaml.xacml.policy.AttributeValueType;
+import org.opensaml.xacml.policy.EnvironmentMatchType;
+import org.opensaml.xacml.policy.EnvironmentType;
+import org.opensaml.xacml.policy.ExpressionType;
+import org.opensaml.xacml.policy.IdReferenceType;
+import org.opensaml.xacml.policy.ObligationType;
+import org.opensaml.xacml.policy.ObligationsType;
+import org.opensaml.xacml.policy.PolicySetType;
+import org.opensaml.xacml.policy.PolicyType;
+import org.opensaml.xacml.policy.ResourceMatchType;
+import org.opensaml.xacml.policy.ResourceType;
+import org.opensaml.xacml.policy.RuleType;
+import org.opensaml.xacml.policy.SubjectAttributeDesignatorType;
+import org.opensaml.xacml.policy.SubjectMatchType;
+import org.opensaml.xacml.policy.SubjectType;
+import org.opensaml.xacml.policy.TargetType;
+import org.opensaml.xacml.policy.VariableDefinitionType;
+import org.opensaml.xacml.policy.VariableReferenceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles XACML 2.0 policies and policy sets into {@link PolicyDecisionEngine}s.
+ *
+ * <p>
+ * Targets are compiled into matchers and indexed within each policy and policy set, so that a decision
+ * evaluates only those rules and children whose targets may apply to the request. Conditions and variable
+ * definitions are compiled into expression trees, with variable references inlined.
+ * </p>
+ *
+ * <p>
+ * Policies and policy sets referenced by PolicyIdReference and PolicySetIdReference elements must be made
+ * known to the compiler beforehand, and are resolved by identifier alone, without regard to version
+ * constraints. Each referenced policy is compiled once and shared by every engine the compiler produces.
+ * </p>
+ *
+ * <p>
+ * AttributeSelector elements, higher-order functions and functions not provided by this package are not
+ * supported, and cause compilation to fail rather than produce engines which would yield Indeterminate.
+ * </p>
+ */
+@NotThreadSafe
+public class PolicyCompiler {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(PolicyCompiler.class);
+
+    /** The policies which may be referenced, by PolicyId. */
+    @Nonnull private final Map<String, PolicyType> referenceablePolicies;
+
+    /** The policy sets which may be referenced, by PolicySetId. */
+    @Nonnull private final Map<String, PolicySetType> referenceablePolicySets;
+
+    /** The referenced policies compiled so far, by PolicyId. */
+    @Nonnull private final Map<String, CompiledPolicy> compiledPolicies;
+
+    /** The referenced policy sets compiled so far, by PolicySetId. */
+    @Nonnull private final Map<String, CompiledPolicy> compiledPolicySets;
+
+    /** The referenced policy sets being compiled, used to detect circular references. */
+    @Nonnull private final Set<String> policySetsInProgress;
+
+    /** Constructor. */
+    public PolicyCompiler() {
+        referenceablePolicies = new HashMap<>();
+        referenceablePolicySets = new HashMap<>();
+        compiledPolicies = new HashMap<>();
+        compiledPolicySets = new HashMap<>();
+        policySetsInProgress = new HashSet<>();
+    }
+
+    /**
+     * Make a policy available to PolicyIdReference elements.
+     * 
+     * @param policy the policy, which must have a PolicyId
+     */
+    public void addReferenceablePolicy(@Nonnull final PolicyType policy) {
+        Constraint.isNotNull(policy, "Policy cannot be null");
+        Constraint.isNotNull(policy.getPolicyId(), "Referenceable policy must have a PolicyId");
+        referenceablePolicies.put(policy.getPolicyId(), policy);
+        compiledPolicies.remove(policy.getPolicyId());
+    }
+
+    /**
+     * Make a policy set available to PolicySetIdReference elements.
+     * 
+     * @param policySet the policy set, which must have a PolicySetId
+     */
+    public void addReferenceablePolicySet(@Nonnull final PolicySetType policySet) {
+        Constraint.isNotNull(policySet, "Policy set cannot be null");
+        Constraint.isNotNull(policySet.getPolicySetId(), "Referenceable policy set must have a PolicySetId");
+        referenceablePolicySets.put(policySet.getPolicySetId(), policySet);
+        compiledPolicySets.remove(policySet.getPolicySetId());
+    }
+
+    /**
+     * Compile a policy.
+     * 
+     * @param policy the policy
+     * 
+     * @return an engine which evaluates requests against the policy
+     * 
+     * @throws PolicyCompilationException if the policy can not be compiled
+     */
+    @Nonnull public PolicyDecisionEngine compile(@Nonnull final PolicyType policy)
+            throws PolicyCompilationException {
+        return new PolicyDecisionEngine(compilePolicy(Constraint.isNotNull(policy, "Policy cannot be null")));
+    }
+
+    /**
+     * Compile a policy set.
+     * 
+     * @param policySet the policy set
+     * 
+     * @return an engine which evaluates requests against the policy set
+     * 
+     * @throws PolicyCompilationException if the policy set can not be compiled
+     */
+    @Nonnull public PolicyDecisionEngine compile(@Nonnull final PolicySetType policySet)
+            throws PolicyCompilationException {
+        return new PolicyDecisionEngine(
+                compilePolicySet(Constraint.isNotNull(policySet, "Policy set cannot be null")));
+    }
+
+    /**
+     * Compile a list of policies and policy sets, combined as though they were the children of a policy set
+     * without a target.
+     * 
+     * @param policyCombiningAlgId the PolicyCombiningAlgId with which to combine the results
+     * @param policies the policies and policy sets, in order
+     * 
+     * @return an engine which evaluates requests against the combined policies
+     * 
+     * @throws PolicyCompilationException if a policy can not be compiled or the algorithm is not supported
+     */
+    @Nonnull public PolicyDecisionEngine compile(@Nonnull final String policyCombiningAlgId,
+            @Nonnull @NonnullElements final List<? extends XACMLObject> policies) throws PolicyCompilationException {
+        final List<CompiledPolicy> children = new ArrayList<>(policies.size());
+        for (final XACMLObject policy : policies) {
+            if (policy instanceof PolicySetType) {
+                children.add(compilePolicySet((PolicySetType) policy));
+            } else if (policy instanceof PolicyType) {
+                children.add(compilePolicy((PolicyType) policy));
+            } else {
+                throw new PolicyCompilationException("Object " + policy.getElementQName()
+                        + " is neither a Policy nor a PolicySet");
+            }
+        }
+        return new PolicyDecisionEngine(new CompiledPolicy(null, null,
+                getPolicyCombiningAlgorithm(policyCombiningAlgId), children,
+                Collections.<ObligationType>emptyList()));
+    }
+
+    /**
+     * Get a supported policy combining algorithm.
+     * 
+     * @param id the PolicyCombiningAlgId
+     * 
+     * @return the algorithm
+     * 
+     * @throws PolicyCompilationException if the algorithm is not supported
+     */
+    @Nonnull static CombiningAlgorithm getPolicyCombiningAlgorithm(@Nullable final String id)
+            throws PolicyCompilationException {
+        final CombiningAlgorithm algorithm = CombiningAlgorithm.forPolicyCombiningAlgorithm(id);
+        if (algorithm == null) {
+            throw new PolicyCompilationException("Unsupported policy combining algorithm " + id);
+        }
+        return algorithm;
+    }
+
+    /**
+     * Compile a policy set.
+     * 
+     * @param policySet the policy set
+     * 
+     * @return the compiled policy set
+     * 
+     * @throws PolicyCompilationException if the policy set can not be compiled
+     */
+    @Nonnull private CompiledPolicy compilePolicySet(@Nonnull final PolicySetType policySet)
+            throws PolicyCompilationException {
+        log.debug("Compiling policy set {}", policySet.getPolicySetId());
+
+        final CombiningAlgorithm algorithm = getPolicyCombiningAlgorithm(policySet.getPolicyCombiningAlgoId());
+
+        final List<CompiledPolicy> children = new ArrayList<>();
+        for (final XACMLObject child : policySet.getPolicyChoiceGroup()) {
+            if (child instanceof PolicySetType) {
+                children.add(compilePolicySet((PolicySetType) child));
+            } else if (child instanceof PolicyType) {
+                children.add(compilePolicy((PolicyType) child));
+            } else if (child instanceof IdReferenceType) {
+                final IdReferenceType reference = (IdReferenceType) child;
+                if (IdReferenceType.POLICY_SET_ID_REFERENCE_ELEMENT_NAME.equals(reference.getElementQName())) {
+                    children.add(resolvePolicySetReference(reference.getValue()));
+                } else {
+                    children.add(resolvePolicyReference(reference.getValue()));
+                }
+            }
+        }
+
+        final CompiledPolicy compiled = new CompiledPolicy(policySet.getPolicySetId(),
+                compileTarget(policySet.getTarget()), algorithm, children, getObligations(policySet.getObligations()));
+        log.debug("Compiled policy set {} with {} children, {} of them indexed", policySet.getPolicySetId(),
+                children.size(), compiled.getIndex().getIndexedCount());
+        return compiled;
+    }
+
+    /**
+     * Compile a policy.
+     * 
+     * @param policy the policy
+     * 
+     * @return the compiled policy
+     * 
+     * @throws PolicyCompilationException if the policy can not be compiled
+     */
+    @Nonnull private CompiledPolicy compilePolicy(@Nonnull final PolicyType policy)
+            throws PolicyCompilationException {
+        final CombiningAlgorithm algorithm = CombiningAlgorithm.forRuleCombiningAlgorithm(
+                policy.getRuleCombiningAlgoId());
+        if (algorithm == null) {
+            throw new PolicyCompilationException("Policy " + policy.getPolicyId()
+                    + " uses unsupported rule combining algorithm " + policy.getRuleCombiningAlgoId());
+        }
+
+        final VariableScope scope = new VariableScope(policy.getVariableDefinitions());
+        final List<CompiledRule> rules = new ArrayList<>(policy.getRules().size());
+        for (final RuleType rule : policy.getRules()) {
+            if (rule.getEffect() == null) {
+                throw new PolicyCompilationException("Rule " + rule.getRuleId() + " has no Effect");
+            }
+            Expression condition = null;
+            if (rule.getCondition() != null && rule.getCondition().getExpression() != null) {
+                condition = compileExpression(rule.getCondition().getExpression(), scope);
+            }
+            rules.add(new CompiledRule(rule.getRuleId(), rule.getEffect(), compileTarget(rule.getTarget()),
+                    condition));
+        }
+
+        return new CompiledPolicy(policy.getPolicyId(), compileTarget(policy.getTarget()), algorithm, rules,
+                getObligations(policy.getObligations()));
+    }
+
+    /**
+     * Resolve and compile a referenced policy.
+     * 
+     * @param id the PolicyId
+     * 
+     * @return the compiled policy
+     * 
+     * @throws PolicyCompilationException if the reference can not be resolved or the policy compiled
+     */
+    @Nonnull private CompiledPolicy resolvePolicyReference(@Nullable final String id)
+            throws PolicyCompilationException {
+        CompiledPolicy compiled = compiledPolicies.get(id);
+        if (compiled == null) {
+            final PolicyType policy = referenceablePolicies.get(id);
+            if (policy == null) {
+                throw new PolicyCompilationException("Referenced policy " + id + " is not available");
+            }
+            compiled = compilePolicy(policy);
+            compiledPolicies.put(id, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Resolve and compile a referenced policy set.
+     * 
+     * @param id the PolicySetId
+     * 
+     * @return the compiled policy set
+     * 
+     * @throws PolicyCompilationException if the reference can not be resolved or the policy set compiled
+     */
+    @Nonnull private CompiledPolicy resolvePolicySetReference(@Nullable final String id)
+            throws PolicyCompilationException {
+        CompiledPolicy compiled = compiledPolicySets.get(id);
+        if (compiled == null) {
+            final PolicySetType policySet = referenceablePolicySets.get(id);
+            if (policySet == null) {
+                throw new PolicyCompilationException("Referenced policy set " + id + " is not available");
+            } else if (!policySetsInProgress.add(id)) {
+                throw new PolicyCompilationException("Policy set " + id + " is referenced circularly");
+            }
+            try {
+                compiled = compilePolicySet(policySet);
+            } finally {
+                policySetsInProgress.remove(id);
+            }
+            compiledPolicySets.put(id, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Get the obligations of a policy or policy set.
+     * 
+     * @param obligations the Obligations element, or null
+     * 
+     * @return the obligations
+     */
+    @Nonnull @NonnullElements private static List<ObligationType> getObligations(
+            @Nullable final ObligationsType obligations) {
+        return obligations != null ? obligations.getObligations() : Collections.<ObligationType>emptyList();
+    }
+
+    /**
+     * Compile a target.
+     * 
+     * @param target the target, or null
+     * 
+     * @return the compiled target, or null if every request is in scope
+     * 
+     * @throws PolicyCompilationException if the target can not be compiled
+     */
+    // Checkstyle: CyclomaticComplexity OFF
+    @Nullable private CompiledTarget compileTarget(@Nullable final TargetType target)
+            throws PolicyCompilationException {
+        if (target == null) {
+            return null;
+        }
+
+        final List<List<List<CompiledTarget.Match>>> sections = new ArrayList<>(4);
+
+        if (target.getSubjects() != null && !target.getSubjects().getSubjects().isEmpty()) {
+            final List<List<CompiledTarget.Match>> section = new ArrayList<>();
+            for (final SubjectType subject : target.getSubjects().getSubjects()) {
+                final List<CompiledTarget.Match> alternative = new ArrayList<>();
+                for (final SubjectMatchType match : subject.getSubjectMatches()) {
+                    alternative.add(compileMatch(match.getMatchId(), match.getAttributeValue(),
+                            match.getSubjectAttributeDesignator(), match.getAttributeSelector()));
+                }
+                section.add(alternative);
+            }
+            sections.add(section);
+        }
+
+        if (target.getResources() != null && !target.getResources().getResources().isEmpty()) {
+            final List<List<CompiledTarget.Match>> section = new ArrayList<>();
+            for (final ResourceType resource : target.getResources().getResources()) {
+                final List<CompiledTarget.Match> alternative = new ArrayList<>();
+                for (final ResourceMatchType match : resource.getResourceMatches()) {
+                    alternative.add(compileMatch(match.getMatchId(), match.getAttributeValue(),
+                            match.getResourceAttributeDesignator(), match.getAttributeSelector()));
+                }
+                section.add(alternative);
+            }
+            sections.add(section);
+        }
+
+        if (target.getActions() != null && !target.getActions().getActions().isEmpty()) {
+            final List<List<CompiledTarget.Match>> section = new ArrayList<>();
+            for (final ActionType action : target.getActions().getActions()) {
+                final List<CompiledTarget.Match> alternative = new ArrayList<>();
+                for (final ActionMatchType match : action.getActionMatches()) {
+                    alternative.add(compileMatch(match.getMatchId(), match.getAttributeValue(),
+                            match.getActionAttributeDesignator(), match.getAttributeSelector()));
+                }
+                section.add(alternative);
+            }
+            sections.add(section);
+        }
+
+        if (target.getEnvironments() != null && !target.getEnvironments().getEnvironments().isEmpty()) {
+            final List<List<CompiledTarget.Match>> section = new ArrayList<>();
+            for (final EnvironmentType environment : target.getEnvironments().getEnvironments()) {
+                final List<CompiledTarget.Match> alternative = new ArrayList<>();
+                for (final EnvironmentMatchType match : environment.getEnvrionmentMatches()) {
+                    alternative.add(compileMatch(match.getMatchId(), match.getAttributeValue(),
+                            match.getEnvironmentAttributeDesignator(), match.getAttributeSelector()));
+                }
+                section.add(alternative);
+            }
+            sections.add(section);
+        }
+
+        return sections.isEmpty() ? null : new CompiledTarget(sections);
+    }
+    // Checkstyle: CyclomaticComplexity ON
+
+    /**
+     * Compile a single target match.
+     * 
+     * @param matchId the MatchId
+     * @param value the literal value
+     * @param designator the attribute designator, or null
+     * @param selector the attribute selector, or null
+     * 
+     * @return the compiled match
+     * 
+     * @throws PolicyCompilationException if the match can not be compiled
+     */
+    @Nonnull private CompiledTarget.Match compileMatch(@Nullable final String matchId,
+            @Nullable final AttributeValueType value, @Nullable final AttributeDesignatorType designator,
+            @Nullable final AttributeSelectorType selector) throws PolicyCompilationException {
+        final Functions.Function function = Functions.getFunction(matchId);
+        if (!(function instanceof Functions.StrictFunction) || function.getArity() != 2) {
+            throw new PolicyCompilationException("Unsupported match function " + matchId);
+        } else if (selector != null) {
+            throw new PolicyCompilationException("AttributeSelector is not supported");
+        } else if (value == null || designator == null) {
+            throw new PolicyCompilationException("Match " + matchId + " requires an AttributeValue and designator");
+        }
+        return new CompiledTarget.Match((Functions.StrictFunction) function, compileLiteral(value),
+                compileDesignator(designator));
+    }
+
+    /**
+     * Compile an expression.
+     * 
+     * @param expression the expression
+     * @param scope the variable definitions in scope
+     * 
+     * @return the compiled expression
+     * 
+     * @throws PolicyCompilationException if the expression can not be compiled
+     */
+    @Nonnull private Expression compileExpression(@Nonnull final ExpressionType expression,
+            @Nonnull final VariableScope scope) throws PolicyCompilationException {
+        if (expression instanceof AttributeValueType) {
+            return compileLiteral((AttributeValueType) expression);
+        } else if (expression instanceof AttributeDesignatorType) {
+            return compileDesignator((AttributeDesignatorType) expression);
+        } else if (expression instanceof ApplyType) {
+            final ApplyType apply = (ApplyType) expression;
+            final Functions.Function function = Functions.getFunction(apply.getFunctionId());
+            if (function == null) {
+                throw new PolicyCompilationException("Unsupported function " + apply.getFunctionId());
+            } else if (function.getArity() != Functions.VARIADIC
+                    && function.getArity() != apply.getExpressions().size()) {
+                throw new PolicyCompilationException("Function " + apply.getFunctionId() + " requires "
+                        + function.getArity() + " arguments but was given " + apply.getExpressions().size());
+            }
+            final List<Expression> args = new ArrayList<>(apply.getExpressions().size());
+            for (final ExpressionType arg : apply.getExpressions()) {
+                args.add(compileExpression(arg, scope));
+            }
+            return new Expression.Apply(function, args);
+        } else if (expression instanceof VariableReferenceType) {
+            return scope.resolve(((VariableReferenceType) expression).getVariableId(), this);
+        } else if (expression instanceof AttributeSelectorType) {
+            throw new PolicyCompilationException("AttributeSelector is not supported");
+        }
+        throw new PolicyCompilationException("Unsupported expression " + expression.getElementQName());
+    }
+
+    /**
+     * Compile a literal attribute value.
+     * 
+     * @param value the attribute value
+     * 
+     * @return the compiled literal
+     * 
+     * @throws PolicyCompilationException if the value is not valid for its data type
+     */
+    @Nonnull private static Expression.Literal compileLiteral(@Nonnull final AttributeValueType value)
+            throws PolicyCompilationException {
+        final String dataType = value.getDataType() != null ? value.getDataType() : Functions.STRING;
+        final String lexical = value.getValue() != null ? value.getValue() : "";
+        try {
+            return new Expression.Literal(dataType, lexical, Functions.parseValue(dataType, lexical));
+        } catch (final IndeterminateException e) {
+            throw new PolicyCompilationException(e.getMessage());
+        }
+    }
+
+    /**
+     * Compile an attribute designator.
+     * 
+     * @param designator the designator
+     * 
+     * @return the compiled designator
+     * 
+     * @throws PolicyCompilationException if the designator is incomplete
+     */
+    @Nonnull private static Expression.Designator compileDesignator(@Nonnull final AttributeDesignatorType designator)
+            throws PolicyCompilationException {
+        if (designator.getAttributeId() == null || designator.getDataType() == null) {
+            throw new PolicyCompilationException("Attribute designator requires an AttributeId and DataType");
+        }
+
+        final String category;
+        final String localName = designator.getElementQName().getLocalPart();
+        if (AttributeDesignatorType.SUBJECT_ATTRIBUTE_DESIGNATOR_ELEMENT_LOCAL_NAME.equals(localName)) {
+            final String subjectCategory = designator instanceof SubjectAttributeDesignatorType
+                    ? ((SubjectAttributeDesignatorType) designator).getSubjectCategory() : null;
+            category = subjectCategory != null ? subjectCategory : AttributeKey.DEFAULT_SUBJECT_CATEGORY;
+        } else if (AttributeDesignatorType.RESOURCE_ATTRIBUTE_DESIGNATOR_ELEMENT_LOCAL_NAME.equals(localName)) {
+            category = AttributeKey.RESOURCE_CATEGORY;
+        } else if (AttributeDesignatorType.ACTION_ATTRIBUTE_DESIGNATOR_ELEMENT_LOCAL_NAME.equals(localName)) {
+            category = AttributeKey.ACTION_CATEGORY;
+        } else if (AttributeDesignatorType.ENVIRONMENT_ATTRIBUTE_DESIGNATOR_ELEMENT_LOCAL_NAME.equals(localName)) {
+            category = AttributeKey.ENVIRONMENT_CATEGORY;
+        } else {
+            throw new PolicyCompilationException("Unsupported attribute designator " + localName);
+        }
+
+        return new Expression.Designator(
+                new AttributeKey(category, designator.getAttributeId(), designator.getDataType()),
+                designator.getIssuer(), Boolean.TRUE.equals(designator.getMustBePresent()));
+    }
+
+    /** The variable definitions of a policy, compiled on first reference. */
+    private static final class VariableScope {
+
+        /** The definitions, by VariableId. */
+        @Nonnull private final Map<String, VariableDefinitionType> definitions;
+
+        /** The compiled definitions, by VariableId. */
+        @Nonnull private final Map<String, Expression> compiled;
+
+        /** The definitions being compiled, used to detect circular references. */
+        @Nonnull private final Set<String> inProgress;
+
+        /**
+         * Constructor.
+         * 
+         * @param variableDefinitions the policy's variable definitions
+         */
+        VariableScope(@Nonnull @NonnullElements final List<VariableDefinitionType> variableDefinitions) {
+            definitions = new HashMap<>();
+            for (final VariableDefinitionType definition : variableDefinitions) {
+                definitions.put(definition.getVariableId(), definition);
+            }
+            compiled = new HashMap<>();
+            inProgress = new HashSet<>();
+        }
+
+        /**
+         * Resolve a variable reference.
+         * 
+         * @param id the VariableId
+         * @param compiler the compiler
+         * 
+         * @return the compiled definition
+         * 
+         * @throws PolicyCompilationException if the definition is missing, circular or can not be compiled
+         */
+        @Nonnull Expression resolve(@Nullable final String id, @Nonnull final PolicyCompiler compiler)
+                throws PolicyCompilationException {
+            Expression expression = compiled.get(id);
+            if (expression == null) {
+                final VariableDefinitionType definition = definitions.get(id);
+                if (definition == null || definition.getExpression() == null) {
+                    throw new PolicyCompilationException("Variable " + id + " is not defined");
+                } else if (!inProgress.add(id)) {
+                    throw new PolicyCompilationException("Variable " + id + " is defined circularly");
+                }
+                try {
+                    expression = compiler.compileExpression(definition.getExpression(), this);
+                } finally {
+                    inProgress.remove(id);
+                }
+                compiled.put(id, expression);
+            }
+            return expression;
+        }
+    }
+}
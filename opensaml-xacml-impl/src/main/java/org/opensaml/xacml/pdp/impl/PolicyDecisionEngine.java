@@ -0,0 +1,229 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.xacml.ctx.AttributeType;
+import org.opensaml.xacml.ctx.AttributeValueType;
+import org.opensaml.xacml.ctx.DecisionType;
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.RequestType;
+import org.opensaml.xacml.ctx.ResourceType;
+import org.opensaml.xacml.ctx.ResponseType;
+import org.opensaml.xacml.ctx.ResultType;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.ctx.StatusMessageType;
+import org.opensaml.xacml.ctx.StatusType;
+import org.opensaml.xacml.policy.ObligationType;
+import org.opensaml.xacml.policy.ObligationsType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates XACML 2.0 request contexts against a compiled policy or policy set, producing response contexts.
+ *
+ * <p>
+ * Engines are produced by a {@link PolicyCompiler}, and are immutable and safe for concurrent use. Each
+ * request yields a single Result, whatever the number of Resource elements it carries; the obligations of
+ * the policies which produced the decision are copied into it.
+ * </p>
+ */
+@ThreadSafe
+public class PolicyDecisionEngine {
+
+    /** AttributeId of the resource attribute copied into the ResourceId of the Result. */
+    @Nonnull @NotEmpty public static final String RESOURCE_ID_ATTRIBUTE_ID =
+            "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(PolicyDecisionEngine.class);
+
+    /** The compiled policy or policy set. */
+    @Nonnull private final CompiledPolicy policy;
+
+    /**
+     * Constructor.
+     * 
+     * @param compiledPolicy the compiled policy or policy set
+     */
+    PolicyDecisionEngine(@Nonnull final CompiledPolicy compiledPolicy) {
+        policy = compiledPolicy;
+    }
+
+    /**
+     * Get the PolicyId or PolicySetId of the policy evaluated.
+     * 
+     * @return the identifier, or null if the engine combines several policies
+     */
+    @Nullable public String getPolicyId() {
+        return policy.getId();
+    }
+
+    /**
+     * Get the compiled policy or policy set.
+     * 
+     * @return the compiled policy
+     */
+    @Nonnull CompiledPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Evaluate a request context.
+     * 
+     * @param request the request context
+     * 
+     * @return the response context
+     */
+    @Nonnull public ResponseType evaluate(@Nonnull final RequestType request) {
+        Constraint.isNotNull(request, "Request cannot be null");
+
+        EvaluationResult result = policy.evaluate(new EvaluationContext(request));
+        log.debug("Policy {} yielded decision {}", policy.getId(), result.getDecision());
+
+        ObligationsType obligations = null;
+        if (!result.getObligations().isEmpty()) {
+            try {
+                obligations = buildObligations(result.getObligations());
+            } catch (final MarshallingException | UnmarshallingException e) {
+                log.error("Unable to copy obligations into the response", e);
+                result = EvaluationResult.indeterminate(StatusCodeType.SC_PROCESSING_ERROR,
+                        "Unable to copy obligations into the response");
+            }
+        }
+
+        final ResponseType response = (ResponseType) XMLObjectSupport.buildXMLObject(ResponseType.DEFAULT_ELEMENT_NAME);
+        response.getResults().add(buildResult(request, result, obligations));
+        return response;
+    }
+
+    /**
+     * Combine several engines, as though their policies were the children of a policy set without a target.
+     * 
+     * @param policyCombiningAlgId the PolicyCombiningAlgId with which to combine the results
+     * @param engines the engines, in order
+     * 
+     * @return the combined engine
+     * 
+     * @throws PolicyCompilationException if the algorithm is not supported
+     */
+    @Nonnull public static PolicyDecisionEngine combine(@Nonnull final String policyCombiningAlgId,
+            @Nonnull @NonnullElements final List<PolicyDecisionEngine> engines) throws PolicyCompilationException {
+        final List<CompiledPolicy> children = new ArrayList<>(engines.size());
+        for (final PolicyDecisionEngine engine : engines) {
+            children.add(engine.getPolicy());
+        }
+        return new PolicyDecisionEngine(new CompiledPolicy(null, null,
+                PolicyCompiler.getPolicyCombiningAlgorithm(policyCombiningAlgId), children,
+                Collections.<ObligationType>emptyList()));
+    }
+
+    /**
+     * Build the Result element.
+     * 
+     * @param request the request context
+     * @param result the evaluation result
+     * @param obligations the obligations, or null
+     * 
+     * @return the Result
+     */
+    @Nonnull private ResultType buildResult(@Nonnull final RequestType request,
+            @Nonnull final EvaluationResult result, @Nullable final ObligationsType obligations) {
+        final ResultType resultType = (ResultType) XMLObjectSupport.buildXMLObject(ResultType.DEFAULT_ELEMENT_NAME);
+        resultType.setResourceId(getResourceId(request));
+
+        final DecisionType decision = (DecisionType) XMLObjectSupport.buildXMLObject(DecisionType.DEFAULT_ELEMENT_NAME);
+        decision.setDecision(result.getDecision());
+        resultType.setDecision(decision);
+
+        final StatusType status = (StatusType) XMLObjectSupport.buildXMLObject(StatusType.DEFAULT_ELEMENT_NAME);
+        final StatusCodeType statusCode =
+                (StatusCodeType) XMLObjectSupport.buildXMLObject(StatusCodeType.DEFAULT_ELEMENT_NAME);
+        statusCode.setValue(result.getStatusCode());
+        status.setStatusCode(statusCode);
+        if (result.getStatusMessage() != null) {
+            final StatusMessageType message =
+                    (StatusMessageType) XMLObjectSupport.buildXMLObject(StatusMessageType.DEFAULT_ELEMENT_NAME);
+            message.setValue(result.getStatusMessage());
+            status.setStatusMessage(message);
+        }
+        resultType.setStatus(status);
+
+        if (obligations != null && result.getDecision() != DECISION.Indeterminate) {
+            resultType.setObligations(obligations);
+        }
+        return resultType;
+    }
+
+    /**
+     * Copy obligations into a new Obligations element.
+     * 
+     * @param obligations the obligations
+     * 
+     * @return the Obligations element
+     * 
+     * @throws MarshallingException if an obligation can not be marshalled for copying
+     * @throws UnmarshallingException if an obligation can not be unmarshalled for copying
+     */
+    @Nonnull private ObligationsType buildObligations(@Nonnull @NonnullElements final List<ObligationType> obligations)
+            throws MarshallingException, UnmarshallingException {
+        final ObligationsType obligationsType =
+                (ObligationsType) XMLObjectSupport.buildXMLObject(ObligationsType.DEFAULT_ELEMENT_QNAME);
+        for (final ObligationType obligation : obligations) {
+            obligationsType.getObligations().add(XMLObjectSupport.cloneXMLObject(obligation));
+        }
+        return obligationsType;
+    }
+
+    /**
+     * Get the value of the first resource-id attribute of the first Resource element in a request.
+     * 
+     * @param request the request context
+     * 
+     * @return the resource identifier, or null
+     */
+    @Nullable private String getResourceId(@Nonnull final RequestType request) {
+        if (request.getResources().isEmpty()) {
+            return null;
+        }
+        final ResourceType resource = request.getResources().get(0);
+        for (final AttributeType attribute : resource.getAttributes()) {
+            if (RESOURCE_ID_ATTRIBUTE_ID.equals(attribute.getAttributeId())) {
+                final List<AttributeValueType> values = attribute.getAttributeValues();
+                if (!values.isEmpty()) {
+                    return values.get(0).getValue();
+                }
+            }
+        }
+        return null;
+    }
+}
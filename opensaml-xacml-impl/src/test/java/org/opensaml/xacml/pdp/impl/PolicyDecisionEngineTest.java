@@ -0,0 +1,201 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.pdp.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.xacml.ctx.ActionType;
+import org.opensaml.xacml.ctx.AttributeType;
+import org.opensaml.xacml.ctx.AttributeValueType;
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.RequestType;
+import org.opensaml.xacml.ctx.ResourceType;
+import org.opensaml.xacml.ctx.ResponseType;
+import org.opensaml.xacml.ctx.ResultType;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.ctx.SubjectType;
+import org.opensaml.xacml.policy.PolicySetType;
+import org.opensaml.xacml.policy.PolicyType;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit test for {@link PolicyCompiler} and {@link PolicyDecisionEngine}. */
+public class PolicyDecisionEngineTest extends XMLObjectBaseTestCase {
+
+    private PolicyCompiler compiler;
+
+    private PolicyDecisionEngine engine;
+
+    @BeforeMethod
+    protected void setUp() throws PolicyCompilationException {
+        compiler = new PolicyCompiler();
+        compiler.addReferenceablePolicy((PolicyType) unmarshallElement("/org/opensaml/xacml/pdp/impl/AdminPolicy.xml"));
+        engine = compiler.compile((PolicySetType) unmarshallElement("/org/opensaml/xacml/pdp/impl/PolicySet.xml"));
+    }
+
+    @Test
+    public void testDecisions() {
+        ResultType result = evaluate(engine, "staff", null, "urn:example:doc", "read");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Permit);
+        Assert.assertEquals(result.getResourceId(), "urn:example:doc");
+        Assert.assertEquals(result.getStatus().getStatusCode().getValue(), StatusCodeType.SC_OK);
+        Assert.assertNotNull(result.getObligations());
+        Assert.assertEquals(result.getObligations().getObligations().size(), 1);
+        Assert.assertEquals(result.getObligations().getObligations().get(0).getObligationId(),
+                "urn:example:obligation:log");
+
+        result = evaluate(engine, "guest", null, "urn:example:doc", "read");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.NotApplicable);
+        Assert.assertNull(result.getObligations());
+
+        result = evaluate(engine, "staff", null, "urn:example:doc", "write");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Deny);
+
+        // deny-overrides at the root, even though the referenced admin policy permits
+        result = evaluate(engine, "admin", null, "urn:example:doc", "write");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Deny);
+
+        result = evaluate(engine, "admin", null, "urn:example:other", "write");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Permit);
+        Assert.assertNull(result.getObligations());
+    }
+
+    @Test
+    public void testIndeterminate() throws PolicyCompilationException {
+        Assert.assertEquals(evaluate(engine, "guest", "21", "urn:example:wine", "read").getDecision().getDecision(),
+                DECISION.Permit);
+        Assert.assertEquals(evaluate(engine, "guest", "12", "urn:example:wine", "read").getDecision().getDecision(),
+                DECISION.NotApplicable);
+
+        // Indeterminate policies count as Deny under policy deny-overrides
+        Assert.assertEquals(evaluate(engine, "guest", null, "urn:example:wine", "read").getDecision().getDecision(),
+                DECISION.Deny);
+        Assert.assertEquals(evaluate(engine, "guest", "old", "urn:example:wine", "read").getDecision().getDecision(),
+                DECISION.Deny);
+
+        final PolicyDecisionEngine wine = compiler.compile(
+                ((PolicySetType) unmarshallElement("/org/opensaml/xacml/pdp/impl/PolicySet.xml")).getPolicies().get(2));
+        final ResultType result = evaluate(wine, "guest", null, "urn:example:wine", "read");
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Indeterminate);
+        Assert.assertEquals(result.getStatus().getStatusCode().getValue(), StatusCodeType.SC_MISSING_ATTRIBUTE);
+    }
+
+    @Test
+    public void testCandidateIndex() {
+        final CompiledPolicy root = engine.getPolicy();
+        Assert.assertEquals(root.getIndex().getIndexedCount(), 4);
+
+        BitSet candidates = root.getIndex().getCandidates(
+                new EvaluationContext(buildRequest("staff", null, "urn:example:doc", "read")));
+        Assert.assertEquals(candidates.cardinality(), 2);
+        Assert.assertTrue(candidates.get(0));
+        Assert.assertTrue(candidates.get(1));
+
+        candidates = root.getIndex().getCandidates(
+                new EvaluationContext(buildRequest("admin", null, "urn:example:wine", "read")));
+        Assert.assertEquals(candidates.cardinality(), 2);
+        Assert.assertTrue(candidates.get(2));
+        Assert.assertTrue(candidates.get(3));
+
+        candidates = root.getIndex().getCandidates(
+                new EvaluationContext(buildRequest("guest", null, "urn:example:other", "read")));
+        Assert.assertTrue(candidates.isEmpty());
+    }
+
+    @Test
+    public void testCombine() throws PolicyCompilationException {
+        final PolicyDecisionEngine admin = compiler.compile(
+                (PolicyType) unmarshallElement("/org/opensaml/xacml/pdp/impl/AdminPolicy.xml"));
+
+        final PolicyDecisionEngine firstApplicable = PolicyDecisionEngine.combine(
+                "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable",
+                Arrays.asList(admin, engine));
+        Assert.assertNull(firstApplicable.getPolicyId());
+        Assert.assertEquals(evaluate(firstApplicable, "admin", null, "urn:example:doc", "write").getDecision()
+                .getDecision(), DECISION.Permit);
+        Assert.assertEquals(evaluate(firstApplicable, "staff", null, "urn:example:doc", "write").getDecision()
+                .getDecision(), DECISION.Deny);
+
+        final PolicyDecisionEngine onlyOne = PolicyDecisionEngine.combine(
+                "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:only-one-applicable",
+                Arrays.asList(admin, engine));
+        Assert.assertEquals(evaluate(onlyOne, "admin", null, "urn:example:doc", "write").getDecision().getDecision(),
+                DECISION.Indeterminate);
+    }
+
+    @Test(expectedExceptions = PolicyCompilationException.class)
+    public void testUnsupportedFunction() throws PolicyCompilationException {
+        compiler.compile((PolicyType) unmarshallElement("/org/opensaml/xacml/pdp/impl/UnsupportedPolicy.xml"));
+    }
+
+    @Test(expectedExceptions = PolicyCompilationException.class)
+    public void testUnresolvedReference() throws PolicyCompilationException {
+        new PolicyCompiler().compile((PolicySetType) unmarshallElement("/org/opensaml/xacml/pdp/impl/PolicySet.xml"));
+    }
+
+    @Test(expectedExceptions = PolicyCompilationException.class)
+    public void testUnsupportedCombiningAlgorithm() throws PolicyCompilationException {
+        PolicyDecisionEngine.combine("urn:example:unknown", Collections.singletonList(engine));
+    }
+
+    private ResultType evaluate(final PolicyDecisionEngine pde, final String role, final String age,
+            final String resourceId, final String actionId) {
+        final ResponseType response = pde.evaluate(buildRequest(role, age, resourceId, actionId));
+        Assert.assertEquals(response.getResults().size(), 1);
+        return response.getResults().get(0);
+    }
+
+    private RequestType buildRequest(final String role, final String age, final String resourceId,
+            final String actionId) {
+        final RequestType request = (RequestType) buildXMLObject(RequestType.DEFAULT_ELEMENT_NAME);
+
+        final SubjectType subject = (SubjectType) buildXMLObject(SubjectType.DEFAULT_ELEMENT_NAME);
+        subject.getAttributes().add(buildAttribute("urn:example:role", Functions.STRING, role));
+        if (age != null) {
+            subject.getAttributes().add(buildAttribute("urn:example:age", Functions.INTEGER, age));
+        }
+        request.getSubjects().add(subject);
+
+        final ResourceType resource = (ResourceType) buildXMLObject(ResourceType.DEFAULT_ELEMENT_NAME);
+        resource.getAttributes().add(buildAttribute(PolicyDecisionEngine.RESOURCE_ID_ATTRIBUTE_ID, Functions.STRING,
+                resourceId));
+        request.getResources().add(resource);
+
+        final ActionType action = (ActionType) buildXMLObject(ActionType.DEFAULT_ELEMENT_NAME);
+        action.getAttributes().add(buildAttribute("urn:oasis:names:tc:xacml:1.0:action:action-id", Functions.STRING,
+                actionId));
+        request.setAction(action);
+
+        return request;
+    }
+
+    private AttributeType buildAttribute(final String id, final String dataType, final String value) {
+        final AttributeType attribute = (AttributeType) buildXMLObject(AttributeType.DEFAULT_ELEMENT_NAME);
+        attribute.setAttributeID(id);
+        attribute.setDataType(dataType);
+        final AttributeValueType attributeValue =
+                (AttributeValueType) buildXMLObject(AttributeValueType.DEFAULT_ELEMENT_NAME);
+        attributeValue.setValue(value);
+        attribute.getAttributeValues().add(attributeValue);
+        return attribute;
+    }
+}
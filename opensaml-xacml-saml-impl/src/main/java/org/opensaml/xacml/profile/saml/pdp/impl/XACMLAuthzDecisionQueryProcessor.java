@@ -0,0 +1,163 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.profile.saml.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Statement;
+import org.opensaml.xacml.XACMLObject;
+import org.opensaml.xacml.ctx.RequestType;
+import org.opensaml.xacml.pdp.impl.PolicyCompilationException;
+import org.opensaml.xacml.pdp.impl.PolicyCompiler;
+import org.opensaml.xacml.pdp.impl.PolicyDecisionEngine;
+import org.opensaml.xacml.policy.PolicySetType;
+import org.opensaml.xacml.policy.PolicyType;
+import org.opensaml.xacml.profile.saml.ReferencedPoliciesType;
+import org.opensaml.xacml.profile.saml.XACMLAuthzDecisionQueryType;
+import org.opensaml.xacml.profile.saml.XACMLAuthzDecisionStatementType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers XACMLAuthzDecisionQuery messages with XACMLAuthzDecisionStatements, by evaluating the query's
+ * request context with a {@link PolicyDecisionEngine}.
+ *
+ * <p>
+ * Policies and policy sets carried by a query are compiled for that query alone, with any ReferencedPolicies
+ * available to their references. If the query's CombinePolicies flag is true they are combined with the
+ * engine's policy, otherwise they are evaluated in place of it. Since the engine evaluates only the
+ * attributes of the request context, the InputContextOnly flag is always honored.
+ * </p>
+ */
+@ThreadSafe
+public class XACMLAuthzDecisionQueryProcessor {
+
+    /** Policy combining algorithm used to combine query policies with the engine's policy: {@value}. */
+    @Nonnull @NotEmpty public static final String DEFAULT_COMBINING_ALGORITHM =
+            "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:deny-overrides";
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(XACMLAuthzDecisionQueryProcessor.class);
+
+    /** The engine evaluating the locally available policies. */
+    @Nonnull private final PolicyDecisionEngine engine;
+
+    /** Policy combining algorithm used to combine query policies with the engine's policy. */
+    @Nonnull @NotEmpty private final String combiningAlgorithm;
+
+    /**
+     * Constructor.
+     * 
+     * @param policyEngine the engine evaluating the locally available policies
+     */
+    public XACMLAuthzDecisionQueryProcessor(@Nonnull final PolicyDecisionEngine policyEngine) {
+        this(policyEngine, DEFAULT_COMBINING_ALGORITHM);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param policyEngine the engine evaluating the locally available policies
+     * @param algorithm the policy combining algorithm used to combine query policies with the engine's policy
+     */
+    public XACMLAuthzDecisionQueryProcessor(@Nonnull final PolicyDecisionEngine policyEngine,
+            @Nonnull @NotEmpty final String algorithm) {
+        engine = Constraint.isNotNull(policyEngine, "PolicyDecisionEngine cannot be null");
+        combiningAlgorithm = Constraint.isNotNull(algorithm, "Combining algorithm cannot be null");
+    }
+
+    /**
+     * Answer a query.
+     * 
+     * @param query the query
+     * 
+     * @return a statement carrying the response context and, if the query asks for it, a copy of the request
+     *          context
+     * 
+     * @throws PolicyCompilationException if the policies carried by the query can not be compiled
+     * @throws MarshallingException if the request context can not be marshalled for copying
+     * @throws UnmarshallingException if the request context can not be unmarshalled for copying
+     */
+    @Nonnull public XACMLAuthzDecisionStatementType process(@Nonnull final XACMLAuthzDecisionQueryType query)
+            throws PolicyCompilationException, MarshallingException, UnmarshallingException {
+        Constraint.isNotNull(query, "Query cannot be null");
+        final RequestType request = Constraint.isNotNull(query.getRequest(), "Query must contain a Request");
+
+        final PolicyDecisionEngine queryEngine = getEngine(query);
+
+        final XACMLAuthzDecisionStatementType statement = (XACMLAuthzDecisionStatementType) XMLObjectSupport
+                .getBuilder(XACMLAuthzDecisionStatementType.TYPE_NAME_XACML20)
+                .buildObject(Statement.DEFAULT_ELEMENT_NAME, XACMLAuthzDecisionStatementType.TYPE_NAME_XACML20);
+        statement.setResponse(queryEngine.evaluate(request));
+        if (Boolean.TRUE.equals(query.isReturnContext())) {
+            statement.setRequest(XMLObjectSupport.cloneXMLObject(request));
+        }
+        return statement;
+    }
+
+    /**
+     * Get the engine with which to evaluate a query.
+     * 
+     * @param query the query
+     * 
+     * @return the engine
+     * 
+     * @throws PolicyCompilationException if the policies carried by the query can not be compiled
+     */
+    @Nonnull private PolicyDecisionEngine getEngine(@Nonnull final XACMLAuthzDecisionQueryType query)
+            throws PolicyCompilationException {
+        final List<XACMLObject> policies = new ArrayList<>(query.getPolicySets().size() + query.getPolicies().size());
+        policies.addAll(query.getPolicySets());
+        policies.addAll(query.getPolicies());
+        if (policies.isEmpty()) {
+            return engine;
+        }
+
+        log.debug("Query {} carries {} policies, compiling them", query.getID(), policies.size());
+        final PolicyCompiler compiler = new PolicyCompiler();
+        final ReferencedPoliciesType referenced = query.getReferencedPolicies();
+        if (referenced != null) {
+            for (final PolicySetType policySet : referenced.getPolicySets()) {
+                compiler.addReferenceablePolicySet(policySet);
+            }
+            for (final PolicyType policy : referenced.getPolicies()) {
+                compiler.addReferenceablePolicy(policy);
+            }
+        }
+        final PolicyDecisionEngine queryEngine = compiler.compile(combiningAlgorithm, policies);
+
+        if (Boolean.TRUE.equals(query.isCombinePolicies())) {
+            final List<PolicyDecisionEngine> engines = new ArrayList<>(2);
+            engines.add(engine);
+            engines.add(queryEngine);
+            return PolicyDecisionEngine.combine(combiningAlgorithm, engines);
+        }
+        return queryEngine;
+    }
+
+}
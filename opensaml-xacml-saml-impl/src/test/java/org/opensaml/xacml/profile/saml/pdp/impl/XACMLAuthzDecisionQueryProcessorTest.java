@@ -0,0 +1,227 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xacml.profile.saml.pdp.impl;
+
+import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.saml.saml2.core.Statement;
+import org.opensaml.xacml.ctx.ActionType;
+import org.opensaml.xacml.ctx.AttributeType;
+import org.opensaml.xacml.ctx.AttributeValueType;
+import org.opensaml.xacml.ctx.DecisionType.DECISION;
+import org.opensaml.xacml.ctx.RequestType;
+import org.opensaml.xacml.ctx.ResourceType;
+import org.opensaml.xacml.ctx.ResultType;
+import org.opensaml.xacml.ctx.StatusCodeType;
+import org.opensaml.xacml.ctx.SubjectType;
+import org.opensaml.xacml.pdp.impl.PolicyCompilationException;
+import org.opensaml.xacml.pdp.impl.PolicyCompiler;
+import org.opensaml.xacml.pdp.impl.PolicyDecisionEngine;
+import org.opensaml.xacml.policy.PolicySetType;
+import org.opensaml.xacml.policy.PolicyType;
+import org.opensaml.xacml.profile.saml.XACMLAuthzDecisionQueryType;
+import org.opensaml.xacml.profile.saml.XACMLAuthzDecisionStatementType;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** Unit test for {@link XACMLAuthzDecisionQueryProcessor}. */
+public class XACMLAuthzDecisionQueryProcessorTest extends XMLObjectBaseTestCase {
+
+    /** Location of the test policies. */
+    private static final String POLICY_PATH = "/org/opensaml/xacml/profile/saml/pdp/impl/";
+
+    /** XML Schema string data type. */
+    private static final String STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+    /** XML Schema integer data type. */
+    private static final String INTEGER = "http://www.w3.org/2001/XMLSchema#integer";
+
+    private PolicyCompiler compiler;
+
+    private XACMLAuthzDecisionQueryProcessor processor;
+
+    @BeforeMethod
+    protected void setUp() throws PolicyCompilationException {
+        compiler = new PolicyCompiler();
+        compiler.addReferenceablePolicy((PolicyType) unmarshallElement(POLICY_PATH + "AdminPolicy.xml"));
+        processor = new XACMLAuthzDecisionQueryProcessor(
+                compiler.compile((PolicySetType) unmarshallElement(POLICY_PATH + "PolicySet.xml")));
+    }
+
+    @Test
+    public void testPermit() throws Exception {
+        final XACMLAuthzDecisionStatementType statement =
+                processor.process(buildQuery(buildRequest("staff", null, "urn:example:doc", "read")));
+        final ResultType result = getResult(statement);
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Permit);
+        Assert.assertEquals(result.getStatus().getStatusCode().getValue(), StatusCodeType.SC_OK);
+        Assert.assertEquals(result.getResourceId(), "urn:example:doc");
+        Assert.assertEquals(statement.getElementQName(), Statement.DEFAULT_ELEMENT_NAME);
+        Assert.assertEquals(statement.getSchemaType(), XACMLAuthzDecisionStatementType.TYPE_NAME_XACML20);
+        Assert.assertNull(statement.getRequest(), "Request context returned without ReturnContext");
+    }
+
+    @Test
+    public void testDeny() throws Exception {
+        final ResultType result =
+                getResult(processor.process(buildQuery(buildRequest("staff", null, "urn:example:doc", "write"))));
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Deny);
+    }
+
+    @Test
+    public void testNotApplicable() throws Exception {
+        final ResultType result =
+                getResult(processor.process(buildQuery(buildRequest("guest", null, "urn:example:doc", "read"))));
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.NotApplicable);
+    }
+
+    @Test
+    public void testIndeterminate() throws Exception {
+        final PolicyDecisionEngine wine = compiler.compile(
+                ((PolicySetType) unmarshallElement(POLICY_PATH + "PolicySet.xml")).getPolicies().get(2));
+        final XACMLAuthzDecisionQueryProcessor wineProcessor = new XACMLAuthzDecisionQueryProcessor(wine);
+
+        final ResultType result =
+                getResult(wineProcessor.process(buildQuery(buildRequest("guest", null, "urn:example:wine", "read"))));
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Indeterminate);
+        Assert.assertEquals(result.getStatus().getStatusCode().getValue(), StatusCodeType.SC_MISSING_ATTRIBUTE);
+    }
+
+    @Test
+    public void testInvalidRequest() throws Exception {
+        final PolicyDecisionEngine wine = compiler.compile(
+                ((PolicySetType) unmarshallElement(POLICY_PATH + "PolicySet.xml")).getPolicies().get(2));
+        final XACMLAuthzDecisionQueryProcessor wineProcessor = new XACMLAuthzDecisionQueryProcessor(wine);
+
+        // An age which is not an integer
+        final ResultType result = getResult(
+                wineProcessor.process(buildQuery(buildRequest("guest", "old", "urn:example:wine", "read"))));
+        Assert.assertEquals(result.getDecision().getDecision(), DECISION.Indeterminate);
+        Assert.assertEquals(result.getStatus().getStatusCode().getValue(), StatusCodeType.SC_SYNTAX_ERROR);
+    }
+
+    @Test(expectedExceptions = ConstraintViolationException.class)
+    public void testMissingRequest() throws Exception {
+        processor.process(buildQuery(null));
+    }
+
+    @Test(expectedExceptions = PolicyCompilationException.class)
+    public void testInvalidQueryPolicy() throws Exception {
+        final XACMLAuthzDecisionQueryType query =
+                buildQuery(buildRequest("staff", null, "urn:example:doc", "read"));
+        query.getPolicies().add((PolicyType) unmarshallElement(POLICY_PATH + "UnsupportedPolicy.xml"));
+        processor.process(query);
+    }
+
+    @Test
+    public void testReturnContext() throws Exception {
+        final RequestType request = buildRequest("staff", null, "urn:example:doc", "read");
+        final XACMLAuthzDecisionQueryType query = buildQuery(request);
+        query.setReturnContext(Boolean.TRUE);
+
+        final XACMLAuthzDecisionStatementType statement = processor.process(query);
+        Assert.assertEquals(getResult(statement).getDecision().getDecision(), DECISION.Permit);
+
+        final RequestType returned = statement.getRequest();
+        Assert.assertNotNull(returned, "Request context was not returned");
+        Assert.assertNotSame(returned, request);
+        Assert.assertSame(query.getRequest(), request, "Query's request context was detached");
+        Assert.assertEquals(returned.getSubjects().get(0).getAttributes().get(0).getAttributeValues().get(0)
+                .getValue(), "staff");
+        Assert.assertEquals(returned.getResources().get(0).getAttributes().get(0).getAttributeValues().get(0)
+                .getValue(), "urn:example:doc");
+
+        query.setReturnContext(Boolean.FALSE);
+        Assert.assertNull(processor.process(query).getRequest());
+    }
+
+    @Test
+    public void testInputContextOnly() throws Exception {
+        final XACMLAuthzDecisionQueryType query =
+                buildQuery(buildRequest("staff", null, "urn:example:doc", "read"));
+        query.setInputContextOnly(Boolean.TRUE);
+        Assert.assertEquals(getResult(processor.process(query)).getDecision().getDecision(), DECISION.Permit);
+
+        query.setInputContextOnly(Boolean.FALSE);
+        Assert.assertEquals(getResult(processor.process(query)).getDecision().getDecision(), DECISION.Permit);
+    }
+
+    @Test
+    public void testQueryPolicies() throws Exception {
+        final XACMLAuthzDecisionQueryType query =
+                buildQuery(buildRequest("admin", null, "urn:example:doc", "write"));
+        query.getPolicies().add((PolicyType) unmarshallElement(POLICY_PATH + "AdminPolicy.xml"));
+
+        // The query's policy replaces the engine's, which would deny.
+        Assert.assertEquals(getResult(processor.process(query)).getDecision().getDecision(), DECISION.Permit);
+
+        query.setCombinePolicies(Boolean.TRUE);
+        Assert.assertEquals(getResult(processor.process(query)).getDecision().getDecision(), DECISION.Deny);
+    }
+
+    private ResultType getResult(final XACMLAuthzDecisionStatementType statement) {
+        Assert.assertNotNull(statement.getResponse());
+        Assert.assertEquals(statement.getResponse().getResults().size(), 1);
+        return statement.getResponse().getResults().get(0);
+    }
+
+    private XACMLAuthzDecisionQueryType buildQuery(final RequestType request) {
+        final XACMLAuthzDecisionQueryType query = (XACMLAuthzDecisionQueryType) buildXMLObject(
+                XACMLAuthzDecisionQueryType.DEFAULT_ELEMENT_NAME_XACML20);
+        query.setID("query");
+        query.setRequest(request);
+        return query;
+    }
+
+    private RequestType buildRequest(final String role, final String age, final String resourceId,
+            final String actionId) {
+        final RequestType request = (RequestType) buildXMLObject(RequestType.DEFAULT_ELEMENT_NAME);
+
+        final SubjectType subject = (SubjectType) buildXMLObject(SubjectType.DEFAULT_ELEMENT_NAME);
+        subject.getAttributes().add(buildAttribute("urn:example:role", STRING, role));
+        if (age != null) {
+            subject.getAttributes().add(buildAttribute("urn:example:age", INTEGER, age));
+        }
+        request.getSubjects().add(subject);
+
+        final ResourceType resource = (ResourceType) buildXMLObject(ResourceType.DEFAULT_ELEMENT_NAME);
+        resource.getAttributes().add(buildAttribute(PolicyDecisionEngine.RESOURCE_ID_ATTRIBUTE_ID, STRING,
+                resourceId));
+        request.getResources().add(resource);
+
+        final ActionType action = (ActionType) buildXMLObject(ActionType.DEFAULT_ELEMENT_NAME);
+        action.getAttributes().add(buildAttribute("urn:oasis:names:tc:xacml:1.0:action:action-id", STRING,
+                actionId));
+        request.setAction(action);
+
+        return request;
+    }
+
+    private AttributeType buildAttribute(final String id, final String dataType, final String value) {
+        final AttributeType attribute = (AttributeType) buildXMLObject(AttributeType.DEFAULT_ELEMENT_NAME);
+        attribute.setAttributeID(id);
+        attribute.setDataType(dataType);
+        final AttributeValueType attributeValue =
+                (AttributeValueType) buildXMLObject(AttributeValueType.DEFAULT_ELEMENT_NAME);
+        attributeValue.setValue(value);
+        attribute.getAttributeValues().add(attributeValue);
+        return attribute;
+    }
+}
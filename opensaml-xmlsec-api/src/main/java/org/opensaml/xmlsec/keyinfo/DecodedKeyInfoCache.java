@@ -0,0 +1,356 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.keyinfo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.security.crypto.JCAConstants;
+import org.opensaml.xmlsec.signature.DEREncodedKeyValue;
+import org.opensaml.xmlsec.signature.RSAKeyValue;
+import org.opensaml.xmlsec.signature.X509Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache which interns the certificates and public keys decoded from inline KeyInfo content.
+ * 
+ * <p>
+ * Decoded objects are keyed on a SHA-256 digest of their encoded form, so that the same certificate or key
+ * presented in many messages is parsed once and the same immutable {@link X509Certificate} or {@link PublicKey}
+ * instance is returned for each. Components which cache evaluation results may therefore key on the identity
+ * of these objects.
+ * </p>
+ * 
+ * <p>
+ * Entries are held in access order, and when the maximum number of entries is exceeded the least recently used
+ * entry is evicted.
+ * </p>
+ */
+@ThreadSafe
+public class DecodedKeyInfoCache {
+
+    /** Default maximum number of entries: {@value}. */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /** Type tag for certificates. */
+    @Nonnull private static final byte[] TYPE_CERTIFICATE = "X509Certificate".getBytes(StandardCharsets.UTF_8);
+
+    /** Type tag for RSA key values. */
+    @Nonnull private static final byte[] TYPE_RSA = "RSAKeyValue".getBytes(StandardCharsets.UTF_8);
+
+    /** Type tag for DER-encoded key values. */
+    @Nonnull private static final byte[] TYPE_DER = "DEREncodedKeyValue".getBytes(StandardCharsets.UTF_8);
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(DecodedKeyInfoCache.class);
+
+    /** The interned objects in access order, keyed on the digest of their encoded form. Guarded by itself. */
+    @Nonnull private final Map<ByteBuffer, Object> entries;
+
+    /** Maximum number of entries. */
+    @Positive private final int maxEntries;
+
+    /** Number of lookups satisfied from the cache. */
+    @Nonnull private final AtomicLong hits;
+
+    /** Number of lookups which required decoding. */
+    @Nonnull private final AtomicLong misses;
+
+    /** Constructor. */
+    public DecodedKeyInfoCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param max maximum number of entries to retain
+     */
+    public DecodedKeyInfoCache(@Positive final int max) {
+        maxEntries = (int) Constraint.isGreaterThan(0, max, "Maximum entries must be greater than 0");
+        entries = new LinkedHashMap<ByteBuffer, Object>(16, 0.75f, true) {
+
+            /** Serial version UID. */
+            private static final long serialVersionUID = 6412896753241718307L;
+
+            /** {@inheritDoc} */
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, Object> eldest) {
+                if (size() > maxEntries) {
+                    log.trace("Decoded KeyInfo cache is full, evicting least recently used entry");
+                    return true;
+                }
+                return false;
+            }
+        };
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+    }
+
+    /**
+     * Get the maximum number of entries retained.
+     * 
+     * @return the maximum number of entries
+     */
+    @Positive public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Get the number of entries currently retained.
+     * 
+     * @return the number of entries
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Get the number of lookups satisfied from the cache.
+     * 
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups which required decoding.
+     * 
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** Discard all entries and reset the statistics. */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    /**
+     * Get the interned Java certificates for the {@link org.opensaml.xmlsec.signature.X509Certificate}s within the
+     * given {@link X509Data}.
+     * 
+     * @param x509Data the X509Data
+     * 
+     * @return the certificates, in document order
+     * 
+     * @throws CertificateException thrown if a certificate can not be decoded
+     * 
+     * @see KeyInfoSupport#getCertificates(X509Data)
+     */
+    @Nonnull @NonnullElements public List<X509Certificate> getCertificates(@Nullable final X509Data x509Data)
+            throws CertificateException {
+        final List<X509Certificate> certs = new ArrayList<>();
+        if (x509Data == null) {
+            return certs;
+        }
+
+        for (final org.opensaml.xmlsec.signature.X509Certificate xmlCert : x509Data.getX509Certificates()) {
+            final X509Certificate cert = getCertificate(xmlCert);
+            if (cert != null) {
+                certs.add(cert);
+            }
+        }
+        return certs;
+    }
+
+    /**
+     * Get the interned Java certificate for an {@link org.opensaml.xmlsec.signature.X509Certificate}.
+     * 
+     * @param xmlCert the XML certificate
+     * 
+     * @return the certificate, or null if the XML certificate has no value
+     * 
+     * @throws CertificateException thrown if the certificate can not be decoded
+     * 
+     * @see KeyInfoSupport#getCertificate(org.opensaml.xmlsec.signature.X509Certificate)
+     */
+    @Nullable public X509Certificate getCertificate(
+            @Nullable final org.opensaml.xmlsec.signature.X509Certificate xmlCert) throws CertificateException {
+        if (xmlCert == null || xmlCert.getValue() == null) {
+            return null;
+        }
+
+        final ByteBuffer key = digest(TYPE_CERTIFICATE, Base64Support.decode(xmlCert.getValue()));
+        if (key != null) {
+            final Object cached = lookup(key);
+            if (cached instanceof X509Certificate) {
+                return (X509Certificate) cached;
+            }
+        }
+
+        final X509Certificate cert = KeyInfoSupport.getCertificate(xmlCert);
+        return key != null && cert != null ? intern(key, cert) : cert;
+    }
+
+    /**
+     * Get the interned public key for an {@link RSAKeyValue}.
+     * 
+     * @param keyValue the RSA key value
+     * 
+     * @return the public key
+     * 
+     * @throws KeyException thrown if the key can not be built
+     * 
+     * @see KeyInfoSupport#getRSAKey(RSAKeyValue)
+     */
+    @Nonnull public PublicKey getRSAKey(@Nonnull final RSAKeyValue keyValue) throws KeyException {
+        Constraint.isNotNull(keyValue, "RSAKeyValue cannot be null");
+
+        ByteBuffer key = null;
+        if (keyValue.getModulus() != null && keyValue.getModulus().getValue() != null
+                && keyValue.getExponent() != null && keyValue.getExponent().getValue() != null) {
+            key = digest(TYPE_RSA, Base64Support.decode(keyValue.getModulus().getValue()),
+                    Base64Support.decode(keyValue.getExponent().getValue()));
+        }
+        if (key != null) {
+            final Object cached = lookup(key);
+            if (cached instanceof PublicKey) {
+                return (PublicKey) cached;
+            }
+        }
+
+        final PublicKey publicKey = KeyInfoSupport.getRSAKey(keyValue);
+        return key != null ? intern(key, publicKey) : publicKey;
+    }
+
+    /**
+     * Get the interned public key for a {@link DEREncodedKeyValue}.
+     * 
+     * @param keyValue the DER-encoded key value
+     * 
+     * @return the public key
+     * 
+     * @throws KeyException thrown if the key can not be built
+     * 
+     * @see KeyInfoSupport#getKey(DEREncodedKeyValue)
+     */
+    @Nonnull public PublicKey getKey(@Nonnull final DEREncodedKeyValue keyValue) throws KeyException {
+        Constraint.isNotNull(keyValue, "DEREncodedKeyValue cannot be null");
+
+        ByteBuffer key = null;
+        if (keyValue.getValue() != null) {
+            key = digest(TYPE_DER, Base64Support.decode(keyValue.getValue()));
+        }
+        if (key != null) {
+            final Object cached = lookup(key);
+            if (cached instanceof PublicKey) {
+                return (PublicKey) cached;
+            }
+        }
+
+        final PublicKey publicKey = KeyInfoSupport.getKey(keyValue);
+        return key != null ? intern(key, publicKey) : publicKey;
+    }
+
+    /**
+     * Look up an entry, recording a hit or miss.
+     * 
+     * @param key the entry key
+     * 
+     * @return the cached object, or null
+     */
+    @Nullable private Object lookup(@Nonnull final ByteBuffer key) {
+        final Object cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     * Intern a decoded object, returning the instance already held if another thread interned one first.
+     * 
+     * @param <T> the object type
+     * @param key the entry key
+     * @param decoded the decoded object
+     * 
+     * @return the interned object
+     */
+    @SuppressWarnings("unchecked")
+    @Nonnull private <T> T intern(@Nonnull final ByteBuffer key, @Nonnull final T decoded) {
+        synchronized (entries) {
+            final Object existing = entries.get(key);
+            if (existing != null && decoded.getClass().isInstance(existing)) {
+                return (T) existing;
+            }
+            entries.put(key, decoded);
+            return decoded;
+        }
+    }
+
+    /**
+     * Compute the digest of a type tag and one or more encoded values.
+     * 
+     * @param type the type tag
+     * @param values the encoded values
+     * 
+     * @return the digest, or null if it can not be computed
+     */
+    @Nullable private ByteBuffer digest(@Nonnull final byte[] type, @Nonnull final byte[]... values) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance(JCAConstants.DIGEST_SHA256);
+            md.update(type);
+            for (final byte[] value : values) {
+                if (value == null) {
+                    return null;
+                }
+                md.update(ByteBuffer.allocate(4).putInt(value.length).array());
+                md.update(value);
+            }
+            return ByteBuffer.wrap(md.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            log.error("Digest algorithm '{}' was not available", JCAConstants.DIGEST_SHA256, e);
+            return null;
+        }
+    }
+}
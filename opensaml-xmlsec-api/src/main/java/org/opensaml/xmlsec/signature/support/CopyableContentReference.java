@@ -0,0 +1,42 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.signature.support;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A specialization of {@link ContentReference} which can be copied along with the
+ * {@link org.opensaml.xmlsec.signature.Signature} it belongs to, when that is copied by a
+ * {@link org.opensaml.core.xml.io.Copier}.
+ */
+public interface CopyableContentReference extends ContentReference {
+
+    /**
+     * Create a new reference with the same digest algorithm, transforms and other properties as this one.
+     * 
+     * <p>
+     * A reference which identifies its content by URI refers to the same URI, which the copy of the signed content
+     * carries too. A reference which identifies its content as an object still refers to the original object, and
+     * is retargeted to the copy of that object by the copier of the signed object.
+     * </p>
+     * 
+     * @return the new reference
+     */
+    @Nonnull public ContentReference copy();
+
+}
@@ -34,4 +34,13 @@ public class DocumentInternalIDContentReference extends URIContentReference {
     public DocumentInternalIDContentReference(@Nonnull final String referenceID) {        
         super("#" + referenceID);
     }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull public ContentReference copy() {
+        final DocumentInternalIDContentReference copy =
+                new DocumentInternalIDContentReference(getReferenceID().substring(1));
+        copyProperties(copy);
+        return copy;
+    }
 }
\ No newline at end of file
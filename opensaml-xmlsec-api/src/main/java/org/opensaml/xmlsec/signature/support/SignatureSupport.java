@@ -17,8 +17,10 @@
 
 package org.opensaml.xmlsec.signature.support;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -284,6 +286,59 @@ public final class SignatureSupport {
         Constraint.isNotNull(signable, "Signable XMLObject cannot be null");
         Constraint.isNotNull(parameters, "Signature signing parameters cannot be null");
 
+        Signer.signObject(prepareAndMarshall(signable, parameters));
+    }
+
+    /**
+     * Signs a list of {@link SignableXMLObject}s, optionally computing the signatures concurrently.
+     * 
+     * <p>
+     * Each object is given a new signature and is marshalled, in order, on the calling thread. Since each object
+     * without a parent DOM is marshalled into a DOM document of its own, the signatures are then computed
+     * concurrently using the supplied executor, as described by {@link Signer#signObjects(List, Executor)}.
+     * Objects whose content contains other objects in the list must follow them in the list.
+     * </p>
+     * 
+     * @param signables the signable XMLObjects to sign
+     * @param parameters the signing parameters to use
+     * @param executor the executor used to compute the signatures, or null to compute them on the calling thread
+     * 
+     * @throws SecurityException if there is a problem preparing a signature
+     * @throws MarshallingException if there is a problem marshalling an XMLObject
+     * @throws SignatureException if there is a problem with a signature operation
+     */
+    public static void signObjects(@Nonnull final List<? extends SignableXMLObject> signables,
+            @Nonnull final SignatureSigningParameters parameters, @Nullable final Executor executor)
+                    throws SecurityException, MarshallingException, SignatureException {
+        Constraint.isNotNull(signables, "Signable XMLObject list cannot be null");
+        Constraint.isNotNull(parameters, "Signature signing parameters cannot be null");
+
+        final List<Signature> signatures = new ArrayList<>(signables.size());
+        for (final SignableXMLObject signable : signables) {
+            signatures.add(prepareAndMarshall(Constraint.isNotNull(signable, "Signable XMLObject cannot be null"),
+                    parameters));
+        }
+
+        if (executor != null) {
+            Signer.signObjects(signatures, executor);
+        } else {
+            Signer.signObjects(signatures);
+        }
+    }
+
+    /**
+     * Add a new {@link Signature} to a {@link SignableXMLObject}, prepare it and marshall the object.
+     * 
+     * @param signable the signable XMLObject
+     * @param parameters the signing parameters to use
+     * 
+     * @return the prepared signature
+     * 
+     * @throws SecurityException if there is a problem preparing the signature
+     * @throws MarshallingException if there is a problem marshalling the XMLObject
+     */
+    @Nonnull private static Signature prepareAndMarshall(@Nonnull final SignableXMLObject signable,
+            @Nonnull final SignatureSigningParameters parameters) throws SecurityException, MarshallingException {
         final XMLObjectBuilder<Signature> signatureBuilder =
                 (XMLObjectBuilder<Signature>) XMLObjectProviderRegistrySupport.getBuilderFactory().getBuilder(
                         Signature.DEFAULT_ELEMENT_NAME);
@@ -296,7 +351,7 @@ public final class SignatureSupport {
         final Marshaller marshaller = XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(signable);
         marshaller.marshall(signable);
 
-        Signer.signObject(signature);
+        return signature;
     }
 
 }
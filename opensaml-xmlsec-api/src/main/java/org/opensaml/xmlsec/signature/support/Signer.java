@@ -17,15 +17,26 @@
 
 package org.opensaml.xmlsec.signature.support;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
 
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
 import org.opensaml.xmlsec.signature.Signature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
 
 /**
  * A service class which is responsible for cryptographically computing and storing the 
@@ -38,6 +49,10 @@ import org.slf4j.LoggerFactory;
  * <li>The DOM tree resulting from marshalling of the XMLObject tree is grafted onto another DOM tree which may cause
  * element ID conflicts that would invalidate the signature</li>
  * </ul>
+ * 
+ * <p>
+ * Independent signatures may be computed concurrently with {@link #signObjects(List, Executor)}.
+ * </p>
  */
 public final class Signer {
     
@@ -61,6 +76,161 @@ public final class Signer {
         }
     }
 
+    /**
+     * Signs the given XMLObjects, computing the signatures held in different DOM documents concurrently.
+     * 
+     * <p>
+     * The signatures are grouped by the DOM document that their cached DOM belongs to. Since a DOM document may
+     * not be safely modified by more than one thread, the signatures of a group are computed one after another
+     * on a single thread, in the order provided, so a signature whose content contains another signature must
+     * follow it in the list, as with {@link #signObjects(List)}. Separate groups, such as separately marshalled
+     * documents or objects, are signed concurrently using the supplied executor. If there is only one group,
+     * it is signed on the calling thread.
+     * </p>
+     * 
+     * <p>
+     * This method returns once all signatures have been attempted. If any failed, the first failure, in the order
+     * of the groups' first signatures, is thrown. If the executor rejects a group, the groups which have not yet
+     * started are abandoned unsigned, those already running are waited for, and the executor's exception is
+     * rethrown.
+     * </p>
+     * 
+     * @param signatures an ordered list of XMLObject to be signed
+     * @param executor the executor used to compute the signatures of separate DOM documents
+     * @throws SignatureException thrown if there is an error computing a signature
+     */
+    public static void signObjects(@Nonnull final List<Signature> signatures, @Nonnull final Executor executor)
+            throws SignatureException {
+        Constraint.isNotNull(executor, "Executor cannot be null");
+        final SignerProvider signer = getSignerProvider();
+        getLogger().debug("Using a signer of implementation: {}", signer.getClass().getName());
+
+        // Signatures without a cached DOM are left in a group of their own, the provider will reject them.
+        final Map<Object, List<Signature>> groups = new IdentityHashMap<>();
+        final List<List<Signature>> orderedGroups = new ArrayList<>();
+        for (final Signature signature : signatures) {
+            final Element dom = signature.getDOM();
+            final Object key = dom != null ? dom.getOwnerDocument() : signature;
+            List<Signature> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+                orderedGroups.add(group);
+            }
+            group.add(signature);
+        }
+
+        if (orderedGroups.size() <= 1) {
+            for (final Signature signature : signatures) {
+                signer.signObject(signature);
+            }
+            return;
+        }
+
+        getLogger().debug("Signing {} signatures in {} DOM documents concurrently", signatures.size(),
+                orderedGroups.size());
+        final List<FutureTask<Void>> tasks = new ArrayList<>(orderedGroups.size());
+        final List<AtomicBoolean> claims = new ArrayList<>(orderedGroups.size());
+        for (final List<Signature> group : orderedGroups) {
+            final AtomicBoolean claim = new AtomicBoolean();
+            final FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+                /** {@inheritDoc} */
+                public Void call() throws SignatureException {
+                    // A task claimed by abandonSigningTasks must not touch the caller's DOM.
+                    if (!claim.compareAndSet(false, true)) {
+                        return null;
+                    }
+                    for (final Signature signature : group) {
+                        signer.signObject(signature);
+                    }
+                    return null;
+                }
+            });
+            try {
+                executor.execute(task);
+            } catch (final RuntimeException e) {
+                getLogger().error("Executor rejected a signing task, abandoning the remaining signatures", e);
+                abandonSigningTasks(tasks, claims);
+                throw e;
+            }
+            tasks.add(task);
+            claims.add(claim);
+        }
+
+        awaitSigningTasks(tasks);
+    }
+
+    /**
+     * Abandon signing tasks which have been submitted to an executor.
+     * 
+     * <p>
+     * Tasks which have not yet started are prevented from signing, and tasks which have started are waited for,
+     * so that no signature is still being computed over a caller's DOM when this method returns. Failures of the
+     * started tasks are logged and otherwise ignored.
+     * </p>
+     * 
+     * @param tasks the submitted signing tasks
+     * @param claims the flags claimed by each task when it starts, in the same order as the tasks
+     */
+    private static void abandonSigningTasks(@Nonnull final List<FutureTask<Void>> tasks,
+            @Nonnull final List<AtomicBoolean> claims) {
+        final List<FutureTask<Void>> started = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            if (claims.get(i).compareAndSet(false, true)) {
+                tasks.get(i).cancel(false);
+            } else {
+                started.add(tasks.get(i));
+            }
+        }
+
+        try {
+            awaitSigningTasks(started);
+        } catch (final SignatureException | RuntimeException e) {
+            getLogger().debug("Abandoned signing task failed", e);
+        }
+    }
+
+    /**
+     * Wait for all signing tasks to complete, and throw the first failure.
+     * 
+     * @param tasks the signing tasks, in order
+     * @throws SignatureException thrown if a task failed or the wait was interrupted
+     */
+    private static void awaitSigningTasks(@Nonnull final List<FutureTask<Void>> tasks) throws SignatureException {
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (final FutureTask<Void> task : tasks) {
+            // Never return while a signature is still being computed over a caller's DOM.
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure instanceof SignatureException) {
+            throw (SignatureException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure instanceof Exception) {
+            throw new SignatureException("Signature computation error", (Exception) failure);
+        }
+    }
+
     /**
      * Signs a single XMLObject.
      * 
@@ -40,7 +40,8 @@ import net.shibboleth.utilities.java.support.primitive.StringSupport;
  * The default digest algorithm used is {@link SignatureConstants#ALGO_ID_DIGEST_SHA256}.
  * </p>
  */
-public class URIContentReference implements ConfigurableContentReference, TransformsConfigurableContentReference {
+public class URIContentReference implements ConfigurableContentReference, TransformsConfigurableContentReference,
+        CopyableContentReference {
 
     /** Logger. */
     private final Logger log = LoggerFactory.getLogger(URIContentReference.class);
@@ -67,6 +68,15 @@ public class URIContentReference implements ConfigurableContentReference, Transf
         digestAlgorithm = SignatureConstants.ALGO_ID_DIGEST_SHA256;
     }
 
+    /**
+     * Gets the reference URI of the element to be signed.
+     * 
+     * @return the reference URI of the element to be signed
+     */
+    @Nullable public String getReferenceID() {
+        return referenceID;
+    }
+
     /**
      * Gets the transforms applied to the content prior to digest generation.
      * 
@@ -101,4 +111,24 @@ public class URIContentReference implements ConfigurableContentReference, Transf
             log.error("Error while adding content reference", e);
         }
     }
+
+    /** {@inheritDoc} */
+    @Nonnull public ContentReference copy() {
+        final URIContentReference copy = new URIContentReference(referenceID);
+        copyProperties(copy);
+        return copy;
+    }
+
+    /**
+     * Copy the digest algorithm and transforms of this reference to another.
+     * 
+     * @param copy the reference to which the properties are copied
+     */
+    protected void copyProperties(@Nonnull final URIContentReference copy) {
+        if (digestAlgorithm != null) {
+            copy.setDigestAlgorithm(digestAlgorithm);
+        }
+        copy.getTransforms().clear();
+        copy.getTransforms().addAll(transforms);
+    }
 }
\ No newline at end of file
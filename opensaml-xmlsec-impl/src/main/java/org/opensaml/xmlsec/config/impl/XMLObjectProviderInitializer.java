@@ -17,10 +17,41 @@
 
 package org.opensaml.xmlsec.config.impl;
 
+import org.opensaml.core.config.InitializationException;
 import org.opensaml.core.xml.config.AbstractXMLObjectProviderInitializer;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.CopierFactory;
+import org.opensaml.core.xml.schema.impl.XSBase64BinaryCopier;
+import org.opensaml.core.xml.schema.impl.XSIntegerCopier;
+import org.opensaml.core.xml.schema.impl.XSStringCopier;
+import org.opensaml.xmlsec.encryption.EncryptionMethod;
+import org.opensaml.xmlsec.encryption.KeySize;
+import org.opensaml.xmlsec.encryption.OAEPparams;
+import org.opensaml.xmlsec.encryption.impl.EncryptionMethodCopier;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.opensaml.xmlsec.signature.KeyName;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.X509CRL;
+import org.opensaml.xmlsec.signature.X509Certificate;
+import org.opensaml.xmlsec.signature.X509Data;
+import org.opensaml.xmlsec.signature.X509IssuerName;
+import org.opensaml.xmlsec.signature.X509IssuerSerial;
+import org.opensaml.xmlsec.signature.X509SKI;
+import org.opensaml.xmlsec.signature.X509SerialNumber;
+import org.opensaml.xmlsec.signature.X509SubjectName;
+import org.opensaml.xmlsec.signature.impl.KeyInfoCopier;
+import org.opensaml.xmlsec.signature.impl.SignatureCopier;
+import org.opensaml.xmlsec.signature.impl.X509DataCopier;
+import org.opensaml.xmlsec.signature.impl.X509IssuerSerialCopier;
+import org.opensaml.xmlsec.signature.impl.X509SerialNumberCopier;
 
 /**
  * XMLObject provider initializer for module "xmlsec-impl".
+ * 
+ * <p>
+ * In addition to the object providers, this registers the {@link SignatureCopier} and copiers for the common
+ * <code>KeyInfo</code> and <code>EncryptionMethod</code> content.
+ * </p>
  */
 public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderInitializer {
     
@@ -35,4 +66,32 @@ public class XMLObjectProviderInitializer extends AbstractXMLObjectProviderIniti
         return configs;
     }
 
+    /** {@inheritDoc} */
+    public void init() throws InitializationException {
+        super.init();
+
+        final CopierFactory copierFactory = XMLObjectProviderRegistrySupport.getCopierFactory();
+        copierFactory.registerCopier(Signature.DEFAULT_ELEMENT_NAME, new SignatureCopier());
+
+        final KeyInfoCopier keyInfoCopier = new KeyInfoCopier();
+        copierFactory.registerCopier(KeyInfo.DEFAULT_ELEMENT_NAME, keyInfoCopier);
+        copierFactory.registerCopier(KeyInfo.TYPE_NAME, keyInfoCopier);
+        copierFactory.registerCopier(X509Data.DEFAULT_ELEMENT_NAME, new X509DataCopier());
+        copierFactory.registerCopier(X509IssuerSerial.DEFAULT_ELEMENT_NAME, new X509IssuerSerialCopier());
+        copierFactory.registerCopier(X509SerialNumber.DEFAULT_ELEMENT_NAME, new X509SerialNumberCopier());
+        copierFactory.registerCopier(EncryptionMethod.DEFAULT_ELEMENT_NAME, new EncryptionMethodCopier());
+
+        final XSStringCopier stringCopier = new XSStringCopier();
+        copierFactory.registerCopier(KeyName.DEFAULT_ELEMENT_NAME, stringCopier);
+        copierFactory.registerCopier(X509SubjectName.DEFAULT_ELEMENT_NAME, stringCopier);
+        copierFactory.registerCopier(X509IssuerName.DEFAULT_ELEMENT_NAME, stringCopier);
+
+        final XSBase64BinaryCopier base64Copier = new XSBase64BinaryCopier();
+        copierFactory.registerCopier(X509Certificate.DEFAULT_ELEMENT_NAME, base64Copier);
+        copierFactory.registerCopier(X509CRL.DEFAULT_ELEMENT_NAME, base64Copier);
+        copierFactory.registerCopier(X509SKI.DEFAULT_ELEMENT_NAME, base64Copier);
+        copierFactory.registerCopier(OAEPparams.DEFAULT_ELEMENT_NAME, base64Copier);
+        copierFactory.registerCopier(KeySize.DEFAULT_ELEMENT_NAME, new XSIntegerCopier());
+    }
+
 }
@@ -37,6 +37,7 @@ import org.opensaml.security.credential.BasicCredential;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.impl.AbstractCriteriaFilteringCredentialResolver;
 import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.keyinfo.DecodedKeyInfoCache;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCriterion;
 import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
@@ -115,6 +116,9 @@ public class BasicProviderKeyInfoCredentialResolver extends AbstractCriteriaFilt
     /** List of KeyInfo providers that are registered on this instance. */
     private final List<KeyInfoProvider> providers;
 
+    /** Optional cache of decoded certificates and keys shared by the providers. */
+    @Nullable private DecodedKeyInfoCache decodedKeyInfoCache;
+
     /**
      * Constructor.
      * 
@@ -137,6 +141,28 @@ public class BasicProviderKeyInfoCredentialResolver extends AbstractCriteriaFilt
         return providers;
     }
 
+    /**
+     * Get the cache used to intern the certificates and keys decoded by the providers.
+     * 
+     * @return the cache, or null if decoded certificates and keys are not cached
+     */
+    @Nullable public DecodedKeyInfoCache getDecodedKeyInfoCache() {
+        return decodedKeyInfoCache;
+    }
+
+    /**
+     * Set the cache used to intern the certificates and keys decoded by the providers.
+     * 
+     * <p>
+     * The cache may be shared amongst resolver instances.
+     * </p>
+     * 
+     * @param cache the cache, or null
+     */
+    public void setDecodedKeyInfoCache(@Nullable final DecodedKeyInfoCache cache) {
+        decodedKeyInfoCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     @Nonnull protected Iterable<Credential> resolveFromSource(@Nullable final CriteriaSet criteriaSet)
@@ -158,6 +184,7 @@ public class BasicProviderKeyInfoCredentialResolver extends AbstractCriteriaFilt
         final List<Credential> credentials = new ArrayList<>();
 
         final KeyInfoResolutionContext kiContext = new KeyInfoResolutionContext(credentials);
+        kiContext.setDecodedKeyInfoCache(decodedKeyInfoCache);
 
         // Note: we allow KeyInfo to be null to handle case where application context,
         // other accompanying criteria, etc, should be used to resolve credentials via hooks below.
@@ -27,6 +27,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.keyinfo.DecodedKeyInfoCache;
 import org.opensaml.xmlsec.signature.KeyInfo;
 
 import net.shibboleth.utilities.java.support.annotation.ParameterName;
@@ -67,6 +68,9 @@ public class KeyInfoResolutionContext {
     
     /** Extensible map of properties used to share state amongst providers and/or resolver logic. */
     private final Map<String, Object> properties;
+
+    /** Optional cache of decoded certificates and keys which providers may use. */
+    private DecodedKeyInfoCache decodedKeyInfoCache;
     
     /**
      * Constructor.
@@ -142,6 +146,24 @@ public class KeyInfoResolutionContext {
         return resolvedCredentials;
     }
     
+    /**
+     * Get the cache of decoded certificates and keys which providers may use.
+     * 
+     * @return the cache, or null if decoded certificates and keys are not cached
+     */
+    @Nullable public DecodedKeyInfoCache getDecodedKeyInfoCache() {
+        return decodedKeyInfoCache;
+    }
+    
+    /**
+     * Set the cache of decoded certificates and keys which providers may use.
+     * 
+     * @param cache the cache, or null
+     */
+    public void setDecodedKeyInfoCache(@Nullable final DecodedKeyInfoCache cache) {
+        decodedKeyInfoCache = cache;
+    }
+    
     /**
      * Get the extensible properties map.
      * 
@@ -67,7 +67,11 @@ public class DEREncodedKeyValueProvider extends AbstractKeyInfoProvider {
         
         PublicKey pubKey = null;
         try {
-            pubKey = KeyInfoSupport.getKey(keyValue);
+            if (kiContext.getDecodedKeyInfoCache() != null) {
+                pubKey = kiContext.getDecodedKeyInfoCache().getKey(keyValue);
+            } else {
+                pubKey = KeyInfoSupport.getKey(keyValue);
+            }
         } catch (final KeyException e) {
             log.error("Error extracting DER-encoded key value", e);
             throw new SecurityException("Error extracting DER-encoded key value", e);
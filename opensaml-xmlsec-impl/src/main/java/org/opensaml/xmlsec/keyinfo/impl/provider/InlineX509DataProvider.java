@@ -45,6 +45,7 @@ import org.opensaml.security.x509.InternalX500DNHandler;
 import org.opensaml.security.x509.X500DNHandler;
 import org.opensaml.security.x509.X509Support;
 import org.opensaml.xmlsec.algorithm.AlgorithmSupport;
+import org.opensaml.xmlsec.keyinfo.DecodedKeyInfoCache;
 import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
 import org.opensaml.xmlsec.keyinfo.KeyInfoSupport;
 import org.opensaml.xmlsec.keyinfo.impl.KeyInfoResolutionContext;
@@ -122,7 +123,7 @@ public class InlineX509DataProvider extends AbstractKeyInfoProvider {
 
         log.debug("Attempting to extract credential from an X509Data");
 
-        final List<X509Certificate> certs = extractCertificates(x509Data);
+        final List<X509Certificate> certs = extractCertificates(x509Data, kiContext.getDecodedKeyInfoCache());
         if (certs.isEmpty()) {
             log.info("The X509Data contained no X509Certificate elements, skipping credential extraction");
             return null;
@@ -179,14 +180,19 @@ public class InlineX509DataProvider extends AbstractKeyInfoProvider {
      * Extract certificates from the X509Data.
      * 
      * @param x509Data the X509Data element
+     * @param cache the cache of decoded certificates, or null
      * @return a list of X509Certificates
      * @throws SecurityException thrown if there is an error extracting certificates
      */
-    @Nonnull private List<X509Certificate> extractCertificates(@Nonnull final X509Data x509Data)
-            throws SecurityException {
+    @Nonnull private List<X509Certificate> extractCertificates(@Nonnull final X509Data x509Data,
+            @Nullable final DecodedKeyInfoCache cache) throws SecurityException {
         List<X509Certificate> certs = null;
         try {
-            certs = KeyInfoSupport.getCertificates(x509Data);
+            if (cache != null) {
+                certs = cache.getCertificates(x509Data);
+            } else {
+                certs = KeyInfoSupport.getCertificates(x509Data);
+            }
         } catch (final CertificateException e) {
             log.error("Error extracting certificates from X509Data", e);
             throw new SecurityException("Error extracting certificates from X509Data", e);
@@ -77,7 +77,11 @@ public class RSAKeyValueProvider extends AbstractKeyInfoProvider {
 
         PublicKey pubKey = null;
         try {
-            pubKey = KeyInfoSupport.getRSAKey(keyValue);
+            if (kiContext.getDecodedKeyInfoCache() != null) {
+                pubKey = kiContext.getDecodedKeyInfoCache().getRSAKey(keyValue);
+            } else {
+                pubKey = KeyInfoSupport.getRSAKey(keyValue);
+            }
         } catch (final KeyException e) {
             log.error("Error extracting RSA key value", e);
             throw new SecurityException("Error extracting RSA key value", e);
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.signature.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.opensaml.core.xml.Namespace;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.Copier;
+import org.opensaml.core.xml.io.DefaultCopier;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.ContentReference;
+import org.opensaml.xmlsec.signature.support.CopyableContentReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+/**
+ * A {@link Copier} for {@link Signature} objects.
+ * 
+ * <p>
+ * A Signature which has been computed or unmarshalled, and so has a cached DOM, is copied from that DOM as by
+ * {@link DefaultCopier}. A Signature template, which can not be marshalled on its own, is copied by building a new
+ * Signature carrying the same algorithms, HMAC output length and signing credential, along with a copy of its
+ * KeyInfo.
+ * </p>
+ * 
+ * <p>
+ * The content references of a template which implement {@link CopyableContentReference} are copied along with it,
+ * keeping their digest algorithms and transforms. References identifying their content by URI refer to the same
+ * URI, which the copy of the signed object carries too, while SAML object references still refer to the original
+ * SAML object until the copier of that object retargets them to its copy. Other references can not be copied and are
+ * omitted.
+ * </p>
+ */
+@ThreadSafe
+public class SignatureCopier implements Copier {
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(SignatureCopier.class);
+
+    /** Copier for Signatures with a cached DOM. */
+    @Nonnull private final Copier domCopier;
+
+    /** Constructor. */
+    public SignatureCopier() {
+        domCopier = new DefaultCopier();
+    }
+
+    /** {@inheritDoc} */
+    @Nonnull public XMLObject copy(@Nonnull final XMLObject xmlObject, @Nonnull final Document document)
+            throws MarshallingException, UnmarshallingException {
+
+        if (xmlObject.getDOM() != null || !(xmlObject instanceof Signature)) {
+            return domCopier.copy(xmlObject, document);
+        }
+
+        final Signature original = (Signature) xmlObject;
+        final Signature copy = (Signature) XMLObjectProviderRegistrySupport.getBuilderFactory()
+                .getBuilderOrThrow(original.getElementQName()).buildObject(original.getElementQName());
+        for (final Namespace namespace : original.getNamespaceManager().getNamespaceDeclarations()) {
+            copy.getNamespaceManager().registerNamespaceDeclaration(namespace);
+        }
+
+        copy.setCanonicalizationAlgorithm(original.getCanonicalizationAlgorithm());
+        copy.setSignatureAlgorithm(original.getSignatureAlgorithm());
+        copy.setHMACOutputLength(original.getHMACOutputLength());
+        copy.setSigningCredential(original.getSigningCredential());
+
+        for (final ContentReference contentReference : original.getContentReferences()) {
+            if (contentReference instanceof CopyableContentReference) {
+                copy.getContentReferences().add(((CopyableContentReference) contentReference).copy());
+            } else {
+                log.warn("Content reference of type {} can not be copied, omitting it from the copied Signature",
+                        contentReference.getClass().getName());
+            }
+        }
+
+        final KeyInfo keyInfo = original.getKeyInfo();
+        if (keyInfo != null) {
+            copy.setKeyInfo((KeyInfo) XMLObjectProviderRegistrySupport.getCopierFactory().getCopier(keyInfo)
+                    .copy(keyInfo, document));
+        }
+
+        return copy;
+    }
+}
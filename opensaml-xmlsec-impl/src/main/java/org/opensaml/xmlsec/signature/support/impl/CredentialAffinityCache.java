@@ -0,0 +1,226 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.signature.support.impl;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.security.credential.Credential;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded record, per signing entity, of the trusted public key which most recently verified a signature.
+ *
+ * <p>
+ * Trust engines which try each of an entity's trusted credentials in turn may use this to try the
+ * previously successful credential first, which avoids failed verifications against the other keys
+ * published by entities undergoing key rollover.
+ * </p>
+ *
+ * <p>
+ * Only the public key is retained, and it is used solely to reorder the trusted credentials supplied
+ * for a given evaluation. If the key is no longer among those credentials, for example because the
+ * entity's metadata has changed, the record for that entity is discarded. When the maximum number of
+ * records is reached, the least recently used is evicted.
+ * </p>
+ *
+ * <p>
+ * The cache also accumulates the number of signature evaluations and of verification attempts made
+ * with trusted credentials, so that the average number of attempts per evaluation may be monitored.
+ * </p>
+ */
+@ThreadSafe
+public class CredentialAffinityCache {
+
+    /** Default maximum number of records: {@value}. */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /** Class logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(CredentialAffinityCache.class);
+
+    /** Map of affinity key to public key, in access order. */
+    @Nonnull private final Map<String, PublicKey> entries;
+
+    /** Maximum number of records. */
+    @Positive private final int maxEntries;
+
+    /** Number of evaluations recorded. */
+    @Nonnull private final AtomicLong evaluations;
+
+    /** Number of verification attempts recorded. */
+    @Nonnull private final AtomicLong attempts;
+
+    /** Constructor. */
+    public CredentialAffinityCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param max maximum number of records to retain
+     */
+    public CredentialAffinityCache(@Positive final int max) {
+        maxEntries = (int) Constraint.isGreaterThan(0, max, "Maximum entries must be greater than 0");
+        entries = new LinkedHashMap<String, PublicKey>(16, 0.75f, true) {
+            /** Serial version UID. */
+            private static final long serialVersionUID = -1581271745281530155L;
+
+            /** {@inheritDoc} */
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, PublicKey> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        evaluations = new AtomicLong();
+        attempts = new AtomicLong();
+    }
+
+    /**
+     * Get the maximum number of records retained.
+     *
+     * @return the maximum number of records
+     */
+    @Positive public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Get the number of records currently retained.
+     *
+     * @return the number of records
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Order the supplied trusted credentials so that the one carrying the recorded public key, if any, comes first.
+     *
+     * @param key the affinity key, typically derived from the signer's entityID
+     * @param credentials the trusted credentials
+     *
+     * @return the credentials, in the order in which they should be tried
+     */
+    @Nonnull @NonnullElements public Iterable<Credential> order(@Nonnull @NotEmpty final String key,
+            @Nonnull @NonnullElements final Iterable<Credential> credentials) {
+
+        final PublicKey preferred;
+        synchronized (entries) {
+            preferred = entries.get(key);
+        }
+        if (preferred == null) {
+            return credentials;
+        }
+
+        final List<Credential> ordered = new ArrayList<>();
+        boolean found = false;
+        for (final Credential credential : credentials) {
+            if (!found && preferred.equals(credential.getPublicKey())) {
+                ordered.add(0, credential);
+                found = true;
+            } else {
+                ordered.add(credential);
+            }
+        }
+
+        if (!found) {
+            log.debug("Preferred credential for '{}' is no longer trusted, discarding record", key);
+            synchronized (entries) {
+                entries.remove(key, preferred);
+            }
+        }
+
+        return ordered;
+    }
+
+    /**
+     * Record the outcome of a signature evaluation.
+     *
+     * @param key the affinity key, or null if none is available
+     * @param credential the credential which verified the signature, or null if none did
+     * @param attemptCount the number of verification attempts made
+     */
+    public void record(@Nullable final String key, @Nullable final Credential credential, final int attemptCount) {
+        evaluations.incrementAndGet();
+        attempts.addAndGet(attemptCount);
+
+        if (key != null && credential != null && credential.getPublicKey() != null) {
+            synchronized (entries) {
+                entries.put(key, credential.getPublicKey());
+            }
+        }
+    }
+
+    /** Discard all records and reset the accumulated statistics. */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        evaluations.set(0);
+        attempts.set(0);
+    }
+
+    /**
+     * Get the number of signature evaluations recorded.
+     *
+     * @return the number of evaluations
+     */
+    public long getEvaluationCount() {
+        return evaluations.get();
+    }
+
+    /**
+     * Get the number of verification attempts recorded.
+     *
+     * @return the number of attempts
+     */
+    public long getVerificationAttemptCount() {
+        return attempts.get();
+    }
+
+    /**
+     * Get the average number of verification attempts per signature evaluation.
+     *
+     * @return the average, or 0 if no evaluations have been recorded
+     */
+    public double getAverageVerificationAttempts() {
+        final long count = evaluations.get();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) attempts.get() / count;
+    }
+
+}
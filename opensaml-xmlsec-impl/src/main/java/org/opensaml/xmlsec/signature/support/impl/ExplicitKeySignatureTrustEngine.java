@@ -25,6 +25,7 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
+import org.opensaml.core.criterion.EntityIdCriterion;
 import org.opensaml.security.SecurityException;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.CredentialResolver;
@@ -52,6 +53,11 @@ import com.google.common.base.Strings;
  * key, then all trusted credentials obtained by the trusted credential resolver will be used to attempt to validate the
  * signature.
  * </p>
+ * 
+ * <p>
+ * If a {@link CredentialAffinityCache} is configured, the trusted credential which most recently verified
+ * a signature for the entity identified by the {@link EntityIdCriterion} is tried first.
+ * </p>
  */
 public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<Iterable<Credential>> implements
         TrustedCredentialTrustEngine<Signature> {
@@ -64,6 +70,9 @@ public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<It
 
     /** The external explicit key trust engine to use as a basis for trust in this implementation. */
     private final ExplicitKeyTrustEvaluator keyTrust;
+    
+    /** Optional record of the trusted credential which last verified each entity's signatures. */
+    @Nullable private CredentialAffinityCache credentialAffinityCache;
 
     /**
      * Constructor.
@@ -85,6 +94,24 @@ public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<It
         return credentialResolver;
     }
 
+    /**
+     * Get the optional record of the trusted credential which last verified each entity's signatures.
+     * 
+     * @return the credential affinity cache, or null
+     */
+    @Nullable public CredentialAffinityCache getCredentialAffinityCache() {
+        return credentialAffinityCache;
+    }
+
+    /**
+     * Set the optional record of the trusted credential which last verified each entity's signatures.
+     * 
+     * @param cache the credential affinity cache, may be null
+     */
+    public void setCredentialAffinityCache(@Nullable final CredentialAffinityCache cache) {
+        credentialAffinityCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override protected boolean doValidate(@Nonnull final Signature signature,
             @Nullable final CriteriaSet trustBasisCriteria) throws SecurityException {
@@ -115,12 +142,17 @@ public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<It
         // the trusted credentials directly.
         log.debug("Attempting to verify signature using trusted credentials");
 
-        for (final Credential trustedCredential : trustedCredentials) {
+        final String affinityKey = getAffinityKey(criteriaSet, jcaAlgorithm);
+        int attempts = 0;
+        for (final Credential trustedCredential : orderTrustedCredentials(affinityKey, trustedCredentials)) {
+            attempts++;
             if (verifySignature(signature, trustedCredential)) {
                 log.debug("Successfully verified signature using resolved trusted credential");
+                recordAffinity(affinityKey, trustedCredential, attempts);
                 return true;
             }
         }
+        recordAffinity(affinityKey, null, attempts);
         log.debug("Failed to verify signature using either KeyInfo-derived or directly trusted credentials");
         return false;
     }
@@ -173,10 +205,14 @@ public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<It
         // as a fall back attempt to verify the signature with the trusted credentials directly.
         log.debug("Attempting to verify signature using trusted credentials");
 
-        for (final Credential trustedCredential : trustedCredentials) {
+        final String affinityKey = getAffinityKey(criteriaSet, jcaAlgorithm);
+        int attempts = 0;
+        for (final Credential trustedCredential : orderTrustedCredentials(affinityKey, trustedCredentials)) {
+            attempts++;
             try {
                 if (XMLSigningUtil.verifyWithURI(trustedCredential, algorithmURI, signature, content)) {
                     log.debug("Successfully verified signature using resolved trusted credential");
+                    recordAffinity(affinityKey, trustedCredential, attempts);
                     return true;
                 }
             } catch (final SecurityException e) {
@@ -184,6 +220,7 @@ public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<It
                 log.debug("Saw fatal error attempting to verify raw signature with trusted credential", e);
             }
         }
+        recordAffinity(affinityKey, null, attempts);
         log.debug("Failed to verify signature using either supplied candidate credential"
                 + " or directly trusted credentials");
         return false;
@@ -191,6 +228,59 @@ public class ExplicitKeySignatureTrustEngine extends BaseSignatureTrustEngine<It
 
     // CheckStyle: CyclomaticComplexity ON
 
+    /**
+     * Get the key under which credential affinity is recorded for the signer described by the criteria.
+     * 
+     * @param criteriaSet the trust basis criteria
+     * @param jcaAlgorithm the JCA key algorithm of the signature, if known
+     * 
+     * @return the affinity key, or null if affinity is not in use or the signer is not identified
+     */
+    @Nullable private String getAffinityKey(@Nonnull final CriteriaSet criteriaSet,
+            @Nullable final String jcaAlgorithm) {
+        if (credentialAffinityCache == null) {
+            return null;
+        }
+        
+        final EntityIdCriterion entityIdCriterion = criteriaSet.get(EntityIdCriterion.class);
+        if (entityIdCriterion == null) {
+            return null;
+        }
+        
+        return Strings.isNullOrEmpty(jcaAlgorithm) ? entityIdCriterion.getEntityId()
+                : entityIdCriterion.getEntityId() + '!' + jcaAlgorithm;
+    }
+    
+    /**
+     * Order the trusted credentials so that the one recorded as most recently successful is tried first.
+     * 
+     * @param affinityKey the affinity key, or null
+     * @param trustedCredentials the resolved trusted credentials
+     * 
+     * @return the credentials in the order in which they should be tried
+     */
+    @Nonnull private Iterable<Credential> orderTrustedCredentials(@Nullable final String affinityKey,
+            @Nonnull final Iterable<Credential> trustedCredentials) {
+        if (affinityKey == null) {
+            return trustedCredentials;
+        }
+        return credentialAffinityCache.order(affinityKey, trustedCredentials);
+    }
+    
+    /**
+     * Record the outcome of verification against the trusted credentials, if affinity is in use.
+     * 
+     * @param affinityKey the affinity key, or null
+     * @param credential the credential which verified the signature, or null if none did
+     * @param attempts the number of verification attempts made
+     */
+    private void recordAffinity(@Nullable final String affinityKey, @Nullable final Credential credential,
+            final int attempts) {
+        if (credentialAffinityCache != null) {
+            credentialAffinityCache.record(affinityKey, credential, attempts);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override protected boolean evaluateTrust(@Nonnull final Credential untrustedCredential,
             @Nullable final Iterable<Credential> trustedCredentials) throws SecurityException {
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.keyinfo;
+
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.x509.X509Credential;
+import org.opensaml.xmlsec.keyinfo.impl.BasicProviderKeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.impl.KeyInfoProvider;
+import org.opensaml.xmlsec.keyinfo.impl.provider.DEREncodedKeyValueProvider;
+import org.opensaml.xmlsec.keyinfo.impl.provider.InlineX509DataProvider;
+import org.opensaml.xmlsec.keyinfo.impl.provider.RSAKeyValueProvider;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test the {@link DecodedKeyInfoCache}.
+ */
+public class DecodedKeyInfoCacheTest extends XMLObjectBaseTestCase {
+
+    private DecodedKeyInfoCache cache;
+
+    @BeforeMethod
+    protected void setUp() {
+        cache = new DecodedKeyInfoCache();
+    }
+
+    @Test
+    public void testCertificates() throws Exception {
+        final KeyInfo keyInfo1 = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/SingleX509Certificate.xml");
+        final KeyInfo keyInfo2 = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/SingleX509Certificate.xml");
+
+        final List<X509Certificate> certs1 = cache.getCertificates(keyInfo1.getX509Datas().get(0));
+        final List<X509Certificate> certs2 = cache.getCertificates(keyInfo2.getX509Datas().get(0));
+
+        Assert.assertEquals(certs1.size(), 1);
+        Assert.assertEquals(certs1, KeyInfoSupport.getCertificates(keyInfo1));
+        Assert.assertSame(certs2.get(0), certs1.get(0));
+        Assert.assertEquals(cache.getSize(), 1);
+        Assert.assertEquals(cache.getMissCount(), 1);
+        Assert.assertEquals(cache.getHitCount(), 1);
+
+        Assert.assertTrue(cache.getCertificates(null).isEmpty());
+    }
+
+    @Test
+    public void testRSAKey() throws Exception {
+        final KeyInfo keyInfo1 = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/RSAKeyValue.xml");
+        final KeyInfo keyInfo2 = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/RSAKeyValue.xml");
+
+        final PublicKey key1 = cache.getRSAKey(keyInfo1.getKeyValues().get(0).getRSAKeyValue());
+        final PublicKey key2 = cache.getRSAKey(keyInfo2.getKeyValues().get(0).getRSAKeyValue());
+
+        Assert.assertEquals(key1, KeyInfoSupport.getRSAKey(keyInfo1.getKeyValues().get(0).getRSAKeyValue()));
+        Assert.assertSame(key2, key1);
+        Assert.assertEquals(cache.getSize(), 1);
+    }
+
+    @Test
+    public void testDEREncodedKey() throws Exception {
+        final KeyInfo keyInfo1 = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/DEREncodedKeyValue.xml");
+        final KeyInfo keyInfo2 = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/DEREncodedKeyValue.xml");
+
+        final PublicKey key1 = cache.getKey(keyInfo1.getDEREncodedKeyValues().get(0));
+        final PublicKey key2 = cache.getKey(keyInfo2.getDEREncodedKeyValues().get(0));
+
+        Assert.assertEquals(key1, KeyInfoSupport.getKey(keyInfo1.getDEREncodedKeyValues().get(0)));
+        Assert.assertSame(key2, key1);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        cache = new DecodedKeyInfoCache(1);
+        final KeyInfo certKeyInfo =
+                unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/SingleX509Certificate.xml");
+        final KeyInfo rsaKeyInfo = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/RSAKeyValue.xml");
+
+        cache.getCertificates(certKeyInfo.getX509Datas().get(0));
+        cache.getRSAKey(rsaKeyInfo.getKeyValues().get(0).getRSAKeyValue());
+        Assert.assertEquals(cache.getSize(), 1);
+
+        cache.clear();
+        Assert.assertEquals(cache.getSize(), 0);
+        Assert.assertEquals(cache.getMissCount(), 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        cache = new DecodedKeyInfoCache(2);
+        final KeyInfo certKeyInfo =
+                unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/SingleX509Certificate.xml");
+        final KeyInfo rsaKeyInfo = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/RSAKeyValue.xml");
+        final KeyInfo derKeyInfo = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/DEREncodedKeyValue.xml");
+
+        final X509Certificate cert = cache.getCertificates(certKeyInfo.getX509Datas().get(0)).get(0);
+        cache.getRSAKey(rsaKeyInfo.getKeyValues().get(0).getRSAKeyValue());
+
+        // Using the certificate makes the RSA key the least recently used entry.
+        Assert.assertSame(cache.getCertificates(certKeyInfo.getX509Datas().get(0)).get(0), cert);
+        cache.getKey(derKeyInfo.getDEREncodedKeyValues().get(0));
+        Assert.assertEquals(cache.getSize(), 2);
+
+        final long misses = cache.getMissCount();
+        Assert.assertSame(cache.getCertificates(certKeyInfo.getX509Datas().get(0)).get(0), cert);
+        Assert.assertEquals(cache.getMissCount(), misses, "Recently used certificate was evicted");
+        cache.getRSAKey(rsaKeyInfo.getKeyValues().get(0).getRSAKeyValue());
+        Assert.assertEquals(cache.getMissCount(), misses + 1, "Least recently used key was not evicted");
+    }
+
+    @Test
+    public void testResolver() throws Exception {
+        final List<KeyInfoProvider> providers = new ArrayList<>();
+        providers.add(new RSAKeyValueProvider());
+        providers.add(new DEREncodedKeyValueProvider());
+        providers.add(new InlineX509DataProvider());
+        final BasicProviderKeyInfoCredentialResolver resolver = new BasicProviderKeyInfoCredentialResolver(providers);
+        resolver.setDecodedKeyInfoCache(cache);
+        Assert.assertSame(resolver.getDecodedKeyInfoCache(), cache);
+
+        final KeyInfo keyInfo1 = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/SingleX509Certificate.xml");
+        final KeyInfo keyInfo2 = unmarshallElement("/org/opensaml/xmlsec/keyinfo/impl/SingleX509Certificate.xml");
+
+        final Credential cred1 = resolver.resolveSingle(new CriteriaSet(new KeyInfoCriterion(keyInfo1)));
+        final Credential cred2 = resolver.resolveSingle(new CriteriaSet(new KeyInfoCriterion(keyInfo2)));
+
+        Assert.assertNotSame(cred2, cred1);
+        Assert.assertSame(((X509Credential) cred2).getEntityCertificate(),
+                ((X509Credential) cred1).getEntityCertificate());
+        Assert.assertEquals(cache.getHitCount(), 1);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.signature.impl;
+
+import java.math.BigInteger;
+
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.opensaml.xmlsec.signature.KeyName;
+import org.opensaml.xmlsec.signature.X509Certificate;
+import org.opensaml.xmlsec.signature.X509Data;
+import org.opensaml.xmlsec.signature.X509IssuerName;
+import org.opensaml.xmlsec.signature.X509IssuerSerial;
+import org.opensaml.xmlsec.signature.X509SerialNumber;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test for {@link KeyInfoCopier} and the copiers of the content of key information.
+ */
+public class KeyInfoCopierTest extends XMLObjectBaseTestCase {
+
+    /**
+     * Tests copying built key information field by field.
+     * 
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testKeyInfoCopy() throws MarshallingException, UnmarshallingException {
+        final KeyInfo keyInfo = buildXMLObject(KeyInfo.DEFAULT_ELEMENT_NAME);
+        keyInfo.setID("keyInfo");
+
+        final KeyName keyName = buildXMLObject(KeyName.DEFAULT_ELEMENT_NAME);
+        keyName.setValue("key");
+        keyInfo.getKeyNames().add(keyName);
+
+        final X509Data x509Data = buildXMLObject(X509Data.DEFAULT_ELEMENT_NAME);
+        final X509Certificate certificate = buildXMLObject(X509Certificate.DEFAULT_ELEMENT_NAME);
+        certificate.setValue("Y2VydGlmaWNhdGU=");
+        x509Data.getX509Certificates().add(certificate);
+        final X509IssuerSerial issuerSerial = buildXMLObject(X509IssuerSerial.DEFAULT_ELEMENT_NAME);
+        final X509IssuerName issuerName = buildXMLObject(X509IssuerName.DEFAULT_ELEMENT_NAME);
+        issuerName.setValue("CN=issuer");
+        issuerSerial.setX509IssuerName(issuerName);
+        final X509SerialNumber serialNumber = buildXMLObject(X509SerialNumber.DEFAULT_ELEMENT_NAME);
+        serialNumber.setValue(BigInteger.TEN);
+        issuerSerial.setX509SerialNumber(serialNumber);
+        x509Data.getX509IssuerSerials().add(issuerSerial);
+        keyInfo.getX509Datas().add(x509Data);
+
+        final KeyInfo copy = XMLObjectSupport.copyXMLObject(keyInfo);
+        Assert.assertNotSame(copy, keyInfo);
+        Assert.assertNull(keyInfo.getDOM(), "Copying the original marshalled it");
+        Assert.assertNull(copy.getDOM());
+        Assert.assertSame(copy.resolveID("keyInfo"), copy);
+        Assert.assertEquals(copy.getKeyNames().get(0).getValue(), "key");
+
+        final X509Data x509DataCopy = copy.getX509Datas().get(0);
+        Assert.assertNotSame(x509DataCopy, x509Data);
+        Assert.assertSame(x509DataCopy.getParent(), copy);
+        Assert.assertEquals(x509DataCopy.getX509Certificates().get(0).getValue(), "Y2VydGlmaWNhdGU=");
+        Assert.assertEquals(x509DataCopy.getX509IssuerSerials().get(0).getX509IssuerName().getValue(), "CN=issuer");
+        Assert.assertEquals(x509DataCopy.getX509IssuerSerials().get(0).getX509SerialNumber().getValue(),
+                BigInteger.TEN);
+
+        assertXMLEquals(XMLObjectSupport.marshall(keyInfo).getOwnerDocument(), copy);
+    }
+
+    /**
+     * Tests copying unmarshalled key information, including children without copiers of their own.
+     * 
+     * @throws MarshallingException
+     * @throws UnmarshallingException
+     */
+    @Test
+    public void testUnmarshalledKeyInfoCopy() throws MarshallingException, UnmarshallingException {
+        final KeyInfo keyInfo = unmarshallElement("/org/opensaml/xmlsec/signature/impl/KeyInfoChildElements.xml");
+
+        final KeyInfo copy = XMLObjectSupport.copyXMLObject(keyInfo);
+        Assert.assertNull(copy.getDOM());
+        Assert.assertEquals(copy.getXMLObjects().size(), keyInfo.getXMLObjects().size());
+        Assert.assertEquals(copy.getX509Datas().size(), 2);
+        Assert.assertNull(copy.getX509Datas().get(0).getDOM());
+
+        keyInfo.releaseDOM();
+        keyInfo.releaseChildrenDOM(true);
+        assertXMLEquals(XMLObjectSupport.marshall(keyInfo).getOwnerDocument(), copy);
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the University Corporation for Advanced Internet Development,
+ * Inc. (UCAID) under one or more contributor license agreements.  See the
+ * NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The UCAID licenses this file to You under the Apache
+ * License, Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opensaml.xmlsec.signature.impl;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+
+import org.apache.xml.security.signature.XMLSignature;
+import org.opensaml.core.xml.XMLObjectBaseTestCase;
+import org.opensaml.core.xml.XMLObjectBuilder;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.io.MarshallingException;
+import org.opensaml.core.xml.io.UnmarshallingException;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.security.crypto.KeySupport;
+import org.opensaml.xmlsec.mock.SignableSimpleXMLObject;
+import org.opensaml.xmlsec.mock.SignableSimpleXMLObjectBuilder;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.opensaml.xmlsec.signature.KeyName;
+import org.opensaml.xmlsec.signature.Signature;
+import org.opensaml.xmlsec.signature.support.ContentReference;
+import org.opensaml.xmlsec.signature.support.DocumentInternalIDContentReference;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureException;
+import org.opensaml.xmlsec.signature.support.SignatureValidator;
+import org.opensaml.xmlsec.signature.support.Signer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Element;
+
+/**
+ * Test for {@link SignatureCopier}.
+ */
+public class SignatureCopierTest extends XMLObjectBaseTestCase {
+
+    /** Credential used to sign and verify. */
+    private Credential credential;
+
+    /** Builder of mock XML objects. */
+    private SignableSimpleXMLObjectBuilder sxoBuilder;
+
+    /** Builder of Signature XML objects. */
+    private XMLObjectBuilder<Signature> sigBuilder;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        final KeyPair keyPair = KeySupport.generateKeyPair("RSA", 1024, null);
+        credential = CredentialSupport.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+
+        sxoBuilder = new SignableSimpleXMLObjectBuilder();
+        sigBuilder = XMLObjectProviderRegistrySupport.getBuilderFactory().<Signature>getBuilderOrThrow(
+                Signature.DEFAULT_ELEMENT_NAME);
+    }
+
+    /** Tests that the SignatureCopier is registered. */
+    @Test
+    public void testRegistration() {
+        final Signature signature = sigBuilder.buildObject(Signature.DEFAULT_ELEMENT_NAME);
+        Assert.assertTrue(XMLObjectProviderRegistrySupport.getCopierFactory().getCopier(signature)
+                instanceof SignatureCopier);
+    }
+
+    /**
+     * Tests copying a Signature template along with the object it is attached to, then signing the copy.
+     * 
+     * @throws MarshallingException if the objects can not be marshalled
+     * @throws UnmarshallingException if the copy can not be built
+     * @throws SignatureException if the copy can not be signed or verified
+     */
+    @Test
+    public void testTemplateCopy() throws MarshallingException, UnmarshallingException, SignatureException {
+        final SignableSimpleXMLObject sxo = sxoBuilder.buildObject();
+        sxo.setId("FOO");
+
+        final Signature signature = sigBuilder.buildObject(Signature.DEFAULT_ELEMENT_NAME);
+        signature.setSigningCredential(credential);
+        signature.setCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        signature.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+
+        final KeyInfo keyInfo = (KeyInfo) XMLObjectSupport.buildXMLObject(KeyInfo.DEFAULT_ELEMENT_NAME);
+        final KeyName keyName = (KeyName) XMLObjectSupport.buildXMLObject(KeyName.DEFAULT_ELEMENT_NAME);
+        keyName.setValue("key");
+        keyInfo.getKeyNames().add(keyName);
+        signature.setKeyInfo(keyInfo);
+
+        final DocumentInternalIDContentReference contentReference = new DocumentInternalIDContentReference("FOO");
+        contentReference.getTransforms().add(SignatureConstants.TRANSFORM_ENVELOPED_SIGNATURE);
+        contentReference.getTransforms().add(SignatureConstants.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
+        contentReference.setDigestAlgorithm(SignatureConstants.ALGO_ID_DIGEST_SHA512);
+        signature.getContentReferences().add(contentReference);
+        sxo.setSignature(signature);
+
+        final SignableSimpleXMLObject copy = XMLObjectSupport.copyXMLObject(sxo);
+        Assert.assertNull(sxo.getDOM(), "Original object was marshalled");
+
+        final Signature copiedSignature = copy.getSignature();
+        Assert.assertNotNull(copiedSignature, "Signature was not copied");
+        Assert.assertNotSame(copiedSignature, signature);
+        Assert.assertSame(copiedSignature.getParent(), copy);
+        Assert.assertEquals(copiedSignature.getCanonicalizationAlgorithm(),
+                SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+        Assert.assertEquals(copiedSignature.getSignatureAlgorithm(), SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        Assert.assertSame(copiedSignature.getSigningCredential(), credential);
+        Assert.assertNotNull(copiedSignature.getKeyInfo(), "KeyInfo was not copied");
+        Assert.assertNotSame(copiedSignature.getKeyInfo(), keyInfo);
+        Assert.assertEquals(copiedSignature.getKeyInfo().getKeyNames().get(0).getValue(), "key");
+
+        Assert.assertEquals(copiedSignature.getContentReferences().size(), 1);
+        final ContentReference copiedReference = copiedSignature.getContentReferences().get(0);
+        Assert.assertTrue(copiedReference instanceof DocumentInternalIDContentReference,
+                "Unexpected content reference type");
+        Assert.assertNotSame(copiedReference, contentReference);
+        Assert.assertEquals(((DocumentInternalIDContentReference) copiedReference).getReferenceID(), "#FOO");
+        Assert.assertEquals(((DocumentInternalIDContentReference) copiedReference).getDigestAlgorithm(),
+                SignatureConstants.ALGO_ID_DIGEST_SHA512);
+        Assert.assertEquals(((DocumentInternalIDContentReference) copiedReference).getTransforms(),
+                Arrays.asList(SignatureConstants.TRANSFORM_ENVELOPED_SIGNATURE,
+                        SignatureConstants.TRANSFORM_C14N_EXCL_OMIT_COMMENTS));
+
+        XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(copy).marshall(copy);
+        Signer.signObject(copiedSignature);
+
+        final Element reference = (Element) copy.getDOM().getElementsByTagNameNS(SignatureConstants.XMLSIG_NS,
+                "Reference").item(0);
+        Assert.assertEquals(reference.getAttributeNS(null, "URI"), "#FOO");
+        final Element digestMethod = (Element) reference.getElementsByTagNameNS(SignatureConstants.XMLSIG_NS,
+                "DigestMethod").item(0);
+        Assert.assertEquals(digestMethod.getAttributeNS(null, "Algorithm"), SignatureConstants.ALGO_ID_DIGEST_SHA512);
+
+        SignatureValidator.validate(copiedSignature, credential);
+    }
+
+    /**
+     * Tests that a content reference which can not be copied is omitted from the copy.
+     * 
+     * @throws MarshallingException if the objects can not be marshalled
+     * @throws UnmarshallingException if the copy can not be built
+     */
+    @Test
+    public void testUncopyableReference() throws MarshallingException, UnmarshallingException {
+        final Signature signature = sigBuilder.buildObject(Signature.DEFAULT_ELEMENT_NAME);
+        signature.setSigningCredential(credential);
+        signature.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+        signature.getContentReferences().add(new ContentReference() {
+            /** {@inheritDoc} */
+            public void createReference(final XMLSignature dsig) {
+            }
+        });
+
+        final Signature copy = XMLObjectSupport.copyXMLObject(signature);
+        Assert.assertNotSame(copy, signature);
+        Assert.assertTrue(copy.getContentReferences().isEmpty(), "Uncopyable content reference was copied");
+        Assert.assertEquals(signature.getContentReferences().size(), 1);
+    }
+
+}
@@ -21,6 +21,13 @@ import java.io.InputStream;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.bind.ValidationException;
 
@@ -117,6 +124,99 @@ public class EnvelopedSignatureTest extends XMLObjectBaseTestCase {
         }
     }
 
+    /**
+     * Tests signing objects in separate documents concurrently, including a nested signature.
+     * 
+     * @throws MarshallingException thrown if the XMLObject tree can not be marshalled
+     * @throws SignatureException thrown if signing or verification fails
+     */
+    @Test
+    public void testConcurrentSigning() throws MarshallingException, SignatureException {
+        final List<Signature> signatures = new ArrayList<>();
+        final List<SignableSimpleXMLObject> roots = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final SignableSimpleXMLObject sxo = getXMLObjectWithSignature("FOO" + i);
+            roots.add(sxo);
+            signatures.add(sxo.getSignature());
+        }
+        
+        // The inner signature is covered by the outer one, so must precede it.
+        final SignableSimpleXMLObject outer = getXMLObjectWithSignature("OUTER");
+        final SignableSimpleXMLObject inner = getXMLObjectWithSignature("INNER");
+        outer.getSimpleXMLObjects().add(inner);
+        roots.add(outer);
+        signatures.add(2, inner.getSignature());
+        signatures.add(outer.getSignature());
+        
+        for (final SignableSimpleXMLObject root : roots) {
+            XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(root).marshall(root);
+        }
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Signer.signObjects(signatures, executor);
+        } finally {
+            executor.shutdown();
+        }
+        
+        for (final Signature signature : signatures) {
+            SignatureValidator.validate(signature, goodCredential);
+        }
+    }
+
+    /**
+     * Tests that signing tasks already submitted are finished when the executor rejects a later one.
+     * 
+     * @throws MarshallingException thrown if the XMLObject tree can not be marshalled
+     * @throws SignatureException thrown if signing fails
+     * @throws InterruptedException thrown if the test is interrupted
+     */
+    @Test
+    public void testConcurrentSigningRejected() throws MarshallingException, SignatureException,
+            InterruptedException {
+        final List<Signature> signatures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final SignableSimpleXMLObject sxo = getXMLObjectWithSignature("FOO" + i);
+            XMLObjectProviderRegistrySupport.getMarshallerFactory().getMarshaller(sxo).marshall(sxo);
+            signatures.add(sxo.getSignature());
+        }
+        
+        final List<Runnable> accepted = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        final Executor executor = new Executor() {
+            /** {@inheritDoc} */
+            public void execute(final Runnable command) {
+                if (!accepted.isEmpty()) {
+                    throw new RejectedExecutionException("Only one task accepted");
+                }
+                accepted.add(command);
+                final Thread thread = new Thread(command);
+                threads.add(thread);
+                thread.start();
+            }
+        };
+        
+        try {
+            Signer.signObjects(signatures, executor);
+            Assert.fail("Rejected signing task should have failed");
+        } catch (final RejectedExecutionException e) {
+            // The accepted task must have finished before the failure is reported.
+            Assert.assertEquals(accepted.size(), 1);
+            Assert.assertTrue(((Future<?>) accepted.get(0)).isDone());
+        } finally {
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        }
+        
+        try {
+            SignatureValidator.validate(signatures.get(2), goodCredential);
+            Assert.fail("Signature of a rejected task should not have been computed");
+        } catch (final SignatureException e) {
+            // expected
+        }
+    }
+
     /**
      * Tests unmarshalling an enveloped signature.
      * 
@@ -152,15 +252,26 @@ public class EnvelopedSignatureTest extends XMLObjectBaseTestCase {
      * @return a XMLObject that has a Signature child element
      */
     private SignableSimpleXMLObject getXMLObjectWithSignature() {
+        return getXMLObjectWithSignature("FOO");
+    }
+
+    /**
+     * Creates a XMLObject that has a Signature child element.
+     * 
+     * @param id the ID of the XMLObject
+     * 
+     * @return a XMLObject that has a Signature child element
+     */
+    private SignableSimpleXMLObject getXMLObjectWithSignature(String id) {
         SignableSimpleXMLObject sxo = sxoBuilder.buildObject();
-        sxo.setId("FOO");
+        sxo.setId(id);
 
         Signature sig = sigBuilder.buildObject(Signature.DEFAULT_ELEMENT_NAME);
         sig.setSigningCredential(goodCredential);
         sig.setCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
         sig.setSignatureAlgorithm(algoURI);
         
-        DocumentInternalIDContentReference contentReference = new DocumentInternalIDContentReference("FOO");
+        DocumentInternalIDContentReference contentReference = new DocumentInternalIDContentReference(id);
         contentReference.getTransforms().add(SignatureConstants.TRANSFORM_ENVELOPED_SIGNATURE);
         contentReference.getTransforms().add(SignatureConstants.TRANSFORM_C14N_EXCL_OMIT_COMMENTS);
         contentReference.setDigestAlgorithm(SignatureConstants.ALGO_ID_DIGEST_SHA1);
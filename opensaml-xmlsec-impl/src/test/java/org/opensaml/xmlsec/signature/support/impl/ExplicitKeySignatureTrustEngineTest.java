@@ -30,6 +30,7 @@ import org.opensaml.core.xml.XMLObjectBaseTestCase;
 import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
 import org.opensaml.core.xml.io.MarshallingException;
 import org.opensaml.security.SecurityException;
+import org.opensaml.security.credential.BasicCredential;
 import org.opensaml.security.credential.Credential;
 import org.opensaml.security.credential.impl.CollectionCredentialResolver;
 import org.opensaml.security.crypto.KeySupport;
@@ -304,6 +305,42 @@ public class ExplicitKeySignatureTrustEngineTest extends XMLObjectBaseTestCase {
                 "Raw Signature was valid and non-supplied candidate signing cred was in trusted set");
     }
     
+    /**
+     * Test that the trusted credential which last verified a raw signature is tried first.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testRawCredentialAffinity() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            final BasicCredential rolloverCred =
+                    new BasicCredential(KeySupport.generateKeyPair("RSA", 1024, null).getPublic());
+            rolloverCred.setEntityId(signingEntityID);
+            trustedCredentials.add(rolloverCred);
+        }
+        trustedCredentials.add(signingX509Cred);
+        
+        final CredentialAffinityCache affinityCache = new CredentialAffinityCache();
+        engine.setCredentialAffinityCache(affinityCache);
+        
+        Assert.assertTrue(engine.validate(rawControlSignature, rawData.getBytes(), rawAlgorithmURI, 
+                criteriaSet, null));
+        Assert.assertEquals(affinityCache.getVerificationAttemptCount(), 3);
+        Assert.assertEquals(affinityCache.getSize(), 1);
+        
+        Assert.assertTrue(engine.validate(rawControlSignature, rawData.getBytes(), rawAlgorithmURI, 
+                criteriaSet, null));
+        Assert.assertEquals(affinityCache.getEvaluationCount(), 2);
+        Assert.assertEquals(affinityCache.getVerificationAttemptCount(), 4);
+        Assert.assertEquals(affinityCache.getAverageVerificationAttempts(), 2.0);
+        
+        // Signing credential no longer trusted, record is discarded
+        trustedCredentials.remove(signingX509Cred);
+        Assert.assertFalse(engine.validate(rawControlSignature, rawData.getBytes(), rawAlgorithmURI, 
+                criteriaSet, null));
+        Assert.assertEquals(affinityCache.getSize(), 0);
+    }
+    
     /**
      * Test valid raw signature, untrusted signing credential.
      * 